@@ -1,11 +1,14 @@
 plugins {
     application
     alias(libs.plugins.openjfx)
+    alias(libs.plugins.jmh)
 }
 
 dependencies {
     testImplementation(libs.junit.jupiter.api)
     testRuntimeOnly(libs.junit.jupiter.engine)
+    // Embedded SSH server for the session pool tests
+    testImplementation(libs.sshd.core)
 
     // WebSocket support
     implementation(libs.java.websocket)
@@ -27,9 +30,6 @@ dependencies {
 
     // SSH library for remote sniffing
     implementation(libs.jsch)
-
-    // HTTP Client for API requests
-    implementation(libs.okhttp)
 }
 
 java {
@@ -49,12 +49,72 @@ val serverStartScripts = tasks.register<CreateStartScripts>("serverStartScripts"
     classpath = tasks.named<CreateStartScripts>("startScripts").get().classpath
 }
 
+val uploadStartScripts = tasks.register<CreateStartScripts>("uploadStartScripts") {
+    mainClass.set("hashkitty.java.transfer.UploadTool")
+    applicationName = "upload"
+    outputDir = layout.buildDirectory.get().dir("upload-scripts").asFile
+    classpath = tasks.named<CreateStartScripts>("startScripts").get().classpath
+}
+
+val journalStartScripts = tasks.register<CreateStartScripts>("journalStartScripts") {
+    mainClass.set("hashkitty.java.journal.JournalReader")
+    applicationName = "journal"
+    outputDir = layout.buildDirectory.get().dir("journal-scripts").asFile
+    classpath = tasks.named<CreateStartScripts>("startScripts").get().classpath
+}
+
+val exportStartScripts = tasks.register<CreateStartScripts>("exportStartScripts") {
+    mainClass.set("hashkitty.java.results.CrackExporter")
+    applicationName = "export"
+    outputDir = layout.buildDirectory.get().dir("export-scripts").asFile
+    classpath = tasks.named<CreateStartScripts>("startScripts").get().classpath
+}
+
+val pmkStartScripts = tasks.register<CreateStartScripts>("pmkStartScripts") {
+    mainClass.set("hashkitty.java.pmk.PmkCache")
+    applicationName = "pmk"
+    outputDir = layout.buildDirectory.get().dir("pmk-scripts").asFile
+    classpath = tasks.named<CreateStartScripts>("startScripts").get().classpath
+}
+
+val compactStartScripts = tasks.register<CreateStartScripts>("compactStartScripts") {
+    mainClass.set("hashkitty.java.sniffer.CaptureCompactor")
+    applicationName = "compact"
+    outputDir = layout.buildDirectory.get().dir("compact-scripts").asFile
+    classpath = tasks.named<CreateStartScripts>("startScripts").get().classpath
+}
+
+val agentStartScripts = tasks.register<CreateStartScripts>("agentStartScripts") {
+    mainClass.set("hashkitty.java.hashtopolis.HashtopolisWorker")
+    applicationName = "agent"
+    outputDir = layout.buildDirectory.get().dir("agent-scripts").asFile
+    classpath = tasks.named<CreateStartScripts>("startScripts").get().classpath
+}
+
 distributions {
     main {
         contents {
             from(serverStartScripts) {
                 into("bin")
             }
+            from(uploadStartScripts) {
+                into("bin")
+            }
+            from(journalStartScripts) {
+                into("bin")
+            }
+            from(exportStartScripts) {
+                into("bin")
+            }
+            from(pmkStartScripts) {
+                into("bin")
+            }
+            from(compactStartScripts) {
+                into("bin")
+            }
+            from(agentStartScripts) {
+                into("bin")
+            }
         }
     }
 }
@@ -67,3 +127,66 @@ javafx {
     version = libs.versions.javafx.get()
     modules = listOf("javafx.controls", "javafx.fxml", "javafx.web")
 }
+
+// Microbenchmarks live in src/jmh. "./gradlew :app:jmh" runs them all (add -PjmhInclude=Hibp to run a subset)
+// and writes build/results/jmh/results.json; jmhCompare checks that file against the committed baseline.
+val jmhResultsFile = layout.buildDirectory.file("results/jmh/results.json")
+val jmhBaselineDir = layout.projectDirectory.dir("src/jmh/baseline")
+
+jmh {
+    jmhVersion.set(libs.versions.jmh.get())
+    resultFormat.set("JSON")
+    resultsFile.set(jmhResultsFile)
+    fork.set(1)
+    warmupIterations.set(3)
+    iterations.set(5)
+    providers.gradleProperty("jmhInclude").orNull?.let { includes.set(listOf(it)) }
+}
+
+tasks.register<Copy>("jmhSaveBaseline") {
+    group = "benchmark"
+    description = "Records the latest JMH results as the baseline for jmhCompare."
+    from(jmhResultsFile)
+    into(jmhBaselineDir)
+}
+
+tasks.register("jmhCompare") {
+    group = "benchmark"
+    description = "Compares the latest JMH results with the committed baseline (-PjmhMaxRegression=10 fails on a >10% regression)."
+    val baseline = jmhBaselineDir.file("results.json").asFile
+    val results = jmhResultsFile.get().asFile
+    val maxRegression = providers.gradleProperty("jmhMaxRegression")
+    doLast {
+        if (!baseline.exists()) throw GradleException("No baseline at $baseline. Run jmh and jmhSaveBaseline on the reference commit first.")
+        if (!results.exists()) throw GradleException("No results at $results. Run the jmh task first.")
+
+        // Key: benchmark(params) -> (mode, score). Average-time scores improve downwards, throughput upwards.
+        fun load(file: File): Map<String, Pair<String, Double>> =
+            (groovy.json.JsonSlurper().parse(file) as List<*>).associate { entry ->
+                val run = entry as Map<*, *>
+                val params = (run["params"] as Map<*, *>?)?.entries?.joinToString(",") { "${it.key}=${it.value}" } ?: ""
+                val score = ((run["primaryMetric"] as Map<*, *>)["score"] as Number).toDouble()
+                "${run["benchmark"]}($params)" to Pair(run["mode"].toString(), score)
+            }
+
+        val before = load(baseline)
+        val after = load(results)
+        var worst = 0.0
+        for ((name, current) in after.toSortedMap()) {
+            val reference = before[name]
+            if (reference == null) {
+                println(String.format("%-90s %12s %12.3f   (new)", name, "-", current.second))
+                continue
+            }
+            val change = (current.second - reference.second) / reference.second * 100
+            val regression = if (current.first == "thrpt") -change else change
+            worst = maxOf(worst, regression)
+            println(String.format("%-90s %12.3f %12.3f %+7.1f%%%s", name, reference.second, current.second, change,
+                if (regression > 0) "  slower" else ""))
+        }
+        val limit = maxRegression.orNull?.toDouble()
+        if (limit != null && worst > limit) {
+            throw GradleException(String.format("Worst regression %.1f%% exceeds the allowed %.1f%%", worst, limit))
+        }
+    }
+}
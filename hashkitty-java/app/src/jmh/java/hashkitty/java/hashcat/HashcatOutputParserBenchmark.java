@@ -0,0 +1,79 @@
+package hashkitty.java.hashcat;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HexFormat;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link HashcatOutputParser} over a captured-style Hashcat transcript: status blocks (printed every
+ * few seconds with --status) interleaved with "hash:hex-plain" outfile lines, as during a productive attack.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class HashcatOutputParserBenchmark {
+
+    /** Number of output lines parsed per invocation. */
+    @Param({"100", "10000"})
+    public int lines;
+
+    /** One status block as printed by Hashcat 6. */
+    private static final String[] STATUS_BLOCK = {
+            "Session..........: hashcat",
+            "Status...........: Running",
+            "Hash.Mode........: 0 (MD5)",
+            "Hash.Target......: hashes.txt",
+            "Time.Started.....: Mon Oct 19 10:00:00 2026 (5 secs)",
+            "Time.Estimated...: Mon Oct 19 10:02:00 2026 (1 min, 55 secs)",
+            "Guess.Base.......: File (rockyou.txt)",
+            "Speed.#1.........:  1500.0 MH/s (5.24ms) @ Accel:512 Loops:1 Thr:64 Vec:1",
+            "Recovered........: 12/1000 (1.20%) Digests",
+            "Progress.........: 1024000/14344384 (7.14%)",
+            "Rejected.........: 0/1024000 (0.00%)",
+            "",
+    };
+
+    private String[] transcript;
+    /** Whether each transcript line comes from the crack outfile rather than standard output. */
+    private boolean[] fromOutfile;
+    private HashcatOutputParser parser;
+
+    /** Callback invocations, returned so the work cannot be optimised away. */
+    private long events;
+
+    @Setup(Level.Trial)
+    public void buildTranscript() {
+        transcript = new String[lines];
+        fromOutfile = new boolean[lines];
+        for (int i = 0; i < lines; i++) {
+            int cycle = i % (STATUS_BLOCK.length + 8);
+            fromOutfile[i] = cycle >= STATUS_BLOCK.length;
+            transcript[i] = fromOutfile[i]
+                    ? String.format("%032x:%s", i * 2654435761L, HexFormat.of().formatHex(("password" + i).getBytes(StandardCharsets.UTF_8)))
+                    : STATUS_BLOCK[cycle];
+        }
+        parser = new HashcatOutputParser(password -> events += password.length(), status -> events += status.length());
+    }
+
+    @Benchmark
+    public long parseTranscript() {
+        for (int i = 0; i < transcript.length; i++) {
+            if (fromOutfile[i]) {
+                parser.parseOutfileLine(transcript[i]);
+            } else {
+                parser.parseLine(transcript[i]);
+            }
+        }
+        return events;
+    }
+}
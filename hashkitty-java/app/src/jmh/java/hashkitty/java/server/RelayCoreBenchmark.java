@@ -0,0 +1,104 @@
+package hashkitty.java.server;
+
+import hashkitty.java.util.SerialExecutor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how long the relay takes to handle one text message and fan it out to a room: parsing, seq stamping,
+ * history recording and delivery to each member. Connections run their mailboxes inline and discard what they
+ * are sent, so no socket or thread hand-off is included.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class RelayCoreBenchmark {
+
+    /** Members of the room, including the sender. */
+    @Param({"2", "10", "100"})
+    public int roomSize;
+
+    /** Size of the message payload in characters. */
+    @Param({"64", "4096"})
+    public int payloadSize;
+
+    private RelayCore core;
+    private BenchConnection sender;
+    private String message;
+
+    /** Messages handed to members, returned so the work cannot be optimised away. */
+    private long delivered;
+
+    @Setup(Level.Trial)
+    public void joinRoom() {
+        core = new RelayCore(status -> {}, cracked -> {}, null);
+        List<BenchConnection> members = new ArrayList<>();
+        for (int i = 0; i < roomSize; i++) {
+            BenchConnection conn = new BenchConnection(this, 40000 + i);
+            core.onMessage(conn, "{\"type\":\"join\",\"roomId\":\"bench-room\"}");
+            members.add(conn);
+        }
+        sender = members.get(0);
+        StringBuilder payload = new StringBuilder(payloadSize);
+        for (int i = 0; i < payloadSize; i++) {
+            payload.append((char) ('a' + i % 26));
+        }
+        message = "{\"type\":\"status\",\"payload\":\"" + payload + "\"}";
+    }
+
+    @Benchmark
+    public long broadcast() {
+        core.onMessage(sender, message);
+        return delivered;
+    }
+
+    /**
+     * A connection that handles its mailbox on the calling thread and only counts what it is sent.
+     */
+    private static class BenchConnection implements RelayConnection {
+        private final RelayCoreBenchmark state;
+        private final InetSocketAddress address;
+        private final SerialExecutor mailbox = new SerialExecutor(Runnable::run);
+
+        BenchConnection(RelayCoreBenchmark state, int port) {
+            this.state = state;
+            this.address = new InetSocketAddress("127.0.0.1", port);
+        }
+
+        @Override
+        public void send(OutboundMessage message) {
+            state.delivered++;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public InetSocketAddress getRemoteSocketAddress() {
+            return address;
+        }
+
+        @Override
+        public void close() {
+        }
+
+        @Override
+        public SerialExecutor getMailbox() {
+            return mailbox;
+        }
+    }
+}
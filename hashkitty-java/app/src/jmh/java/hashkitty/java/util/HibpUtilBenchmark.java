@@ -0,0 +1,59 @@
+package hashkitty.java.util;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures parsing of a Pwned Passwords range response ({@link HibpUtil#findBreachCount}).
+ * Real responses hold roughly 800 to 2000 "SUFFIX:COUNT" lines; the suffix looked up is absent, so every line
+ * is scanned, which is the common case for a strong password.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class HibpUtilBenchmark {
+
+    /** Number of lines in the range response. */
+    @Param({"100", "1000", "10000"})
+    public int lines;
+
+    private String response;
+    private String missingSuffix;
+
+    @Setup(Level.Trial)
+    public void buildResponse() {
+        Random random = new Random(42);
+        StringBuilder sb = new StringBuilder(lines * 42);
+        for (int i = 0; i < lines; i++) {
+            sb.append(suffix(random)).append(':').append(1 + random.nextInt(100_000)).append("\r\n");
+        }
+        response = sb.toString();
+        missingSuffix = "0000000000000000000000000000000000F";
+    }
+
+    @Benchmark
+    public int scanRange() throws IOException {
+        return HibpUtil.findBreachCount(new BufferedReader(new StringReader(response)), missingSuffix);
+    }
+
+    private static String suffix(Random random) {
+        StringBuilder sb = new StringBuilder(35);
+        for (int i = 0; i < 35; i++) {
+            sb.append(Character.toUpperCase(Character.forDigit(random.nextInt(16), 16)));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,79 @@
+package hashkitty.java.util;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link NormalizationUtil#normalizeHashFile(File)} on dumps of increasing size.
+ * The input mixes "user:hash" lines, bare hashes, modular-crypt strings, duplicates and junk, as real dumps do.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class NormalizationUtilBenchmark {
+
+    /** Number of lines in the input file. */
+    @Param({"1000", "100000", "1000000"})
+    public int lines;
+
+    private File input;
+
+    @Setup(Level.Trial)
+    public void writeInput() throws IOException {
+        input = File.createTempFile("normalization-bench", ".txt");
+        Random random = new Random(42);
+        String previous = hex(random, 32);
+        try (BufferedWriter writer = Files.newBufferedWriter(input.toPath())) {
+            for (int i = 0; i < lines; i++) {
+                String hash = hex(random, 32);
+                switch (i % 10) {
+                    case 0: writer.write("user" + i + "@example.com:" + hash); break;
+                    case 1: writer.write("$2y$10$" + hex(random, 53)); break;
+                    case 2: writer.write("   "); break;
+                    case 3: writer.write("not a hash at all"); break;
+                    case 4: writer.write("admin:" + hex(random, 8) + ":" + hash); break;
+                    // One line in ten repeats an earlier hash.
+                    case 5: writer.write(previous); break;
+                    default: writer.write(hash); previous = hash;
+                }
+                writer.newLine();
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteInput() {
+        input.delete();
+    }
+
+    @Benchmark
+    public long normalize() throws IOException {
+        File output = NormalizationUtil.normalizeHashFile(input);
+        long length = output.length();
+        output.delete();
+        return length;
+    }
+
+    private static String hex(Random random, int length) {
+        StringBuilder sb = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            sb.append(Character.forDigit(random.nextInt(16), 16));
+        }
+        return sb.toString();
+    }
+}
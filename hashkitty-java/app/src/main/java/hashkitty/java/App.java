@@ -3,14 +3,30 @@ package hashkitty.java;
 import com.google.gson.Gson;
 import com.google.gson.JsonSyntaxException;
 import hashkitty.java.attack.AttackParams;
+import hashkitty.java.dashboard.DashboardModel;
+import hashkitty.java.dashboard.DashboardView;
+import hashkitty.java.events.JobEvent;
+import hashkitty.java.events.JobEventBus;
 import hashkitty.java.hashcat.HashcatManager;
+import hashkitty.java.journal.EventJournal;
+import hashkitty.java.journal.EventType;
+import hashkitty.java.metrics.MetricsHttpServer;
+import hashkitty.java.metrics.MetricsRegistry;
 import hashkitty.java.model.RemoteConnection;
+import hashkitty.java.relay.MessageBatcher;
 import hashkitty.java.relay.RelayClient;
 import hashkitty.java.attack.AttackController;
 import hashkitty.java.relay.RelayProcessManager;
+import hashkitty.java.results.CrackResultsView;
+import hashkitty.java.results.CrackStore;
 import hashkitty.java.settings.SettingsController;
 import hashkitty.java.sniffer.SniffController;
 import hashkitty.java.sniffer.SniffManager;
+import hashkitty.java.ssh.SshSessionPool;
+import hashkitty.java.status.StatusEntry;
+import hashkitty.java.status.StatusLogBuffer;
+import hashkitty.java.status.StatusLogView;
+import hashkitty.java.transfer.UploadReceiver;
 import hashkitty.java.util.ErrorUtil;
 import hashkitty.java.util.HibpUtil;
 import hashkitty.java.util.HhkUtil;
@@ -40,11 +56,13 @@ import java.io.File;
 import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
 import java.util.ResourceBundle;
 import java.util.UUID;
+import java.util.function.Consumer;
 
 /**
  * The main entry point and controller for the HashKitty JavaFX desktop application.
@@ -57,12 +75,32 @@ public class App extends Application {
 
     /** Default port for the embedded Relay Server. */
     private static final int RELAY_PORT = 5001;
+    /** System property (or, as {@code HASHKITTY_METRICS_PORT}, environment variable) enabling the metrics endpoint. */
+    private static final String METRICS_PORT_PROPERTY = "hashkitty.metrics.port";
+    /** Most status lines kept in the log. */
+    private static final int STATUS_LOG_CAPACITY = 5000;
     /** Size (width/height) for the generated QR code. */
     private static final int QR_CODE_SIZE = 150;
 
     // UI Components
-    /** Text area for scrolling logs/status messages. */
-    private TextArea statusLog;
+    /** Status messages waiting to be shown; filled from any thread, drained by {@link #statusLog} once per frame. */
+    private final StatusLogBuffer statusBuffer = new StatusLogBuffer(STATUS_LOG_CAPACITY);
+    /** The status log panel. */
+    private StatusLogView statusLog;
+    /** Hash rate, progress and crack statistics of every job, fed by the job event bus. */
+    private final DashboardModel dashboardModel = new DashboardModel();
+    /** The dashboard tab. */
+    private DashboardView dashboardView;
+    /** Every hash cracked on this machine, kept on disk across sessions; null if it could not be opened. */
+    private CrackStore crackStore;
+    /** Appends each crack published on the job event bus to {@link #crackStore}. */
+    private final Consumer<JobEvent> crackRecorder = event -> {
+        if (event.getKind() == JobEvent.Kind.CRACKED && event.getHash() != null) {
+            crackStore.append(event.getTime(), event.getMode(), event.getJobId(), event.getHash(), event.getPlain());
+        }
+    };
+    /** The results tab. */
+    private CrackResultsView resultsView;
     /** Label to display the most recently cracked password prominently. */
     private Label crackedPasswordLabel;
     /** Button to trigger HIBP check for the cracked password. */
@@ -77,6 +115,14 @@ public class App extends Application {
     private RelayProcessManager relayProcessManager;
     /** Client to connect to the Relay Server (even the local one). */
     private RelayClient relayClient;
+    /** Packs bursts of cracked results into batch frames before they go to the relay. */
+    private MessageBatcher crackBatcher;
+    /** Second relay client, joined to the files room, that receives streamed hash file uploads. */
+    private RelayClient filesRelayClient;
+    /** Writes uploads received through the files room to disk. */
+    private UploadReceiver uploadReceiver;
+    /** Serves the worker's metrics (Hashcat jobs, normalization) to Prometheus. Null unless enabled. */
+    private MetricsHttpServer metricsServer;
 
     // Helpers
     /** Gson instance for JSON parsing. */
@@ -111,10 +157,32 @@ public class App extends Application {
         remoteConnections.add(new RemoteConnection("cloud-cracker", "user@some-vps.com"));
 
         // Initialize the HashcatManager with callbacks for UI updates.
-        hashcatManager = new HashcatManager(this::displayCrackedPassword, this::updateStatus, () -> {});
+        // Hashcat's lines are tagged with the running job's ID, so the log can be filtered to one job.
+        hashcatManager = new HashcatManager(this::displayCrackedPassword,
+                message -> logStatus("hashcat", hashcatManager.getJobId(), message), () -> {});
+
+        // Expose the worker's metrics if a port was configured.
+        startMetricsEndpoint();
+
+        // Keep a durable record of jobs, cracks and errors for reviewing unattended runs.
+        try {
+            EventJournal.openDefault(EventJournal.defaultDirectory());
+        } catch (IOException e) {
+            updateStatus("Error opening event journal: " + e.getMessage());
+            e.printStackTrace();
+        }
+
+        // Keep every crack, not just the last one shown, for browsing and exporting.
+        try {
+            crackStore = new CrackStore(CrackStore.defaultDirectory());
+            JobEventBus.getDefault().subscribe(crackRecorder);
+        } catch (IOException e) {
+            updateStatus("Error opening crack results: " + e.getMessage());
+            e.printStackTrace();
+        }
 
         // Initialize the RelayProcessManager.
-        relayProcessManager = new RelayProcessManager(this::updateStatus);
+        relayProcessManager = new RelayProcessManager(statusFrom("relay"));
 
         // Generate a random 8-character Room ID for this session.
         roomId = UUID.randomUUID().toString().substring(0, 8);
@@ -131,6 +199,8 @@ public class App extends Application {
         TabPane tabPane = new TabPane();
         tabPane.getTabs().addAll(
                 new Tab("Attack", loadAttackScreen()),
+                new Tab("Dashboard", loadDashboardScreen()),
+                new Tab("Results", loadResultsScreen()),
                 new Tab("Wordlist", loadFxmlScreen("Wordlist")),
                 new Tab("Mask", loadFxmlScreen("Mask")),
                 new Tab("Terminal", loadFxmlScreen("Terminal")),
@@ -177,10 +247,52 @@ public class App extends Application {
         hashcatManager.stopCracking();
         // Stop sniffing if active.
         if (sniffManager != null) sniffManager.stopSniffing();
-        // Close the WebSocket client connection.
-        if (relayClient != null) relayClient.close();
+        // Close the pooled SSH sessions used by sniffing and remote commands.
+        SshSessionPool.getDefault().closeAll();
+        // Send any pending cracked results, then close the WebSocket client connection and stop its reconnect loop.
+        if (crackBatcher != null) crackBatcher.close();
+        if (relayClient != null) relayClient.shutdown();
+        // Close the upload connection; partial uploads stay on disk and resume on the next run.
+        if (filesRelayClient != null) filesRelayClient.shutdown();
+        if (uploadReceiver != null) uploadReceiver.close();
         // Stop the embedded Relay Server.
         if (relayProcessManager != null) relayProcessManager.stopRelay();
+        if (metricsServer != null) metricsServer.stop();
+        if (statusLog != null) statusLog.stop();
+        if (dashboardView != null) dashboardView.stop();
+        JobEventBus.getDefault().unsubscribe(dashboardModel);
+        // Stop recording cracks before closing the store they go to.
+        JobEventBus.getDefault().unsubscribe(crackRecorder);
+        if (resultsView != null) resultsView.stop();
+        if (crackStore != null) {
+            try {
+                crackStore.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        // Write out the remaining journal events.
+        EventJournal.getDefault().close();
+    }
+
+    /**
+     * Starts the Prometheus metrics endpoint when {@value #METRICS_PORT_PROPERTY} (or
+     * {@code HASHKITTY_METRICS_PORT}) names a port. The endpoint is off by default.
+     */
+    private void startMetricsEndpoint() {
+        String port = System.getProperty(METRICS_PORT_PROPERTY, System.getenv("HASHKITTY_METRICS_PORT"));
+        if (port == null || port.isBlank()) {
+            return;
+        }
+        try {
+            MetricsRegistry.getDefault().registerJvmMetrics();
+            metricsServer = new MetricsHttpServer(Integer.parseInt(port.trim()), MetricsRegistry.getDefault());
+            metricsServer.start();
+            updateStatus("Metrics available at http://localhost:" + metricsServer.getPort() + "/metrics");
+        } catch (IOException | NumberFormatException e) {
+            updateStatus("Error starting metrics endpoint on port " + port + ": " + e.getMessage());
+            e.printStackTrace();
+        }
     }
 
     /**
@@ -191,10 +303,17 @@ public class App extends Application {
             // Construct the URI for localhost.
             URI serverUri = new URI("ws://localhost:" + RELAY_PORT + "/ws");
             // Initialize the RelayClient with callbacks for handling messages and status updates.
-            relayClient = new RelayClient(serverUri, roomId, this::handleRelayMessage, this::updateStatus);
+            relayClient = new RelayClient(serverUri, roomId, this::handleRelayMessage, statusFrom("relay"));
+            crackBatcher = new MessageBatcher(roomId, relayClient::sendMessage);
+            // Uploads use a companion room, so chunks never reach the phone in the main room.
+            filesRelayClient = new RelayClient(serverUri, roomId + UploadReceiver.ROOM_SUFFIX, RelayClient.ROLE_FILES,
+                    message -> uploadReceiver.handleMessage(message), statusFrom("upload"));
+            uploadReceiver = new UploadReceiver(UploadReceiver.defaultDirectory(), filesRelayClient::sendMessage, statusFrom("upload"));
+            filesRelayClient.setOnBinaryReceived(uploadReceiver::handleChunk);
             updateStatus("Attempting to connect to local relay server...");
             // Initiate connection.
             relayClient.connect();
+            filesRelayClient.connect();
             // Update the QR code.
             updateQRCode();
         } catch (URISyntaxException e) {
@@ -218,6 +337,17 @@ public class App extends Application {
 
                 updateStatus("Received remote attack command for job: " + params.jobId);
 
+                // A file streamed through the relay replaces the (remote-side) file path.
+                String hashFile = params.file;
+                if (params.uploadId != null) {
+                    Path uploaded = uploadReceiver.getCompletedFile(params.uploadId);
+                    if (uploaded == null) {
+                        updateStatus("Error: Upload " + params.uploadId + " has not been received.");
+                        return;
+                    }
+                    hashFile = uploaded.toString();
+                }
+
                 // Map the attack mode ID to string ("0" -> "Dictionary", "3" -> "Mask").
                 String attackModeName = "3".equals(params.attackMode) ? "Mask" : "Dictionary";
 
@@ -225,7 +355,7 @@ public class App extends Application {
                 // We assume file paths provided in params are valid on this machine.
                 // Force=true is safer for remote execution to avoid prompts.
                 hashcatManager.startAttackWithFile(
-                    params.file,
+                    hashFile,
                     params.mode,
                     attackModeName,
                     ("Dictionary".equals(attackModeName) ? params.wordlist : params.wordlist), // target logic depends on mode
@@ -325,6 +455,23 @@ public class App extends Application {
         }
     }
 
+    private Node loadDashboardScreen() {
+        // Subscribe before the first job starts, so its STARTED event is seen.
+        JobEventBus.getDefault().subscribe(dashboardModel);
+        dashboardView = new DashboardView(dashboardModel);
+        dashboardView.start();
+        return dashboardView.getNode();
+    }
+
+    private Node loadResultsScreen() {
+        if (crackStore == null) {
+            return new Label("Crack results are unavailable: the results store could not be opened.");
+        }
+        resultsView = new CrackResultsView(crackStore);
+        resultsView.start();
+        return resultsView.getNode();
+    }
+
     private Node loadSettingsScreen() {
         try {
             String fxmlPath = "/fxml/Settings.fxml";
@@ -469,9 +616,8 @@ public class App extends Application {
     }
 
     private VBox createResultsBox() {
-        statusLog = new TextArea();
-        statusLog.setEditable(false);
-        statusLog.setPrefHeight(100);
+        statusLog = new StatusLogView(statusBuffer);
+        statusLog.start();
 
         crackedPasswordLabel = new Label("Cracked Password: N/A");
         crackedPasswordLabel.setStyle("-fx-font-size: 16px; -fx-font-weight: bold;");
@@ -483,13 +629,42 @@ public class App extends Application {
         HBox crackedPasswordBox = new HBox(20, crackedPasswordLabel, hibpCheckButton);
         crackedPasswordBox.setAlignment(Pos.CENTER_LEFT);
 
-        VBox box = new VBox(10, new Label("Status Log"), statusLog, crackedPasswordBox);
+        VBox box = new VBox(10, new Label("Status Log"), statusLog.getNode(), crackedPasswordBox);
         box.setPadding(new Insets(10));
         return box;
     }
 
+    /**
+     * Adds a message to the status log. Safe to call from any thread; the log picks it up on the next frame.
+     *
+     * @param message The message.
+     */
     public void updateStatus(String message) {
-        Platform.runLater(() -> statusLog.appendText(message + "\n"));
+        logStatus("app", null, message);
+    }
+
+    /**
+     * Returns a status callback that tags its messages with a source, for filtering the log.
+     *
+     * @param source The reporting component.
+     * @return The callback.
+     */
+    private Consumer<String> statusFrom(String source) {
+        return message -> logStatus(source, null, message);
+    }
+
+    /**
+     * Queues a status message for the log and records it in the journal.
+     *
+     * @param source  The reporting component.
+     * @param jobId   The Hashcat job the message belongs to, or null.
+     * @param message The message.
+     */
+    private void logStatus(String source, String jobId, String message) {
+        StatusEntry.Severity severity = StatusEntry.Severity.classify(message);
+        EventJournal.getDefault().record(severity == StatusEntry.Severity.ERROR ? EventType.ERROR : EventType.STATUS,
+                source, jobId != null ? jobId : roomId, message);
+        statusBuffer.append(new StatusEntry(System.currentTimeMillis(), severity, source, jobId, message));
     }
 
     private void displayCrackedPassword(String password) {
@@ -499,12 +674,13 @@ public class App extends Application {
             crackedPasswordLabel.setText("Cracked Password: " + password);
             updateStatus("SUCCESS: Password found! -> " + password);
 
-            if (relayClient != null && relayClient.isOpen()) {
+            // Batched so that bursts of cracks go out as a few frames; buffered by the client while offline.
+            if (crackBatcher != null) {
                 RelayClient.Message crackedMessage = new RelayClient.Message();
                 crackedMessage.setType("cracked");
                 crackedMessage.setRoomId(roomId);
                 crackedMessage.setPayload(password);
-                relayClient.sendMessage(crackedMessage);
+                crackBatcher.submit(crackedMessage);
             }
         });
     }
@@ -20,4 +20,11 @@ public class AttackParams {
     public String wordlist;
 
     public String rules;
+
+    /**
+     * ID of a hash file streamed to this machine through the relay (see {@code hashkitty.java.transfer}).
+     * When set, it takes precedence over {@link #file}, which is a path on the worker's own disk.
+     */
+    @SerializedName("upload_id")
+    public String uploadId;
 }
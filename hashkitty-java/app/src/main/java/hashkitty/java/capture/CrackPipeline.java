@@ -0,0 +1,433 @@
+package hashkitty.java.capture;
+
+import hashkitty.java.events.JobEvent;
+import hashkitty.java.events.JobEventBus;
+import hashkitty.java.hashcat.HashcatManager;
+import hashkitty.java.pmk.PmkCache;
+import hashkitty.java.pmk.WpaHash;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Cracks handshakes while the capture is still running: 22000 lines go in, Hashcat jobs come out.
+ * <p>
+ * Lines arrive from a {@link Hc22000Converter} following one or more live captures (see {@link #offer(String)}).
+ * Each line is dropped if its network is already cracked, according to Hashcat's potfile and to every mode 22000
+ * crack seen on the {@link JobEventBus} since, or if the same hash was queued before. The rest are appended to
+ * {@code queue.hc22000} in the work directory, which is read back on the next start so a restart does not queue
+ * them again.
+ * </p>
+ * <p>
+ * Hashcat reads its hash list once, when it starts, so a running job cannot take new hashes. Instead the pipeline
+ * keeps one mode 22000 dictionary job at a time: lines that arrive while it runs wait, and as soon as it finishes
+ * they start the next job as one batch. A new batch waits {@link #DEFAULT_BATCH_DELAY_MS} after its first line so
+ * that the PMKID and both message pairs of one handshake, which arrive within a second or two, share a job.
+ * </p>
+ * <p>
+ * With a {@link PmkCache} set, each batch is first checked against the precomputed PMKs of its ESSIDs. A line
+ * cracked there is reported at once, as a mode 22000 crack on the event bus, and never reaches Hashcat.
+ * </p>
+ */
+public class CrackPipeline {
+
+    /** How long a new batch waits for more lines before its job starts. */
+    public static final long DEFAULT_BATCH_DELAY_MS = 3_000;
+
+    /** The file in the work directory that records every line ever queued. */
+    static final String QUEUE_FILE = "queue.hc22000";
+
+    /** The Hashcat hash mode of WPA-PBKDF2-PMKID+EAPOL. */
+    static final int MODE = 22000;
+
+    /**
+     * Starts a Hashcat job on a hash file. The pipeline is told the job ended through {@link #jobFinished()}.
+     */
+    interface JobLauncher {
+        void launch(Path hashFile) throws IOException;
+    }
+
+    private final Path workDirectory;
+    private final Consumer<String> onStatusUpdate;
+    private final long batchDelayMs;
+    private Consumer<String> onPasswordCracked = password -> { };
+    private JobLauncher launcher;
+    private volatile PmkCache pmkCache;
+    private HashcatManager hashcatManager;
+
+    /** PMKIDs and MICs that are cracked or queued. Guarded by {@code this}. */
+    private final Set<String> knownHashes = new HashSet<>();
+    /** Access points (12 hex digits) whose passphrase is known. Guarded by {@code this}. */
+    private final Set<String> crackedAps = new HashSet<>();
+    /** Lines waiting for the next job. Guarded by {@code this}. */
+    private final List<String> pending = new ArrayList<>();
+    /** Whether a job is running. Guarded by {@code this}. */
+    private boolean jobRunning;
+    private boolean closed;
+    private int batches;
+    private long queued;
+    private long skipped;
+    private Thread worker;
+    private final Consumer<JobEvent> crackListener = this::onJobEvent;
+
+    /**
+     * Creates a pipeline that runs Hashcat dictionary jobs with the given wordlist.
+     *
+     * @param workDirectory     Where the queue and batch files are kept; created if missing.
+     * @param wordlist          The wordlist every job uses.
+     * @param onStatusUpdate    Receives the pipeline's and Hashcat's status messages.
+     * @param onPasswordCracked Receives each cracked passphrase.
+     */
+    public CrackPipeline(Path workDirectory, String wordlist, Consumer<String> onStatusUpdate,
+                         Consumer<String> onPasswordCracked) {
+        this(workDirectory, onStatusUpdate, null, DEFAULT_BATCH_DELAY_MS);
+        this.onPasswordCracked = onPasswordCracked;
+        hashcatManager = new HashcatManager(onPasswordCracked, onStatusUpdate, this::jobFinished);
+        launcher = hashFile -> hashcatManager.startAttackWithFile(hashFile.toString(), String.valueOf(MODE),
+                "Dictionary", wordlist, null, false, false, null);
+    }
+
+    /**
+     * Creates a pipeline with its own way of starting jobs, for tests.
+     */
+    CrackPipeline(Path workDirectory, Consumer<String> onStatusUpdate, JobLauncher launcher, long batchDelayMs) {
+        this.workDirectory = workDirectory;
+        this.onStatusUpdate = onStatusUpdate;
+        this.launcher = launcher;
+        this.batchDelayMs = batchDelayMs;
+    }
+
+    /**
+     * Returns Hashcat's potfile, {@code ~/.local/share/hashcat/hashcat.potfile} (Hashcat 6.2 and later) or else
+     * {@code ~/.hashcat/hashcat.potfile}.
+     *
+     * @return The potfile path; it may not exist.
+     */
+    public static Path defaultPotfile() {
+        Path home = Paths.get(System.getProperty("user.home"));
+        Path xdg = home.resolve(".local/share/hashcat/hashcat.potfile");
+        return Files.exists(xdg) ? xdg : home.resolve(".hashcat/hashcat.potfile");
+    }
+
+    /**
+     * Reads what was queued before and what the potfile says is cracked, then starts taking lines.
+     *
+     * @param potfile Hashcat's potfile; null or missing is fine.
+     * @throws IOException If the work directory or the files in it cannot be read.
+     */
+    public void start(Path potfile) throws IOException {
+        Files.createDirectories(workDirectory);
+        int cracked = 0;
+        if (potfile != null && Files.isReadable(potfile)) {
+            try (BufferedReader reader = Files.newBufferedReader(potfile, StandardCharsets.ISO_8859_1)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (markCracked(line)) {
+                        cracked++;
+                    }
+                }
+            }
+        }
+        int before = 0;
+        Path queueFile = workDirectory.resolve(QUEUE_FILE);
+        if (Files.exists(queueFile)) {
+            try (BufferedReader reader = Files.newBufferedReader(queueFile, StandardCharsets.US_ASCII)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    String[] fields = line.split("\\*", 5);
+                    if (fields.length == 5) {
+                        synchronized (this) {
+                            knownHashes.add(fields[2]);
+                        }
+                        before++;
+                    }
+                }
+            }
+        }
+        JobEventBus.getDefault().subscribe(crackListener);
+        synchronized (this) {
+            closed = false;
+            if (worker == null) {
+                worker = new Thread(this::runBatches, "crack-pipeline");
+                worker.setDaemon(true);
+                worker.start();
+            }
+        }
+        onStatusUpdate.accept("Crack pipeline ready: " + cracked + " WPA networks already in the potfile, "
+                + before + " hashes queued before.");
+    }
+
+    /**
+     * Checks new lines against precomputed PMKs before they go to Hashcat.
+     *
+     * @param cache The cache, or null to send every line to Hashcat.
+     */
+    public void setPmkCache(PmkCache cache) {
+        this.pmkCache = cache;
+    }
+
+    /**
+     * Takes one 22000 line. Safe to call from any capture thread.
+     *
+     * @param line A {@code WPA*01*...} or {@code WPA*02*...} line.
+     * @return Whether the line was queued; false if its network is cracked or the hash was queued before.
+     */
+    public boolean offer(String line) {
+        String[] fields = line.split("\\*", 5);
+        if (fields.length < 5 || !fields[0].equals("WPA")) {
+            return false;
+        }
+        synchronized (this) {
+            if (crackedAps.contains(fields[3]) || !knownHashes.add(fields[2])) {
+                skipped++;
+                return false;
+            }
+            try (BufferedWriter writer = Files.newBufferedWriter(workDirectory.resolve(QUEUE_FILE),
+                    StandardCharsets.US_ASCII, StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+                writer.write(line);
+                writer.newLine();
+            } catch (IOException e) {
+                // The line is still cracked this session; only a restart would queue it again.
+                e.printStackTrace();
+            }
+            pending.add(line);
+            queued++;
+            notifyAll();
+        }
+        onStatusUpdate.accept("Queued " + (fields[1].equals("01") ? "PMKID" : "handshake") + " of " + fields[3]
+                + " for cracking.");
+        return true;
+    }
+
+    /**
+     * Tells the pipeline its job has ended, so the next batch can start.
+     */
+    void jobFinished() {
+        synchronized (this) {
+            jobRunning = false;
+            notifyAll();
+        }
+    }
+
+    /**
+     * Stops taking batches and stops the running job, if the pipeline started it. Queued lines stay in the queue
+     * file but are not cracked.
+     */
+    public void stop() {
+        JobEventBus.getDefault().unsubscribe(crackListener);
+        synchronized (this) {
+            closed = true;
+            pending.clear();
+            if (worker != null) {
+                worker.interrupt();
+                worker = null;
+            }
+        }
+        if (hashcatManager != null) {
+            hashcatManager.stopCracking();
+        }
+    }
+
+    /** @return The number of lines queued since the pipeline was created. */
+    public synchronized long getQueued() {
+        return queued;
+    }
+
+    /** @return The number of lines dropped as cracked or already queued. */
+    public synchronized long getSkipped() {
+        return skipped;
+    }
+
+    /** @return The number of jobs started. */
+    public synchronized int getBatches() {
+        return batches;
+    }
+
+    /** @return Whether a job is running. */
+    public synchronized boolean isJobRunning() {
+        return jobRunning;
+    }
+
+    /**
+     * Waits for lines and the end of the previous job, then starts the next batch.
+     */
+    private void runBatches() {
+        while (true) {
+            try {
+                synchronized (this) {
+                    while (!closed && (pending.isEmpty() || jobRunning)) {
+                        wait();
+                    }
+                    if (closed) {
+                        return;
+                    }
+                }
+                // Let the rest of the handshake arrive.
+                Thread.sleep(batchDelayMs);
+            } catch (InterruptedException e) {
+                return;
+            }
+            List<String> waiting;
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+                waiting = new ArrayList<>(pending);
+                pending.clear();
+            }
+            crackFromPmkCache(waiting);
+            Path batchFile;
+            int count;
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+                List<String> lines = new ArrayList<>(waiting.size());
+                for (String line : waiting) {
+                    // A network may have been cracked while the line waited.
+                    if (!crackedAps.contains(line.split("\\*", 5)[3])) {
+                        lines.add(line);
+                    }
+                }
+                if (lines.isEmpty()) {
+                    continue;
+                }
+                batches++;
+                batchFile = workDirectory.resolve("batch-" + System.currentTimeMillis() + "-" + batches + ".hc22000");
+                try {
+                    Files.write(batchFile, lines, StandardCharsets.US_ASCII);
+                } catch (IOException e) {
+                    e.printStackTrace();
+                    onStatusUpdate.accept("Crack pipeline could not write " + batchFile + ": " + e.getMessage());
+                    continue;
+                }
+                count = lines.size();
+                jobRunning = true;
+            }
+            onStatusUpdate.accept("Starting crack job for " + count + " new hashes.");
+            try {
+                launcher.launch(batchFile);
+            } catch (IOException e) {
+                e.printStackTrace();
+                onStatusUpdate.accept("Crack pipeline could not start Hashcat: " + e.getMessage());
+                jobFinished();
+            }
+        }
+    }
+
+    /**
+     * Tries the PMK cache on each line; a hit is published like any other crack, which also marks its network.
+     */
+    private void crackFromPmkCache(List<String> lines) {
+        PmkCache cache = pmkCache;
+        if (cache == null) {
+            return;
+        }
+        for (String line : lines) {
+            try {
+                String passphrase = cache.crack(WpaHash.parse(line), Runtime.getRuntime().availableProcessors());
+                if (passphrase == null) {
+                    continue;
+                }
+                String hash = crackedHash(line);
+                onStatusUpdate.accept("Cracked from the PMK cache: " + line.split("\\*", 5)[3] + ": " + passphrase);
+                onPasswordCracked.accept(passphrase);
+                JobEventBus.getDefault().publish(JobEvent.cracked("pmk-cache", System.currentTimeMillis(), MODE,
+                        hash, passphrase));
+            } catch (IOException | IllegalArgumentException e) {
+                e.printStackTrace();
+                onStatusUpdate.accept("PMK cache lookup failed: " + e.getMessage());
+            }
+        }
+    }
+
+    private void onJobEvent(JobEvent event) {
+        if (event.getKind() == JobEvent.Kind.CRACKED && event.getMode() == MODE && event.getHash() != null) {
+            markCracked(event.getHash());
+        }
+    }
+
+    /**
+     * Records a cracked WPA network from a potfile line or a cracked hash. Hashcat writes mode 22000 results as
+     * {@code PMKID_OR_MIC:MAC_AP:MAC_STA:ESSID[:PASSWORD]}; a full {@code WPA*...} line is understood as well.
+     *
+     * @return Whether the text was a WPA result.
+     */
+    private synchronized boolean markCracked(String text) {
+        String hash;
+        String ap;
+        if (text.startsWith("WPA*")) {
+            String[] fields = text.split("\\*", 5);
+            if (fields.length < 5) {
+                return false;
+            }
+            hash = fields[2];
+            ap = fields[3];
+        } else {
+            String[] fields = text.split(":", 4);
+            if (fields.length < 3 || !isHex(fields[0], 32) || !isHex(fields[1], 12) || !isHex(fields[2], 12)) {
+                return false;
+            }
+            hash = fields[0];
+            ap = fields[1];
+        }
+        knownHashes.add(hash.toLowerCase(Locale.ROOT));
+        crackedAps.add(ap.toLowerCase(Locale.ROOT));
+        return true;
+    }
+
+    /**
+     * Formats a 22000 line's hash the way Hashcat reports it when cracked, {@code PMKID_OR_MIC:MAC_AP:MAC_STA:ESSID},
+     * so a network cracked from the PMK cache is recorded under the same key as one Hashcat cracks.
+     * <p>
+     * Like Hashcat, the ESSID is printed as text, or as {@code $HEX[...]} when it has bytes outside printable ASCII
+     * or a colon.
+     * </p>
+     *
+     * @param line A {@code WPA*01*...} or {@code WPA*02*...} line.
+     * @return The hash, e.g. "4d4fe7aac3a2cecab195321ceb99a7d0:fc690c158264:f4747f87f9f4:HomeNet".
+     * @throws IllegalArgumentException If the line has too few fields or its ESSID is not hex.
+     */
+    static String crackedHash(String line) {
+        String[] fields = line.split("\\*", 7);
+        if (fields.length < 6) {
+            throw new IllegalArgumentException("Not a 22000 line: " + line);
+        }
+        byte[] essid = HexFormat.of().parseHex(fields[5]);
+        boolean printable = true;
+        for (byte b : essid) {
+            if (b < 0x20 || b > 0x7e || b == ':') {
+                printable = false;
+                break;
+            }
+        }
+        String name = printable ? new String(essid, StandardCharsets.US_ASCII)
+                : "$HEX[" + fields[5].toLowerCase(Locale.ROOT) + "]";
+        return fields[2] + ":" + fields[3] + ":" + fields[4] + ":" + name;
+    }
+
+    private static boolean isHex(String text, int length) {
+        if (text.length() != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (Character.digit(text.charAt(i), 16) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,138 @@
+package hashkitty.java.capture;
+
+import java.nio.ByteBuffer;
+
+/**
+ * One EAPOL-Key frame of a WPA/WPA2 four-way handshake, as decoded by {@link WifiDecoder}.
+ * <p>
+ * This is a reusable view over the packet bytes, not a copy: the decoder fills the same instance for every frame
+ * and its fields are only valid during the listener call. Copy out what must be kept (for example with
+ * {@link #copyNonce(byte[], int)} or {@link #copyFrame(byte[], int)}).
+ * </p>
+ */
+public final class EapolKey {
+
+    /** Key information bits, as in IEEE 802.11 12.7.2. */
+    public static final int KEY_INFO_PAIRWISE = 0x0008;
+    public static final int KEY_INFO_INSTALL = 0x0040;
+    public static final int KEY_INFO_ACK = 0x0080;
+    public static final int KEY_INFO_MIC = 0x0100;
+    public static final int KEY_INFO_SECURE = 0x0200;
+
+    /** Offsets inside the EAPOL frame. */
+    static final int KEY_INFO_OFFSET = 5;
+    static final int REPLAY_COUNTER_OFFSET = 9;
+    static final int NONCE_OFFSET = 17;
+    static final int MIC_OFFSET = 81;
+    static final int KEY_DATA_LENGTH_OFFSET = 97;
+    static final int KEY_DATA_OFFSET = 99;
+
+    public static final int NONCE_LENGTH = 32;
+    public static final int MIC_LENGTH = 16;
+    public static final int PMKID_LENGTH = 16;
+
+    ByteBuffer data;
+    int frameOffset;
+    int frameLength;
+    long timestampMicros;
+    long ap;
+    long sta;
+    int message;
+    int keyInfo;
+    int pmkidOffset = -1;
+
+    EapolKey() {
+    }
+
+    /** @return The capture time, in microseconds since the epoch. */
+    public long getTimestampMicros() {
+        return timestampMicros;
+    }
+
+    /** @return The access point's MAC address in the low 48 bits. */
+    public long getAp() {
+        return ap;
+    }
+
+    /** @return The station's MAC address in the low 48 bits. */
+    public long getSta() {
+        return sta;
+    }
+
+    /**
+     * Returns which message of the four-way handshake this is, from the key information bits.
+     *
+     * @return 1 to 4.
+     */
+    public int getMessage() {
+        return message;
+    }
+
+    /** @return The key information field. */
+    public int getKeyInfo() {
+        return keyInfo;
+    }
+
+    /** @return The key descriptor version: 1 (HMAC-MD5/RC4, WPA), 2 (HMAC-SHA1/AES, WPA2) or 3 (AES-CMAC). */
+    public int getKeyVersion() {
+        return keyInfo & 7;
+    }
+
+    /** @return The replay counter. */
+    public long getReplayCounter() {
+        // Big-endian on the wire, whatever order the capture's buffer is set to.
+        long value = 0;
+        for (int i = 0; i < 8; i++) {
+            value = (value << 8) | (data.get(frameOffset + REPLAY_COUNTER_OFFSET + i) & 0xff);
+        }
+        return value;
+    }
+
+    /** @return The length of the whole EAPOL frame (header included). */
+    public int getFrameLength() {
+        return frameLength;
+    }
+
+    /** @return Whether the nonce is all zeroes, as in many message-4 frames. */
+    public boolean isNonceZero() {
+        for (int i = 0; i < NONCE_LENGTH; i++) {
+            if (data.get(frameOffset + NONCE_OFFSET + i) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** @return Whether a PMKID key data element was found (message 1 only). */
+    public boolean hasPmkid() {
+        return pmkidOffset >= 0;
+    }
+
+    public void copyNonce(byte[] target, int offset) {
+        copy(frameOffset + NONCE_OFFSET, target, offset, NONCE_LENGTH);
+    }
+
+    public void copyMic(byte[] target, int offset) {
+        copy(frameOffset + MIC_OFFSET, target, offset, MIC_LENGTH);
+    }
+
+    /**
+     * Copies the PMKID. Only valid if {@link #hasPmkid()}.
+     */
+    public void copyPmkid(byte[] target, int offset) {
+        copy(pmkidOffset, target, offset, PMKID_LENGTH);
+    }
+
+    /**
+     * Copies the whole EAPOL frame, MIC included, into {@code target}, which needs {@link #getFrameLength()} bytes.
+     */
+    public void copyFrame(byte[] target, int offset) {
+        copy(frameOffset, target, offset, frameLength);
+    }
+
+    private void copy(int from, byte[] target, int offset, int length) {
+        for (int i = 0; i < length; i++) {
+            target[offset + i] = data.get(from + i);
+        }
+    }
+}
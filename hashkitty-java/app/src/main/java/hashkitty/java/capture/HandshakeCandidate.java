@@ -0,0 +1,105 @@
+package hashkitty.java.capture;
+
+/**
+ * A station's handshake with an access point, as far as a capture shows it.
+ * <p>
+ * A candidate is worth attacking once {@link #isCrackable()}: the capture holds message 2 together with message 1
+ * or 3 (the nonces and MIC needed for an EAPOL attack), or a PMKID from message 1.
+ * </p>
+ */
+public class HandshakeCandidate {
+
+    private final long ap;
+    private final long sta;
+    private String essid;
+    private int messages;
+    private boolean pmkid;
+    private final long firstSeenMicros;
+    private long lastSeenMicros;
+
+    HandshakeCandidate(long ap, long sta, long timestampMicros) {
+        this.ap = ap;
+        this.sta = sta;
+        this.firstSeenMicros = timestampMicros;
+        this.lastSeenMicros = timestampMicros;
+    }
+
+    /**
+     * Records a message of the handshake.
+     *
+     * @return true if this made the candidate crackable.
+     */
+    boolean add(int message, boolean withPmkid, long timestampMicros) {
+        boolean before = isCrackable();
+        messages |= 1 << (message - 1);
+        pmkid |= withPmkid;
+        lastSeenMicros = Math.max(lastSeenMicros, timestampMicros);
+        return !before && isCrackable();
+    }
+
+    void setEssid(String essid) {
+        this.essid = essid;
+    }
+
+    public long getAp() {
+        return ap;
+    }
+
+    public long getSta() {
+        return sta;
+    }
+
+    /** @return The network name, or null if no beacon or probe response named it. */
+    public String getEssid() {
+        return essid;
+    }
+
+    /**
+     * Returns the messages seen, one bit per message: bit 0 for message 1 up to bit 3 for message 4.
+     *
+     * @return The bit mask.
+     */
+    public int getMessages() {
+        return messages;
+    }
+
+    public boolean hasMessage(int message) {
+        return (messages & (1 << (message - 1))) != 0;
+    }
+
+    public boolean hasPmkid() {
+        return pmkid;
+    }
+
+    public long getFirstSeenMicros() {
+        return firstSeenMicros;
+    }
+
+    public long getLastSeenMicros() {
+        return lastSeenMicros;
+    }
+
+    /** @return Whether the capture holds enough to attack this handshake. */
+    public boolean isCrackable() {
+        return pmkid || (hasMessage(2) && (hasMessage(1) || hasMessage(3)));
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder();
+        text.append(essid != null ? essid : "<unknown ESSID>")
+                .append(" AP ").append(WifiDecoder.formatMac(ap))
+                .append(" STA ").append(WifiDecoder.formatMac(sta))
+                .append(" messages");
+        for (int message = 1; message <= 4; message++) {
+            if (hasMessage(message)) {
+                text.append(" M").append(message);
+            }
+        }
+        if (pmkid) {
+            text.append(" PMKID");
+        }
+        text.append(isCrackable() ? " (crackable)" : " (incomplete)");
+        return text.toString();
+    }
+}
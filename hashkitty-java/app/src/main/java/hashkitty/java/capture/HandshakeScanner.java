@@ -0,0 +1,152 @@
+package hashkitty.java.capture;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Finds the WPA handshakes in a capture and reports each one as soon as it becomes crackable.
+ * <p>
+ * This replaces running tshark with an EAPOL display filter: the capture is read by {@link PcapReader} and
+ * decoded by {@link WifiDecoder} inside the JVM, so it works wherever the app runs and a capture of many
+ * gigabytes is scanned at disk speed. Candidates are kept per access point and station; beacons and probe
+ * responses give them their ESSID.
+ * </p>
+ * <p>
+ * One scanner can be shared by several captures at once, such as the sensors of a {@code SensorPool}: each capture
+ * decodes with its own {@link #newDecoder()} and the scanner keeps a single index, so a handshake seen by several
+ * sensors (or half by one and half by another) is reported once.
+ * </p>
+ */
+public class HandshakeScanner implements WifiDecoder.Listener {
+
+    /** Access point to the ESSID it announced, copied once per access point. */
+    private final LongMap<String> essids = new LongMap<>();
+    /** Access point to its stations' candidates. */
+    private final LongMap<List<HandshakeCandidate>> candidates = new LongMap<>();
+    private final Consumer<HandshakeCandidate> onCrackable;
+    private final WifiDecoder decoder = new WifiDecoder(this);
+
+    /**
+     * Creates a scanner.
+     *
+     * @param onCrackable Called once for each candidate, when it becomes crackable; may be null.
+     */
+    public HandshakeScanner(Consumer<HandshakeCandidate> onCrackable) {
+        this.onCrackable = onCrackable;
+    }
+
+    /**
+     * Scans a pcap or pcapng file.
+     *
+     * @param file The capture.
+     * @return The number of packets read.
+     * @throws IOException If the file cannot be read or is not a capture.
+     */
+    public long scan(Path file) throws IOException {
+        return PcapReader.read(file, decoder);
+    }
+
+    /**
+     * Scans a capture arriving on a stream until it ends.
+     *
+     * @param in The stream.
+     * @return The number of packets read.
+     * @throws IOException If the stream fails or does not carry a capture.
+     */
+    public long scan(InputStream in) throws IOException {
+        return PcapReader.read(in, decoder);
+    }
+
+    /**
+     * Returns the decoder feeding this scanner, for callers that read packets themselves.
+     *
+     * @return The decoder.
+     */
+    public WifiDecoder getDecoder() {
+        return decoder;
+    }
+
+    /**
+     * Creates another decoder feeding this scanner, for a capture read on another thread.
+     *
+     * @return A new decoder.
+     */
+    public WifiDecoder newDecoder() {
+        return new WifiDecoder(this);
+    }
+
+    @Override
+    public synchronized void onNetwork(long bssid, ByteBuffer data, int essidOffset, int essidLength, long timestampMicros) {
+        if (essids.get(bssid) != null) {
+            return;
+        }
+        byte[] bytes = new byte[essidLength];
+        for (int i = 0; i < essidLength; i++) {
+            bytes[i] = data.get(essidOffset + i);
+        }
+        String essid = new String(bytes, StandardCharsets.UTF_8);
+        essids.put(bssid, essid);
+        List<HandshakeCandidate> known = candidates.get(bssid);
+        if (known != null) {
+            for (HandshakeCandidate candidate : known) {
+                candidate.setEssid(essid);
+            }
+        }
+    }
+
+    @Override
+    public synchronized void onEapolKey(EapolKey key) {
+        List<HandshakeCandidate> known = candidates.get(key.getAp());
+        if (known == null) {
+            known = new ArrayList<>(2);
+            candidates.put(key.getAp(), known);
+        }
+        HandshakeCandidate candidate = null;
+        for (HandshakeCandidate c : known) {
+            if (c.getSta() == key.getSta()) {
+                candidate = c;
+                break;
+            }
+        }
+        if (candidate == null) {
+            candidate = new HandshakeCandidate(key.getAp(), key.getSta(), key.getTimestampMicros());
+            candidate.setEssid(essids.get(key.getAp()));
+            known.add(candidate);
+        }
+        if (candidate.add(key.getMessage(), key.hasPmkid(), key.getTimestampMicros()) && onCrackable != null) {
+            onCrackable.accept(candidate);
+        }
+    }
+
+    /**
+     * Returns every candidate seen so far, crackable ones first, then by first appearance.
+     *
+     * @return The candidates.
+     */
+    public synchronized List<HandshakeCandidate> getCandidates() {
+        List<HandshakeCandidate> all = new ArrayList<>();
+        for (List<HandshakeCandidate> known : candidates.values()) {
+            all.addAll(known);
+        }
+        all.sort(Comparator.comparing((HandshakeCandidate c) -> !c.isCrackable())
+                .thenComparingLong(HandshakeCandidate::getFirstSeenMicros));
+        return all;
+    }
+
+    /**
+     * Returns the ESSID an access point announced.
+     *
+     * @param bssid The access point.
+     * @return The ESSID, or null.
+     */
+    public synchronized String getEssid(long bssid) {
+        return essids.get(bssid);
+    }
+}
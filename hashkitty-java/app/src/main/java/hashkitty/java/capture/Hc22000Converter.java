@@ -0,0 +1,347 @@
+package hashkitty.java.capture;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Turns the handshakes in a capture into Hashcat mode 22000 lines, the job hcxpcapngtool (or a cap2hashcat web
+ * service) would otherwise do.
+ * <p>
+ * Two kinds of line are written:
+ * </p>
+ * <ul>
+ *     <li>{@code WPA*01*PMKID*MAC_AP*MAC_STA*ESSID***01} for a PMKID carried in message 1.</li>
+ *     <li>{@code WPA*02*MIC*MAC_AP*MAC_STA*ESSID*ANONCE*EAPOL*MESSAGEPAIR} for an EAPOL exchange: message 2's MIC and
+ *     frame (with the MIC zeroed), and the ANonce of the access point. Message 2 is paired with message 1 of the
+ *     same replay counter (message pair {@code 00}) or with message 3 of the next one ({@code 02}, which also shows
+ *     the access point accepted the station's MIC). Frames further apart than {@link #EAPOL_TIMEOUT_MICROS} are
+ *     not paired.</li>
+ * </ul>
+ * <p>
+ * Each access point and station gives at most one PMKID line and one line per message pair, so a capture with
+ * hundreds of reconnects yields a handful of lines. Lines need the ESSID; until a beacon or probe response names
+ * the access point they are held back, and any still unnamed at the end are counted in
+ * {@link #getUnnamed()} and dropped. Lines are handed to the consumer as soon as they are complete, so the
+ * converter can also follow a live capture.
+ * </p>
+ * <p>
+ * Like {@link HandshakeScanner}, one converter can be shared by several live captures: each reads with its own
+ * {@link #newDecoder()}, and the converter's per-pair state makes sure a handshake heard by several sensors gives
+ * one line.
+ * </p>
+ */
+public class Hc22000Converter implements WifiDecoder.Listener {
+
+    /** Largest gap between the two messages of a pair. */
+    public static final long EAPOL_TIMEOUT_MICROS = 5_000_000;
+
+    /** Longest EAPOL frame kept; hashcat's own limit for the EAPOL field is 256 bytes. */
+    static final int MAX_EAPOL_BYTES = 256;
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    /** Access point to its ESSID, hex encoded as the line needs it. */
+    private final LongMap<String> essids = new LongMap<>();
+    /** Access point to its stations' exchanges. */
+    private final LongMap<List<Exchange>> exchanges = new LongMap<>();
+    private final Consumer<String> onLine;
+    private final WifiDecoder decoder = new WifiDecoder(this);
+    private volatile long pmkidLines;
+    private volatile long eapolLines;
+
+    /**
+     * Creates a converter.
+     *
+     * @param onLine Receives each 22000 line, once.
+     */
+    public Hc22000Converter(Consumer<String> onLine) {
+        this.onLine = onLine;
+    }
+
+    /**
+     * Converts a capture file into a 22000 hash file.
+     *
+     * @param capture The pcap or pcapng file.
+     * @param output  The hash file to write (replaced if it exists).
+     * @return The converter, for its counts.
+     * @throws IOException If the capture cannot be read or the output written.
+     */
+    public static Hc22000Converter convert(Path capture, Path output) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(output, StandardCharsets.UTF_8)) {
+            IOException[] failure = new IOException[1];
+            Hc22000Converter converter = new Hc22000Converter(line -> {
+                if (failure[0] == null) {
+                    try {
+                        writer.write(line);
+                        writer.newLine();
+                    } catch (IOException e) {
+                        failure[0] = e;
+                    }
+                }
+            });
+            converter.process(capture);
+            if (failure[0] != null) {
+                throw failure[0];
+            }
+            return converter;
+        }
+    }
+
+    /**
+     * Reads a capture file.
+     *
+     * @param capture The pcap or pcapng file.
+     * @return The number of packets read.
+     * @throws IOException If the file cannot be read or is not a capture.
+     */
+    public long process(Path capture) throws IOException {
+        return PcapReader.read(capture, decoder);
+    }
+
+    /**
+     * Reads a capture from a stream until it ends.
+     *
+     * @param in The stream.
+     * @return The number of packets read.
+     * @throws IOException If the stream fails or does not carry a capture.
+     */
+    public long process(InputStream in) throws IOException {
+        return PcapReader.read(in, decoder);
+    }
+
+    /**
+     * Returns the decoder feeding this converter, for callers that read packets themselves.
+     *
+     * @return The decoder.
+     */
+    public WifiDecoder getDecoder() {
+        return decoder;
+    }
+
+    /**
+     * Creates another decoder feeding this converter, for a capture read on another thread.
+     *
+     * @return A new decoder.
+     */
+    public WifiDecoder newDecoder() {
+        return new WifiDecoder(this);
+    }
+
+    /** @return The number of PMKID lines written. */
+    public long getPmkidLines() {
+        return pmkidLines;
+    }
+
+    /** @return The number of EAPOL lines written. */
+    public long getEapolLines() {
+        return eapolLines;
+    }
+
+    /**
+     * Returns the lines held back because no frame named their access point.
+     *
+     * @return The number of lines.
+     */
+    public synchronized int getUnnamed() {
+        int unnamed = 0;
+        for (List<Exchange> list : exchanges.values()) {
+            for (Exchange exchange : list) {
+                unnamed += exchange.pending.size();
+            }
+        }
+        return unnamed;
+    }
+
+    @Override
+    public synchronized void onNetwork(long bssid, ByteBuffer data, int essidOffset, int essidLength, long timestampMicros) {
+        if (essids.get(bssid) != null) {
+            return;
+        }
+        StringBuilder hex = new StringBuilder(essidLength * 2);
+        for (int i = 0; i < essidLength; i++) {
+            appendHex(hex, data.get(essidOffset + i));
+        }
+        String essid = hex.toString();
+        essids.put(bssid, essid);
+        List<Exchange> list = exchanges.get(bssid);
+        if (list != null) {
+            for (Exchange exchange : list) {
+                for (String[] parts : exchange.pending) {
+                    emit(parts[0], essid, parts[1]);
+                }
+                exchange.pending.clear();
+            }
+        }
+    }
+
+    @Override
+    public synchronized void onEapolKey(EapolKey key) {
+        Exchange exchange = exchange(key.getAp(), key.getSta());
+        long time = key.getTimestampMicros();
+        long replay = key.getReplayCounter();
+        switch (key.getMessage()) {
+            case 1:
+                key.copyNonce(exchange.anonce1, 0);
+                exchange.replay1 = replay;
+                exchange.time1 = time;
+                exchange.has1 = true;
+                if (key.hasPmkid() && !exchange.pmkidDone) {
+                    exchange.pmkidDone = true;
+                    byte[] pmkid = new byte[EapolKey.PMKID_LENGTH];
+                    key.copyPmkid(pmkid, 0);
+                    pmkidLines++;
+                    line(exchange, "WPA*01*" + hex(pmkid) + "*" + mac(exchange.ap) + "*" + mac(exchange.sta) + "*",
+                            "***01");
+                }
+                pairWithMessage1(exchange);
+                break;
+            case 2:
+                if (key.getFrameLength() > MAX_EAPOL_BYTES) {
+                    return;
+                }
+                key.copyFrame(exchange.eapol2, 0);
+                key.copyMic(exchange.mic2, 0);
+                // The MIC is computed over the frame with the MIC field zeroed.
+                for (int i = 0; i < EapolKey.MIC_LENGTH; i++) {
+                    exchange.eapol2[EapolKey.MIC_OFFSET + i] = 0;
+                }
+                exchange.eapol2Length = key.getFrameLength();
+                exchange.replay2 = replay;
+                exchange.time2 = time;
+                exchange.has2 = true;
+                pairWithMessage1(exchange);
+                pairWithMessage3(exchange);
+                break;
+            case 3:
+                key.copyNonce(exchange.anonce3, 0);
+                exchange.replay3 = replay;
+                exchange.time3 = time;
+                exchange.has3 = true;
+                pairWithMessage3(exchange);
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void pairWithMessage1(Exchange exchange) {
+        if (!exchange.pair00Done && exchange.has1 && exchange.has2 && exchange.replay1 == exchange.replay2
+                && Math.abs(exchange.time2 - exchange.time1) <= EAPOL_TIMEOUT_MICROS) {
+            exchange.pair00Done = true;
+            eapolLine(exchange, exchange.anonce1, "00");
+        }
+    }
+
+    private void pairWithMessage3(Exchange exchange) {
+        if (!exchange.pair02Done && exchange.has2 && exchange.has3 && exchange.replay3 == exchange.replay2 + 1
+                && Math.abs(exchange.time3 - exchange.time2) <= EAPOL_TIMEOUT_MICROS) {
+            exchange.pair02Done = true;
+            eapolLine(exchange, exchange.anonce3, "02");
+        }
+    }
+
+    private void eapolLine(Exchange exchange, byte[] anonce, String messagePair) {
+        eapolLines++;
+        StringBuilder tail = new StringBuilder(2 * (EapolKey.NONCE_LENGTH + exchange.eapol2Length) + 8);
+        tail.append('*').append(hex(anonce)).append('*');
+        for (int i = 0; i < exchange.eapol2Length; i++) {
+            appendHex(tail, exchange.eapol2[i]);
+        }
+        tail.append('*').append(messagePair);
+        line(exchange, "WPA*02*" + hex(exchange.mic2) + "*" + mac(exchange.ap) + "*" + mac(exchange.sta) + "*",
+                tail.toString());
+    }
+
+    /**
+     * Emits {@code head + ESSID + tail}, or holds it until the access point's ESSID is known.
+     */
+    private void line(Exchange exchange, String head, String tail) {
+        String essid = essids.get(exchange.ap);
+        if (essid == null) {
+            exchange.pending.add(new String[] {head, tail});
+        } else {
+            emit(head, essid, tail);
+        }
+    }
+
+    private void emit(String head, String essid, String tail) {
+        onLine.accept(head + essid + tail);
+    }
+
+    private Exchange exchange(long ap, long sta) {
+        List<Exchange> list = exchanges.get(ap);
+        if (list == null) {
+            list = new ArrayList<>(2);
+            exchanges.put(ap, list);
+        }
+        for (Exchange exchange : list) {
+            if (exchange.sta == sta) {
+                return exchange;
+            }
+        }
+        Exchange exchange = new Exchange(ap, sta);
+        list.add(exchange);
+        return exchange;
+    }
+
+    private static String mac(long mac) {
+        StringBuilder text = new StringBuilder(12);
+        for (int shift = 40; shift >= 0; shift -= 8) {
+            appendHex(text, (byte) (mac >> shift));
+        }
+        return text.toString();
+    }
+
+    private static String hex(byte[] bytes) {
+        StringBuilder text = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            appendHex(text, b);
+        }
+        return text.toString();
+    }
+
+    private static void appendHex(StringBuilder text, byte b) {
+        text.append(HEX[(b >> 4) & 0xf]).append(HEX[b & 0xf]);
+    }
+
+    /**
+     * The latest messages 1, 2 and 3 between one access point and station. Buffers are reused for every
+     * handshake of the pair.
+     */
+    private static final class Exchange {
+        final long ap;
+        final long sta;
+        final byte[] anonce1 = new byte[EapolKey.NONCE_LENGTH];
+        final byte[] anonce3 = new byte[EapolKey.NONCE_LENGTH];
+        final byte[] eapol2 = new byte[MAX_EAPOL_BYTES];
+        final byte[] mic2 = new byte[EapolKey.MIC_LENGTH];
+        int eapol2Length;
+        long replay1;
+        long replay2;
+        long replay3;
+        long time1;
+        long time2;
+        long time3;
+        boolean has1;
+        boolean has2;
+        boolean has3;
+        boolean pmkidDone;
+        boolean pair00Done;
+        boolean pair02Done;
+        /** Lines waiting for the ESSID, as head and tail. */
+        final List<String[]> pending = new ArrayList<>(0);
+
+        Exchange(long ap, long sta) {
+            this.ap = ap;
+            this.sta = sta;
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package hashkitty.java.capture;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Follows a capture as it is being made, handing every packet to several handlers in turn.
+ * <p>
+ * A remote {@code tcpdump -w -} writes pcap bytes as packets arrive. {@link #run(InputStream)} reads them with
+ * blocking reads, so each packet is decoded as soon as its last byte is in, and passes it to, typically, a
+ * {@link RotatingPcapWriter} and the decoder of a {@link HandshakeScanner}. Everything happens on the reading
+ * thread with a fixed-size buffer: if the handlers fall behind, reading slows down and the transport's own flow
+ * control holds the data back, instead of a queue growing in this process.
+ * </p>
+ */
+public class LiveCapture implements PcapReader.PacketHandler {
+
+    private final PcapReader.PacketHandler[] handlers;
+    private volatile long packets;
+    private volatile long bytes;
+
+    /**
+     * Creates a live capture.
+     *
+     * @param handlers Receive each packet, in this order.
+     */
+    public LiveCapture(PcapReader.PacketHandler... handlers) {
+        this.handlers = handlers;
+    }
+
+    /**
+     * Reads the capture until the stream ends or fails.
+     *
+     * @param in The raw pcap or pcapng bytes.
+     * @return The number of packets read.
+     * @throws IOException If the stream fails or does not carry a capture.
+     */
+    public long run(InputStream in) throws IOException {
+        return PcapReader.read(in, this);
+    }
+
+    @Override
+    public void onPacket(ByteBuffer data, int offset, int length, int linkType, long timestampMicros) {
+        for (PcapReader.PacketHandler handler : handlers) {
+            handler.onPacket(data, offset, length, linkType, timestampMicros);
+        }
+        // Only the reading thread writes these; other threads just read them for rates.
+        packets = packets + 1;
+        bytes = bytes + length;
+    }
+
+    /** @return The number of packets read so far. Safe to call from any thread. */
+    public long getPackets() {
+        return packets;
+    }
+
+    /** @return The number of packet bytes read so far. Safe to call from any thread. */
+    public long getBytes() {
+        return bytes;
+    }
+}
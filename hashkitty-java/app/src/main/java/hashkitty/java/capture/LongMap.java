@@ -0,0 +1,102 @@
+package hashkitty.java.capture;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A hash map from {@code long} keys (MAC addresses) to values, without boxing the key on every lookup.
+ * <p>
+ * Capture decoding looks up the access point of every beacon and EAPOL frame, so a {@code HashMap<Long, V>}
+ * would allocate a {@code Long} per packet. This open-addressing table allocates only when it grows.
+ * </p>
+ *
+ * @param <V> The value type.
+ */
+final class LongMap<V> {
+
+    private long[] keys = new long[64];
+    private Object[] values = new Object[64];
+    private int size;
+
+    V get(long key) {
+        int mask = keys.length - 1;
+        for (int slot = mix(key) & mask; ; slot = (slot + 1) & mask) {
+            Object value = values[slot];
+            if (value == null) {
+                return null;
+            }
+            if (keys[slot] == key) {
+                @SuppressWarnings("unchecked")
+                V found = (V) value;
+                return found;
+            }
+        }
+    }
+
+    /**
+     * Stores a value (which must not be null), replacing any previous one.
+     */
+    void put(long key, V value) {
+        if ((size + 1) * 2 > keys.length) {
+            grow();
+        }
+        int mask = keys.length - 1;
+        for (int slot = mix(key) & mask; ; slot = (slot + 1) & mask) {
+            if (values[slot] == null) {
+                keys[slot] = key;
+                values[slot] = value;
+                size++;
+                return;
+            }
+            if (keys[slot] == key) {
+                values[slot] = value;
+                return;
+            }
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Returns the values, in no particular order.
+     */
+    List<V> values() {
+        List<V> list = new ArrayList<>(size);
+        for (Object value : values) {
+            if (value != null) {
+                @SuppressWarnings("unchecked")
+                V v = (V) value;
+                list.add(v);
+            }
+        }
+        return list;
+    }
+
+    void clear() {
+        Arrays.fill(values, null);
+        size = 0;
+    }
+
+    private void grow() {
+        long[] oldKeys = keys;
+        Object[] oldValues = values;
+        keys = new long[oldKeys.length * 2];
+        values = new Object[oldValues.length * 2];
+        size = 0;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldValues[i] != null) {
+                @SuppressWarnings("unchecked")
+                V v = (V) oldValues[i];
+                put(oldKeys[i], v);
+            }
+        }
+    }
+
+    private static int mix(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
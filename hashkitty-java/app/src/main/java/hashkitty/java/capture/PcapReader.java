@@ -0,0 +1,373 @@
+package hashkitty.java.capture;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Reads the packets of a pcap or pcapng capture without tshark, one callback per packet.
+ * <p>
+ * Files are read through a memory-mapped window that slides forward over the file, and packets are handed to the
+ * {@link PacketHandler} as a position in that window rather than copied out, so reading allocates nothing per
+ * packet and a multi-gigabyte capture is read at the speed the disk delivers it. A capture arriving on a stream
+ * (such as {@code tcpdump -w -} over SSH) is read the same way through a buffer that is compacted as packets are
+ * consumed; see {@link #read(InputStream, PacketHandler)}.
+ * </p>
+ * <p>
+ * Both classic pcap (either byte order, microsecond or nanosecond timestamps) and pcapng (section header,
+ * interface description, enhanced, simple and obsolete packet blocks; several sections and interfaces with
+ * their own link types and timestamp resolutions) are supported. A packet cut off at the end of the input, as in
+ * a capture still being written, ends the read quietly.
+ * </p>
+ */
+public class PcapReader {
+
+    /**
+     * Receives each packet.
+     */
+    public interface PacketHandler {
+        /**
+         * Called once per packet. The bytes are only valid during the call.
+         *
+         * @param data            A buffer holding the packet; read it with absolute gets only.
+         * @param offset          Where the packet starts in {@code data}.
+         * @param length          The captured length.
+         * @param linkType        The link-layer header type (e.g. 127 for radiotap, 105 for raw 802.11).
+         * @param timestampMicros The capture time, in microseconds since the epoch.
+         */
+        void onPacket(ByteBuffer data, int offset, int length, int linkType, long timestampMicros);
+    }
+
+    /** Size of the mapped window over a capture file. */
+    static final int WINDOW_BYTES = 64 << 20;
+
+    /** Initial buffer of a stream reader; grown for larger packets up to {@link #MAX_PACKET_BYTES}. */
+    static final int STREAM_BUFFER_BYTES = 1 << 20;
+
+    /** Largest packet or block accepted; anything claiming more is treated as a corrupt capture. */
+    static final int MAX_PACKET_BYTES = 16 << 20;
+
+    private static final int PCAP_MAGIC_MICROS = 0xa1b2c3d4;
+    private static final int PCAP_MAGIC_NANOS = 0xa1b23c4d;
+    private static final int PCAPNG_SECTION_HEADER = 0x0a0d0d0a;
+    private static final int PCAPNG_BYTE_ORDER_MAGIC = 0x1a2b3c4d;
+    private static final int PCAPNG_INTERFACE_DESCRIPTION = 1;
+    private static final int PCAPNG_OBSOLETE_PACKET = 2;
+    private static final int PCAPNG_SIMPLE_PACKET = 3;
+    private static final int PCAPNG_ENHANCED_PACKET = 6;
+
+    /**
+     * Reads a capture file.
+     *
+     * @param file    The pcap or pcapng file.
+     * @param handler Receives each packet.
+     * @return The number of packets read.
+     * @throws IOException If the file cannot be read or is not a capture.
+     */
+    public static long read(Path file, PacketHandler handler) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return new PcapReader(new MappedSource(channel)).readAll(handler);
+        }
+    }
+
+    /**
+     * Reads a capture from a stream until it ends. Blocks while waiting for data.
+     *
+     * @param in      The stream, positioned at the start of the capture.
+     * @param handler Receives each packet.
+     * @return The number of packets read.
+     * @throws IOException If the stream fails or does not carry a capture.
+     */
+    public static long read(InputStream in, PacketHandler handler) throws IOException {
+        return new PcapReader(new StreamSource(in)).readAll(handler);
+    }
+
+    // ---- Parsing ----
+
+    private final Source source;
+    private ByteOrder order = ByteOrder.BIG_ENDIAN;
+    /** Link type and timestamp units (per second) of each pcapng interface in the current section. */
+    private int[] linkTypes = new int[4];
+    private long[] unitsPerSecond = new long[4];
+    private int interfaceCount;
+
+    private PcapReader(Source source) {
+        this.source = source;
+    }
+
+    private long readAll(PacketHandler handler) throws IOException {
+        if (!source.request(0, 4)) {
+            throw new IOException("Empty capture");
+        }
+        int magic = source.buffer().order(ByteOrder.BIG_ENDIAN).getInt(source.offset(0));
+        if (magic == PCAPNG_SECTION_HEADER) {
+            return readPcapng(handler);
+        }
+        if (magic == PCAP_MAGIC_MICROS || magic == PCAP_MAGIC_NANOS) {
+            order = ByteOrder.BIG_ENDIAN;
+        } else if (Integer.reverseBytes(magic) == PCAP_MAGIC_MICROS || Integer.reverseBytes(magic) == PCAP_MAGIC_NANOS) {
+            order = ByteOrder.LITTLE_ENDIAN;
+            magic = Integer.reverseBytes(magic);
+        } else {
+            throw new IOException("Not a pcap or pcapng capture");
+        }
+        return readPcap(handler, magic == PCAP_MAGIC_NANOS);
+    }
+
+    private long readPcap(PacketHandler handler, boolean nanos) throws IOException {
+        if (!source.request(0, 24)) {
+            throw new IOException("Truncated pcap header");
+        }
+        int linkType = u32(20);
+        long position = 24;
+        long packets = 0;
+        while (source.request(position, 16)) {
+            long seconds = u32(position) & 0xffffffffL;
+            long fraction = u32(position + 4) & 0xffffffffL;
+            int captured = u32(position + 8);
+            if (captured < 0 || captured > MAX_PACKET_BYTES) {
+                throw new IOException("Corrupt pcap record at byte " + position);
+            }
+            if (!source.request(position + 16, captured)) {
+                break;
+            }
+            long micros = seconds * 1_000_000 + (nanos ? fraction / 1000 : fraction);
+            handler.onPacket(source.buffer(), source.offset(position + 16), captured, linkType, micros);
+            packets++;
+            position += 16 + captured;
+        }
+        return packets;
+    }
+
+    private long readPcapng(PacketHandler handler) throws IOException {
+        long position = 0;
+        long packets = 0;
+        while (source.request(position, 12)) {
+            int type = source.buffer().order(ByteOrder.BIG_ENDIAN).getInt(source.offset(position));
+            if (type == PCAPNG_SECTION_HEADER) {
+                // The byte-order magic decides how this section (including its own length) is read.
+                int byteOrderMagic = source.buffer().order(ByteOrder.BIG_ENDIAN).getInt(source.offset(position + 8));
+                if (byteOrderMagic == PCAPNG_BYTE_ORDER_MAGIC) {
+                    order = ByteOrder.BIG_ENDIAN;
+                } else if (Integer.reverseBytes(byteOrderMagic) == PCAPNG_BYTE_ORDER_MAGIC) {
+                    order = ByteOrder.LITTLE_ENDIAN;
+                } else {
+                    throw new IOException("Corrupt pcapng section header at byte " + position);
+                }
+                interfaceCount = 0;
+            } else {
+                type = u32(position);
+            }
+            int blockLength = u32(position + 4);
+            if (blockLength < 12 || blockLength > MAX_PACKET_BYTES || (blockLength & 3) != 0) {
+                throw new IOException("Corrupt pcapng block at byte " + position);
+            }
+            if (!source.request(position, blockLength)) {
+                break;
+            }
+            switch (type) {
+                case PCAPNG_INTERFACE_DESCRIPTION:
+                    addInterface(position, blockLength);
+                    break;
+                case PCAPNG_ENHANCED_PACKET:
+                case PCAPNG_OBSOLETE_PACKET: {
+                    int interfaceId = type == PCAPNG_ENHANCED_PACKET ? u32(position + 8) : u16(position + 8);
+                    int captured = u32(position + 20);
+                    if (interfaceId < interfaceCount && captured >= 0 && captured <= blockLength - 32) {
+                        long timestamp = ((u32(position + 12) & 0xffffffffL) << 32) | (u32(position + 16) & 0xffffffffL);
+                        handler.onPacket(source.buffer(), source.offset(position + 28), captured,
+                                linkTypes[interfaceId], toMicros(timestamp, unitsPerSecond[interfaceId]));
+                        packets++;
+                    }
+                    break;
+                }
+                case PCAPNG_SIMPLE_PACKET: {
+                    int captured = Math.min(u32(position + 8), blockLength - 16);
+                    if (interfaceCount > 0 && captured >= 0) {
+                        handler.onPacket(source.buffer(), source.offset(position + 12), captured, linkTypes[0], 0);
+                        packets++;
+                    }
+                    break;
+                }
+                default:
+                    // Name resolution, statistics, custom blocks: nothing a handshake needs.
+                    break;
+            }
+            position += blockLength;
+        }
+        return packets;
+    }
+
+    /**
+     * Records an interface description block: its link type and its if_tsresol option (microseconds if absent).
+     */
+    private void addInterface(long position, int blockLength) {
+        if (interfaceCount == linkTypes.length) {
+            linkTypes = Arrays.copyOf(linkTypes, interfaceCount * 2);
+            unitsPerSecond = Arrays.copyOf(unitsPerSecond, interfaceCount * 2);
+        }
+        long units = 1_000_000;
+        long option = position + 16;
+        long end = position + blockLength - 4;
+        while (option + 4 <= end) {
+            int code = u16(option);
+            int length = u16(option + 2);
+            if (code == 0) {
+                break;
+            }
+            if (code == 9 && length >= 1) {
+                int resolution = source.buffer().get(source.offset(option + 4)) & 0xff;
+                int exponent = Math.min(resolution & 0x7f, 62);
+                if ((resolution & 0x80) != 0) {
+                    units = 1L << exponent;
+                } else {
+                    units = 1;
+                    for (int i = 0; i < Math.min(exponent, 18); i++) {
+                        units *= 10;
+                    }
+                }
+            }
+            option += 4 + ((length + 3) & ~3);
+        }
+        linkTypes[interfaceCount] = u16(position + 8);
+        unitsPerSecond[interfaceCount] = units;
+        interfaceCount++;
+    }
+
+    private static long toMicros(long timestamp, long unitsPerSecond) {
+        if (unitsPerSecond == 1_000_000) {
+            return timestamp;
+        }
+        long seconds = timestamp / unitsPerSecond;
+        long remainder = timestamp % unitsPerSecond;
+        return seconds * 1_000_000 + remainder * 1_000_000 / unitsPerSecond;
+    }
+
+    private int u32(long position) {
+        return source.buffer().order(order).getInt(source.offset(position));
+    }
+
+    private int u16(long position) {
+        return source.buffer().order(order).getShort(source.offset(position)) & 0xffff;
+    }
+
+    // ---- Sources ----
+
+    /**
+     * A forward-only view of the capture bytes.
+     */
+    private interface Source {
+        /**
+         * Makes {@code length} bytes from {@code position} available in {@link #buffer()}. Positions never move
+         * backwards past the start of the last request.
+         *
+         * @return false if the input ends first.
+         */
+        boolean request(long position, int length) throws IOException;
+
+        /** The buffer holding the requested bytes. */
+        ByteBuffer buffer();
+
+        /** Where a requested file position lies in {@link #buffer()}. */
+        int offset(long position);
+    }
+
+    /**
+     * A window of a file, remapped forward when a request runs past its end.
+     */
+    private static class MappedSource implements Source {
+        private final FileChannel channel;
+        private final long size;
+        private ByteBuffer window;
+        private long windowStart;
+
+        MappedSource(FileChannel channel) throws IOException {
+            this.channel = channel;
+            this.size = channel.size();
+        }
+
+        @Override
+        public boolean request(long position, int length) throws IOException {
+            if (position + length > size) {
+                return false;
+            }
+            if (window == null || position < windowStart || position + length > windowStart + window.capacity()) {
+                long mapLength = Math.min(size - position, Math.max(WINDOW_BYTES, length));
+                window = channel.map(FileChannel.MapMode.READ_ONLY, position, mapLength);
+                windowStart = position;
+            }
+            return true;
+        }
+
+        @Override
+        public ByteBuffer buffer() {
+            return window;
+        }
+
+        @Override
+        public int offset(long position) {
+            return (int) (position - windowStart);
+        }
+    }
+
+    /**
+     * A stream read into a buffer that drops consumed bytes as the reader moves on.
+     */
+    private static class StreamSource implements Source {
+        private final InputStream in;
+        private byte[] bytes = new byte[STREAM_BUFFER_BYTES];
+        private ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        /** Stream position of {@code bytes[0]}. */
+        private long bufferStart;
+        private int filled;
+
+        StreamSource(InputStream in) {
+            this.in = in;
+        }
+
+        @Override
+        public boolean request(long position, int length) throws IOException {
+            long end = position + length;
+            if (end <= bufferStart + filled) {
+                return true;
+            }
+            int keepFrom = (int) (position - bufferStart);
+            if (end - position > bytes.length) {
+                byte[] grown = new byte[(int) Math.min(MAX_PACKET_BYTES + 64L, Math.max(end - position, bytes.length * 2L))];
+                System.arraycopy(bytes, keepFrom, grown, 0, filled - keepFrom);
+                bytes = grown;
+                buffer = ByteBuffer.wrap(bytes);
+            } else if (end > bufferStart + bytes.length) {
+                System.arraycopy(bytes, keepFrom, bytes, 0, filled - keepFrom);
+            } else {
+                keepFrom = 0;
+            }
+            filled -= keepFrom;
+            bufferStart += keepFrom;
+            while (bufferStart + filled < end) {
+                int read = in.read(bytes, filled, bytes.length - filled);
+                if (read < 0) {
+                    return false;
+                }
+                filled += read;
+            }
+            return true;
+        }
+
+        @Override
+        public ByteBuffer buffer() {
+            return buffer;
+        }
+
+        @Override
+        public int offset(long position) {
+            return (int) (position - bufferStart);
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package hashkitty.java.capture;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Writes packets to one classic pcap file (little-endian, microsecond timestamps), the format
+ * {@link RotatingPcapWriter} uses for each of its files.
+ * <p>
+ * The file header is written with the first packet, whose link type the file takes; a classic pcap has only one,
+ * so later packets of another link type are refused.
+ * </p>
+ */
+public class PcapWriter implements Closeable {
+
+    private static final int BUFFER_BYTES = 256 * 1024;
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+    private int linkType = -1;
+    private long packets;
+    private long bytes;
+
+    /**
+     * Creates the file, replacing any file at the path.
+     *
+     * @param file The file.
+     * @throws IOException If it cannot be created.
+     */
+    public PcapWriter(Path file) throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE);
+    }
+
+    /**
+     * Appends a packet.
+     *
+     * @param data            The buffer holding the packet.
+     * @param offset          Where it starts.
+     * @param length          Its length.
+     * @param linkType        Its link type.
+     * @param timestampMicros Its capture time.
+     * @return false if the packet has a different link type than the file and was not written.
+     * @throws IOException If the file cannot be written.
+     */
+    public boolean write(ByteBuffer data, int offset, int length, int linkType, long timestampMicros) throws IOException {
+        if (this.linkType < 0) {
+            this.linkType = linkType;
+            buffer.putInt(0xa1b2c3d4).putShort((short) 2).putShort((short) 4).putInt(0).putInt(0)
+                    .putInt(PcapReader.MAX_PACKET_BYTES).putInt(linkType);
+            bytes = 24;
+        } else if (linkType != this.linkType) {
+            return false;
+        }
+        if (buffer.remaining() < 16 + length) {
+            drain();
+        }
+        buffer.putInt((int) (timestampMicros / 1_000_000))
+                .putInt((int) (timestampMicros % 1_000_000))
+                .putInt(length)
+                .putInt(length);
+        if (length <= buffer.remaining()) {
+            buffer.put(buffer.position(), data, offset, length);
+            buffer.position(buffer.position() + length);
+        } else {
+            drain();
+            channel.write(data.duplicate().limit(offset + length).position(offset));
+        }
+        bytes += 16 + length;
+        packets++;
+        return true;
+    }
+
+    /** @return The number of packets written. */
+    public long getPackets() {
+        return packets;
+    }
+
+    /** @return The size of the file so far, header included. */
+    public long getBytes() {
+        return bytes;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            drain();
+        } finally {
+            channel.close();
+        }
+    }
+
+    private void drain() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+}
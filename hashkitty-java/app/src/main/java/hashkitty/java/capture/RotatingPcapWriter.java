@@ -0,0 +1,196 @@
+package hashkitty.java.capture;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Saves packets to a series of pcap files, starting a new file when the current one is full.
+ * <p>
+ * Files are named {@code <prefix>-<yyyyMMdd-HHmmss-SSS>.pcap} and each is a complete classic pcap (little-endian,
+ * microsecond timestamps) that any tool can open, even while the capture goes on. The oldest files are deleted
+ * beyond the file limit, so a sensor left running for days keeps a bounded amount of disk. A packet with a
+ * different link type than the current file also starts a new file.
+ * </p>
+ * <p>
+ * Packets are copied into one direct buffer and written when it fills up or when {@link #FLUSH_INTERVAL_NANOS}
+ * has passed since the last write, so a quiet capture still reaches the disk within about a second.
+ * </p>
+ */
+public class RotatingPcapWriter implements PcapReader.PacketHandler, Closeable {
+
+    /** Default size at which a file is rolled over. */
+    public static final long DEFAULT_MAX_FILE_BYTES = 64L * 1024 * 1024;
+
+    /** Default number of files kept. */
+    public static final int DEFAULT_MAX_FILES = 50;
+
+    /** Longest a packet waits in the buffer before it is written out. */
+    static final long FLUSH_INTERVAL_NANOS = 1_000_000_000L;
+
+    private static final int BUFFER_BYTES = 256 * 1024;
+    private static final DateTimeFormatter FILE_TIME = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss-SSS");
+
+    private final Path directory;
+    private final String prefix;
+    private final long maxFileBytes;
+    private final int maxFiles;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+
+    private FileChannel channel;
+    private Path currentFile;
+    private int currentLinkType = -1;
+    private long fileBytes;
+    private long lastFlushNanos = System.nanoTime();
+    private long packets;
+
+    /**
+     * Creates a writer. No file is created until the first packet.
+     *
+     * @param directory    Where to write the files (created if missing).
+     * @param prefix       The start of each file name.
+     * @param maxFileBytes Approximate size at which a file is rolled over.
+     * @param maxFiles     How many files to keep; older ones are deleted.
+     * @throws IOException If the directory cannot be created.
+     */
+    public RotatingPcapWriter(Path directory, String prefix, long maxFileBytes, int maxFiles) throws IOException {
+        Files.createDirectories(directory);
+        this.directory = directory;
+        this.prefix = prefix;
+        this.maxFileBytes = maxFileBytes;
+        this.maxFiles = maxFiles;
+    }
+
+    @Override
+    public void onPacket(ByteBuffer data, int offset, int length, int linkType, long timestampMicros) {
+        try {
+            if (channel == null || linkType != currentLinkType || fileBytes >= maxFileBytes) {
+                openNextFile(linkType);
+            }
+            if (buffer.remaining() < 16 + length) {
+                drain();
+            }
+            buffer.putInt((int) (timestampMicros / 1_000_000))
+                    .putInt((int) (timestampMicros % 1_000_000))
+                    .putInt(length)
+                    .putInt(length);
+            if (length <= buffer.remaining()) {
+                buffer.put(buffer.position(), data, offset, length);
+                buffer.position(buffer.position() + length);
+            } else {
+                // Larger than the whole buffer: write the header, then the packet straight from the source.
+                drain();
+                channel.write(data.duplicate().limit(offset + length).position(offset));
+            }
+            fileBytes += 16 + length;
+            packets++;
+            if (System.nanoTime() - lastFlushNanos >= FLUSH_INTERVAL_NANOS) {
+                drain();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            closeFile();
+        }
+    }
+
+    /**
+     * Writes buffered packets to the current file.
+     */
+    public void flush() {
+        try {
+            drain();
+        } catch (IOException e) {
+            e.printStackTrace();
+            closeFile();
+        }
+    }
+
+    /** @return The number of packets written. */
+    public long getPackets() {
+        return packets;
+    }
+
+    /** @return The file being written, or null before the first packet. */
+    public Path getCurrentFile() {
+        return currentFile;
+    }
+
+    @Override
+    public void close() {
+        flush();
+        closeFile();
+    }
+
+    /**
+     * Starts a new file with a pcap header and deletes the oldest ones beyond the file limit.
+     */
+    private void openNextFile(int linkType) throws IOException {
+        if (channel != null) {
+            drain();
+            closeFile();
+        }
+        Path file;
+        // Two rollovers within a millisecond would reuse the name; wait for the next one so names keep sorting by time.
+        while (Files.exists(file = directory.resolve(prefix + "-" + LocalDateTime.now().format(FILE_TIME) + ".pcap"))) {
+            LockSupport.parkNanos(1_000_000);
+        }
+        channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        currentFile = file;
+        currentLinkType = linkType;
+        buffer.putInt(0xa1b2c3d4).putShort((short) 2).putShort((short) 4).putInt(0).putInt(0)
+                .putInt(PcapReader.MAX_PACKET_BYTES).putInt(linkType);
+        fileBytes = 24;
+
+        List<Path> files = listFiles();
+        for (int i = 0; i < files.size() - maxFiles; i++) {
+            Files.deleteIfExists(files.get(i));
+        }
+    }
+
+    /**
+     * Returns this writer's files, oldest first.
+     */
+    List<Path> listFiles() throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, prefix + "-*.pcap")) {
+            for (Path file : stream) {
+                files.add(file);
+            }
+        }
+        Collections.sort(files);
+        return files;
+    }
+
+    private void drain() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining() && channel != null) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+        lastFlushNanos = System.nanoTime();
+    }
+
+    private void closeFile() {
+        buffer.clear();
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            channel = null;
+        }
+    }
+}
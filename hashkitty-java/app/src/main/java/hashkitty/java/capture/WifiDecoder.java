@@ -0,0 +1,362 @@
+package hashkitty.java.capture;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Decodes the 802.11 frames of a capture into the parts a WPA attack needs: network names and EAPOL-Key frames.
+ * <p>
+ * The decoder is a {@link PcapReader.PacketHandler}. It strips the link-layer header (radiotap, PPI, Prism or
+ * none; Ethernet captures taken on an access point also work), then reports:
+ * </p>
+ * <ul>
+ *     <li>the ESSID announced in beacons and probe responses, and named in (re)association requests, through
+ *     {@link Listener#onNetwork};</li>
+ *     <li>every EAPOL-Key frame of a pairwise handshake through {@link Listener#onEapolKey}, with the access point
+ *     and station worked out from the frame's direction and the message number from its key information.</li>
+ * </ul>
+ * <p>
+ * Nothing is allocated per packet: fields are read in place and EAPOL-Key frames are described by one reused
+ * {@link EapolKey}. Encrypted and malformed frames are skipped.
+ * </p>
+ */
+public class WifiDecoder implements PcapReader.PacketHandler {
+
+    /**
+     * Receives what the decoder finds. Buffers and the {@link EapolKey} are only valid during the call.
+     */
+    public interface Listener {
+        /**
+         * Called for each frame that names a network.
+         *
+         * @param bssid           The access point's MAC address in the low 48 bits.
+         * @param data            The buffer holding the ESSID.
+         * @param essidOffset     Where the ESSID starts.
+         * @param essidLength     Its length, 1 to 32 bytes (hidden networks are not reported).
+         * @param timestampMicros The capture time.
+         */
+        void onNetwork(long bssid, ByteBuffer data, int essidOffset, int essidLength, long timestampMicros);
+
+        /**
+         * Called for each EAPOL-Key frame of a pairwise handshake.
+         *
+         * @param key The frame.
+         */
+        void onEapolKey(EapolKey key);
+    }
+
+    public static final int LINKTYPE_ETHERNET = 1;
+    public static final int LINKTYPE_IEEE802_11 = 105;
+    public static final int LINKTYPE_PRISM = 119;
+    public static final int LINKTYPE_RADIOTAP = 127;
+    public static final int LINKTYPE_PPI = 192;
+
+    private static final int ETHERTYPE_EAPOL = 0x888e;
+    private static final int EAPOL_KEY = 3;
+    private static final int DESCRIPTOR_RSN = 2;
+    private static final int DESCRIPTOR_WPA = 254;
+
+    private final Listener listener;
+    private final EapolKey key = new EapolKey();
+    private long frames;
+    private long eapolFrames;
+
+    /**
+     * Creates a decoder.
+     *
+     * @param listener Receives networks and EAPOL-Key frames.
+     */
+    public WifiDecoder(Listener listener) {
+        this.listener = listener;
+    }
+
+    /** @return The number of packets seen. */
+    public long getFrames() {
+        return frames;
+    }
+
+    /** @return The number of EAPOL-Key frames reported. */
+    public long getEapolFrames() {
+        return eapolFrames;
+    }
+
+    @Override
+    public void onPacket(ByteBuffer data, int offset, int length, int linkType, long timestampMicros) {
+        frames++;
+        int end = offset + length;
+        switch (linkType) {
+            case LINKTYPE_IEEE802_11:
+                decode80211(data, offset, end, timestampMicros);
+                break;
+            case LINKTYPE_RADIOTAP:
+                decodeRadiotap(data, offset, end, timestampMicros);
+                break;
+            case LINKTYPE_PPI:
+                if (length >= 8) {
+                    int headerLength = u16le(data, offset + 2);
+                    if (headerLength <= length && u32le(data, offset + 4) == LINKTYPE_IEEE802_11) {
+                        decode80211(data, offset + headerLength, end, timestampMicros);
+                    }
+                }
+                break;
+            case LINKTYPE_PRISM:
+                if (length >= 8) {
+                    int headerLength = u32le(data, offset + 4);
+                    if (headerLength > 0 && headerLength <= length) {
+                        decode80211(data, offset + headerLength, end, timestampMicros);
+                    }
+                }
+                break;
+            case LINKTYPE_ETHERNET:
+                decodeEthernet(data, offset, end, timestampMicros);
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Skips a radiotap header, dropping the trailing FCS if the flags field says one is present.
+     */
+    private void decodeRadiotap(ByteBuffer data, int offset, int end, long timestampMicros) {
+        if (end - offset < 8) {
+            return;
+        }
+        int headerLength = u16le(data, offset + 2);
+        if (headerLength < 8 || offset + headerLength > end) {
+            return;
+        }
+        int firstPresent = u32le(data, offset + 4);
+        // Extended presence bitmaps follow while bit 31 is set; fields start after the last one.
+        int field = offset + 8;
+        int present = firstPresent;
+        while ((present & 0x80000000) != 0 && field + 4 <= offset + headerLength) {
+            present = u32le(data, field);
+            field += 4;
+        }
+        if ((firstPresent & 1) != 0) {
+            // TSFT: 8 bytes, 8-byte aligned relative to the header start.
+            field = offset + ((field - offset + 7) & ~7) + 8;
+        }
+        if ((firstPresent & 2) != 0 && field < offset + headerLength) {
+            int flags = data.get(field) & 0xff;
+            if ((flags & 0x40) != 0) {
+                return; // Failed FCS check.
+            }
+            if ((flags & 0x10) != 0) {
+                end -= 4;
+            }
+        }
+        decode80211(data, offset + headerLength, end, timestampMicros);
+    }
+
+    private void decode80211(ByteBuffer data, int offset, int end, long timestampMicros) {
+        if (end - offset < 24) {
+            return;
+        }
+        int frameControl = u16le(data, offset);
+        int type = (frameControl >> 2) & 3;
+        int subtype = (frameControl >> 4) & 0xf;
+        int flags = frameControl >> 8;
+        if (type == 0) {
+            decodeManagement(data, offset, end, subtype, timestampMicros);
+        } else if (type == 2) {
+            if ((flags & 0x40) != 0 || (subtype & 0x4) != 0) {
+                return; // Protected, or a null-data frame without a body.
+            }
+            boolean toDs = (flags & 1) != 0;
+            boolean fromDs = (flags & 2) != 0;
+            int header = toDs && fromDs ? 30 : 24;
+            if ((subtype & 0x8) != 0) {
+                header += 2; // QoS control
+                if ((flags & 0x80) != 0) {
+                    header += 4; // HT control
+                }
+            }
+            int llc = offset + header;
+            if (llc + 8 > end || data.get(llc) != (byte) 0xaa || data.get(llc + 1) != (byte) 0xaa
+                    || data.get(llc + 2) != 3 || u16be(data, llc + 6) != ETHERTYPE_EAPOL) {
+                return;
+            }
+            long addr1 = mac(data, offset + 4);
+            long addr2 = mac(data, offset + 10);
+            long ap;
+            long sta;
+            if (fromDs && !toDs) {
+                ap = addr2;
+                sta = addr1;
+            } else if (toDs && !fromDs) {
+                ap = addr1;
+                sta = addr2;
+            } else {
+                // Ad hoc or WDS: fall back to the direction implied by the message number.
+                ap = -1;
+                sta = -1;
+            }
+            decodeEapol(data, llc + 8, end, ap, sta, addr2, addr1, timestampMicros);
+        }
+    }
+
+    private void decodeManagement(ByteBuffer data, int offset, int end, int subtype, long timestampMicros) {
+        int fixed;
+        switch (subtype) {
+            case 0: fixed = 4; break;   // Association request
+            case 2: fixed = 10; break;  // Reassociation request
+            case 5:                     // Probe response
+            case 8: fixed = 12; break;  // Beacon
+            default: return;
+        }
+        long bssid = mac(data, offset + 16);
+        int element = offset + 24 + fixed;
+        while (element + 2 <= end) {
+            int id = data.get(element) & 0xff;
+            int length = data.get(element + 1) & 0xff;
+            if (element + 2 + length > end) {
+                return;
+            }
+            if (id == 0) {
+                if (length > 0 && length <= 32 && !allZero(data, element + 2, length)) {
+                    listener.onNetwork(bssid, data, element + 2, length, timestampMicros);
+                }
+                return;
+            }
+            element += 2 + length;
+        }
+    }
+
+    private void decodeEthernet(ByteBuffer data, int offset, int end, long timestampMicros) {
+        if (end - offset < 14 || u16be(data, offset + 12) != ETHERTYPE_EAPOL) {
+            return;
+        }
+        decodeEapol(data, offset + 14, end, -1, -1, mac(data, offset + 6), mac(data, offset), timestampMicros);
+    }
+
+    /**
+     * Decodes an EAPOL frame and reports it if it is a pairwise EAPOL-Key frame.
+     *
+     * @param ap     The access point, or -1 if the frame does not say.
+     * @param sta    The station, or -1 if the frame does not say.
+     * @param source The transmitter, used when the direction is unknown.
+     * @param target The receiver, used when the direction is unknown.
+     */
+    private void decodeEapol(ByteBuffer data, int offset, int end, long ap, long sta, long source, long target,
+                             long timestampMicros) {
+        if (offset + EapolKey.KEY_DATA_OFFSET > end || data.get(offset + 1) != EAPOL_KEY) {
+            return;
+        }
+        int frameLength = 4 + u16be(data, offset + 2);
+        int descriptor = data.get(offset + 4) & 0xff;
+        if (frameLength < EapolKey.KEY_DATA_OFFSET || offset + frameLength > end
+                || (descriptor != DESCRIPTOR_RSN && descriptor != DESCRIPTOR_WPA)) {
+            return;
+        }
+        int keyInfo = u16be(data, offset + EapolKey.KEY_INFO_OFFSET);
+        if ((keyInfo & EapolKey.KEY_INFO_PAIRWISE) == 0) {
+            return; // Group key handshake
+        }
+        int keyDataLength = u16be(data, offset + EapolKey.KEY_DATA_LENGTH_OFFSET);
+        if (EapolKey.KEY_DATA_OFFSET + keyDataLength > frameLength) {
+            return;
+        }
+        boolean ack = (keyInfo & EapolKey.KEY_INFO_ACK) != 0;
+        boolean mic = (keyInfo & EapolKey.KEY_INFO_MIC) != 0;
+        key.data = data;
+        key.frameOffset = offset;
+        key.frameLength = frameLength;
+        key.keyInfo = keyInfo;
+        key.timestampMicros = timestampMicros;
+        if (ack) {
+            key.message = mic ? 3 : 1;
+        } else if (!mic) {
+            return;
+        } else if ((keyInfo & EapolKey.KEY_INFO_SECURE) != 0 || key.isNonceZero()) {
+            key.message = 4;
+        } else {
+            key.message = 2;
+        }
+        if (ap < 0) {
+            // Messages 1 and 3 come from the access point, 2 and 4 from the station.
+            boolean fromAp = ack;
+            ap = fromAp ? source : target;
+            sta = fromAp ? target : source;
+        }
+        key.ap = ap;
+        key.sta = sta;
+        key.pmkidOffset = key.message == 1 ? findPmkid(data, offset + EapolKey.KEY_DATA_OFFSET, keyDataLength) : -1;
+        eapolFrames++;
+        listener.onEapolKey(key);
+    }
+
+    /**
+     * Looks for a PMKID key data element (vendor element 00:0f:ac, data type 4) that is not all zeroes.
+     *
+     * @return Where the PMKID starts, or -1.
+     */
+    private static int findPmkid(ByteBuffer data, int offset, int length) {
+        int end = offset + length;
+        int element = offset;
+        while (element + 2 <= end) {
+            int id = data.get(element) & 0xff;
+            int elementLength = data.get(element + 1) & 0xff;
+            if (element + 2 + elementLength > end) {
+                return -1;
+            }
+            if (id == 0xdd && elementLength >= 4 + EapolKey.PMKID_LENGTH
+                    && data.get(element + 2) == 0x00 && data.get(element + 3) == 0x0f
+                    && data.get(element + 4) == (byte) 0xac && data.get(element + 5) == 4
+                    && !allZero(data, element + 6, EapolKey.PMKID_LENGTH)) {
+                return element + 6;
+            }
+            element += 2 + elementLength;
+        }
+        return -1;
+    }
+
+    // ---- Byte helpers; fields are read byte by byte so the capture's byte order never matters ----
+
+    static int u16le(ByteBuffer data, int offset) {
+        return (data.get(offset) & 0xff) | (data.get(offset + 1) & 0xff) << 8;
+    }
+
+    static int u16be(ByteBuffer data, int offset) {
+        return (data.get(offset) & 0xff) << 8 | (data.get(offset + 1) & 0xff);
+    }
+
+    static int u32le(ByteBuffer data, int offset) {
+        return u16le(data, offset) | u16le(data, offset + 2) << 16;
+    }
+
+    static long mac(ByteBuffer data, int offset) {
+        long value = 0;
+        for (int i = 0; i < 6; i++) {
+            value = (value << 8) | (data.get(offset + i) & 0xff);
+        }
+        return value;
+    }
+
+    private static boolean allZero(ByteBuffer data, int offset, int length) {
+        for (int i = 0; i < length; i++) {
+            if (data.get(offset + i) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Formats a MAC address held in the low 48 bits of a long.
+     *
+     * @param mac The address.
+     * @return The address as {@code aa:bb:cc:dd:ee:ff}.
+     */
+    public static String formatMac(long mac) {
+        StringBuilder text = new StringBuilder(17);
+        for (int shift = 40; shift >= 0; shift -= 8) {
+            int octet = (int) (mac >> shift) & 0xff;
+            if (text.length() > 0) {
+                text.append(':');
+            }
+            text.append(Character.forDigit(octet >> 4, 16)).append(Character.forDigit(octet & 0xf, 16));
+        }
+        return text.toString();
+    }
+}
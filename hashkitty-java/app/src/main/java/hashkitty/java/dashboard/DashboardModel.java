@@ -0,0 +1,263 @@
+package hashkitty.java.dashboard;
+
+import hashkitty.java.events.JobEvent;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+
+/**
+ * The numbers behind the dashboard: per-job progress, ETA, recovered digests, crack rate, and per-device hash
+ * rate history.
+ * <p>
+ * Subscribe the model to a {@link hashkitty.java.events.JobEventBus}; it records every event in constant time
+ * and bounded memory per job (see {@link DownsampledSeries}), and the view reads it on its own refresh timer.
+ * All methods are thread-safe.
+ * </p>
+ */
+public class DashboardModel implements Consumer<JobEvent> {
+
+    /** Hash-rate history kept per device (chart points). */
+    static final int SERIES_CAPACITY = 240;
+
+    /** Width of a hash-rate bucket before the series starts coarsening. Hashcat reports every 5 seconds. */
+    static final long SERIES_BUCKET_MILLIS = 5_000;
+
+    /** A running device with no speed report for this long is shown as stalled. */
+    static final long STALL_AFTER_MILLIS = 60_000;
+
+    /** Below this fraction of its peak speed, a device is flagged as throttling. */
+    static final double THROTTLE_RATIO = 0.8;
+
+    /** Jobs by ID, in start order. Guarded by {@code this}. */
+    private final Map<String, JobStats> jobs = new LinkedHashMap<>();
+
+    /** Events published without a job ID (e.g. by a parser used on its own) are filed under this key. */
+    private static final String UNKNOWN_JOB = "-";
+
+    @Override
+    public void accept(JobEvent event) {
+        jobFor(event.getJobId(), event.getTime()).record(event);
+    }
+
+    private synchronized JobStats jobFor(String jobId, long time) {
+        return jobs.computeIfAbsent(jobId != null ? jobId : UNKNOWN_JOB, id -> new JobStats(id, time));
+    }
+
+    /**
+     * Returns the IDs of every job seen, oldest first.
+     *
+     * @return The job IDs.
+     */
+    public synchronized List<String> getJobIds() {
+        return new ArrayList<>(jobs.keySet());
+    }
+
+    /**
+     * Returns a job's statistics.
+     *
+     * @param jobId The job ID.
+     * @return The statistics, or null if the job is unknown.
+     */
+    public synchronized JobStats getJob(String jobId) {
+        return jobs.get(jobId);
+    }
+
+    /**
+     * Returns the most recently started job.
+     *
+     * @return The statistics, or null if no job has reported yet.
+     */
+    public synchronized JobStats getLatestJob() {
+        JobStats latest = null;
+        for (JobStats job : jobs.values()) {
+            latest = job;
+        }
+        return latest;
+    }
+
+    /**
+     * Everything known about one job.
+     */
+    public static class JobStats {
+
+        private final String jobId;
+        private final long startTime;
+        private long endTime;
+
+        private long progressDone;
+        private long progressTotal;
+        private long lastProgressTime;
+        /** Smoothed keyspace rate in candidates per millisecond, for the ETA. */
+        private double progressRate;
+
+        private long recovered;
+        private long recoveredTotal;
+        private long cracked;
+
+        /** Cracks per second over the last minute: counts[i] belongs to second seconds[i]. */
+        private final long[] crackSeconds = new long[60];
+        private final int[] crackCounts = new int[60];
+
+        private final Map<String, DeviceStats> devices = new TreeMap<>();
+
+        JobStats(String jobId, long startTime) {
+            this.jobId = jobId;
+            this.startTime = startTime;
+        }
+
+        synchronized void record(JobEvent event) {
+            switch (event.getKind()) {
+                case FINISHED:
+                    endTime = event.getTime();
+                    break;
+                case SPEED:
+                    devices.computeIfAbsent(event.getDevice(), DeviceStats::new).record(event.getTime(), event.getValue());
+                    break;
+                case PROGRESS:
+                    recordProgress(event.getTime(), event.getDone(), event.getTotal());
+                    break;
+                case RECOVERED:
+                    recovered = event.getDone();
+                    recoveredTotal = event.getTotal();
+                    break;
+                case CRACKED:
+                    cracked++;
+                    long second = event.getTime() / 1000;
+                    int slot = (int) (second % crackSeconds.length);
+                    if (crackSeconds[slot] != second) {
+                        crackSeconds[slot] = second;
+                        crackCounts[slot] = 0;
+                    }
+                    crackCounts[slot]++;
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        private void recordProgress(long time, long done, long total) {
+            if (lastProgressTime > 0 && time > lastProgressTime && done >= progressDone) {
+                double rate = (double) (done - progressDone) / (time - lastProgressTime);
+                // Smooth over the last few status blocks so one slow interval does not swing the ETA.
+                progressRate = progressRate == 0 ? rate : 0.3 * rate + 0.7 * progressRate;
+            }
+            progressDone = done;
+            progressTotal = total;
+            lastProgressTime = time;
+        }
+
+        public String getJobId() { return jobId; }
+        public long getStartTime() { return startTime; }
+        public synchronized boolean isRunning() { return endTime == 0; }
+        public synchronized long getEndTime() { return endTime; }
+        public synchronized long getProgressDone() { return progressDone; }
+        public synchronized long getProgressTotal() { return progressTotal; }
+        public synchronized long getRecovered() { return recovered; }
+        public synchronized long getRecoveredTotal() { return recoveredTotal; }
+        public synchronized long getCracked() { return cracked; }
+
+        /**
+         * Returns the keyspace progress.
+         *
+         * @return Between 0 and 1, or 0 before the first report.
+         */
+        public synchronized double getProgress() {
+            return progressTotal > 0 ? (double) progressDone / progressTotal : 0;
+        }
+
+        /**
+         * Estimates the time left from the recent keyspace rate.
+         *
+         * @return Milliseconds remaining, or -1 if unknown (no rate yet, or the job has ended).
+         */
+        public synchronized long getEtaMillis() {
+            if (endTime != 0 || progressRate <= 0 || progressTotal <= 0) {
+                return -1;
+            }
+            return (long) ((progressTotal - progressDone) / progressRate);
+        }
+
+        /**
+         * Returns the passwords cracked in the minute before a moment.
+         *
+         * @param now The moment, in epoch milliseconds.
+         * @return Cracks in the last 60 seconds.
+         */
+        public synchronized int getCracksPerMinute(long now) {
+            long second = now / 1000;
+            int total = 0;
+            for (int i = 0; i < crackSeconds.length; i++) {
+                if (crackSeconds[i] > second - crackSeconds.length && crackSeconds[i] <= second) {
+                    total += crackCounts[i];
+                }
+            }
+            return total;
+        }
+
+        /**
+         * Returns the devices that reported a speed, in name order ({@code "*"}, the total, first).
+         *
+         * @return The devices.
+         */
+        public synchronized List<DeviceStats> getDevices() {
+            return new ArrayList<>(devices.values());
+        }
+    }
+
+    /**
+     * Hash rate history and health of one device in one job.
+     */
+    public static class DeviceStats {
+
+        private final String device;
+        private final DownsampledSeries series = new DownsampledSeries(SERIES_CAPACITY, SERIES_BUCKET_MILLIS);
+        private double current;
+        private double peak;
+        private long lastTime;
+
+        DeviceStats(String device) {
+            this.device = device;
+        }
+
+        synchronized void record(long time, double hashesPerSecond) {
+            series.add(time, hashesPerSecond);
+            current = hashesPerSecond;
+            peak = Math.max(peak, hashesPerSecond);
+            lastTime = time;
+        }
+
+        /**
+         * Returns the device name: hashcat's device number, or {@code "*"} for the sum over all devices.
+         *
+         * @return The device name.
+         */
+        public String getDevice() { return device; }
+        public DownsampledSeries getSeries() { return series; }
+        public synchronized double getCurrent() { return current; }
+        public synchronized double getPeak() { return peak; }
+        public synchronized long getLastTime() { return lastTime; }
+
+        /**
+         * Checks whether a device of a running job has stopped making progress.
+         *
+         * @param now The current time, in epoch milliseconds.
+         * @return true if it reports no speed, or has not reported for {@link #STALL_AFTER_MILLIS}.
+         */
+        public synchronized boolean isStalled(long now) {
+            return current <= 0 || now - lastTime > STALL_AFTER_MILLIS;
+        }
+
+        /**
+         * Checks whether a device runs well below its own peak, as thermal throttling does.
+         *
+         * @return true if the current speed is under {@link #THROTTLE_RATIO} of the peak.
+         */
+        public synchronized boolean isThrottled() {
+            return peak > 0 && current > 0 && current < peak * THROTTLE_RATIO;
+        }
+    }
+}
@@ -0,0 +1,242 @@
+package hashkitty.java.dashboard;
+
+import javafx.animation.KeyFrame;
+import javafx.animation.Timeline;
+import javafx.geometry.Insets;
+import javafx.geometry.Pos;
+import javafx.scene.chart.LineChart;
+import javafx.scene.chart.NumberAxis;
+import javafx.scene.chart.XYChart;
+import javafx.scene.control.ChoiceBox;
+import javafx.scene.control.Label;
+import javafx.scene.control.ProgressBar;
+import javafx.scene.layout.HBox;
+import javafx.scene.layout.Priority;
+import javafx.scene.layout.VBox;
+import javafx.util.Duration;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * The dashboard tab: progress, ETA, recovered digests and crack rate of a job, a hash-rate chart per device,
+ * and a health line per device that flags stalls and throttling.
+ * <p>
+ * The view redraws from the {@link DashboardModel} once per second on the FX thread, however often Hashcat
+ * reports. The chart holds at most {@link DashboardModel#SERIES_CAPACITY} points per device, so redrawing costs
+ * the same at hour twelve as at minute one. The most recent job is shown until the user picks another one.
+ * </p>
+ */
+public class DashboardView {
+
+    private static final String[] RATE_UNITS = {"H/s", "kH/s", "MH/s", "GH/s", "TH/s", "PH/s"};
+    private static final String OK_STYLE = "";
+    private static final String WARNING_STYLE = "-fx-text-fill: #E0A030;";
+    private static final String ERROR_STYLE = "-fx-text-fill: #E05050;";
+
+    private final DashboardModel model;
+    private final ChoiceBox<String> jobChoice = new ChoiceBox<>();
+    private final ProgressBar progressBar = new ProgressBar(0);
+    private final Label progressLabel = new Label("No job yet.");
+    private final Label resultsLabel = new Label();
+    private final NumberAxis timeAxis = new NumberAxis();
+    private final NumberAxis rateAxis = new NumberAxis();
+    private final LineChart<Number, Number> rateChart = new LineChart<>(timeAxis, rateAxis);
+    private final VBox deviceBox = new VBox(2);
+    private final VBox node;
+    private final Timeline refreshTimeline = new Timeline(new KeyFrame(Duration.seconds(1), e -> refresh()));
+
+    /** Chart series per device of the job on screen. */
+    private final Map<String, XYChart.Series<Number, Number>> chartSeries = new HashMap<>();
+    /** The job the chart series belong to. */
+    private String chartedJobId;
+    /** Whether the user picked a job; if not, the newest job is followed. */
+    private boolean jobPinned;
+    /** Set while the job list is refreshed, so the selection listener can tell the user's picks from ours. */
+    private boolean updatingJobs;
+
+    /**
+     * Builds the dashboard. Call {@link #start()} to begin refreshing.
+     *
+     * @param model The model fed by the job event bus.
+     */
+    public DashboardView(DashboardModel model) {
+        this.model = model;
+
+        jobChoice.valueProperty().addListener((obs, oldValue, newValue) -> {
+            if (!updatingJobs) {
+                jobPinned = true;
+                refresh();
+            }
+        });
+        progressBar.setMaxWidth(Double.MAX_VALUE);
+        HBox.setHgrow(progressBar, Priority.ALWAYS);
+
+        timeAxis.setLabel("Minutes since start");
+        timeAxis.setForceZeroInRange(true);
+        rateAxis.setLabel("Hash rate");
+        rateChart.setAnimated(false);
+        rateChart.setCreateSymbols(false);
+        rateChart.setLegendVisible(true);
+        VBox.setVgrow(rateChart, Priority.ALWAYS);
+
+        HBox jobRow = new HBox(10, new Label("Job:"), jobChoice, progressBar);
+        jobRow.setAlignment(Pos.CENTER_LEFT);
+        node = new VBox(8, jobRow, progressLabel, resultsLabel, rateChart, new Label("Devices"), deviceBox);
+        node.setPadding(new Insets(10));
+    }
+
+    /**
+     * Returns the panel to place in the scene.
+     *
+     * @return The root node.
+     */
+    public VBox getNode() {
+        return node;
+    }
+
+    /**
+     * Starts refreshing once per second.
+     */
+    public void start() {
+        refreshTimeline.setCycleCount(Timeline.INDEFINITE);
+        refreshTimeline.play();
+    }
+
+    /**
+     * Stops refreshing.
+     */
+    public void stop() {
+        refreshTimeline.stop();
+    }
+
+    /**
+     * Redraws everything from the model.
+     */
+    private void refresh() {
+        List<String> jobIds = model.getJobIds();
+        if (!jobChoice.getItems().equals(jobIds)) {
+            updatingJobs = true;
+            String selected = jobChoice.getValue();
+            jobChoice.getItems().setAll(jobIds);
+            jobChoice.setValue(jobPinned && jobIds.contains(selected) ? selected : null);
+            updatingJobs = false;
+        }
+        DashboardModel.JobStats job = jobPinned && jobChoice.getValue() != null
+                ? model.getJob(jobChoice.getValue()) : model.getLatestJob();
+        if (job == null) {
+            return;
+        }
+        if (!jobPinned && !job.getJobId().equals(jobChoice.getValue())) {
+            updatingJobs = true;
+            jobChoice.setValue(job.getJobId());
+            updatingJobs = false;
+        }
+        long now = System.currentTimeMillis();
+        showSummary(job, now);
+        showChart(job);
+        showDevices(job, now);
+    }
+
+    private void showSummary(DashboardModel.JobStats job, long now) {
+        progressBar.setProgress(job.getProgress());
+        String state;
+        if (!job.isRunning()) {
+            state = "Finished after " + formatDuration(job.getEndTime() - job.getStartTime());
+        } else {
+            long eta = job.getEtaMillis();
+            state = "Running for " + formatDuration(now - job.getStartTime())
+                    + (eta >= 0 ? ", about " + formatDuration(eta) + " left" : "");
+        }
+        progressLabel.setText(String.format(Locale.ROOT, "Progress %.2f%% (%,d / %,d)  -  %s",
+                job.getProgress() * 100, job.getProgressDone(), job.getProgressTotal(), state));
+        resultsLabel.setText(String.format(Locale.ROOT, "Recovered %,d / %,d  -  %d cracks in the last minute  -  %,d cracked in total",
+                job.getRecovered(), job.getRecoveredTotal(), job.getCracksPerMinute(now), job.getCracked()));
+    }
+
+    private void showChart(DashboardModel.JobStats job) {
+        if (!job.getJobId().equals(chartedJobId)) {
+            rateChart.getData().clear();
+            chartSeries.clear();
+            chartedJobId = job.getJobId();
+        }
+        List<DashboardModel.DeviceStats> devices = job.getDevices();
+        double peak = 0;
+        for (DashboardModel.DeviceStats device : devices) {
+            peak = Math.max(peak, device.getPeak());
+        }
+        int unit = rateUnit(peak);
+        double divisor = Math.pow(1000, unit);
+        rateAxis.setLabel("Hash rate (" + RATE_UNITS[unit] + ")");
+
+        for (DashboardModel.DeviceStats device : devices) {
+            XYChart.Series<Number, Number> series = chartSeries.get(device.getDevice());
+            if (series == null) {
+                series = new XYChart.Series<>();
+                series.setName(deviceName(device.getDevice()));
+                chartSeries.put(device.getDevice(), series);
+                rateChart.getData().add(series);
+            }
+            DownsampledSeries.Snapshot snapshot = device.getSeries().snapshot();
+            List<XYChart.Data<Number, Number>> points = new ArrayList<>(snapshot.times.length);
+            for (int i = 0; i < snapshot.times.length; i++) {
+                points.add(new XYChart.Data<>((snapshot.times[i] - job.getStartTime()) / 60_000.0, snapshot.values[i] / divisor));
+            }
+            series.getData().setAll(points);
+        }
+    }
+
+    private void showDevices(DashboardModel.JobStats job, long now) {
+        List<Label> lines = new ArrayList<>();
+        for (DashboardModel.DeviceStats device : job.getDevices()) {
+            String health;
+            String style;
+            if (job.isRunning() && device.isStalled(now)) {
+                health = "STALLED";
+                style = ERROR_STYLE;
+            } else if (job.isRunning() && device.isThrottled()) {
+                health = String.format(Locale.ROOT, "%.0f%% of peak, possibly throttling", device.getCurrent() / device.getPeak() * 100);
+                style = WARNING_STYLE;
+            } else {
+                health = "OK";
+                style = OK_STYLE;
+            }
+            Label line = new Label(deviceName(device.getDevice()) + ": " + formatRate(device.getCurrent())
+                    + " (peak " + formatRate(device.getPeak()) + ")  " + health);
+            line.setStyle(style);
+            lines.add(line);
+        }
+        deviceBox.getChildren().setAll(lines);
+    }
+
+    private static String deviceName(String device) {
+        return "*".equals(device) ? "All devices" : "Device #" + device;
+    }
+
+    private static int rateUnit(double hashesPerSecond) {
+        int unit = 0;
+        while (hashesPerSecond >= 1000 && unit < RATE_UNITS.length - 1) {
+            hashesPerSecond /= 1000;
+            unit++;
+        }
+        return unit;
+    }
+
+    private static String formatRate(double hashesPerSecond) {
+        int unit = rateUnit(hashesPerSecond);
+        return String.format(Locale.ROOT, "%.2f %s", hashesPerSecond / Math.pow(1000, unit), RATE_UNITS[unit]);
+    }
+
+    private static String formatDuration(long millis) {
+        long seconds = Math.max(0, millis / 1000);
+        if (seconds < 60) return seconds + "s";
+        long minutes = seconds / 60;
+        if (minutes < 60) return minutes + "m " + (seconds % 60) + "s";
+        long hours = minutes / 60;
+        if (hours < 48) return hours + "h " + (minutes % 60) + "m";
+        return (hours / 24) + "d " + (hours % 24) + "h";
+    }
+}
@@ -0,0 +1,131 @@
+package hashkitty.java.dashboard;
+
+/**
+ * A time series of bounded size that always covers its whole history, at a resolution that coarsens as it grows.
+ * <p>
+ * Samples are averaged into buckets of {@code bucketMillis}. The buckets live in fixed arrays of
+ * {@code capacity} entries; when they fill up, neighbouring buckets are merged pairwise and the bucket width
+ * doubles. A twelve-hour run therefore costs the same memory, and the same number of chart points, as a
+ * one-minute run: the first minutes are simply shown at a coarser resolution. Unlike a ring buffer that drops
+ * the oldest samples, the start of the run (and the speed the devices had before they heated up) stays visible.
+ * </p>
+ * <p>
+ * Thread-safe: samples are added by the Hashcat output reader while the UI takes snapshots.
+ * </p>
+ */
+public class DownsampledSeries {
+
+    /**
+     * A copy of the series at one moment, for rendering.
+     */
+    public static class Snapshot {
+        /** Bucket start times, in epoch milliseconds, oldest first. */
+        public final long[] times;
+        /** The average of the samples in each bucket. */
+        public final double[] values;
+
+        Snapshot(long[] times, double[] values) {
+            this.times = times;
+            this.values = values;
+        }
+    }
+
+    private final long[] times;
+    private final double[] sums;
+    private final int[] counts;
+    private int size;
+    private long bucketMillis;
+
+    /**
+     * Constructs an empty series.
+     *
+     * @param capacity     The most buckets kept (rounded up to an even number).
+     * @param bucketMillis The initial bucket width, in milliseconds.
+     */
+    public DownsampledSeries(int capacity, long bucketMillis) {
+        int even = Math.max(2, capacity + (capacity & 1));
+        this.times = new long[even];
+        this.sums = new double[even];
+        this.counts = new int[even];
+        this.bucketMillis = Math.max(1, bucketMillis);
+    }
+
+    /**
+     * Adds a sample. Samples are expected in time order; a late one is merged into the newest bucket.
+     *
+     * @param time  The sample time, in epoch milliseconds.
+     * @param value The value.
+     */
+    public synchronized void add(long time, double value) {
+        if (size > 0 && time < times[size - 1] + bucketMillis) {
+            sums[size - 1] += value;
+            counts[size - 1]++;
+            return;
+        }
+        if (size == times.length) {
+            compact();
+            // The widened newest bucket may now cover this sample.
+            if (time < times[size - 1] + bucketMillis) {
+                sums[size - 1] += value;
+                counts[size - 1]++;
+                return;
+            }
+        }
+        times[size] = time;
+        sums[size] = value;
+        counts[size] = 1;
+        size++;
+    }
+
+    /**
+     * Merges neighbouring buckets pairwise and doubles the bucket width.
+     */
+    private void compact() {
+        int merged = 0;
+        for (int i = 0; i < size; i += 2) {
+            times[merged] = times[i];
+            sums[merged] = sums[i];
+            counts[merged] = counts[i];
+            if (i + 1 < size) {
+                sums[merged] += sums[i + 1];
+                counts[merged] += counts[i + 1];
+            }
+            merged++;
+        }
+        size = merged;
+        bucketMillis *= 2;
+    }
+
+    /**
+     * Copies the current buckets.
+     *
+     * @return The snapshot.
+     */
+    public synchronized Snapshot snapshot() {
+        long[] snapshotTimes = new long[size];
+        double[] values = new double[size];
+        for (int i = 0; i < size; i++) {
+            snapshotTimes[i] = times[i];
+            values[i] = sums[i] / counts[i];
+        }
+        return new Snapshot(snapshotTimes, values);
+    }
+
+    /**
+     * Returns the number of buckets.
+     *
+     * @return The size.
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Returns the current bucket width.
+     *
+     * @return The width in milliseconds.
+     */
+    public synchronized long getBucketMillis() {
+        return bucketMillis;
+    }
+}
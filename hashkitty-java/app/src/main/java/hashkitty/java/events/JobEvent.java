@@ -0,0 +1,119 @@
+package hashkitty.java.events;
+
+/**
+ * A typed update about a Hashcat job, published on the {@link JobEventBus}.
+ * <p>
+ * The status callbacks carry human-readable strings; these events carry the numbers behind them (hash rate per
+ * device, keyspace progress, recovered digests) so views can chart them without parsing text.
+ * </p>
+ */
+public class JobEvent {
+
+    /** What the event reports. */
+    public enum Kind {
+        /** A job started. */
+        STARTED,
+        /** A device's hash rate: {@link #getDevice()} and {@link #getValue()} in hashes per second. */
+        SPEED,
+        /** Keyspace progress: {@link #getDone()} of {@link #getTotal()} candidates. */
+        PROGRESS,
+        /** Recovered digests: {@link #getDone()} of {@link #getTotal()} hashes. */
+        RECOVERED,
+        /** One password was cracked: {@link #getHash()}, {@link #getPlain()} and {@link #getMode()}. */
+        CRACKED,
+        /** The job ended. */
+        FINISHED
+    }
+
+    /** Device name hashcat uses for the sum over all devices. */
+    public static final String ALL_DEVICES = "*";
+
+    private final Kind kind;
+    private final String jobId;
+    private final long time;
+    private final String device;
+    private final double value;
+    private final long done;
+    private final long total;
+    private final int mode;
+    private final String hash;
+    private final String plain;
+
+    private JobEvent(Kind kind, String jobId, long time, String device, double value, long done, long total,
+                     int mode, String hash, String plain) {
+        this.kind = kind;
+        this.jobId = jobId;
+        this.time = time;
+        this.device = device;
+        this.value = value;
+        this.done = done;
+        this.total = total;
+        this.mode = mode;
+        this.hash = hash;
+        this.plain = plain;
+    }
+
+    /**
+     * Creates a lifecycle or crack event ({@link Kind#STARTED}, {@link Kind#CRACKED}, {@link Kind#FINISHED}).
+     *
+     * @param kind  The kind.
+     * @param jobId The job.
+     * @param time  When it happened, in epoch milliseconds.
+     * @return The event.
+     */
+    public static JobEvent of(Kind kind, String jobId, long time) {
+        return new JobEvent(kind, jobId, time, null, 0, 0, 0, -1, null, null);
+    }
+
+    /**
+     * Creates a {@link Kind#CRACKED} event.
+     *
+     * @param jobId The job.
+     * @param time  When it was cracked, in epoch milliseconds.
+     * @param mode  The Hashcat hash mode, or -1 if unknown.
+     * @param hash  The hash as Hashcat printed it (everything before the password).
+     * @param plain The password.
+     * @return The event.
+     */
+    public static JobEvent cracked(String jobId, long time, int mode, String hash, String plain) {
+        return new JobEvent(Kind.CRACKED, jobId, time, null, 0, 0, 0, mode, hash, plain);
+    }
+
+    /**
+     * Creates a {@link Kind#SPEED} event.
+     *
+     * @param jobId           The job.
+     * @param time            When it was reported, in epoch milliseconds.
+     * @param device          The device number, or {@link #ALL_DEVICES}.
+     * @param hashesPerSecond The reported rate.
+     * @return The event.
+     */
+    public static JobEvent speed(String jobId, long time, String device, double hashesPerSecond) {
+        return new JobEvent(Kind.SPEED, jobId, time, device, hashesPerSecond, 0, 0, -1, null, null);
+    }
+
+    /**
+     * Creates a {@link Kind#PROGRESS} or {@link Kind#RECOVERED} event.
+     *
+     * @param kind  {@link Kind#PROGRESS} or {@link Kind#RECOVERED}.
+     * @param jobId The job.
+     * @param time  When it was reported, in epoch milliseconds.
+     * @param done  Candidates tried, or digests recovered.
+     * @param total Keyspace size, or number of digests.
+     * @return The event.
+     */
+    public static JobEvent count(Kind kind, String jobId, long time, long done, long total) {
+        return new JobEvent(kind, jobId, time, null, 0, done, total, -1, null, null);
+    }
+
+    public Kind getKind() { return kind; }
+    public String getJobId() { return jobId; }
+    public long getTime() { return time; }
+    public String getDevice() { return device; }
+    public double getValue() { return value; }
+    public long getDone() { return done; }
+    public long getTotal() { return total; }
+    public int getMode() { return mode; }
+    public String getHash() { return hash; }
+    public String getPlain() { return plain; }
+}
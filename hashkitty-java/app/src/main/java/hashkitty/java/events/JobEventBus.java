@@ -0,0 +1,65 @@
+package hashkitty.java.events;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * Delivers {@link JobEvent}s from the Hashcat output reader to whoever displays them.
+ * <p>
+ * Publishing calls every subscriber synchronously on the publisher's thread (the process output reader), so
+ * subscribers must be quick and thread-safe: record the event and return, and leave rendering to their own UI
+ * timer. A subscriber that throws is reported and does not affect the others.
+ * </p>
+ * <p>
+ * Hashcat managers publish to {@link #getDefault()}.
+ * </p>
+ */
+public class JobEventBus {
+
+    private static final JobEventBus DEFAULT = new JobEventBus();
+
+    private final List<Consumer<JobEvent>> subscribers = new CopyOnWriteArrayList<>();
+
+    /**
+     * Returns the bus Hashcat managers publish to.
+     *
+     * @return The default bus.
+     */
+    public static JobEventBus getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * Adds a subscriber.
+     *
+     * @param subscriber Receives every event published from now on.
+     */
+    public void subscribe(Consumer<JobEvent> subscriber) {
+        subscribers.add(subscriber);
+    }
+
+    /**
+     * Removes a subscriber.
+     *
+     * @param subscriber The subscriber passed to {@link #subscribe}.
+     */
+    public void unsubscribe(Consumer<JobEvent> subscriber) {
+        subscribers.remove(subscriber);
+    }
+
+    /**
+     * Delivers an event to every subscriber.
+     *
+     * @param event The event.
+     */
+    public void publish(JobEvent event) {
+        for (Consumer<JobEvent> subscriber : subscribers) {
+            try {
+                subscriber.accept(event);
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package hashkitty.java.hashcat;
+
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Consumer;
+
+/**
+ * Follows the file a running Hashcat writes its cracks to ({@code --outfile}), handing each new line to a callback.
+ * <p>
+ * Only complete lines are delivered; a line Hashcat is still writing is picked up by the next {@link #poll()}.
+ * Polls may come from a timer thread and from the thread that sees the process end, so they are serialised.
+ * </p>
+ */
+class CrackFileTail {
+
+    /** The file being followed. */
+    private final Path file;
+
+    /** Callback for each complete line, without its terminator. */
+    private final Consumer<String> onLine;
+
+    /** How far the file has been read. */
+    private long offset;
+
+    /**
+     * Constructs a tail positioned at the start of the file.
+     *
+     * @param file   The outfile; it does not need to exist yet.
+     * @param onLine Callback for each complete line.
+     */
+    CrackFileTail(Path file, Consumer<String> onLine) {
+        this.file = file;
+        this.onLine = onLine;
+    }
+
+    /**
+     * Returns the file being followed.
+     *
+     * @return The outfile.
+     */
+    Path getFile() {
+        return file;
+    }
+
+    /**
+     * Delivers the lines appended since the last poll.
+     *
+     * @throws IOException If the file cannot be read.
+     */
+    synchronized void poll() throws IOException {
+        if (!Files.exists(file)) {
+            return;
+        }
+        byte[] bytes;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            channel.position(offset);
+            bytes = Channels.newInputStream(channel).readAllBytes();
+        }
+        int end = bytes.length;
+        while (end > 0 && bytes[end - 1] != '\n') {
+            end--;
+        }
+        offset += end;
+        if (end == 0) {
+            return;
+        }
+        for (String line : new String(bytes, 0, end, StandardCharsets.UTF_8).split("\n")) {
+            line = line.strip();
+            if (!line.isEmpty()) {
+                onLine.accept(line);
+            }
+        }
+    }
+}
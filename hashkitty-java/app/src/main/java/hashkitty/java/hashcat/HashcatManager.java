@@ -1,14 +1,25 @@
 package hashkitty.java.hashcat;
 
+import hashkitty.java.events.JobEvent;
+import hashkitty.java.events.JobEventBus;
+import hashkitty.java.journal.EventJournal;
+import hashkitty.java.journal.EventType;
+import hashkitty.java.metrics.Counter;
+import hashkitty.java.metrics.Gauge;
+import hashkitty.java.metrics.Histogram;
+import hashkitty.java.metrics.MetricsRegistry;
+
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 /**
  * Manages the execution and lifecycle of the Hashcat process.
@@ -18,13 +29,24 @@ import java.util.regex.Pattern;
  *     <li>Constructing the command-line arguments for Hashcat.</li>
  *     <li>Spawning the external process.</li>
  *     <li>Monitoring the process's standard output for progress updates (percentage, speed).</li>
- *     <li>Detecting when a password has been cracked.</li>
+ *     <li>Detecting when a password has been cracked, from the outfile Hashcat writes cracks to.</li>
  *     <li>Providing methods to gracefully stop the process.</li>
  * </ul>
+ * Each run gets a short job ID, under which its start, progress, cracks and end are recorded in the
+ * {@link EventJournal}.
  * </p>
  */
 public class HashcatManager {
 
+    private static final MetricsRegistry METRICS = MetricsRegistry.getDefault();
+    private static final Counter JOBS_STARTED = METRICS.counter("hashkitty_hashcat_jobs_started_total", "Hashcat processes launched.");
+    private static final Counter JOBS_FINISHED = METRICS.counter("hashkitty_hashcat_jobs_finished_total", "Hashcat processes that exited or were stopped.");
+    private static final Gauge JOBS_RUNNING = METRICS.gauge("hashkitty_hashcat_jobs_running", "Hashcat processes currently running.");
+    /** How often the crack outfile of a running attack is checked for new lines. */
+    private static final long CRACK_POLL_INTERVAL_MS = 500;
+
+    private static final Histogram JOB_DURATION = METRICS.timer("hashkitty_hashcat_job_duration_seconds", "Wall-clock time of each Hashcat process.");
+
     /** The active Hashcat process. Null if no attack is running. */
     private Process process;
 
@@ -37,20 +59,11 @@ public class HashcatManager {
     /** Callback to invoke when the process terminates (finishes or is stopped). */
     private final Runnable onComplete;
 
-    /**
-     * Regex pattern to parse the progress status line from Hashcat.
-     * Example output: "Speed.Dev.#1.....:  1500.0 kH/s  (5.24ms)" or "Progress.......: 1024/2048 (50.00%)"
-     * Matches "Progress", followed by any number of dots/chars, a colon, space, numbers, and percentage.
-     */
-    private static final Pattern PROGRESS_PATTERN = Pattern.compile("Progress\\.+:\\s+\\d+/\\d+\\s+\\((\\d+\\.\\d+)%\\)");
+    /** Interprets the process output (progress and cracked passwords). */
+    private final HashcatOutputParser outputParser;
 
-    /**
-     * Regex pattern to detect a cracked password in the output.
-     * Hashcat often outputs the cracked hash:password pair to stdout when not using --quiet.
-     * However, reliably getting it from stdout depends on the mode.
-     * We often rely on the 'potfile' check or specific output format.
-     */
-    // private static final Pattern CRACKED_PATTERN = Pattern.compile("^(.*?):(.*)$"); // Too broad
+    /** Journal ID of the current (or last) run. */
+    private volatile String jobId;
 
     /**
      * Constructs a new HashcatManager.
@@ -63,6 +76,14 @@ public class HashcatManager {
         this.onPasswordCracked = onPasswordCracked;
         this.onStatusUpdate = onStatusUpdate;
         this.onComplete = onComplete;
+        // Journal what the parser reports before passing it on.
+        this.outputParser = new HashcatOutputParser(password -> {
+            EventJournal.getDefault().record(EventType.CRACKED, "hashcat", jobId, password);
+            onPasswordCracked.accept(password);
+        }, status -> {
+            EventJournal.getDefault().record(EventType.JOB_PROGRESS, "hashcat", jobId, status);
+            onStatusUpdate.accept(status);
+        });
     }
 
     /**
@@ -155,23 +176,91 @@ public class HashcatManager {
         return command;
     }
 
+    /**
+     * Starts Hashcat on one slice of a keyspace, as a Hashtopolis agent does for each chunk it is handed.
+     * <p>
+     * Cracks go to {@code outfile} as {@code hash:hex-plain:crack-position} lines instead of standard output, so the
+     * caller can read them back in batches; the hex plain keeps passwords containing colons intact. The manager follows
+     * the file as well, so the cracks are journaled and published on the {@link JobEventBus} like those of any other
+     * job. Progress is still reported through the status callback and the bus.
+     * </p>
+     *
+     * @param attackArguments The attack arguments as the server sent them (hash mode, attack mode, hash file,
+     *                        wordlists, rules, ...), with file names already resolved.
+     * @param mode            The hash mode, for the journal and the published events.
+     * @param skip            The number of candidates to skip ({@code --skip}).
+     * @param limit           The number of candidates to try from there ({@code --limit}).
+     * @param outfile         The file cracks are written to.
+     * @throws IOException If the process fails to start or Hashcat is already running.
+     */
+    public void startChunk(List<String> attackArguments, String mode, long skip, long limit, String outfile) throws IOException {
+        ensureNotRunning();
+        // The caller reads the outfile back too, so it is followed but not deleted.
+        launch(buildChunkCommand(attackArguments, skip, limit, outfile), mode,
+                new CrackFileTail(Path.of(outfile), outputParser::parseChunkOutfileLine), false);
+    }
+
+    /**
+     * Constructs the Hashcat command for {@link #startChunk}.
+     * Exposed for testing purposes.
+     */
+    public List<String> buildChunkCommand(List<String> attackArguments, long skip, long limit, String outfile) {
+        List<String> command = new ArrayList<>();
+        command.add("hashcat");
+        command.addAll(attackArguments);
+        command.add("--status");
+        command.add("--status-timer=5");
+        command.add("--skip=" + skip);
+        command.add("--limit=" + limit);
+        command.add("--outfile=" + outfile);
+        command.add("--outfile-format=1,3,4");
+        // The server knows what is cracked; a local potfile would hide repeats from it.
+        command.add("--potfile-disable");
+        // A chunk is never resumed, and its own session keeps it clear of attacks started from the UI.
+        command.add("--restore-disable");
+        command.add("--session=hashkitty-chunk");
+        return command;
+    }
+
     /**
      * Internal method to construct the command and launch the process.
      */
     private void startAttackInternal(String hashFilePath, String mode, String attackMode, String target, String ruleFile,
                                      boolean force, boolean optimizedKernels, String workloadProfile) throws IOException {
-        // Prevent multiple concurrent instances managed by this object.
-        if (process != null && process.isAlive()) {
-            throw new IOException("Hashcat is already running.");
-        }
+        ensureNotRunning();
 
         // Build the base command.
         List<String> command = buildCommand(mode, attackMode, ruleFile, force, optimizedKernels, workloadProfile);
 
         // Append positional arguments which are not part of buildCommand signature in test but needed for execution.
+        // Cracks are read back from a file rather than standard output, where they mix with status and log lines;
+        // the hex plain keeps passwords containing colons intact.
+        Path crackFile = Files.createTempFile("hashkitty-cracks", ".out");
+        crackFile.toFile().deleteOnExit();
+        command.add("--outfile=" + crackFile);
+        command.add("--outfile-format=1,3");
+
         command.add(hashFilePath);
         command.add(target);
+        launch(command, mode, new CrackFileTail(crackFile, outputParser::parseOutfileLine), true);
+    }
+
+    /**
+     * Prevents multiple concurrent instances managed by this object.
+     */
+    private void ensureNotRunning() throws IOException {
+        if (process != null && process.isAlive()) {
+            throw new IOException("Hashcat is already running.");
+        }
+    }
 
+    /**
+     * Launches the process and starts the thread that reads its output.
+     *
+     * @param cracks          Follows the outfile the cracks are reported from while the process runs.
+     * @param deleteCrackFile Whether the outfile is a temporary file to delete once the process has ended.
+     */
+    private void launch(List<String> command, String mode, CrackFileTail cracks, boolean deleteCrackFile) throws IOException {
         // Log the constructed command for debugging.
         onStatusUpdate.accept("Executing: " + String.join(" ", command));
 
@@ -181,7 +270,35 @@ public class HashcatManager {
         pb.redirectErrorStream(true);
 
         // Start the process.
-        process = pb.start();
+        try {
+            process = pb.start();
+        } catch (IOException e) {
+            EventJournal.getDefault().record(EventType.ERROR, "hashcat", null, "Could not start Hashcat: " + e.getMessage());
+            throw e;
+        }
+        long startNanos = System.nanoTime();
+        String runId = UUID.randomUUID().toString().substring(0, 8);
+        jobId = runId;
+        outputParser.setJobId(runId);
+        outputParser.setHashMode(mode);
+        Process running = process;
+        EventJournal.getDefault().record(EventType.JOB_STARTED, "hashcat", runId, String.join(" ", command));
+        JOBS_STARTED.inc();
+        JOBS_RUNNING.add(1);
+        JobEventBus.getDefault().publish(JobEvent.of(JobEvent.Kind.STARTED, runId, System.currentTimeMillis()));
+        Thread poller = new Thread(() -> {
+            try {
+                while (running.isAlive()) {
+                    cracks.poll();
+                    Thread.sleep(CRACK_POLL_INTERVAL_MS);
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, "hashcat-cracks-" + runId);
+        poller.start();
 
         // Start a background thread to consume the output stream.
         // This is crucial to prevent the process from blocking.
@@ -189,33 +306,36 @@ public class HashcatManager {
             try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
                 String line;
                 while ((line = reader.readLine()) != null) {
-                    // Check for progress updates.
-                    Matcher matcher = PROGRESS_PATTERN.matcher(line);
-                    if (matcher.find()) {
-                        // Extract percentage.
-                        onStatusUpdate.accept("Progress: " + matcher.group(1) + "%");
-                    }
-
-                    // Attempt to detect cracked passwords.
-                    // Hashcat prints "hash:password" to stdout.
-                    // This is a naive check; a more robust way is to use --outfile or --show.
-                    // For now, we look for a colon separator where the first part matches a hash format (simplified).
-                    // Actually, a safer heuristic for this MVP is: if line contains ':' and isn't a status line.
-                    if (line.contains(":") && !line.startsWith("Session") && !line.startsWith("Status") && !line.startsWith("Time")) {
-                         // Parse the password (right side of the last colon).
-                         int lastColon = line.lastIndexOf(':');
-                         if (lastColon != -1 && lastColon < line.length() - 1) {
-                             String potentialPassword = line.substring(lastColon + 1);
-                             onPasswordCracked.accept(potentialPassword);
-                         }
-                    }
+                    // Progress and cracked-password detection live in the parser.
+                    outputParser.parseLine(line);
 
                     // Echo everything to the status log (optional, maybe too verbose).
                     // onStatusUpdate.accept(line);
                 }
             } catch (IOException e) {
                 e.printStackTrace();
+                EventJournal.getDefault().record(EventType.ERROR, "hashcat", runId, "Reading Hashcat output failed: " + e.getMessage());
             } finally {
+                String exit = exitDescription(running);
+                // Every crack is journaled and published before the job is reported finished: let the poller
+                // deliver what it is reading, then pick up whatever Hashcat wrote after its last poll.
+                try {
+                    poller.join(CRACK_POLL_INTERVAL_MS * 4);
+                    cracks.poll();
+                    if (deleteCrackFile) {
+                        Files.deleteIfExists(cracks.getFile());
+                    }
+                } catch (IOException e) {
+                    e.printStackTrace();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                EventJournal.getDefault().record(EventType.JOB_FINISHED, "hashcat", runId, exit);
+                JOBS_RUNNING.add(-1);
+                JOBS_FINISHED.inc();
+                JOB_DURATION.recordSince(startNanos);
+                outputParser.reset();
+                JobEventBus.getDefault().publish(JobEvent.of(JobEvent.Kind.FINISHED, runId, System.currentTimeMillis()));
                 // When the process ends, notify the callback.
                 if (onComplete != null) {
                     onComplete.run();
@@ -225,6 +345,33 @@ public class HashcatManager {
         }).start();
     }
 
+    /**
+     * Describes how the process ended, for the journal. Called once its output has closed.
+     *
+     * @param finished The process.
+     * @return e.g. "exit code 1", or "still running" if it has not exited yet.
+     */
+    private String exitDescription(Process finished) {
+        try {
+            // The output has closed, so the process is exiting; give it a moment to report its code.
+            if (finished.waitFor(2, TimeUnit.SECONDS)) {
+                return "exit code " + finished.exitValue();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return "still running";
+    }
+
+    /**
+     * Returns the journal ID of the current (or most recent) run.
+     *
+     * @return The job ID, or null if no job has been started.
+     */
+    public String getJobId() {
+        return jobId;
+    }
+
     /**
      * Stops the running Hashcat process if it exists and is alive.
      */
@@ -0,0 +1,242 @@
+package hashkitty.java.hashcat;
+
+import hashkitty.java.events.JobEvent;
+import hashkitty.java.events.JobEventBus;
+import hashkitty.java.metrics.Counter;
+import hashkitty.java.metrics.Gauge;
+import hashkitty.java.metrics.MetricsRegistry;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.Locale;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Interprets Hashcat's standard output one line at a time.
+ * <p>
+ * Split out of {@link HashcatManager} so the parsing can be tested and benchmarked without spawning a process.
+ * It reports progress lines as "Progress: NN.NN%" status updates.
+ * </p>
+ * <p>
+ * Cracks are not taken from standard output, where they would be mixed with status and log lines that also contain
+ * colons. The manager has Hashcat write them to an outfile as "hash:hex-plain" lines ({@code --outfile-format=1,3})
+ * and passes each one to {@link #parseOutfileLine}; the hex plain keeps passwords containing colons intact.
+ * </p>
+ * <p>
+ * It also feeds the job metrics: cracked passwords, the last reported progress and the per-device hash rate
+ * from the "Speed.#N" lines of each status block. The same numbers (plus the "Recovered" digest count) are
+ * published as {@link JobEvent}s on the {@link JobEventBus}, tagged with the job ID set by the manager.
+ * </p>
+ * <p>
+ * Only status-block lines ("Key.Name.....: value") are parsed; everything else on standard output is ignored.
+ * </p>
+ */
+public class HashcatOutputParser {
+
+    /**
+     * Regex pattern to parse the progress status line from Hashcat.
+     * Example output: "Speed.Dev.#1.....:  1500.0 kH/s  (5.24ms)" or "Progress.......: 1024/2048 (50.00%)"
+     * Matches "Progress", followed by any number of dots/chars, a colon, space, numbers, and percentage.
+     * Captures the candidates done, the keyspace size and the percentage.
+     */
+    private static final Pattern PROGRESS_PATTERN = Pattern.compile("Progress\\.+:\\s+(\\d+)/(\\d+)\\s+\\((\\d+\\.\\d+)%\\)");
+
+    /**
+     * Regex pattern for the recovered-digests line of a status block.
+     * Example output: "Recovered........: 1/3 (33.33%) Digests"
+     */
+    private static final Pattern RECOVERED_PATTERN = Pattern.compile("^Recovered\\.+:\\s+(\\d+)/(\\d+)");
+
+    /**
+     * Regex pattern for the speed lines of a status block.
+     * Example output: "Speed.#1.........:  1500.0 kH/s (5.24ms)" or "Speed.#*.........:  3000.0 kH/s"
+     * Captures the device ("1" or "*" for the total), the number and the unit prefix.
+     */
+    private static final Pattern SPEED_PATTERN = Pattern.compile("^Speed\\.#(\\d+|\\*)\\.*:\\s+(\\d+(?:\\.\\d+)?)\\s*([kMGTP]?)H/s");
+
+    /**
+     * Regex pattern for any line of a status block: a capitalised key padded with dots, a colon and a space.
+     * Example output: "Hash.Mode........: 0 (MD5)", "Guess.Base.......: File (words.txt)" or "Hardware.Mon.#1..: Util: 98%"
+     */
+    private static final Pattern STATUS_KEY_PATTERN = Pattern.compile("^[A-Z][\\w.#]*\\.+: ");
+
+    private static final MetricsRegistry METRICS = MetricsRegistry.getDefault();
+    private static final Counter CRACKED = METRICS.counter("hashkitty_hashcat_cracked_total", "Passwords recovered by local Hashcat jobs.");
+    private static final Gauge PROGRESS = METRICS.gauge("hashkitty_hashcat_progress_ratio", "Progress of the running Hashcat job, from 0 to 1.");
+
+    /** Callback to invoke when a password is successfully cracked. */
+    private final Consumer<String> onPasswordCracked;
+
+    /** Callback to invoke for progress updates. */
+    private final Consumer<String> onStatusUpdate;
+
+    /** Devices this parser has reported a hash rate for, so {@link #reset()} can zero them. */
+    private final Set<String> reportedDevices = new HashSet<>();
+
+    /** The job the parsed output belongs to, used to tag published events. */
+    private volatile String jobId;
+
+    /** The hash mode of the job, recorded with each crack; -1 if unknown. */
+    private volatile int hashMode = -1;
+
+    /**
+     * Constructs a new parser.
+     *
+     * @param onPasswordCracked Callback for successful cracks.
+     * @param onStatusUpdate    Callback for progress messages.
+     */
+    public HashcatOutputParser(Consumer<String> onPasswordCracked, Consumer<String> onStatusUpdate) {
+        this.onPasswordCracked = onPasswordCracked;
+        this.onStatusUpdate = onStatusUpdate;
+    }
+
+    /**
+     * Sets the job that the following output belongs to.
+     *
+     * @param jobId The job ID.
+     */
+    public void setJobId(String jobId) {
+        this.jobId = jobId;
+    }
+
+    /**
+     * Sets the Hashcat hash mode ({@code -m}) of the job that the following output belongs to.
+     *
+     * @param mode The mode number, e.g. "0" for MD5. Anything that is not a number is recorded as unknown (-1).
+     */
+    public void setHashMode(String mode) {
+        int parsed;
+        try {
+            parsed = Integer.parseInt(mode.trim());
+        } catch (NumberFormatException | NullPointerException e) {
+            parsed = -1;
+        }
+        this.hashMode = parsed;
+    }
+
+    /**
+     * Processes one line of Hashcat output.
+     *
+     * @param line The line, without its terminator.
+     */
+    public void parseLine(String line) {
+        // Banners, device lists and warnings carry nothing the parser reports.
+        if (!STATUS_KEY_PATTERN.matcher(line).find()) {
+            return;
+        }
+
+        // Check for progress updates.
+        Matcher matcher = PROGRESS_PATTERN.matcher(line);
+        if (matcher.find()) {
+            // Extract percentage.
+            onStatusUpdate.accept("Progress: " + matcher.group(3) + "%");
+            PROGRESS.set(Double.parseDouble(matcher.group(3)) / 100.0);
+            publishCount(JobEvent.Kind.PROGRESS, matcher.group(1), matcher.group(2));
+            return;
+        }
+
+        if (line.startsWith("Recovered")) {
+            Matcher recovered = RECOVERED_PATTERN.matcher(line);
+            if (recovered.find()) {
+                publishCount(JobEvent.Kind.RECOVERED, recovered.group(1), recovered.group(2));
+                return;
+            }
+        }
+
+        // Speed lines only appear in status blocks; skip the regex for everything else.
+        if (line.startsWith("Speed.#")) {
+            Matcher speed = SPEED_PATTERN.matcher(line);
+            if (speed.find()) {
+                String device = speed.group(1);
+                double hashesPerSecond = Double.parseDouble(speed.group(2)) * unitMultiplier(speed.group(3));
+                hashRate(device).set(hashesPerSecond);
+                JobEventBus.getDefault().publish(JobEvent.speed(jobId, System.currentTimeMillis(), device, hashesPerSecond));
+                synchronized (reportedDevices) {
+                    reportedDevices.add(device);
+                }
+            }
+        }
+    }
+
+    /**
+     * Processes one line of the crack outfile, written with {@code --outfile-format=1,3}.
+     * <p>
+     * The hash itself may contain colons (salts, usernames, WPA fields), but the hex plain never does, so the
+     * line is split at its last colon.
+     * </p>
+     *
+     * @param line The line, e.g. "5f4dcc3b5aa765d61d8327deb882cf99:70613a7373", without its terminator.
+     */
+    public void parseOutfileLine(String line) {
+        int lastColon = line.lastIndexOf(':');
+        if (lastColon <= 0) {
+            return;
+        }
+        String password;
+        try {
+            password = new String(HexFormat.of().parseHex(line, lastColon + 1, line.length()), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            // Not written by Hashcat in the expected format; skip it.
+            return;
+        }
+        onPasswordCracked.accept(password);
+        CRACKED.inc();
+        JobEventBus.getDefault().publish(JobEvent.cracked(jobId, System.currentTimeMillis(), hashMode,
+                line.substring(0, lastColon), password));
+    }
+
+    /**
+     * Processes one line of a Hashtopolis chunk's outfile, written with {@code --outfile-format=1,3,4}: the same as
+     * {@link #parseOutfileLine} followed by the crack position.
+     *
+     * @param line The line, e.g. "5f4dcc3b5aa765d61d8327deb882cf99:70613a7373:1024", without its terminator.
+     */
+    public void parseChunkOutfileLine(String line) {
+        int lastColon = line.lastIndexOf(':');
+        if (lastColon > 0) {
+            parseOutfileLine(line.substring(0, lastColon));
+        }
+    }
+
+    /**
+     * Zeroes the hash rate and progress gauges once a job has ended, so a finished job does not keep
+     * reporting its last speed.
+     */
+    public void reset() {
+        synchronized (reportedDevices) {
+            for (String device : reportedDevices) {
+                hashRate(device).set(0);
+            }
+            reportedDevices.clear();
+        }
+        PROGRESS.set(0);
+    }
+
+    private void publishCount(JobEvent.Kind kind, String done, String total) {
+        try {
+            JobEventBus.getDefault().publish(JobEvent.count(kind, jobId, System.currentTimeMillis(),
+                    Long.parseLong(done), Long.parseLong(total)));
+        } catch (NumberFormatException e) {
+            // Beyond the range of a long; leave it to the status text.
+        }
+    }
+
+    private static Gauge hashRate(String device) {
+        return METRICS.gauge("hashkitty_hashcat_hash_rate", "Hashes per second reported by Hashcat, per device (\"*\" is the total).", "device", device);
+    }
+
+    private static double unitMultiplier(String prefix) {
+        switch (prefix.toUpperCase(Locale.ROOT)) {
+            case "K": return 1e3;
+            case "M": return 1e6;
+            case "G": return 1e9;
+            case "T": return 1e12;
+            case "P": return 1e15;
+            default: return 1;
+        }
+    }
+}
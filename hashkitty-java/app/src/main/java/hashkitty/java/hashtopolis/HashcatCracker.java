@@ -0,0 +1,177 @@
+package hashkitty.java.hashtopolis;
+
+import hashkitty.java.hashcat.HashcatManager;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The {@link HashtopolisWorker.Cracker} that runs Hashcat on this machine.
+ * <p>
+ * Chunks run through a {@link HashcatManager}, so they are journaled and show up in the metrics and on the
+ * dashboard like any other job. Device discovery, keyspace measurement and benchmarks are short runs whose output
+ * is read here directly.
+ * </p>
+ */
+class HashcatCracker implements HashtopolisWorker.Cracker {
+
+    /** A device name line of {@code hashcat -I}, e.g. "  Name...............: NVIDIA GeForce RTX 4090". */
+    private static final Pattern DEVICE_NAME = Pattern.compile("^\\s*Name\\.*:\\s*(.+)$");
+
+    /** A device line of {@code --progress-only --machine-readable}: device, progress and runtime in ms. */
+    private static final Pattern PROGRESS_ONLY = Pattern.compile("^\\d+:(\\d+):(\\d+(?:\\.\\d+)?)$");
+
+    private final Consumer<String> onStatusUpdate;
+    private volatile HashcatManager manager;
+
+    HashcatCracker(Consumer<String> onStatusUpdate) {
+        this.onStatusUpdate = onStatusUpdate;
+    }
+
+    @Override
+    public List<String> devices() {
+        List<String> devices = new ArrayList<>();
+        try {
+            for (String line : run(List.of("hashcat", "-I"))) {
+                Matcher matcher = DEVICE_NAME.matcher(line);
+                if (matcher.find()) {
+                    devices.add(matcher.group(1).trim());
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        if (devices.isEmpty()) {
+            devices.add("unknown");
+        }
+        return devices;
+    }
+
+    @Override
+    public long keyspace(List<String> attack) throws IOException {
+        List<String> command = command(attack);
+        command.add("--keyspace");
+        command.add("--quiet");
+        List<String> output = run(command);
+        for (int i = output.size() - 1; i >= 0; i--) {
+            String line = output.get(i).trim();
+            if (line.matches("\\d+")) {
+                return Long.parseLong(line);
+            }
+        }
+        throw new IOException("Hashcat reported no keyspace: " + String.join(" / ", output));
+    }
+
+    /**
+     * Runs a benchmark in the server's format: for "speed", {@code progress:runtime} summed over the devices from
+     * a {@code --progress-only} run; for "run", the fraction of the keyspace covered in {@code seconds}.
+     */
+    @Override
+    public String benchmark(List<String> attack, String type, int seconds) throws IOException {
+        List<String> command = command(attack);
+        command.add("--machine-readable");
+        command.add("--potfile-disable");
+        command.add("--restore-disable");
+        command.add("--session=hashkitty-bench");
+        if ("speed".equals(type)) {
+            command.add("--quiet");
+            command.add("--progress-only");
+            long progress = 0;
+            double runtime = 0;
+            int devices = 0;
+            List<String> output = run(command);
+            for (String line : output) {
+                Matcher matcher = PROGRESS_ONLY.matcher(line.trim());
+                if (matcher.matches()) {
+                    progress += Long.parseLong(matcher.group(1));
+                    runtime += Double.parseDouble(matcher.group(2));
+                    devices++;
+                }
+            }
+            if (devices == 0) {
+                throw new IOException("Hashcat speed benchmark failed: " + String.join(" / ", output));
+            }
+            return progress + ":" + runtime / devices;
+        }
+        command.add("--status");
+        command.add("--status-timer=" + seconds);
+        command.add("--runtime=" + seconds);
+        double fraction = -1;
+        List<String> output = run(command);
+        for (String line : output) {
+            // STATUS<TAB>3<TAB>SPEED<TAB>...<TAB>PROGRESS<TAB>done<TAB>total<TAB>...
+            String[] fields = line.split("\t");
+            if (!fields[0].equals("STATUS")) {
+                continue;
+            }
+            for (int i = 1; i + 2 < fields.length; i++) {
+                if (fields[i].equals("PROGRESS")) {
+                    long total = Long.parseLong(fields[i + 2]);
+                    fraction = total > 0 ? (double) Long.parseLong(fields[i + 1]) / total : 0;
+                }
+            }
+        }
+        if (fraction < 0) {
+            throw new IOException("Hashcat runtime benchmark failed: " + String.join(" / ", output));
+        }
+        return String.valueOf(fraction);
+    }
+
+    @Override
+    public String startChunk(List<String> attack, String mode, long skip, long limit, Path outfile,
+                             Runnable onFinished) throws IOException {
+        // The manager journals and publishes each crack it reads from the outfile; the worker reports them itself.
+        HashcatManager chunkManager = new HashcatManager(password -> { }, onStatusUpdate, onFinished);
+        manager = chunkManager;
+        chunkManager.startChunk(attack, mode, skip, limit, outfile.toString());
+        return chunkManager.getJobId();
+    }
+
+    @Override
+    public void stop() {
+        HashcatManager running = manager;
+        if (running != null) {
+            running.stopCracking();
+        }
+    }
+
+    private static List<String> command(List<String> attack) {
+        List<String> command = new ArrayList<>();
+        command.add("hashcat");
+        command.addAll(attack);
+        return command;
+    }
+
+    /**
+     * Runs a short Hashcat command to the end.
+     *
+     * @return Its output lines (standard output and error).
+     */
+    private static List<String> run(List<String> command) throws IOException {
+        ProcessBuilder builder = new ProcessBuilder(command);
+        builder.redirectErrorStream(true);
+        Process process = builder.start();
+        List<String> lines = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lines.add(line);
+            }
+        }
+        try {
+            process.waitFor();
+        } catch (InterruptedException e) {
+            process.destroy();
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while running Hashcat", e);
+        }
+        return lines;
+    }
+}
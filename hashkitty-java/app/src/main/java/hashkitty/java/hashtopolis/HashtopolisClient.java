@@ -1,77 +1,454 @@
 package hashkitty.java.hashtopolis;
 
 import com.google.gson.Gson;
-import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import hashkitty.java.model.HashtopolisAgent;
+import hashkitty.java.model.HashtopolisHashlist;
 import hashkitty.java.model.HashtopolisTask;
-import okhttp3.*;
+import hashkitty.java.util.ExecutorUtil;
 
 import java.io.IOException;
-import java.lang.reflect.Type;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.EnumMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
 
 /**
  * A client wrapper for the Hashtopolis API.
  * <p>
- * This class handles communication with a Hashtopolis server, allowing the application
- * to retrieve assigned tasks for a specific agent.
+ * This class handles communication with a Hashtopolis server, retrieving its tasks, hashlists and agents. A server
+ * can hold thousands of tasks, so every call is asynchronous and cheap to repeat:
+ * </p>
+ * <ul>
+ *     <li><b>Asynchronous:</b> the {@code ...Async} methods return a {@link CompletableFuture} and never block the
+ *     caller; responses are read on {@link ExecutorUtil#sharedTaskExecutor()}.</li>
+ *     <li><b>Shared connections:</b> all clients share one {@link HttpClient}, which pools connections per server and
+ *     negotiates HTTP/2 where the server offers it (falling back to HTTP/1.1).</li>
+ *     <li><b>Paginated:</b> lists are requested {@link #DEFAULT_PAGE_SIZE} entries at a time with
+ *     {@code page[size]}, following the {@code _next} (or {@code links.next}) link of each page. Entries are parsed
+ *     straight off the stream, one at a time. A server that answers with a bare JSON array is read as one page.</li>
+ *     <li><b>Conditional:</b> each page's {@code ETag} is kept, and the page is revalidated with
+ *     {@code If-None-Match}; a {@code 304 Not Modified} reuses the entries already parsed.</li>
+ *     <li><b>Cached:</b> each list is kept in memory for a time-to-live ({@link #DEFAULT_TTL}); within it, calls are
+ *     answered without a request. Concurrent calls for the same list share one download.</li>
+ *     <li><b>Batched:</b> {@link #refreshAll()} revalidates all three lists concurrently and completes when all have
+ *     arrived.</li>
+ * </ul>
+ * <p>
+ * The access key is sent as a bearer token in the {@code Authorization} header rather than in the URL, so it does not
+ * end up in server or proxy logs.
  * </p>
  */
 public class HashtopolisClient {
 
-    /** The HTTP client instance (OkHttp). */
-    private final OkHttpClient client;
+    /** How long a downloaded list is served from memory before it is revalidated. */
+    public static final Duration DEFAULT_TTL = Duration.ofSeconds(30);
+    /** The number of entries requested per page. */
+    public static final int DEFAULT_PAGE_SIZE = 500;
+    /** A guard against a server whose next links never end. */
+    static final int MAX_PAGES = 10_000;
+
+    private static final Duration CONNECT_TIMEOUT = Duration.ofSeconds(10);
+    private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(30);
+
+    /**
+     * The lists the client can retrieve.
+     */
+    public enum Resource {
+        TASKS("tasks", HashtopolisTask.class),
+        HASHLISTS("hashlists", HashtopolisHashlist.class),
+        AGENTS("agents", HashtopolisAgent.class);
+
+        private final String path;
+        private final Class<?> type;
+
+        Resource(String path, Class<?> type) {
+            this.path = path;
+            this.type = type;
+        }
+
+        /** @return The path of the list under the base URL. */
+        public String getPath() {
+            return path;
+        }
+    }
+
+    /**
+     * The three lists, as returned together by {@link #refreshAll()} and {@link #getAllAsync()}.
+     */
+    public static final class Snapshot {
+        private final List<HashtopolisTask> tasks;
+        private final List<HashtopolisHashlist> hashlists;
+        private final List<HashtopolisAgent> agents;
+
+        Snapshot(List<HashtopolisTask> tasks, List<HashtopolisHashlist> hashlists, List<HashtopolisAgent> agents) {
+            this.tasks = tasks;
+            this.hashlists = hashlists;
+            this.agents = agents;
+        }
+
+        public List<HashtopolisTask> getTasks() {
+            return tasks;
+        }
+
+        public List<HashtopolisHashlist> getHashlists() {
+            return hashlists;
+        }
+
+        public List<HashtopolisAgent> getAgents() {
+            return agents;
+        }
+    }
+
+    /**
+     * A page kept for revalidation: its ETag, its parsed entries and the link to the page after it.
+     */
+    private static final class Page {
+        final String etag;
+        final List<Object> items;
+        final URI next;
+
+        Page(String etag, List<Object> items, URI next) {
+            this.etag = etag;
+            this.items = items;
+            this.next = next;
+        }
+    }
+
+    /**
+     * The cached state of one list.
+     */
+    private static final class Entry {
+        List<Object> items;
+        long fetchedAtNanos;
+        CompletableFuture<List<Object>> inFlight;
+    }
+
+    /** The process-wide HTTP client, created on first use. */
+    private static volatile HttpClient sharedHttpClient;
+
+    /** The HTTP client (shared unless one was passed in). */
+    private final HttpClient http;
     /** JSON processor (Gson). */
     private final Gson gson;
     /** The base URL of the Hashtopolis server (e.g., "https://hashtopolis.example.com/api"). */
     private final String baseUrl;
     /** The secret key used for authentication/Voucher. */
     private final String apiKey;
+    private final long ttlNanos;
+    private final int pageSize;
+    private final Map<Resource, Entry> entries = new EnumMap<>(Resource.class);
+    /** Pages with an ETag, by URL. */
+    private final Map<URI, Page> pages = new ConcurrentHashMap<>();
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong notModified = new AtomicLong();
 
     /**
-     * Constructs a new HashtopolisClient.
+     * Constructs a new HashtopolisClient with the shared HTTP client and the default time-to-live and page size.
      *
      * @param baseUrl The API endpoint URL.
      * @param apiKey  The access key/voucher.
      */
     public HashtopolisClient(String baseUrl, String apiKey) {
-        this.baseUrl = baseUrl;
+        this(baseUrl, apiKey, sharedHttpClient(), DEFAULT_TTL, DEFAULT_PAGE_SIZE);
+    }
+
+    /**
+     * Constructs a new HashtopolisClient.
+     *
+     * @param baseUrl  The API endpoint URL.
+     * @param apiKey   The access key/voucher.
+     * @param http     The HTTP client to send requests with.
+     * @param ttl      How long a list is served from memory before it is revalidated.
+     * @param pageSize The number of entries requested per page.
+     */
+    public HashtopolisClient(String baseUrl, String apiKey, HttpClient http, Duration ttl, int pageSize) {
+        if (pageSize < 1) {
+            throw new IllegalArgumentException("Page size must be positive: " + pageSize);
+        }
+        this.baseUrl = baseUrl.endsWith("/") ? baseUrl.substring(0, baseUrl.length() - 1) : baseUrl;
         this.apiKey = apiKey;
-        this.client = new OkHttpClient();
+        this.http = http;
+        this.ttlNanos = ttl.toNanos();
+        this.pageSize = pageSize;
         this.gson = new Gson();
+        for (Resource resource : Resource.values()) {
+            entries.put(resource, new Entry());
+        }
+    }
+
+    /**
+     * Returns the process-wide HTTP client: HTTP/2 preferred, redirects followed, responses handled on the shared
+     * task executor.
+     *
+     * @return The shared client.
+     */
+    public static HttpClient sharedHttpClient() {
+        HttpClient client = sharedHttpClient;
+        if (client == null) {
+            synchronized (HashtopolisClient.class) {
+                client = sharedHttpClient;
+                if (client == null) {
+                    client = HttpClient.newBuilder()
+                            .version(HttpClient.Version.HTTP_2)
+                            .connectTimeout(CONNECT_TIMEOUT)
+                            .followRedirects(HttpClient.Redirect.NORMAL)
+                            .executor(ExecutorUtil.sharedTaskExecutor())
+                            .build();
+                    sharedHttpClient = client;
+                }
+            }
+        }
+        return client;
+    }
+
+    /**
+     * Retrieves the list of tasks, from memory if it is fresh.
+     *
+     * @return A future completing with the tasks, or exceptionally (with an {@link IOException} cause) if the server
+     * could not be reached or answered with an error.
+     */
+    public CompletableFuture<List<HashtopolisTask>> getTasksAsync() {
+        return get(Resource.TASKS, false);
+    }
+
+    /**
+     * Retrieves the list of hashlists, from memory if it is fresh.
+     *
+     * @return A future completing with the hashlists.
+     */
+    public CompletableFuture<List<HashtopolisHashlist>> getHashlistsAsync() {
+        return get(Resource.HASHLISTS, false);
     }
 
     /**
-     * Retrieves the list of tasks assigned to the agent associated with the API key.
+     * Retrieves the list of agents, from memory if it is fresh.
+     *
+     * @return A future completing with the agents.
+     */
+    public CompletableFuture<List<HashtopolisAgent>> getAgentsAsync() {
+        return get(Resource.AGENTS, false);
+    }
+
+    /**
+     * Retrieves all three lists concurrently, each from memory if it is fresh.
+     *
+     * @return A future completing when all three have arrived, or exceptionally if any failed.
+     */
+    public CompletableFuture<Snapshot> getAllAsync() {
+        return snapshot(false);
+    }
+
+    /**
+     * Revalidates all three lists with the server concurrently, ignoring the time-to-live. Unchanged pages cost a
+     * {@code 304} each.
+     *
+     * @return A future completing when all three have arrived, or exceptionally if any failed.
+     */
+    public CompletableFuture<Snapshot> refreshAll() {
+        return snapshot(true);
+    }
+
+    /**
+     * Forgets everything cached, so the next call downloads every list in full.
+     */
+    public void invalidate() {
+        for (Entry entry : entries.values()) {
+            synchronized (entry) {
+                entry.items = null;
+            }
+        }
+        pages.clear();
+    }
+
+    /**
+     * Retrieves the list of tasks, blocking until it arrives.
      *
      * @return A list of {@link HashtopolisTask} objects. Returns an empty list on failure.
      */
     public List<HashtopolisTask> getTasks() {
-        // Construct the full URL.
-        // NOTE: This endpoint structure is hypothetical/simplified for this implementation.
-        // A real Hashtopolis API call involves a more complex action/request payload structure.
-        String url = baseUrl + "/tasks?key=" + apiKey;
-
-        // Build the request.
-        Request request = new Request.Builder()
-                .url(url)
-                .build();
-
-        try (Response response = client.newCall(request).execute()) {
-            if (!response.isSuccessful()) {
-                System.err.println("Hashtopolis API Error: " + response.code());
-                return Collections.emptyList();
+        try {
+            return getTasksAsync().join();
+        } catch (CompletionException e) {
+            e.getCause().printStackTrace();
+            return Collections.emptyList();
+        }
+    }
+
+    /** @return The number of HTTP requests sent. */
+    public long getRequests() {
+        return requests.get();
+    }
+
+    /** @return The number of requests answered with {@code 304 Not Modified}. */
+    public long getNotModified() {
+        return notModified.get();
+    }
+
+    private CompletableFuture<Snapshot> snapshot(boolean force) {
+        CompletableFuture<List<HashtopolisTask>> tasks = get(Resource.TASKS, force);
+        CompletableFuture<List<HashtopolisHashlist>> hashlists = get(Resource.HASHLISTS, force);
+        CompletableFuture<List<HashtopolisAgent>> agents = get(Resource.AGENTS, force);
+        return CompletableFuture.allOf(tasks, hashlists, agents)
+                .thenApply(ignored -> new Snapshot(tasks.join(), hashlists.join(), agents.join()));
+    }
+
+    /**
+     * Returns a list from memory, joins a download in flight, or starts one.
+     */
+    @SuppressWarnings("unchecked")
+    private <T> CompletableFuture<List<T>> get(Resource resource, boolean force) {
+        Entry entry = entries.get(resource);
+        CompletableFuture<List<Object>> result;
+        synchronized (entry) {
+            if (entry.inFlight != null) {
+                return (CompletableFuture<List<T>>) (CompletableFuture<?>) entry.inFlight;
+            }
+            if (!force && entry.items != null && System.nanoTime() - entry.fetchedAtNanos < ttlNanos) {
+                return CompletableFuture.completedFuture((List<T>) (List<?>) entry.items);
             }
+            result = new CompletableFuture<>();
+            entry.inFlight = result;
+        }
+        List<Object> items = new ArrayList<>();
+        URI first = URI.create(baseUrl + "/" + resource.path + "?page%5Bsize%5D=" + pageSize);
+        downloadFrom(resource, first, items, 0).whenComplete((list, error) -> {
+            synchronized (entry) {
+                entry.inFlight = null;
+                if (error == null) {
+                    entry.items = list;
+                    entry.fetchedAtNanos = System.nanoTime();
+                }
+            }
+            if (error == null) {
+                result.complete(list);
+            } else {
+                result.completeExceptionally(error instanceof CompletionException ? error.getCause() : error);
+            }
+        });
+        return (CompletableFuture<List<T>>) (CompletableFuture<?>) result;
+    }
 
-            // Parse the response body.
-            if (response.body() != null) {
-                String responseBody = response.body().string();
-                Type listType = new TypeToken<List<HashtopolisTask>>() {}.getType();
-                return gson.fromJson(responseBody, listType);
+    /**
+     * Fetches a page and, after it, the pages it links to. Pages of one list are fetched in order, since each page's
+     * link comes from the one before.
+     */
+    private CompletableFuture<List<Object>> downloadFrom(Resource resource, URI uri, List<Object> items, int count) {
+        return fetchPage(resource, uri).thenCompose(page -> {
+            items.addAll(page.items);
+            if (page.next == null || count + 1 >= MAX_PAGES) {
+                return CompletableFuture.completedFuture(Collections.unmodifiableList(items));
             }
-        } catch (IOException e) {
-            e.printStackTrace();
+            return downloadFrom(resource, page.next, items, count + 1);
+        });
+    }
+
+    private CompletableFuture<Page> fetchPage(Resource resource, URI uri) {
+        Page cached = pages.get(uri);
+        HttpRequest.Builder request = HttpRequest.newBuilder(uri)
+                .timeout(REQUEST_TIMEOUT)
+                .header("Authorization", "Bearer " + apiKey)
+                .header("Accept", "application/json")
+                .header("Accept-Encoding", "gzip")
+                .GET();
+        if (cached != null) {
+            request.header("If-None-Match", cached.etag);
+        }
+        requests.incrementAndGet();
+        return http.sendAsync(request.build(), HttpResponse.BodyHandlers.ofInputStream()).thenApply(response -> {
+            try (InputStream body = response.body()) {
+                if (response.statusCode() == 304 && cached != null) {
+                    notModified.incrementAndGet();
+                    return cached;
+                }
+                if (response.statusCode() != 200) {
+                    throw new IOException("Hashtopolis API Error: " + response.statusCode() + " for " + uri);
+                }
+                boolean gzip = response.headers().firstValue("Content-Encoding")
+                        .map(encoding -> encoding.equalsIgnoreCase("gzip")).orElse(false);
+                Page page = parsePage(resource, uri, gzip ? new GZIPInputStream(body) : body,
+                        response.headers().firstValue("ETag").orElse(null));
+                if (page.etag != null) {
+                    pages.put(uri, page);
+                } else {
+                    pages.remove(uri);
+                }
+                return page;
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            }
+        });
+    }
+
+    /**
+     * Reads a page: either a bare array of entries, or an object whose {@code values} (or {@code data}) array holds
+     * the entries and whose {@code _next} (or {@code links.next}) names the next page.
+     */
+    private Page parsePage(Resource resource, URI uri, InputStream body, String etag) throws IOException {
+        List<Object> items = new ArrayList<>();
+        String next = null;
+        JsonReader reader = new JsonReader(new InputStreamReader(body, StandardCharsets.UTF_8));
+        if (reader.peek() == JsonToken.BEGIN_ARRAY) {
+            readItems(reader, resource.type, items);
+        } else {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                switch (reader.nextName()) {
+                    case "values":
+                    case "data":
+                        readItems(reader, resource.type, items);
+                        break;
+                    case "_next":
+                        next = readLink(reader);
+                        break;
+                    case "links":
+                        reader.beginObject();
+                        while (reader.hasNext()) {
+                            if (reader.nextName().equals("next")) {
+                                next = readLink(reader);
+                            } else {
+                                reader.skipValue();
+                            }
+                        }
+                        reader.endObject();
+                        break;
+                    default:
+                        reader.skipValue();
+                }
+            }
+            reader.endObject();
+        }
+        return new Page(etag, Collections.unmodifiableList(items), next == null || next.isEmpty() ? null : uri.resolve(next));
+    }
+
+    private void readItems(JsonReader reader, Class<?> type, List<Object> items) throws IOException {
+        reader.beginArray();
+        while (reader.hasNext()) {
+            items.add(gson.fromJson(reader, type));
+        }
+        reader.endArray();
+    }
+
+    private static String readLink(JsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return null;
         }
-        return Collections.emptyList();
+        return reader.nextString();
     }
 }
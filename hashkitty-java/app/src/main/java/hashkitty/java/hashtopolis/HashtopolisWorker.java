@@ -0,0 +1,741 @@
+package hashkitty.java.hashtopolis;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import hashkitty.java.events.JobEvent;
+import hashkitty.java.events.JobEventBus;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+/**
+ * Runs this desktop as a Hashtopolis agent, so its GPUs can take chunks from an existing Hashtopolis cluster.
+ * <p>
+ * The worker speaks the agent API ({@code api/server.php}) on a thread of its own:
+ * </p>
+ * <ol>
+ *     <li><b>register</b> with a voucher (once; the token is kept in {@code agent.properties} in the work directory),
+ *     then <b>updateInformation</b> with the devices Hashcat reports, then <b>login</b>.</li>
+ *     <li><b>getTask</b>; with no task, it waits {@link #DEFAULT_IDLE_MS} and asks again. A task's hashlist is
+ *     downloaded afresh (the server leaves out what is already cracked), its other files only if missing.</li>
+ *     <li><b>getChunk</b>, answered in a loop: a keyspace request is measured with {@code hashcat --keyspace} and
+ *     sent with <b>sendKeyspace</b>, a benchmark request is run and sent with <b>sendBenchmark</b>, and a chunk is
+ *     cracked by {@link hashkitty.java.hashcat.HashcatManager#startChunk} with its {@code --skip}/{@code --limit}.
+ *     When the task is fully dispatched the worker goes back to step 2.</li>
+ *     <li>While a chunk runs, <b>sendProgress</b> reports it every status interval of the task: progress and speed
+ *     from the {@link JobEventBus}, and the cracks Hashcat has written to the chunk's outfile since the last report.
+ *     Cracks are submitted in batches of at most {@link #CRACK_BATCH}; a larger backlog goes out in back-to-back
+ *     reports. A final report marks the chunk exhausted. If the server answers {@code "agent": "stop"}, the chunk is
+ *     abandoned.</li>
+ * </ol>
+ * <p>
+ * Errors within a task are reported to the server with <b>clientError</b> and the worker carries on with the next
+ * request after an idle wait. Only a failed registration or login stops it.
+ * </p>
+ * <p>
+ * <b>Usage:</b> {@code agent --url https://hashtopolis.example.com/api/server.php [--voucher V] [--name NAME]
+ * [--dir DIR]}
+ * </p>
+ */
+public class HashtopolisWorker {
+
+    /** How long the worker waits before asking again when there is no work, or after an error. */
+    public static final long DEFAULT_IDLE_MS = 30_000;
+
+    /** The most cracks sent in one progress report. */
+    static final int CRACK_BATCH = 1000;
+
+    /** The file in the work directory that keeps the server URL, the agent token and its UID. */
+    static final String CONFIG_FILE = "agent.properties";
+
+    /** Hashcat's status code for a running attack, as the server expects it in a progress report. */
+    static final int STATE_RUNNING = 3;
+
+    /** Hashcat's status code for an exhausted keyspace. */
+    static final int STATE_EXHAUSTED = 5;
+
+    /** What the worker logs in as. */
+    static final String CLIENT_SIGNATURE = "halfhashedkitty-java";
+
+    /** The placeholder in a task's attack command for the hashlist file, unless the task names another. */
+    static final String DEFAULT_HASHLIST_ALIAS = "#HL#";
+
+    private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(60);
+
+    /**
+     * The Hashcat side of the work: device discovery, keyspace, benchmarks and chunks.
+     */
+    interface Cracker {
+        /** @return The names of the compute devices, for the server's agent list. */
+        List<String> devices();
+
+        /** @return The keyspace of an attack given without its hashlist. */
+        long keyspace(List<String> attack) throws IOException;
+
+        /** @return The benchmark result in the server's format for {@code type} ("speed" or "run"). */
+        String benchmark(List<String> attack, String type, int seconds) throws IOException;
+
+        /**
+         * Starts a chunk. Cracks go to {@code outfile} as {@code hash:hex-plain:crack-position} lines and progress
+         * is published on the {@link JobEventBus} under the returned job ID.
+         *
+         * @return The job ID.
+         */
+        String startChunk(List<String> attack, String mode, long skip, long limit, Path outfile,
+                          Runnable onFinished) throws IOException;
+
+        /** Stops the running chunk, if any. */
+        void stop();
+    }
+
+    private final URI apiUri;
+    private final URI baseUri;
+    private final String voucher;
+    private final String name;
+    private final Path directory;
+    private final Consumer<String> onStatusUpdate;
+    private final Cracker cracker;
+    private final HttpClient http;
+    private final long idleMs;
+    private final Consumer<JobEvent> events = this::onJobEvent;
+
+    private volatile boolean running;
+    private Thread thread;
+    private String token;
+
+    /** The job of the running chunk, so its events can be told from other jobs'. */
+    private volatile String chunkJobId;
+    /** Progress of the running chunk. Guarded by {@code this}. */
+    private long chunkDone;
+    private long chunkTotal;
+    private boolean chunkFinished;
+    /** The latest hash rate per device of the running chunk. Guarded by {@code this}. */
+    private final Map<String, Double> speeds = new HashMap<>();
+    /** How far the running chunk's outfile has been read. */
+    private long outfileOffset;
+
+    private volatile long chunksCompleted;
+    private volatile long cracksSent;
+
+    /**
+     * Creates a worker that runs Hashcat on this machine.
+     *
+     * @param url            The agent API URL, e.g. {@code https://hashtopolis.example.com/api/server.php}.
+     * @param voucher        The registration voucher; only needed the first time.
+     * @param name           The agent name to register with.
+     * @param directory      The work directory (token, hashlists, files and chunk outfiles).
+     * @param onStatusUpdate Callback for status messages.
+     */
+    public HashtopolisWorker(String url, String voucher, String name, Path directory, Consumer<String> onStatusUpdate) {
+        this(url, voucher, name, directory, onStatusUpdate, new HashcatCracker(onStatusUpdate),
+                HashtopolisClient.sharedHttpClient(), DEFAULT_IDLE_MS);
+    }
+
+    HashtopolisWorker(String url, String voucher, String name, Path directory, Consumer<String> onStatusUpdate,
+                      Cracker cracker, HttpClient http, long idleMs) {
+        this.apiUri = URI.create(url);
+        // Downloads are linked relative to the server root, the parent of the api directory.
+        this.baseUri = apiUri.resolve("..");
+        this.voucher = voucher;
+        this.name = name;
+        this.directory = directory;
+        this.onStatusUpdate = onStatusUpdate;
+        this.cracker = cracker;
+        this.http = http;
+        this.idleMs = idleMs;
+    }
+
+    /**
+     * Returns the default work directory, {@code ~/.hashkitty/hashtopolis}.
+     *
+     * @return The directory.
+     */
+    public static Path defaultDirectory() {
+        return Paths.get(System.getProperty("user.home"), ".hashkitty", "hashtopolis");
+    }
+
+    /**
+     * Starts the agent loop on a background thread.
+     */
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        thread = new Thread(this::run, "hashtopolis-agent");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stops the agent loop, abandoning the running chunk.
+     */
+    public void stop() {
+        Thread worker;
+        synchronized (this) {
+            running = false;
+            worker = thread;
+            notifyAll();
+        }
+        cracker.stop();
+        if (worker != null) {
+            worker.interrupt();
+        }
+    }
+
+    /** @return Whether the agent loop is running. */
+    public boolean isRunning() {
+        return running;
+    }
+
+    /** @return The number of chunks cracked to the end. */
+    public long getChunksCompleted() {
+        return chunksCompleted;
+    }
+
+    /** @return The number of cracks submitted to the server. */
+    public long getCracksSent() {
+        return cracksSent;
+    }
+
+    private void run() {
+        JobEventBus.getDefault().subscribe(events);
+        try {
+            Files.createDirectories(directory);
+            connect();
+            while (running) {
+                boolean worked;
+                try {
+                    worked = workOnTask();
+                } catch (IOException e) {
+                    onStatusUpdate.accept("Hashtopolis: " + e.getMessage());
+                    worked = false;
+                }
+                if (!worked && running) {
+                    Thread.sleep(idleMs);
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            onStatusUpdate.accept("Hashtopolis agent could not connect: " + e.getMessage());
+        } catch (InterruptedException e) {
+            // Stopped.
+        } finally {
+            JobEventBus.getDefault().unsubscribe(events);
+            running = false;
+            onStatusUpdate.accept("Hashtopolis agent stopped.");
+        }
+    }
+
+    /**
+     * Registers (if there is no token for this server yet) and logs in.
+     */
+    private void connect() throws IOException, InterruptedException {
+        Path configFile = directory.resolve(CONFIG_FILE);
+        Properties config = new Properties();
+        if (Files.exists(configFile)) {
+            try (InputStream in = Files.newInputStream(configFile)) {
+                config.load(in);
+            }
+        }
+        if (apiUri.toString().equals(config.getProperty("url"))) {
+            token = config.getProperty("token");
+        }
+        if (token == null) {
+            if (voucher == null || voucher.isEmpty()) {
+                throw new IOException("Not registered with " + apiUri + "; a voucher is needed.");
+            }
+            JsonObject register = request("register");
+            register.addProperty("voucher", voucher);
+            register.addProperty("name", name);
+            token = call(register).get("token").getAsString();
+            String uid = UUID.randomUUID().toString();
+            config.setProperty("url", apiUri.toString());
+            config.setProperty("token", token);
+            config.setProperty("uid", uid);
+            try (OutputStream out = Files.newOutputStream(configFile)) {
+                config.store(out, "Hashtopolis agent registration");
+            }
+
+            JsonObject information = request("updateInformation");
+            information.addProperty("uid", uid);
+            information.addProperty("os", operatingSystem());
+            JsonArray devices = new JsonArray();
+            cracker.devices().forEach(devices::add);
+            information.add("devices", devices);
+            call(information);
+            onStatusUpdate.accept("Registered with Hashtopolis as " + name + ".");
+        }
+        JsonObject login = request("login");
+        login.addProperty("clientSignature", CLIENT_SIGNATURE);
+        call(login);
+        onStatusUpdate.accept("Logged in to " + apiUri.getHost() + " as a Hashtopolis agent.");
+    }
+
+    /**
+     * Asks for a task and works on its chunks until it is fully dispatched.
+     *
+     * @return false if there was no task.
+     */
+    private boolean workOnTask() throws IOException, InterruptedException {
+        JsonObject task = call(request("getTask"));
+        JsonElement taskIdElement = task.get("taskId");
+        if (taskIdElement == null || taskIdElement.isJsonNull()) {
+            return false;
+        }
+        int taskId = taskIdElement.getAsInt();
+        int hashlistId = task.get("hashlistId").getAsInt();
+        int statusTimer = task.has("statustimer") ? Math.max(1, task.get("statustimer").getAsInt()) : 5;
+        int benchSeconds = task.has("bench") ? task.get("bench").getAsInt() : 30;
+        String benchType = task.has("benchType") ? task.get("benchType").getAsString() : "run";
+        String command = task.get("attackcmd").getAsString() + " "
+                + (task.has("cmdpars") ? task.get("cmdpars").getAsString() : "");
+        // The server's placeholder for the hashlist is configurable and sent with each task.
+        JsonElement aliasElement = task.get("hashlistAlias");
+        String hashlistAlias = aliasElement != null && !aliasElement.isJsonNull() && !aliasElement.getAsString().isEmpty()
+                ? aliasElement.getAsString() : DEFAULT_HASHLIST_ALIAS;
+        onStatusUpdate.accept("Hashtopolis task " + taskId + ": " + command.trim());
+
+        try {
+            Path hashlist = downloadHashlist(hashlistId);
+            Map<String, Path> files = new HashMap<>();
+            if (task.has("files")) {
+                for (JsonElement file : task.getAsJsonArray("files")) {
+                    files.put(file.getAsString(), downloadFile(taskId, file.getAsString()));
+                }
+            }
+            List<String> attack = attackArguments(command, hashlistAlias, hashlist, files);
+            String mode = hashMode(attack);
+
+            while (running) {
+                JsonObject getChunk = request("getChunk");
+                getChunk.addProperty("taskId", taskId);
+                JsonObject chunk = call(getChunk);
+                String status = chunk.get("status").getAsString();
+                switch (status) {
+                    case "keyspace_required": {
+                        JsonObject keyspace = request("sendKeyspace");
+                        keyspace.addProperty("taskId", taskId);
+                        keyspace.addProperty("keyspace", cracker.keyspace(attackArguments(command, hashlistAlias, null, files)));
+                        call(keyspace);
+                        break;
+                    }
+                    case "benchmark": {
+                        JsonObject benchmark = request("sendBenchmark");
+                        benchmark.addProperty("taskId", taskId);
+                        benchmark.addProperty("type", benchType);
+                        benchmark.addProperty("result", cracker.benchmark(attack, benchType, benchSeconds));
+                        call(benchmark);
+                        break;
+                    }
+                    case "OK":
+                        runChunk(chunk.get("chunkId").getAsInt(), chunk.get("skip").getAsLong(),
+                                chunk.get("length").getAsLong(), attack, mode, statusTimer);
+                        break;
+                    case "fully_dispatched":
+                        // Nothing left for this agent; wait before asking for the next task.
+                        return false;
+                    default:
+                        onStatusUpdate.accept("Hashtopolis: unsupported chunk status " + status);
+                        return false;
+                }
+            }
+            return true;
+        } catch (IOException e) {
+            JsonObject error = request("clientError");
+            error.addProperty("taskId", taskId);
+            error.addProperty("message", e.getMessage());
+            try {
+                call(error);
+            } catch (IOException reportFailed) {
+                // The original error is the one worth reporting.
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Cracks one chunk, reporting progress and cracks every status interval until it ends.
+     */
+    private void runChunk(int chunkId, long skip, long length, List<String> attack, String mode, int statusTimer)
+            throws IOException, InterruptedException {
+        Path outfile = directory.resolve("chunk-" + chunkId + ".out");
+        Files.deleteIfExists(outfile);
+        synchronized (this) {
+            chunkDone = 0;
+            chunkTotal = 0;
+            chunkFinished = false;
+            speeds.clear();
+        }
+        outfileOffset = 0;
+        onStatusUpdate.accept("Hashtopolis chunk " + chunkId + ": skip " + skip + ", length " + length);
+        chunkJobId = cracker.startChunk(attack, mode, skip, length, outfile, this::chunkFinished);
+        try {
+            boolean finished;
+            do {
+                synchronized (this) {
+                    if (!chunkFinished && running) {
+                        wait(statusTimer * 1000L);
+                    }
+                    finished = chunkFinished;
+                }
+                if (!running) {
+                    return;
+                }
+                // Read after checking for the end, so the cracks written last are included.
+                List<String[]> cracks = readCracks(outfile);
+                if (sendProgress(chunkId, skip, length, finished, cracks)) {
+                    onStatusUpdate.accept("Hashtopolis server stopped chunk " + chunkId + ".");
+                    cracker.stop();
+                    return;
+                }
+            } while (!finished);
+            chunksCompleted++;
+        } finally {
+            chunkJobId = null;
+            Files.deleteIfExists(outfile);
+        }
+    }
+
+    private synchronized void chunkFinished() {
+        chunkFinished = true;
+        notifyAll();
+    }
+
+    /**
+     * Reports a chunk's progress, sending the cracks in batches.
+     *
+     * @return true if the server asked the agent to stop the chunk.
+     */
+    private boolean sendProgress(int chunkId, long skip, long length, boolean finished, List<String[]> cracks)
+            throws IOException, InterruptedException {
+        long done;
+        long total;
+        double speed = 0;
+        synchronized (this) {
+            done = chunkDone;
+            total = chunkTotal;
+            Double allDevices = speeds.get(JobEvent.ALL_DEVICES);
+            if (allDevices != null) {
+                speed = allDevices;
+            } else {
+                for (double deviceSpeed : speeds.values()) {
+                    speed += deviceSpeed;
+                }
+            }
+        }
+        double fraction = finished ? 1 : total > 0 ? (double) done / total : 0;
+        int sent = 0;
+        do {
+            int end = Math.min(cracks.size(), sent + CRACK_BATCH);
+            JsonArray batch = new JsonArray();
+            for (String[] crack : cracks.subList(sent, end)) {
+                JsonArray entry = new JsonArray();
+                for (String field : crack) {
+                    entry.add(field);
+                }
+                batch.add(entry);
+            }
+            JsonObject progress = request("sendProgress");
+            progress.addProperty("chunkId", chunkId);
+            progress.addProperty("keyspaceProgress", skip + (long) (length * fraction));
+            progress.addProperty("relativeProgress", (long) (10_000 * fraction));
+            progress.addProperty("speed", (long) speed);
+            // Only the last batch of the last report closes the chunk.
+            progress.addProperty("state", finished && end == cracks.size() ? STATE_EXHAUSTED : STATE_RUNNING);
+            progress.add("cracks", batch);
+            JsonObject reply = call(progress);
+            cracksSent += end - sent;
+            sent = end;
+            if (reply.has("agent") && "stop".equals(reply.get("agent").getAsString())) {
+                return true;
+            }
+        } while (sent < cracks.size());
+        return false;
+    }
+
+    /**
+     * Reads the complete lines added to the outfile since the last call, as
+     * {@code [hash, plain, hex plain, crack position]}.
+     */
+    private List<String[]> readCracks(Path outfile) throws IOException {
+        List<String[]> cracks = new ArrayList<>();
+        if (!Files.exists(outfile)) {
+            return cracks;
+        }
+        byte[] bytes;
+        try (FileChannel channel = FileChannel.open(outfile, StandardOpenOption.READ)) {
+            channel.position(outfileOffset);
+            bytes = Channels.newInputStream(channel).readAllBytes();
+        }
+        int end = bytes.length;
+        while (end > 0 && bytes[end - 1] != '\n') {
+            end--;
+        }
+        // A line still being written is read next time.
+        outfileOffset += end;
+        for (String line : new String(bytes, 0, end, StandardCharsets.UTF_8).split("\n")) {
+            line = line.strip();
+            int position = line.lastIndexOf(':');
+            int hex = position > 0 ? line.lastIndexOf(':', position - 1) : -1;
+            if (hex <= 0) {
+                continue;
+            }
+            String hexPlain = line.substring(hex + 1, position);
+            String plain;
+            try {
+                plain = new String(HexFormat.of().parseHex(hexPlain), StandardCharsets.UTF_8);
+            } catch (IllegalArgumentException e) {
+                continue;
+            }
+            cracks.add(new String[]{line.substring(0, hex), plain, hexPlain, line.substring(position + 1)});
+        }
+        return cracks;
+    }
+
+    private void onJobEvent(JobEvent event) {
+        String job = chunkJobId;
+        if (job == null || !job.equals(event.getJobId())) {
+            return;
+        }
+        synchronized (this) {
+            if (event.getKind() == JobEvent.Kind.PROGRESS) {
+                chunkDone = event.getDone();
+                chunkTotal = event.getTotal();
+            } else if (event.getKind() == JobEvent.Kind.SPEED) {
+                speeds.put(event.getDevice(), event.getValue());
+            }
+        }
+    }
+
+    // ---- Files ----
+
+    private Path downloadHashlist(int hashlistId) throws IOException, InterruptedException {
+        JsonObject request = request("getHashlist");
+        request.addProperty("hashlistId", hashlistId);
+        Path file = directory.resolve("hashlists").resolve(hashlistId + ".txt");
+        download(call(request).get("url").getAsString(), file);
+        return file;
+    }
+
+    private Path downloadFile(int taskId, String fileName) throws IOException, InterruptedException {
+        if (fileName.isEmpty() || fileName.contains("/") || fileName.contains("\\") || fileName.startsWith(".")) {
+            throw new IOException("Refusing file name " + fileName);
+        }
+        Path file = directory.resolve("files").resolve(fileName);
+        if (!Files.exists(file)) {
+            JsonObject request = request("getFile");
+            request.addProperty("taskId", taskId);
+            request.addProperty("file", fileName);
+            onStatusUpdate.accept("Downloading " + fileName + "...");
+            download(call(request).get("url").getAsString(), file);
+        }
+        return file;
+    }
+
+    private void download(String url, Path file) throws IOException, InterruptedException {
+        Files.createDirectories(file.getParent());
+        Path partial = file.resolveSibling(file.getFileName() + ".part");
+        HttpResponse<Path> response = http.send(HttpRequest.newBuilder(baseUri.resolve(url)).GET().build(),
+                HttpResponse.BodyHandlers.ofFile(partial));
+        if (response.statusCode() != 200) {
+            Files.deleteIfExists(partial);
+            throw new IOException("Download of " + file.getFileName() + " failed: HTTP " + response.statusCode());
+        }
+        Files.move(partial, file, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    // ---- Attack command ----
+
+    /**
+     * Splits a task's attack command into arguments, putting the hashlist in place of the task's hashlist alias
+     * (usually {@code #HL#}; dropped for a keyspace measurement) and the paths of the task's files in place of
+     * their names.
+     */
+    static List<String> attackArguments(String command, String hashlistAlias, Path hashlist, Map<String, Path> files) {
+        List<String> arguments = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+        boolean quoted = false;
+        boolean any = false;
+        for (int i = 0; i <= command.length(); i++) {
+            char c = i < command.length() ? command.charAt(i) : ' ';
+            if (c == '"' || c == '\'') {
+                quoted = !quoted;
+                any = true;
+            } else if (Character.isWhitespace(c) && !quoted) {
+                if (any) {
+                    addArgument(arguments, current.toString(), hashlistAlias, hashlist, files);
+                    current.setLength(0);
+                    any = false;
+                }
+            } else {
+                current.append(c);
+                any = true;
+            }
+        }
+        return arguments;
+    }
+
+    private static void addArgument(List<String> arguments, String argument, String hashlistAlias, Path hashlist,
+                                    Map<String, Path> files) {
+        if (argument.equals(hashlistAlias)) {
+            if (hashlist != null) {
+                arguments.add(hashlist.toAbsolutePath().toString());
+            }
+        } else if (files.containsKey(argument)) {
+            arguments.add(files.get(argument).toAbsolutePath().toString());
+        } else {
+            arguments.add(argument);
+        }
+    }
+
+    /**
+     * Finds the hash mode in attack arguments ({@code -m N}, {@code -mN} or {@code --hash-type=N}).
+     *
+     * @return The mode, or an empty string if none is given.
+     */
+    static String hashMode(List<String> attack) {
+        for (int i = 0; i < attack.size(); i++) {
+            String argument = attack.get(i);
+            if ((argument.equals("-m") || argument.equals("--hash-type")) && i + 1 < attack.size()) {
+                return attack.get(i + 1);
+            }
+            if (argument.startsWith("--hash-type=")) {
+                return argument.substring("--hash-type=".length());
+            }
+            if (argument.startsWith("-m") && argument.length() > 2 && !argument.startsWith("--")) {
+                return argument.substring(2);
+            }
+        }
+        return "";
+    }
+
+    // ---- API ----
+
+    private JsonObject request(String action) {
+        JsonObject request = new JsonObject();
+        request.addProperty("action", action);
+        if (token != null) {
+            request.addProperty("token", token);
+        }
+        return request;
+    }
+
+    /**
+     * Sends an API request.
+     *
+     * @return The reply, whose response was SUCCESS.
+     * @throws IOException If the server could not be reached or answered with an error.
+     */
+    private JsonObject call(JsonObject request) throws IOException, InterruptedException {
+        String action = request.get("action").getAsString();
+        HttpResponse<String> response = http.send(HttpRequest.newBuilder(apiUri)
+                        .timeout(REQUEST_TIMEOUT)
+                        .header("Content-Type", "application/json")
+                        .POST(HttpRequest.BodyPublishers.ofString(request.toString()))
+                        .build(),
+                HttpResponse.BodyHandlers.ofString());
+        if (response.statusCode() != 200) {
+            throw new IOException(action + " failed: HTTP " + response.statusCode());
+        }
+        JsonObject reply;
+        try {
+            reply = JsonParser.parseString(response.body()).getAsJsonObject();
+        } catch (RuntimeException e) {
+            throw new IOException(action + " failed: unreadable reply", e);
+        }
+        if (!reply.has("response") || !"SUCCESS".equals(reply.get("response").getAsString())) {
+            String message = reply.has("message") ? reply.get("message").getAsString() : reply.toString();
+            throw new IOException(action + " failed: " + message);
+        }
+        return reply;
+    }
+
+    /**
+     * Returns the operating system code the server expects: 0 Linux, 1 Windows, 2 macOS.
+     */
+    private static int operatingSystem() {
+        String os = System.getProperty("os.name", "").toLowerCase(Locale.ROOT);
+        if (os.contains("win")) {
+            return 1;
+        }
+        return os.contains("mac") ? 2 : 0;
+    }
+
+    // ---- Command line ----
+
+    /**
+     * The main method.
+     *
+     * @param args {@code --url URL [--voucher V] [--name NAME] [--dir DIR]}.
+     * @throws InterruptedException If interrupted while the agent runs.
+     */
+    public static void main(String[] args) throws InterruptedException {
+        String url = null;
+        String voucher = null;
+        String name = null;
+        Path dir = defaultDirectory();
+        try {
+            for (int i = 0; i < args.length; i++) {
+                String arg = args[i];
+                if (i + 1 >= args.length) {
+                    throw new IllegalArgumentException("Missing value for " + arg);
+                }
+                String value = args[++i];
+                switch (arg) {
+                    case "--url": url = value; break;
+                    case "--voucher": voucher = value; break;
+                    case "--name": name = value; break;
+                    case "--dir": dir = Paths.get(value); break;
+                    default: throw new IllegalArgumentException("Unknown argument: " + arg);
+                }
+            }
+            if (url == null) {
+                throw new IllegalArgumentException("--url is required");
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println("Usage: agent --url https://server/api/server.php [--voucher V] [--name NAME] [--dir DIR]");
+            System.exit(1);
+        }
+        if (name == null) {
+            try {
+                name = InetAddress.getLocalHost().getHostName();
+            } catch (IOException e) {
+                name = "halfhashedkitty";
+            }
+        }
+        HashtopolisWorker worker = new HashtopolisWorker(url, voucher, name, dir, System.out::println);
+        Runtime.getRuntime().addShutdownHook(new Thread(worker::stop));
+        worker.start();
+        while (worker.isRunning()) {
+            Thread.sleep(1000);
+        }
+    }
+}
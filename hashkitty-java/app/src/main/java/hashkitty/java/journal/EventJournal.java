@@ -0,0 +1,433 @@
+package hashkitty.java.journal;
+
+import hashkitty.java.metrics.Counter;
+import hashkitty.java.metrics.MetricsRegistry;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A durable, structured record of what happened during a session: jobs started, progressing, cracking and
+ * finishing, clients joining and leaving relay rooms, and errors.
+ * <p>
+ * Events are written as JSON lines ({@link JournalEvent}) to rolling files named
+ * {@code events-<yyyyMMdd-HHmmss-SSS>.jsonl}, so an overnight run can be reviewed afterwards with
+ * {@link JournalReader}. A new file is started at every launch and whenever the current one exceeds its size
+ * limit; the oldest files are deleted beyond the file limit.
+ * </p>
+ * <p>
+ * <b>Threading:</b> {@link #record} never blocks and never touches the disk. It claims a slot in a fixed ring
+ * buffer (preallocated field arrays, so recording allocates nothing beyond the caller's strings) and returns.
+ * A single writer thread drains the ring, formats each event into a reused buffer and flushes whenever the ring
+ * runs empty. If the disk falls so far behind that the ring fills up, new events are dropped and counted rather
+ * than stalling the Hashcat reader or the relay's mailboxes.
+ * </p>
+ * <p>
+ * Components record into {@link #getDefault()}, which discards events until an application opens a journal
+ * with {@link #openDefault(Path)}.
+ * </p>
+ */
+public class EventJournal implements Closeable {
+
+    /** Default size at which the current file is rolled over. */
+    public static final long DEFAULT_MAX_FILE_BYTES = 16L * 1024 * 1024;
+
+    /** Default number of files kept. */
+    public static final int DEFAULT_MAX_FILES = 20;
+
+    /** Default number of ring slots (a power of two). */
+    public static final int DEFAULT_CAPACITY = 8192;
+
+    /** Longest the writer sleeps before checking for a missed wake-up or a close. */
+    private static final long IDLE_PARK_NANOS = 1_000_000_000L;
+
+    private static final DateTimeFormatter FILE_TIME = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss-SSS");
+
+    private static final Counter DROPPED = MetricsRegistry.getDefault().counter(
+            "hashkitty_journal_dropped_total", "Journal events dropped because the writer fell behind.");
+
+    /** The journal components record into; discards events until {@link #openDefault(Path)}. */
+    private static volatile EventJournal defaultJournal = new EventJournal();
+
+    /** Whether {@link #openDefault(Path)} has registered the shutdown hook. Guarded by the class lock. */
+    private static boolean shutdownHookInstalled;
+
+    // ---- Ring buffer (multi-producer, single consumer) ----
+
+    private final int mask;
+    /**
+     * Per-slot sequence: equal to the claim position when the slot is free for that position, position + 1
+     * once the event is published, and position + capacity after the writer has consumed it.
+     */
+    private final AtomicLongArray sequences;
+    private final long[] times;
+    private final EventType[] types;
+    private final String[] sources;
+    private final String[] subjects;
+    private final String[] messages;
+    /** Next position to claim. */
+    private final AtomicLong tail = new AtomicLong();
+    /** Next position to consume. Writer thread only. */
+    private long head;
+
+    private final AtomicLong dropped = new AtomicLong();
+
+    // ---- Writer ----
+
+    private final Path directory;
+    private final long maxFileBytes;
+    private final int maxFiles;
+    private final Thread writerThread;
+    /** Set by the writer before parking, so producers know to wake it. */
+    private volatile boolean writerWaiting;
+    private volatile boolean closed;
+
+    private BufferedWriter out;
+    private long fileBytes;
+    /** Reused to format each line. Writer thread only. */
+    private final StringBuilder line = new StringBuilder(256);
+
+    /**
+     * Creates the disabled journal that backs {@link #getDefault()} until a real one is opened.
+     */
+    private EventJournal() {
+        this.mask = -1;
+        this.sequences = null;
+        this.times = null;
+        this.types = null;
+        this.sources = null;
+        this.subjects = null;
+        this.messages = null;
+        this.directory = null;
+        this.maxFileBytes = 0;
+        this.maxFiles = 0;
+        this.writerThread = null;
+    }
+
+    /**
+     * Opens a journal in the given directory and starts its writer thread.
+     *
+     * @param directory    Where the event files are kept (created if missing).
+     * @param maxFileBytes Approximate size at which a file is rolled over.
+     * @param maxFiles     How many files to keep; older ones are deleted.
+     * @param capacity     Ring slots; rounded up to a power of two.
+     * @throws IOException If the directory or the first file cannot be created.
+     */
+    public EventJournal(Path directory, long maxFileBytes, int maxFiles, int capacity) throws IOException {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        this.mask = size - 1;
+        this.sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+        this.times = new long[size];
+        this.types = new EventType[size];
+        this.sources = new String[size];
+        this.subjects = new String[size];
+        this.messages = new String[size];
+        this.directory = directory;
+        this.maxFileBytes = maxFileBytes;
+        this.maxFiles = Math.max(1, maxFiles);
+
+        Files.createDirectories(directory);
+        openNextFile();
+        this.writerThread = new Thread(this::runWriter, "event-journal");
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    /**
+     * Returns the journal components record into.
+     *
+     * @return The default journal (possibly the disabled one).
+     */
+    public static EventJournal getDefault() {
+        return defaultJournal;
+    }
+
+    /**
+     * Opens a journal with the default limits and makes it the default, closing any previous one. The default
+     * journal is closed (and so flushed) when the JVM shuts down.
+     *
+     * @param directory Where the event files are kept.
+     * @return The opened journal.
+     * @throws IOException If the journal cannot be created.
+     */
+    public static synchronized EventJournal openDefault(Path directory) throws IOException {
+        EventJournal journal = new EventJournal(directory, DEFAULT_MAX_FILE_BYTES, DEFAULT_MAX_FILES, DEFAULT_CAPACITY);
+        EventJournal previous = defaultJournal;
+        defaultJournal = journal;
+        previous.close();
+        if (!shutdownHookInstalled) {
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> defaultJournal.close(), "event-journal-shutdown"));
+            shutdownHookInstalled = true;
+        }
+        return journal;
+    }
+
+    /**
+     * Returns the default journal directory ({@code ~/.hashkitty/journal}).
+     *
+     * @return The directory path.
+     */
+    public static Path defaultDirectory() {
+        return Paths.get(System.getProperty("user.home"), ".hashkitty", "journal");
+    }
+
+    /**
+     * Records an event. Never blocks; the event is dropped if the ring is full or the journal is closed.
+     *
+     * @param type    The event type.
+     * @param source  The recording component ("hashcat", "relay", "app").
+     * @param subject The job or room ID the event is about, or null.
+     * @param message The event text, or null.
+     */
+    public void record(EventType type, String source, String subject, String message) {
+        if (writerThread == null || closed) {
+            return;
+        }
+        long position = tail.get();
+        while (true) {
+            int index = (int) (position & mask);
+            long difference = sequences.get(index) - position;
+            if (difference == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    break;
+                }
+                position = tail.get();
+            } else if (difference < 0) {
+                // The writer has not consumed this slot's previous event yet: the ring is full.
+                dropped.incrementAndGet();
+                DROPPED.inc();
+                return;
+            } else {
+                // Another producer claimed this position; retry with a fresh tail.
+                position = tail.get();
+            }
+        }
+        int index = (int) (position & mask);
+        times[index] = System.currentTimeMillis();
+        types[index] = type;
+        sources[index] = source;
+        subjects[index] = subject;
+        messages[index] = message;
+        // Publishing the sequence makes the fields above visible to the writer.
+        sequences.set(index, position + 1);
+        if (writerWaiting) {
+            writerWaiting = false;
+            LockSupport.unpark(writerThread);
+        }
+    }
+
+    /**
+     * Returns how many events were dropped because the writer fell behind.
+     *
+     * @return The number of dropped events.
+     */
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    /**
+     * Returns the directory this journal writes to.
+     *
+     * @return The directory, or null for the disabled journal.
+     */
+    public Path getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Writes every event recorded so far, then stops the writer and closes the current file.
+     */
+    @Override
+    public void close() {
+        if (writerThread == null || closed) {
+            return;
+        }
+        closed = true;
+        LockSupport.unpark(writerThread);
+        try {
+            writerThread.join(5000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // ---- Writer thread ----
+
+    private void runWriter() {
+        try {
+            while (true) {
+                int written = drain();
+                if (written > 0) {
+                    continue;
+                }
+                // Nothing pending: make what we have durable before sleeping.
+                flushQuietly();
+                if (closed) {
+                    // Producers check the flag before claiming, but one may have slipped in just before it was set.
+                    drain();
+                    break;
+                }
+                writerWaiting = true;
+                // Re-check after announcing, so an event published in between is not left waiting a full second.
+                if (!isPublished(head)) {
+                    LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+                }
+                writerWaiting = false;
+            }
+        } finally {
+            closeFile();
+        }
+    }
+
+    /**
+     * Writes every published event. Writer thread only.
+     *
+     * @return The number of events written.
+     */
+    private int drain() {
+        int count = 0;
+        while (isPublished(head)) {
+            int index = (int) (head & mask);
+            write(times[index], types[index], sources[index], subjects[index], messages[index]);
+            // Drop the references so the ring does not keep old messages alive.
+            sources[index] = null;
+            subjects[index] = null;
+            messages[index] = null;
+            sequences.set(index, head + mask + 1);
+            head++;
+            count++;
+        }
+        return count;
+    }
+
+    private boolean isPublished(long position) {
+        return sequences.get((int) (position & mask)) == position + 1;
+    }
+
+    private void write(long time, EventType type, String source, String subject, String message) {
+        line.setLength(0);
+        line.append("{\"ts\":").append(time).append(",\"type\":\"").append(type.name()).append('"');
+        appendField("source", source);
+        appendField("subject", subject);
+        appendField("message", message);
+        line.append("}\n");
+        try {
+            if (out == null) {
+                openNextFile();
+            }
+            out.append(line);
+            // Characters, not bytes; close enough for a size limit.
+            fileBytes += line.length();
+            if (fileBytes >= maxFileBytes) {
+                closeFile();
+                openNextFile();
+            }
+        } catch (IOException e) {
+            // Keep going: the next event retries with a fresh file.
+            e.printStackTrace();
+            closeFile();
+        }
+    }
+
+    private void appendField(String name, String value) {
+        if (value == null) {
+            return;
+        }
+        line.append(",\"").append(name).append("\":\"");
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"': line.append("\\\""); break;
+                case '\\': line.append("\\\\"); break;
+                case '\n': line.append("\\n"); break;
+                case '\r': line.append("\\r"); break;
+                case '\t': line.append("\\t"); break;
+                default:
+                    if (c < 0x20) {
+                        line.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        line.append(c);
+                    }
+            }
+        }
+        line.append('"');
+    }
+
+    /**
+     * Starts a new file and deletes the oldest ones beyond the file limit.
+     */
+    private void openNextFile() throws IOException {
+        Path file;
+        // Two rollovers within a millisecond would reuse the name; wait for the next one so names keep sorting by time.
+        while (Files.exists(file = directory.resolve("events-" + LocalDateTime.now().format(FILE_TIME) + ".jsonl"))) {
+            LockSupport.parkNanos(1_000_000);
+        }
+        out = new BufferedWriter(new OutputStreamWriter(Files.newOutputStream(file), StandardCharsets.UTF_8), 64 * 1024);
+        fileBytes = 0;
+
+        List<Path> files = listFiles(directory);
+        for (int i = 0; i < files.size() - maxFiles; i++) {
+            Files.deleteIfExists(files.get(i));
+        }
+    }
+
+    private void flushQuietly() {
+        if (out != null) {
+            try {
+                out.flush();
+            } catch (IOException e) {
+                e.printStackTrace();
+                closeFile();
+            }
+        }
+    }
+
+    private void closeFile() {
+        if (out != null) {
+            try {
+                out.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            out = null;
+        }
+    }
+
+    /**
+     * Lists the journal files in a directory, oldest first.
+     *
+     * @param directory The journal directory.
+     * @return The event files, sorted by name (which sorts by creation time).
+     * @throws IOException If the directory cannot be listed.
+     */
+    static List<Path> listFiles(Path directory) throws IOException {
+        List<Path> files = new ArrayList<>();
+        if (!Files.isDirectory(directory)) {
+            return files;
+        }
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "events-*.jsonl")) {
+            for (Path file : stream) {
+                files.add(file);
+            }
+        }
+        files.sort(null);
+        return files;
+    }
+}
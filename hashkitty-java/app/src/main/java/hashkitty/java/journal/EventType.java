@@ -0,0 +1,23 @@
+package hashkitty.java.journal;
+
+/**
+ * The kinds of events recorded in the {@link EventJournal}.
+ */
+public enum EventType {
+    /** A Hashcat process was launched. Subject: the job ID. */
+    JOB_STARTED,
+    /** Hashcat reported its progress. Subject: the job ID. */
+    JOB_PROGRESS,
+    /** A password was recovered. Subject: the job ID (or the room, for cracks relayed by a remote worker). */
+    CRACKED,
+    /** A Hashcat process exited or was stopped. Subject: the job ID. */
+    JOB_FINISHED,
+    /** A client joined a relay room. Subject: the room ID. */
+    RELAY_JOIN,
+    /** A client left a relay room. Subject: the room ID. */
+    RELAY_LEAVE,
+    /** Something failed. */
+    ERROR,
+    /** A status message shown to the user. */
+    STATUS
+}
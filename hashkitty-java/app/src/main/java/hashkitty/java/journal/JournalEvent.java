@@ -0,0 +1,62 @@
+package hashkitty.java.journal;
+
+import java.time.Instant;
+
+/**
+ * One event read back from the journal by {@link JournalReader}.
+ * <p>
+ * Each journal line is the JSON form of this class, e.g.
+ * {@code {"ts":1760868000000,"type":"CRACKED","source":"hashcat","subject":"3f2a9c1d","message":"hunter2"}}.
+ * </p>
+ */
+public class JournalEvent {
+
+    /** When the event happened, in epoch milliseconds. */
+    private long ts;
+    private EventType type;
+    /** The component that recorded the event ("hashcat", "relay", "app"). */
+    private String source;
+    /** What the event is about: a job ID or room ID, or null. */
+    private String subject;
+    private String message;
+
+    /** Constructor for Gson. */
+    public JournalEvent() {
+    }
+
+    /**
+     * Constructs an event.
+     *
+     * @param ts      The time in epoch milliseconds.
+     * @param type    The event type.
+     * @param source  The recording component.
+     * @param subject The job or room ID, or null.
+     * @param message The event text, or null.
+     */
+    public JournalEvent(long ts, EventType type, String source, String subject, String message) {
+        this.ts = ts;
+        this.type = type;
+        this.source = source;
+        this.subject = subject;
+        this.message = message;
+    }
+
+    public long getTimestamp() { return ts; }
+    public Instant getTime() { return Instant.ofEpochMilli(ts); }
+    public EventType getType() { return type; }
+    public String getSource() { return source; }
+    public String getSubject() { return subject; }
+    public String getMessage() { return message; }
+
+    /**
+     * Formats the event as one human-readable line.
+     *
+     * @return e.g. {@code 2026-10-19T10:00:00Z CRACKED hashcat [3f2a9c1d] hunter2}.
+     */
+    @Override
+    public String toString() {
+        return getTime() + " " + type + " " + source
+                + (subject != null ? " [" + subject + "]" : "")
+                + (message != null ? " " + message : "");
+    }
+}
@@ -0,0 +1,232 @@
+package hashkitty.java.journal;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * Reads back the files written by {@link EventJournal}, oldest event first, optionally filtered.
+ * <p>
+ * Also the entry point of the {@code journal} command, for post-mortems of unattended runs:
+ * <br>
+ * <b>Usage:</b> {@code journal [--dir DIR] [--type CRACKED,ERROR,...] [--subject ID] [--source NAME]
+ * [--since 2026-10-19T22:00:00Z|90m|12h] [--until ...] [--grep TEXT] [--json]}
+ * <br>
+ * Without {@code --dir}, the default journal directory ({@code ~/.hashkitty/journal}) is read. Lines cut short by a
+ * crash are skipped.
+ * </p>
+ */
+public class JournalReader {
+
+    private static final Gson GSON = new Gson();
+
+    /**
+     * Replays every event in a journal directory that matches the filter, in the order it was recorded.
+     *
+     * @param directory The journal directory.
+     * @param filter    Which events to pass on.
+     * @param consumer  Receives each matching event.
+     * @throws IOException If a journal file cannot be read.
+     */
+    public static void replay(Path directory, Predicate<JournalEvent> filter, Consumer<JournalEvent> consumer) throws IOException {
+        for (Path file : EventJournal.listFiles(directory)) {
+            try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    JournalEvent event = parse(line);
+                    if (event != null && filter.test(event)) {
+                        consumer.accept(event);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads every event in a journal directory that matches the filter.
+     *
+     * @param directory The journal directory.
+     * @param filter    Which events to return.
+     * @return The matching events, oldest first.
+     * @throws IOException If a journal file cannot be read.
+     */
+    public static List<JournalEvent> read(Path directory, Predicate<JournalEvent> filter) throws IOException {
+        List<JournalEvent> events = new ArrayList<>();
+        replay(directory, filter, events::add);
+        return events;
+    }
+
+    /**
+     * Parses one journal line.
+     *
+     * @param line The JSON line.
+     * @return The event, or null if the line is blank, truncated or otherwise unreadable.
+     */
+    static JournalEvent parse(String line) {
+        if (line.isBlank()) {
+            return null;
+        }
+        try {
+            JournalEvent event = GSON.fromJson(line, JournalEvent.class);
+            // An unknown type name (from a newer version) parses as null; skip it rather than fail.
+            return event != null && event.getType() != null ? event : null;
+        } catch (JsonParseException e) {
+            return null;
+        }
+    }
+
+    // ---- Filters ----
+
+    /**
+     * Matches events of any of the given types.
+     *
+     * @param types The accepted types.
+     * @return The filter.
+     */
+    public static Predicate<JournalEvent> ofType(Set<EventType> types) {
+        return event -> types.contains(event.getType());
+    }
+
+    /**
+     * Matches events about a job or room.
+     *
+     * @param subject The job or room ID.
+     * @return The filter.
+     */
+    public static Predicate<JournalEvent> aboutSubject(String subject) {
+        return event -> subject.equals(event.getSubject());
+    }
+
+    /**
+     * Matches events recorded by a component.
+     *
+     * @param source The component name ("hashcat", "relay", "app").
+     * @return The filter.
+     */
+    public static Predicate<JournalEvent> fromSource(String source) {
+        return event -> source.equals(event.getSource());
+    }
+
+    /**
+     * Matches events recorded in a time window.
+     *
+     * @param from  The earliest time (inclusive), or null for no lower bound.
+     * @param until The latest time (exclusive), or null for no upper bound.
+     * @return The filter.
+     */
+    public static Predicate<JournalEvent> between(Instant from, Instant until) {
+        long fromMillis = from != null ? from.toEpochMilli() : Long.MIN_VALUE;
+        long untilMillis = until != null ? until.toEpochMilli() : Long.MAX_VALUE;
+        return event -> event.getTimestamp() >= fromMillis && event.getTimestamp() < untilMillis;
+    }
+
+    /**
+     * Matches events whose message contains some text, ignoring case.
+     *
+     * @param text The text to look for.
+     * @return The filter.
+     */
+    public static Predicate<JournalEvent> messageContains(String text) {
+        String needle = text.toLowerCase(Locale.ROOT);
+        return event -> event.getMessage() != null && event.getMessage().toLowerCase(Locale.ROOT).contains(needle);
+    }
+
+    // ---- Command line ----
+
+    /**
+     * The main method.
+     *
+     * @param args Command-line arguments (see class documentation).
+     * @throws IOException If the journal cannot be read.
+     */
+    public static void main(String[] args) throws IOException {
+        Path directory = EventJournal.defaultDirectory();
+        Predicate<JournalEvent> filter = event -> true;
+        boolean json = false;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                String arg = args[i];
+                if ("--json".equals(arg)) {
+                    json = true;
+                    continue;
+                }
+                if (i + 1 >= args.length) {
+                    throw new IllegalArgumentException("Missing value for " + arg);
+                }
+                String value = args[++i];
+                switch (arg) {
+                    case "--dir": directory = Paths.get(value); break;
+                    case "--type": filter = filter.and(ofType(parseTypes(value))); break;
+                    case "--subject": filter = filter.and(aboutSubject(value)); break;
+                    case "--source": filter = filter.and(fromSource(value)); break;
+                    case "--since": filter = filter.and(between(parseTime(value), null)); break;
+                    case "--until": filter = filter.and(between(null, parseTime(value))); break;
+                    case "--grep": filter = filter.and(messageContains(value)); break;
+                    default: throw new IllegalArgumentException("Unknown argument: " + arg);
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println("Usage: journal [--dir DIR] [--type CRACKED,ERROR,...] [--subject ID] [--source NAME]"
+                    + " [--since TIME|90m|12h] [--until TIME|90m|12h] [--grep TEXT] [--json]");
+            System.exit(1);
+        }
+
+        if (!Files.isDirectory(directory)) {
+            System.err.println("No journal found at " + directory);
+            System.exit(1);
+        }
+        boolean asJson = json;
+        replay(directory, filter, event -> System.out.println(asJson ? GSON.toJson(event) : event.toString()));
+    }
+
+    private static Set<EventType> parseTypes(String value) {
+        Set<EventType> types = EnumSet.noneOf(EventType.class);
+        for (String name : value.split(",")) {
+            types.add(EventType.valueOf(name.trim().toUpperCase(Locale.ROOT)));
+        }
+        return types;
+    }
+
+    /**
+     * Parses an ISO-8601 instant, or a relative age such as {@code 90m}, {@code 12h} or {@code 2d}.
+     */
+    private static Instant parseTime(String value) {
+        try {
+            return Instant.parse(value);
+        } catch (DateTimeParseException e) {
+            // Not an instant; try a relative age below.
+        }
+        if (value.length() < 2) {
+            throw new IllegalArgumentException("Invalid time: " + value);
+        }
+        long amount;
+        try {
+            amount = Long.parseLong(value.substring(0, value.length() - 1));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid time: " + value);
+        }
+        switch (value.charAt(value.length() - 1)) {
+            case 'm': return Instant.now().minus(Duration.ofMinutes(amount));
+            case 'h': return Instant.now().minus(Duration.ofHours(amount));
+            case 'd': return Instant.now().minus(Duration.ofDays(amount));
+            default: throw new IllegalArgumentException("Invalid time: " + value);
+        }
+    }
+}
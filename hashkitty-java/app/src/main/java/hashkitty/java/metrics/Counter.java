@@ -0,0 +1,40 @@
+package hashkitty.java.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A monotonically increasing count (Prometheus type "counter").
+ * <p>
+ * Backed by a {@link LongAdder}, so incrementing from many threads (every relay mailbox, for instance) does not
+ * contend on a single memory location.
+ * </p>
+ */
+public class Counter {
+
+    private final LongAdder value = new LongAdder();
+
+    /**
+     * Adds one.
+     */
+    public void inc() {
+        value.increment();
+    }
+
+    /**
+     * Adds a non-negative amount.
+     *
+     * @param amount The amount to add.
+     */
+    public void add(long amount) {
+        value.add(amount);
+    }
+
+    /**
+     * Returns the current count.
+     *
+     * @return The total so far.
+     */
+    public long get() {
+        return value.sum();
+    }
+}
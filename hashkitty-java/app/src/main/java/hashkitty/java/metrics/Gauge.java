@@ -0,0 +1,62 @@
+package hashkitty.java.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.DoubleSupplier;
+
+/**
+ * A value that can go up and down (Prometheus type "gauge").
+ * <p>
+ * A gauge either holds a value set by the code it instruments ({@link #set}, {@link #add}), or reads one on demand
+ * from a {@link DoubleSupplier} when it is scraped, which suits sizes of existing collections.
+ * </p>
+ */
+public class Gauge {
+
+    /** The value's bits, as in {@link Double#doubleToLongBits}. */
+    private final AtomicLong bits = new AtomicLong(Double.doubleToLongBits(0));
+
+    /** Reads the value on demand, or null for a settable gauge. */
+    private volatile DoubleSupplier supplier;
+
+    /**
+     * Sets the value.
+     *
+     * @param value The new value.
+     */
+    public void set(double value) {
+        bits.set(Double.doubleToLongBits(value));
+    }
+
+    /**
+     * Adds to the value (use a negative amount to subtract).
+     *
+     * @param amount The amount to add.
+     */
+    public void add(double amount) {
+        long current;
+        long next;
+        do {
+            current = bits.get();
+            next = Double.doubleToLongBits(Double.longBitsToDouble(current) + amount);
+        } while (!bits.compareAndSet(current, next));
+    }
+
+    /**
+     * Makes the gauge read its value from a supplier. Replaces any previous supplier.
+     *
+     * @param supplier The supplier, called on every scrape.
+     */
+    void setSupplier(DoubleSupplier supplier) {
+        this.supplier = supplier;
+    }
+
+    /**
+     * Returns the current value.
+     *
+     * @return The value.
+     */
+    public double get() {
+        DoubleSupplier s = supplier;
+        return s != null ? s.getAsDouble() : Double.longBitsToDouble(bits.get());
+    }
+}
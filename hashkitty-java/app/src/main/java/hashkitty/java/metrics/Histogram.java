@@ -0,0 +1,190 @@
+package hashkitty.java.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A distribution of non-negative long values (latencies in nanoseconds, sizes in bytes), recorded into
+ * HDR-style log-linear buckets.
+ * <p>
+ * Every power of two is split into {@value #SUB_BUCKETS} equal sub-buckets, so any recorded value is known to
+ * within 12.5% across the whole long range, with a fixed array of counters and no allocation per sample.
+ * For export, the buckets are summed into a fixed set of power-of-two boundaries between {@code 2^minExponent}
+ * and {@code 2^maxExponent}, scaled by {@code unit} (1e-9 turns nanoseconds into the seconds Prometheus expects).
+ * Quantiles for in-app display are computed from the fine buckets.
+ * </p>
+ */
+public class Histogram {
+
+    /** Sub-buckets per power of two. */
+    private static final int SUB_BUCKETS = 8;
+
+    /** log2 of {@link #SUB_BUCKETS}. */
+    private static final int SUB_BITS = 3;
+
+    /** Enough buckets for every positive long. */
+    private static final int BUCKET_COUNT = (64 - SUB_BITS + 1) * SUB_BUCKETS;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+
+    /** Multiplier from recorded units to exported units. */
+    private final double unit;
+
+    /** Exported boundaries are 2^minExponent ... 2^maxExponent (in recorded units). */
+    private final int minExponent;
+    private final int maxExponent;
+
+    /**
+     * Constructs a histogram.
+     *
+     * @param unit        Multiplier from recorded units to exported units (e.g. 1e-9 for nanoseconds to seconds).
+     * @param minExponent The smallest exported boundary is 2^minExponent recorded units.
+     * @param maxExponent The largest exported boundary is 2^maxExponent recorded units (at most 62).
+     */
+    public Histogram(double unit, int minExponent, int maxExponent) {
+        if (minExponent < 0 || maxExponent > 62 || minExponent > maxExponent) {
+            throw new IllegalArgumentException("Invalid exponent range " + minExponent + ".." + maxExponent);
+        }
+        this.unit = unit;
+        this.minExponent = minExponent;
+        this.maxExponent = maxExponent;
+    }
+
+    /**
+     * Records one value. Negative values are recorded as zero.
+     *
+     * @param value The value, in recorded units.
+     */
+    public void record(long value) {
+        long v = Math.max(0, value);
+        buckets.incrementAndGet(bucketOf(v));
+        count.increment();
+        sum.add(v);
+    }
+
+    /**
+     * Records the time elapsed since a {@link System#nanoTime()} reading.
+     *
+     * @param startNanos The reading taken when the operation started.
+     */
+    public void recordSince(long startNanos) {
+        record(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * Returns the number of recorded values.
+     *
+     * @return The count.
+     */
+    public long getCount() {
+        return count.sum();
+    }
+
+    /**
+     * Returns the sum of recorded values, in exported units.
+     *
+     * @return The scaled sum.
+     */
+    public double getSum() {
+        return sum.sum() * unit;
+    }
+
+    /**
+     * Estimates a quantile from the buckets.
+     *
+     * @param quantile Between 0 and 1 (e.g. 0.99).
+     * @return The estimated value in exported units, or 0 if nothing was recorded.
+     */
+    public double getQuantile(double quantile) {
+        long total = 0;
+        long[] snapshot = new long[BUCKET_COUNT];
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            snapshot[i] = buckets.get(i);
+            total += snapshot[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(quantile * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                // The midpoint of the bucket keeps the error within half a bucket width.
+                return (lowerBoundOf(i) + upperBoundOf(i)) / 2.0 * unit;
+            }
+        }
+        return upperBoundOf(BUCKET_COUNT - 1) * unit;
+    }
+
+    /**
+     * Returns the exported bucket boundaries, in exported units.
+     *
+     * @return The upper bounds, smallest first (without +Inf).
+     */
+    double[] exportedBounds() {
+        double[] bounds = new double[maxExponent - minExponent + 1];
+        for (int k = minExponent; k <= maxExponent; k++) {
+            bounds[k - minExponent] = (1L << k) * unit;
+        }
+        return bounds;
+    }
+
+    /**
+     * Returns the cumulative counts for {@link #exportedBounds()}: values below each boundary.
+     *
+     * @return One cumulative count per exported boundary.
+     */
+    long[] exportedCounts() {
+        long[] counts = new long[maxExponent - minExponent + 1];
+        long cumulative = 0;
+        int bucket = 0;
+        for (int k = minExponent; k <= maxExponent; k++) {
+            long limit = 1L << k;
+            // Powers of two are bucket edges, so whole buckets fall on either side of each boundary.
+            while (bucket < BUCKET_COUNT && upperBoundOf(bucket) <= limit) {
+                cumulative += buckets.get(bucket++);
+            }
+            counts[k - minExponent] = cumulative;
+        }
+        return counts;
+    }
+
+    /**
+     * Maps a value to its bucket.
+     */
+    static int bucketOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int) (value >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    /**
+     * Returns the smallest value of a bucket.
+     */
+    static double lowerBoundOf(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int exponent = bucket / SUB_BUCKETS + SUB_BITS - 1;
+        int sub = bucket % SUB_BUCKETS;
+        return (double) (SUB_BUCKETS + sub) * (1L << (exponent - SUB_BITS));
+    }
+
+    /**
+     * Returns the exclusive upper bound of a bucket.
+     */
+    static double upperBoundOf(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket + 1;
+        }
+        int exponent = bucket / SUB_BUCKETS + SUB_BITS - 1;
+        int sub = bucket % SUB_BUCKETS;
+        return (double) (SUB_BUCKETS + sub + 1) * (1L << (exponent - SUB_BITS));
+    }
+}
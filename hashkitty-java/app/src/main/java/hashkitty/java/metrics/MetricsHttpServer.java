@@ -0,0 +1,97 @@
+package hashkitty.java.metrics;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Serves a {@link MetricsRegistry} on {@code GET /metrics} in the Prometheus text format.
+ * <p>
+ * Uses the JDK's built-in HTTP server so no extra dependency is needed. Scrapes are handled on a single daemon
+ * thread: they are infrequent, and rendering the registry is cheap.
+ * </p>
+ */
+public class MetricsHttpServer {
+
+    /** The content type Prometheus expects for the text format. */
+    private static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    private final MetricsRegistry registry;
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    /**
+     * Binds the endpoint. Call {@link #start()} to begin serving.
+     *
+     * @param port     The port to listen on (0 picks a free port).
+     * @param registry The registry to expose.
+     * @throws IOException If the port cannot be bound.
+     */
+    public MetricsHttpServer(int port, MetricsRegistry registry) throws IOException {
+        this.registry = registry;
+        this.server = HttpServer.create(new InetSocketAddress(port), 0);
+        this.executor = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "metrics-http");
+            t.setDaemon(true);
+            return t;
+        });
+        server.setExecutor(executor);
+        server.createContext("/metrics", this::handleMetrics);
+    }
+
+    /**
+     * Starts serving scrapes.
+     */
+    public void start() {
+        server.start();
+    }
+
+    /**
+     * Stops the endpoint.
+     */
+    public void stop() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    /**
+     * Returns the port the endpoint is bound to.
+     *
+     * @return The port.
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    private void handleMetrics(HttpExchange exchange) throws IOException {
+        try {
+            if (!"GET".equals(exchange.getRequestMethod()) && !"HEAD".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            StringBuilder body = new StringBuilder(8192);
+            registry.writePrometheus(body);
+            byte[] bytes = body.toString().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+            if ("HEAD".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(200, -1);
+                return;
+            }
+            exchange.sendResponseHeaders(200, bytes.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(bytes);
+            }
+        } catch (IOException | RuntimeException e) {
+            e.printStackTrace();
+            throw e;
+        } finally {
+            exchange.close();
+        }
+    }
+}
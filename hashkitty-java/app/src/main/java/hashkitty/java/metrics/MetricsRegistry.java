@@ -0,0 +1,230 @@
+package hashkitty.java.metrics;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.DoubleSupplier;
+import java.util.function.Supplier;
+
+/**
+ * A lightweight, dependency-free registry of named metrics, exported in the Prometheus text format.
+ * <p>
+ * Metrics are identified by name plus an optional set of label pairs ({@code "kind", "text"}); asking twice for
+ * the same name and labels returns the same instance, so instrumented classes simply keep the metric in a static
+ * field. Instrumentation throughout the app records into {@link #getDefault()}, which
+ * {@link MetricsHttpServer} serves on {@code /metrics}.
+ * </p>
+ * <p>
+ * Names should follow the Prometheus conventions: a {@code hashkitty_} prefix, a {@code _total} suffix for
+ * counters, and base units ({@code _seconds}, {@code _bytes}).
+ * </p>
+ */
+public class MetricsRegistry {
+
+    /** The registry used by the app's instrumentation. */
+    private static final MetricsRegistry DEFAULT = new MetricsRegistry();
+
+    /** Histogram buckets for durations recorded in nanoseconds: 2^10 ns (about 1 microsecond) up to 2^36 ns (about 69 s). */
+    private static final int TIMER_MIN_EXPONENT = 10;
+    private static final int TIMER_MAX_EXPONENT = 36;
+
+    /** Metric families by name, sorted so the output is stable. */
+    private final Map<String, Family<?>> families = new ConcurrentSkipListMap<>();
+
+    /**
+     * Returns the registry used by the app's instrumentation.
+     *
+     * @return The default registry.
+     */
+    public static MetricsRegistry getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * Returns a counter, creating it on first use.
+     *
+     * @param name   The metric name (should end in {@code _total}).
+     * @param help   A one-line description.
+     * @param labels Alternating label names and values.
+     * @return The counter.
+     */
+    public Counter counter(String name, String help, String... labels) {
+        return family(name, help, "counter", Counter::new).child(labels);
+    }
+
+    /**
+     * Returns a settable gauge, creating it on first use.
+     *
+     * @param name   The metric name.
+     * @param help   A one-line description.
+     * @param labels Alternating label names and values.
+     * @return The gauge.
+     */
+    public Gauge gauge(String name, String help, String... labels) {
+        return family(name, help, "gauge", Gauge::new).child(labels);
+    }
+
+    /**
+     * Registers a gauge that reads its value when scraped. Registering the same name and labels again replaces
+     * the supplier, so the most recently created instance of a component is the one reported.
+     *
+     * @param name     The metric name.
+     * @param help     A one-line description.
+     * @param supplier Reads the current value; must be cheap and thread-safe.
+     * @param labels   Alternating label names and values.
+     */
+    public void gauge(String name, String help, DoubleSupplier supplier, String... labels) {
+        gauge(name, help, labels).setSupplier(supplier);
+    }
+
+    /**
+     * Returns a histogram of durations recorded in nanoseconds and exported in seconds.
+     *
+     * @param name   The metric name (should end in {@code _seconds}).
+     * @param help   A one-line description.
+     * @param labels Alternating label names and values.
+     * @return The histogram.
+     */
+    public Histogram timer(String name, String help, String... labels) {
+        return histogram(name, help, 1e-9, TIMER_MIN_EXPONENT, TIMER_MAX_EXPONENT, labels);
+    }
+
+    /**
+     * Returns a histogram, creating it on first use.
+     *
+     * @param name        The metric name.
+     * @param help        A one-line description.
+     * @param unit        Multiplier from recorded to exported units.
+     * @param minExponent Smallest exported boundary, as a power of two in recorded units.
+     * @param maxExponent Largest exported boundary, as a power of two in recorded units.
+     * @param labels      Alternating label names and values.
+     * @return The histogram.
+     */
+    public Histogram histogram(String name, String help, double unit, int minExponent, int maxExponent, String... labels) {
+        return family(name, help, "histogram", () -> new Histogram(unit, minExponent, maxExponent)).child(labels);
+    }
+
+    /**
+     * Registers gauges for the JVM's heap, threads and uptime, so every process on the fleet reports them.
+     */
+    public void registerJvmMetrics() {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        gauge("hashkitty_jvm_heap_used_bytes", "Heap memory in use.", () -> memory.getHeapMemoryUsage().getUsed());
+        gauge("hashkitty_jvm_heap_committed_bytes", "Heap memory committed by the JVM.", () -> memory.getHeapMemoryUsage().getCommitted());
+        gauge("hashkitty_jvm_threads", "Live threads.", () -> ManagementFactory.getThreadMXBean().getThreadCount());
+        gauge("hashkitty_process_uptime_seconds", "Time since the JVM started.", () -> ManagementFactory.getRuntimeMXBean().getUptime() / 1000.0);
+    }
+
+    /**
+     * Writes every metric in the Prometheus text exposition format (version 0.0.4).
+     *
+     * @param out The destination.
+     * @throws IOException If writing fails.
+     */
+    public void writePrometheus(Appendable out) throws IOException {
+        for (Family<?> family : families.values()) {
+            out.append("# HELP ").append(family.name).append(' ').append(escapeHelp(family.help)).append('\n');
+            out.append("# TYPE ").append(family.name).append(' ').append(family.type).append('\n');
+            for (Map.Entry<String, ?> child : family.children.entrySet()) {
+                writeChild(out, family.name, child.getKey(), child.getValue());
+            }
+        }
+    }
+
+    private static void writeChild(Appendable out, String name, String labels, Object metric) throws IOException {
+        if (metric instanceof Counter) {
+            sample(out, name, labels, ((Counter) metric).get());
+        } else if (metric instanceof Gauge) {
+            sample(out, name, labels, ((Gauge) metric).get());
+        } else if (metric instanceof Histogram) {
+            Histogram histogram = (Histogram) metric;
+            // Read the count first: buckets recorded concurrently may then exceed it slightly, never the reverse.
+            long count = histogram.getCount();
+            double[] bounds = histogram.exportedBounds();
+            long[] counts = histogram.exportedCounts();
+            for (int i = 0; i < bounds.length; i++) {
+                sample(out, name + "_bucket", withLabel(labels, "le", format(bounds[i])), Math.min(counts[i], count));
+            }
+            sample(out, name + "_bucket", withLabel(labels, "le", "+Inf"), count);
+            sample(out, name + "_sum", labels, histogram.getSum());
+            sample(out, name + "_count", labels, count);
+        }
+    }
+
+    private static void sample(Appendable out, String name, String labels, double value) throws IOException {
+        out.append(name);
+        if (!labels.isEmpty()) {
+            out.append('{').append(labels).append('}');
+        }
+        out.append(' ').append(format(value)).append('\n');
+    }
+
+    private static String format(double value) {
+        if (Double.isNaN(value)) return "NaN";
+        if (Double.isInfinite(value)) return value > 0 ? "+Inf" : "-Inf";
+        if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+            return Long.toString((long) value);
+        }
+        return Double.toString(value);
+    }
+
+    private static String withLabel(String labels, String name, String value) {
+        String label = name + "=\"" + value + "\"";
+        return labels.isEmpty() ? label : labels + "," + label;
+    }
+
+    /**
+     * Renders label pairs as {@code a="x",b="y"}, escaping values as the format requires.
+     */
+    static String renderLabels(String... labels) {
+        if (labels.length % 2 != 0) {
+            throw new IllegalArgumentException("Labels must be name/value pairs");
+        }
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < labels.length; i += 2) {
+            if (sb.length() > 0) sb.append(',');
+            sb.append(labels[i]).append("=\"")
+                    .append(labels[i + 1].replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n"))
+                    .append('"');
+        }
+        return sb.toString();
+    }
+
+    private static String escapeHelp(String help) {
+        return help.replace("\\", "\\\\").replace("\n", "\\n");
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> Family<T> family(String name, String help, String type, Supplier<T> factory) {
+        Family<?> family = families.computeIfAbsent(name, n -> new Family<>(n, help, type, factory));
+        if (!family.type.equals(type)) {
+            throw new IllegalArgumentException("Metric " + name + " is already registered as a " + family.type);
+        }
+        return (Family<T>) family;
+    }
+
+    /**
+     * All metrics sharing a name, keyed by their rendered labels.
+     */
+    private static class Family<T> {
+        final String name;
+        final String help;
+        final String type;
+        final Supplier<T> factory;
+        final Map<String, T> children = new ConcurrentHashMap<>();
+
+        Family(String name, String help, String type, Supplier<T> factory) {
+            this.name = name;
+            this.help = help;
+            this.type = type;
+            this.factory = factory;
+        }
+
+        T child(String... labels) {
+            return children.computeIfAbsent(renderLabels(labels), k -> factory.get());
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package hashkitty.java.model;
+
+import com.google.gson.annotations.SerializedName;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Represents a cracking agent registered with a Hashtopolis server.
+ * <p>
+ * Like {@link HashtopolisTask}, this is a Data Transfer Object filled in by Gson from the API's JSON, with
+ * getters named for JavaFX's `PropertyValueFactory`.
+ * </p>
+ */
+public class HashtopolisAgent {
+
+    /** The unique identifier of the agent. Mapped from the JSON field "agentId". */
+    @SerializedName("agentId")
+    private int agentId;
+
+    /** The name the agent registered with. Mapped from the JSON field "name". */
+    @SerializedName("name")
+    private String name;
+
+    /** The agent's compute devices (e.g. GPU names). Mapped from the JSON field "devices". */
+    @SerializedName("devices")
+    private List<String> devices;
+
+    /**
+     * Retrieves the unique agent ID.
+     *
+     * @return The integer ID of the agent.
+     */
+    public int getAgentId() {
+        return agentId;
+    }
+
+    /**
+     * Retrieves the name of the agent.
+     *
+     * @return The agent name.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Retrieves the agent's compute devices.
+     *
+     * @return The device names; empty if the server did not report any.
+     */
+    public List<String> getDevices() {
+        return devices != null ? devices : Collections.emptyList();
+    }
+}
@@ -0,0 +1,65 @@
+package hashkitty.java.model;
+
+import com.google.gson.annotations.SerializedName;
+
+/**
+ * Represents a hashlist retrieved from a Hashtopolis server.
+ * <p>
+ * Like {@link HashtopolisTask}, this is a Data Transfer Object filled in by Gson from the API's JSON, with
+ * getters named for JavaFX's `PropertyValueFactory`.
+ * </p>
+ */
+public class HashtopolisHashlist {
+
+    /** The unique identifier of the hashlist. Mapped from the JSON field "hashlistId". */
+    @SerializedName("hashlistId")
+    private int hashlistId;
+
+    /** The human-readable name of the hashlist. Mapped from the JSON field "name". */
+    @SerializedName("name")
+    private String name;
+
+    /** The hashcat mode of the hashes in the list. Mapped from the JSON field "hashtypeId". */
+    @SerializedName("hashtypeId")
+    private int hashtypeId;
+
+    /** The number of hashes in the list. Mapped from the JSON field "hashCount". */
+    @SerializedName("hashCount")
+    private long hashCount;
+
+    /**
+     * Retrieves the unique hashlist ID.
+     *
+     * @return The integer ID of the hashlist.
+     */
+    public int getHashlistId() {
+        return hashlistId;
+    }
+
+    /**
+     * Retrieves the name of the hashlist.
+     *
+     * @return The name string of the hashlist.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Retrieves the hashcat mode of the hashlist.
+     *
+     * @return The hash type (e.g. 22000 for WPA).
+     */
+    public int getHashtypeId() {
+        return hashtypeId;
+    }
+
+    /**
+     * Retrieves the number of hashes in the hashlist.
+     *
+     * @return The hash count.
+     */
+    public long getHashCount() {
+        return hashCount;
+    }
+}
@@ -0,0 +1,191 @@
+package hashkitty.java.pmk;
+
+/**
+ * Computes WPA pairwise master keys: PBKDF2-HMAC-SHA1 of the passphrase with the ESSID as salt, 4096 iterations,
+ * 32 bytes of output.
+ * <p>
+ * Almost all of the time goes into the 16,384 SHA-1 compressions per key, so this does them directly on
+ * {@code int} words instead of going through {@code Mac}: the HMAC key pads are compressed once per passphrase,
+ * and every iteration after the first is exactly one inner and one outer compression of a 20-byte block whose
+ * padding never changes. Nothing is allocated per key. An instance is not thread-safe; use one per thread.
+ * </p>
+ */
+final class Pbkdf2Sha1 {
+
+    /** Iterations of WPA's PBKDF2. */
+    static final int ITERATIONS = 4096;
+
+    /** Length of a pairwise master key. */
+    static final int PMK_LENGTH = 32;
+
+    private final int[] w = new int[80];
+    private final int[] innerPad = new int[5];
+    private final int[] outerPad = new int[5];
+    private final int[] state = new int[5];
+    private final int[] u = new int[5];
+    private final int[] t = new int[5];
+    private final byte[] block = new byte[64];
+
+    /**
+     * Derives the PMK for a passphrase and ESSID.
+     *
+     * @param passphrase The passphrase bytes (WPA allows 8 to 63).
+     * @param offset     Where the passphrase starts.
+     * @param length     The passphrase length, at most 64.
+     * @param essid      The ESSID (at most 32 bytes).
+     * @param out        Receives the 32-byte PMK.
+     * @param outOffset  Where to write it.
+     */
+    void derive(byte[] passphrase, int offset, int length, byte[] essid, byte[] out, int outOffset) {
+        // The HMAC key is the passphrase itself (it fits one block), so both pads are a single compression.
+        padState(passphrase, offset, length, 0x36, innerPad);
+        padState(passphrase, offset, length, 0x5c, outerPad);
+        for (int blockIndex = 1; blockIndex <= 2; blockIndex++) {
+            firstIteration(essid, blockIndex);
+            System.arraycopy(u, 0, t, 0, 5);
+            for (int i = 1; i < ITERATIONS; i++) {
+                // U(i) = HMAC(U(i-1)), one inner and one outer compression of a 20-byte message.
+                hmacOfDigest(u);
+                for (int j = 0; j < 5; j++) {
+                    t[j] ^= u[j];
+                }
+            }
+            // T1 gives bytes 0-19 of the key and T2 bytes 20-31.
+            int words = blockIndex == 1 ? 5 : 3;
+            for (int j = 0; j < words; j++) {
+                int p = outOffset + (blockIndex - 1) * 20 + j * 4;
+                out[p] = (byte) (t[j] >>> 24);
+                out[p + 1] = (byte) (t[j] >>> 16);
+                out[p + 2] = (byte) (t[j] >>> 8);
+                out[p + 3] = (byte) t[j];
+            }
+        }
+    }
+
+    private void padState(byte[] key, int offset, int length, int pad, int[] into) {
+        for (int i = 0; i < 64; i++) {
+            block[i] = (byte) ((i < length ? key[offset + i] : 0) ^ pad);
+        }
+        loadBlock();
+        reset(into);
+        compress(into);
+    }
+
+    /**
+     * U1 = HMAC(passphrase, ESSID || INT(blockIndex)); the message fits one block after the pad.
+     */
+    private void firstIteration(byte[] essid, int blockIndex) {
+        int length = essid.length + 4;
+        for (int i = 0; i < 64; i++) {
+            block[i] = 0;
+        }
+        System.arraycopy(essid, 0, block, 0, essid.length);
+        block[essid.length + 3] = (byte) blockIndex;
+        block[length] = (byte) 0x80;
+        long bits = (64L + length) * 8;
+        block[62] = (byte) (bits >>> 8);
+        block[63] = (byte) bits;
+        loadBlock();
+        System.arraycopy(innerPad, 0, state, 0, 5);
+        compress(state);
+        System.arraycopy(state, 0, u, 0, 5);
+        outerOf(u);
+    }
+
+    /**
+     * Replaces a 20-byte digest with its HMAC under the current key.
+     */
+    private void hmacOfDigest(int[] digest) {
+        loadDigestBlock(digest);
+        System.arraycopy(innerPad, 0, state, 0, 5);
+        compress(state);
+        System.arraycopy(state, 0, digest, 0, 5);
+        outerOf(digest);
+    }
+
+    private void outerOf(int[] digest) {
+        loadDigestBlock(digest);
+        System.arraycopy(outerPad, 0, state, 0, 5);
+        compress(state);
+        System.arraycopy(state, 0, digest, 0, 5);
+    }
+
+    /**
+     * Loads a 20-byte message that follows a 64-byte pad: 672 bits in all.
+     */
+    private void loadDigestBlock(int[] digest) {
+        System.arraycopy(digest, 0, w, 0, 5);
+        w[5] = 0x80000000;
+        for (int i = 6; i < 15; i++) {
+            w[i] = 0;
+        }
+        w[15] = (64 + 20) * 8;
+    }
+
+    private void loadBlock() {
+        for (int i = 0; i < 16; i++) {
+            w[i] = (block[i * 4] & 0xff) << 24 | (block[i * 4 + 1] & 0xff) << 16
+                    | (block[i * 4 + 2] & 0xff) << 8 | (block[i * 4 + 3] & 0xff);
+        }
+    }
+
+    private static void reset(int[] h) {
+        h[0] = 0x67452301;
+        h[1] = 0xefcdab89;
+        h[2] = 0x98badcfe;
+        h[3] = 0x10325476;
+        h[4] = 0xc3d2e1f0;
+    }
+
+    /**
+     * One SHA-1 compression of {@code w[0..15]} into {@code h}.
+     */
+    private void compress(int[] h) {
+        int[] w = this.w;
+        for (int i = 16; i < 80; i++) {
+            w[i] = Integer.rotateLeft(w[i - 3] ^ w[i - 8] ^ w[i - 14] ^ w[i - 16], 1);
+        }
+        int a = h[0];
+        int b = h[1];
+        int c = h[2];
+        int d = h[3];
+        int e = h[4];
+        for (int i = 0; i < 20; i++) {
+            int temp = Integer.rotateLeft(a, 5) + ((b & c) | (~b & d)) + e + w[i] + 0x5a827999;
+            e = d;
+            d = c;
+            c = Integer.rotateLeft(b, 30);
+            b = a;
+            a = temp;
+        }
+        for (int i = 20; i < 40; i++) {
+            int temp = Integer.rotateLeft(a, 5) + (b ^ c ^ d) + e + w[i] + 0x6ed9eba1;
+            e = d;
+            d = c;
+            c = Integer.rotateLeft(b, 30);
+            b = a;
+            a = temp;
+        }
+        for (int i = 40; i < 60; i++) {
+            int temp = Integer.rotateLeft(a, 5) + ((b & c) | (b & d) | (c & d)) + e + w[i] + 0x8f1bbcdc;
+            e = d;
+            d = c;
+            c = Integer.rotateLeft(b, 30);
+            b = a;
+            a = temp;
+        }
+        for (int i = 60; i < 80; i++) {
+            int temp = Integer.rotateLeft(a, 5) + (b ^ c ^ d) + e + w[i] + 0xca62c1d6;
+            e = d;
+            d = c;
+            c = Integer.rotateLeft(b, 30);
+            b = a;
+            a = temp;
+        }
+        h[0] += a;
+        h[1] += b;
+        h[2] += c;
+        h[3] += d;
+        h[4] += e;
+    }
+}
@@ -0,0 +1,478 @@
+package hashkitty.java.pmk;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Precomputed WPA pairwise master keys, so a network seen again is checked against a wordlist in seconds.
+ * <p>
+ * Nearly all the work of cracking WPA is PBKDF2 (4096 iterations of HMAC-SHA1 per candidate), and it depends only
+ * on the passphrase and the ESSID, not on the handshake. {@link #precompute} runs it once per candidate on all
+ * CPU cores and keeps the results in a {@link PmkTable} named after the ESSID and the wordlist's SHA-256.
+ * {@link #crack} then checks a handshake or PMKID of that ESSID against every cached PMK with two or three MAC
+ * operations each, which is thousands of times less work than PBKDF2. Offices and chains reuse ESSIDs across
+ * sites and years, so repeat audits mostly hit the cache.
+ * </p>
+ * <p>
+ * Candidates follow Hashcat: one per line, 8 to 63 bytes, with a trailing carriage return removed; other lines
+ * are skipped.
+ * </p>
+ * <p>
+ * <b>Usage:</b> {@code pmk precompute --essid NAME --wordlist FILE [--threads N] [--dir DIR]} or
+ * {@code pmk crack --hashes FILE.hc22000 [--threads N] [--dir DIR]}
+ * </p>
+ */
+public class PmkCache {
+
+    /** Shortest WPA passphrase. */
+    static final int MIN_PASSPHRASE = 8;
+    /** Longest WPA passphrase. */
+    static final int MAX_PASSPHRASE = 63;
+
+    /** Candidates per precomputation task. */
+    private static final int BATCH = 256;
+    /** PMKs read per verification step. */
+    private static final int SCAN_CHUNK = 4096;
+    private static final long PROGRESS_INTERVAL_MS = 10_000;
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final Path directory;
+
+    /**
+     * Creates a cache in a directory.
+     *
+     * @param directory Where the tables live; created when the first one is.
+     */
+    public PmkCache(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Returns the default cache directory, {@code ~/.hashkitty/pmk}.
+     *
+     * @return The directory.
+     */
+    public static Path defaultDirectory() {
+        return Paths.get(System.getProperty("user.home"), ".hashkitty", "pmk");
+    }
+
+    /**
+     * Computes the PMK of every candidate in a wordlist for an ESSID, or finishes an interrupted run.
+     *
+     * @param essid          The ESSID.
+     * @param wordlist       The wordlist.
+     * @param threads        Worker threads; use the number of cores.
+     * @param onStatusUpdate Receives progress every 10 seconds; may be null.
+     * @return The complete table; the caller closes it.
+     * @throws IOException If the wordlist cannot be read or the table written.
+     */
+    public PmkTable precompute(byte[] essid, Path wordlist, int threads, Consumer<String> onStatusUpdate) throws IOException {
+        Consumer<String> status = onStatusUpdate != null ? onStatusUpdate : s -> { };
+        // One pass for the digest that names the table and the count that sizes it.
+        MessageDigest sha256 = sha256();
+        long count;
+        try (InputStream in = new DigestInputStream(Files.newInputStream(wordlist), sha256)) {
+            count = new Candidates(in).skip(Long.MAX_VALUE);
+        }
+        byte[] digest = sha256.digest();
+
+        Files.createDirectories(directory);
+        Path file = directory.resolve(tableName(essid, digest));
+        PmkTable table = null;
+        if (Files.exists(file)) {
+            try {
+                table = PmkTable.open(file);
+                if (!Arrays.equals(table.getEssid(), essid) || !Arrays.equals(table.getWordlistDigest(), digest)) {
+                    table.close();
+                    table = null;
+                }
+            } catch (IOException e) {
+                // A damaged table is computed again.
+                e.printStackTrace();
+            }
+        }
+        if (table == null) {
+            table = PmkTable.create(file, essid, digest, wordlist, count);
+        }
+        if (table.isComplete()) {
+            return table;
+        }
+
+        long start = table.getComputed();
+        status.accept("Precomputing " + (count - start) + " PMKs for \"" + new String(essid, StandardCharsets.UTF_8)
+                + "\" on " + threads + " threads" + (start > 0 ? ", resuming at " + start : "") + "...");
+        ExecutorService pool = newPool(threads);
+        ThreadLocal<Pbkdf2Sha1> kdf = ThreadLocal.withInitial(Pbkdf2Sha1::new);
+        long startNanos = System.nanoTime();
+        long lastReport = System.currentTimeMillis();
+        try (InputStream in = Files.newInputStream(wordlist)) {
+            Candidates candidates = new Candidates(in);
+            candidates.skip(start);
+            // Tasks complete in any order but are stored in order, so the computed count always marks a prefix.
+            ArrayDeque<Future<byte[]>> inFlight = new ArrayDeque<>();
+            long stored = start;
+            while (true) {
+                byte[][] batch = candidates.next(BATCH);
+                if (batch.length > 0) {
+                    inFlight.add(pool.submit(() -> {
+                        Pbkdf2Sha1 pbkdf2 = kdf.get();
+                        byte[] pmks = new byte[batch.length * Pbkdf2Sha1.PMK_LENGTH];
+                        for (int i = 0; i < batch.length; i++) {
+                            pbkdf2.derive(batch[i], 0, batch[i].length, essid, pmks, i * Pbkdf2Sha1.PMK_LENGTH);
+                        }
+                        return pmks;
+                    }));
+                }
+                while (!inFlight.isEmpty() && (batch.length == 0 || inFlight.size() >= threads * 4)) {
+                    byte[] pmks = inFlight.poll().get();
+                    int number = pmks.length / Pbkdf2Sha1.PMK_LENGTH;
+                    table.put(stored, pmks, number);
+                    stored += number;
+                    table.setComputed(stored);
+                }
+                if (batch.length == 0) {
+                    break;
+                }
+                if (System.currentTimeMillis() - lastReport >= PROGRESS_INTERVAL_MS) {
+                    lastReport = System.currentTimeMillis();
+                    double seconds = (System.nanoTime() - startNanos) / 1e9;
+                    status.accept(String.format("PMKs: %d of %d (%.0f/s)", stored, count, (stored - start) / seconds));
+                }
+            }
+            table.force();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            table.close();
+            throw new IOException("Precomputation interrupted", e);
+        } catch (ExecutionException e) {
+            table.close();
+            throw new IOException("Precomputation failed", e.getCause());
+        } catch (IOException e) {
+            table.close();
+            throw e;
+        } finally {
+            pool.shutdownNow();
+        }
+        status.accept("Precomputed " + count + " PMKs into " + file.getFileName());
+        return table;
+    }
+
+    /**
+     * Lists the tables of an ESSID, one per wordlist.
+     *
+     * @param essid The ESSID.
+     * @return The table files; empty if there are none.
+     * @throws IOException If the directory cannot be listed.
+     */
+    public List<Path> tablesFor(byte[] essid) throws IOException {
+        List<Path> tables = new ArrayList<>();
+        if (!Files.isDirectory(directory)) {
+            return tables;
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, hex(essid, essid.length) + "-*.pmk")) {
+            for (Path file : files) {
+                tables.add(file);
+            }
+        }
+        return tables;
+    }
+
+    /**
+     * Looks for a hash's passphrase among the cached PMKs of its ESSID.
+     *
+     * @param hash    The handshake or PMKID.
+     * @param threads Threads to scan with.
+     * @return The passphrase, or null if no cached candidate matches.
+     * @throws IOException If a table or its wordlist cannot be read.
+     */
+    public String crack(WpaHash hash, int threads) throws IOException {
+        for (Path file : tablesFor(hash.getEssid())) {
+            try (PmkTable table = PmkTable.open(file)) {
+                long index = scan(table, hash, threads);
+                if (index < 0) {
+                    continue;
+                }
+                String passphrase = candidateAt(table, hash, index);
+                if (passphrase != null) {
+                    return passphrase;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Checks every computed PMK of a table, in slices on several threads.
+     *
+     * @return The index of the matching candidate, or -1.
+     */
+    private long scan(PmkTable table, WpaHash hash, int threads) throws IOException {
+        long computed = table.getComputed();
+        if (computed == 0) {
+            return -1;
+        }
+        int slices = (int) Math.max(1, Math.min(threads, computed / SCAN_CHUNK));
+        long sliceSize = (computed + slices - 1) / slices;
+        AtomicLong found = new AtomicLong(-1);
+        ExecutorService pool = newPool(slices);
+        try {
+            List<Future<?>> tasks = new ArrayList<>(slices);
+            for (int s = 0; s < slices; s++) {
+                long from = s * sliceSize;
+                long to = Math.min(computed, from + sliceSize);
+                tasks.add(pool.submit(() -> {
+                    WpaHash.Verifier verifier = hash.newVerifier();
+                    byte[] pmks = new byte[SCAN_CHUNK * Pbkdf2Sha1.PMK_LENGTH];
+                    for (long i = from; i < to && found.get() < 0; i += SCAN_CHUNK) {
+                        int number = (int) Math.min(SCAN_CHUNK, to - i);
+                        table.get(i, pmks, number);
+                        for (int j = 0; j < number; j++) {
+                            if (verifier.matches(pmks, j * Pbkdf2Sha1.PMK_LENGTH)) {
+                                found.compareAndSet(-1, i + j);
+                                return;
+                            }
+                        }
+                    }
+                }));
+            }
+            for (Future<?> task : tasks) {
+                task.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Scan interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Scan failed", e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+        return found.get();
+    }
+
+    /**
+     * Reads the candidate at an index from the table's wordlist and checks it really gives the cached PMK, in case
+     * the wordlist changed since.
+     */
+    private String candidateAt(PmkTable table, WpaHash hash, long index) throws IOException {
+        Path wordlist = table.getWordlist();
+        if (wordlist == null || !Files.isReadable(wordlist)) {
+            return null;
+        }
+        byte[] candidate;
+        try (InputStream in = Files.newInputStream(wordlist)) {
+            Candidates candidates = new Candidates(in);
+            candidates.skip(index);
+            byte[][] one = candidates.next(1);
+            if (one.length == 0) {
+                return null;
+            }
+            candidate = one[0];
+        }
+        byte[] pmk = new byte[Pbkdf2Sha1.PMK_LENGTH];
+        new Pbkdf2Sha1().derive(candidate, 0, candidate.length, hash.getEssid(), pmk, 0);
+        if (!hash.newVerifier().matches(pmk, 0)) {
+            return null;
+        }
+        return new String(candidate, StandardCharsets.UTF_8);
+    }
+
+    static String tableName(byte[] essid, byte[] wordlistDigest) {
+        return hex(essid, essid.length) + "-" + hex(wordlistDigest, 8) + ".pmk";
+    }
+
+    private static String hex(byte[] bytes, int length) {
+        StringBuilder text = new StringBuilder(length * 2);
+        for (int i = 0; i < length; i++) {
+            text.append(HEX[(bytes[i] >> 4) & 0xf]).append(HEX[bytes[i] & 0xf]);
+        }
+        return text.toString();
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static ExecutorService newPool(int threads) {
+        AtomicInteger counter = new AtomicInteger();
+        return Executors.newFixedThreadPool(Math.max(1, threads), r -> {
+            Thread t = new Thread(r, "pmk-" + counter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Reads WPA candidates from a wordlist: lines of 8 to 63 bytes, without their line ending.
+     */
+    static final class Candidates {
+        private final InputStream in;
+        private final byte[] line = new byte[MAX_PASSPHRASE + 2];
+
+        Candidates(InputStream in) {
+            this.in = new BufferedInputStream(in, 1 << 16);
+        }
+
+        /**
+         * Reads up to {@code max} candidates.
+         *
+         * @return The candidates; empty at the end of the wordlist.
+         */
+        byte[][] next(int max) throws IOException {
+            List<byte[]> batch = new ArrayList<>(max);
+            while (batch.size() < max) {
+                int length = readLine();
+                if (length < 0) {
+                    break;
+                }
+                if (length >= MIN_PASSPHRASE && length <= MAX_PASSPHRASE) {
+                    batch.add(Arrays.copyOf(line, length));
+                }
+            }
+            return batch.toArray(new byte[0][]);
+        }
+
+        /**
+         * Skips up to {@code count} candidates.
+         *
+         * @return The number skipped.
+         */
+        long skip(long count) throws IOException {
+            long skipped = 0;
+            while (skipped < count) {
+                int length = readLine();
+                if (length < 0) {
+                    break;
+                }
+                if (length >= MIN_PASSPHRASE && length <= MAX_PASSPHRASE) {
+                    skipped++;
+                }
+            }
+            return skipped;
+        }
+
+        /**
+         * Reads one line into {@link #line}.
+         *
+         * @return Its length without the line ending (anything over 64 counts as too long), or -1 at the end.
+         */
+        private int readLine() throws IOException {
+            int length = 0;
+            int b = in.read();
+            if (b < 0) {
+                return -1;
+            }
+            while (b >= 0 && b != '\n') {
+                if (length < line.length) {
+                    line[length] = (byte) b;
+                }
+                length++;
+                b = in.read();
+            }
+            if (length > 0 && length <= line.length && line[length - 1] == '\r') {
+                length--;
+            }
+            return Math.min(length, line.length);
+        }
+    }
+
+    // ---- Command line ----
+
+    /**
+     * The main method.
+     *
+     * @param args Command-line arguments (see class documentation).
+     * @throws IOException If a file cannot be read or written.
+     */
+    public static void main(String[] args) throws IOException {
+        Path directory = defaultDirectory();
+        String essid = null;
+        Path wordlist = null;
+        Path hashes = null;
+        int threads = Runtime.getRuntime().availableProcessors();
+        String command = args.length > 0 ? args[0] : "";
+        try {
+            for (int i = 1; i < args.length; i++) {
+                String arg = args[i];
+                if (i + 1 >= args.length) {
+                    throw new IllegalArgumentException("Missing value for " + arg);
+                }
+                String value = args[++i];
+                switch (arg) {
+                    case "--essid": essid = value; break;
+                    case "--wordlist": wordlist = Paths.get(value); break;
+                    case "--hashes": hashes = Paths.get(value); break;
+                    case "--threads": threads = Integer.parseInt(value); break;
+                    case "--dir": directory = Paths.get(value); break;
+                    default: throw new IllegalArgumentException("Unknown argument: " + arg);
+                }
+            }
+            if (command.equals("precompute") && (essid == null || wordlist == null)) {
+                throw new IllegalArgumentException("precompute needs --essid and --wordlist");
+            } else if (command.equals("crack") && hashes == null) {
+                throw new IllegalArgumentException("crack needs --hashes");
+            } else if (!command.equals("precompute") && !command.equals("crack")) {
+                throw new IllegalArgumentException("Unknown command: " + command);
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println("Usage: pmk precompute --essid NAME --wordlist FILE [--threads N] [--dir DIR]");
+            System.err.println("       pmk crack --hashes FILE.hc22000 [--threads N] [--dir DIR]");
+            System.exit(1);
+        }
+
+        PmkCache cache = new PmkCache(directory);
+        if (command.equals("precompute")) {
+            try (PmkTable table = cache.precompute(essid.getBytes(StandardCharsets.UTF_8), wordlist, threads,
+                    System.out::println)) {
+                System.out.println(table.getCount() + " PMKs in " + table.getFile());
+            }
+            return;
+        }
+        int cracked = 0;
+        int total = 0;
+        try (BufferedReader reader = Files.newBufferedReader(hashes, StandardCharsets.US_ASCII)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                total++;
+                try {
+                    String passphrase = cache.crack(WpaHash.parse(line), threads);
+                    if (passphrase != null) {
+                        cracked++;
+                        System.out.println(line + ":" + passphrase);
+                    }
+                } catch (IllegalArgumentException e) {
+                    System.err.println(e.getMessage());
+                }
+            }
+        }
+        System.err.println("Cracked " + cracked + " of " + total + " hashes from the PMK cache.");
+    }
+}
@@ -0,0 +1,223 @@
+package hashkitty.java.pmk;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * A memory-mapped file of precomputed PMKs for one ESSID and one wordlist.
+ * <p>
+ * The file is a {@value #HEADER_BYTES}-byte header followed by 32 bytes per candidate, in wordlist order; the
+ * candidates themselves stay in the wordlist, so a table costs 32 bytes per word. The header holds:
+ * </p>
+ * <pre>
+ *   0  magic "HKPMK001"          8  candidate count (long)   16  PMKs computed so far (long)
+ *  24  wordlist SHA-256 (32)    56  ESSID length (int)        60  ESSID (32)
+ *  92  wordlist path length (int)   96  wordlist path, UTF-8 (up to 928 bytes)
+ * </pre>
+ * <p>
+ * PMKs are written in order and the computed count is advanced behind them, so an interrupted precomputation
+ * resumes where it stopped. The data is mapped in 1 GB segments, so tables larger than 2 GB (67 million words)
+ * work. Reads and writes of different candidates may happen from different threads.
+ * </p>
+ */
+public final class PmkTable implements Closeable {
+
+    /** Size of the header. */
+    static final int HEADER_BYTES = 1024;
+
+    private static final byte[] MAGIC = "HKPMK001".getBytes(StandardCharsets.US_ASCII);
+    private static final int SEGMENT_SHIFT = 30;
+    private static final long SEGMENT_BYTES = 1L << SEGMENT_SHIFT;
+    private static final int MAX_PATH_BYTES = HEADER_BYTES - 96;
+
+    private final Path file;
+    private final FileChannel channel;
+    private final MappedByteBuffer header;
+    private final MappedByteBuffer[] segments;
+    private final long count;
+
+    private PmkTable(Path file, FileChannel channel, long count) throws IOException {
+        this.file = file;
+        this.channel = channel;
+        this.count = count;
+        this.header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES);
+        long dataBytes = count * Pbkdf2Sha1.PMK_LENGTH;
+        segments = new MappedByteBuffer[(int) ((dataBytes + SEGMENT_BYTES - 1) >>> SEGMENT_SHIFT)];
+        for (int i = 0; i < segments.length; i++) {
+            long start = (long) i << SEGMENT_SHIFT;
+            segments[i] = channel.map(FileChannel.MapMode.READ_WRITE, HEADER_BYTES + start,
+                    Math.min(SEGMENT_BYTES, dataBytes - start));
+        }
+    }
+
+    /**
+     * Creates a table, replacing any file at the path.
+     *
+     * @param file           The table file.
+     * @param essid          The ESSID.
+     * @param wordlistDigest SHA-256 of the wordlist.
+     * @param wordlist       The wordlist, recorded so cracks can be looked up later.
+     * @param count          The number of candidates.
+     * @return The open table, with nothing computed.
+     * @throws IOException If the file cannot be created.
+     */
+    static PmkTable create(Path file, byte[] essid, byte[] wordlistDigest, Path wordlist, long count) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            // Extend the file so the mappings cover it; the data stays sparse until written.
+            channel.write(ByteBuffer.wrap(new byte[1]), HEADER_BYTES + count * Pbkdf2Sha1.PMK_LENGTH);
+            channel.truncate(HEADER_BYTES + count * Pbkdf2Sha1.PMK_LENGTH);
+            PmkTable table = new PmkTable(file, channel, count);
+            byte[] path = wordlist.toAbsolutePath().toString().getBytes(StandardCharsets.UTF_8);
+            if (path.length > MAX_PATH_BYTES) {
+                path = new byte[0];
+            }
+            table.header.put(0, MAGIC);
+            table.header.putLong(8, count);
+            table.header.putLong(16, 0);
+            table.header.put(24, wordlistDigest);
+            table.header.putInt(56, essid.length);
+            table.header.put(60, essid);
+            table.header.putInt(92, path.length);
+            table.header.put(96, path);
+            return table;
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Opens an existing table.
+     *
+     * @param file The table file.
+     * @return The table.
+     * @throws IOException If the file cannot be read or is not a table.
+     */
+    public static PmkTable open(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            ByteBuffer head = ByteBuffer.allocate(16);
+            channel.read(head, 0);
+            byte[] magic = new byte[MAGIC.length];
+            head.flip();
+            if (head.remaining() < 16) {
+                throw new IOException("Not a PMK table: " + file);
+            }
+            head.get(magic);
+            long count = head.getLong();
+            if (!Arrays.equals(magic, MAGIC) || count < 0
+                    || channel.size() != HEADER_BYTES + count * Pbkdf2Sha1.PMK_LENGTH) {
+                throw new IOException("Not a PMK table: " + file);
+            }
+            return new PmkTable(file, channel, count);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /** @return The table file. */
+    public Path getFile() {
+        return file;
+    }
+
+    /** @return The number of candidates in the wordlist. */
+    public long getCount() {
+        return count;
+    }
+
+    /** @return The number of PMKs computed, from the start of the wordlist. */
+    public long getComputed() {
+        return header.getLong(16);
+    }
+
+    /** @return Whether every candidate has its PMK. */
+    public boolean isComplete() {
+        return getComputed() == count;
+    }
+
+    void setComputed(long computed) {
+        header.putLong(16, computed);
+    }
+
+    /** @return The ESSID the PMKs are salted with. */
+    public byte[] getEssid() {
+        byte[] essid = new byte[header.getInt(56)];
+        header.get(60, essid);
+        return essid;
+    }
+
+    /** @return SHA-256 of the wordlist. */
+    public byte[] getWordlistDigest() {
+        byte[] digest = new byte[32];
+        header.get(24, digest);
+        return digest;
+    }
+
+    /** @return The wordlist the table was computed from, or null if its path was too long to record. */
+    public Path getWordlist() {
+        int length = header.getInt(92);
+        if (length == 0) {
+            return null;
+        }
+        byte[] path = new byte[length];
+        header.get(96, path);
+        return Path.of(new String(path, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Copies PMKs in.
+     *
+     * @param index  The first candidate.
+     * @param pmks   The PMKs, 32 bytes each.
+     * @param number How many.
+     */
+    void put(long index, byte[] pmks, int number) {
+        long position = index * Pbkdf2Sha1.PMK_LENGTH;
+        for (int i = 0; i < number; i++, position += Pbkdf2Sha1.PMK_LENGTH) {
+            // A PMK never straddles segments: segments are a multiple of 32 bytes.
+            segments[(int) (position >>> SEGMENT_SHIFT)].put((int) (position & (SEGMENT_BYTES - 1)), pmks,
+                    i * Pbkdf2Sha1.PMK_LENGTH, Pbkdf2Sha1.PMK_LENGTH);
+        }
+    }
+
+    /**
+     * Copies PMKs out.
+     *
+     * @param index  The first candidate.
+     * @param into   Receives the PMKs, 32 bytes each.
+     * @param number How many.
+     */
+    public void get(long index, byte[] into, int number) {
+        long position = index * Pbkdf2Sha1.PMK_LENGTH;
+        for (int i = 0; i < number; i++, position += Pbkdf2Sha1.PMK_LENGTH) {
+            segments[(int) (position >>> SEGMENT_SHIFT)].get((int) (position & (SEGMENT_BYTES - 1)), into,
+                    i * Pbkdf2Sha1.PMK_LENGTH, Pbkdf2Sha1.PMK_LENGTH);
+        }
+    }
+
+    /**
+     * Writes the mapped pages out.
+     */
+    public void force() {
+        for (MappedByteBuffer segment : segments) {
+            segment.force();
+        }
+        header.force();
+    }
+
+    @Override
+    public void close() throws IOException {
+        force();
+        channel.close();
+    }
+}
@@ -0,0 +1,288 @@
+package hashkitty.java.pmk;
+
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
+
+/**
+ * One Hashcat mode 22000 line, checked against candidate PMKs without PBKDF2.
+ * <p>
+ * Given the pairwise master key, a {@code WPA*01} PMKID is one HMAC-SHA1 and a {@code WPA*02} MIC is two MACs:
+ * the key confirmation key is derived from the PMK, the MACs and both nonces, and then used to MAC the EAPOL frame
+ * of message 2. The key descriptor version in that frame picks the algorithms:
+ * </p>
+ * <ul>
+ *     <li>1: PRF-SHA1 and HMAC-MD5 (WPA with TKIP).</li>
+ *     <li>2: PRF-SHA1 and HMAC-SHA1 (WPA2 with CCMP).</li>
+ *     <li>3: KDF-SHA256 and AES-CMAC (802.11w management frame protection).</li>
+ * </ul>
+ * <p>
+ * Only the exact nonces in the line are tried; Hashcat's nonce error correction for routers that change their
+ * nonce between messages is not.
+ * </p>
+ */
+public final class WpaHash {
+
+    /** {@code WPA*01}: PMKID. */
+    public static final int TYPE_PMKID = 1;
+    /** {@code WPA*02}: EAPOL message pair. */
+    public static final int TYPE_EAPOL = 2;
+
+    private static final byte[] PMK_NAME = "PMK Name".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] PAIRWISE_LABEL = "Pairwise key expansion".getBytes(StandardCharsets.US_ASCII);
+    private static final int SNONCE_OFFSET = 17;
+
+    private final String line;
+    private final int type;
+    private final byte[] hash;
+    private final byte[] ap;
+    private final byte[] sta;
+    private final byte[] essid;
+    private final byte[] anonce;
+    private final byte[] eapol;
+    private final int keyVersion;
+
+    private WpaHash(String line, int type, byte[] hash, byte[] ap, byte[] sta, byte[] essid, byte[] anonce, byte[] eapol) {
+        this.line = line;
+        this.type = type;
+        this.hash = hash;
+        this.ap = ap;
+        this.sta = sta;
+        this.essid = essid;
+        this.anonce = anonce;
+        this.eapol = eapol;
+        this.keyVersion = eapol != null ? eapol[6] & 0x07 : 0;
+    }
+
+    /**
+     * Parses a 22000 line.
+     *
+     * @param line The line.
+     * @return The hash.
+     * @throws IllegalArgumentException If the line is not a valid 22000 line or uses an unknown key version.
+     */
+    public static WpaHash parse(String line) {
+        String[] fields = line.trim().split("\\*", -1);
+        if (fields.length < 9 || !fields[0].equals("WPA")) {
+            throw new IllegalArgumentException("Not a 22000 line: " + line);
+        }
+        byte[] hash = hex(fields[2]);
+        byte[] ap = hex(fields[3]);
+        byte[] sta = hex(fields[4]);
+        byte[] essid = hex(fields[5]);
+        if (hash.length != 16 || ap.length != 6 || sta.length != 6 || essid.length > 32) {
+            throw new IllegalArgumentException("Malformed 22000 line: " + line);
+        }
+        if (fields[1].equals("01")) {
+            return new WpaHash(line, TYPE_PMKID, hash, ap, sta, essid, null, null);
+        }
+        if (!fields[1].equals("02")) {
+            throw new IllegalArgumentException("Unknown 22000 type: " + fields[1]);
+        }
+        byte[] anonce = hex(fields[6]);
+        byte[] eapol = hex(fields[7]);
+        if (anonce.length != 32 || eapol.length < 99 || eapol.length > 256) {
+            throw new IllegalArgumentException("Malformed 22000 EAPOL line: " + line);
+        }
+        WpaHash parsed = new WpaHash(line, TYPE_EAPOL, hash, ap, sta, essid, anonce, eapol);
+        if (parsed.keyVersion < 1 || parsed.keyVersion > 3) {
+            throw new IllegalArgumentException("Unsupported key version " + parsed.keyVersion + ": " + line);
+        }
+        return parsed;
+    }
+
+    /** @return The line this was parsed from. */
+    public String getLine() {
+        return line;
+    }
+
+    /** @return {@link #TYPE_PMKID} or {@link #TYPE_EAPOL}. */
+    public int getType() {
+        return type;
+    }
+
+    /** @return The ESSID bytes, the PBKDF2 salt. */
+    public byte[] getEssid() {
+        return essid.clone();
+    }
+
+    /**
+     * Creates a checker for this hash. A checker keeps its MAC instances between calls and is not thread-safe.
+     *
+     * @return A new checker.
+     */
+    public Verifier newVerifier() {
+        return new Verifier();
+    }
+
+    /**
+     * Tests PMKs against the hash.
+     */
+    public final class Verifier {
+        private final Mac hmacSha1;
+        private final Mac hmacMd5;
+        private final Mac hmacSha256;
+        private final Cipher aes;
+        /** For versions 1 and 2: label, 0, MACs, nonces, counter. For version 3: counter, label, MACs, nonces, length. */
+        private final byte[] kdfInput;
+        private final byte[] pmkidInput;
+        private final byte[] mic = new byte[20];
+        private final byte[] kck = new byte[16];
+
+        private Verifier() {
+            try {
+                hmacSha1 = Mac.getInstance("HmacSHA1");
+                hmacMd5 = keyVersion == 1 ? Mac.getInstance("HmacMD5") : null;
+                hmacSha256 = keyVersion == 3 ? Mac.getInstance("HmacSHA256") : null;
+                aes = keyVersion == 3 ? Cipher.getInstance("AES/ECB/NoPadding") : null;
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException("Missing JCE algorithm", e);
+            }
+            if (type == TYPE_PMKID) {
+                pmkidInput = new byte[PMK_NAME.length + 12];
+                System.arraycopy(PMK_NAME, 0, pmkidInput, 0, PMK_NAME.length);
+                System.arraycopy(ap, 0, pmkidInput, PMK_NAME.length, 6);
+                System.arraycopy(sta, 0, pmkidInput, PMK_NAME.length + 6, 6);
+                kdfInput = null;
+            } else {
+                pmkidInput = null;
+                byte[] data = pairwiseData();
+                if (keyVersion == 3) {
+                    // KDF-SHA256 (802.11-2016 12.7.1.7.2), first block: i=1 || label || context || bits, all LE16.
+                    kdfInput = new byte[2 + PAIRWISE_LABEL.length + data.length + 2];
+                    kdfInput[0] = 1;
+                    System.arraycopy(PAIRWISE_LABEL, 0, kdfInput, 2, PAIRWISE_LABEL.length);
+                    System.arraycopy(data, 0, kdfInput, 2 + PAIRWISE_LABEL.length, data.length);
+                    kdfInput[kdfInput.length - 2] = (byte) 0x80;
+                    kdfInput[kdfInput.length - 1] = 0x01;
+                } else {
+                    // PRF-384/512, first block: label || 0 || context || counter 0.
+                    kdfInput = new byte[PAIRWISE_LABEL.length + 1 + data.length + 1];
+                    System.arraycopy(PAIRWISE_LABEL, 0, kdfInput, 0, PAIRWISE_LABEL.length);
+                    System.arraycopy(data, 0, kdfInput, PAIRWISE_LABEL.length + 1, data.length);
+                }
+            }
+        }
+
+        /**
+         * Tests one PMK.
+         *
+         * @param pmks   Holds the PMK.
+         * @param offset Where its 32 bytes start.
+         * @return Whether it produces the hash.
+         */
+        public boolean matches(byte[] pmks, int offset) {
+            try {
+                hmacSha1.init(new SecretKeySpec(pmks, offset, Pbkdf2Sha1.PMK_LENGTH, "HmacSHA1"));
+                if (type == TYPE_PMKID) {
+                    hmacSha1.update(pmkidInput);
+                    hmacSha1.doFinal(mic, 0);
+                    return equals16(mic, hash);
+                }
+                if (keyVersion == 3) {
+                    hmacSha256.init(new SecretKeySpec(pmks, offset, Pbkdf2Sha1.PMK_LENGTH, "HmacSHA256"));
+                    System.arraycopy(hmacSha256.doFinal(kdfInput), 0, kck, 0, 16);
+                    return equals16(aesCmac(aes, kck, eapol), hash);
+                }
+                hmacSha1.update(kdfInput);
+                hmacSha1.doFinal(mic, 0);
+                System.arraycopy(mic, 0, kck, 0, 16);
+                Mac micMac = keyVersion == 1 ? hmacMd5 : hmacSha1;
+                micMac.init(new SecretKeySpec(kck, micMac.getAlgorithm()));
+                micMac.update(eapol);
+                micMac.doFinal(mic, 0);
+                return equals16(mic, hash);
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+    /**
+     * Returns min(AA, SPA) || max(AA, SPA) || min(ANonce, SNonce) || max(ANonce, SNonce).
+     */
+    private byte[] pairwiseData() {
+        byte[] snonce = Arrays.copyOfRange(eapol, SNONCE_OFFSET, SNONCE_OFFSET + 32);
+        byte[] data = new byte[76];
+        boolean apFirst = Arrays.compareUnsigned(ap, sta) < 0;
+        System.arraycopy(apFirst ? ap : sta, 0, data, 0, 6);
+        System.arraycopy(apFirst ? sta : ap, 0, data, 6, 6);
+        boolean anonceFirst = Arrays.compareUnsigned(anonce, snonce) < 0;
+        System.arraycopy(anonceFirst ? anonce : snonce, 0, data, 12, 32);
+        System.arraycopy(anonceFirst ? snonce : anonce, 0, data, 44, 32);
+        return data;
+    }
+
+    /**
+     * AES-CMAC (RFC 4493) with a 128-bit key.
+     */
+    static byte[] aesCmac(Cipher aes, byte[] key, byte[] message) throws GeneralSecurityException {
+        aes.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(key, "AES"));
+        byte[] k1 = doubleBlock(aes.doFinal(new byte[16]));
+        byte[] k2 = doubleBlock(k1);
+        int blocks = Math.max(1, (message.length + 15) / 16);
+        boolean complete = message.length > 0 && message.length % 16 == 0;
+        byte[] x = new byte[16];
+        byte[] y = new byte[16];
+        for (int b = 0; b < blocks; b++) {
+            int start = b * 16;
+            for (int i = 0; i < 16; i++) {
+                y[i] = (byte) (x[i] ^ (start + i < message.length ? message[start + i] : 0));
+            }
+            if (b == blocks - 1) {
+                if (complete) {
+                    for (int i = 0; i < 16; i++) {
+                        y[i] ^= k1[i];
+                    }
+                } else {
+                    y[message.length - start] ^= (byte) 0x80;
+                    for (int i = 0; i < 16; i++) {
+                        y[i] ^= k2[i];
+                    }
+                }
+            }
+            x = aes.doFinal(y);
+        }
+        return x;
+    }
+
+    private static byte[] doubleBlock(byte[] block) {
+        byte[] doubled = new byte[16];
+        for (int i = 0; i < 15; i++) {
+            doubled[i] = (byte) (block[i] << 1 | (block[i + 1] & 0xff) >>> 7);
+        }
+        doubled[15] = (byte) (block[15] << 1);
+        if ((block[0] & 0x80) != 0) {
+            doubled[15] ^= (byte) 0x87;
+        }
+        return doubled;
+    }
+
+    private static boolean equals16(byte[] a, byte[] b) {
+        for (int i = 0; i < 16; i++) {
+            if (a[i] != b[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static byte[] hex(String text) {
+        if (text.length() % 2 != 0) {
+            throw new IllegalArgumentException("Odd-length hex: " + text);
+        }
+        byte[] bytes = new byte[text.length() / 2];
+        for (int i = 0; i < bytes.length; i++) {
+            int high = Character.digit(text.charAt(2 * i), 16);
+            int low = Character.digit(text.charAt(2 * i + 1), 16);
+            if (high < 0 || low < 0) {
+                throw new IllegalArgumentException("Not hex: " + text);
+            }
+            bytes[i] = (byte) (high << 4 | low);
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,139 @@
+package hashkitty.java.relay;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Coalesces bursts of small relay messages (typically "cracked" results) into "batch" envelopes.
+ * <p>
+ * Hashcat can report thousands of cracks in a few seconds. Sending each one as its own WebSocket frame
+ * costs a frame header, a relay fan-out and, on cellular links, a radio wake-up per result. This class
+ * collects submitted messages and sends them as a single message of type "batch" whose {@code messages}
+ * field holds the originals, flushing when any of these limits is reached:
+ * <ul>
+ *     <li>{@code maxMessages} messages are pending.</li>
+ *     <li>Roughly {@code maxBytes} of payload is pending.</li>
+ *     <li>{@code maxDelayMs} have passed since the first pending message was submitted.</li>
+ * </ul>
+ * A lone message is sent as-is rather than wrapped. {@link RelayClient} unpacks batches on receipt.
+ * </p>
+ */
+public class MessageBatcher implements AutoCloseable {
+
+    /** Default maximum number of messages per batch. */
+    public static final int DEFAULT_MAX_MESSAGES = 500;
+    /** Default maximum approximate payload size per batch, in bytes. */
+    public static final int DEFAULT_MAX_BYTES = 64 * 1024;
+    /** Default maximum time a message waits for a batch to fill up. */
+    public static final long DEFAULT_MAX_DELAY_MS = 250;
+
+    /** Estimated fixed JSON overhead per message (field names, quotes, braces). */
+    private static final int PER_MESSAGE_OVERHEAD = 48;
+
+    /** Where finished batches (or single messages) are sent, e.g. {@code relayClient::sendMessage}. */
+    private final Consumer<RelayClient.Message> sink;
+    /** The room ID stamped on batch envelopes. */
+    private final String roomId;
+    private final int maxMessages;
+    private final int maxBytes;
+    private final long maxDelayMs;
+
+    /** Runs the time-based flushes. */
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "relay-message-batcher");
+        t.setDaemon(true);
+        return t;
+    });
+
+    /** Messages waiting to be sent. Guarded by {@code this}. */
+    private List<RelayClient.Message> pending = new ArrayList<>();
+    /** Approximate size of the pending messages. Guarded by {@code this}. */
+    private int pendingBytes;
+    /** The scheduled time-based flush for the current batch, if any. Guarded by {@code this}. */
+    private ScheduledFuture<?> scheduledFlush;
+
+    /**
+     * Constructs a batcher with the default limits.
+     *
+     * @param roomId The room ID to stamp on batch envelopes.
+     * @param sink   The consumer that sends a message to the relay.
+     */
+    public MessageBatcher(String roomId, Consumer<RelayClient.Message> sink) {
+        this(roomId, sink, DEFAULT_MAX_MESSAGES, DEFAULT_MAX_BYTES, DEFAULT_MAX_DELAY_MS);
+    }
+
+    /**
+     * Constructs a batcher with custom limits.
+     *
+     * @param roomId      The room ID to stamp on batch envelopes.
+     * @param sink        The consumer that sends a message to the relay.
+     * @param maxMessages Flush once this many messages are pending.
+     * @param maxBytes    Flush once roughly this many payload bytes are pending.
+     * @param maxDelayMs  Flush at the latest this long after the first pending message.
+     */
+    public MessageBatcher(String roomId, Consumer<RelayClient.Message> sink, int maxMessages, int maxBytes, long maxDelayMs) {
+        this.roomId = roomId;
+        this.sink = sink;
+        this.maxMessages = maxMessages;
+        this.maxBytes = maxBytes;
+        this.maxDelayMs = maxDelayMs;
+    }
+
+    /**
+     * Adds a message to the current batch, flushing immediately if a size limit is reached.
+     *
+     * @param message The message to send.
+     */
+    public synchronized void submit(RelayClient.Message message) {
+        pending.add(message);
+        pendingBytes += PER_MESSAGE_OVERHEAD + length(message.getPayload()) + length(message.getHash());
+        if (pending.size() >= maxMessages || pendingBytes >= maxBytes) {
+            flush();
+        } else if (scheduledFlush == null) {
+            scheduledFlush = scheduler.schedule(this::flush, maxDelayMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Sends everything that is pending right away.
+     */
+    public synchronized void flush() {
+        if (scheduledFlush != null) {
+            scheduledFlush.cancel(false);
+            scheduledFlush = null;
+        }
+        if (pending.isEmpty()) {
+            return;
+        }
+        RelayClient.Message out;
+        if (pending.size() == 1) {
+            out = pending.get(0);
+        } else {
+            out = new RelayClient.Message();
+            out.setType("batch");
+            out.setRoomId(roomId);
+            out.setMessages(pending);
+        }
+        pending = new ArrayList<>();
+        pendingBytes = 0;
+        sink.accept(out);
+    }
+
+    /**
+     * Flushes pending messages and stops the flush timer.
+     */
+    @Override
+    public void close() {
+        flush();
+        scheduler.shutdownNow();
+    }
+
+    private static int length(String value) {
+        return value != null ? value.length() : 0;
+    }
+}
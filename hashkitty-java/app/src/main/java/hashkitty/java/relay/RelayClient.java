@@ -2,10 +2,27 @@ package hashkitty.java.relay;
 
 import com.google.gson.Gson;
 import com.google.gson.JsonSyntaxException;
+import hashkitty.java.metrics.Counter;
+import hashkitty.java.metrics.MetricsRegistry;
+import hashkitty.java.util.ExecutorUtil;
+import hashkitty.java.util.SerialExecutor;
+import hashkitty.java.util.WebSocketUtil;
 import org.java_websocket.client.WebSocketClient;
+import org.java_websocket.exceptions.WebsocketNotConnectedException;
 import org.java_websocket.handshake.ServerHandshake;
 
 import java.net.URI;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 
 /**
@@ -20,9 +37,44 @@ import java.util.function.Consumer;
  *     <li>Sending messages (like cracked password notifications).</li>
  * </ul>
  * </p>
+ * <p>
+ * The client remembers the relay epoch and the last message {@code seq} it received, starting from the seq in
+ * the "joined" acknowledgement. When the connection is re-established it asks the relay to resume from that
+ * point, so messages relayed while it was offline are replayed; messages it has already seen are dropped by seq.
+ * </p>
+ * <p>
+ * <b>Reconnect:</b> If the connection drops (or the first connect fails) the client reconnects on its own,
+ * waiting a jittered, exponentially growing delay between attempts ({@link #BASE_RECONNECT_DELAY_MS} up to
+ * {@link #MAX_RECONNECT_DELAY_MS}), and re-joins the same room. "cracked" messages sent while offline are
+ * buffered (up to {@link #MAX_BUFFERED_MESSAGES}) and flushed after the re-join. Call {@link #shutdown()}
+ * instead of {@code close()} to stop for good.
+ * </p>
+ * <p>
+ * <b>Metrics:</b> The connection state ({@code hashkitty_relay_client_state}, one series per state), the number of
+ * buffered messages, connections, reconnect attempts and dropped messages are reported in
+ * {@link MetricsRegistry#getDefault()} as {@code hashkitty_relay_client_*}. The state and buffer gauges carry a
+ * {@code role} label ({@link #ROLE_MAIN} or {@link #ROLE_FILES}), so the control and upload connections are reported
+ * side by side; the counters add up all clients.
+ * </p>
+ * <p>
+ * <b>Threading:</b> Callbacks ({@code onMessageReceived} and the binary handler) do not run on the WebSocket's
+ * read thread but on a {@link SerialExecutor} mailbox, in arrival order. Handlers may therefore block (spawn
+ * Hashcat, write uploaded chunks to disk) without delaying pings or the reconnect logic.
+ * </p>
  */
 public class RelayClient extends WebSocketClient {
 
+    private static final MetricsRegistry METRICS = MetricsRegistry.getDefault();
+    private static final Counter CONNECTIONS = METRICS.counter("hashkitty_relay_client_connections_total", "Successful connections to the relay, the first one included.");
+    private static final Counter RECONNECT_ATTEMPTS = METRICS.counter("hashkitty_relay_client_reconnect_attempts_total", "Reconnect attempts made after losing the relay.");
+    private static final Counter DROPPED = METRICS.counter("hashkitty_relay_client_dropped_messages_total", "Buffered outbound messages dropped because the offline buffer was full.");
+
+    /** Metrics role of the connection to the main room. */
+    public static final String ROLE_MAIN = "main";
+
+    /** Metrics role of the connection to the companion upload room. */
+    public static final String ROLE_FILES = "files";
+
     /** The unique ID of the room this client intends to join upon connection. */
     private final String roomId;
 
@@ -35,6 +87,78 @@ public class RelayClient extends WebSocketClient {
     /** Gson instance for JSON serialization/deserialization. */
     private final Gson gson = new Gson();
 
+    /** Runs the application callbacks in arrival order, off the WebSocket read thread. */
+    private final SerialExecutor dispatcher = new SerialExecutor(ExecutorUtil.sharedTaskExecutor());
+
+    /** Callback for binary frames (upload chunks); null to ignore them. */
+    private volatile Consumer<ByteBuffer> onBinaryReceived;
+
+    /** The relay epoch that {@link #lastSeq} belongs to; null until the first "joined" acknowledgement. */
+    private volatile String relayEpoch;
+
+    /** The highest message seq received in the current epoch (0 if none). */
+    private volatile long lastSeq;
+
+    /** First reconnect delay; doubles on every failed attempt. */
+    static final long BASE_RECONNECT_DELAY_MS = 1000;
+
+    /** Upper bound for the reconnect delay. */
+    static final long MAX_RECONNECT_DELAY_MS = 60_000;
+
+    /** Maximum number of outbound messages kept while offline; the oldest are dropped beyond this. */
+    static final int MAX_BUFFERED_MESSAGES = 10_000;
+
+    /** Message types that are buffered while offline instead of being dropped. */
+    private static final Set<String> BUFFERED_TYPES = Set.of("cracked", "batch");
+
+    /**
+     * Lifecycle states of the relay connection.
+     */
+    public enum ConnectionState {
+        /** The first connection attempt is in progress. */
+        CONNECTING,
+        /** Connected and joined (or joining) the room. */
+        CONNECTED,
+        /** The connection was lost; a reconnect is scheduled or in progress. */
+        RECONNECTING,
+        /** {@link #shutdown()} was called; no further reconnects. */
+        CLOSED
+    }
+
+    /** Schedules reconnect attempts. Reconnecting must not happen on the WebSocket's own threads. */
+    private final ScheduledExecutorService reconnectScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "relay-client-reconnect");
+        t.setDaemon(true);
+        return t;
+    });
+
+    /** Outbound messages waiting for the connection to come back. Guarded by itself. */
+    private final Deque<String> outboundBuffer = new ArrayDeque<>();
+
+    /** The current connection state. */
+    private volatile ConnectionState state = ConnectionState.CONNECTING;
+
+    /** Set once {@link #shutdown()} is called. */
+    private volatile boolean shutdown;
+
+    /** Number of consecutive failed attempts since the last successful connection. */
+    private volatile int consecutiveFailures;
+
+    /** Total number of reconnect attempts over the client's lifetime. */
+    private volatile long totalReconnectAttempts;
+
+    /** Total number of successful connections (the first one included). */
+    private volatile long totalConnections;
+
+    /** Total number of buffered messages dropped because the buffer was full. */
+    private volatile long droppedMessages;
+
+    /** Time of the last successful connection (ms since epoch), or 0. */
+    private volatile long lastConnectedAt;
+
+    /** Time of the last disconnect (ms since epoch), or 0. */
+    private volatile long lastDisconnectedAt;
+
     /**
      * Constructs a new RelayClient instance.
      *
@@ -44,10 +168,31 @@ public class RelayClient extends WebSocketClient {
      * @param onStatusUpdate  A functional callback to handle log messages.
      */
     public RelayClient(URI serverUri, String roomId, Consumer<Message> onMessageReceived, Consumer<String> onStatusUpdate) {
-        super(serverUri);
+        this(serverUri, roomId, ROLE_MAIN, onMessageReceived, onStatusUpdate);
+    }
+
+    /**
+     * Constructs a new RelayClient instance whose gauges are labelled with the given role.
+     *
+     * @param serverUri       The URI of the relay server (e.g., "ws://localhost:5001/ws").
+     * @param roomId          The unique room ID to join (must match the ID used by the Android client).
+     * @param role            The {@code role} label of this client's gauges, e.g. {@link #ROLE_FILES}.
+     * @param onMessageReceived A functional callback to handle parsed messages.
+     * @param onStatusUpdate  A functional callback to handle log messages.
+     */
+    public RelayClient(URI serverUri, String roomId, String role, Consumer<Message> onMessageReceived,
+                       Consumer<String> onStatusUpdate) {
+        // Offer per-message deflate; the relay falls back to uncompressed frames if it does not support it.
+        super(serverUri, WebSocketUtil.deflateDraft());
         this.roomId = roomId;
         this.onMessageReceived = onMessageReceived;
         this.onStatusUpdate = onStatusUpdate;
+        for (ConnectionState s : ConnectionState.values()) {
+            METRICS.gauge("hashkitty_relay_client_state", "1 for the relay connection's current state, 0 otherwise.",
+                    () -> state == s ? 1 : 0, "role", role, "state", s.name().toLowerCase(Locale.ROOT));
+        }
+        METRICS.gauge("hashkitty_relay_client_buffered_messages", "Outbound messages waiting for the relay connection.",
+                this::getBufferedMessageCount, "role", role);
     }
 
     /**
@@ -57,13 +202,25 @@ public class RelayClient extends WebSocketClient {
      */
     @Override
     public void onOpen(ServerHandshake handshakedata) {
+        state = ConnectionState.CONNECTED;
+        consecutiveFailures = 0;
+        totalConnections++;
+        CONNECTIONS.inc();
+        lastConnectedAt = System.currentTimeMillis();
         onStatusUpdate.accept("Connected to relay server. Joining room: " + roomId);
         // Construct a "join" message to inform the relay server which room we want to enter.
         Message joinMessage = new Message();
         joinMessage.setType("join");
         joinMessage.setRoomId(roomId);
+        if (relayEpoch != null) {
+            // We were connected before: ask the relay for everything after the last message we saw.
+            joinMessage.setResumeFrom(lastSeq);
+            joinMessage.setEpoch(relayEpoch);
+        }
         // Serialize and send the message.
         send(gson.toJson(joinMessage));
+        // Deliver whatever was produced while we were offline, now that we are back in the room.
+        flushOutboundBuffer();
     }
 
     /**
@@ -78,14 +235,79 @@ public class RelayClient extends WebSocketClient {
         try {
             // Attempt to parse the JSON string into a Message object.
             Message msg = gson.fromJson(message, Message.class);
+            if (msg == null || !trackSequence(msg)) {
+                return;
+            }
+            if ("batch".equalsIgnoreCase(msg.getType()) && msg.getMessages() != null) {
+                // Unpack a batch envelope (see MessageBatcher) into its individual messages.
+                dispatcher.execute(() -> {
+                    for (Message inner : msg.getMessages()) {
+                        onMessageReceived.accept(inner);
+                    }
+                });
+                return;
+            }
             // Pass the parsed object to the consumer callback.
-            onMessageReceived.accept(msg);
+            dispatcher.execute(() -> onMessageReceived.accept(msg));
         } catch (JsonSyntaxException e) {
             // Handle malformed JSON.
             onStatusUpdate.accept("Error parsing message from relay: " + e.getMessage());
         }
     }
 
+    /**
+     * Triggered when a binary frame is received from the server (e.g., an upload chunk).
+     *
+     * @param bytes The frame payload.
+     */
+    @Override
+    public void onMessage(ByteBuffer bytes) {
+        Consumer<ByteBuffer> handler = onBinaryReceived;
+        if (handler != null) {
+            // Same mailbox as text messages, so an "upload_begin" is always handled before its chunks.
+            dispatcher.execute(() -> handler.accept(bytes));
+        }
+    }
+
+    /**
+     * Sets the callback for binary frames relayed to this client.
+     *
+     * @param onBinaryReceived The handler, or null to ignore binary frames.
+     */
+    public void setOnBinaryReceived(Consumer<ByteBuffer> onBinaryReceived) {
+        this.onBinaryReceived = onBinaryReceived;
+    }
+
+    /**
+     * Updates the resume state from an incoming message and filters protocol-level messages.
+     *
+     * @param msg The parsed message.
+     * @return true if the message should be passed on to the application, false if it was consumed or is a duplicate.
+     */
+    private boolean trackSequence(Message msg) {
+        if ("joined".equalsIgnoreCase(msg.getType())) {
+            if (msg.getEpoch() != null && !msg.getEpoch().equals(relayEpoch)) {
+                // A fresh join, or a new relay process: nothing before the room's current seq is replayed to us,
+                // so that is where the next resume starts. Starting from 0 would ask for the whole buffer.
+                relayEpoch = msg.getEpoch();
+                lastSeq = msg.getSeq() != null ? msg.getSeq() : 0;
+            }
+            return false;
+        }
+        if ("history_gap".equalsIgnoreCase(msg.getType())) {
+            onStatusUpdate.accept("Warning: Some relay messages were lost while disconnected (seq " + msg.getPayload() + ").");
+            return false;
+        }
+        if (msg.getSeq() != null) {
+            if (msg.getSeq() <= lastSeq) {
+                // Already delivered (a replay overlapping with live traffic).
+                return false;
+            }
+            lastSeq = msg.getSeq();
+        }
+        return true;
+    }
+
     /**
      * Triggered when the connection is closed.
      *
@@ -95,7 +317,53 @@ public class RelayClient extends WebSocketClient {
      */
     @Override
     public void onClose(int code, String reason, boolean remote) {
-        onStatusUpdate.accept("Disconnected from relay. Reason: " + reason);
+        lastDisconnectedAt = System.currentTimeMillis();
+        if (shutdown) {
+            state = ConnectionState.CLOSED;
+            onStatusUpdate.accept("Disconnected from relay.");
+            return;
+        }
+        if (state == ConnectionState.CONNECTED) {
+            onStatusUpdate.accept("Disconnected from relay. Reason: " + reason);
+        }
+        state = ConnectionState.RECONNECTING;
+        scheduleReconnect();
+    }
+
+    /**
+     * Schedules the next reconnect attempt with exponential backoff and full jitter.
+     * <p>
+     * The delay is drawn uniformly from [base/2, min(max, base * 2^failures)], so that many workers
+     * restarted by the same relay outage do not reconnect in lockstep.
+     * </p>
+     */
+    private void scheduleReconnect() {
+        int failures = consecutiveFailures++;
+        long ceiling = Math.min(MAX_RECONNECT_DELAY_MS, BASE_RECONNECT_DELAY_MS << Math.min(failures, 16));
+        long delay = ThreadLocalRandom.current().nextLong(BASE_RECONNECT_DELAY_MS / 2, ceiling + 1);
+        onStatusUpdate.accept(String.format("Reconnecting to relay in %.1fs (attempt %d)...", delay / 1000.0, failures + 1));
+        try {
+            reconnectScheduler.schedule(() -> {
+                if (!shutdown) {
+                    totalReconnectAttempts++;
+                    RECONNECT_ATTEMPTS.inc();
+                    reconnect();
+                }
+            }, delay, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // shutdown() raced with the disconnect; nothing left to do.
+        }
+    }
+
+    /**
+     * Stops the client for good: cancels pending reconnects and closes the connection.
+     * Messages still buffered are discarded.
+     */
+    public void shutdown() {
+        shutdown = true;
+        state = ConnectionState.CLOSED;
+        reconnectScheduler.shutdownNow();
+        close();
     }
 
     /**
@@ -116,15 +384,108 @@ public class RelayClient extends WebSocketClient {
      * @param message The Message object to send.
      */
     public void sendMessage(Message message) {
+        String json = gson.toJson(message);
         if (isOpen()) {
-            // Serialize the object to JSON and send it.
-            send(gson.toJson(message));
+            try {
+                // Serialize the object to JSON and send it.
+                send(json);
+                return;
+            } catch (WebsocketNotConnectedException e) {
+                // The connection dropped between the check and the send; fall through to buffering.
+            }
+        }
+        if (!shutdown && BUFFERED_TYPES.contains(message.getType())) {
+            bufferOutbound(json);
         } else {
             // Warn if trying to send while disconnected.
             onStatusUpdate.accept("Cannot send message: Relay client is not connected.");
         }
     }
 
+    /**
+     * Sends a binary frame to the room. Binary frames are never buffered while offline: the upload protocol
+     * resumes from the receiver's acknowledged offset instead.
+     *
+     * @param data The frame to send (position to limit).
+     * @return true if the frame was handed to the connection, false if the client is not connected.
+     */
+    public boolean sendBinary(ByteBuffer data) {
+        if (!isOpen()) {
+            return false;
+        }
+        try {
+            send(data);
+            return true;
+        } catch (WebsocketNotConnectedException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Queues a message for delivery after reconnecting, dropping the oldest one if the buffer is full.
+     *
+     * @param json The serialized message.
+     */
+    private void bufferOutbound(String json) {
+        synchronized (outboundBuffer) {
+            if (outboundBuffer.size() >= MAX_BUFFERED_MESSAGES) {
+                outboundBuffer.pollFirst();
+                droppedMessages++;
+                DROPPED.inc();
+            }
+            outboundBuffer.addLast(json);
+        }
+    }
+
+    /**
+     * Sends all buffered messages in order. Stops (keeping the rest) if the connection drops again.
+     */
+    private void flushOutboundBuffer() {
+        int flushed = 0;
+        synchronized (outboundBuffer) {
+            while (!outboundBuffer.isEmpty() && isOpen()) {
+                try {
+                    send(outboundBuffer.peekFirst());
+                } catch (WebsocketNotConnectedException e) {
+                    break;
+                }
+                outboundBuffer.pollFirst();
+                flushed++;
+            }
+        }
+        if (flushed > 0) {
+            onStatusUpdate.accept("Delivered " + flushed + " message(s) buffered while disconnected.");
+        }
+    }
+
+    /** @return The current connection state. */
+    public ConnectionState getConnectionState() { return state; }
+
+    /** @return The number of consecutive failed reconnect attempts since the last successful connection. */
+    public int getConsecutiveFailures() { return consecutiveFailures; }
+
+    /** @return The total number of reconnect attempts made. */
+    public long getTotalReconnectAttempts() { return totalReconnectAttempts; }
+
+    /** @return The total number of successful connections, including the first one. */
+    public long getTotalConnections() { return totalConnections; }
+
+    /** @return The number of outbound messages currently waiting for a connection. */
+    public int getBufferedMessageCount() {
+        synchronized (outboundBuffer) {
+            return outboundBuffer.size();
+        }
+    }
+
+    /** @return The number of buffered messages dropped because the buffer overflowed. */
+    public long getDroppedMessageCount() { return droppedMessages; }
+
+    /** @return The time of the last successful connection in ms since the epoch, or 0 if never connected. */
+    public long getLastConnectedAt() { return lastConnectedAt; }
+
+    /** @return The time of the last disconnect in ms since the epoch, or 0 if never disconnected. */
+    public long getLastDisconnectedAt() { return lastDisconnectedAt; }
+
     /**
      * A Data Transfer Object (DTO) representing the standard message format used by the relay.
      * This static inner class ensures type safety for JSON operations.
@@ -140,6 +501,14 @@ public class RelayClient extends WebSocketClient {
         private String mode;
         /** Generic payload (e.g., cracked password content). */
         private String payload;
+        /** Per-room sequence number assigned by the relay. */
+        private Long seq;
+        /** On "join": the last seq received, to request a replay of missed messages. */
+        private Long resumeFrom;
+        /** The relay epoch the seq numbers belong to. */
+        private String epoch;
+        /** The packed messages (if type is "batch"). */
+        private List<Message> messages;
 
         // Getters and Setters
         public String getType() { return type; }
@@ -152,5 +521,12 @@ public class RelayClient extends WebSocketClient {
         public void setMode(String mode) { this.mode = mode; }
         public String getPayload() { return payload; }
         public void setPayload(String payload) { this.payload = payload; }
+        public Long getSeq() { return seq; }
+        public Long getResumeFrom() { return resumeFrom; }
+        public void setResumeFrom(Long resumeFrom) { this.resumeFrom = resumeFrom; }
+        public String getEpoch() { return epoch; }
+        public void setEpoch(String epoch) { this.epoch = epoch; }
+        public List<Message> getMessages() { return messages; }
+        public void setMessages(List<Message> messages) { this.messages = messages; }
     }
 }
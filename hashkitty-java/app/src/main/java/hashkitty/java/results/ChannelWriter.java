@@ -0,0 +1,105 @@
+package hashkitty.java.results;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Writes text and bytes to a file through one direct buffer, without a {@code byte[]} per line.
+ * <p>
+ * Strings are encoded to UTF-8 straight into the buffer; when it fills up it is written to the channel in one
+ * call. Exporting millions of rows therefore costs one system call per {@link #BUFFER_BYTES} of output.
+ * </p>
+ */
+class ChannelWriter implements Closeable {
+
+    /** Size of the output buffer. */
+    static final int BUFFER_BYTES = 256 * 1024;
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_BYTES);
+    private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+    /**
+     * Creates (or truncates) a file for writing.
+     *
+     * @param path The file.
+     * @throws IOException If it cannot be opened.
+     */
+    ChannelWriter(Path path) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+    }
+
+    ChannelWriter write(CharSequence text) throws IOException {
+        CharBuffer chars = CharBuffer.wrap(text);
+        encoder.reset();
+        while (true) {
+            CoderResult result = encoder.encode(chars, buffer, true);
+            if (result.isOverflow()) {
+                drain();
+            } else {
+                break;
+            }
+        }
+        while (encoder.flush(buffer).isOverflow()) {
+            drain();
+        }
+        return this;
+    }
+
+    ChannelWriter write(char c) throws IOException {
+        if (c < 0x80) {
+            if (!buffer.hasRemaining()) {
+                drain();
+            }
+            buffer.put((byte) c);
+            return this;
+        }
+        return write(String.valueOf(c));
+    }
+
+    ChannelWriter write(byte[] bytes, int offset, int length) throws IOException {
+        while (length > 0) {
+            if (!buffer.hasRemaining()) {
+                drain();
+            }
+            int chunk = Math.min(length, buffer.remaining());
+            buffer.put(bytes, offset, chunk);
+            offset += chunk;
+            length -= chunk;
+        }
+        return this;
+    }
+
+    ChannelWriter newLine() throws IOException {
+        return write('\n');
+    }
+
+    private void drain() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            drain();
+        } finally {
+            channel.close();
+        }
+    }
+}
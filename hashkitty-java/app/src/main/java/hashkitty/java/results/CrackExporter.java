@@ -0,0 +1,428 @@
+package hashkitty.java.results;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Streams the rows of a {@link CrackStore} to the files auditors and other crackers read.
+ * <p>
+ * Every export reads the store row by row (or in {@link SortIndex} order) and writes through a
+ * {@link ChannelWriter}, so memory use does not depend on the number of results. The formats are:
+ * </p>
+ * <ul>
+ *     <li>{@link Format#CSV}: {@code hash,plain,mode} with a header, quoted where needed.</li>
+ *     <li>{@link Format#POTFILE}: Hashcat's {@code hash:plain}, one line per distinct pair.</li>
+ *     <li>{@link Format#JOHN}: John the Ripper's pot, with John's tags for the raw hash types it names
+ *     differently ({@code $NT$}, {@code $dynamic_0$}, ...).</li>
+ *     <li>{@link Format#USERS}: {@code user:hash:plain}, joining the original username-bearing hash list (see
+ *     {@link #joinUsers}).</li>
+ * </ul>
+ * <p>
+ * Passwords with control characters or non-ASCII bytes are written as {@code $HEX[...]} in the pot and users
+ * formats, as Hashcat does, so every line stays one line.
+ * </p>
+ * <p>
+ * Also the entry point of the {@code export} command:
+ * <br>
+ * <b>Usage:</b> {@code export --format csv|potfile|john|users --out FILE [--input HASHLIST] [--hash-field N]
+ * [--dir DIR]}
+ * </p>
+ */
+public class CrackExporter {
+
+    /** The export formats. */
+    public enum Format {
+        CSV, POTFILE, JOHN, USERS
+    }
+
+    /** Size of the buffer the hash list is read through. */
+    private static final int READ_BUFFER_BYTES = 256 * 1024;
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    /**
+     * Writes every row as CSV: {@code hash,plain,mode}.
+     *
+     * @param store  The store.
+     * @param output The file to write.
+     * @return The number of rows written.
+     * @throws IOException If the file cannot be written.
+     */
+    public static long exportCsv(CrackStore store, Path output) throws IOException {
+        long rows = store.size();
+        try (ChannelWriter out = new ChannelWriter(output)) {
+            out.write("hash,plain,mode").newLine();
+            for (long row = 0; row < rows; row++) {
+                writeCsvField(out, store.getHash(row)).write(',');
+                writeCsvField(out, store.getPlain(row)).write(',');
+                int mode = store.getMode(row);
+                if (mode >= 0) {
+                    out.write(Integer.toString(mode));
+                }
+                out.newLine();
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * Writes every distinct hash and password as a Hashcat potfile ({@code hash:plain}).
+     *
+     * @param store  The store.
+     * @param output The file to write.
+     * @return The number of lines written.
+     * @throws IOException If the file or the hash index cannot be written.
+     */
+    public static long exportHashcatPot(CrackStore store, Path output) throws IOException {
+        return exportPot(store, output, false);
+    }
+
+    /**
+     * Writes every distinct hash and password as a John the Ripper pot file.
+     *
+     * @param store  The store.
+     * @param output The file to write.
+     * @return The number of lines written.
+     * @throws IOException If the file or the hash index cannot be written.
+     */
+    public static long exportJohnPot(CrackStore store, Path output) throws IOException {
+        return exportPot(store, output, true);
+    }
+
+    /**
+     * Writes the pot formats in hash order, which puts every crack of a hash next to each other, so repeats can be
+     * skipped by remembering only the passwords already written for the current hash.
+     */
+    private static long exportPot(CrackStore store, Path output, boolean john) throws IOException {
+        SortIndex index = openHashIndex(store);
+        long written = 0;
+        try (ChannelWriter out = new ChannelWriter(output)) {
+            String previousHash = null;
+            Set<String> plainsOfHash = new HashSet<>();
+            for (long position = 0; position < index.size(); position++) {
+                long row = index.rowAt(position);
+                String hash = store.getHash(row);
+                String plain = store.getPlain(row);
+                if (!hash.equals(previousHash)) {
+                    previousHash = hash;
+                    plainsOfHash.clear();
+                }
+                if (!plainsOfHash.add(plain)) {
+                    continue;
+                }
+                out.write(john ? johnHash(store.getMode(row), hash) : hash).write(':');
+                writePlain(out, plain).newLine();
+                written++;
+            }
+        } finally {
+            // Kept on disk: the next export or the results table starts from it.
+            index.close();
+        }
+        return written;
+    }
+
+    /**
+     * Joins a hash list that carries usernames with the cracked hashes, writing {@code user:hash:plain} for every
+     * user whose hash is cracked.
+     * <p>
+     * The list is streamed line by line and each hash is looked up with a binary search in the store's hash index,
+     * so ten million users cost ten million lookups in a memory-mapped file and no memory beyond a read buffer.
+     * Lines are copied as bytes, so usernames in any encoding come out as they went in. Hex hashes are matched
+     * regardless of case, since Hashcat prints them in lower case.
+     * </p>
+     *
+     * @param store     The store.
+     * @param input     The hash list: {@code user:hash} lines, or pwdump lines ({@code user:rid:lm:nt:::}).
+     * @param output    The file to write.
+     * @param hashField Which colon-separated field holds the hash (0 is the username), or -1 to detect it per line:
+     *                  the NT hash of pwdump lines, otherwise everything after the username.
+     * @return The number of users written.
+     * @throws IOException If a file or the hash index cannot be read or written.
+     */
+    public static long joinUsers(CrackStore store, Path input, Path output, int hashField) throws IOException {
+        SortIndex index = openHashIndex(store);
+        long written = 0;
+        try (FileChannel in = FileChannel.open(input, StandardOpenOption.READ);
+             ChannelWriter out = new ChannelWriter(output)) {
+            ByteBuffer buffer = ByteBuffer.allocate(READ_BUFFER_BYTES);
+            byte[] line = new byte[256];
+            int lineLength = 0;
+            boolean endOfInput = false;
+            while (!endOfInput) {
+                endOfInput = in.read(buffer) < 0;
+                buffer.flip();
+                while (buffer.hasRemaining() || (endOfInput && lineLength > 0)) {
+                    boolean lineEnded = false;
+                    while (buffer.hasRemaining()) {
+                        byte b = buffer.get();
+                        if (b == '\n') {
+                            lineEnded = true;
+                            break;
+                        }
+                        if (lineLength == line.length) {
+                            line = Arrays.copyOf(line, line.length * 2);
+                        }
+                        line[lineLength++] = b;
+                    }
+                    if (!lineEnded && !endOfInput) {
+                        // The line continues in the next read.
+                        break;
+                    }
+                    if (lineLength > 0 && line[lineLength - 1] == '\r') {
+                        lineLength--;
+                    }
+                    if (joinLine(store, index, line, lineLength, hashField, out)) {
+                        written++;
+                    }
+                    lineLength = 0;
+                }
+                buffer.clear();
+            }
+        } finally {
+            index.close();
+        }
+        return written;
+    }
+
+    /**
+     * Looks up one line of the hash list and writes it if its hash is cracked.
+     *
+     * @return Whether a line was written.
+     */
+    private static boolean joinLine(CrackStore store, SortIndex index, byte[] line, int length, int hashField,
+                                    ChannelWriter out) throws IOException {
+        int userEnd = indexOf(line, 0, length, (byte) ':');
+        if (userEnd <= 0) {
+            return false;
+        }
+        int field = hashField >= 0 ? hashField : (isPwdump(line, length) ? 3 : -1);
+        int hashStart;
+        int hashEnd;
+        if (field < 0) {
+            hashStart = userEnd + 1;
+            hashEnd = length;
+        } else {
+            hashStart = 0;
+            for (int i = 0; i < field; i++) {
+                int colon = indexOf(line, hashStart, length, (byte) ':');
+                if (colon < 0) {
+                    return false;
+                }
+                hashStart = colon + 1;
+            }
+            hashEnd = indexOf(line, hashStart, length, (byte) ':');
+            if (hashEnd < 0) {
+                hashEnd = length;
+            }
+        }
+        if (hashStart >= hashEnd) {
+            return false;
+        }
+        // Hashes are ASCII; ISO-8859-1 maps each byte to one char without failing on anything else.
+        String hash = new String(line, hashStart, hashEnd - hashStart, StandardCharsets.ISO_8859_1);
+        long position = index.find(hash);
+        if (position < 0) {
+            String lower = hash.toLowerCase(Locale.ROOT);
+            if (!lower.equals(hash)) {
+                position = index.find(lower);
+            }
+        }
+        if (position < 0) {
+            return false;
+        }
+        out.write(line, 0, userEnd).write(':').write(line, hashStart, hashEnd - hashStart).write(':');
+        writePlain(out, store.getPlain(index.rowAt(position))).newLine();
+        return true;
+    }
+
+    /**
+     * Recognises {@code user:rid:lmhash:nthash:::}, as written by pwdump and secretsdump.
+     */
+    private static boolean isPwdump(byte[] line, int length) {
+        int[] colons = new int[4];
+        int found = 0;
+        for (int i = 0; i < length && found < 4; i++) {
+            if (line[i] == ':') {
+                colons[found++] = i;
+            }
+        }
+        if (found < 4 || colons[2] - colons[1] != 33 || colons[3] - colons[2] != 33) {
+            return false;
+        }
+        for (int i = colons[0] + 1; i < colons[1]; i++) {
+            if (line[i] < '0' || line[i] > '9') {
+                return false;
+            }
+        }
+        return colons[1] > colons[0] + 1;
+    }
+
+    private static int indexOf(byte[] line, int from, int to, byte value) {
+        for (int i = from; i < to; i++) {
+            if (line[i] == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static SortIndex openHashIndex(CrackStore store) throws IOException {
+        SortIndex base = SortIndex.open(store, CrackStore.Column.HASH);
+        SortIndex updated = base.update();
+        if (updated != base) {
+            base.discard();
+        }
+        return updated;
+    }
+
+    // ---- Formatting ----
+
+    private static ChannelWriter writeCsvField(ChannelWriter out, String value) throws IOException {
+        boolean quote = !value.isEmpty() && (value.charAt(0) == ' ' || value.charAt(value.length() - 1) == ' ');
+        for (int i = 0; i < value.length() && !quote; i++) {
+            char c = value.charAt(i);
+            quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!quote) {
+            return out.write(value);
+        }
+        out.write('"');
+        int start = 0;
+        int next;
+        while ((next = value.indexOf('"', start)) >= 0) {
+            out.write(value.subSequence(start, next + 1)).write('"');
+            start = next + 1;
+        }
+        return out.write(value.subSequence(start, value.length())).write('"');
+    }
+
+    /**
+     * Writes a password, as {@code $HEX[...]} if it would not survive as one line of printable ASCII (or could be
+     * mistaken for hex notation itself).
+     */
+    private static ChannelWriter writePlain(ChannelWriter out, String plain) throws IOException {
+        if (!needsHex(plain)) {
+            return out.write(plain);
+        }
+        out.write("$HEX[");
+        for (byte b : plain.getBytes(StandardCharsets.UTF_8)) {
+            out.write(HEX[(b >> 4) & 0xf]).write(HEX[b & 0xf]);
+        }
+        return out.write(']');
+    }
+
+    static boolean needsHex(String plain) {
+        if (plain.startsWith("$HEX[")) {
+            return true;
+        }
+        for (int i = 0; i < plain.length(); i++) {
+            char c = plain.charAt(i);
+            if (c < 0x20 || c > 0x7e) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Adds John's format tag to the raw hash types John names differently from Hashcat. Other hashes (crypt
+     * formats such as {@code $2a$} or {@code $6$}) are written unchanged, as both tools use the same notation.
+     */
+    static String johnHash(int mode, String hash) {
+        if (hash.startsWith("$")) {
+            return hash;
+        }
+        switch (mode) {
+            case 0: return "$dynamic_0$" + hash.toLowerCase(Locale.ROOT);
+            case 100: return "$dynamic_26$" + hash.toLowerCase(Locale.ROOT);
+            case 900: return "$MD4$" + hash.toLowerCase(Locale.ROOT);
+            case 1000: return "$NT$" + hash.toLowerCase(Locale.ROOT);
+            case 1400: return "$SHA256$" + hash.toLowerCase(Locale.ROOT);
+            case 1700: return "$SHA512$" + hash.toLowerCase(Locale.ROOT);
+            default: return hash;
+        }
+    }
+
+    // ---- Command line ----
+
+    /**
+     * The main method.
+     *
+     * @param args Command-line arguments (see class documentation).
+     * @throws IOException If the store cannot be read or the output written.
+     */
+    public static void main(String[] args) throws IOException {
+        Path directory = CrackStore.defaultDirectory();
+        Format format = null;
+        Path output = null;
+        Path input = null;
+        int hashField = -1;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                String arg = args[i];
+                if (i + 1 >= args.length) {
+                    throw new IllegalArgumentException("Missing value for " + arg);
+                }
+                String value = args[++i];
+                switch (arg) {
+                    case "--format": format = Format.valueOf(value.toUpperCase(Locale.ROOT)); break;
+                    case "--out": output = Paths.get(value); break;
+                    case "--input": input = Paths.get(value); break;
+                    case "--hash-field": hashField = Integer.parseInt(value); break;
+                    case "--dir": directory = Paths.get(value); break;
+                    default: throw new IllegalArgumentException("Unknown argument: " + arg);
+                }
+            }
+            if (format == null || output == null) {
+                throw new IllegalArgumentException("--format and --out are required");
+            }
+            if (format == Format.USERS && input == null) {
+                throw new IllegalArgumentException("--format users needs the hash list as --input");
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println("Usage: export --format csv|potfile|john|users --out FILE [--input HASHLIST]"
+                    + " [--hash-field N] [--dir DIR]");
+            System.exit(1);
+        }
+
+        if (!Files.isDirectory(directory)) {
+            System.err.println("No crack results found at " + directory);
+            System.exit(1);
+        }
+        try (CrackStore store = new CrackStore(directory)) {
+            long written = export(store, format, output, input, hashField);
+            System.out.println("Wrote " + written + " lines to " + output);
+        }
+    }
+
+    /**
+     * Runs an export in one of the formats.
+     *
+     * @param store     The store.
+     * @param format    The format.
+     * @param output    The file to write.
+     * @param input     The hash list, for {@link Format#USERS}.
+     * @param hashField The hash field, for {@link Format#USERS}; -1 to detect it.
+     * @return The number of lines written (not counting a header).
+     * @throws IOException If a file cannot be read or written.
+     */
+    public static long export(CrackStore store, Format format, Path output, Path input, int hashField) throws IOException {
+        switch (format) {
+            case CSV: return exportCsv(store, output);
+            case POTFILE: return exportHashcatPot(store, output);
+            case JOHN: return exportJohnPot(store, output);
+            default: return joinUsers(store, input, output, hashField);
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package hashkitty.java.results;
+
+/**
+ * One cracked hash, as stored by {@link CrackStore}.
+ */
+public class CrackRecord {
+
+    private final long time;
+    private final int mode;
+    private final String jobId;
+    private final String hash;
+    private final String plain;
+
+    /**
+     * Constructs a record.
+     *
+     * @param time  When it was cracked, in epoch milliseconds.
+     * @param mode  The Hashcat hash mode, or -1 if unknown.
+     * @param jobId The job that cracked it, or null.
+     * @param hash  The hash as Hashcat printed it.
+     * @param plain The password.
+     */
+    public CrackRecord(long time, int mode, String jobId, String hash, String plain) {
+        this.time = time;
+        this.mode = mode;
+        this.jobId = jobId;
+        this.hash = hash;
+        this.plain = plain;
+    }
+
+    public long getTime() { return time; }
+    public int getMode() { return mode; }
+    public String getJobId() { return jobId; }
+    public String getHash() { return hash; }
+    public String getPlain() { return plain; }
+
+    @Override
+    public String toString() {
+        return hash + ":" + plain;
+    }
+}
@@ -0,0 +1,339 @@
+package hashkitty.java.results;
+
+import javafx.animation.KeyFrame;
+import javafx.animation.Timeline;
+import javafx.application.Platform;
+import javafx.beans.property.ReadOnlyObjectWrapper;
+import javafx.collections.ObservableListBase;
+import javafx.geometry.Insets;
+import javafx.geometry.Pos;
+import javafx.scene.control.Button;
+import javafx.scene.control.ChoiceBox;
+import javafx.scene.control.Label;
+import javafx.scene.control.MenuButton;
+import javafx.scene.control.MenuItem;
+import javafx.scene.control.TableColumn;
+import javafx.scene.control.TableView;
+import javafx.scene.control.TextField;
+import javafx.scene.layout.HBox;
+import javafx.scene.layout.Priority;
+import javafx.scene.layout.VBox;
+import javafx.stage.FileChooser;
+import javafx.util.Duration;
+import javafx.util.StringConverter;
+
+import java.io.File;
+import java.io.IOException;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * The results tab: every cracked hash in a {@link CrackStore}, in a table that scrolls through millions of rows.
+ * <p>
+ * The table's items are not a list of records but a view of a {@link ResultWindow}, which reads only the rows on
+ * screen from the store's mapped files. New cracks appear within a second. Clicking a column header sorts by a
+ * {@link SortIndex} kept on disk, and the search box finds passwords or hashes by prefix with a binary search over
+ * the same index; indexes are brought up to date on a background thread and never hold the rows in memory.
+ * </p>
+ * <p>
+ * The export menu streams the whole store with {@link CrackExporter}, whatever the table shows.
+ * </p>
+ */
+public class CrackResultsView {
+
+    /** How often a sorted view takes in new cracks; each update is a pass over the whole index. */
+    private static final long SORTED_REFRESH_MILLIS = 30_000;
+
+    private static final DateTimeFormatter TIME = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss").withZone(ZoneId.systemDefault());
+
+    private final CrackStore store;
+    private final ResultWindow window;
+    private final RowList rows;
+    private final TableView<CrackRecord> table;
+    private final ChoiceBox<CrackStore.Column> searchColumn = new ChoiceBox<>();
+    private final TextField searchField = new TextField();
+    private final Label countLabel = new Label();
+    private final Label busyLabel = new Label();
+    private final VBox node;
+    private final Timeline refreshTimeline = new Timeline(new KeyFrame(Duration.seconds(1), e -> refresh()));
+
+    /** The newest index of each column. FX thread only. */
+    private final Map<CrackStore.Column, SortIndex> indexes = new EnumMap<>(CrackStore.Column.class);
+    /** Whether an index update is running in the background. FX thread only. */
+    private boolean indexing;
+    /** When the last index update finished. FX thread only. */
+    private long lastIndexed;
+
+    /**
+     * Builds the tab. Call {@link #start()} to begin following new cracks.
+     *
+     * @param store The results store.
+     */
+    public CrackResultsView(CrackStore store) {
+        this.store = store;
+        this.window = new ResultWindow(store);
+        this.rows = new RowList();
+        this.table = new TableView<>(rows);
+
+        table.getColumns().add(column("Time", CrackStore.Column.TIME, 150, r -> TIME.format(Instant.ofEpochMilli(r.getTime()))));
+        table.getColumns().add(column("Mode", CrackStore.Column.MODE, 60, r -> r.getMode() < 0 ? "" : String.valueOf(r.getMode())));
+        table.getColumns().add(column("Job", CrackStore.Column.JOB, 80, r -> r.getJobId() != null ? r.getJobId() : ""));
+        table.getColumns().add(column("Hash", CrackStore.Column.HASH, 300, CrackRecord::getHash));
+        table.getColumns().add(column("Password", CrackStore.Column.PLAIN, 160, CrackRecord::getPlain));
+        // Sorting is done through the on-disk indexes, never by sorting the items.
+        table.setSortPolicy(t -> {
+            applyOrder();
+            return true;
+        });
+        table.setPlaceholder(new Label("No cracked hashes yet."));
+        VBox.setVgrow(table, Priority.ALWAYS);
+
+        searchColumn.getItems().addAll(CrackStore.Column.PLAIN, CrackStore.Column.HASH);
+        searchColumn.setValue(CrackStore.Column.PLAIN);
+        searchColumn.setConverter(new StringConverter<>() {
+            @Override
+            public String toString(CrackStore.Column column) {
+                return column == CrackStore.Column.HASH ? "Hash starts with" : "Password starts with";
+            }
+
+            @Override
+            public CrackStore.Column fromString(String string) {
+                return null;
+            }
+        });
+        searchField.setPromptText("Search (press Enter)");
+        searchField.setOnAction(e -> applyOrder());
+        HBox.setHgrow(searchField, Priority.ALWAYS);
+        Button clearButton = new Button("Clear");
+        clearButton.setOnAction(e -> {
+            searchField.clear();
+            applyOrder();
+        });
+
+        MenuButton exportButton = new MenuButton("Export");
+        exportButton.getItems().addAll(
+                exportItem("CSV (hash, password, mode)...", CrackExporter.Format.CSV, "results.csv"),
+                exportItem("Hashcat potfile...", CrackExporter.Format.POTFILE, "hashcat.potfile"),
+                exportItem("John the Ripper pot...", CrackExporter.Format.JOHN, "john.pot"),
+                exportItem("user:hash:password from a hash list...", CrackExporter.Format.USERS, "users-cracked.txt"));
+
+        HBox controls = new HBox(10, searchColumn, searchField, clearButton, exportButton, countLabel, busyLabel);
+        controls.setAlignment(Pos.CENTER_LEFT);
+        node = new VBox(8, controls, table);
+        node.setPadding(new Insets(10));
+        updateCount();
+    }
+
+    /**
+     * Returns the panel to place in the scene.
+     *
+     * @return The root node.
+     */
+    public VBox getNode() {
+        return node;
+    }
+
+    /**
+     * Starts following new cracks.
+     */
+    public void start() {
+        refreshTimeline.setCycleCount(Timeline.INDEFINITE);
+        refreshTimeline.play();
+    }
+
+    /**
+     * Stops following new cracks.
+     */
+    public void stop() {
+        refreshTimeline.stop();
+    }
+
+    private TableColumn<CrackRecord, String> column(String title, CrackStore.Column storeColumn, double width,
+                                                    Function<CrackRecord, String> value) {
+        TableColumn<CrackRecord, String> column = new TableColumn<>(title);
+        column.setUserData(storeColumn);
+        column.setPrefWidth(width);
+        column.setCellValueFactory(cell -> new ReadOnlyObjectWrapper<>(value.apply(cell.getValue())));
+        return column;
+    }
+
+    private MenuItem exportItem(String text, CrackExporter.Format format, String defaultName) {
+        MenuItem item = new MenuItem(text);
+        item.setOnAction(e -> export(format, defaultName));
+        return item;
+    }
+
+    /**
+     * Asks for the files and runs an export on a background thread.
+     */
+    private void export(CrackExporter.Format format, String defaultName) {
+        File input = null;
+        if (format == CrackExporter.Format.USERS) {
+            FileChooser inputChooser = new FileChooser();
+            inputChooser.setTitle("Hash list with usernames (user:hash or pwdump)");
+            input = inputChooser.showOpenDialog(node.getScene().getWindow());
+            if (input == null) {
+                return;
+            }
+        }
+        FileChooser outputChooser = new FileChooser();
+        outputChooser.setTitle("Export Cracked Hashes");
+        outputChooser.setInitialFileName(defaultName);
+        File output = outputChooser.showSaveDialog(node.getScene().getWindow());
+        if (output == null) {
+            return;
+        }
+        busyLabel.setText("Exporting...");
+        File hashList = input;
+        new Thread(() -> {
+            try {
+                long written = CrackExporter.export(store, format, output.toPath(),
+                        hashList != null ? hashList.toPath() : null, -1);
+                Platform.runLater(() -> busyLabel.setText(String.format("Exported %,d lines to %s", written, output.getName())));
+            } catch (IOException | RuntimeException e) {
+                e.printStackTrace();
+                Platform.runLater(() -> busyLabel.setText("Export failed: " + e.getMessage()));
+            }
+        }, "results-export").start();
+    }
+
+    /**
+     * Shows the rows cracked since the last refresh. In time order they appear at once; sorted views pick them up
+     * with an index update at most every {@link #SORTED_REFRESH_MILLIS}.
+     */
+    private void refresh() {
+        long oldSize = window.size();
+        long added = window.refresh();
+        if (added > 0) {
+            rows.added(oldSize, added, window.isDescending());
+            updateCount();
+        } else if (window.getIndex() != null && !window.isSearch() && window.getIndex().size() < store.size()
+                && System.currentTimeMillis() - lastIndexed >= SORTED_REFRESH_MILLIS) {
+            applyOrder();
+        }
+    }
+
+    /**
+     * Shows the rows in the order chosen in the table header, narrowed by the search box if it holds text.
+     */
+    private void applyOrder() {
+        String search = searchField.getText() == null ? "" : searchField.getText();
+        if (!search.isEmpty()) {
+            CrackStore.Column column = searchColumn.getValue();
+            withIndex(column, index -> window.showPrefix(index, search));
+            return;
+        }
+        TableColumn<CrackRecord, ?> sortColumn = table.getSortOrder().isEmpty() ? null : table.getSortOrder().get(0);
+        boolean descending = sortColumn != null && sortColumn.getSortType() == TableColumn.SortType.DESCENDING;
+        CrackStore.Column column = sortColumn != null ? (CrackStore.Column) sortColumn.getUserData() : CrackStore.Column.TIME;
+        if (column == CrackStore.Column.TIME) {
+            // Rows are stored in crack order; without a sort the newest come first.
+            window.showAll(sortColumn == null || descending);
+            replaceAll();
+            return;
+        }
+        withIndex(column, index -> window.showSorted(index, descending));
+    }
+
+    /**
+     * Brings a column's index up to date on a background thread, then applies it on the FX thread.
+     */
+    private void withIndex(CrackStore.Column column, Consumer<SortIndex> apply) {
+        SortIndex current = indexes.get(column);
+        if (current != null && current.size() == store.size()) {
+            apply.accept(current);
+            replaceAll();
+            return;
+        }
+        if (indexing) {
+            // The running update re-applies the current order when it finishes.
+            return;
+        }
+        indexing = true;
+        busyLabel.setText("Indexing...");
+        new Thread(() -> {
+            SortIndex updated;
+            try {
+                SortIndex base = current != null ? current : SortIndex.open(store, column);
+                updated = base.update();
+                if (base != updated && base != current) {
+                    base.discard();
+                }
+            } catch (IOException | RuntimeException e) {
+                e.printStackTrace();
+                Platform.runLater(() -> {
+                    indexing = false;
+                    busyLabel.setText("Indexing failed: " + e.getMessage());
+                });
+                return;
+            }
+            Platform.runLater(() -> {
+                indexing = false;
+                lastIndexed = System.currentTimeMillis();
+                busyLabel.setText("");
+                SortIndex previous = indexes.put(column, updated);
+                applyOrder();
+                // The window has moved to the new index (or to another column), so nothing reads the old one.
+                if (previous != null && previous != updated) {
+                    previous.discard();
+                }
+            });
+        }, "results-index-" + column.name().toLowerCase(Locale.ROOT)).start();
+    }
+
+    private void replaceAll() {
+        rows.replaced();
+        updateCount();
+    }
+
+    private void updateCount() {
+        long shown = window.size();
+        long total = store.size();
+        countLabel.setText(shown == total ? String.format("%,d cracked", total) : String.format("%,d of %,d", shown, total));
+    }
+
+    /**
+     * The table's items: a read-only list view of the window that only tells the table what changed.
+     */
+    private class RowList extends ObservableListBase<CrackRecord> {
+
+        /** The size the table was last told about. */
+        private int size = (int) Math.min(window.size(), Integer.MAX_VALUE);
+
+        @Override
+        public CrackRecord get(int index) {
+            return window.get(index);
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        void added(long oldSize, long count, boolean atTop) {
+            int newSize = (int) Math.min(window.size(), Integer.MAX_VALUE);
+            int from = atTop ? 0 : (int) oldSize;
+            size = newSize;
+            beginChange();
+            nextAdd(from, from + (int) count);
+            endChange();
+        }
+
+        void replaced() {
+            int oldSize = size;
+            size = (int) Math.min(window.size(), Integer.MAX_VALUE);
+            beginChange();
+            // The removed rows are never looked at; a list of nulls stands in for them without reading them.
+            nextRemove(0, Collections.nCopies(oldSize, null));
+            nextAdd(0, size);
+            endChange();
+        }
+    }
+}
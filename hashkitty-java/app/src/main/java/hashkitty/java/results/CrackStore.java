@@ -0,0 +1,337 @@
+package hashkitty.java.results;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * An append-only store of cracked hashes that holds millions of rows without keeping them on the heap.
+ * <p>
+ * Rows are stored column by column in memory-mapped files inside one directory:
+ * </p>
+ * <ul>
+ *     <li>{@code time.col}: crack time, 8 bytes per row.</li>
+ *     <li>{@code mode.col}: Hashcat hash mode, 4 bytes per row.</li>
+ *     <li>{@code job.col}, {@code hash.col}, {@code plain.col}: 8-byte offsets into {@code strings.heap}, which
+ *     holds length-prefixed UTF-8 strings. Job IDs are stored once per job.</li>
+ *     <li>{@code store.meta}: the committed row count and heap size.</li>
+ * </ul>
+ * <p>
+ * Fixed-width columns make row {@code i} an O(1) lookup, so a table can page in just the rows on screen, and a
+ * sort by one column (see {@link SortIndex}) reads only that column. An append writes the row's columns first and
+ * then raises the row count, so readers on other threads only ever see complete rows. The pages are written back
+ * by the operating system, which survives a crash of the application (but not of the machine) without a flush
+ * per crack.
+ * </p>
+ */
+public class CrackStore implements Closeable {
+
+    /** The columns of a row, in the order shown by the results table. */
+    public enum Column {
+        TIME, MODE, JOB, HASH, PLAIN
+    }
+
+    /** Longest string stored; longer hashes or passwords are cut (Hashcat's own limit is far below this). */
+    static final int MAX_STRING_BYTES = 1 << 20;
+
+    private static final int MAGIC = 0x484B4352; // "HKCR"
+    private static final int VERSION = 1;
+    private static final int COLUMN_SEGMENT = 8 << 20;
+    private static final int HEAP_SEGMENT = 64 << 20;
+
+    private final Path directory;
+    private final MappedFile meta;
+    private final MappedFile times;
+    private final MappedFile modes;
+    private final MappedFile jobs;
+    private final MappedFile hashes;
+    private final MappedFile plains;
+    private final MappedFile heap;
+
+    /** Committed rows; written after the row's columns. */
+    private volatile long rowCount;
+    /** End of the used part of the heap. Guarded by {@code this}. */
+    private long heapEnd;
+    /** Heap offsets of the job IDs stored since opening. Guarded by {@code this}. */
+    private final Map<String, Long> jobOffsets = new HashMap<>();
+
+    /**
+     * Opens (or creates) a store.
+     *
+     * @param directory The store directory (created if missing).
+     * @throws IOException If the files cannot be opened or belong to something else.
+     */
+    public CrackStore(Path directory) throws IOException {
+        this(directory, COLUMN_SEGMENT, HEAP_SEGMENT);
+    }
+
+    /**
+     * Opens a store with given mapping sizes, so tests can cross segment boundaries with a few rows.
+     */
+    CrackStore(Path directory, int columnSegment, int heapSegment) throws IOException {
+        Files.createDirectories(directory);
+        this.directory = directory;
+        this.meta = new MappedFile(directory.resolve("store.meta"), 64);
+        int magic = meta.getInt(0);
+        if (magic == 0) {
+            meta.putInt(0, MAGIC);
+            meta.putInt(4, VERSION);
+        } else if (magic != MAGIC || meta.getInt(4) != VERSION) {
+            meta.close();
+            throw new IOException("Not a crack results store (or an unsupported version): " + directory);
+        }
+        this.rowCount = meta.getLong(8);
+        this.heapEnd = meta.getLong(16);
+        this.times = new MappedFile(directory.resolve("time.col"), columnSegment);
+        this.modes = new MappedFile(directory.resolve("mode.col"), columnSegment);
+        this.jobs = new MappedFile(directory.resolve("job.col"), columnSegment);
+        this.hashes = new MappedFile(directory.resolve("hash.col"), columnSegment);
+        this.plains = new MappedFile(directory.resolve("plain.col"), columnSegment);
+        this.heap = new MappedFile(directory.resolve("strings.heap"), heapSegment);
+    }
+
+    /**
+     * Returns the default store location, {@code ~/.hashkitty/results}.
+     *
+     * @return The directory.
+     */
+    public static Path defaultDirectory() {
+        return Paths.get(System.getProperty("user.home"), ".hashkitty", "results");
+    }
+
+    /**
+     * Returns the store directory.
+     *
+     * @return The directory.
+     */
+    public Path getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Appends a row.
+     *
+     * @param time  When the hash was cracked, in epoch milliseconds.
+     * @param mode  The Hashcat hash mode, or -1 if unknown.
+     * @param jobId The job that cracked it, or null.
+     * @param hash  The hash.
+     * @param plain The password.
+     * @return The new row's index.
+     */
+    public synchronized long append(long time, int mode, String jobId, String hash, String plain) {
+        long row = rowCount;
+        long jobOffset = -1;
+        if (jobId != null) {
+            Long known = jobOffsets.get(jobId);
+            if (known == null) {
+                known = putString(jobId);
+                jobOffsets.put(jobId, known);
+            }
+            jobOffset = known;
+        }
+        times.putLong(row * 8, time);
+        modes.putInt(row * 4, mode);
+        jobs.putLong(row * 8, jobOffset);
+        hashes.putLong(row * 8, putString(hash != null ? hash : ""));
+        plains.putLong(row * 8, putString(plain != null ? plain : ""));
+        meta.putLong(16, heapEnd);
+        meta.putLong(8, row + 1);
+        rowCount = row + 1;
+        return row;
+    }
+
+    /**
+     * Appends a record.
+     *
+     * @param record The record.
+     * @return The new row's index.
+     */
+    public long append(CrackRecord record) {
+        return append(record.getTime(), record.getMode(), record.getJobId(), record.getHash(), record.getPlain());
+    }
+
+    /**
+     * Returns the number of rows. Rows below this count are complete and may be read from any thread.
+     *
+     * @return The row count.
+     */
+    public long size() {
+        return rowCount;
+    }
+
+    /**
+     * Reads a whole row.
+     *
+     * @param row The row index.
+     * @return The record.
+     */
+    public CrackRecord get(long row) {
+        return new CrackRecord(getTime(row), getMode(row), getJobId(row), getHash(row), getPlain(row));
+    }
+
+    public long getTime(long row) {
+        checkRow(row);
+        return times.getLong(row * 8);
+    }
+
+    public int getMode(long row) {
+        checkRow(row);
+        return modes.getInt(row * 4);
+    }
+
+    public String getJobId(long row) {
+        checkRow(row);
+        long offset = jobs.getLong(row * 8);
+        return offset < 0 ? null : getString(offset);
+    }
+
+    public String getHash(long row) {
+        checkRow(row);
+        return getString(hashes.getLong(row * 8));
+    }
+
+    public String getPlain(long row) {
+        checkRow(row);
+        return getString(plains.getLong(row * 8));
+    }
+
+    /**
+     * Reads a string column.
+     *
+     * @param column {@link Column#JOB}, {@link Column#HASH} or {@link Column#PLAIN}.
+     * @param row    The row.
+     * @return The value; null for a row without a job.
+     */
+    String getText(Column column, long row) {
+        long offset = stringOffset(column, row);
+        return offset < 0 ? null : getString(offset);
+    }
+
+    /**
+     * Compares two rows by one column. Strings compare by their UTF-8 bytes, unsigned, which for ASCII is plain
+     * lexicographic order; rows without a job sort first.
+     *
+     * @param column The column.
+     * @param a      The first row.
+     * @param b      The second row.
+     * @return Negative, zero or positive, as for a comparator.
+     */
+    public int compare(Column column, long a, long b) {
+        switch (column) {
+            case TIME: return Long.compare(getTime(a), getTime(b));
+            case MODE: return Integer.compare(getMode(a), getMode(b));
+            default:
+                long offsetA = stringOffset(column, a);
+                long offsetB = stringOffset(column, b);
+                if (offsetA < 0 || offsetB < 0) {
+                    return Boolean.compare(offsetA >= 0, offsetB >= 0);
+                }
+                return compareStrings(offsetA, offsetB);
+        }
+    }
+
+    /**
+     * Compares the start of a row's string column with a prefix.
+     *
+     * @param column {@link Column#JOB}, {@link Column#HASH} or {@link Column#PLAIN}.
+     * @param row    The row.
+     * @param prefix The prefix, as UTF-8.
+     * @return Zero if the value starts with the prefix; otherwise negative or positive as the value sorts
+     * before or after every value that does.
+     */
+    public int comparePrefix(Column column, long row, byte[] prefix) {
+        long offset = stringOffset(column, row);
+        if (offset < 0) {
+            return prefix.length == 0 ? 0 : -1;
+        }
+        int length = heap.getInt(offset);
+        int common = Math.min(length, prefix.length);
+        for (int i = 0; i < common; i++) {
+            int cmp = Integer.compare(heap.get(offset + 4 + i) & 0xff, prefix[i] & 0xff);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return length < prefix.length ? -1 : 0;
+    }
+
+    /**
+     * Writes outstanding pages to the disk.
+     */
+    public synchronized void flush() {
+        times.force();
+        modes.force();
+        jobs.force();
+        hashes.force();
+        plains.force();
+        heap.force();
+        meta.force();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        times.close();
+        modes.close();
+        jobs.close();
+        hashes.close();
+        plains.close();
+        heap.close();
+        meta.close();
+    }
+
+    // ---- Strings ----
+
+    private long stringOffset(Column column, long row) {
+        checkRow(row);
+        switch (column) {
+            case JOB: return jobs.getLong(row * 8);
+            case HASH: return hashes.getLong(row * 8);
+            case PLAIN: return plains.getLong(row * 8);
+            default: throw new IllegalArgumentException("Not a string column: " + column);
+        }
+    }
+
+    /**
+     * Appends a length-prefixed string to the heap, 4-byte aligned so the length never straddles a segment.
+     */
+    private long putString(String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        int length = Math.min(bytes.length, MAX_STRING_BYTES);
+        long offset = heapEnd;
+        heap.putInt(offset, length);
+        heap.put(offset + 4, bytes, 0, length);
+        heapEnd = (offset + 4 + length + 3) & ~3L;
+        return offset;
+    }
+
+    private String getString(long offset) {
+        int length = heap.getInt(offset);
+        byte[] bytes = new byte[length];
+        heap.get(offset + 4, bytes, 0, length);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private int compareStrings(long a, long b) {
+        int lengthA = heap.getInt(a);
+        int lengthB = heap.getInt(b);
+        int common = Math.min(lengthA, lengthB);
+        for (int i = 0; i < common; i++) {
+            int cmp = Integer.compare(heap.get(a + 4 + i) & 0xff, heap.get(b + 4 + i) & 0xff);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return Integer.compare(lengthA, lengthB);
+    }
+
+    private void checkRow(long row) {
+        if (row < 0 || row >= rowCount) {
+            throw new IndexOutOfBoundsException("Row " + row + " of " + rowCount);
+        }
+    }
+}
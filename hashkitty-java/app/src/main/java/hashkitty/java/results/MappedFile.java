@@ -0,0 +1,169 @@
+package hashkitty.java.results;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * A file accessed through memory mappings of fixed-size segments, grown one segment at a time.
+ * <p>
+ * A single {@link MappedByteBuffer} cannot exceed 2 GB, so the file is mapped in segments of {@code segmentSize}
+ * bytes, created on first write. Values written at positions aligned to their own size never straddle a segment
+ * (the segment size is a multiple of 8); byte arrays may, and are copied in pieces.
+ * </p>
+ * <p>
+ * A file opened with {@link #readOnly} is mapped as it is and never grows.
+ * </p>
+ * <p>
+ * Writes are made by one thread at a time (the store's lock). Reads of positions that were written before the
+ * reader learned of them (through a volatile row count) may run concurrently on any thread: only absolute
+ * get/put methods are used, so the buffers' positions are never shared state.
+ * </p>
+ */
+class MappedFile implements Closeable {
+
+    private final FileChannel channel;
+    private final int segmentSize;
+    private final boolean readOnly;
+    private volatile MappedByteBuffer[] segments = new MappedByteBuffer[0];
+
+    /**
+     * Opens (or creates) a file.
+     *
+     * @param path        The file.
+     * @param segmentSize The mapping size, a multiple of 8.
+     * @throws IOException If the file cannot be opened.
+     */
+    MappedFile(Path path, int segmentSize) throws IOException {
+        this(path, segmentSize, false);
+    }
+
+    private MappedFile(Path path, int segmentSize, boolean readOnly) throws IOException {
+        if (segmentSize <= 0 || segmentSize % 8 != 0) {
+            throw new IllegalArgumentException("Segment size must be a positive multiple of 8: " + segmentSize);
+        }
+        this.channel = readOnly
+                ? FileChannel.open(path, StandardOpenOption.READ)
+                : FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.segmentSize = segmentSize;
+        this.readOnly = readOnly;
+    }
+
+    /**
+     * Opens an existing file for reading only. The last segment is mapped only up to the end of the file.
+     *
+     * @param path        The file.
+     * @param segmentSize The mapping size, a multiple of 8.
+     * @return The file.
+     * @throws IOException If the file cannot be opened.
+     */
+    static MappedFile readOnly(Path path, int segmentSize) throws IOException {
+        return new MappedFile(path, segmentSize, true);
+    }
+
+    long getLong(long position) {
+        return segment(position).getLong(offset(position));
+    }
+
+    void putLong(long position, long value) {
+        segment(position).putLong(offset(position), value);
+    }
+
+    int getInt(long position) {
+        return segment(position).getInt(offset(position));
+    }
+
+    void putInt(long position, int value) {
+        segment(position).putInt(offset(position), value);
+    }
+
+    byte get(long position) {
+        return segment(position).get(offset(position));
+    }
+
+    /**
+     * Reads bytes, across segment boundaries if necessary.
+     */
+    void get(long position, byte[] target, int targetOffset, int length) {
+        while (length > 0) {
+            int offset = offset(position);
+            int chunk = Math.min(length, segmentSize - offset);
+            segment(position).get(offset, target, targetOffset, chunk);
+            position += chunk;
+            targetOffset += chunk;
+            length -= chunk;
+        }
+    }
+
+    /**
+     * Writes bytes, across segment boundaries if necessary.
+     */
+    void put(long position, byte[] source, int sourceOffset, int length) {
+        while (length > 0) {
+            int offset = offset(position);
+            int chunk = Math.min(length, segmentSize - offset);
+            segment(position).put(offset, source, sourceOffset, chunk);
+            position += chunk;
+            sourceOffset += chunk;
+            length -= chunk;
+        }
+    }
+
+    /**
+     * Flushes written pages to the disk.
+     */
+    void force() {
+        if (readOnly) {
+            return;
+        }
+        for (MappedByteBuffer segment : segments) {
+            segment.force();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        force();
+        channel.close();
+    }
+
+    private int offset(long position) {
+        return (int) (position % segmentSize);
+    }
+
+    private MappedByteBuffer segment(long position) {
+        int index = (int) (position / segmentSize);
+        MappedByteBuffer[] current = segments;
+        if (index < current.length) {
+            return current[index];
+        }
+        return map(index);
+    }
+
+    /**
+     * Maps segments up to and including {@code index}. Mapping past the end of a writable file extends it.
+     */
+    private synchronized MappedByteBuffer map(int index) {
+        MappedByteBuffer[] current = segments;
+        if (index < current.length) {
+            return current[index];
+        }
+        MappedByteBuffer[] grown = Arrays.copyOf(current, index + 1);
+        try {
+            for (int i = current.length; i <= index; i++) {
+                long start = (long) i * segmentSize;
+                grown[i] = readOnly
+                        ? channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(segmentSize, channel.size() - start))
+                        : channel.map(FileChannel.MapMode.READ_WRITE, start, segmentSize);
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not map segment " + index + ": " + e.getMessage(), e);
+        }
+        segments = grown;
+        return grown[index];
+    }
+}
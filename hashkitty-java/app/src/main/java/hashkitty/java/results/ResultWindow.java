@@ -0,0 +1,206 @@
+package hashkitty.java.results;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * What the results table shows: the rows of a {@link CrackStore} in some order, optionally narrowed to a search
+ * range, read a page at a time.
+ * <p>
+ * The table asks for rows by position; the window maps a position to a store row (directly for time order,
+ * through a {@link SortIndex} otherwise) and reads rows in pages of {@link #PAGE_ROWS}, keeping the
+ * {@link #MAX_PAGES} most recently used pages. Scrolling through millions of rows therefore reads only what is on
+ * screen, and the heap holds a few thousand records at most. Not thread-safe: the table uses it on the FX thread.
+ * </p>
+ */
+public class ResultWindow {
+
+    /** Rows read from the store at once. */
+    static final int PAGE_ROWS = 128;
+
+    /** Pages kept in memory. */
+    static final int MAX_PAGES = 32;
+
+    private final CrackStore store;
+    /** The order, or null for time (row) order. */
+    private SortIndex index;
+    private boolean descending;
+    /** Search range within the index; only used with an index. */
+    private long from;
+    private long to = -1;
+
+    /** Rows shown in time order; follows the store only on {@link #refresh()}, so the table sees a stable size. */
+    private long timeOrderSize;
+
+    private final Map<Long, List<CrackRecord>> pages = new LinkedHashMap<>(MAX_PAGES * 2, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, List<CrackRecord>> eldest) {
+            return size() > MAX_PAGES;
+        }
+    };
+
+    /**
+     * Constructs a window showing every row, newest first.
+     *
+     * @param store The store.
+     */
+    public ResultWindow(CrackStore store) {
+        this.store = store;
+        this.descending = true;
+        this.timeOrderSize = store.size();
+    }
+
+    /**
+     * Shows every row in the order it was cracked.
+     *
+     * @param newestFirst Whether the newest row comes first.
+     */
+    public void showAll(boolean newestFirst) {
+        this.index = null;
+        this.descending = newestFirst;
+        this.timeOrderSize = store.size();
+        pages.clear();
+    }
+
+    /**
+     * Takes in the rows appended since the last call, in time order. Sorted and search views change only when
+     * given a newer index.
+     *
+     * @return The number of rows added to the window.
+     */
+    public long refresh() {
+        if (index != null) {
+            return 0;
+        }
+        long added = store.size() - timeOrderSize;
+        if (added > 0) {
+            timeOrderSize += added;
+            if (descending) {
+                // Every position moved down by the rows that arrived.
+                pages.clear();
+            }
+        }
+        return added;
+    }
+
+    /**
+     * Checks whether the newest rows are shown first (time order) or the largest values (sorted).
+     *
+     * @return Whether the order is descending.
+     */
+    public boolean isDescending() {
+        return descending;
+    }
+
+    /**
+     * Shows every row covered by an index, in its order. Rows added since the index was built are not shown
+     * until it is updated.
+     *
+     * @param index      The index.
+     * @param descending Whether the largest value comes first.
+     */
+    public void showSorted(SortIndex index, boolean descending) {
+        this.index = index;
+        this.descending = descending;
+        this.from = 0;
+        this.to = -1;
+        pages.clear();
+    }
+
+    /**
+     * Shows the rows of an index whose value starts with a prefix, in ascending order.
+     *
+     * @param index  The index of the searched column.
+     * @param prefix The prefix.
+     */
+    public void showPrefix(SortIndex index, String prefix) {
+        long[] range = index.prefixRange(prefix);
+        this.index = index;
+        this.descending = false;
+        this.from = range[0];
+        this.to = range[1];
+        pages.clear();
+    }
+
+    /**
+     * Returns the index in use.
+     *
+     * @return The index, or null in time order.
+     */
+    public SortIndex getIndex() {
+        return index;
+    }
+
+    /**
+     * Checks whether the window is narrowed to search results.
+     *
+     * @return true after {@link #showPrefix}.
+     */
+    public boolean isSearch() {
+        return index != null && to >= 0;
+    }
+
+    /**
+     * Returns the number of rows shown. In time order this grows with each {@link #refresh()}.
+     *
+     * @return The row count.
+     */
+    public long size() {
+        if (index == null) {
+            return timeOrderSize;
+        }
+        return to >= 0 ? to - from : index.size();
+    }
+
+    /**
+     * Returns the row shown at a position.
+     *
+     * @param position The position, from 0.
+     * @return The record.
+     */
+    public CrackRecord get(long position) {
+        long size = size();
+        if (position < 0 || position >= size) {
+            throw new IndexOutOfBoundsException("Position " + position + " of " + size);
+        }
+        long page = position / PAGE_ROWS;
+        int offset = (int) (position % PAGE_ROWS);
+        List<CrackRecord> rows = pages.get(page);
+        if (rows == null || offset >= rows.size()) {
+            // Missing, or the last page read before more rows arrived.
+            rows = readPage(page, size);
+            pages.put(page, rows);
+        }
+        return rows.get(offset);
+    }
+
+    /**
+     * Returns the store row shown at a position.
+     *
+     * @param position The position, from 0.
+     * @return The row index in the store.
+     */
+    public long rowAt(long position) {
+        return rowAt(position, size());
+    }
+
+    private long rowAt(long position, long size) {
+        long ordered = descending ? size - 1 - position : position;
+        if (index == null) {
+            return ordered;
+        }
+        return index.rowAt(to >= 0 ? from + ordered : ordered);
+    }
+
+    private List<CrackRecord> readPage(long page, long size) {
+        long start = page * PAGE_ROWS;
+        long end = Math.min(size, start + PAGE_ROWS);
+        List<CrackRecord> rows = new ArrayList<>((int) (end - start));
+        for (long position = start; position < end; position++) {
+            rows.add(store.get(rowAt(position, size)));
+        }
+        return rows;
+    }
+}
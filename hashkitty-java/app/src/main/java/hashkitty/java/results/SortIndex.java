@@ -0,0 +1,286 @@
+package hashkitty.java.results;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * The rows of a {@link CrackStore} in the order of one column, kept on disk next to the store.
+ * <p>
+ * The index file ({@code index/<column>-<rows>.idx}) is a row count followed by one 4-byte row number per row,
+ * in column order (ties in row order). It is memory-mapped, so finding the row at a sorted position is one read,
+ * and a prefix search on the hash or password column is a binary search over the file. Nothing is loaded into
+ * the Java heap beyond the rows added since the last update.
+ * </p>
+ * <p>
+ * Because the store is append-only, an index never has to be rebuilt: {@link #update()} sorts just the new rows
+ * (in chunks of {@link #CHUNK_ROWS}) and merges them with the existing file in one sequential pass into a new
+ * file. An index is immutable once built, so a table can keep reading the old one while the next is merged on
+ * a background thread. Row numbers are stored as ints, which limits a store to about two billion rows.
+ * </p>
+ */
+public class SortIndex {
+
+    /** Most new rows sorted in memory at once. */
+    static final int CHUNK_ROWS = 1 << 20;
+
+    private static final int HEADER_BYTES = 8;
+    private static final int SEGMENT_SIZE = 8 << 20;
+
+    private final CrackStore store;
+    private final CrackStore.Column column;
+    private final Path file;
+    private final MappedFile mapped;
+    private final long count;
+
+    private SortIndex(CrackStore store, CrackStore.Column column, Path file, MappedFile mapped, long count) {
+        this.store = store;
+        this.column = column;
+        this.file = file;
+        this.mapped = mapped;
+        this.count = count;
+    }
+
+    /**
+     * Opens the newest index of a column, without bringing it up to date.
+     *
+     * @param store  The store.
+     * @param column The column to order by; not {@link CrackStore.Column#TIME}, which is the row order already.
+     * @return The index, possibly covering fewer rows than the store (or none).
+     * @throws IOException If the index directory cannot be read.
+     */
+    public static SortIndex open(CrackStore store, CrackStore.Column column) throws IOException {
+        if (column == CrackStore.Column.TIME) {
+            throw new IllegalArgumentException("Rows are already in time order");
+        }
+        Path directory = store.getDirectory().resolve("index");
+        Files.createDirectories(directory);
+        Path best = null;
+        long bestCount = 0;
+        String prefix = fileNamePrefix(column);
+        List<Path> stale = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, prefix + "*.idx*")) {
+            for (Path candidate : files) {
+                stale.add(candidate);
+            }
+        }
+        for (Path candidate : stale) {
+            String name = candidate.getFileName().toString();
+            long rows;
+            try {
+                rows = Long.parseLong(name.substring(prefix.length(), name.length() - ".idx".length()));
+            } catch (NumberFormatException e) {
+                continue;
+            }
+            if (rows <= store.size() && rows > bestCount && Files.size(candidate) == HEADER_BYTES + rows * 4) {
+                best = candidate;
+                bestCount = rows;
+            }
+        }
+        // Superseded indexes (and merges cut short) are left behind when they could not be deleted in use.
+        stale.remove(best);
+        for (Path old : stale) {
+            try {
+                Files.deleteIfExists(old);
+            } catch (IOException e) {
+                // Still in use; try again next time.
+            }
+        }
+        if (best == null) {
+            return new SortIndex(store, column, null, null, 0);
+        }
+        return new SortIndex(store, column, best, MappedFile.readOnly(best, SEGMENT_SIZE), bestCount);
+    }
+
+    /**
+     * Returns an index covering every row currently in the store, merging in the rows added since this one was
+     * built. This index stays usable; call {@link #discard()} on it once nothing reads it any more.
+     *
+     * @return The up-to-date index, or this one if no rows were added.
+     * @throws IOException If the new index cannot be written.
+     */
+    public SortIndex update() throws IOException {
+        long target = store.size();
+        if (target == count) {
+            return this;
+        }
+        SortIndex current = this;
+        for (long from = count; from < target; from += CHUNK_ROWS) {
+            int chunkSize = (int) Math.min(CHUNK_ROWS, target - from);
+            Integer[] chunk = new Integer[chunkSize];
+            for (int i = 0; i < chunkSize; i++) {
+                chunk[i] = (int) (from + i);
+            }
+            // Object sort is stable, so equal values keep their row order.
+            Arrays.sort(chunk, (a, b) -> store.compare(column, a, b));
+            SortIndex merged = current.merge(chunk);
+            if (current != this) {
+                current.discard();
+            }
+            current = merged;
+        }
+        return current;
+    }
+
+    /**
+     * Writes a new index file holding this index's rows and the given sorted rows.
+     */
+    private SortIndex merge(Integer[] sorted) throws IOException {
+        long total = count + sorted.length;
+        Path target = store.getDirectory().resolve("index").resolve(fileNamePrefix(column) + total + ".idx");
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(64 * 1024);
+            buffer.putLong(total);
+            long i = 0;
+            int j = 0;
+            while (i < count || j < sorted.length) {
+                int row;
+                // On a tie the existing (older) row goes first, which keeps ties in row order.
+                if (j >= sorted.length || (i < count && store.compare(column, rowAt(i), sorted[j]) <= 0)) {
+                    row = (int) rowAt(i++);
+                } else {
+                    row = sorted[j++];
+                }
+                if (!buffer.hasRemaining()) {
+                    drain(out, buffer);
+                }
+                buffer.putInt(row);
+            }
+            drain(out, buffer);
+        }
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+        return new SortIndex(store, column, target, MappedFile.readOnly(target, SEGMENT_SIZE), total);
+    }
+
+    private static void drain(FileChannel out, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Returns the column this index orders by.
+     *
+     * @return The column.
+     */
+    public CrackStore.Column getColumn() {
+        return column;
+    }
+
+    /**
+     * Returns the number of rows covered.
+     *
+     * @return The row count at the time the index was built.
+     */
+    public long size() {
+        return count;
+    }
+
+    /**
+     * Returns the row at a sorted position.
+     *
+     * @param position The position, from 0 (smallest value) to {@link #size()} - 1.
+     * @return The row index in the store.
+     */
+    public long rowAt(long position) {
+        if (position < 0 || position >= count) {
+            throw new IndexOutOfBoundsException("Position " + position + " of " + count);
+        }
+        return mapped.getInt(HEADER_BYTES + position * 4) & 0xffffffffL;
+    }
+
+    /**
+     * Finds the rows whose value starts with a prefix. They form one run of positions in this index.
+     *
+     * @param prefix The prefix (case-sensitive, as stored).
+     * @return {from, to}: the matching positions are {@code from} (inclusive) to {@code to} (exclusive).
+     */
+    public long[] prefixRange(String prefix) {
+        byte[] bytes = prefix.getBytes(StandardCharsets.UTF_8);
+        long from = bound(bytes, false);
+        long to = bound(bytes, true);
+        return new long[]{from, to};
+    }
+
+    /**
+     * Finds a row whose value is exactly the given one.
+     *
+     * @param value The value (case-sensitive, as stored).
+     * @return The first matching position, or -1 if no row has the value.
+     */
+    public long find(String value) {
+        long position = bound(value.getBytes(StandardCharsets.UTF_8), false);
+        // Among the values starting with it, the value itself sorts first.
+        if (position < count && value.equals(store.getText(column, rowAt(position)))) {
+            return position;
+        }
+        return -1;
+    }
+
+    /**
+     * Binary search for the first position whose value does not sort before the prefix (or, if {@code after},
+     * the first whose value sorts after every value starting with it).
+     */
+    private long bound(byte[] prefix, boolean after) {
+        long low = 0;
+        long high = count;
+        while (low < high) {
+            long middle = (low + high) >>> 1;
+            int cmp = store.comparePrefix(column, rowAt(middle), prefix);
+            if (cmp < 0 || (after && cmp == 0)) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Closes the index file and keeps it for the next {@link #open}.
+     */
+    public void close() {
+        if (mapped == null) {
+            return;
+        }
+        try {
+            mapped.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Closes the index file and deletes it. Call once a newer index has replaced this one and no reader is left.
+     */
+    public void discard() {
+        if (file == null) {
+            return;
+        }
+        try {
+            mapped.close();
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            // Still mapped somewhere (Windows); open() ignores it and it goes with the next cleanup.
+            e.printStackTrace();
+        }
+    }
+
+    private static String fileNamePrefix(CrackStore.Column column) {
+        return column.name().toLowerCase(Locale.ROOT) + "-";
+    }
+}
@@ -3,7 +3,11 @@ package hashkitty.java.server;
 import com.google.gson.Gson;
 import com.google.gson.JsonSyntaxException;
 import hashkitty.java.hashcat.HashcatManager;
+import hashkitty.java.util.ExecutorUtil;
+import hashkitty.java.util.SerialExecutor;
+import hashkitty.java.util.WebSocketUtil;
 import org.java_websocket.WebSocket;
+import org.java_websocket.framing.CloseFrame;
 import org.java_websocket.handshake.ClientHandshake;
 import org.java_websocket.server.WebSocketServer;
 
@@ -45,6 +49,11 @@ public class DirectServer extends WebSocketServer {
      */
     private WebSocket connectedClient = null;
 
+    /**
+     * Processes client messages in order, off the WebSocket threads (attacks write files and spawn processes).
+     */
+    private final SerialExecutor mailbox = new SerialExecutor(ExecutorUtil.sharedTaskExecutor(), RelayCore.MAILBOX_CAPACITY);
+
     /**
      * Constructs a new DirectServer instance.
      *
@@ -53,8 +62,8 @@ public class DirectServer extends WebSocketServer {
      * @param onPasswordCracked Callback to be invoked when Hashcat successfully cracks a password.
      */
     public DirectServer(int port, Consumer<String> onStatusUpdate, Consumer<String> onPasswordCracked) {
-        // Initialize the parent WebSocketServer with the listening address.
-        super(new InetSocketAddress(port));
+        // Initialize the parent WebSocketServer with the listening address, offering per-message deflate.
+        super(new InetSocketAddress(port), WebSocketUtil.serverDrafts());
         this.onStatusUpdate = onStatusUpdate;
         // Initialize the HashcatManager. Note that the 'onComplete' callback is null here as we rely on explicit status updates.
         this.hashcatManager = new HashcatManager(onPasswordCracked, onStatusUpdate, null);
@@ -103,13 +112,26 @@ public class DirectServer extends WebSocketServer {
     }
 
     /**
-     * Triggered when a text message is received from a client.
+     * Triggered when a text message is received from a client. The message is handed to the mailbox.
      *
      * @param conn    The WebSocket connection sending the message.
      * @param message The message content (expected to be JSON).
      */
     @Override
     public void onMessage(WebSocket conn, String message) {
+        if (!mailbox.tryExecute(() -> handleMessage(message))) {
+            // The client sends faster than we can handle; drop it rather than queue without bound.
+            onStatusUpdate.accept("Dropping client: too many messages waiting.");
+            conn.close(CloseFrame.POLICY_VALIDATION, "Too many messages waiting");
+        }
+    }
+
+    /**
+     * Processes a text message on the mailbox.
+     *
+     * @param message The message content (expected to be JSON).
+     */
+    private void handleMessage(String message) {
         try {
             // Deserialize the JSON message into the Message inner class.
             Message msg = gson.fromJson(message, Message.class);
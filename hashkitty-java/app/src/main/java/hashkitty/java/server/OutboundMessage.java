@@ -0,0 +1,109 @@
+package hashkitty.java.server;
+
+import java.nio.ByteBuffer;
+import java.util.function.Function;
+
+/**
+ * A text or binary message on its way to one or more {@link RelayConnection}s.
+ * <p>
+ * A room broadcast creates one instance and hands it to every member. Transports that write raw frames
+ * encode it once through {@link #encoded(Function)} and share the result, so fan-out to a large room does not
+ * re-encode (or copy) the payload per recipient. The sender calls {@link #release()} once it has handed the
+ * message to every recipient; the encoded form is closed then, which lets pooled buffers go back to their
+ * pool once the last recipient has written them.
+ * </p>
+ */
+public final class OutboundMessage {
+
+    /** The text payload, or null for a binary message. */
+    private final String text;
+
+    /** The binary payload, or null for a text message. */
+    private final ByteBuffer binary;
+
+    /** The transport-specific encoded form, created on first use. Guarded by this. */
+    private AutoCloseable encoded;
+
+    private OutboundMessage(String text, ByteBuffer binary) {
+        this.text = text;
+        this.binary = binary;
+    }
+
+    /**
+     * Creates a text message.
+     *
+     * @param text The message text.
+     * @return The message.
+     */
+    public static OutboundMessage text(String text) {
+        return new OutboundMessage(text, null);
+    }
+
+    /**
+     * Creates a binary message. The buffer is not copied and must not be modified afterwards.
+     *
+     * @param binary The payload (position to limit).
+     * @return The message.
+     */
+    public static OutboundMessage binary(ByteBuffer binary) {
+        return new OutboundMessage(null, binary);
+    }
+
+    /**
+     * Returns whether this is a text message.
+     *
+     * @return true for text, false for binary.
+     */
+    public boolean isText() {
+        return text != null;
+    }
+
+    /**
+     * Returns the text payload.
+     *
+     * @return The text, or null for a binary message.
+     */
+    public String getText() {
+        return text;
+    }
+
+    /**
+     * Returns a fresh view of the binary payload, so each recipient can consume it independently.
+     *
+     * @return A duplicate of the payload buffer, or null for a text message.
+     */
+    public ByteBuffer getBinary() {
+        return binary != null ? binary.duplicate() : null;
+    }
+
+    /**
+     * Returns the encoded form of this message, encoding it on the first call.
+     * A message is only ever sent through one transport, so a single cached form is enough.
+     *
+     * @param encoder Produces the encoded form; called at most once.
+     * @param <T>     The transport's encoded type.
+     * @return The shared encoded form; owned by this message until {@link #release()}.
+     */
+    @SuppressWarnings("unchecked")
+    public synchronized <T extends AutoCloseable> T encoded(Function<OutboundMessage, T> encoder) {
+        if (encoded == null) {
+            encoded = encoder.apply(this);
+        }
+        return (T) encoded;
+    }
+
+    /**
+     * Releases the sender's hold on the encoded form. Recipients that still need it must have retained it.
+     */
+    public synchronized void release() {
+        if (encoded != null) {
+            try {
+                encoded.close();
+            } catch (Exception e) {
+                // Encoded forms only release buffers; there is nothing to recover from here.
+                e.printStackTrace();
+            }
+            encoded = null;
+        }
+    }
+}
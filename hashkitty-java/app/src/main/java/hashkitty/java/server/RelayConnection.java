@@ -0,0 +1,51 @@
+package hashkitty.java.server;
+
+import hashkitty.java.util.SerialExecutor;
+
+import java.net.InetSocketAddress;
+
+/**
+ * One client connection as seen by the {@link RelayCore}, independent of the transport that carries it.
+ * <p>
+ * Implementations must be safe to call from any thread: the core sends from connection mailboxes while the
+ * transport keeps reading on its own I/O threads. Identity (equals/hashCode) must be stable for the lifetime
+ * of the connection, since the core keys its room tables by connection.
+ * </p>
+ */
+public interface RelayConnection {
+
+    /**
+     * Queues a message for delivery to this client. Must not block on network I/O.
+     * The transport may cache an encoded form on the message to share it between recipients.
+     *
+     * @param message The message to send.
+     */
+    void send(OutboundMessage message);
+
+    /**
+     * Returns whether the connection is open and can accept messages.
+     *
+     * @return true if open.
+     */
+    boolean isOpen();
+
+    /**
+     * Returns the address of the remote client.
+     *
+     * @return The remote address, or null if unknown.
+     */
+    InetSocketAddress getRemoteSocketAddress();
+
+    /**
+     * Closes the connection. The transport reports it to the core's {@code onClose} as usual. Any thread.
+     */
+    void close();
+
+    /**
+     * Returns the mailbox that serializes the core's work for this connection.
+     *
+     * @return The connection's mailbox (always the same instance), created with
+     *         {@link RelayCore#MAILBOX_CAPACITY}.
+     */
+    SerialExecutor getMailbox();
+}
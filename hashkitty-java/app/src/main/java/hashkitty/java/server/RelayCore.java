@@ -0,0 +1,883 @@
+package hashkitty.java.server;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.JsonSyntaxException;
+import hashkitty.java.hashcat.HashcatManager;
+import hashkitty.java.journal.EventJournal;
+import hashkitty.java.journal.EventType;
+import hashkitty.java.metrics.Counter;
+import hashkitty.java.metrics.Gauge;
+import hashkitty.java.metrics.Histogram;
+import hashkitty.java.metrics.MetricsRegistry;
+import hashkitty.java.server.cluster.ClusterBus;
+import hashkitty.java.server.cluster.ConsistentHashRing;
+import hashkitty.java.util.SerialExecutor;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * The transport-independent core of the relay: rooms, replay history, cluster routing and the optional
+ * local attack worker.
+ * <p>
+ * The core does not know how bytes reach the network. A transport ({@link RelayServer} on Java-WebSocket, or
+ * {@link hashkitty.java.server.nio.NioRelayServer} on plain NIO selectors) accepts WebSocket connections, wraps
+ * each one in a {@link RelayConnection}, and feeds the core its lifecycle events and decoded messages. Outgoing
+ * traffic goes back through {@link RelayConnection#send(OutboundMessage)}, so a transport can encode a room
+ * broadcast once and share the encoded frame between all recipients.
+ * </p>
+ * <p>
+ * <b>Logic Flow:</b>
+ * <ol>
+ *     <li>Clients connect via WebSocket.</li>
+ *     <li>Client sends a "join" message with a {@code roomId}.</li>
+ *     <li>Server validates and associates the client connection with that room.</li>
+ *     <li>When a client sends a message, the server broadcasts it to all *other* clients in that room (enforcing the room associated with the session).</li>
+ * </ol>
+ * </p>
+ * <p>
+ * <b>Cluster Mode:</b> When constructed with a {@link ClusterBus}, several relay nodes can sit behind a load
+ * balancer. Each node announces the rooms it hosts members of, and forwards room frames only to the peer
+ * nodes that host members of the same room. Room IDs are mapped onto a {@link ConsistentHashRing} of live
+ * nodes; a client joining a room on a node other than the room's home node is sent a "redirect" hint with
+ * the home node's URL, so that affinity-aware clients (and load balancers) converge on one node per room.
+ * Clients that ignore the hint keep working through forwarding.
+ * </p>
+ * <p>
+ * <b>Replay:</b> Every relayed message is stamped with a per-room, monotonically increasing {@code seq} and
+ * kept in a bounded {@link RoomHistory}. A client that reconnects sends {@code resumeFrom} (the last seq it
+ * saw) and {@code epoch} (from the "joined" acknowledgement) in its "join" message, and receives exactly the
+ * messages it missed. Sequence numbers are local to one relay process: if the epoch does not match (the relay
+ * restarted, or the client landed on another cluster node) nothing is replayed, since the buffer may hold old
+ * "attack" commands the client would run again; a "history_gap" tells the client which seqs it may have missed.
+ * The "joined" acknowledgement carries the room's current seq, which is where the client resumes from next
+ * time. A replay may also overlap with live delivery; clients drop duplicates by seq.
+ * </p>
+ * <p>
+ * <b>Binary frames:</b> Binary messages (upload chunks, see {@code hashkitty.java.transfer}) are relayed to the
+ * room like text messages, but are neither sequenced nor kept in the history: a chunk can be a megabyte, and the
+ * upload protocol resumes from the receiver's acknowledged offset instead.
+ * </p>
+ * <p>
+ * <b>Threading:</b> Transports invoke the core on their I/O threads, so nothing blocking may run there. Every
+ * message is handed to the connection's {@link SerialExecutor} mailbox ({@link RelayConnection#getMailbox()}):
+ * its messages are handled in arrival order, while different connections proceed in parallel, and an idle
+ * connection holds no thread. A mailbox holds at most {@link #MAILBOX_CAPACITY} messages; a client that sends
+ * faster than the relay can handle is disconnected rather than queued without bound. Per room, sequence assignment and local delivery happen under
+ * the room's {@link RoomHistory} monitor, and so does join-plus-replay, so every member receives a room's
+ * messages in seq order even though several mailboxes broadcast into it concurrently.
+ * </p>
+ * <p>
+ * <b>Metrics:</b> Connections, rooms, messages and bytes in and out, mailbox backlog and broadcast time are
+ * recorded in {@link MetricsRegistry#getDefault()} under {@code hashkitty_relay_*}. Room joins, leaves and errors
+ * are recorded in the {@link EventJournal}.
+ * </p>
+ */
+public class RelayCore {
+
+    private static final MetricsRegistry METRICS = MetricsRegistry.getDefault();
+    private static final Gauge CONNECTIONS = METRICS.gauge("hashkitty_relay_connections", "Open client connections.");
+    private static final Counter TEXT_RECEIVED = METRICS.counter("hashkitty_relay_messages_received_total", "Messages received from clients.", "kind", "text");
+    private static final Counter BINARY_RECEIVED = METRICS.counter("hashkitty_relay_messages_received_total", "Messages received from clients.", "kind", "binary");
+    private static final Counter TEXT_BYTES_RECEIVED = METRICS.counter("hashkitty_relay_received_bytes_total", "Payload received from clients, in bytes (characters for text).", "kind", "text");
+    private static final Counter BINARY_BYTES_RECEIVED = METRICS.counter("hashkitty_relay_received_bytes_total", "Payload received from clients, in bytes (characters for text).", "kind", "binary");
+    private static final Counter TEXT_DELIVERED = METRICS.counter("hashkitty_relay_messages_delivered_total", "Messages sent to local clients (one per recipient).", "kind", "text");
+    private static final Counter BINARY_DELIVERED = METRICS.counter("hashkitty_relay_messages_delivered_total", "Messages sent to local clients (one per recipient).", "kind", "binary");
+    private static final Counter TEXT_BYTES_DELIVERED = METRICS.counter("hashkitty_relay_delivered_bytes_total", "Payload sent to local clients, in bytes (characters for text).", "kind", "text");
+    private static final Counter BINARY_BYTES_DELIVERED = METRICS.counter("hashkitty_relay_delivered_bytes_total", "Payload sent to local clients, in bytes (characters for text).", "kind", "binary");
+    private static final Counter MAILBOX_OVERFLOWS = METRICS.counter("hashkitty_relay_mailbox_overflows_total", "Clients disconnected because their mailbox was full.");
+    private static final Histogram BROADCAST_TIME = METRICS.timer("hashkitty_relay_broadcast_seconds", "Time to sequence and enqueue one room broadcast to every local member.");
+
+    /**
+     * Most messages a connection's mailbox may hold; transports create mailboxes with this capacity.
+     */
+    public static final int MAILBOX_CAPACITY = 10_000;
+
+    /**
+     * Messages handed to connection mailboxes but not yet processed, across all connections.
+     */
+    private final AtomicLong mailboxPending = new AtomicLong();
+
+    /**
+     * Stores the active rooms and their connected clients.
+     * Key: Room ID (String).
+     * Value: A thread-safe Set of connections.
+     */
+    private final Map<String, Set<RelayConnection>> rooms = new ConcurrentHashMap<>();
+
+    /**
+     * Stores the room ID associated with each connection.
+     * Key: Connection.
+     * Value: Room ID (String).
+     */
+    private final Map<RelayConnection, String> connectionRoomMap = new ConcurrentHashMap<>();
+
+    /**
+     * Recent message history per room, kept after a room empties so late reconnects can still resume.
+     * Key: Room ID.
+     */
+    private final Map<String, RoomHistory> histories = new ConcurrentHashMap<>();
+
+    /**
+     * Identifies this relay process; sequence numbers are only meaningful within one epoch.
+     */
+    private final String epoch = UUID.randomUUID().toString().substring(0, 8);
+
+    /**
+     * How long the history of an empty room is kept before it is discarded.
+     */
+    private static final long HISTORY_IDLE_EXPIRY_MS = 60 * 60 * 1000L;
+
+    /**
+     * How often idle histories are looked for. Expiry is a scan over every room, so it runs on a timer rather
+     * than on each join.
+     */
+    private static final long HISTORY_SWEEP_INTERVAL_MS = 60 * 1000L;
+
+    /**
+     * Runs the history sweep between {@link #start()} and {@link #stop()}; null otherwise.
+     */
+    private ScheduledExecutorService maintenance;
+
+    /**
+     * Gson instance for JSON operations.
+     */
+    private final Gson gson = new Gson();
+
+    /**
+     * Manager for Hashcat operations.
+     * NOTE: In a pure relay scenario (cloud hosted), this might not be used directly,
+     * but if the Desktop App hosts the relay, it can also act as a worker directly.
+     */
+    private final HashcatManager hashcatManager;
+
+    /**
+     * Callback for general status logging.
+     */
+    private final Consumer<String> onStatusUpdate;
+
+    /**
+     * Tracks the room ID currently running an attack (if this instance is handling the attack locally).
+     */
+    private String currentAttackingRoomId;
+
+    /**
+     * The bus linking this node to its cluster peers. Null when running as a single node.
+     */
+    private final ClusterBus clusterBus;
+
+    /**
+     * Maps each room ID to the live peer nodes (by node ID) hosting members of it.
+     * Only populated in cluster mode.
+     */
+    private final Map<String, Set<String>> remoteRoomNodes = new ConcurrentHashMap<>();
+
+    /**
+     * Consistent hash ring of live nodes (including this one), used to pick each room's home node.
+     */
+    private final ConsistentHashRing ring = new ConsistentHashRing();
+
+    /**
+     * Striped locks ordering each room's cluster announcements. Announcements are network writes, so they are made
+     * outside the {@link #rooms} map, one room stripe at a time.
+     */
+    private final Object[] announceLocks = new Object[64];
+
+    /**
+     * Constructs a new relay core.
+     *
+     * @param onStatusUpdate    Callback for logging status messages.
+     * @param onPasswordCracked Callback for when a password is recovered (if running locally).
+     * @param clusterBus        The cluster transport, or null to run as a single node.
+     */
+    public RelayCore(Consumer<String> onStatusUpdate, Consumer<String> onPasswordCracked, ClusterBus clusterBus) {
+        this.onStatusUpdate = onStatusUpdate;
+        // Initialize HashcatManager for local execution capability.
+        this.hashcatManager = new HashcatManager(onPasswordCracked, onStatusUpdate, null);
+        this.clusterBus = clusterBus;
+        for (int i = 0; i < announceLocks.length; i++) {
+            announceLocks[i] = new Object();
+        }
+        METRICS.gauge("hashkitty_relay_rooms", "Rooms with at least one local member.", rooms::size);
+        METRICS.gauge("hashkitty_relay_mailbox_pending", "Client messages waiting in connection mailboxes.", mailboxPending::get);
+    }
+
+    /**
+     * Called by the transport when a client has completed the WebSocket handshake.
+     *
+     * @param conn The new connection.
+     */
+    public void onOpen(RelayConnection conn) {
+        CONNECTIONS.add(1);
+        System.out.println("New connection: " + conn.getRemoteSocketAddress());
+        onStatusUpdate.accept("Client connected: " + conn.getRemoteSocketAddress());
+    }
+
+    /**
+     * Called by the transport when a connection is closed, whatever the reason.
+     *
+     * @param conn The closed connection.
+     */
+    public void onClose(RelayConnection conn) {
+        CONNECTIONS.add(-1);
+        System.out.println("Closed connection: " + conn.getRemoteSocketAddress());
+        onStatusUpdate.accept("Client disconnected: " + conn.getRemoteSocketAddress());
+        // Ensure the client is removed from any rooms they were in to prevent memory leaks or stale delivery.
+        // Queued behind the client's pending messages, so they are still relayed first.
+        conn.getMailbox().execute(() -> removeConnectionFromAllRooms(conn));
+    }
+
+    /**
+     * Called by the transport when a text message is received. The message is handed to the sender's mailbox.
+     *
+     * @param conn    The sender.
+     * @param message The message text (JSON).
+     */
+    public void onMessage(RelayConnection conn, String message) {
+        TEXT_RECEIVED.inc();
+        TEXT_BYTES_RECEIVED.add(message.length());
+        mailboxPending.incrementAndGet();
+        boolean queued = conn.getMailbox().tryExecute(() -> {
+            mailboxPending.decrementAndGet();
+            handleMessage(conn, message);
+        });
+        if (!queued) {
+            mailboxOverflow(conn);
+        }
+    }
+
+    /**
+     * Processes a text message on the sender's mailbox.
+     *
+     * @param conn    The sender.
+     * @param message The message text (JSON).
+     */
+    private void handleMessage(RelayConnection conn, String message) {
+        try {
+            // Parse the message.
+            Message msg = gson.fromJson(message, Message.class);
+
+            // Handle specific command types.
+            if ("join".equalsIgnoreCase(msg.getType())) {
+                // Client requesting to join a room.
+                if (msg.getRoomId() != null && !msg.getRoomId().isEmpty()) {
+                    // Ensure client isn't in multiple rooms simultaneously (simplifies logic).
+                    removeConnectionFromAllRooms(conn);
+                    RoomHistory history = historyOf(msg.getRoomId());
+                    boolean created;
+                    // Join and replay atomically with respect to broadcasts, so no live message overtakes the replay.
+                    synchronized (history) {
+                        created = joinRoom(conn, msg.getRoomId());
+                        replayHistory(conn, msg.getRoomId(), history, msg.getResumeFrom(), msg.getEpoch());
+                    }
+                    if (created) {
+                        // Let peers know they must forward this room's frames to us.
+                        announceMembership(msg.getRoomId());
+                    }
+                }
+            } else {
+                // Determine the correct room based on the authenticated session, not the payload.
+                String sessionRoomId = connectionRoomMap.get(conn);
+                if (sessionRoomId != null) {
+                    if ("attack".equalsIgnoreCase(msg.getType())) {
+                        // Inject the trusted room ID into the message for internal handling
+                        msg.setRoomId(sessionRoomId);
+                        // If this server is also the worker (Desktop App hosting relay), handle the attack.
+                        handleAttack(msg);
+                    }
+                    // The core relay function: Broadcast the message to everyone else in the room.
+                    broadcastToRoom(conn, sessionRoomId, message);
+                } else {
+                    // Client tried to send a message without joining a room first.
+                    // Silently ignore or log warning.
+                    onStatusUpdate.accept("Warning: Client tried to send message without joining a room.");
+                }
+            }
+
+        } catch (JsonSyntaxException e) {
+            System.err.println("Failed to parse message: " + message);
+            onStatusUpdate.accept("Error: Received a malformed message from a client.");
+        }
+    }
+
+    /**
+     * Called by the transport when a binary message is received. Binary frames are relayed to the sender's
+     * room as-is.
+     *
+     * @param conn    The sender.
+     * @param message The frame payload; must not be reused by the transport afterwards.
+     */
+    public void onMessage(RelayConnection conn, ByteBuffer message) {
+        BINARY_RECEIVED.inc();
+        BINARY_BYTES_RECEIVED.add(message.remaining());
+        mailboxPending.incrementAndGet();
+        boolean queued = conn.getMailbox().tryExecute(() -> {
+            mailboxPending.decrementAndGet();
+            handleBinaryMessage(conn, message);
+        });
+        if (!queued) {
+            mailboxOverflow(conn);
+        }
+    }
+
+    /**
+     * Disconnects a client whose mailbox is full. Its queued messages are still handled; the transport's
+     * close callback then removes it from its room.
+     *
+     * @param conn The flooding connection.
+     */
+    private void mailboxOverflow(RelayConnection conn) {
+        mailboxPending.decrementAndGet();
+        if (conn.isOpen()) {
+            MAILBOX_OVERFLOWS.inc();
+            onStatusUpdate.accept("Dropping client " + conn.getRemoteSocketAddress() + ": more than "
+                    + MAILBOX_CAPACITY + " messages waiting.");
+            conn.close();
+        }
+    }
+
+    /**
+     * Relays a binary frame on the sender's mailbox.
+     *
+     * @param conn    The sender.
+     * @param message The frame payload.
+     */
+    private void handleBinaryMessage(RelayConnection conn, ByteBuffer message) {
+        String sessionRoomId = connectionRoomMap.get(conn);
+        if (sessionRoomId == null) {
+            onStatusUpdate.accept("Warning: Client tried to send binary data without joining a room.");
+            return;
+        }
+        broadcastBinaryToRoom(conn, sessionRoomId, message);
+    }
+
+    /**
+     * Handles an incoming "attack" message by initiating a local Hashcat process.
+     * This allows the Relay Server to also function as an attack node.
+     * It runs on the sender's mailbox, so writing the temporary hash file and spawning Hashcat never stall
+     * the transport's I/O threads.
+     *
+     * @param msg The attack configuration message.
+     */
+    private void handleAttack(Message msg) {
+        // Store the room ID so we know where to send the result later.
+        this.currentAttackingRoomId = msg.getRoomId();
+        onStatusUpdate.accept("Starting attack from relay on hash: " + msg.getHash());
+        try {
+            // Define default attack parameters (currently hardcoded for MVP).
+            String attackMode = "Dictionary";
+            String wordlistPath = "/app/test-hashes-short.txt"; // Test wordlist location
+
+            // Start the attack.
+            hashcatManager.startAttackWithString(msg.getHash(), msg.getMode(), attackMode, wordlistPath, null);
+        } catch (IOException e) {
+            onStatusUpdate.accept("Error starting hashcat: " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Broadcasts a cracked password to all clients in the active room.
+     * <p>
+     * This method is intended to be called by the `onPasswordCracked` callback passed to the constructor.
+     * </p>
+     *
+     * @param password The recovered password.
+     */
+    private void broadcastCrackedPassword(String password) {
+        if (currentAttackingRoomId != null) {
+            // Construct the success message.
+            Message response = new Message();
+            response.setType("cracked");
+            response.setRoomId(currentAttackingRoomId);
+            response.setPayload(password);
+            String jsonResponse = gson.toJson(response);
+
+            System.out.println("Broadcasting cracked password to room " + currentAttackingRoomId);
+            // Send to all clients (no sender to exclude), including members on peer nodes.
+            broadcastToRoom(null, currentAttackingRoomId, jsonResponse);
+        }
+    }
+
+    /**
+     * Called by the transport for server-level or connection errors.
+     *
+     * @param conn The connection associated with the error (if any).
+     * @param ex   The exception.
+     */
+    public void onError(RelayConnection conn, Exception ex) {
+        ex.printStackTrace();
+        onStatusUpdate.accept("Server Error: " + ex.getMessage());
+        EventJournal.getDefault().record(EventType.ERROR, "relay", conn != null ? connectionRoomMap.get(conn) : null,
+                "Server Error: " + ex);
+        if (conn != null) {
+            // Clean up the connection if it's faulted.
+            conn.getMailbox().execute(() -> removeConnectionFromAllRooms(conn));
+        }
+    }
+
+    /**
+     * Called by the transport once it is listening. Starts the idle-history sweep and joins the cluster in cluster
+     * mode.
+     */
+    public synchronized void start() {
+        maintenance = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "relay-maintenance");
+            t.setDaemon(true);
+            return t;
+        });
+        maintenance.scheduleWithFixedDelay(this::expireIdleHistories, HISTORY_SWEEP_INTERVAL_MS,
+                HISTORY_SWEEP_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        if (clusterBus != null) {
+            startCluster();
+        }
+    }
+
+    /**
+     * Called by the transport when it stops. Stops the sweep and, in cluster mode, leaves the cluster so peers drop
+     * this node immediately.
+     */
+    public synchronized void stop() {
+        if (maintenance != null) {
+            maintenance.shutdownNow();
+            maintenance = null;
+        }
+        if (clusterBus != null) {
+            clusterBus.close();
+        }
+    }
+
+    /**
+     * Connects the cluster bus and places this node on the hash ring.
+     */
+    private void startCluster() {
+        ring.addNode(clusterBus.getLocalNodeId());
+        try {
+            clusterBus.start(new ClusterListener());
+            onStatusUpdate.accept("Cluster mode enabled. Node ID: " + clusterBus.getLocalNodeId());
+        } catch (IOException e) {
+            onStatusUpdate.accept("Error starting cluster bus: " + e.getMessage() + ". Running as a single node.");
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Returns the home node of a room according to the consistent hash ring.
+     *
+     * @param roomId The room ID.
+     * @return The owning node ID, or null when not running in cluster mode.
+     */
+    public String getHomeNode(String roomId) {
+        return clusterBus != null ? ring.nodeFor(roomId) : null;
+    }
+
+    /**
+     * Adds a client to a specific room.
+     *
+     * @param conn   The client's connection.
+     * @param roomId The target room ID.
+     * @return true if the room was created, so the cluster must be told this node now hosts it.
+     */
+    private boolean joinRoom(RelayConnection conn, String roomId) {
+        // Add to the new room, creating the Set if it doesn't exist.
+        boolean[] created = new boolean[1];
+        rooms.compute(roomId, (k, clients) -> {
+            if (clients == null) {
+                clients = Collections.newSetFromMap(new ConcurrentHashMap<>());
+                created[0] = true;
+            }
+            clients.add(conn);
+            return clients;
+        });
+
+        // Map the connection to the room ID for secure lookup later.
+        connectionRoomMap.put(conn, roomId);
+
+        System.out.println("Client " + conn.getRemoteSocketAddress() + " joined room " + roomId);
+        EventJournal.getDefault().record(EventType.RELAY_JOIN, "relay", roomId, String.valueOf(conn.getRemoteSocketAddress()));
+        onStatusUpdate.accept("Client joined room: " + roomId);
+
+        if (clusterBus != null) {
+            sendRedirectHint(conn, roomId);
+        }
+        return created[0];
+    }
+
+    /**
+     * Acknowledges a join and replays the messages the client missed while it was away.
+     *
+     * @param conn       The client's connection.
+     * @param roomId     The joined room.
+     * @param history    The room's history.
+     * @param resumeFrom The last seq the client saw, or null for a fresh join (no replay).
+     *                   Only honoured within this relay's epoch.
+     * @param clientEpoch The relay epoch the client's seq belongs to, or null if unknown.
+     */
+    private void replayHistory(RelayConnection conn, String roomId, RoomHistory history, Long resumeFrom, String clientEpoch) {
+        // The acknowledgement tells the client which epoch (and current seq) to resume against next time.
+        Message joined = new Message();
+        joined.setType("joined");
+        joined.setRoomId(roomId);
+        joined.setEpoch(epoch);
+        joined.setSeq(history.getLastSeq());
+        sendTo(conn, gson.toJson(joined));
+
+        if (resumeFrom == null) {
+            return;
+        }
+        if (!epoch.equals(clientEpoch)) {
+            // A seq from another epoch is meaningless here, and replaying the whole buffer would re-run old
+            // "attack" commands. Report what we hold as a gap instead; the client resumes from the ack's seq.
+            if (history.getLastSeq() > 0) {
+                Message gap = new Message();
+                gap.setType("history_gap");
+                gap.setRoomId(roomId);
+                gap.setPayload(history.getOldestSeq() + "-" + history.getLastSeq());
+                sendTo(conn, gson.toJson(gap));
+            }
+            return;
+        }
+        long afterSeq = Math.max(0, resumeFrom);
+        List<String> missed = history.since(afterSeq);
+        if (history.getOldestSeq() > afterSeq + 1 && afterSeq > 0) {
+            // Some messages were already overwritten; tell the client so it can rescan instead of trusting the replay.
+            Message gap = new Message();
+            gap.setType("history_gap");
+            gap.setRoomId(roomId);
+            gap.setPayload((afterSeq + 1) + "-" + (history.getOldestSeq() - 1));
+            sendTo(conn, gson.toJson(gap));
+        }
+        for (String message : missed) {
+            sendTo(conn, message);
+        }
+        if (!missed.isEmpty()) {
+            onStatusUpdate.accept("Replayed " + missed.size() + " message(s) to client in room: " + roomId);
+        }
+    }
+
+    /**
+     * Discards the histories of rooms that have been empty and idle for longer than the expiry window. Runs every
+     * {@link #HISTORY_SWEEP_INTERVAL_MS} while the core is started.
+     */
+    private void expireIdleHistories() {
+        long cutoff = System.currentTimeMillis() - HISTORY_IDLE_EXPIRY_MS;
+        histories.entrySet().removeIf(entry ->
+                !rooms.containsKey(entry.getKey()) && entry.getValue().getLastActivityMillis() < cutoff);
+    }
+
+    /**
+     * Returns the history of a room, creating it if needed. Its monitor orders the room's deliveries.
+     *
+     * @param roomId The room.
+     * @return The room's history.
+     */
+    private RoomHistory historyOf(String roomId) {
+        return histories.computeIfAbsent(roomId, k -> new RoomHistory());
+    }
+
+    /**
+     * Assigns the next seq of a room to a message and records it in the room's history.
+     *
+     * @param history The room's history.
+     * @param message The raw JSON message.
+     * @return The message text with its {@code seq} field set.
+     */
+    private String recordInHistory(RoomHistory history, String message) {
+        return history.append(seq -> {
+            try {
+                JsonObject json = JsonParser.parseString(message).getAsJsonObject();
+                json.addProperty("seq", seq);
+                return gson.toJson(json);
+            } catch (RuntimeException e) {
+                // Not a JSON object (should not happen, it was parsed on receipt): store it unstamped.
+                return message;
+            }
+        });
+    }
+
+    /**
+     * Tells a client which node is the home of its room, if that is not this node.
+     *
+     * @param conn   The client's connection.
+     * @param roomId The room the client joined.
+     */
+    private void sendRedirectHint(RelayConnection conn, String roomId) {
+        String homeNode = ring.nodeFor(roomId);
+        if (homeNode == null || homeNode.equals(clusterBus.getLocalNodeId())) {
+            return;
+        }
+        String homeUrl = clusterBus.getAdvertisedUrl(homeNode);
+        if (homeUrl != null) {
+            Message redirect = new Message();
+            redirect.setType("redirect");
+            redirect.setRoomId(roomId);
+            redirect.setPayload(homeUrl);
+            sendTo(conn, gson.toJson(redirect));
+        }
+    }
+
+    /**
+     * Relays a message to all other peers in the room.
+     *
+     * @param sender  The connection that originated the message (will not receive the echo).
+     * @param roomId  The room to broadcast to.
+     * @param message The raw message string.
+     */
+    private void broadcastToRoom(RelayConnection sender, String roomId, String message) {
+        long start = System.nanoTime();
+        RoomHistory history = historyOf(roomId);
+        // Sends only enqueue, so delivering under the lock is cheap and keeps every member in seq order.
+        synchronized (history) {
+            message = recordInHistory(history, message);
+            deliverLocally(sender, roomId, message);
+        }
+        BROADCAST_TIME.recordSince(start);
+
+        // In cluster mode, forward once to each peer node hosting members of this room.
+        if (clusterBus != null) {
+            Set<String> nodes = remoteRoomNodes.get(roomId);
+            if (nodes != null) {
+                for (String nodeId : nodes) {
+                    clusterBus.forward(nodeId, roomId, message);
+                }
+            }
+        }
+    }
+
+    /**
+     * Relays a binary frame to all other peers in the room, without recording it in the history.
+     *
+     * @param sender  The connection that originated the frame.
+     * @param roomId  The room to broadcast to.
+     * @param message The frame payload.
+     */
+    private void broadcastBinaryToRoom(RelayConnection sender, String roomId, ByteBuffer message) {
+        deliverBinaryLocally(sender, roomId, message);
+
+        if (clusterBus != null) {
+            Set<String> nodes = remoteRoomNodes.get(roomId);
+            if (nodes != null && !nodes.isEmpty()) {
+                // The bus takes a stable array; copy once for all peer nodes.
+                byte[] data = new byte[message.remaining()];
+                message.duplicate().get(data);
+                for (String nodeId : nodes) {
+                    clusterBus.forwardBinary(nodeId, roomId, data);
+                }
+            }
+        }
+    }
+
+    /**
+     * Sends a binary frame to every open local client in a room except the sender.
+     *
+     * @param sender  The originating connection, or null for frames forwarded by a peer node.
+     * @param roomId  The room to deliver to.
+     * @param message The frame payload.
+     */
+    private void deliverBinaryLocally(RelayConnection sender, String roomId, ByteBuffer message) {
+        Set<RelayConnection> clients = rooms.get(roomId);
+        if (clients != null) {
+            // One outbound message for the whole room, so the transport can encode it once.
+            int size = message.remaining();
+            OutboundMessage outbound = OutboundMessage.binary(message);
+            int recipients = 0;
+            try {
+                for (RelayConnection client : clients) {
+                    if (client != null && client.isOpen() && !client.equals(sender)) {
+                        client.send(outbound);
+                        recipients++;
+                    }
+                }
+            } finally {
+                outbound.release();
+            }
+            BINARY_DELIVERED.add(recipients);
+            BINARY_BYTES_DELIVERED.add((long) recipients * size);
+        }
+    }
+
+    /**
+     * Sends a message to every open local client in a room except the sender.
+     *
+     * @param sender  The originating connection, or null for frames forwarded by a peer node.
+     * @param roomId  The room to deliver to.
+     * @param message The raw message string.
+     */
+    private void deliverLocally(RelayConnection sender, String roomId, String message) {
+        Set<RelayConnection> clients = rooms.get(roomId);
+        if (clients != null) {
+            // One outbound message for the whole room, so the transport can encode it once.
+            OutboundMessage outbound = OutboundMessage.text(message);
+            int recipients = 0;
+            try {
+                for (RelayConnection client : clients) {
+                    // Check if client is valid, open, and NOT the sender.
+                    if (client != null && client.isOpen() && !client.equals(sender)) {
+                        client.send(outbound);
+                        recipients++;
+                    }
+                }
+            } finally {
+                outbound.release();
+            }
+            TEXT_DELIVERED.add(recipients);
+            TEXT_BYTES_DELIVERED.add((long) recipients * message.length());
+        }
+    }
+
+    /**
+     * Sends a single text message to one connection.
+     *
+     * @param conn    The recipient.
+     * @param message The message text.
+     */
+    private void sendTo(RelayConnection conn, String message) {
+        OutboundMessage outbound = OutboundMessage.text(message);
+        try {
+            conn.send(outbound);
+        } finally {
+            outbound.release();
+        }
+    }
+
+    /**
+     * Removes a connection from all rooms.
+     * Called on disconnect or when switching rooms.
+     *
+     * @param conn The connection to remove.
+     */
+    private void removeConnectionFromAllRooms(RelayConnection conn) {
+        // Use the map for O(1) lookup of the room ID.
+        String roomId = connectionRoomMap.remove(conn);
+
+        if (roomId != null) {
+            boolean[] emptied = new boolean[1];
+            rooms.computeIfPresent(roomId, (k, roomClients) -> {
+                roomClients.remove(conn);
+                // If the room is now empty, remove the room entry entirely to save memory.
+                emptied[0] = roomClients.isEmpty();
+                return emptied[0] ? null : roomClients;
+            });
+            System.out.println("Client " + conn.getRemoteSocketAddress() + " removed from room " + roomId);
+            EventJournal.getDefault().record(EventType.RELAY_LEAVE, "relay", roomId, String.valueOf(conn.getRemoteSocketAddress()));
+            if (emptied[0]) {
+                announceMembership(roomId);
+            }
+        }
+    }
+
+    /**
+     * Tells the cluster whether this node currently hosts members of a room.
+     * <p>
+     * Called after a room is created or emptied, outside the map update, so a slow peer link never holds up the
+     * room table. The room's current state is re-read under its stripe lock, which keeps a join and a leave that
+     * race each other from reaching peers in the wrong order: whichever runs last announces the final state.
+     * </p>
+     *
+     * @param roomId The room whose membership changed.
+     */
+    private void announceMembership(String roomId) {
+        if (clusterBus == null) {
+            return;
+        }
+        synchronized (announceLocks[Math.floorMod(roomId.hashCode(), announceLocks.length)]) {
+            if (rooms.containsKey(roomId)) {
+                clusterBus.announceJoin(roomId);
+            } else {
+                clusterBus.announceLeave(roomId);
+            }
+        }
+    }
+
+    /**
+     * Applies cluster events from the bus to this node's routing state.
+     */
+    private class ClusterListener implements ClusterBus.Listener {
+
+        @Override
+        public void onNodeUp(String nodeId) {
+            ring.addNode(nodeId);
+        }
+
+        @Override
+        public void onNodeDown(String nodeId) {
+            ring.removeNode(nodeId);
+            // Drop every membership of the dead node; its clients will rejoin through another node.
+            for (Map.Entry<String, Set<String>> entry : new ArrayList<>(remoteRoomNodes.entrySet())) {
+                onRemoteLeave(nodeId, entry.getKey());
+            }
+        }
+
+        @Override
+        public void onRemoteJoin(String nodeId, String roomId) {
+            remoteRoomNodes.computeIfAbsent(roomId, k -> ConcurrentHashMap.newKeySet()).add(nodeId);
+        }
+
+        @Override
+        public void onRemoteLeave(String nodeId, String roomId) {
+            remoteRoomNodes.computeIfPresent(roomId, (k, nodes) -> {
+                nodes.remove(nodeId);
+                return nodes.isEmpty() ? null : nodes;
+            });
+        }
+
+        @Override
+        public void onFrame(String nodeId, String roomId, String message) {
+            // Frames from peers are only delivered locally; re-forwarding would loop around the mesh.
+            // They are re-stamped with this node's seq, since our clients resume against our history.
+            RoomHistory history = historyOf(roomId);
+            synchronized (history) {
+                deliverLocally(null, roomId, recordInHistory(history, message));
+            }
+        }
+
+        @Override
+        public void onBinaryFrame(String nodeId, String roomId, byte[] data) {
+            deliverBinaryLocally(null, roomId, ByteBuffer.wrap(data));
+        }
+    }
+
+    /**
+     * DTO for JSON messages.
+     */
+    private static class Message {
+        private String type;
+        private String roomId;
+        private String hash;
+        private String mode;
+        private String payload;
+        /** Per-room sequence number (set on "joined" acknowledgements; relayed messages carry it in their JSON). */
+        private Long seq;
+        /** On "join": the last seq the client received, to request a replay. */
+        private Long resumeFrom;
+        /** The relay epoch a seq belongs to. */
+        private String epoch;
+
+        public String getType() { return type; }
+        public void setType(String type) { this.type = type; }
+        public String getRoomId() { return roomId; }
+        public void setRoomId(String roomId) { this.roomId = roomId; }
+        public String getHash() { return hash; }
+        public String getMode() { return mode; }
+        public void setPayload(String payload) { this.payload = payload; }
+        public String getPayload() { return payload; }
+        public void setSeq(Long seq) { this.seq = seq; }
+        public Long getResumeFrom() { return resumeFrom; }
+        public String getEpoch() { return epoch; }
+        public void setEpoch(String epoch) { this.epoch = epoch; }
+    }
+}
@@ -1,18 +1,17 @@
 package hashkitty.java.server;
 
-import com.google.gson.Gson;
-import com.google.gson.JsonSyntaxException;
-import hashkitty.java.hashcat.HashcatManager;
+import hashkitty.java.server.cluster.ClusterBus;
+import hashkitty.java.util.ExecutorUtil;
+import hashkitty.java.util.SerialExecutor;
+import hashkitty.java.util.WebSocketUtil;
 import org.java_websocket.WebSocket;
+import org.java_websocket.exceptions.WebsocketNotConnectedException;
+import org.java_websocket.framing.CloseFrame;
 import org.java_websocket.handshake.ClientHandshake;
 import org.java_websocket.server.WebSocketServer;
 
-import java.io.IOException;
 import java.net.InetSocketAddress;
-import java.util.Collections;
-import java.util.Map;
-import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
+import java.nio.ByteBuffer;
 import java.util.function.Consumer;
 
 /**
@@ -25,42 +24,17 @@ import java.util.function.Consumer;
  * a direct peer-to-peer connection (which is often blocked by NATs/Firewalls).
  * </p>
  * <p>
- * <b>Logic Flow:</b>
- * <ol>
- *     <li>Clients connect via WebSocket.</li>
- *     <li>Client sends a "join" message with a {@code roomId}.</li>
- *     <li>Server validates and associates the client connection with that room.</li>
- *     <li>When a client sends a message, the server broadcasts it to all *other* clients in that room (enforcing the room associated with the session).</li>
- * </ol>
+ * This class is the Java-WebSocket transport of the relay: it accepts connections (negotiating per-message
+ * deflate), and forwards every event to a {@link RelayCore}, which holds the rooms, replay history and cluster
+ * routing. See {@link hashkitty.java.server.nio.NioRelayServer} for the alternative selector-based transport.
  * </p>
  */
 public class RelayServer extends WebSocketServer {
 
     /**
-     * Stores the active rooms and their connected clients.
-     * Key: Room ID (String).
-     * Value: A thread-safe Set of WebSocket connections.
+     * The transport-independent relay logic.
      */
-    private final Map<String, Set<WebSocket>> rooms = new ConcurrentHashMap<>();
-
-    /**
-     * Stores the room ID associated with each WebSocket connection.
-     * Key: WebSocket connection.
-     * Value: Room ID (String).
-     */
-    private final Map<WebSocket, String> connectionRoomMap = new ConcurrentHashMap<>();
-
-    /**
-     * Gson instance for JSON operations.
-     */
-    private final Gson gson = new Gson();
-
-    /**
-     * Manager for Hashcat operations.
-     * NOTE: In a pure relay scenario (cloud hosted), this might not be used directly,
-     * but if the Desktop App hosts the relay, it can also act as a worker directly.
-     */
-    private final HashcatManager hashcatManager;
+    private final RelayCore core;
 
     /**
      * Callback for general status logging.
@@ -68,22 +42,29 @@ public class RelayServer extends WebSocketServer {
     private final Consumer<String> onStatusUpdate;
 
     /**
-     * Tracks the room ID currently running an attack (if this instance is handling the attack locally).
+     * Constructs a new single-node RelayServer.
+     *
+     * @param port              The TCP port to listen on.
+     * @param onStatusUpdate    Callback for logging status messages.
+     * @param onPasswordCracked Callback for when a password is recovered (if running locally).
      */
-    private String currentAttackingRoomId;
+    public RelayServer(int port, Consumer<String> onStatusUpdate, Consumer<String> onPasswordCracked) {
+        this(port, onStatusUpdate, onPasswordCracked, null);
+    }
 
     /**
-     * Constructs a new RelayServer.
+     * Constructs a new RelayServer that optionally participates in a cluster.
      *
      * @param port              The TCP port to listen on.
      * @param onStatusUpdate    Callback for logging status messages.
      * @param onPasswordCracked Callback for when a password is recovered (if running locally).
+     * @param clusterBus        The cluster transport, or null to run as a single node.
      */
-    public RelayServer(int port, Consumer<String> onStatusUpdate, Consumer<String> onPasswordCracked) {
-        super(new InetSocketAddress(port));
+    public RelayServer(int port, Consumer<String> onStatusUpdate, Consumer<String> onPasswordCracked, ClusterBus clusterBus) {
+        // Offer per-message deflate so large attack payloads and crack bursts are compressed on the wire.
+        super(new InetSocketAddress(port), WebSocketUtil.serverDrafts());
         this.onStatusUpdate = onStatusUpdate;
-        // Initialize HashcatManager for local execution capability.
-        this.hashcatManager = new HashcatManager(onPasswordCracked, onStatusUpdate, null);
+        this.core = new RelayCore(onStatusUpdate, onPasswordCracked, clusterBus);
     }
 
     /**
@@ -94,8 +75,7 @@ public class RelayServer extends WebSocketServer {
      */
     @Override
     public void onOpen(WebSocket conn, ClientHandshake handshake) {
-        System.out.println("New connection: " + conn.getRemoteSocketAddress());
-        onStatusUpdate.accept("Client connected: " + conn.getRemoteSocketAddress());
+        core.onOpen(connectionOf(conn));
     }
 
     /**
@@ -108,10 +88,7 @@ public class RelayServer extends WebSocketServer {
      */
     @Override
     public void onClose(WebSocket conn, int code, String reason, boolean remote) {
-        System.out.println("Closed connection: " + conn.getRemoteSocketAddress());
-        onStatusUpdate.accept("Client disconnected: " + conn.getRemoteSocketAddress());
-        // Ensure the client is removed from any rooms they were in to prevent memory leaks or stale delivery.
-        removeConnectionFromAllRooms(conn);
+        core.onClose(connectionOf(conn));
     }
 
     /**
@@ -122,93 +99,19 @@ public class RelayServer extends WebSocketServer {
      */
     @Override
     public void onMessage(WebSocket conn, String message) {
-        try {
-            // Parse the message.
-            Message msg = gson.fromJson(message, Message.class);
-
-            // Handle specific command types.
-            if ("join".equalsIgnoreCase(msg.getType())) {
-                // Client requesting to join a room.
-                if (msg.getRoomId() != null && !msg.getRoomId().isEmpty()) {
-                    joinRoom(conn, msg.getRoomId());
-                }
-            } else {
-                // Determine the correct room based on the authenticated session, not the payload.
-                String sessionRoomId = connectionRoomMap.get(conn);
-                if (sessionRoomId != null) {
-                    if ("attack".equalsIgnoreCase(msg.getType())) {
-                        // Inject the trusted room ID into the message for internal handling
-                        msg.setRoomId(sessionRoomId);
-                        // If this server is also the worker (Desktop App hosting relay), handle the attack.
-                        handleAttack(msg);
-                    }
-                    // The core relay function: Broadcast the message to everyone else in the room.
-                    broadcastToRoom(conn, sessionRoomId, message);
-                } else {
-                    // Client tried to send a message without joining a room first.
-                    // Silently ignore or log warning.
-                    onStatusUpdate.accept("Warning: Client tried to send message without joining a room.");
-                }
-            }
-
-        } catch (JsonSyntaxException e) {
-            System.err.println("Failed to parse message: " + message);
-            onStatusUpdate.accept("Error: Received a malformed message from a client.");
-        }
+        core.onMessage(connectionOf(conn), message);
     }
 
     /**
-     * Handles an incoming "attack" message by initiating a local Hashcat process.
-     * This allows the Relay Server to also function as an attack node.
+     * Triggered when a binary message is received.
      *
-     * @param msg The attack configuration message.
-     */
-    private void handleAttack(Message msg) {
-        // Store the room ID so we know where to send the result later.
-        this.currentAttackingRoomId = msg.getRoomId();
-        onStatusUpdate.accept("Starting attack from relay on hash: " + msg.getHash());
-        try {
-            // Define default attack parameters (currently hardcoded for MVP).
-            String attackMode = "Dictionary";
-            String wordlistPath = "/app/test-hashes-short.txt"; // Test wordlist location
-
-            // Start the attack.
-            hashcatManager.startAttackWithString(msg.getHash(), msg.getMode(), attackMode, wordlistPath, null);
-        } catch (IOException e) {
-            onStatusUpdate.accept("Error starting hashcat: " + e.getMessage());
-            e.printStackTrace();
-        }
-    }
-
-    /**
-     * Broadcasts a cracked password to all clients in the active room.
-     * <p>
-     * This method is intended to be called by the `onPasswordCracked` callback passed to the constructor.
-     * </p>
-     *
-     * @param password The recovered password.
+     * @param conn    The sender.
+     * @param message The frame payload.
      */
-    private void broadcastCrackedPassword(String password) {
-        if (currentAttackingRoomId != null) {
-            // Construct the success message.
-            Message response = new Message();
-            response.setType("cracked");
-            response.setRoomId(currentAttackingRoomId);
-            response.setPayload(password);
-            String jsonResponse = gson.toJson(response);
-
-            // Find the clients in the room.
-            Set<WebSocket> clients = rooms.get(currentAttackingRoomId);
-            if (clients != null) {
-                System.out.println("Broadcasting cracked password to room " + currentAttackingRoomId);
-                // Send to all clients.
-                for (WebSocket client : clients) {
-                    if (client != null && client.isOpen()) {
-                        client.send(jsonResponse);
-                    }
-                }
-            }
-        }
+    @Override
+    public void onMessage(WebSocket conn, ByteBuffer message) {
+        // The decoder allocates a fresh buffer per frame, so it can be handed to another thread as-is.
+        core.onMessage(connectionOf(conn), message);
     }
 
     /**
@@ -219,12 +122,7 @@ public class RelayServer extends WebSocketServer {
      */
     @Override
     public void onError(WebSocket conn, Exception ex) {
-        ex.printStackTrace();
-        onStatusUpdate.accept("Server Error: " + ex.getMessage());
-        if (conn != null) {
-            // Clean up the connection if it's faulted.
-            removeConnectionFromAllRooms(conn);
-        }
+        core.onError(conn != null ? connectionOf(conn) : null, ex);
     }
 
     /**
@@ -234,89 +132,94 @@ public class RelayServer extends WebSocketServer {
     public void onStart() {
         System.out.println("Relay server started on port " + getPort());
         onStatusUpdate.accept("Relay server started on port " + getPort());
+        core.start();
     }
 
     /**
-     * Adds a client to a specific room.
+     * Stops the server and, in cluster mode, leaves the cluster so peers drop this node immediately.
      *
-     * @param conn   The client's connection.
-     * @param roomId The target room ID.
+     * @param timeout Milliseconds to wait for connections to close.
+     * @throws InterruptedException If interrupted while waiting.
      */
-    private void joinRoom(WebSocket conn, String roomId) {
-        // Ensure client isn't in multiple rooms simultaneously (simplifies logic).
-        removeConnectionFromAllRooms(conn);
-
-        // Add to the new room, creating the Set if it doesn't exist.
-        // computeIfAbsent is atomic, ensuring thread safety.
-        rooms.computeIfAbsent(roomId, k -> Collections.newSetFromMap(new ConcurrentHashMap<>())).add(conn);
-
-        // Map the connection to the room ID for secure lookup later.
-        connectionRoomMap.put(conn, roomId);
-
-        System.out.println("Client " + conn.getRemoteSocketAddress() + " joined room " + roomId);
-        onStatusUpdate.accept("Client joined room: " + roomId);
+    @Override
+    public void stop(int timeout) throws InterruptedException {
+        core.stop();
+        super.stop(timeout);
     }
 
     /**
-     * Relays a message to all other peers in the room.
+     * Returns the home node of a room according to the consistent hash ring.
      *
-     * @param sender  The connection that originated the message (will not receive the echo).
-     * @param roomId  The room to broadcast to.
-     * @param message The raw message string.
+     * @param roomId The room ID.
+     * @return The owning node ID, or null when not running in cluster mode.
      */
-    private void broadcastToRoom(WebSocket sender, String roomId, String message) {
-        Set<WebSocket> clients = rooms.get(roomId);
-        if (clients != null) {
-            for (WebSocket client : clients) {
-                // Check if client is valid, open, and NOT the sender.
-                if (client != null && client.isOpen() && !client.equals(sender)) {
-                    client.send(message);
+    public String getHomeNode(String roomId) {
+        return core.getHomeNode(roomId);
+    }
+
+    /**
+     * Returns the relay connection wrapping a WebSocket, stored as the socket's attachment.
+     *
+     * @param conn The WebSocket.
+     * @return Its wrapper (created on demand if a callback arrives before {@link #onOpen}).
+     */
+    private RelayConnection connectionOf(WebSocket conn) {
+        WebSocketConnection wrapper = conn.getAttachment();
+        if (wrapper == null) {
+            synchronized (conn) {
+                wrapper = conn.getAttachment();
+                if (wrapper == null) {
+                    wrapper = new WebSocketConnection(conn);
+                    conn.setAttachment(wrapper);
                 }
             }
         }
+        return wrapper;
     }
 
     /**
-     * Removes a connection from all rooms.
-     * Called on disconnect or when switching rooms.
-     *
-     * @param conn The connection to remove.
+     * Adapts a Java-WebSocket connection to the {@link RelayConnection} interface.
+     * Java-WebSocket encodes each send itself, so the shared encoded form of {@link OutboundMessage} is unused.
      */
-    private void removeConnectionFromAllRooms(WebSocket conn) {
-        // Use the map for O(1) lookup of the room ID.
-        String roomId = connectionRoomMap.remove(conn);
+    private static class WebSocketConnection implements RelayConnection {
+        private final WebSocket socket;
+        private final SerialExecutor mailbox = new SerialExecutor(ExecutorUtil.sharedTaskExecutor(), RelayCore.MAILBOX_CAPACITY);
 
-        if (roomId != null) {
-            Set<WebSocket> roomClients = rooms.get(roomId);
-            if (roomClients != null) {
-                roomClients.remove(conn);
-                System.out.println("Client " + conn.getRemoteSocketAddress() + " removed from room " + roomId);
+        WebSocketConnection(WebSocket socket) {
+            this.socket = socket;
+        }
 
-                // If the room is now empty, remove the room entry entirely to save memory.
-                if (roomClients.isEmpty()) {
-                    rooms.remove(roomId);
+        @Override
+        public void send(OutboundMessage message) {
+            try {
+                if (message.isText()) {
+                    socket.send(message.getText());
+                } else {
+                    socket.send(message.getBinary());
                 }
+            } catch (WebsocketNotConnectedException e) {
+                // Closed between the core's isOpen() check and the send; onClose will clean up.
             }
         }
-    }
 
-    /**
-     * DTO for JSON messages.
-     */
-    private static class Message {
-        private String type;
-        private String roomId;
-        private String hash;
-        private String mode;
-        private String payload;
+        @Override
+        public boolean isOpen() {
+            return socket.isOpen();
+        }
+
+        @Override
+        public InetSocketAddress getRemoteSocketAddress() {
+            return socket.getRemoteSocketAddress();
+        }
 
-        public String getType() { return type; }
-        public void setType(String type) { this.type = type; }
-        public String getRoomId() { return roomId; }
-        public void setRoomId(String roomId) { this.roomId = roomId; }
-        public String getHash() { return hash; }
-        public String getMode() { return mode; }
-        public void setPayload(String payload) { this.payload = payload; }
-        public String getPayload() { return payload; }
+        @Override
+        public void close() {
+            socket.close(CloseFrame.POLICY_VALIDATION, "Too many messages waiting");
+        }
+
+        @Override
+        public SerialExecutor getMailbox() {
+            return mailbox;
+        }
     }
 }
@@ -0,0 +1,126 @@
+package hashkitty.java.server;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A bounded ring buffer of the most recent messages relayed in a single room.
+ * <p>
+ * Every appended message is assigned the next value of a monotonically increasing sequence number
+ * (starting at 1). A client that reconnects after a network drop tells the relay the last sequence
+ * number it saw, and the relay replays exactly the messages that came after it, as long as they are
+ * still in the buffer. Older messages are overwritten once the buffer is full.
+ * </p>
+ * <p>
+ * This class is thread-safe; all methods are synchronized on the instance.
+ * </p>
+ */
+public class RoomHistory {
+
+    /** Default number of messages kept per room. */
+    public static final int DEFAULT_CAPACITY = 512;
+
+    /** The stored messages, indexed by {@code seq % capacity}. */
+    private final String[] messages;
+
+    /** The sequence number of the most recently appended message (0 if none). */
+    private long lastSeq;
+
+    /** Wall-clock time of the last append or replay, used to expire idle rooms. */
+    private long lastActivityMillis = System.currentTimeMillis();
+
+    /**
+     * Constructs a history with {@link #DEFAULT_CAPACITY} slots.
+     */
+    public RoomHistory() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Constructs a history with a custom number of slots.
+     *
+     * @param capacity The maximum number of messages kept (must be positive).
+     */
+    public RoomHistory(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        this.messages = new String[capacity];
+    }
+
+    /**
+     * Reserves the next sequence number and stores the message produced for it.
+     * <p>
+     * The message is built by the caller from the sequence number (so it can embed it), while the
+     * lock is held, which guarantees that sequence order equals storage order.
+     * </p>
+     *
+     * @param builder Produces the stored message text for the assigned sequence number.
+     * @return The stored message text.
+     */
+    public synchronized String append(SequencedMessageBuilder builder) {
+        long seq = lastSeq + 1;
+        String message = builder.build(seq);
+        messages[(int) (seq % messages.length)] = message;
+        lastSeq = seq;
+        lastActivityMillis = System.currentTimeMillis();
+        return message;
+    }
+
+    /**
+     * Returns the messages with a sequence number strictly greater than {@code afterSeq}, oldest first.
+     * If some of them were already overwritten, only the ones still available are returned;
+     * compare {@link #getOldestSeq()} with {@code afterSeq + 1} to detect the gap.
+     *
+     * @param afterSeq The last sequence number the client received (0 for "everything available").
+     * @return The missed messages in order; empty if the client is up to date.
+     */
+    public synchronized List<String> since(long afterSeq) {
+        lastActivityMillis = System.currentTimeMillis();
+        long from = Math.max(afterSeq + 1, getOldestSeq());
+        List<String> missed = new ArrayList<>((int) Math.max(0, lastSeq - from + 1));
+        for (long seq = from; seq <= lastSeq; seq++) {
+            missed.add(messages[(int) (seq % messages.length)]);
+        }
+        return missed;
+    }
+
+    /**
+     * Returns the sequence number of the most recently appended message.
+     *
+     * @return The last sequence number, or 0 if nothing was appended yet.
+     */
+    public synchronized long getLastSeq() {
+        return lastSeq;
+    }
+
+    /**
+     * Returns the sequence number of the oldest message still in the buffer.
+     *
+     * @return The oldest available sequence number (equal to {@code getLastSeq() + 1} when empty).
+     */
+    public synchronized long getOldestSeq() {
+        return Math.max(1, lastSeq - messages.length + 1);
+    }
+
+    /**
+     * Returns the time of the last append or replay.
+     *
+     * @return Milliseconds since the epoch.
+     */
+    public synchronized long getLastActivityMillis() {
+        return lastActivityMillis;
+    }
+
+    /**
+     * Produces the text stored for a freshly assigned sequence number.
+     */
+    @FunctionalInterface
+    public interface SequencedMessageBuilder {
+        /**
+         * @param seq The assigned sequence number.
+         * @return The message text to store and deliver.
+         */
+        String build(long seq);
+    }
+}
@@ -1,7 +1,24 @@
 package hashkitty.java.server;
 
+import hashkitty.java.journal.EventJournal;
+import hashkitty.java.metrics.MetricsHttpServer;
+import hashkitty.java.metrics.MetricsRegistry;
+import hashkitty.java.server.cluster.ClusterBus;
+import hashkitty.java.server.cluster.PeerMeshClusterBus;
+import hashkitty.java.server.nio.NioRelayServer;
+
 import java.io.BufferedReader;
+import java.io.IOException;
 import java.io.InputStreamReader;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Consumer;
 
 /**
  * The main entry point for running the HashKitty Relay Server as a standalone application.
@@ -14,6 +31,26 @@ import java.io.InputStreamReader;
  * While the Desktop App (`App.java`) starts an embedded Relay Server, this class is used
  * when the user wants to run *only* the relay server (e.g., on a VPS or a headless Raspberry Pi).
  * </p>
+ * <p>
+ * <b>Usage:</b> {@code server [port] [--transport websocket|nio] [--cluster-port N] [--cluster-bind ADDR]
+ * [--cluster-secret S] [--peers host:port,...] [--node-id ID] [--advertise-url ws://...] [--metrics-port N]
+ * [--journal-dir DIR | --no-journal]}
+ * <br>
+ * {@code --transport nio} serves clients with the selector-based {@link NioRelayServer} instead of the default
+ * Java-WebSocket transport; both run the same relay logic.
+ * <br>
+ * Passing {@code --cluster-port} enables cluster mode: the node links to the listed peers' cluster ports
+ * (see {@link PeerMeshClusterBus}) so several instances can share rooms behind a load balancer. Every node needs the
+ * same cluster secret, from {@code --cluster-secret} or the {@code HASHKITTY_CLUSTER_SECRET} environment variable;
+ * peers without it are rejected. {@code --cluster-bind} restricts the cluster port to one address, such as a private
+ * interface.
+ * <br>
+ * {@code --metrics-port} serves the relay's metrics on {@code http://host:N/metrics} in the Prometheus text
+ * format (see {@link MetricsHttpServer}).
+ * <br>
+ * Room joins, leaves and errors are recorded in an {@link EventJournal} under {@code ~/.hashkitty/journal}
+ * (or {@code --journal-dir}); {@code --no-journal} turns it off.
+ * </p>
  */
 public class ServerApp {
 
@@ -30,31 +67,129 @@ public class ServerApp {
     public static void main(String[] args) {
         // Initialize port with the default value.
         int port = DEFAULT_PORT;
+        // Cluster settings; cluster mode is only enabled when a cluster port is given.
+        Integer clusterPort = null;
+        String clusterBind = null;
+        String clusterSecret = System.getenv("HASHKITTY_CLUSTER_SECRET");
+        List<InetSocketAddress> peers = new ArrayList<>();
+        String nodeId = null;
+        String advertisedUrl = null;
+        String transport = "websocket";
+        Integer metricsPort = null;
+        Path journalDir = EventJournal.defaultDirectory();
 
-        // Check if the user provided a custom port number as an argument.
-        if (args.length > 0) {
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
             try {
-                // Attempt to parse the first argument as an integer.
-                port = Integer.parseInt(args[0]);
+                if ("--transport".equals(arg) && i + 1 < args.length) {
+                    transport = args[++i];
+                } else if ("--cluster-port".equals(arg) && i + 1 < args.length) {
+                    clusterPort = Integer.parseInt(args[++i]);
+                } else if ("--cluster-bind".equals(arg) && i + 1 < args.length) {
+                    clusterBind = args[++i];
+                } else if ("--cluster-secret".equals(arg) && i + 1 < args.length) {
+                    clusterSecret = args[++i];
+                } else if ("--peers".equals(arg) && i + 1 < args.length) {
+                    peers = parsePeers(args[++i]);
+                } else if ("--node-id".equals(arg) && i + 1 < args.length) {
+                    nodeId = args[++i];
+                } else if ("--advertise-url".equals(arg) && i + 1 < args.length) {
+                    advertisedUrl = args[++i];
+                } else if ("--metrics-port".equals(arg) && i + 1 < args.length) {
+                    metricsPort = Integer.parseInt(args[++i]);
+                } else if ("--journal-dir".equals(arg) && i + 1 < args.length) {
+                    journalDir = Paths.get(args[++i]);
+                } else if ("--no-journal".equals(arg)) {
+                    journalDir = null;
+                } else if (i == 0) {
+                    // The first positional argument is the port number (kept for backwards compatibility).
+                    port = Integer.parseInt(arg);
+                } else {
+                    System.err.println("Ignoring unknown argument: " + arg);
+                }
             } catch (NumberFormatException e) {
                 // Inform the user if the provided argument wasn't a valid number and fall back to default.
-                System.err.println("Invalid port number provided. Using default port " + DEFAULT_PORT);
+                System.err.println("Invalid number provided for " + arg + ". Using defaults.");
             }
         }
 
         // Log startup message.
         System.out.println("Starting HashKitty Relay Server on port " + port + "...");
 
+        if (journalDir != null) {
+            try {
+                EventJournal.openDefault(journalDir);
+                System.out.println("Recording events in " + journalDir);
+            } catch (IOException e) {
+                System.err.println("Could not open the event journal in " + journalDir + ": " + e.getMessage());
+            }
+        }
+
         // Instantiate the RelayServer with callbacks for logging to stdout.
         // The first lambda handles general status updates.
         // The second lambda handles notifications when a password is successfully cracked.
-        RelayServer server = new RelayServer(port,
-            status -> System.out.println("[Status] " + status),
-            cracked -> System.out.println("[CRACKED] " + cracked)
-        );
+        ClusterBus clusterBus = null;
+        if (clusterPort != null) {
+            if (clusterSecret == null || clusterSecret.isEmpty()) {
+                System.err.println("Cluster mode needs a shared secret: pass --cluster-secret or set HASHKITTY_CLUSTER_SECRET.");
+                System.exit(1);
+            }
+            InetAddress bindAddress = null;
+            if (clusterBind != null) {
+                try {
+                    bindAddress = InetAddress.getByName(clusterBind);
+                } catch (UnknownHostException e) {
+                    System.err.println("Unknown cluster bind address: " + clusterBind);
+                    System.exit(1);
+                }
+            }
+            if (nodeId == null) {
+                nodeId = UUID.randomUUID().toString().substring(0, 8);
+            }
+            System.out.println("Cluster mode: node " + nodeId + ", cluster port " + clusterPort + ", " + peers.size() + " peer(s).");
+            clusterBus = new PeerMeshClusterBus(nodeId, advertisedUrl, bindAddress, clusterPort, peers, clusterSecret,
+                    status -> System.out.println("[Cluster] " + status));
+        }
+
+        Consumer<String> onStatus = status -> System.out.println("[Status] " + status);
+        Consumer<String> onCracked = cracked -> System.out.println("[CRACKED] " + cracked);
+        Runnable stopAction;
+        if ("nio".equalsIgnoreCase(transport)) {
+            NioRelayServer server = new NioRelayServer(port, onStatus, onCracked, clusterBus);
+            try {
+                server.start();
+            } catch (IOException e) {
+                System.err.println("Could not start the NIO relay on port " + port + ": " + e.getMessage());
+                return;
+            }
+            stopAction = server::stop;
+        } else {
+            if (!"websocket".equalsIgnoreCase(transport)) {
+                System.err.println("Unknown transport '" + transport + "'. Using websocket.");
+            }
+            RelayServer server = new RelayServer(port, onStatus, onCracked, clusterBus);
+            // Start the WebSocket server in a separate thread.
+            server.start();
+            stopAction = () -> {
+                try {
+                    server.stop();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            };
+        }
 
-        // Start the WebSocket server in a separate thread.
-        server.start();
+        MetricsHttpServer metricsServer = null;
+        if (metricsPort != null) {
+            try {
+                MetricsRegistry.getDefault().registerJvmMetrics();
+                metricsServer = new MetricsHttpServer(metricsPort, MetricsRegistry.getDefault());
+                metricsServer.start();
+                System.out.println("Metrics available at http://0.0.0.0:" + metricsServer.getPort() + "/metrics");
+            } catch (IOException e) {
+                System.err.println("Could not start the metrics endpoint on port " + metricsPort + ": " + e.getMessage());
+            }
+        }
 
         System.out.println("Server started. Press Enter to stop.");
 
@@ -71,12 +206,41 @@ public class ServerApp {
                 // If running in an interactive console, wait for the user to press Enter.
                 reader.readLine();
                 System.out.println("Stopping server...");
-                // Gracefully stop the WebSocket server.
-                server.stop();
+                // Gracefully stop the server.
+                stopAction.run();
+                if (metricsServer != null) {
+                    metricsServer.stop();
+                }
+                EventJournal.getDefault().close();
             }
         } catch (Exception e) {
             // Catch and print any unexpected exceptions that occur during runtime.
             e.printStackTrace();
         }
     }
+
+    /**
+     * Parses a comma-separated list of "host:port" peer addresses.
+     *
+     * @param value The raw argument (e.g., "10.0.0.2:7001,10.0.0.3:7001").
+     * @return The parsed addresses; malformed entries are skipped with a warning.
+     */
+    private static List<InetSocketAddress> parsePeers(String value) {
+        List<InetSocketAddress> peers = new ArrayList<>();
+        for (String entry : value.split(",")) {
+            String trimmed = entry.trim();
+            int colon = trimmed.lastIndexOf(':');
+            if (colon <= 0) {
+                System.err.println("Ignoring malformed peer address: " + trimmed);
+                continue;
+            }
+            try {
+                peers.add(InetSocketAddress.createUnresolved(trimmed.substring(0, colon),
+                        Integer.parseInt(trimmed.substring(colon + 1))));
+            } catch (IllegalArgumentException e) {
+                System.err.println("Ignoring malformed peer address: " + trimmed);
+            }
+        }
+        return peers;
+    }
 }
@@ -0,0 +1,153 @@
+package hashkitty.java.server.cluster;
+
+import java.io.IOException;
+import java.util.Set;
+
+/**
+ * The transport that links several {@link hashkitty.java.server.RelayServer} instances into a cluster.
+ * <p>
+ * A single relay keeps its rooms in memory, so every member of a room has to be connected to the same
+ * process. In cluster mode each relay node only knows about its own WebSocket clients, and uses the bus to:
+ * <ul>
+ *     <li>Announce which rooms currently have local members ({@link #announceJoin}/{@link #announceLeave}).</li>
+ *     <li>Forward a frame to a specific peer node that hosts members of the same room ({@link #forward},
+ *     {@link #forwardBinary}).</li>
+ *     <li>Learn when peer nodes appear or disappear, so that their memberships can be dropped.</li>
+ * </ul>
+ * </p>
+ * <p>
+ * Implementations must replay the local room set to a peer when a link to it is (re-)established, so that
+ * a restarted node converges without any extra coordination.
+ * </p>
+ */
+public interface ClusterBus extends AutoCloseable {
+
+    /**
+     * Returns the unique ID of the local node on this bus.
+     *
+     * @return The node ID (e.g., "relay-a").
+     */
+    String getLocalNodeId();
+
+    /**
+     * Returns the public WebSocket URL clients should use to reach the local node, if configured.
+     *
+     * @return The advertised URL, or null if none was configured.
+     */
+    String getAdvertisedUrl();
+
+    /**
+     * Connects the bus and starts delivering events to the given listener.
+     *
+     * @param listener The callback receiving membership changes and forwarded frames.
+     * @throws IOException If the underlying transport cannot be started (e.g., the port is taken).
+     */
+    void start(Listener listener) throws IOException;
+
+    /**
+     * Announces that the local node now hosts at least one member of the room.
+     *
+     * @param roomId The room ID.
+     */
+    void announceJoin(String roomId);
+
+    /**
+     * Announces that the local node no longer hosts any member of the room.
+     *
+     * @param roomId The room ID.
+     */
+    void announceLeave(String roomId);
+
+    /**
+     * Sends a relay frame to a peer node so it can deliver it to its local members of the room.
+     *
+     * @param nodeId  The target node ID.
+     * @param roomId  The room the frame belongs to.
+     * @param message The raw message text.
+     */
+    void forward(String nodeId, String roomId, String message);
+
+    /**
+     * Sends a binary relay frame (e.g., an upload chunk) to a peer node.
+     *
+     * @param nodeId The target node ID.
+     * @param roomId The room the frame belongs to.
+     * @param data   The raw frame bytes; must not be modified by the caller afterwards.
+     */
+    void forwardBinary(String nodeId, String roomId, byte[] data);
+
+    /**
+     * Returns the IDs of the peer nodes that currently have a live link to this node (excluding itself).
+     *
+     * @return A snapshot of the live peer node IDs.
+     */
+    Set<String> getLiveNodes();
+
+    /**
+     * Returns the advertised URL of a live peer node.
+     *
+     * @param nodeId The peer node ID.
+     * @return The URL, or null if the node is unknown or did not advertise one.
+     */
+    String getAdvertisedUrl(String nodeId);
+
+    /**
+     * Disconnects from all peers and releases the transport.
+     */
+    @Override
+    void close();
+
+    /**
+     * Callback interface used by the bus to report cluster events to the relay.
+     * Methods may be invoked from transport threads and must be thread-safe.
+     */
+    interface Listener {
+        /**
+         * A peer node became reachable.
+         *
+         * @param nodeId The peer node ID.
+         */
+        void onNodeUp(String nodeId);
+
+        /**
+         * A peer node became unreachable; all of its memberships must be considered gone.
+         *
+         * @param nodeId The peer node ID.
+         */
+        void onNodeDown(String nodeId);
+
+        /**
+         * A peer node now hosts members of a room.
+         *
+         * @param nodeId The peer node ID.
+         * @param roomId The room ID.
+         */
+        void onRemoteJoin(String nodeId, String roomId);
+
+        /**
+         * A peer node no longer hosts members of a room.
+         *
+         * @param nodeId The peer node ID.
+         * @param roomId The room ID.
+         */
+        void onRemoteLeave(String nodeId, String roomId);
+
+        /**
+         * A peer node forwarded a frame for a room that has local members.
+         *
+         * @param nodeId  The originating peer node ID.
+         * @param roomId  The room ID.
+         * @param message The raw message text.
+         */
+        void onFrame(String nodeId, String roomId, String message);
+
+        /**
+         * A peer node forwarded a binary frame for a room that has local members.
+         *
+         * @param nodeId The originating peer node ID.
+         * @param roomId The room ID.
+         * @param data   The raw frame bytes.
+         */
+        void onBinaryFrame(String nodeId, String roomId, byte[] data);
+    }
+}
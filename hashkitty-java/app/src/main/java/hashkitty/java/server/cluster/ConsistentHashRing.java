@@ -0,0 +1,130 @@
+package hashkitty.java.server.cluster;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * A consistent hash ring mapping room IDs to relay nodes.
+ * <p>
+ * Each node is placed on the ring at several "virtual" positions so that rooms spread evenly even
+ * with a handful of nodes. When a node leaves, only the rooms it owned move to other nodes; every
+ * other room keeps its home node, which is what makes room-affinity routing stable across failures.
+ * </p>
+ * <p>
+ * This class is thread-safe; all mutating and lookup methods are synchronized.
+ * </p>
+ */
+public class ConsistentHashRing {
+
+    /** Default number of virtual positions per node. */
+    public static final int DEFAULT_VIRTUAL_NODES = 128;
+
+    /** The ring itself. Key: position hash. Value: node ID. */
+    private final NavigableMap<Long, String> ring = new TreeMap<>();
+
+    /** Number of virtual positions each node occupies. */
+    private final int virtualNodes;
+
+    /**
+     * Constructs a ring with {@link #DEFAULT_VIRTUAL_NODES} virtual positions per node.
+     */
+    public ConsistentHashRing() {
+        this(DEFAULT_VIRTUAL_NODES);
+    }
+
+    /**
+     * Constructs a ring with a custom number of virtual positions per node.
+     *
+     * @param virtualNodes The number of positions per node (must be positive).
+     */
+    public ConsistentHashRing(int virtualNodes) {
+        if (virtualNodes <= 0) {
+            throw new IllegalArgumentException("virtualNodes must be positive");
+        }
+        this.virtualNodes = virtualNodes;
+    }
+
+    /**
+     * Adds a node to the ring. Adding an existing node has no effect.
+     *
+     * @param nodeId The node ID.
+     */
+    public synchronized void addNode(String nodeId) {
+        for (int i = 0; i < virtualNodes; i++) {
+            ring.put(hash(nodeId + "#" + i), nodeId);
+        }
+    }
+
+    /**
+     * Removes a node and all its virtual positions from the ring.
+     *
+     * @param nodeId The node ID.
+     */
+    public synchronized void removeNode(String nodeId) {
+        for (int i = 0; i < virtualNodes; i++) {
+            ring.remove(hash(nodeId + "#" + i), nodeId);
+        }
+    }
+
+    /**
+     * Replaces the ring membership with exactly the given nodes.
+     *
+     * @param nodeIds The node IDs that should be on the ring.
+     */
+    public synchronized void setNodes(Collection<String> nodeIds) {
+        ring.clear();
+        for (String nodeId : nodeIds) {
+            addNode(nodeId);
+        }
+    }
+
+    /**
+     * Finds the home node for a key (a room ID).
+     *
+     * @param key The key to look up.
+     * @return The owning node ID, or null if the ring is empty.
+     */
+    public synchronized String nodeFor(String key) {
+        if (ring.isEmpty()) {
+            return null;
+        }
+        // Walk clockwise to the first position at or after the key's hash, wrapping around if needed.
+        Map.Entry<Long, String> entry = ring.ceilingEntry(hash(key));
+        return entry != null ? entry.getValue() : ring.firstEntry().getValue();
+    }
+
+    /**
+     * Returns whether the ring has no nodes.
+     *
+     * @return true if empty.
+     */
+    public synchronized boolean isEmpty() {
+        return ring.isEmpty();
+    }
+
+    /**
+     * Hashes a string onto the ring using the first 8 bytes of its MD5 digest.
+     * MD5 is used only for its distribution, not for any security property.
+     *
+     * @param value The string to hash.
+     * @return The ring position.
+     */
+    private static long hash(String value) {
+        try {
+            byte[] digest = MessageDigest.getInstance("MD5").digest(value.getBytes(StandardCharsets.UTF_8));
+            long h = 0;
+            for (int i = 0; i < 8; i++) {
+                h = (h << 8) | (digest[i] & 0xff);
+            }
+            return h;
+        } catch (NoSuchAlgorithmException e) {
+            // MD5 is mandatory on every Java platform, so this is highly unlikely.
+            throw new RuntimeException("MD5 algorithm not found", e);
+        }
+    }
+}
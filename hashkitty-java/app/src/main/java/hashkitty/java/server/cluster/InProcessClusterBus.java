@@ -0,0 +1,171 @@
+package hashkitty.java.server.cluster;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A {@link ClusterBus} that links relay nodes living in the same JVM.
+ * <p>
+ * All buses created on the same {@link Network} can see each other. Events are delivered synchronously
+ * on the calling thread, which makes this implementation handy for tests and for embedding several relay
+ * instances in one process; it has no network transport of its own.
+ * </p>
+ */
+public class InProcessClusterBus implements ClusterBus {
+
+    /** The shared network this node is attached to. */
+    private final Network network;
+
+    /** The ID of this node. */
+    private final String nodeId;
+
+    /** The public WebSocket URL of this node (may be null). */
+    private final String advertisedUrl;
+
+    /** Rooms that currently have members on this node. */
+    private final Set<String> localRooms = ConcurrentHashMap.newKeySet();
+
+    /** The relay callback; null until {@link #start} is called. */
+    private volatile Listener listener;
+
+    /**
+     * Constructs a new in-process bus.
+     *
+     * @param network       The shared network to attach to.
+     * @param nodeId        The unique ID of this node.
+     * @param advertisedUrl The public URL of this node, or null.
+     */
+    public InProcessClusterBus(Network network, String nodeId, String advertisedUrl) {
+        this.network = network;
+        this.nodeId = nodeId;
+        this.advertisedUrl = advertisedUrl;
+    }
+
+    @Override
+    public String getLocalNodeId() {
+        return nodeId;
+    }
+
+    @Override
+    public String getAdvertisedUrl() {
+        return advertisedUrl;
+    }
+
+    @Override
+    public void start(Listener listener) {
+        this.listener = listener;
+        network.attach(this);
+    }
+
+    @Override
+    public void announceJoin(String roomId) {
+        if (localRooms.add(roomId)) {
+            for (InProcessClusterBus peer : network.peersOf(this)) {
+                peer.deliverJoin(nodeId, roomId);
+            }
+        }
+    }
+
+    @Override
+    public void announceLeave(String roomId) {
+        if (localRooms.remove(roomId)) {
+            for (InProcessClusterBus peer : network.peersOf(this)) {
+                peer.deliverLeave(nodeId, roomId);
+            }
+        }
+    }
+
+    @Override
+    public void forward(String targetNodeId, String roomId, String message) {
+        InProcessClusterBus peer = network.nodes.get(targetNodeId);
+        if (peer != null && peer.listener != null) {
+            peer.listener.onFrame(nodeId, roomId, message);
+        }
+    }
+
+    @Override
+    public void forwardBinary(String targetNodeId, String roomId, byte[] data) {
+        InProcessClusterBus peer = network.nodes.get(targetNodeId);
+        if (peer != null && peer.listener != null) {
+            peer.listener.onBinaryFrame(nodeId, roomId, data);
+        }
+    }
+
+    @Override
+    public Set<String> getLiveNodes() {
+        Set<String> ids = new HashSet<>(network.nodes.keySet());
+        ids.remove(nodeId);
+        return Collections.unmodifiableSet(ids);
+    }
+
+    @Override
+    public String getAdvertisedUrl(String peerNodeId) {
+        InProcessClusterBus peer = network.nodes.get(peerNodeId);
+        return peer != null ? peer.advertisedUrl : null;
+    }
+
+    @Override
+    public void close() {
+        network.detach(this);
+        localRooms.clear();
+    }
+
+    /** Delivers a remote join to this node's listener. */
+    private void deliverJoin(String fromNodeId, String roomId) {
+        Listener l = listener;
+        if (l != null) l.onRemoteJoin(fromNodeId, roomId);
+    }
+
+    /** Delivers a remote leave to this node's listener. */
+    private void deliverLeave(String fromNodeId, String roomId) {
+        Listener l = listener;
+        if (l != null) l.onRemoteLeave(fromNodeId, roomId);
+    }
+
+    /**
+     * A shared registry of in-process nodes. Create one per simulated cluster.
+     */
+    public static class Network {
+
+        /** The attached nodes. Key: node ID. */
+        private final Map<String, InProcessClusterBus> nodes = new ConcurrentHashMap<>();
+
+        /**
+         * Attaches a node, introducing it to every existing node and replaying their rooms to it.
+         */
+        private synchronized void attach(InProcessClusterBus bus) {
+            for (InProcessClusterBus peer : nodes.values()) {
+                peer.listener.onNodeUp(bus.nodeId);
+                bus.listener.onNodeUp(peer.nodeId);
+                for (String roomId : peer.localRooms) {
+                    bus.deliverJoin(peer.nodeId, roomId);
+                }
+                for (String roomId : bus.localRooms) {
+                    peer.deliverJoin(bus.nodeId, roomId);
+                }
+            }
+            nodes.put(bus.nodeId, bus);
+        }
+
+        /**
+         * Detaches a node, which looks like a node failure to every remaining node.
+         */
+        private synchronized void detach(InProcessClusterBus bus) {
+            if (nodes.remove(bus.nodeId, bus)) {
+                for (InProcessClusterBus peer : nodes.values()) {
+                    peer.listener.onNodeDown(bus.nodeId);
+                }
+            }
+        }
+
+        /** Returns every attached node except the given one. */
+        private Iterable<InProcessClusterBus> peersOf(InProcessClusterBus bus) {
+            Set<InProcessClusterBus> peers = new HashSet<>(nodes.values());
+            peers.remove(bus);
+            return peers;
+        }
+    }
+}
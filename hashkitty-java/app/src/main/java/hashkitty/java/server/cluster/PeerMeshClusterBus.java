@@ -0,0 +1,604 @@
+package hashkitty.java.server.cluster;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * A {@link ClusterBus} that links relay nodes over plain TCP in a full mesh.
+ * <p>
+ * Every node listens on a cluster port and dials the configured seed peers. Each link starts with a
+ * HELLO exchange carrying the node ID, the advertised URL and a random challenge, followed by an AUTH record
+ * proving that the sender holds the cluster's shared secret: an HMAC-SHA256 over the peer's challenge and the
+ * sender's node ID. A peer that fails the proof is disconnected before any of its records are read, so only nodes
+ * configured with the secret can announce rooms or forward frames. After that the two nodes exchange small,
+ * length-prefixed binary records (JOIN, LEAVE, FRAME, BINARY_FRAME, PING). When two nodes dial each other at the same
+ * time, both keep the link that was dialed by the node with the smaller ID, so exactly one link survives.
+ * </p>
+ * <p>
+ * The cluster port can be bound to one address (e.g. a private interface) instead of all of them.
+ * </p>
+ * <p>
+ * Failure detection is heartbeat based: a PING is sent every {@link #HEARTBEAT_INTERVAL_MS}, and a link
+ * that stays silent for {@link #READ_TIMEOUT_MS} is closed and reported through
+ * {@link Listener#onNodeDown(String)}. Seeds are re-dialed in the background, so a restarted node rejoins
+ * the mesh on its own.
+ * </p>
+ */
+public class PeerMeshClusterBus implements ClusterBus {
+
+    /** Record type: first record on a link, carries node ID and advertised URL. */
+    private static final byte HELLO = 1;
+    /** Record type: the sender hosts members of a room. */
+    private static final byte JOIN = 2;
+    /** Record type: the sender no longer hosts members of a room. */
+    private static final byte LEAVE = 3;
+    /** Record type: a relay frame for a room. */
+    private static final byte FRAME = 4;
+    /** Record type: heartbeat. */
+    private static final byte PING = 5;
+    /** Record type: a binary relay frame for a room (second field is raw bytes, not a string). */
+    private static final byte BINARY_FRAME = 6;
+    /** Record type: second record on a link, carries the HMAC proof answering the peer's challenge. */
+    private static final byte AUTH = 7;
+
+    /** Interval between heartbeats on every link. */
+    static final int HEARTBEAT_INTERVAL_MS = 5000;
+    /** A link with no traffic for this long is considered dead. */
+    static final int READ_TIMEOUT_MS = 15000;
+    /** Interval between attempts to dial seeds that have no live link. */
+    private static final int REDIAL_INTERVAL_MS = 2000;
+    /** TCP connect timeout when dialing a seed. */
+    private static final int CONNECT_TIMEOUT_MS = 3000;
+    /** Upper bound for a single string field, protecting against corrupt or hostile peers. */
+    private static final int MAX_FIELD_BYTES = 64 * 1024 * 1024;
+    /** Upper bound for a field read before the peer has authenticated. */
+    private static final int MAX_HANDSHAKE_FIELD_BYTES = 1024;
+    /** Length of the random challenge in each HELLO. */
+    private static final int CHALLENGE_BYTES = 32;
+    /** The MAC that proves knowledge of the shared secret. */
+    private static final String MAC_ALGORITHM = "HmacSHA256";
+
+    /** The ID of this node. */
+    private final String nodeId;
+    /** The public WebSocket URL of this node (may be null). */
+    private final String advertisedUrl;
+    /** The address the cluster port is bound to; null for all interfaces. */
+    private final InetAddress bindAddress;
+    /** The TCP port this node accepts peer links on. */
+    private final int clusterPort;
+    /** The key shared by all nodes of the cluster. */
+    private final SecretKeySpec secret;
+    /** Source of HELLO challenges. */
+    private final SecureRandom random = new SecureRandom();
+    /** The peers to dial. */
+    private final List<InetSocketAddress> seeds;
+    /** Callback for logging status messages. */
+    private final Consumer<String> onStatusUpdate;
+
+    /** Established links. Key: peer node ID. */
+    private final Map<String, PeerLink> links = new ConcurrentHashMap<>();
+    /** Node IDs learned from seeds, so a seed that already has a live link is not re-dialed. */
+    private final Map<InetSocketAddress, String> seedNodeIds = new ConcurrentHashMap<>();
+    /** Seeds with a dial currently in progress. */
+    private final Set<InetSocketAddress> dialing = ConcurrentHashMap.newKeySet();
+    /** Rooms that currently have members on this node; replayed to every new link. */
+    private final Set<String> localRooms = ConcurrentHashMap.newKeySet();
+
+    /** The relay callback. */
+    private volatile Listener listener;
+    /** Socket accepting inbound peer links. */
+    private ServerSocket serverSocket;
+    /** Runs heartbeats and re-dials. */
+    private ScheduledExecutorService scheduler;
+    /** Whether the bus is running. */
+    private volatile boolean running;
+
+    /**
+     * Constructs a new peer-mesh bus.
+     *
+     * @param nodeId         The unique ID of this node.
+     * @param advertisedUrl  The public WebSocket URL of this node, or null.
+     * @param bindAddress    The address to accept peer links on, or null for all interfaces.
+     * @param clusterPort    The TCP port to accept peer links on.
+     * @param seeds          The addresses of the other nodes' cluster ports.
+     * @param secret         The secret shared by every node of the cluster; peers that cannot prove it are rejected.
+     * @param onStatusUpdate Callback for logging status messages.
+     */
+    public PeerMeshClusterBus(String nodeId, String advertisedUrl, InetAddress bindAddress, int clusterPort,
+                              List<InetSocketAddress> seeds, String secret, Consumer<String> onStatusUpdate) {
+        if (secret == null || secret.isEmpty()) {
+            throw new IllegalArgumentException("A cluster secret is required.");
+        }
+        this.nodeId = nodeId;
+        this.advertisedUrl = advertisedUrl;
+        this.bindAddress = bindAddress;
+        this.clusterPort = clusterPort;
+        this.seeds = new ArrayList<>(seeds);
+        this.secret = new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), MAC_ALGORITHM);
+        this.onStatusUpdate = onStatusUpdate;
+    }
+
+    @Override
+    public String getLocalNodeId() {
+        return nodeId;
+    }
+
+    @Override
+    public String getAdvertisedUrl() {
+        return advertisedUrl;
+    }
+
+    /**
+     * Returns the port actually bound for peer links (useful when constructed with port 0).
+     *
+     * @return The bound port, or -1 if not started.
+     */
+    public int getBoundPort() {
+        return serverSocket != null ? serverSocket.getLocalPort() : -1;
+    }
+
+    @Override
+    public void start(Listener listener) throws IOException {
+        this.listener = listener;
+        this.serverSocket = new ServerSocket();
+        serverSocket.setReuseAddress(true);
+        serverSocket.bind(new InetSocketAddress(bindAddress, clusterPort));
+        running = true;
+
+        // Accept inbound peer links on a dedicated thread.
+        Thread acceptThread = new Thread(this::acceptLoop, "cluster-accept-" + nodeId);
+        acceptThread.setDaemon(true);
+        acceptThread.start();
+
+        // Two threads: a slow dial must not delay heartbeats.
+        scheduler = Executors.newScheduledThreadPool(2, r -> {
+            Thread t = new Thread(r, "cluster-scheduler-" + nodeId);
+            t.setDaemon(true);
+            return t;
+        });
+        scheduler.scheduleWithFixedDelay(this::dialSeeds, 0, REDIAL_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        scheduler.scheduleWithFixedDelay(this::sendHeartbeats, HEARTBEAT_INTERVAL_MS, HEARTBEAT_INTERVAL_MS, TimeUnit.MILLISECONDS);
+
+        onStatusUpdate.accept("Cluster node " + nodeId + " listening for peers on "
+                + serverSocket.getLocalSocketAddress());
+    }
+
+    @Override
+    public void announceJoin(String roomId) {
+        if (localRooms.add(roomId)) {
+            for (PeerLink link : links.values()) {
+                link.send(JOIN, roomId, null);
+            }
+        }
+    }
+
+    @Override
+    public void announceLeave(String roomId) {
+        if (localRooms.remove(roomId)) {
+            for (PeerLink link : links.values()) {
+                link.send(LEAVE, roomId, null);
+            }
+        }
+    }
+
+    @Override
+    public void forward(String targetNodeId, String roomId, String message) {
+        PeerLink link = links.get(targetNodeId);
+        if (link != null) {
+            link.send(FRAME, roomId, message);
+        }
+    }
+
+    @Override
+    public void forwardBinary(String targetNodeId, String roomId, byte[] data) {
+        PeerLink link = links.get(targetNodeId);
+        if (link != null) {
+            link.sendBinary(roomId, data);
+        }
+    }
+
+    @Override
+    public Set<String> getLiveNodes() {
+        return Collections.unmodifiableSet(new HashSet<>(links.keySet()));
+    }
+
+    @Override
+    public String getAdvertisedUrl(String peerNodeId) {
+        PeerLink link = links.get(peerNodeId);
+        return link != null ? link.peerUrl : null;
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+        try {
+            if (serverSocket != null) serverSocket.close();
+        } catch (IOException e) {
+            // Ignored: we are shutting down.
+        }
+        for (PeerLink link : new ArrayList<>(links.values())) {
+            link.close();
+        }
+        localRooms.clear();
+    }
+
+    /**
+     * Accepts inbound links until the bus is closed.
+     */
+    private void acceptLoop() {
+        while (running) {
+            try {
+                Socket socket = serverSocket.accept();
+                new PeerLink(socket, false, null).start();
+            } catch (IOException e) {
+                if (running) {
+                    onStatusUpdate.accept("Cluster accept error: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Dials every seed that does not currently have a live link.
+     */
+    private void dialSeeds() {
+        for (InetSocketAddress seed : seeds) {
+            String knownId = seedNodeIds.get(seed);
+            if ((knownId != null && links.containsKey(knownId)) || !dialing.add(seed)) {
+                continue;
+            }
+            try {
+                Socket socket = new Socket();
+                socket.connect(new InetSocketAddress(seed.getHostString(), seed.getPort()), CONNECT_TIMEOUT_MS);
+                new PeerLink(socket, true, seed).start();
+            } catch (IOException e) {
+                // The peer is down or unreachable; we try again on the next round.
+                dialing.remove(seed);
+            }
+        }
+    }
+
+    /**
+     * Sends a heartbeat on every link.
+     */
+    private void sendHeartbeats() {
+        for (PeerLink link : links.values()) {
+            link.send(PING, null, null);
+        }
+    }
+
+    /**
+     * Registers a link after its HELLO exchange, resolving duplicates between the same two nodes.
+     *
+     * @param link The newly handshaken link.
+     * @return true if the link was kept, false if it lost the tie-break and must be closed.
+     */
+    private synchronized boolean register(PeerLink link) {
+        PeerLink existing = links.get(link.peerId);
+        if (existing != null && existing.outbound != link.outbound) {
+            // Both nodes dialed each other: keep the link dialed by the smaller node ID on both sides.
+            String preferredDialer = nodeId.compareTo(link.peerId) < 0 ? nodeId : link.peerId;
+            if (!preferredDialer.equals(link.dialerId())) {
+                return false;
+            }
+        }
+        links.put(link.peerId, link);
+        if (existing != null) {
+            // Either the duplicate lost the tie-break, or the old link is stale and is being replaced.
+            existing.close();
+            // The old link may belong to an earlier run of the peer: forget what it announced. The peer replays
+            // its current rooms on the new link, which is read only after this returns.
+            onStatusUpdate.accept("Cluster peer reconnected: " + link.peerId);
+            listener.onNodeDown(existing.peerId);
+            listener.onNodeUp(link.peerId);
+        } else {
+            onStatusUpdate.accept("Cluster peer up: " + link.peerId);
+            listener.onNodeUp(link.peerId);
+        }
+        // Replay our rooms so the peer's view of this node converges.
+        for (String roomId : localRooms) {
+            link.send(JOIN, roomId, null);
+        }
+        return true;
+    }
+
+    /**
+     * Removes a closed link and reports the node as down if it was the registered link.
+     *
+     * @param link The closed link.
+     */
+    private void unregister(PeerLink link) {
+        if (link.peerId != null && links.remove(link.peerId, link)) {
+            onStatusUpdate.accept("Cluster peer down: " + link.peerId);
+            listener.onNodeDown(link.peerId);
+        }
+    }
+
+    /**
+     * A single TCP link to a peer node, with its own reader thread.
+     */
+    private class PeerLink {
+        private final Socket socket;
+        private final boolean outbound;
+        private final InetSocketAddress seed;
+        private DataOutputStream out;
+        private volatile String peerId;
+        private volatile String peerUrl;
+        private volatile boolean closed;
+
+        PeerLink(Socket socket, boolean outbound, InetSocketAddress seed) {
+            this.socket = socket;
+            this.outbound = outbound;
+            this.seed = seed;
+        }
+
+        /** Returns the node ID that initiated this link. */
+        String dialerId() {
+            return outbound ? nodeId : peerId;
+        }
+
+        /** Starts the reader thread, which performs the handshake and then processes records. */
+        void start() {
+            Thread reader = new Thread(this::run, "cluster-link-" + nodeId);
+            reader.setDaemon(true);
+            reader.start();
+        }
+
+        private void run() {
+            try {
+                socket.setTcpNoDelay(true);
+                socket.setSoTimeout(READ_TIMEOUT_MS);
+                out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+                DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+
+                // Handshake: both sides send HELLO with a fresh challenge immediately, then read the peer's.
+                byte[] challenge = new byte[CHALLENGE_BYTES];
+                random.nextBytes(challenge);
+                sendHello(challenge);
+                if (in.readByte() != HELLO) {
+                    throw new IOException("Expected HELLO from peer");
+                }
+                String claimedId = readString(in, MAX_HANDSHAKE_FIELD_BYTES);
+                String claimedUrl = readString(in, MAX_HANDSHAKE_FIELD_BYTES);
+                byte[] peerChallenge = readBytes(in, MAX_HANDSHAKE_FIELD_BYTES);
+                if (claimedId == null || peerChallenge == null || peerChallenge.length != CHALLENGE_BYTES) {
+                    throw new IOException("Malformed HELLO from peer");
+                }
+
+                // Each side proves the secret by MACing the other's challenge; nothing else is read before that.
+                sendAuth(proof(peerChallenge, nodeId));
+                if (in.readByte() != AUTH) {
+                    throw new IOException("Expected AUTH from peer");
+                }
+                byte[] peerProof = readBytes(in, MAX_HANDSHAKE_FIELD_BYTES);
+                if (peerProof == null || !MessageDigest.isEqual(peerProof, proof(challenge, claimedId))) {
+                    onStatusUpdate.accept("Rejected cluster peer " + socket.getRemoteSocketAddress()
+                            + ": wrong cluster secret");
+                    closeQuietly();
+                    return;
+                }
+                peerId = claimedId;
+                peerUrl = claimedUrl;
+                if (seed != null) {
+                    seedNodeIds.put(seed, peerId);
+                    dialing.remove(seed);
+                }
+                if (nodeId.equals(peerId) || !register(this)) {
+                    // Dialed ourselves, or a duplicate link that lost the tie-break.
+                    closeQuietly();
+                    return;
+                }
+
+                while (running && !closed) {
+                    byte type = in.readByte();
+                    String roomId = readString(in);
+                    if (type == BINARY_FRAME) {
+                        byte[] data = readBytes(in);
+                        if (data != null) {
+                            listener.onBinaryFrame(peerId, roomId, data);
+                        }
+                        continue;
+                    }
+                    String payload = readString(in);
+                    switch (type) {
+                        case JOIN:
+                            listener.onRemoteJoin(peerId, roomId);
+                            break;
+                        case LEAVE:
+                            listener.onRemoteLeave(peerId, roomId);
+                            break;
+                        case FRAME:
+                            listener.onFrame(peerId, roomId, payload);
+                            break;
+                        case PING:
+                            break;
+                        default:
+                            throw new IOException("Unknown cluster record type: " + type);
+                    }
+                }
+            } catch (IOException e) {
+                if (running && !closed && !(e instanceof SocketException)) {
+                    onStatusUpdate.accept("Cluster link to " + (peerId != null ? peerId : socket.getRemoteSocketAddress())
+                            + " lost: " + e.getMessage());
+                }
+            } finally {
+                if (seed != null) {
+                    dialing.remove(seed);
+                }
+                close();
+            }
+        }
+
+        /**
+         * Writes a record. Any write failure closes the link.
+         */
+        void send(byte type, String first, String second) {
+            if (closed || out == null) {
+                return;
+            }
+            try {
+                synchronized (this) {
+                    out.writeByte(type);
+                    writeString(out, first);
+                    writeString(out, second);
+                    out.flush();
+                }
+            } catch (IOException e) {
+                close();
+            }
+        }
+
+        /**
+         * Writes the HELLO record: node ID, advertised URL and challenge.
+         */
+        private void sendHello(byte[] challenge) throws IOException {
+            synchronized (this) {
+                out.writeByte(HELLO);
+                writeString(out, nodeId);
+                writeString(out, advertisedUrl);
+                out.writeInt(challenge.length);
+                out.write(challenge);
+                out.flush();
+            }
+        }
+
+        /**
+         * Writes the AUTH record answering the peer's challenge.
+         */
+        private void sendAuth(byte[] proof) throws IOException {
+            synchronized (this) {
+                out.writeByte(AUTH);
+                out.writeInt(proof.length);
+                out.write(proof);
+                out.flush();
+            }
+        }
+
+        /**
+         * Writes a binary frame record. Any write failure closes the link.
+         */
+        void sendBinary(String roomId, byte[] data) {
+            if (closed || out == null) {
+                return;
+            }
+            try {
+                synchronized (this) {
+                    out.writeByte(BINARY_FRAME);
+                    writeString(out, roomId);
+                    out.writeInt(data.length);
+                    out.write(data);
+                    out.flush();
+                }
+            } catch (IOException e) {
+                close();
+            }
+        }
+
+        /** Closes the socket and reports the peer as down if this was its registered link. */
+        void close() {
+            closeQuietly();
+            unregister(this);
+        }
+
+        private void closeQuietly() {
+            closed = true;
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // Ignored: the link is being torn down anyway.
+            }
+        }
+    }
+
+    /**
+     * Computes the handshake proof: HMAC-SHA256 of a challenge followed by the prover's node ID. Binding the node ID
+     * stops a proof from being replayed under another identity; the fresh challenge stops it from being replayed at all.
+     *
+     * @param challenge The challenge sent by the verifying side.
+     * @param proverId  The node ID of the proving side.
+     * @return The MAC.
+     */
+    private byte[] proof(byte[] challenge, String proverId) {
+        try {
+            Mac mac = Mac.getInstance(MAC_ALGORITHM);
+            mac.init(secret);
+            mac.update(challenge);
+            return mac.doFinal(proverId.getBytes(StandardCharsets.UTF_8));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(MAC_ALGORITHM + " is not available", e);
+        }
+    }
+
+    /**
+     * Writes a nullable string as a length-prefixed UTF-8 field (-1 encodes null).
+     */
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Reads a field written by {@link #writeString}.
+     */
+    private static String readString(DataInputStream in) throws IOException {
+        return readString(in, MAX_FIELD_BYTES);
+    }
+
+    private static String readString(DataInputStream in, int maxBytes) throws IOException {
+        byte[] bytes = readBytes(in, maxBytes);
+        return bytes != null ? new String(bytes, StandardCharsets.UTF_8) : null;
+    }
+
+    /**
+     * Reads a length-prefixed byte field (-1 encodes null).
+     */
+    private static byte[] readBytes(DataInputStream in) throws IOException {
+        return readBytes(in, MAX_FIELD_BYTES);
+    }
+
+    private static byte[] readBytes(DataInputStream in, int maxBytes) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        if (length > maxBytes) {
+            throw new IOException("Cluster record field too large: " + length);
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return bytes;
+    }
+}
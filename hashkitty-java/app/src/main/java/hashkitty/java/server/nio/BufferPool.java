@@ -0,0 +1,115 @@
+package hashkitty.java.server.nio;
+
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A pool of direct {@link ByteBuffer}s in a few fixed size classes.
+ * <p>
+ * Allocating direct memory is expensive, and a busy relay encodes thousands of frames per second, so encoded
+ * frames are written from pooled buffers that go back to the pool once every recipient has written them (see
+ * {@link PooledFrame}). Requests larger than the biggest class are served with a one-off heap buffer; such frames
+ * (upload chunks) are rare and large enough that the allocation does not matter.
+ * </p>
+ * <p>
+ * This class is thread-safe.
+ * </p>
+ */
+public class BufferPool {
+
+    /** Capacity of each size class, smallest first. */
+    private static final int[] SIZE_CLASSES = {1024, 16 * 1024, 256 * 1024};
+
+    /** Maximum number of idle bytes kept per size class. */
+    private static final int MAX_IDLE_BYTES_PER_CLASS = 16 * 1024 * 1024;
+
+    /** Idle buffers per size class. */
+    private final Queue<ByteBuffer>[] free;
+
+    /** Number of idle buffers per size class. */
+    private final AtomicInteger[] freeCounts;
+
+    /** Number of buffers allocated because the pool was empty (a measure of pool misses). */
+    private final AtomicInteger allocations = new AtomicInteger();
+
+    /**
+     * Constructs an empty pool.
+     */
+    @SuppressWarnings("unchecked")
+    public BufferPool() {
+        free = new Queue[SIZE_CLASSES.length];
+        freeCounts = new AtomicInteger[SIZE_CLASSES.length];
+        for (int i = 0; i < SIZE_CLASSES.length; i++) {
+            free[i] = new ConcurrentLinkedQueue<>();
+            freeCounts[i] = new AtomicInteger();
+        }
+    }
+
+    /**
+     * Takes a cleared buffer with at least the requested capacity.
+     *
+     * @param minCapacity The number of bytes needed.
+     * @return A pooled direct buffer, or a heap buffer for oversized requests.
+     */
+    public ByteBuffer acquire(int minCapacity) {
+        int sizeClass = sizeClassOf(minCapacity);
+        if (sizeClass < 0) {
+            return ByteBuffer.allocate(minCapacity);
+        }
+        ByteBuffer buffer = free[sizeClass].poll();
+        if (buffer != null) {
+            freeCounts[sizeClass].decrementAndGet();
+            buffer.clear();
+            return buffer;
+        }
+        allocations.incrementAndGet();
+        return ByteBuffer.allocateDirect(SIZE_CLASSES[sizeClass]);
+    }
+
+    /**
+     * Returns a buffer to the pool. Buffers that do not belong to a size class, or that would exceed the
+     * idle limit, are simply dropped.
+     *
+     * @param buffer The buffer; must not be used by the caller afterwards.
+     */
+    public void release(ByteBuffer buffer) {
+        if (!buffer.isDirect()) {
+            return;
+        }
+        for (int i = 0; i < SIZE_CLASSES.length; i++) {
+            if (buffer.capacity() == SIZE_CLASSES[i]) {
+                if (freeCounts[i].incrementAndGet() * (long) SIZE_CLASSES[i] <= MAX_IDLE_BYTES_PER_CLASS) {
+                    free[i].offer(buffer);
+                } else {
+                    freeCounts[i].decrementAndGet();
+                }
+                return;
+            }
+        }
+    }
+
+    /**
+     * Returns the number of direct buffers allocated because no idle buffer was available.
+     *
+     * @return The allocation count.
+     */
+    public int getAllocationCount() {
+        return allocations.get();
+    }
+
+    /**
+     * Finds the smallest size class that fits.
+     *
+     * @return The class index, or -1 if the request is larger than every class.
+     */
+    private static int sizeClassOf(int capacity) {
+        for (int i = 0; i < SIZE_CLASSES.length; i++) {
+            if (capacity <= SIZE_CLASSES[i]) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
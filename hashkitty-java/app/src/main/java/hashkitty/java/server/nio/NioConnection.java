@@ -0,0 +1,464 @@
+package hashkitty.java.server.nio;
+
+import hashkitty.java.metrics.Counter;
+import hashkitty.java.metrics.Gauge;
+import hashkitty.java.metrics.MetricsRegistry;
+import hashkitty.java.server.OutboundMessage;
+import hashkitty.java.server.RelayConnection;
+import hashkitty.java.server.RelayCore;
+import hashkitty.java.util.ExecutorUtil;
+import hashkitty.java.util.SerialExecutor;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * One WebSocket connection served by an {@link NioEventLoop}.
+ * <p>
+ * Reading, the handshake, frame decoding and writing all run on the loop thread. {@link #send(OutboundMessage)}
+ * may be called from any thread: it encodes the message once into a pooled {@link PooledFrame} shared by every
+ * recipient, retains it, and queues it. The loop then writes all queued frames with a single gathering
+ * {@code write(ByteBuffer[])} call, so a burst of broadcasts costs one system call per socket rather than one
+ * per message.
+ * </p>
+ * <p>
+ * Clients that stop reading are disconnected once {@link #MAX_QUEUED_BYTES} are waiting, so one slow phone can
+ * not make the relay buffer without bound. Idle connections are pinged and eventually closed.
+ * </p>
+ */
+class NioConnection implements RelayConnection {
+
+    /** Largest message (after reassembling fragments) accepted from a client. */
+    static final int MAX_MESSAGE_SIZE = 32 * 1024 * 1024;
+
+    /** Outbound bytes allowed to wait before a client is considered too slow and disconnected. */
+    static final long MAX_QUEUED_BYTES = 64L * 1024 * 1024;
+
+    /** Largest handshake request accepted. */
+    private static final int MAX_HANDSHAKE_SIZE = 8 * 1024;
+
+    /** Silence after which the server pings the client. */
+    private static final long PING_AFTER_MS = 30_000;
+
+    /** Silence after which the connection is dropped. */
+    private static final long CLOSE_AFTER_MS = 90_000;
+
+    /** Most buffers passed to one gathering write. */
+    private static final int MAX_WRITE_BATCH = 64;
+
+    private enum State { HANDSHAKE, OPEN, CLOSING, CLOSED }
+
+    /** Bytes waiting in every connection's outbox, the relay's outbound queue depth. */
+    private static final Gauge QUEUED_BYTES = MetricsRegistry.getDefault().gauge(
+            "hashkitty_relay_outbound_queued_bytes", "Encoded frames waiting to be written to client sockets.");
+
+    private static final Counter SLOW_CLIENTS_DROPPED = MetricsRegistry.getDefault().counter(
+            "hashkitty_relay_slow_clients_dropped_total", "Clients disconnected for not reading their messages.");
+
+    private final NioEventLoop loop;
+    private final SocketChannel channel;
+    private final SelectionKey key;
+    private final RelayCore core;
+    private final BufferPool pool;
+    private final SerialExecutor mailbox = new SerialExecutor(ExecutorUtil.sharedTaskExecutor(), RelayCore.MAILBOX_CAPACITY);
+    private final InetSocketAddress remoteAddress;
+
+    private volatile State state = State.HANDSHAKE;
+
+    /** Whether the core was told about this connection, so {@link #closeNow()} owes it an onClose. Loop thread only. */
+    private boolean opened;
+
+    /** Received bytes not yet decoded (a partial frame). Loop thread only. */
+    private ByteBuffer pending = ByteBuffer.allocate(1024);
+
+    /** Opcode of the fragmented message being reassembled, or -1. Loop thread only. */
+    private int fragmentOpcode = -1;
+    private final ByteArrayOutputStream fragments = new ByteArrayOutputStream();
+
+    /** Frames queued by {@link #send}, not yet picked up by the loop. */
+    private final Queue<PooledFrame> outbox = new ConcurrentLinkedQueue<>();
+    private final AtomicLong queuedBytes = new AtomicLong();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+
+    /** Frames being written, with the per-socket view of each. Loop thread only. */
+    private final ArrayDeque<PooledFrame> writing = new ArrayDeque<>();
+    private final ArrayDeque<ByteBuffer> writingViews = new ArrayDeque<>();
+
+    /** Whether to close the socket once everything queued has been written (after a close frame). */
+    private boolean closeAfterFlush;
+
+    private long lastActivity = System.currentTimeMillis();
+    private boolean pingSent;
+
+    NioConnection(NioEventLoop loop, SocketChannel channel, SelectionKey key, RelayCore core, BufferPool pool) throws IOException {
+        this.loop = loop;
+        this.channel = channel;
+        this.key = key;
+        this.core = core;
+        this.pool = pool;
+        this.remoteAddress = (InetSocketAddress) channel.getRemoteAddress();
+    }
+
+    // ---- RelayConnection ----
+
+    @Override
+    public void send(OutboundMessage message) {
+        if (state != State.OPEN) {
+            return;
+        }
+        PooledFrame frame = message.encoded(m -> encode(m, pool));
+        enqueue(frame.retain());
+    }
+
+    @Override
+    public boolean isOpen() {
+        return state == State.OPEN;
+    }
+
+    @Override
+    public InetSocketAddress getRemoteSocketAddress() {
+        return remoteAddress;
+    }
+
+    @Override
+    public SerialExecutor getMailbox() {
+        return mailbox;
+    }
+
+    /**
+     * Sends a close frame with status 1008 (policy violation) and closes once it is written. Any thread.
+     */
+    @Override
+    public void close() {
+        loop.execute(() -> {
+            if (state == State.OPEN) {
+                state = State.CLOSING;
+                sendControl(WebSocketCodec.OP_CLOSE, new byte[] {(byte) (1008 >> 8), (byte) 1008});
+                closeAfterFlush = true;
+            }
+        });
+    }
+
+    // ---- Encoding ----
+
+    /**
+     * Encodes an outbound message as a server (unmasked) frame in a pooled buffer.
+     *
+     * @param message The message.
+     * @param pool    The pool to take the buffer from.
+     * @return The frame, holding one reference for the message.
+     */
+    static PooledFrame encode(OutboundMessage message, BufferPool pool) {
+        ByteBuffer payload;
+        int opcode;
+        if (message.isText()) {
+            payload = ByteBuffer.wrap(message.getText().getBytes(StandardCharsets.UTF_8));
+            opcode = WebSocketCodec.OP_TEXT;
+        } else {
+            payload = message.getBinary();
+            opcode = WebSocketCodec.OP_BINARY;
+        }
+        ByteBuffer buffer = pool.acquire(WebSocketCodec.frameLength(payload.remaining(), false));
+        WebSocketCodec.encodeFrame(buffer, opcode, payload, false);
+        buffer.flip();
+        return new PooledFrame(buffer, pool);
+    }
+
+    /**
+     * Queues a control frame (pong, ping or close) built on the loop thread.
+     */
+    private void sendControl(int opcode, byte[] payload) {
+        ByteBuffer buffer = ByteBuffer.allocate(WebSocketCodec.frameLength(payload.length, false));
+        WebSocketCodec.encodeFrame(buffer, opcode, ByteBuffer.wrap(payload), false);
+        buffer.flip();
+        enqueue(new PooledFrame(buffer, null));
+    }
+
+    // ---- Writing ----
+
+    /**
+     * Adds a retained frame to the outbox and makes sure the loop will flush it. Any thread.
+     */
+    private void enqueue(PooledFrame frame) {
+        // Count before publishing, so whoever releases the frame (flush or closeNow) can always uncount it.
+        QUEUED_BYTES.add(frame.length());
+        long queued = queuedBytes.addAndGet(frame.length());
+        outbox.add(frame);
+        if (queued > MAX_QUEUED_BYTES) {
+            loop.execute(() -> {
+                if (state == State.OPEN) {
+                    System.out.println("Dropping slow client " + remoteAddress + ": " + queuedBytes.get() + " bytes queued.");
+                    SLOW_CLIENTS_DROPPED.inc();
+                    closeNow();
+                } else if (state == State.CLOSED) {
+                    // Queued after closeNow() had emptied the outbox; nothing will flush it.
+                    releaseOutbox();
+                }
+            });
+            return;
+        }
+        if (flushScheduled.compareAndSet(false, true)) {
+            loop.execute(this::flush);
+        }
+    }
+
+    /**
+     * Writes as much of the queue as the socket accepts, using gathering writes. Loop thread only.
+     */
+    void flush() {
+        flushScheduled.set(false);
+        if (state == State.CLOSED) {
+            // A send raced with closeNow(); give its buffer back.
+            releaseOutbox();
+            return;
+        }
+        PooledFrame frame;
+        while ((frame = outbox.poll()) != null) {
+            writing.add(frame);
+            writingViews.add(frame.view());
+        }
+        try {
+            while (!writingViews.isEmpty()) {
+                ByteBuffer[] batch = new ByteBuffer[Math.min(MAX_WRITE_BATCH, writingViews.size())];
+                int i = 0;
+                for (ByteBuffer view : writingViews) {
+                    if (i == batch.length) break;
+                    batch[i++] = view;
+                }
+                channel.write(batch);
+                while (!writingViews.isEmpty() && !writingViews.peek().hasRemaining()) {
+                    writingViews.poll();
+                    discard(writing.poll());
+                }
+                if (batch[batch.length - 1].hasRemaining()) {
+                    // The socket buffer is full; wait until the kernel drains it.
+                    break;
+                }
+            }
+        } catch (IOException e) {
+            closeNow();
+            return;
+        }
+
+        if (writingViews.isEmpty()) {
+            key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+            if (closeAfterFlush) {
+                closeNow();
+            }
+        } else {
+            key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+        }
+    }
+
+    /**
+     * Releases every frame still waiting in the outbox and takes it off the queue gauges. Loop thread only.
+     */
+    private void releaseOutbox() {
+        PooledFrame frame;
+        while ((frame = outbox.poll()) != null) {
+            discard(frame);
+        }
+    }
+
+    /**
+     * Takes a written or abandoned frame off the queue gauges and returns its buffer.
+     */
+    private void discard(PooledFrame frame) {
+        queuedBytes.addAndGet(-frame.length());
+        QUEUED_BYTES.add(-frame.length());
+        frame.release();
+    }
+
+    // ---- Reading ----
+
+    /**
+     * Reads what is available and processes every complete handshake or frame. Loop thread only.
+     *
+     * @param readBuffer The loop's shared read buffer.
+     */
+    void handleRead(ByteBuffer readBuffer) {
+        readBuffer.clear();
+        int read;
+        try {
+            read = channel.read(readBuffer);
+        } catch (IOException e) {
+            closeNow();
+            return;
+        }
+        if (read < 0) {
+            closeNow();
+            return;
+        }
+        lastActivity = System.currentTimeMillis();
+        pingSent = false;
+        readBuffer.flip();
+        if (pending.remaining() < readBuffer.remaining()) {
+            ByteBuffer grown = ByteBuffer.allocate(Math.max(pending.capacity() * 2, pending.position() + readBuffer.remaining()));
+            pending.flip();
+            grown.put(pending);
+            pending = grown;
+        }
+        pending.put(readBuffer);
+        pending.flip();
+        try {
+            process();
+        } catch (IOException e) {
+            System.out.println("Protocol error from " + remoteAddress + ": " + e.getMessage());
+            closeNow();
+            return;
+        }
+        pending.compact();
+    }
+
+    /**
+     * Consumes complete handshakes and frames from {@link #pending}.
+     */
+    private void process() throws IOException {
+        if (state == State.HANDSHAKE) {
+            WebSocketCodec.HttpHead request = WebSocketCodec.parseHead(pending, MAX_HANDSHAKE_SIZE);
+            if (request == null) {
+                return;
+            }
+            String clientKey = request.header("Sec-WebSocket-Key");
+            String upgrade = request.header("Upgrade");
+            if (!request.startLine.startsWith("GET ") || clientKey == null || upgrade == null
+                    || !"websocket".equalsIgnoreCase(upgrade)) {
+                throw new IOException("Not a WebSocket upgrade request");
+            }
+            if (!WebSocketCodec.VERSION.equals(request.header("Sec-WebSocket-Version"))) {
+                // Tell the client which version we speak, then hang up.
+                state = State.CLOSING;
+                byte[] refusal = WebSocketCodec.versionMismatchResponse().getBytes(StandardCharsets.ISO_8859_1);
+                enqueue(new PooledFrame(ByteBuffer.wrap(refusal), null));
+                closeAfterFlush = true;
+                return;
+            }
+            state = State.OPEN;
+            byte[] response = WebSocketCodec.serverHandshake(clientKey).getBytes(StandardCharsets.ISO_8859_1);
+            enqueue(new PooledFrame(ByteBuffer.wrap(response), null));
+            opened = true;
+            core.onOpen(this);
+        }
+
+        WebSocketCodec.Frame frame;
+        while (state == State.OPEN && (frame = WebSocketCodec.decodeFrame(pending, MAX_MESSAGE_SIZE)) != null) {
+            if (!frame.masked) {
+                throw new IOException("Client frames must be masked");
+            }
+            handleFrame(frame);
+        }
+    }
+
+    /**
+     * Handles one decoded frame, reassembling fragmented messages.
+     */
+    private void handleFrame(WebSocketCodec.Frame frame) throws IOException {
+        switch (frame.opcode) {
+            case WebSocketCodec.OP_PING:
+                sendControl(WebSocketCodec.OP_PONG, frame.payload);
+                return;
+            case WebSocketCodec.OP_PONG:
+                return;
+            case WebSocketCodec.OP_CLOSE:
+                // Echo the close frame (status code included) and close once it has been written.
+                state = State.CLOSING;
+                sendControl(WebSocketCodec.OP_CLOSE, frame.payload);
+                closeAfterFlush = true;
+                return;
+            case WebSocketCodec.OP_TEXT:
+            case WebSocketCodec.OP_BINARY:
+                if (fragmentOpcode != -1) {
+                    throw new IOException("New message before the previous one was finished");
+                }
+                if (frame.fin) {
+                    deliver(frame.opcode, frame.payload);
+                } else {
+                    fragmentOpcode = frame.opcode;
+                    fragments.write(frame.payload);
+                }
+                return;
+            case WebSocketCodec.OP_CONTINUATION:
+                if (fragmentOpcode == -1) {
+                    throw new IOException("Continuation without a message");
+                }
+                if (fragments.size() + frame.payload.length > MAX_MESSAGE_SIZE) {
+                    throw new IOException("Message too large");
+                }
+                fragments.write(frame.payload);
+                if (frame.fin) {
+                    deliver(fragmentOpcode, fragments.toByteArray());
+                    fragments.reset();
+                    fragmentOpcode = -1;
+                }
+                return;
+            default:
+                throw new IOException("Unknown opcode " + frame.opcode);
+        }
+    }
+
+    /**
+     * Passes a complete message to the core. The payload array is owned by this message alone,
+     * so it can be handed to the sender's mailbox without copying again.
+     */
+    private void deliver(int opcode, byte[] payload) {
+        if (opcode == WebSocketCodec.OP_TEXT) {
+            core.onMessage(this, new String(payload, StandardCharsets.UTF_8));
+        } else {
+            core.onMessage(this, ByteBuffer.wrap(payload));
+        }
+    }
+
+    // ---- Lifecycle ----
+
+    /**
+     * Pings connections that have been silent for a while and drops those that stay silent. Loop thread only.
+     *
+     * @param now The current time in milliseconds.
+     */
+    void checkIdle(long now) {
+        long idle = now - lastActivity;
+        if (idle > CLOSE_AFTER_MS || (state == State.HANDSHAKE && idle > PING_AFTER_MS)) {
+            closeNow();
+        } else if (state == State.OPEN && idle > PING_AFTER_MS && !pingSent) {
+            pingSent = true;
+            sendControl(WebSocketCodec.OP_PING, new byte[0]);
+        }
+    }
+
+    /**
+     * Closes the socket, releases queued frames and notifies the core. Idempotent. Loop thread only.
+     */
+    void closeNow() {
+        if (state == State.CLOSED) {
+            return;
+        }
+        state = State.CLOSED;
+        key.cancel();
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // Already closed by the peer; nothing to do.
+        }
+        for (PooledFrame frame : writing) {
+            discard(frame);
+        }
+        writing.clear();
+        writingViews.clear();
+        // Frames sent from now on are released by flush() or the over-limit check in enqueue().
+        releaseOutbox();
+        loop.unregister(this);
+        if (opened) {
+            core.onClose(this);
+        }
+    }
+}
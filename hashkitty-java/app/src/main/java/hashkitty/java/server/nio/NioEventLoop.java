@@ -0,0 +1,174 @@
+package hashkitty.java.server.nio;
+
+import hashkitty.java.server.RelayCore;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * A single-threaded selector loop that owns a share of the NIO relay's connections.
+ * <p>
+ * All socket I/O and connection state changes happen on the loop thread. Other threads (the acceptor, and the
+ * core's mailboxes when they send) hand work over with {@link #execute(Runnable)}, which queues the task and
+ * wakes the selector. Reads go through one direct buffer per loop, so the kernel copies straight into native
+ * memory and idle connections hold no read buffer at all.
+ * </p>
+ */
+class NioEventLoop implements Runnable {
+
+    /** Size of the per-loop read buffer. */
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+    /** How often idle connections are checked, in milliseconds. */
+    private static final long IDLE_SWEEP_INTERVAL_MS = 5_000;
+
+    private final Selector selector;
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    private final ByteBuffer readBuffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+    private final RelayCore core;
+    private final BufferPool pool;
+
+    /** Connections owned by this loop. Only touched on the loop thread. */
+    private final Set<NioConnection> connections = new HashSet<>();
+
+    private volatile boolean running = true;
+
+    /**
+     * Creates a loop. Call {@link #run()} on a dedicated thread to start it.
+     *
+     * @param core The relay logic that receives connection events.
+     * @param pool The pool used to encode outbound frames.
+     * @throws IOException If the selector cannot be opened.
+     */
+    NioEventLoop(RelayCore core, BufferPool pool) throws IOException {
+        this.selector = Selector.open();
+        this.core = core;
+        this.pool = pool;
+    }
+
+    /**
+     * Runs a task on the loop thread.
+     *
+     * @param task The task.
+     */
+    void execute(Runnable task) {
+        tasks.add(task);
+        selector.wakeup();
+    }
+
+    /**
+     * Hands a freshly accepted channel to this loop.
+     *
+     * @param channel The accepted channel.
+     */
+    void register(SocketChannel channel) {
+        execute(() -> {
+            try {
+                channel.configureBlocking(false);
+                channel.socket().setTcpNoDelay(true);
+                SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+                NioConnection conn = new NioConnection(this, channel, key, core, pool);
+                key.attach(conn);
+                connections.add(conn);
+            } catch (IOException e) {
+                e.printStackTrace();
+                try {
+                    channel.close();
+                } catch (IOException ignored) {
+                    // Nothing more to do for a channel that failed to register.
+                }
+            }
+        });
+    }
+
+    /**
+     * Called by a connection (on the loop thread) once it has closed.
+     *
+     * @param conn The closed connection.
+     */
+    void unregister(NioConnection conn) {
+        connections.remove(conn);
+    }
+
+    /**
+     * Stops the loop and closes every connection it owns.
+     */
+    void shutdown() {
+        running = false;
+        selector.wakeup();
+    }
+
+    @Override
+    public void run() {
+        long nextSweep = System.currentTimeMillis() + IDLE_SWEEP_INTERVAL_MS;
+        while (running) {
+            try {
+                selector.select(IDLE_SWEEP_INTERVAL_MS);
+            } catch (IOException e) {
+                e.printStackTrace();
+                break;
+            }
+            runTasks();
+
+            Iterator<SelectionKey> selected = selector.selectedKeys().iterator();
+            while (selected.hasNext()) {
+                SelectionKey key = selected.next();
+                selected.remove();
+                NioConnection conn = (NioConnection) key.attachment();
+                try {
+                    if (key.isReadable()) {
+                        conn.handleRead(readBuffer);
+                    }
+                    if (key.isValid() && key.isWritable()) {
+                        conn.flush();
+                    }
+                } catch (CancelledKeyException e) {
+                    // The connection closed while its key was selected.
+                }
+            }
+
+            long now = System.currentTimeMillis();
+            if (now >= nextSweep) {
+                nextSweep = now + IDLE_SWEEP_INTERVAL_MS;
+                for (NioConnection conn : new ArrayList<>(connections)) {
+                    conn.checkIdle(now);
+                }
+            }
+        }
+
+        runTasks();
+        for (NioConnection conn : new ArrayList<>(connections)) {
+            conn.closeNow();
+        }
+        try {
+            selector.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Runs the queued cross-thread tasks.
+     */
+    private void runTasks() {
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                // A failing task must not take the loop (and every connection on it) down.
+                e.printStackTrace();
+            }
+        }
+    }
+}
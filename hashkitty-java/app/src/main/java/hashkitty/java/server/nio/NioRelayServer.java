@@ -0,0 +1,161 @@
+package hashkitty.java.server.nio;
+
+import hashkitty.java.server.RelayCore;
+import hashkitty.java.server.cluster.ClusterBus;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.function.Consumer;
+
+/**
+ * A relay transport built directly on {@code java.nio} selectors, as an alternative to the Java-WebSocket based
+ * {@link hashkitty.java.server.RelayServer}. Both transports drive the same {@link RelayCore}, so rooms, replay
+ * and clustering behave identically.
+ * <p>
+ * One acceptor thread hands new sockets round-robin to one {@link NioEventLoop} per CPU core. Outbound frames
+ * are encoded once per broadcast into pooled direct buffers and written to every member without further copies
+ * (see {@link NioConnection}). Per-message deflate is not negotiated: clients that offer it fall back to plain
+ * frames, which trades bandwidth for CPU on large rooms.
+ * </p>
+ * <p>
+ * Select it with {@code server --transport nio}.
+ * </p>
+ */
+public class NioRelayServer {
+
+    private final int port;
+    private final Consumer<String> onStatusUpdate;
+    private final RelayCore core;
+    private final BufferPool pool = new BufferPool();
+
+    private ServerSocketChannel serverChannel;
+    private NioEventLoop[] loops;
+    private Thread acceptor;
+
+    /**
+     * Constructs a new single-node NIO relay.
+     *
+     * @param port              The TCP port to listen on (0 for any free port).
+     * @param onStatusUpdate    Callback for logging status messages.
+     * @param onPasswordCracked Callback for when a password is recovered (if running locally).
+     */
+    public NioRelayServer(int port, Consumer<String> onStatusUpdate, Consumer<String> onPasswordCracked) {
+        this(port, onStatusUpdate, onPasswordCracked, null);
+    }
+
+    /**
+     * Constructs a new NIO relay that optionally participates in a cluster.
+     *
+     * @param port              The TCP port to listen on (0 for any free port).
+     * @param onStatusUpdate    Callback for logging status messages.
+     * @param onPasswordCracked Callback for when a password is recovered (if running locally).
+     * @param clusterBus        The cluster transport, or null to run as a single node.
+     */
+    public NioRelayServer(int port, Consumer<String> onStatusUpdate, Consumer<String> onPasswordCracked, ClusterBus clusterBus) {
+        this.port = port;
+        this.onStatusUpdate = onStatusUpdate;
+        this.core = new RelayCore(onStatusUpdate, onPasswordCracked, clusterBus);
+    }
+
+    /**
+     * Binds the port and starts the acceptor and event loop threads.
+     *
+     * @throws IOException If the port cannot be bound.
+     */
+    public synchronized void start() throws IOException {
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(port));
+
+        loops = new NioEventLoop[Runtime.getRuntime().availableProcessors()];
+        for (int i = 0; i < loops.length; i++) {
+            loops[i] = new NioEventLoop(core, pool);
+            Thread thread = new Thread(loops[i], "nio-relay-loop-" + i);
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        acceptor = new Thread(this::acceptLoop, "nio-relay-acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+
+        System.out.println("NIO relay server started on port " + getPort());
+        onStatusUpdate.accept("Relay server started on port " + getPort() + " (NIO transport, " + loops.length + " loops)");
+        core.start();
+    }
+
+    /**
+     * Accepts connections until the server channel is closed.
+     */
+    private void acceptLoop() {
+        int next = 0;
+        while (serverChannel.isOpen()) {
+            try {
+                SocketChannel channel = serverChannel.accept();
+                loops[next].register(channel);
+                next = (next + 1) % loops.length;
+            } catch (ClosedChannelException e) {
+                break;
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Stops accepting, closes every connection and, in cluster mode, leaves the cluster.
+     */
+    public synchronized void stop() {
+        core.stop();
+        if (serverChannel != null) {
+            try {
+                serverChannel.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        if (loops != null) {
+            for (NioEventLoop loop : loops) {
+                loop.shutdown();
+            }
+        }
+    }
+
+    /**
+     * Returns the port the server is bound to.
+     *
+     * @return The bound port, or the configured port before {@link #start()}.
+     */
+    public int getPort() {
+        try {
+            if (serverChannel != null && serverChannel.isOpen()) {
+                return ((InetSocketAddress) serverChannel.getLocalAddress()).getPort();
+            }
+        } catch (IOException e) {
+            // Fall through to the configured port.
+        }
+        return port;
+    }
+
+    /**
+     * Returns the home node of a room according to the consistent hash ring.
+     *
+     * @param roomId The room ID.
+     * @return The owning node ID, or null when not running in cluster mode.
+     */
+    public String getHomeNode(String roomId) {
+        return core.getHomeNode(roomId);
+    }
+
+    /**
+     * Returns the number of direct buffers the frame pool had to allocate; a steady value under load means
+     * broadcasts are being served entirely from recycled buffers.
+     *
+     * @return The pool's allocation count.
+     */
+    public int getPoolAllocationCount() {
+        return pool.getAllocationCount();
+    }
+}
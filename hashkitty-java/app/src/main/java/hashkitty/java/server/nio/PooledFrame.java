@@ -0,0 +1,78 @@
+package hashkitty.java.server.nio;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * An encoded WebSocket frame shared by every connection it is sent to.
+ * <p>
+ * The frame is reference counted: it starts with one reference (held by the
+ * {@link hashkitty.java.server.OutboundMessage} that encoded it), each recipient {@link #retain()}s it when
+ * queueing and {@link #release()}s it once written, and the buffer goes back to its {@link BufferPool} when the
+ * count reaches zero. Recipients write from their own {@link #view()}, so the bytes are never copied per socket.
+ * </p>
+ */
+final class PooledFrame implements AutoCloseable {
+
+    /** The encoded frame, flipped (position 0, limit = frame length). */
+    private final ByteBuffer buffer;
+
+    /** The pool to return the buffer to, or null for unpooled frames. */
+    private final BufferPool pool;
+
+    /** Outstanding references. */
+    private final AtomicInteger refs = new AtomicInteger(1);
+
+    /**
+     * Wraps an encoded frame.
+     *
+     * @param buffer The encoded frame, ready to be written.
+     * @param pool   The pool it came from, or null.
+     */
+    PooledFrame(ByteBuffer buffer, BufferPool pool) {
+        this.buffer = buffer;
+        this.pool = pool;
+    }
+
+    /**
+     * Adds a reference for a recipient.
+     *
+     * @return This frame.
+     */
+    PooledFrame retain() {
+        refs.incrementAndGet();
+        return this;
+    }
+
+    /**
+     * Returns an independent view of the frame bytes for one socket write sequence.
+     *
+     * @return A duplicate of the frame buffer.
+     */
+    ByteBuffer view() {
+        return buffer.duplicate();
+    }
+
+    /**
+     * Returns the encoded length in bytes.
+     *
+     * @return The frame length.
+     */
+    int length() {
+        return buffer.limit();
+    }
+
+    /**
+     * Drops a reference, returning the buffer to the pool when it was the last one.
+     */
+    void release() {
+        if (refs.decrementAndGet() == 0 && pool != null) {
+            pool.release(buffer);
+        }
+    }
+
+    @Override
+    public void close() {
+        release();
+    }
+}
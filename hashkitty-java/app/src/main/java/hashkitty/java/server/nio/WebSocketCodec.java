@@ -0,0 +1,312 @@
+package hashkitty.java.server.nio;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Minimal RFC 6455 encoding and decoding: the opening handshake and single frames.
+ * <p>
+ * Only what the relay protocol needs is implemented: text, binary, continuation and control frames, with or
+ * without masking. Extensions (such as per-message deflate) are not negotiated, so peers fall back to
+ * uncompressed frames. The methods work directly on {@link ByteBuffer}s so that callers control allocation,
+ * and they are shared by the NIO relay transport (server side) and the load generator (client side).
+ * </p>
+ */
+public final class WebSocketCodec {
+
+    /** Opcode: continuation of a fragmented message. */
+    public static final int OP_CONTINUATION = 0x0;
+    /** Opcode: text message (UTF-8). */
+    public static final int OP_TEXT = 0x1;
+    /** Opcode: binary message. */
+    public static final int OP_BINARY = 0x2;
+    /** Opcode: connection close. */
+    public static final int OP_CLOSE = 0x8;
+    /** Opcode: ping. */
+    public static final int OP_PING = 0x9;
+    /** Opcode: pong. */
+    public static final int OP_PONG = 0xA;
+
+    /** The only protocol version spoken (Sec-WebSocket-Version). */
+    public static final String VERSION = "13";
+
+    /** The GUID appended to the client key when computing the accept key (RFC 6455, section 1.3). */
+    private static final String HANDSHAKE_GUID = "258EAFA5-E914-47DA-95CA-C5AB0DC85B11";
+
+    private WebSocketCodec() {
+    }
+
+    /**
+     * A decoded frame. The payload is always unmasked and owned by the frame.
+     */
+    public static final class Frame {
+        /** Whether this is the final fragment of a message. */
+        public final boolean fin;
+        /** The frame opcode. */
+        public final int opcode;
+        /** Whether the frame was masked (clients must mask, servers must not). */
+        public final boolean masked;
+        /** The unmasked payload. */
+        public final byte[] payload;
+
+        Frame(boolean fin, int opcode, boolean masked, byte[] payload) {
+            this.fin = fin;
+            this.opcode = opcode;
+            this.masked = masked;
+            this.payload = payload;
+        }
+
+        /** @return Whether this is a control frame (close, ping, pong). */
+        public boolean isControl() {
+            return (opcode & 0x8) != 0;
+        }
+    }
+
+    /**
+     * A parsed HTTP request or response head (the opening handshake).
+     */
+    public static final class HttpHead {
+        /** The first line, e.g. "GET /ws HTTP/1.1" or "HTTP/1.1 101 Switching Protocols". */
+        public final String startLine;
+        /** Header values keyed by lowercase header name. */
+        public final Map<String, String> headers;
+
+        HttpHead(String startLine, Map<String, String> headers) {
+            this.startLine = startLine;
+            this.headers = headers;
+        }
+
+        /**
+         * Returns a header value.
+         *
+         * @param name The header name (any case).
+         * @return The value, or null if absent.
+         */
+        public String header(String name) {
+            return headers.get(name.toLowerCase(Locale.ROOT));
+        }
+    }
+
+    /**
+     * Returns the encoded size of a frame.
+     *
+     * @param payloadLength The payload size.
+     * @param masked        Whether the frame is masked (client to server).
+     * @return The total frame size in bytes.
+     */
+    public static int frameLength(int payloadLength, boolean masked) {
+        int header = payloadLength < 126 ? 2 : payloadLength <= 0xFFFF ? 4 : 10;
+        return header + (masked ? 4 : 0) + payloadLength;
+    }
+
+    /**
+     * Writes a complete (FIN) frame into {@code out}, consuming {@code payload}.
+     *
+     * @param out     The destination; must have at least {@link #frameLength} bytes remaining.
+     * @param opcode  The frame opcode.
+     * @param payload The payload (position to limit).
+     * @param masked  Whether to mask the payload with a random key (required for clients).
+     */
+    public static void encodeFrame(ByteBuffer out, int opcode, ByteBuffer payload, boolean masked) {
+        int length = payload.remaining();
+        out.put((byte) (0x80 | opcode));
+        int maskBit = masked ? 0x80 : 0;
+        if (length < 126) {
+            out.put((byte) (maskBit | length));
+        } else if (length <= 0xFFFF) {
+            out.put((byte) (maskBit | 126));
+            out.putShort((short) length);
+        } else {
+            out.put((byte) (maskBit | 127));
+            out.putLong(length);
+        }
+        if (!masked) {
+            out.put(payload);
+            return;
+        }
+        byte[] mask = new byte[4];
+        ThreadLocalRandom.current().nextBytes(mask);
+        out.put(mask);
+        for (int i = 0; payload.hasRemaining(); i++) {
+            out.put((byte) (payload.get() ^ mask[i & 3]));
+        }
+    }
+
+    /**
+     * Decodes one frame from {@code in}.
+     *
+     * @param in         The received bytes (position to limit). On success the position is advanced past the frame;
+     *                   if the frame is incomplete the position is left unchanged.
+     * @param maxPayload The largest payload accepted.
+     * @return The frame, or null if more bytes are needed.
+     * @throws IOException If the frame is malformed or too large.
+     */
+    public static Frame decodeFrame(ByteBuffer in, int maxPayload) throws IOException {
+        int start = in.position();
+        if (in.remaining() < 2) {
+            return null;
+        }
+        int b0 = in.get() & 0xFF;
+        int b1 = in.get() & 0xFF;
+        if ((b0 & 0x70) != 0) {
+            throw new IOException("Reserved bits set without a negotiated extension");
+        }
+        boolean fin = (b0 & 0x80) != 0;
+        int opcode = b0 & 0x0F;
+        boolean masked = (b1 & 0x80) != 0;
+        long length = b1 & 0x7F;
+        if (length == 126) {
+            if (in.remaining() < 2) {
+                in.position(start);
+                return null;
+            }
+            length = in.getShort() & 0xFFFF;
+        } else if (length == 127) {
+            if (in.remaining() < 8) {
+                in.position(start);
+                return null;
+            }
+            length = in.getLong();
+        }
+        if (length < 0 || length > maxPayload) {
+            throw new IOException("Frame too large: " + length);
+        }
+        if ((opcode & 0x8) != 0 && (length > 125 || !fin)) {
+            throw new IOException("Invalid control frame");
+        }
+        int maskLength = masked ? 4 : 0;
+        if (in.remaining() < maskLength + length) {
+            in.position(start);
+            return null;
+        }
+        byte[] mask = null;
+        if (masked) {
+            mask = new byte[4];
+            in.get(mask);
+        }
+        byte[] payload = new byte[(int) length];
+        in.get(payload);
+        if (masked) {
+            for (int i = 0; i < payload.length; i++) {
+                payload[i] ^= mask[i & 3];
+            }
+        }
+        return new Frame(fin, opcode, masked, payload);
+    }
+
+    /**
+     * Parses an HTTP head terminated by an empty line.
+     *
+     * @param in       The received bytes. On success the position is advanced past the head; otherwise unchanged.
+     * @param maxBytes The largest head accepted.
+     * @return The head, or null if the terminating empty line has not arrived yet.
+     * @throws IOException If the head exceeds {@code maxBytes}.
+     */
+    public static HttpHead parseHead(ByteBuffer in, int maxBytes) throws IOException {
+        int start = in.position();
+        int end = -1;
+        for (int i = start; i + 3 < in.limit(); i++) {
+            if (in.get(i) == '\r' && in.get(i + 1) == '\n' && in.get(i + 2) == '\r' && in.get(i + 3) == '\n') {
+                end = i;
+                break;
+            }
+        }
+        if (end < 0) {
+            if (in.remaining() > maxBytes) {
+                throw new IOException("Handshake too large");
+            }
+            return null;
+        }
+        byte[] bytes = new byte[end - start];
+        in.get(bytes);
+        in.position(end + 4);
+
+        String[] lines = new String(bytes, StandardCharsets.ISO_8859_1).split("\r\n");
+        Map<String, String> headers = new HashMap<>();
+        for (int i = 1; i < lines.length; i++) {
+            int colon = lines[i].indexOf(':');
+            if (colon > 0) {
+                headers.put(lines[i].substring(0, colon).trim().toLowerCase(Locale.ROOT), lines[i].substring(colon + 1).trim());
+            }
+        }
+        return new HttpHead(lines[0], headers);
+    }
+
+    /**
+     * Computes the Sec-WebSocket-Accept value for a client key.
+     *
+     * @param clientKey The Sec-WebSocket-Key header sent by the client.
+     * @return The accept key.
+     */
+    public static String acceptKey(String clientKey) {
+        try {
+            MessageDigest sha1 = MessageDigest.getInstance("SHA-1");
+            byte[] digest = sha1.digest((clientKey + HANDSHAKE_GUID).getBytes(StandardCharsets.US_ASCII));
+            return Base64.getEncoder().encodeToString(digest);
+        } catch (NoSuchAlgorithmException e) {
+            // SHA-1 is mandatory on every Java platform, so this is highly unlikely.
+            throw new RuntimeException("SHA-1 algorithm not found", e);
+        }
+    }
+
+    /**
+     * Builds the server's 101 response to an upgrade request.
+     *
+     * @param clientKey The Sec-WebSocket-Key header sent by the client.
+     * @return The response head, including the terminating empty line.
+     */
+    public static String serverHandshake(String clientKey) {
+        return "HTTP/1.1 101 Switching Protocols\r\n"
+                + "Upgrade: websocket\r\n"
+                + "Connection: Upgrade\r\n"
+                + "Sec-WebSocket-Accept: " + acceptKey(clientKey) + "\r\n\r\n";
+    }
+
+    /**
+     * Builds the server's refusal of an upgrade request for another protocol version (RFC 6455, section 4.4).
+     *
+     * @return The response head, including the terminating empty line.
+     */
+    public static String versionMismatchResponse() {
+        return "HTTP/1.1 426 Upgrade Required\r\n"
+                + "Sec-WebSocket-Version: " + VERSION + "\r\n"
+                + "Connection: close\r\n"
+                + "Content-Length: 0\r\n\r\n";
+    }
+
+    /**
+     * Builds a client upgrade request.
+     *
+     * @param host      The Host header value (host[:port]).
+     * @param path      The request path (e.g. "/ws").
+     * @param clientKey A random key from {@link #newClientKey()}.
+     * @return The request head, including the terminating empty line.
+     */
+    public static String clientHandshake(String host, String path, String clientKey) {
+        return "GET " + path + " HTTP/1.1\r\n"
+                + "Host: " + host + "\r\n"
+                + "Upgrade: websocket\r\n"
+                + "Connection: Upgrade\r\n"
+                + "Sec-WebSocket-Key: " + clientKey + "\r\n"
+                + "Sec-WebSocket-Version: " + VERSION + "\r\n\r\n";
+    }
+
+    /**
+     * Generates a random client key.
+     *
+     * @return A base64-encoded 16-byte nonce.
+     */
+    public static String newClientKey() {
+        byte[] nonce = new byte[16];
+        ThreadLocalRandom.current().nextBytes(nonce);
+        return Base64.getEncoder().encodeToString(nonce);
+    }
+}
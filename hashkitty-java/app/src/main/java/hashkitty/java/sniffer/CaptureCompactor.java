@@ -0,0 +1,276 @@
+package hashkitty.java.sniffer;
+
+import hashkitty.java.capture.EapolKey;
+import hashkitty.java.capture.PcapReader;
+import hashkitty.java.capture.PcapWriter;
+import hashkitty.java.capture.WifiDecoder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Shrinks a capture to the frames a cracker needs.
+ * <p>
+ * A wardriving or sensor capture is mostly beacons, probes and data frames; the handshakes in it are a few kilobytes.
+ * The compactor streams a pcap or pcapng file through {@link WifiDecoder} and writes a classic pcap holding only:
+ * </p>
+ * <ul>
+ *     <li>Every EAPOL-Key frame of a pairwise handshake (messages 1 to 4, including PMKIDs), minus exact
+ *     retransmissions.</li>
+ *     <li>One frame naming each access point that has such frames (its first beacon, probe response or association
+ *     request), written just before its first EAPOL frame so the ESSID is known when the handshake is read.</li>
+ * </ul>
+ * <p>
+ * Networks without any handshake frames are dropped entirely. Frames are copied whole, with their radiotap or other
+ * headers, so the result converts to 22000 lines exactly as the original does. Only the naming frames of access
+ * points not yet matched to a handshake are held in memory.
+ * </p>
+ * <p>
+ * <b>Usage:</b> {@code compact CAPTURE [OUTPUT]}; the output defaults to {@code <capture>-compact.pcap}.
+ * </p>
+ */
+public class CaptureCompactor implements WifiDecoder.Listener, PcapReader.PacketHandler {
+
+    /**
+     * What a compaction did.
+     */
+    public static final class Result {
+        private final long packetsIn;
+        private final long bytesIn;
+        private final long packetsOut;
+        private final long bytesOut;
+        private final long networks;
+        private final long eapolFrames;
+        private final long duplicates;
+
+        Result(long packetsIn, long bytesIn, long packetsOut, long bytesOut, long networks, long eapolFrames,
+               long duplicates) {
+            this.packetsIn = packetsIn;
+            this.bytesIn = bytesIn;
+            this.packetsOut = packetsOut;
+            this.bytesOut = bytesOut;
+            this.networks = networks;
+            this.eapolFrames = eapolFrames;
+            this.duplicates = duplicates;
+        }
+
+        public long getPacketsIn() {
+            return packetsIn;
+        }
+
+        public long getBytesIn() {
+            return bytesIn;
+        }
+
+        public long getPacketsOut() {
+            return packetsOut;
+        }
+
+        public long getBytesOut() {
+            return bytesOut;
+        }
+
+        /** @return The number of access points whose naming frame was kept. */
+        public long getNetworks() {
+            return networks;
+        }
+
+        /** @return The number of EAPOL-Key frames kept. */
+        public long getEapolFrames() {
+            return eapolFrames;
+        }
+
+        /** @return The number of retransmitted EAPOL-Key frames dropped. */
+        public long getDuplicates() {
+            return duplicates;
+        }
+
+        /** @return How many times smaller the output is than the input. */
+        public double getRatio() {
+            return bytesOut > 0 ? (double) bytesIn / bytesOut : 0;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Kept %d of %d packets (%d EAPOL frames, %d networks, %d retransmissions dropped): "
+                            + "%d -> %d bytes, %.1fx smaller", packetsOut, packetsIn, eapolFrames, networks, duplicates,
+                    bytesIn, bytesOut, getRatio());
+        }
+    }
+
+    /**
+     * A naming frame held until its access point shows a handshake.
+     */
+    private static final class HeldFrame {
+        final byte[] bytes;
+        final int linkType;
+        final long timestampMicros;
+
+        HeldFrame(byte[] bytes, int linkType, long timestampMicros) {
+            this.bytes = bytes;
+            this.linkType = linkType;
+            this.timestampMicros = timestampMicros;
+        }
+    }
+
+    private final PcapWriter writer;
+    private final WifiDecoder decoder = new WifiDecoder(this);
+    /** Access points whose naming frame has been held or written. */
+    private final Map<Long, HeldFrame> held = new HashMap<>();
+    /** Access points with EAPOL frames; their naming frame is written as soon as it is seen. */
+    private final Set<Long> withHandshake = new HashSet<>();
+    /** Fingerprints of the EAPOL frames written, to drop retransmissions. */
+    private final Set<Long> written = new HashSet<>();
+    private byte[] scratch = new byte[256];
+
+    // The packet being decoded, so the listener callbacks can write it.
+    private ByteBuffer packet;
+    private int packetOffset;
+    private int packetLength;
+    private int packetLinkType;
+    private long packetTime;
+    private boolean packetWritten;
+
+    private long networks;
+    private long eapolFrames;
+    private long duplicates;
+    private IOException failure;
+
+    private CaptureCompactor(PcapWriter writer) {
+        this.writer = writer;
+    }
+
+    /**
+     * Compacts a capture.
+     *
+     * @param capture The pcap or pcapng file.
+     * @param output  The pcap file to write (replaced if it exists).
+     * @return What was kept.
+     * @throws IOException If the capture cannot be read or the output written.
+     */
+    public static Result compact(Path capture, Path output) throws IOException {
+        CaptureCompactor compactor;
+        long packetsIn;
+        try (PcapWriter writer = new PcapWriter(output)) {
+            compactor = new CaptureCompactor(writer);
+            packetsIn = PcapReader.read(capture, compactor);
+            if (compactor.failure != null) {
+                throw compactor.failure;
+            }
+            return new Result(packetsIn, Files.size(capture), writer.getPackets(), writer.getBytes(),
+                    compactor.networks, compactor.eapolFrames, compactor.duplicates);
+        }
+    }
+
+    /**
+     * Returns the default output file for a capture, {@code <name>-compact.pcap} next to it.
+     *
+     * @param capture The capture.
+     * @return The output path.
+     */
+    public static Path defaultOutput(Path capture) {
+        String name = capture.getFileName().toString().replaceFirst("\\.[^.]*$", "");
+        return capture.resolveSibling(name + "-compact.pcap");
+    }
+
+    @Override
+    public void onPacket(ByteBuffer data, int offset, int length, int linkType, long timestampMicros) {
+        if (failure != null) {
+            return;
+        }
+        packet = data;
+        packetOffset = offset;
+        packetLength = length;
+        packetLinkType = linkType;
+        packetTime = timestampMicros;
+        packetWritten = false;
+        decoder.onPacket(data, offset, length, linkType, timestampMicros);
+    }
+
+    @Override
+    public void onNetwork(long bssid, ByteBuffer data, int essidOffset, int essidLength, long timestampMicros) {
+        if (held.containsKey(bssid)) {
+            return;
+        }
+        if (withHandshake.contains(bssid)) {
+            // The handshake came first; the network still needs naming.
+            held.put(bssid, null);
+            networks++;
+            writeCurrent();
+            return;
+        }
+        byte[] bytes = new byte[packetLength];
+        packet.get(packetOffset, bytes);
+        held.put(bssid, new HeldFrame(bytes, packetLinkType, packetTime));
+    }
+
+    @Override
+    public void onEapolKey(EapolKey key) {
+        int length = key.getFrameLength();
+        if (scratch.length < length) {
+            scratch = new byte[length];
+        }
+        key.copyFrame(scratch, 0);
+        long fingerprint = 0xcbf29ce484222325L ^ key.getAp() * 31 ^ key.getSta();
+        for (int i = 0; i < length; i++) {
+            fingerprint = (fingerprint ^ (scratch[i] & 0xff)) * 0x100000001b3L;
+        }
+        if (!written.add(fingerprint)) {
+            duplicates++;
+            return;
+        }
+        if (withHandshake.add(key.getAp())) {
+            HeldFrame naming = held.get(key.getAp());
+            if (naming != null) {
+                write(ByteBuffer.wrap(naming.bytes), 0, naming.bytes.length, naming.linkType, naming.timestampMicros);
+                networks++;
+                // Keep the key (so the access point is not named twice) but free the frame.
+                held.put(key.getAp(), null);
+            }
+        }
+        eapolFrames++;
+        writeCurrent();
+    }
+
+    private void writeCurrent() {
+        if (!packetWritten) {
+            packetWritten = true;
+            write(packet, packetOffset, packetLength, packetLinkType, packetTime);
+        }
+    }
+
+    private void write(ByteBuffer data, int offset, int length, int linkType, long timestampMicros) {
+        try {
+            writer.write(data, offset, length, linkType, timestampMicros);
+        } catch (IOException e) {
+            failure = e;
+        }
+    }
+
+    // ---- Command line ----
+
+    /**
+     * The main method.
+     *
+     * @param args The capture and, optionally, the output file.
+     * @throws IOException If the capture cannot be read or the output written.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1 || args.length > 2) {
+            System.err.println("Usage: compact CAPTURE [OUTPUT]");
+            System.exit(1);
+        }
+        Path capture = Paths.get(args[0]);
+        Path output = args.length > 1 ? Paths.get(args[1]) : defaultOutput(capture);
+        Result result = compact(capture, output);
+        System.out.println(result);
+        System.out.println("Wrote " + output);
+    }
+}
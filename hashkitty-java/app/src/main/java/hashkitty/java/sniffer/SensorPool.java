@@ -0,0 +1,306 @@
+package hashkitty.java.sniffer;
+
+import com.jcraft.jsch.UserInfo;
+import hashkitty.java.capture.HandshakeCandidate;
+import hashkitty.java.capture.CrackPipeline;
+import hashkitty.java.capture.HandshakeScanner;
+import hashkitty.java.capture.Hc22000Converter;
+import hashkitty.java.capture.LiveCapture;
+import hashkitty.java.metrics.Counter;
+import hashkitty.java.metrics.MetricsRegistry;
+import hashkitty.java.model.RemoteConnection;
+
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Captures from many remote sensors at once and merges what they find.
+ * <p>
+ * Each sensor (a saved {@link RemoteConnection}, typically a Raspberry Pi) gets its own {@link SniffManager}
+ * running a binary capture on its own thread, with its own rotating capture files named after the connection.
+ * All of them feed one {@link HandshakeScanner}, which is the pool's de-duplication index: a handshake heard by
+ * several sensors, or completed by frames from different sensors, is reported once.
+ * </p>
+ * <p>
+ * A reporter thread samples each sensor's packet count every {@link #REPORT_INTERVAL_MS} and posts a one-line
+ * summary of packet rates through the status callback; {@link #getStats()} returns the latest figures.
+ * </p>
+ * <p>
+ * The sensors also share one {@link Hc22000Converter}, so each handshake becomes 22000 lines once. The lines go
+ * straight into the crack queue of the current {@link CrackPipeline}; setting or replacing the pipeline takes effect
+ * for running sensors too. Lines converted while no pipeline is set are held back for the next one, up to
+ * {@link #MAX_HELD_BACK_LINES}; beyond that the oldest are dropped and counted in
+ * {@code hashkitty_sensor_held_back_dropped_total}.
+ * </p>
+ */
+public class SensorPool {
+
+    private static final Counter HELD_BACK_DROPPED = MetricsRegistry.getDefault().counter(
+            "hashkitty_sensor_held_back_dropped_total", "Converted 22000 lines dropped because no crack pipeline took them in time.");
+
+    /** How often packet rates are sampled and reported. */
+    static final long REPORT_INTERVAL_MS = 10_000;
+
+    /** Most lines held back while no pipeline is set; the oldest are dropped beyond this. */
+    static final int MAX_HELD_BACK_LINES = 10_000;
+
+    /**
+     * The latest figures for one sensor.
+     */
+    public static final class SensorStats {
+        private final String name;
+        private final boolean connected;
+        private final long packets;
+        private final double packetsPerSecond;
+
+        SensorStats(String name, boolean connected, long packets, double packetsPerSecond) {
+            this.name = name;
+            this.connected = connected;
+            this.packets = packets;
+            this.packetsPerSecond = packetsPerSecond;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public boolean isConnected() {
+            return connected;
+        }
+
+        public long getPackets() {
+            return packets;
+        }
+
+        public double getPacketsPerSecond() {
+            return packetsPerSecond;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s: %s, %d packets, %.0f/s", name, connected ? "capturing" : "down", packets,
+                    packetsPerSecond);
+        }
+    }
+
+    /**
+     * One sensor's capture and its last rate sample. Samples are only touched by {@link #sampleRates()}.
+     */
+    private static final class Sensor {
+        final RemoteConnection connection;
+        final SniffManager manager;
+        long lastPackets;
+        long lastSampleNanos = System.nanoTime();
+        volatile double packetsPerSecond;
+
+        Sensor(RemoteConnection connection, SniffManager manager) {
+            this.connection = connection;
+            this.manager = manager;
+        }
+
+        long packets() {
+            LiveCapture capture = manager.getLiveCapture();
+            return capture != null ? capture.getPackets() : 0;
+        }
+    }
+
+    private final Consumer<String> onStatusUpdate;
+    private final Path captureDirectory;
+    private final HandshakeScanner scanner;
+    /** Shared by every sensor for the life of the pool; its lines go to {@link #pipeline}. */
+    private final Hc22000Converter converter = new Hc22000Converter(this::offerLine);
+    /** Creates the capture of each sensor. */
+    private final Function<Consumer<String>, SniffManager> managers;
+    /** Sensors by connection string. Guarded by {@code this}. */
+    private final Map<String, Sensor> sensors = new LinkedHashMap<>();
+    /** Where converted lines go; null to hold them back. Guarded by {@code heldBack}. */
+    private CrackPipeline pipeline;
+    /** Lines converted while no pipeline was set, oldest first. */
+    private final Deque<String> heldBack = new ArrayDeque<>();
+    private Thread reporter;
+
+    /**
+     * Creates a pool.
+     *
+     * @param onStatusUpdate   Receives per-sensor messages (prefixed with the sensor name) and rate summaries.
+     * @param captureDirectory Where the sensors keep their capture files.
+     * @param onHandshake      Called once per handshake, whichever sensors saw it; may be null.
+     */
+    public SensorPool(Consumer<String> onStatusUpdate, Path captureDirectory, Consumer<HandshakeCandidate> onHandshake) {
+        this(onStatusUpdate, captureDirectory, onHandshake, SniffManager::new);
+    }
+
+    /**
+     * Creates a pool whose sensors capture through managers from a factory, for tests.
+     */
+    SensorPool(Consumer<String> onStatusUpdate, Path captureDirectory, Consumer<HandshakeCandidate> onHandshake,
+               Function<Consumer<String>, SniffManager> managers) {
+        this.onStatusUpdate = onStatusUpdate;
+        this.managers = managers;
+        this.captureDirectory = captureDirectory;
+        this.scanner = new HandshakeScanner(candidate -> {
+            onStatusUpdate.accept("Handshake captured: " + candidate);
+            if (onHandshake != null) {
+                onHandshake.accept(candidate);
+            }
+        });
+    }
+
+    /**
+     * Starts capturing on every connection that is not already capturing. Connections are made in parallel.
+     *
+     * @param connections The sensors.
+     * @param password    The SSH password (sensors of one deployment usually share it).
+     * @param userInfo    Handles host key prompts.
+     */
+    public synchronized void start(Collection<RemoteConnection> connections, String password, UserInfo userInfo) {
+        for (RemoteConnection connection : connections) {
+            Sensor sensor = sensors.get(connection.getConnectionString());
+            if (sensor != null && sensor.manager.isActive()) {
+                continue;
+            }
+            String name = connection.getName();
+            SniffManager manager = managers.apply(line -> onStatusUpdate.accept("[" + name + "] " + line));
+            sensors.put(connection.getConnectionString(), new Sensor(connection, manager));
+            manager.startCapture(connection, password, userInfo, captureDirectory, scanner, converter);
+        }
+        if (reporter == null) {
+            reporter = new Thread(this::reportLoop, "sensor-pool-reporter");
+            reporter.setDaemon(true);
+            reporter.start();
+        }
+    }
+
+    /**
+     * Sends the handshakes of every sensor, running or started later, to a crack pipeline. Lines held back while no
+     * pipeline was set are offered to it first.
+     *
+     * @param pipeline The pipeline, or null to hold lines back.
+     */
+    public void setCrackPipeline(CrackPipeline pipeline) {
+        List<String> pending;
+        synchronized (heldBack) {
+            this.pipeline = pipeline;
+            if (pipeline == null) {
+                return;
+            }
+            pending = new ArrayList<>(heldBack);
+            heldBack.clear();
+        }
+        for (String line : pending) {
+            pipeline.offer(line);
+        }
+    }
+
+    /**
+     * Passes one converted line to the current pipeline. Called on the capture threads.
+     */
+    void offerLine(String line) {
+        CrackPipeline target;
+        synchronized (heldBack) {
+            target = pipeline;
+            if (target == null) {
+                if (heldBack.size() >= MAX_HELD_BACK_LINES) {
+                    heldBack.removeFirst();
+                    HELD_BACK_DROPPED.inc();
+                }
+                heldBack.addLast(line);
+                return;
+            }
+        }
+        target.offer(line);
+    }
+
+    /**
+     * Stops every sensor.
+     */
+    public synchronized void stop() {
+        for (Sensor sensor : sensors.values()) {
+            sensor.manager.stopSniffing();
+        }
+        if (reporter != null) {
+            reporter.interrupt();
+            reporter = null;
+        }
+    }
+
+    /**
+     * Returns whether any sensor is connected.
+     *
+     * @return true while at least one sensor is capturing.
+     */
+    public synchronized boolean isRunning() {
+        for (Sensor sensor : sensors.values()) {
+            if (sensor.manager.isActive()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the latest figures of every sensor started so far.
+     *
+     * @return One entry per sensor, in start order.
+     */
+    public synchronized List<SensorStats> getStats() {
+        List<SensorStats> stats = new ArrayList<>(sensors.size());
+        for (Sensor sensor : sensors.values()) {
+            stats.add(new SensorStats(sensor.connection.getName(), sensor.manager.isActive(), sensor.packets(),
+                    sensor.packetsPerSecond));
+        }
+        return stats;
+    }
+
+    /**
+     * Returns the shared handshake index.
+     *
+     * @return The scanner all sensors feed.
+     */
+    public HandshakeScanner getScanner() {
+        return scanner;
+    }
+
+    private void reportLoop() {
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                Thread.sleep(REPORT_INTERVAL_MS);
+            } catch (InterruptedException e) {
+                return;
+            }
+            onStatusUpdate.accept(sampleRates());
+        }
+    }
+
+    /**
+     * Samples each sensor's packet rate since the previous sample. Called by the reporter thread (and tests).
+     *
+     * @return The one-line summary.
+     */
+    String sampleRates() {
+        List<Sensor> current;
+        synchronized (this) {
+            current = new ArrayList<>(sensors.values());
+        }
+        StringBuilder summary = new StringBuilder("Sensors:");
+        long now = System.nanoTime();
+        for (Sensor sensor : current) {
+            long packets = sensor.packets();
+            double seconds = (now - sensor.lastSampleNanos) / 1e9;
+            sensor.packetsPerSecond = seconds > 0 ? (packets - sensor.lastPackets) / seconds : 0;
+            sensor.lastPackets = packets;
+            sensor.lastSampleNanos = now;
+            summary.append(String.format(" %s %.0f/s%s;", sensor.connection.getName(), sensor.packetsPerSecond,
+                    sensor.manager.isActive() ? "" : " (down)"));
+        }
+        return summary.toString();
+    }
+}
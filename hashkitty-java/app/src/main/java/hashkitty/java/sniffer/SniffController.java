@@ -2,17 +2,25 @@ package hashkitty.java.sniffer;
 
 import com.jcraft.jsch.UserInfo;
 import hashkitty.java.App;
+import hashkitty.java.capture.CrackPipeline;
+import hashkitty.java.capture.HandshakeCandidate;
+import hashkitty.java.capture.HandshakeScanner;
+import hashkitty.java.capture.Hc22000Converter;
 import hashkitty.java.model.RemoteConnection;
+import hashkitty.java.pmk.PmkCache;
+import hashkitty.java.pmk.PmkTable;
 import javafx.application.Platform;
 import javafx.collections.ObservableList;
 import javafx.fxml.FXML;
 import javafx.scene.control.*;
 import javafx.stage.FileChooser;
 
-import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
-import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Optional;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -22,8 +30,14 @@ import java.util.concurrent.atomic.AtomicBoolean;
  * <p>
  * This class provides functionality for:
  * <ul>
- *     <li>Starting remote packet sniffing sessions via SSH (using {@link SniffManager}).</li>
- *     <li>Analyzing local PCAP files for WPA handshakes (using external `tshark` command).</li>
+ *     <li>Starting remote packet sniffing sessions via SSH (using {@link SniffManager}), either as tcpdump text
+ *     or as a binary capture with live handshake detection.</li>
+ *     <li>Capturing from all saved connections at once (using {@link SensorPool}).</li>
+ *     <li>Analyzing local pcap/pcapng files for WPA handshakes (using {@link HandshakeScanner}).</li>
+ *     <li>Converting captures to Hashcat 22000 hash files (using {@link Hc22000Converter}).</li>
+ *     <li>Compacting captures down to their handshake frames (using {@link CaptureCompactor}).</li>
+ *     <li>Optionally cracking captured handshakes as they arrive (using {@link CrackPipeline}).</li>
+ *     <li>Precomputing WPA PMKs for an ESSID and wordlist (using {@link PmkCache}).</li>
  *     <li>Displaying the output of these operations in a text area.</li>
  * </ul>
  * </p>
@@ -34,6 +48,10 @@ public class SniffController {
     @FXML
     private ComboBox<RemoteConnection> remoteSelector;
 
+    /** When checked, captures feed their handshakes into the crack pipeline. */
+    @FXML
+    private CheckBox autoCrack;
+
     /** Text area to display logs and analysis results. */
     @FXML
     private TextArea sniffOutput;
@@ -41,6 +59,12 @@ public class SniffController {
     /** The manager handling the SSH connection and sniffing logic. */
     private SniffManager sniffManager;
 
+    /** Captures from every saved connection at once. */
+    private SensorPool sensorPool;
+
+    /** Cracks captured handshakes as they arrive; created when a capture first starts with auto-crack on. */
+    private CrackPipeline crackPipeline;
+
     /** Reference to the main application class. */
     private App app;
 
@@ -55,6 +79,8 @@ public class SniffController {
         // Initialize SniffManager with a callback to update the UI text area.
         // Platform.runLater is crucial here because the callback will come from a background thread.
         sniffManager = new SniffManager(output -> Platform.runLater(() -> sniffOutput.appendText(output + "\n")));
+        sensorPool = new SensorPool(output -> Platform.runLater(() -> sniffOutput.appendText(output + "\n")),
+                SniffManager.defaultCaptureDirectory(), null);
     }
 
     /**
@@ -99,20 +125,176 @@ public class SniffController {
         });
     }
 
+    /**
+     * Handler for the "Capture Handshakes" button.
+     * Streams raw packets from the selected target into rotating capture files and reports handshakes live.
+     */
+    @FXML
+    private void startCapture() {
+        RemoteConnection selected = remoteSelector.getValue();
+        if (selected == null) {
+            sniffOutput.appendText("Please select a remote target first.\n");
+            return;
+        }
+
+        TextInputDialog passwordDialog = new TextInputDialog();
+        passwordDialog.setTitle("SSH Password");
+        passwordDialog.setHeaderText("Enter password for " + selected.getConnectionString());
+        passwordDialog.setContentText("Password:");
+
+        Optional<String> result = passwordDialog.showAndWait();
+        result.ifPresent(password -> {
+            HandshakeScanner scanner = new HandshakeScanner(candidate -> appendOutput("Handshake captured: " + candidate));
+            CrackPipeline pipeline = autoCrack.isSelected() ? crackPipeline() : null;
+            sniffManager.startCapture(selected, password, new JavaFxUserInfo(), SniffManager.defaultCaptureDirectory(),
+                    scanner, pipeline != null ? new Hc22000Converter(pipeline::offer) : null);
+        });
+    }
+
+    /**
+     * Handler for the "Capture All Sensors" button.
+     * Starts a binary capture on every saved connection, with one shared handshake index.
+     */
+    @FXML
+    private void startAllSensors() {
+        if (remoteConnections == null || remoteConnections.isEmpty()) {
+            sniffOutput.appendText("No remote connections are configured.\n");
+            return;
+        }
+
+        TextInputDialog passwordDialog = new TextInputDialog();
+        passwordDialog.setTitle("SSH Password");
+        passwordDialog.setHeaderText("Enter the password for all " + remoteConnections.size() + " sensors");
+        passwordDialog.setContentText("Password:");
+
+        Optional<String> result = passwordDialog.showAndWait();
+        result.ifPresent(password -> {
+            sensorPool.setCrackPipeline(autoCrack.isSelected() ? crackPipeline() : null);
+            sensorPool.start(new ArrayList<>(remoteConnections), password, new JavaFxUserInfo());
+        });
+    }
+
+    /**
+     * Returns the crack pipeline, asking for its wordlist and starting it the first time.
+     *
+     * @return The pipeline, or null if no wordlist was chosen or it could not start.
+     */
+    private CrackPipeline crackPipeline() {
+        if (crackPipeline != null) {
+            return crackPipeline;
+        }
+        FileChooser fileChooser = new FileChooser();
+        fileChooser.setTitle("Select Wordlist for Auto-Crack");
+        File wordlist = fileChooser.showOpenDialog(sniffOutput.getScene().getWindow());
+        if (wordlist == null) {
+            appendOutput("Auto-crack needs a wordlist; capturing without it.");
+            return null;
+        }
+        CrackPipeline pipeline = new CrackPipeline(SniffManager.defaultCaptureDirectory().resolveSibling("crack-queue"),
+                wordlist.getAbsolutePath(), this::appendOutput, password -> appendOutput("CRACKED: " + password));
+        pipeline.setPmkCache(new PmkCache(PmkCache.defaultDirectory()));
+        try {
+            pipeline.start(CrackPipeline.defaultPotfile());
+        } catch (IOException e) {
+            e.printStackTrace();
+            appendOutput("Could not start the crack pipeline: " + e.getMessage());
+            return null;
+        }
+        crackPipeline = pipeline;
+        return pipeline;
+    }
+
+    /**
+     * Handler for the "Compact Capture" button.
+     * Writes {@code <name>-compact.pcap} next to a capture, holding only its handshake frames and their beacons.
+     */
+    @FXML
+    private void compactPcap() {
+        FileChooser fileChooser = new FileChooser();
+        fileChooser.setTitle("Select PCAP File");
+        fileChooser.getExtensionFilters().addAll(
+                new FileChooser.ExtensionFilter("PCAP Files", "*.pcap", "*.pcapng", "*.cap"),
+                new FileChooser.ExtensionFilter("All Files", "*.*")
+        );
+        File selectedFile = fileChooser.showOpenDialog(sniffOutput.getScene().getWindow());
+        if (selectedFile == null) {
+            return;
+        }
+        Path output = CaptureCompactor.defaultOutput(selectedFile.toPath());
+        sniffOutput.appendText("Compacting " + selectedFile.getName() + " to " + output.getFileName() + "...\n");
+
+        new Thread(() -> {
+            try {
+                CaptureCompactor.Result result = CaptureCompactor.compact(selectedFile.toPath(), output);
+                appendOutput(result.toString());
+            } catch (IOException e) {
+                e.printStackTrace();
+                appendOutput("Error compacting capture: " + e.getMessage());
+            }
+        }).start();
+    }
+
+    /**
+     * Handler for the "Precompute PMKs" button.
+     * Computes the PMKs of a wordlist for an ESSID, so later handshakes of that network are checked in seconds.
+     */
+    @FXML
+    private void precomputePmks() {
+        TextInputDialog essidDialog = new TextInputDialog();
+        essidDialog.setTitle("Precompute PMKs");
+        essidDialog.setHeaderText("Network name (ESSID) to precompute for");
+        essidDialog.setContentText("ESSID:");
+        Optional<String> essid = essidDialog.showAndWait();
+        if (essid.isEmpty() || essid.get().isEmpty()) {
+            return;
+        }
+        FileChooser fileChooser = new FileChooser();
+        fileChooser.setTitle("Select Wordlist");
+        File wordlist = fileChooser.showOpenDialog(sniffOutput.getScene().getWindow());
+        if (wordlist == null) {
+            return;
+        }
+
+        new Thread(() -> {
+            PmkCache cache = new PmkCache(PmkCache.defaultDirectory());
+            try (PmkTable table = cache.precompute(essid.get().getBytes(StandardCharsets.UTF_8),
+                    wordlist.toPath(), Runtime.getRuntime().availableProcessors(), this::appendOutput)) {
+                appendOutput(table.getCount() + " PMKs for \"" + essid.get() + "\" are cached.");
+            } catch (IOException e) {
+                e.printStackTrace();
+                appendOutput("Error precomputing PMKs: " + e.getMessage());
+            }
+        }).start();
+    }
+
+    /**
+     * Appends a line to the output area from any thread.
+     */
+    private void appendOutput(String line) {
+        Platform.runLater(() -> sniffOutput.appendText(line + "\n"));
+    }
+
     /**
      * Handler for the "Stop Sniffing" button.
-     * Terminates the active SSH session.
+     * Terminates the active SSH session and any sensor captures.
      */
     @FXML
     private void stopSniffing() {
         if (sniffManager != null) {
             sniffManager.stopSniffing();
         }
+        if (sensorPool != null) {
+            sensorPool.stop();
+        }
+        if (crackPipeline != null) {
+            crackPipeline.stop();
+            crackPipeline = null;
+        }
     }
 
     /**
      * Handler for the "Analyze PCAP" button.
-     * Allows the user to open a local capture file and runs a tshark filter against it.
+     * Allows the user to open a local capture file and lists the WPA handshakes found in it.
      */
     @FXML
     private void analyzePcap() {
@@ -130,49 +312,73 @@ public class SniffController {
             sniffOutput.appendText("Analyzing " + selectedFile.getName() + " for WPA handshakes...\n");
 
             // Run analysis in a background thread to keep UI responsive.
+            // The capture is decoded in-process, so tshark is not needed and large files read at disk speed.
             new Thread(() -> {
+                HandshakeScanner scanner = new HandshakeScanner(candidate ->
+                        Platform.runLater(() -> sniffOutput.appendText("Handshake: " + candidate + "\n")));
                 try {
-                    // Construct tshark command to filter for EAPOL Key messages 1 and 2 (Handshake start).
-                    // This verifies if a handshake was potentially captured.
-                    ProcessBuilder pb = new ProcessBuilder(
-                            "tshark", "-r", selectedFile.getAbsolutePath(),
-                            "-Y", "wlan_rsna_eapol.keydes.msgnr == 1 or wlan_rsna_eapol.keydes.msgnr == 2"
-                    );
-                    pb.redirectErrorStream(true); // Merge stderr into stdout.
-                    Process process = pb.start();
-
-                    // Read output.
-                    try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
-                        String line;
-                        StringBuilder output = new StringBuilder();
-                        while ((line = reader.readLine()) != null) {
-                            output.append(line).append("\n");
-                        }
-                        // Update UI with results.
-                        Platform.runLater(() -> {
-                            if (output.length() == 0) {
-                                sniffOutput.appendText("No WPA handshakes found in the file.\n");
-                            } else {
-                                sniffOutput.appendText("--- Handshake Information ---\n");
-                                sniffOutput.appendText(output.toString());
-                                sniffOutput.appendText("-----------------------------\n");
+                    long packets = scanner.scan(selectedFile.toPath());
+                    List<HandshakeCandidate> candidates = scanner.getCandidates();
+                    Platform.runLater(() -> {
+                        if (candidates.isEmpty()) {
+                            sniffOutput.appendText("No WPA handshakes found in the file.\n");
+                        } else {
+                            sniffOutput.appendText("--- Handshake Information ---\n");
+                            for (HandshakeCandidate candidate : candidates) {
+                                sniffOutput.appendText(candidate + "\n");
                             }
-                        });
-                    }
-
-                    int exitCode = process.waitFor();
-                    Platform.runLater(() -> sniffOutput.appendText("Analysis finished with exit code: " + exitCode + "\n"));
-
+                            sniffOutput.appendText("-----------------------------\n");
+                        }
+                        sniffOutput.appendText("Analysis finished: " + packets + " packets read.\n");
+                    });
                 } catch (IOException e) {
-                    Platform.runLater(() -> sniffOutput.appendText("Error running tshark: " + e.getMessage() + ". Is tshark installed and in your system's PATH?\n"));
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
-                    Platform.runLater(() -> sniffOutput.appendText("PCAP analysis was interrupted.\n"));
+                    e.printStackTrace();
+                    Platform.runLater(() -> sniffOutput.appendText("Error reading capture: " + e.getMessage() + "\n"));
                 }
             }).start();
         }
     }
 
+    /**
+     * Handler for the "Convert to 22000" button.
+     * Converts a local capture into a Hashcat mode 22000 hash file next to it, ready for the Attack tab.
+     */
+    @FXML
+    private void convertPcap() {
+        FileChooser fileChooser = new FileChooser();
+        fileChooser.setTitle("Select PCAP File");
+        fileChooser.getExtensionFilters().addAll(
+                new FileChooser.ExtensionFilter("PCAP Files", "*.pcap", "*.pcapng", "*.cap"),
+                new FileChooser.ExtensionFilter("All Files", "*.*")
+        );
+        File selectedFile = fileChooser.showOpenDialog(sniffOutput.getScene().getWindow());
+        if (selectedFile == null) {
+            return;
+        }
+        File outputFile = new File(selectedFile.getParentFile(), selectedFile.getName().replaceFirst("\\.[^.]*$", "") + ".hc22000");
+        sniffOutput.appendText("Converting " + selectedFile.getName() + " to " + outputFile.getName() + "...\n");
+
+        new Thread(() -> {
+            try {
+                Hc22000Converter converter = Hc22000Converter.convert(selectedFile.toPath(), outputFile.toPath());
+                long lines = converter.getPmkidLines() + converter.getEapolLines();
+                Platform.runLater(() -> {
+                    sniffOutput.appendText("Wrote " + lines + " hashes (" + converter.getPmkidLines() + " PMKID, "
+                            + converter.getEapolLines() + " EAPOL) to " + outputFile.getAbsolutePath() + "\n");
+                    if (converter.getUnnamed() > 0) {
+                        sniffOutput.appendText(converter.getUnnamed() + " handshakes skipped: no beacon named their network.\n");
+                    }
+                    if (lines > 0) {
+                        sniffOutput.appendText("Attack it with hash mode 22000.\n");
+                    }
+                });
+            } catch (IOException e) {
+                e.printStackTrace();
+                Platform.runLater(() -> sniffOutput.appendText("Error converting capture: " + e.getMessage() + "\n"));
+            }
+        }).start();
+    }
+
     /**
      * Inner class implementing JSch UserInfo to handle interactive prompts (host keys).
      * This class uses JavaFX Alerts to prompt the user on the UI thread, blocking the SSH thread until response.
@@ -1,9 +1,25 @@
 package hashkitty.java.sniffer;
 
 import com.jcraft.jsch.*;
+import hashkitty.java.capture.HandshakeCandidate;
+import hashkitty.java.capture.HandshakeScanner;
+import hashkitty.java.capture.Hc22000Converter;
+import hashkitty.java.capture.LiveCapture;
+import hashkitty.java.capture.PcapReader;
+import hashkitty.java.capture.RotatingPcapWriter;
 import hashkitty.java.model.RemoteConnection;
+import hashkitty.java.ssh.SshSessionPool;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Consumer;
 
 /**
@@ -16,10 +32,21 @@ import java.util.function.Consumer;
  */
 public class SniffManager {
 
-    /** The active SSH session. */
-    private Session session;
-    /** The channel used for executing the command. */
+    /** The pool the SSH sessions come from; sessions outlive a sniffing run. */
+    private final SshSessionPool sessionPool;
+    /** Guards {@link #channel} and {@link #stopRequested}, so a stop cannot slip between opening and publishing a channel. */
+    private final Object channelLock = new Object();
+    /** The channel used for executing the command. Guarded by {@code channelLock}. */
     private ChannelExec channel;
+    /** Set from start until the background thread finishes, so a second start is refused. */
+    private final AtomicBoolean running = new AtomicBoolean();
+    /**
+     * Set by stopSniffing() until the next start. A run that is still connecting checks it once its channel is open,
+     * and the reader uses it to tell a requested stop from a broken stream. Written under {@code channelLock}.
+     */
+    private volatile boolean stopRequested;
+    /** The binary capture in progress, if any. */
+    private volatile LiveCapture liveCapture;
     /** Callback to stream text output (stdout/stderr) back to the UI. */
     private final Consumer<String> onOutput;
 
@@ -29,7 +56,18 @@ public class SniffManager {
      * @param onOutput A callback function to be executed when output is received from the remote process.
      */
     public SniffManager(Consumer<String> onOutput) {
+        this(onOutput, SshSessionPool.getDefault());
+    }
+
+    /**
+     * Constructs a new SniffManager that takes its SSH sessions from a given pool.
+     *
+     * @param onOutput    A callback function to be executed when output is received from the remote process.
+     * @param sessionPool The session pool.
+     */
+    public SniffManager(Consumer<String> onOutput, SshSessionPool sessionPool) {
         this.onOutput = onOutput;
+        this.sessionPool = sessionPool;
     }
 
     /**
@@ -48,39 +86,15 @@ public class SniffManager {
      */
     public void startSniffing(RemoteConnection connection, String password, UserInfo userInfo) {
         // Prevent multiple simultaneous sessions.
-        if (session != null && session.isConnected()) {
+        if (!running.compareAndSet(false, true)) {
             onOutput.accept("Error: A session is already active. Please stop it first.");
             return;
         }
+        clearStopRequest();
 
         // Run network operations in a background thread.
         new Thread(() -> {
             try {
-                // Parse "user@host".
-                String[] connParts = connection.getConnectionString().split("@");
-                if (connParts.length != 2) {
-                    onOutput.accept("Error: Invalid connection string format. Expected user@host.");
-                    return;
-                }
-                String user = connParts[0];
-                String host = connParts[1];
-
-                JSch jsch = new JSch();
-                onOutput.accept("Initializing SSH session for " + connection.getConnectionString() + "...");
-                session = jsch.getSession(user, host, 22);
-                session.setPassword(password);
-
-                // Assign the UserInfo for interaction (e.g. host key confirmation).
-                session.setUserInfo(userInfo);
-
-                // Note: We removed "StrictHostKeyChecking=no" to improve security.
-                // The UserInfo callback will be used if the host key is unknown.
-
-                onOutput.accept("Connecting to " + host + "...");
-                // Set connection timeout to 30 seconds.
-                session.connect(30000);
-                onOutput.accept("Connection established successfully.");
-
                 // The command to run remotely.
                 // -i wlan0: Listen on wireless interface.
                 // -l: Line buffered output.
@@ -89,13 +103,14 @@ public class SniffManager {
                 String command = "sudo tcpdump -i wlan0 -l -U";
                 onOutput.accept("Executing remote command: " + command);
 
-                channel = (ChannelExec) session.openChannel("exec");
-                channel.setCommand(command);
-                channel.setInputStream(null); // No input to send to remote.
-
-                // Get the output stream to read from remote command.
-                InputStream in = channel.getInputStream();
-                channel.connect(5000); // 5-second timeout for channel connection.
+                // The command runs on its own channel of the host's pooled session (connected if needed).
+                InputStream[] stdout = new InputStream[1];
+                ChannelExec current = openChannel(connection, password, userInfo, command, c -> stdout[0] = c.getInputStream());
+                if (!publishChannel(current)) {
+                    onOutput.accept("Stopped before the remote command started.");
+                    return;
+                }
+                InputStream in = stdout[0];
                 onOutput.accept("Sniffing process started on remote host.");
 
                 // Read loop.
@@ -107,9 +122,9 @@ public class SniffManager {
                         // Send chunk to UI callback.
                         onOutput.accept(new String(tmp, 0, i));
                     }
-                    if (channel.isClosed()) {
+                    if (current.isClosed() || !current.isConnected()) {
                         if (in.available() > 0) continue;
-                        int exitStatus = channel.getExitStatus();
+                        int exitStatus = current.getExitStatus();
                         String exitMessage = "Sniffing process finished with exit code: " + exitStatus;
                         if (exitStatus != 0) {
                             exitMessage += ". (This could be due to permissions issues, e.g., needing sudo password, or an invalid interface).";
@@ -124,42 +139,306 @@ public class SniffManager {
                     }
                 }
             } catch (JSchException e) {
-                // Specific SSH error handling.
-                String errorMessage = e.getMessage();
-                if (errorMessage.contains("Auth fail")) {
-                    onOutput.accept("SSH Error: Authentication failed. Please check your password.");
-                } else if (errorMessage.contains("UnknownHostException")) {
-                    onOutput.accept("SSH Error: Unknown host. Could not resolve " + connection.getConnectionString());
-                } else if (errorMessage.contains("Connection timed out")) {
-                    onOutput.accept("SSH Error: Connection timed out. Check host address and network.");
-                } else if (errorMessage.contains("reject HostKey")) {
-                    onOutput.accept("SSH Error: Host key rejected by user.");
-                } else {
-                    onOutput.accept("SSH Error: " + errorMessage);
-                }
-                e.printStackTrace();
+                reportSshError(e, connection);
             } catch (Exception e) {
                 onOutput.accept("An unexpected error occurred: " + e.getMessage());
                 e.printStackTrace();
             } finally {
                 // Ensure cleanup happens.
-                stopSniffing();
+                closeChannel();
+                running.set(false);
+            }
+        }).start();
+    }
+
+    /**
+     * Returns the default directory for binary captures, {@code ~/.hashkitty/captures}.
+     *
+     * @return The directory.
+     */
+    public static Path defaultCaptureDirectory() {
+        return Paths.get(System.getProperty("user.home"), ".hashkitty", "captures");
+    }
+
+    /**
+     * Starts a binary capture session in a background thread.
+     * <p>
+     * Unlike {@link #startSniffing}, which shows tcpdump's text summary, this runs {@code tcpdump -w -} so the raw
+     * packets come back over the SSH channel. They are read with blocking reads (no polling delay) and passed,
+     * packet by packet, to a {@link RotatingPcapWriter} under {@code captureDirectory} and to a
+     * {@link HandshakeScanner}, which reports each handshake as soon as it becomes crackable. Buffering is bounded
+     * by the reader's fixed buffer and the SSH channel window, so a slow disk throttles the stream instead of
+     * filling memory.
+     * </p>
+     *
+     * @param connection       The remote connection details (user and host).
+     * @param password         The password for the SSH connection.
+     * @param userInfo         The JSch UserInfo implementation for handling host key verification.
+     * @param captureDirectory Where to keep the rotating capture files.
+     * @param onHandshake      Called for each handshake that becomes crackable; may be null.
+     */
+    public void startCapture(RemoteConnection connection, String password, UserInfo userInfo, Path captureDirectory,
+                             Consumer<HandshakeCandidate> onHandshake) {
+        HandshakeScanner scanner = new HandshakeScanner(candidate -> {
+            onOutput.accept("Handshake captured: " + candidate);
+            if (onHandshake != null) {
+                onHandshake.accept(candidate);
+            }
+        });
+        startCapture(connection, password, userInfo, captureDirectory, scanner);
+    }
+
+    /**
+     * Starts a binary capture session that feeds a scanner shared with other captures.
+     *
+     * @param connection       The remote connection details (user and host).
+     * @param password         The password for the SSH connection.
+     * @param userInfo         The JSch UserInfo implementation for handling host key verification.
+     * @param captureDirectory Where to keep the rotating capture files.
+     * @param scanner          The scanner to report handshakes to; it reports each handshake once.
+     */
+    public void startCapture(RemoteConnection connection, String password, UserInfo userInfo, Path captureDirectory,
+                             HandshakeScanner scanner) {
+        startCapture(connection, password, userInfo, captureDirectory, scanner, null);
+    }
+
+    /**
+     * Starts a binary capture session that feeds a shared scanner and, optionally, a shared 22000 converter (such as
+     * one feeding a {@link hashkitty.java.capture.CrackPipeline}).
+     *
+     * @param connection       The remote connection details (user and host).
+     * @param password         The password for the SSH connection.
+     * @param userInfo         The JSch UserInfo implementation for handling host key verification.
+     * @param captureDirectory Where to keep the rotating capture files.
+     * @param scanner          The scanner to report handshakes to; it reports each handshake once.
+     * @param converter        Turns the handshakes into 22000 lines as they complete; may be null.
+     */
+    public void startCapture(RemoteConnection connection, String password, UserInfo userInfo, Path captureDirectory,
+                             HandshakeScanner scanner, Hc22000Converter converter) {
+        if (!running.compareAndSet(false, true)) {
+            onOutput.accept("Error: A session is already active. Please stop it first.");
+            return;
+        }
+        clearStopRequest();
+
+        new Thread(() -> {
+            try {
+                InputStream in = openCaptureStream(connection, password, userInfo);
+                if (in == null || stopRequested) {
+                    // Stopped while connecting: the channel (if any) is already closed.
+                    onOutput.accept("Capture stopped before it started.");
+                    return;
+                }
+
+                String prefix = connection.getName().replaceAll("[^A-Za-z0-9._-]", "_");
+                try (RotatingPcapWriter writer = new RotatingPcapWriter(captureDirectory, prefix,
+                        RotatingPcapWriter.DEFAULT_MAX_FILE_BYTES, RotatingPcapWriter.DEFAULT_MAX_FILES)) {
+                    List<PcapReader.PacketHandler> handlers = new ArrayList<>(3);
+                    handlers.add(writer);
+                    handlers.add(scanner.newDecoder());
+                    if (converter != null) {
+                        handlers.add(converter.newDecoder());
+                    }
+                    LiveCapture capture = new LiveCapture(handlers.toArray(new PcapReader.PacketHandler[0]));
+                    liveCapture = capture;
+                    onOutput.accept("Capturing to " + captureDirectory + " ...");
+                    long packets = capture.run(in);
+                    onOutput.accept("Capture finished: " + packets + " packets, "
+                            + scanner.getCandidates().stream().filter(HandshakeCandidate::isCrackable).count()
+                            + " crackable handshakes.");
+                }
+                ChannelExec finished;
+                synchronized (channelLock) {
+                    finished = channel;
+                }
+                if (finished != null && finished.isClosed() && finished.getExitStatus() > 0) {
+                    onOutput.accept("tcpdump exited with code " + finished.getExitStatus()
+                            + ". (This could be due to permissions issues, e.g., needing sudo password, or an invalid interface).");
+                }
+            } catch (JSchException e) {
+                reportSshError(e, connection);
+            } catch (IOException e) {
+                // Also how a capture ends when stopCapture() closes the channel under the reader.
+                if (!stopRequested) {
+                    onOutput.accept("Capture stream error: " + e.getMessage());
+                    e.printStackTrace();
+                }
+            } catch (Exception e) {
+                onOutput.accept("An unexpected error occurred: " + e.getMessage());
+                e.printStackTrace();
+            } finally {
+                closeChannel();
+                running.set(false);
             }
         }).start();
     }
 
     /**
-     * Stops the currently active sniffing session and disconnects from the remote host.
+     * Starts the remote binary capture and returns its raw pcap output. Capture threads only; tests override it to
+     * capture from a local stream.
+     *
+     * @param connection The remote connection details (user and host).
+     * @param password   The password for the SSH connection.
+     * @param userInfo   The JSch UserInfo implementation for handling host key verification.
+     * @return The pcap stream, or null if the run was stopped while connecting.
+     * @throws JSchException If the command cannot be started.
+     */
+    InputStream openCaptureStream(RemoteConnection connection, String password, UserInfo userInfo) throws JSchException {
+        // -U: Write each packet as soon as it is captured rather than when the output buffer fills.
+        // -w -: Write raw pcap to stdout; tcpdump's own messages go to stderr.
+        String command = "sudo tcpdump -i wlan0 -U -w -";
+        onOutput.accept("Executing remote command: " + command);
+
+        InputStream[] stdout = new InputStream[1];
+        ChannelExec opened = openChannel(connection, password, userInfo, command, c -> {
+            c.setErrStream(new LineOutputStream(onOutput), true);
+            stdout[0] = c.getInputStream();
+        });
+        return publishChannel(opened) ? stdout[0] : null;
+    }
+
+    /**
+     * Opens an exec channel for a command on the host's pooled session.
+     */
+    private ChannelExec openChannel(RemoteConnection connection, String password, UserInfo userInfo, String command,
+                                    StreamSetup setup) throws JSchException {
+        if (!sessionPool.isConnected(connection)) {
+            onOutput.accept("Connecting to " + connection.getConnectionString() + "...");
+        }
+        ChannelExec opened = sessionPool.openExec(connection, password, userInfo, command, c -> {
+            try {
+                setup.configure(c);
+            } catch (IOException e) {
+                throw new JSchException("Cannot read command output", e);
+            }
+        });
+        onOutput.accept("Connection established successfully.");
+        return opened;
+    }
+
+    /**
+     * Makes a freshly opened channel the current one, unless a stop was requested while it was connecting; then the
+     * channel is closed instead.
+     *
+     * @param opened The open channel.
+     * @return Whether the run should go on.
+     */
+    private boolean publishChannel(ChannelExec opened) {
+        synchronized (channelLock) {
+            if (!stopRequested) {
+                channel = opened;
+                return true;
+            }
+        }
+        opened.disconnect();
+        return false;
+    }
+
+    /**
+     * Forgets a stop requested for an earlier run. Called on the starting thread, so a stop issued once start has
+     * returned always applies to the new run.
+     */
+    private void clearStopRequest() {
+        synchronized (channelLock) {
+            stopRequested = false;
+        }
+    }
+
+    /**
+     * Sets up a channel's streams before it connects.
+     */
+    private interface StreamSetup {
+        void configure(ChannelExec channel) throws IOException;
+    }
+
+    /**
+     * Translates common SSH failures into readable messages.
+     */
+    private void reportSshError(JSchException e, RemoteConnection connection) {
+        // Specific SSH error handling.
+        String errorMessage = e.getMessage();
+        if (errorMessage.contains("Auth fail")) {
+            onOutput.accept("SSH Error: Authentication failed. Please check your password.");
+        } else if (errorMessage.contains("UnknownHostException")) {
+            onOutput.accept("SSH Error: Unknown host. Could not resolve " + connection.getConnectionString());
+        } else if (errorMessage.contains("Connection timed out")) {
+            onOutput.accept("SSH Error: Connection timed out. Check host address and network.");
+        } else if (errorMessage.contains("reject HostKey")) {
+            onOutput.accept("SSH Error: Host key rejected by user.");
+        } else {
+            onOutput.accept("SSH Error: " + errorMessage);
+        }
+        e.printStackTrace();
+    }
+
+    /**
+     * Returns whether a sniffing or capture run is in progress.
+     *
+     * @return true from start until the run ends.
+     */
+    public boolean isActive() {
+        return running.get();
+    }
+
+    /**
+     * Returns the binary capture of the current session, for its packet counts.
+     *
+     * @return The capture, or null if none has started.
+     */
+    public LiveCapture getLiveCapture() {
+        return liveCapture;
+    }
+
+    /**
+     * Stops the currently active sniffing session. The SSH session stays in the pool for the next run.
      */
     public void stopSniffing() {
-        if (channel != null && channel.isConnected()) {
-            channel.disconnect();
+        synchronized (channelLock) {
+            // Also seen by a run still connecting, which has no channel to close yet.
+            stopRequested = true;
+        }
+        if (closeChannel()) {
+            onOutput.accept("Stopped the remote command.");
         }
-        if (session != null && session.isConnected()) {
-            session.disconnect();
-            onOutput.accept("Disconnected from remote host.");
+    }
+
+    /**
+     * Closes the command's channel, which ends the remote tcpdump when it next writes.
+     *
+     * @return Whether a channel was open.
+     */
+    private boolean closeChannel() {
+        ChannelExec current;
+        synchronized (channelLock) {
+            current = channel;
+            channel = null;
+        }
+        if (current != null && current.isConnected()) {
+            current.disconnect();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Passes the remote command's stderr to the output callback a line at a time.
+     */
+    private static class LineOutputStream extends OutputStream {
+        private final Consumer<String> onLine;
+        private final ByteArrayOutputStream line = new ByteArrayOutputStream();
+
+        LineOutputStream(Consumer<String> onLine) {
+            this.onLine = onLine;
+        }
+
+        @Override
+        public synchronized void write(int b) {
+            if (b == '\n') {
+                onLine.accept(line.toString(StandardCharsets.UTF_8).trim());
+                line.reset();
+            } else if (line.size() < 4096) {
+                line.write(b);
+            }
         }
-        session = null;
-        channel = null;
     }
 }
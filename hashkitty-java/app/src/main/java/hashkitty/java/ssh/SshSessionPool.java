@@ -0,0 +1,387 @@
+package hashkitty.java.ssh;
+
+import com.jcraft.jsch.ChannelExec;
+import com.jcraft.jsch.JSch;
+import com.jcraft.jsch.JSchException;
+import com.jcraft.jsch.Session;
+import com.jcraft.jsch.UserInfo;
+import hashkitty.java.model.RemoteConnection;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps one SSH session open per remote host and runs commands over it as separate exec channels.
+ * <p>
+ * Connecting costs a TCP handshake, key exchange and authentication, up to {@link #CONNECT_TIMEOUT_MS} on a poor
+ * link. The pool connects once per {@link RemoteConnection} and reuses the session for every command: a capture,
+ * a status query and a file listing can run side by side on one connection (up to the server's channel limit,
+ * ten for a default OpenSSH).
+ * </p>
+ * <p>
+ * Sessions are kept healthy in two ways. The session sends SSH keep-alives every {@link #KEEP_ALIVE_INTERVAL_MS}
+ * and drops itself after {@link #KEEP_ALIVE_COUNT_MAX} unanswered ones. A health-check thread also sends a
+ * keep-alive every {@link #HEALTH_CHECK_INTERVAL_MS} and evicts sessions that fail it, so the next caller
+ * reconnects cleanly instead of finding out through a failed channel. After a failed connect, the host is not
+ * retried for a backoff period (doubling from {@link #MIN_BACKOFF_MS} to {@link #MAX_BACKOFF_MS}). Callers during
+ * that period fail fast, so a sensor on a flaky link does not cause a storm of reconnects. Concurrent callers for
+ * the same host share one connection attempt.
+ * </p>
+ * <p>
+ * Connection strings are {@code user@host} or {@code user@host:port}.
+ * </p>
+ */
+public class SshSessionPool {
+
+    static final int CONNECT_TIMEOUT_MS = 30_000;
+    static final int CHANNEL_TIMEOUT_MS = 5_000;
+    static final int KEEP_ALIVE_INTERVAL_MS = 15_000;
+    static final int KEEP_ALIVE_COUNT_MAX = 3;
+    static final long HEALTH_CHECK_INTERVAL_MS = 30_000;
+    static final long MIN_BACKOFF_MS = 1_000;
+    static final long MAX_BACKOFF_MS = 60_000;
+
+    private static final SshSessionPool DEFAULT = new SshSessionPool(HEALTH_CHECK_INTERVAL_MS);
+
+    /**
+     * The output of a command run with {@link #exec}.
+     */
+    public static final class ExecResult {
+        private final int exitStatus;
+        private final String stdout;
+        private final String stderr;
+
+        ExecResult(int exitStatus, String stdout, String stderr) {
+            this.exitStatus = exitStatus;
+            this.stdout = stdout;
+            this.stderr = stderr;
+        }
+
+        /** @return The exit status, or -1 if the command did not report one before its channel closed. */
+        public int getExitStatus() {
+            return exitStatus;
+        }
+
+        public String getStdout() {
+            return stdout;
+        }
+
+        public String getStderr() {
+            return stderr;
+        }
+    }
+
+    /**
+     * One host's session, or its backoff after a failed connect.
+     */
+    private static final class Entry {
+        Session session;
+        long failures;
+        long retryAtMillis;
+        String lastError;
+    }
+
+    /** Entries by connection string. The map is guarded by {@code this}; each entry by itself. */
+    private final Map<String, Entry> entries = new HashMap<>();
+    private final long healthCheckIntervalMs;
+    private Thread healthChecker;
+    /** Session options applied before connecting, e.g. host key policy in tests. */
+    private final Map<String, String> sessionConfig = new HashMap<>();
+
+    /**
+     * Creates a pool.
+     *
+     * @param healthCheckIntervalMs How often idle sessions are probed.
+     */
+    public SshSessionPool(long healthCheckIntervalMs) {
+        this.healthCheckIntervalMs = healthCheckIntervalMs;
+    }
+
+    /**
+     * Returns the application-wide pool.
+     *
+     * @return The pool.
+     */
+    public static SshSessionPool getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * Sets a JSch session option for sessions connected from now on.
+     *
+     * @param key   The option name, e.g. {@code StrictHostKeyChecking}.
+     * @param value Its value.
+     */
+    public synchronized void setSessionConfig(String key, String value) {
+        sessionConfig.put(key, value);
+    }
+
+    /**
+     * Returns a connected session for a host, connecting if there is none or the pooled one has dropped.
+     *
+     * @param connection The host.
+     * @param password   The password, used if a connection has to be made.
+     * @param userInfo   Handles host key prompts; may be null.
+     * @return The session. Do not disconnect it; close channels instead.
+     * @throws JSchException If connecting fails, or the host is in backoff after an earlier failure.
+     */
+    public Session acquire(RemoteConnection connection, String password, UserInfo userInfo) throws JSchException {
+        Entry entry;
+        synchronized (this) {
+            entry = entries.computeIfAbsent(connection.getConnectionString(), key -> new Entry());
+            startHealthChecker();
+        }
+        // Callers for the same host wait here for one connection attempt instead of starting their own.
+        synchronized (entry) {
+            if (entry.session != null && entry.session.isConnected()) {
+                return entry.session;
+            }
+            long now = System.currentTimeMillis();
+            if (now < entry.retryAtMillis) {
+                throw new JSchException("Not retrying " + connection.getConnectionString() + " for another "
+                        + ((entry.retryAtMillis - now + 999) / 1000) + " s after: " + entry.lastError);
+            }
+            try {
+                entry.session = connect(connection, password, userInfo);
+                entry.failures = 0;
+                entry.retryAtMillis = 0;
+                return entry.session;
+            } catch (JSchException e) {
+                entry.session = null;
+                entry.failures++;
+                entry.lastError = e.getMessage();
+                entry.retryAtMillis = System.currentTimeMillis()
+                        + Math.min(MAX_BACKOFF_MS, MIN_BACKOFF_MS << Math.min(entry.failures - 1, 16));
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Opens an exec channel on a pooled session and connects it. The caller reads its streams and closes it with
+     * {@link ChannelExec#disconnect()}; the session stays open.
+     *
+     * @param connection The host.
+     * @param password   The password, used if a connection has to be made.
+     * @param userInfo   Handles host key prompts; may be null.
+     * @param command    The command line.
+     * @param setup      Called with the channel before it connects (to set streams), or null.
+     * @return The connected channel.
+     * @throws JSchException If the session or channel cannot be opened.
+     */
+    public ChannelExec openExec(RemoteConnection connection, String password, UserInfo userInfo, String command,
+                                ChannelSetup setup) throws JSchException {
+        Session session = acquire(connection, password, userInfo);
+        ChannelExec channel;
+        try {
+            channel = (ChannelExec) session.openChannel("exec");
+        } catch (JSchException e) {
+            // The session died between the check and the channel: evict it and try once on a fresh one.
+            evict(connection);
+            channel = (ChannelExec) acquire(connection, password, userInfo).openChannel("exec");
+        }
+        channel.setCommand(command);
+        channel.setInputStream(null);
+        if (setup != null) {
+            setup.configure(channel);
+        }
+        channel.connect(CHANNEL_TIMEOUT_MS);
+        return channel;
+    }
+
+    /**
+     * Prepares a channel before it connects.
+     */
+    public interface ChannelSetup {
+        void configure(ChannelExec channel) throws JSchException;
+    }
+
+    /**
+     * Runs a command to completion and collects its output.
+     *
+     * @param connection The host.
+     * @param password   The password, used if a connection has to be made.
+     * @param userInfo   Handles host key prompts; may be null.
+     * @param command    The command line.
+     * @return The exit status and output.
+     * @throws JSchException If the session or channel cannot be opened.
+     * @throws IOException   If reading the output fails.
+     */
+    public ExecResult exec(RemoteConnection connection, String password, UserInfo userInfo, String command)
+            throws JSchException, IOException {
+        ByteArrayOutputStream stderr = new ByteArrayOutputStream();
+        InputStream[] stdout = new InputStream[1];
+        ChannelExec channel = openExec(connection, password, userInfo, command, c -> {
+            c.setErrStream(stderr, true);
+            try {
+                stdout[0] = c.getInputStream();
+            } catch (IOException e) {
+                throw new JSchException("Cannot read command output", e);
+            }
+        });
+        try {
+            byte[] output = stdout[0].readAllBytes();
+            // The exit status arrives just before the channel closes, after the last output.
+            for (int i = 0; i < 100 && !channel.isClosed(); i++) {
+                try {
+                    Thread.sleep(10);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+            return new ExecResult(channel.getExitStatus(), new String(output, StandardCharsets.UTF_8),
+                    stderr.toString(StandardCharsets.UTF_8));
+        } finally {
+            channel.disconnect();
+        }
+    }
+
+    /**
+     * Disconnects and forgets a host's session (and its backoff).
+     *
+     * @param connection The host.
+     */
+    public void evict(RemoteConnection connection) {
+        Entry entry;
+        synchronized (this) {
+            entry = entries.remove(connection.getConnectionString());
+        }
+        if (entry != null) {
+            synchronized (entry) {
+                if (entry.session != null) {
+                    entry.session.disconnect();
+                    entry.session = null;
+                }
+            }
+        }
+    }
+
+    /**
+     * Disconnects every session and stops the health checks.
+     */
+    public void closeAll() {
+        List<Entry> all;
+        synchronized (this) {
+            all = new ArrayList<>(entries.values());
+            entries.clear();
+            if (healthChecker != null) {
+                healthChecker.interrupt();
+                healthChecker = null;
+            }
+        }
+        for (Entry entry : all) {
+            synchronized (entry) {
+                if (entry.session != null) {
+                    entry.session.disconnect();
+                    entry.session = null;
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns whether a host has a connected session in the pool.
+     *
+     * @param connection The host.
+     * @return true if connected.
+     */
+    public synchronized boolean isConnected(RemoteConnection connection) {
+        Entry entry = entries.get(connection.getConnectionString());
+        Session session = entry != null ? entry.session : null;
+        return session != null && session.isConnected();
+    }
+
+    /**
+     * Probes every pooled session with a keep-alive and drops the ones that fail. Runs on the health-check
+     * thread; callable directly.
+     */
+    public void checkHealth() {
+        List<Entry> all;
+        synchronized (this) {
+            all = new ArrayList<>(entries.values());
+        }
+        for (Entry entry : all) {
+            Session session;
+            synchronized (entry) {
+                session = entry.session;
+            }
+            if (session == null) {
+                continue;
+            }
+            boolean healthy = session.isConnected();
+            if (healthy) {
+                try {
+                    session.sendKeepAliveMsg();
+                } catch (Exception e) {
+                    healthy = false;
+                }
+            }
+            if (!healthy) {
+                synchronized (entry) {
+                    if (entry.session == session) {
+                        session.disconnect();
+                        entry.session = null;
+                    }
+                }
+            }
+        }
+    }
+
+    private Session connect(RemoteConnection connection, String password, UserInfo userInfo) throws JSchException {
+        String connectionString = connection.getConnectionString();
+        int at = connectionString.indexOf('@');
+        if (at <= 0 || at == connectionString.length() - 1) {
+            throw new JSchException("Invalid connection string format. Expected user@host or user@host:port.");
+        }
+        String user = connectionString.substring(0, at);
+        String host = connectionString.substring(at + 1);
+        int port = 22;
+        int colon = host.lastIndexOf(':');
+        if (colon > 0 && host.indexOf(':') == colon) {
+            try {
+                port = Integer.parseInt(host.substring(colon + 1));
+                host = host.substring(0, colon);
+            } catch (NumberFormatException e) {
+                throw new JSchException("Invalid port in " + connectionString);
+            }
+        }
+
+        Session session = new JSch().getSession(user, host, port);
+        session.setPassword(password);
+        session.setUserInfo(userInfo);
+        synchronized (this) {
+            for (Map.Entry<String, String> option : sessionConfig.entrySet()) {
+                session.setConfig(option.getKey(), option.getValue());
+            }
+        }
+        session.setServerAliveInterval(KEEP_ALIVE_INTERVAL_MS);
+        session.setServerAliveCountMax(KEEP_ALIVE_COUNT_MAX);
+        session.connect(CONNECT_TIMEOUT_MS);
+        return session;
+    }
+
+    private void startHealthChecker() {
+        if (healthChecker != null) {
+            return;
+        }
+        healthChecker = new Thread(() -> {
+            while (!Thread.currentThread().isInterrupted()) {
+                try {
+                    Thread.sleep(healthCheckIntervalMs);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                checkHealth();
+            }
+        }, "ssh-pool-health");
+        healthChecker.setDaemon(true);
+        healthChecker.start();
+    }
+}
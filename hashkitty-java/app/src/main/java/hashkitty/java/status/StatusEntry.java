@@ -0,0 +1,87 @@
+package hashkitty.java.status;
+
+import java.util.Locale;
+
+/**
+ * One line of the status log: a message with its time, severity and origin.
+ * <p>
+ * The severity is inferred from the message text, since status callbacks throughout the app pass plain strings
+ * and mark errors and warnings with the usual prefixes ("Error", "Warning", "SUCCESS").
+ * </p>
+ */
+public class StatusEntry {
+
+    /**
+     * How important a status message is. Declared in increasing order, so a minimum severity can be compared
+     * with {@link #compareTo}.
+     */
+    public enum Severity {
+        INFO, SUCCESS, WARNING, ERROR;
+
+        /**
+         * Infers the severity of a status message.
+         *
+         * @param message The message text.
+         * @return The inferred severity.
+         */
+        public static Severity classify(String message) {
+            if (message == null) {
+                return INFO;
+            }
+            String lower = message.toLowerCase(Locale.ROOT);
+            if (lower.startsWith("error") || lower.contains(" error") || lower.contains("failed") || lower.contains("exception")) {
+                return ERROR;
+            }
+            if (lower.startsWith("warning")) {
+                return WARNING;
+            }
+            if (lower.startsWith("success") || lower.contains("cracked")) {
+                return SUCCESS;
+            }
+            return INFO;
+        }
+    }
+
+    private final long time;
+    private final Severity severity;
+    private final String source;
+    private final String jobId;
+    private final String message;
+
+    /**
+     * Constructs an entry.
+     *
+     * @param time     When the message was reported, in epoch milliseconds.
+     * @param severity The severity.
+     * @param source   The reporting component ("hashcat", "relay", "upload", "app").
+     * @param jobId    The Hashcat job the message belongs to, or null.
+     * @param message  The message text.
+     */
+    public StatusEntry(long time, Severity severity, String source, String jobId, String message) {
+        this.time = time;
+        this.severity = severity;
+        this.source = source;
+        this.jobId = jobId;
+        this.message = message;
+    }
+
+    public long getTime() { return time; }
+    public Severity getSeverity() { return severity; }
+    public String getSource() { return source; }
+    public String getJobId() { return jobId; }
+    public String getMessage() { return message; }
+
+    /**
+     * Checks whether the entry's source, job ID or message contains a text, ignoring case.
+     *
+     * @param lowerCaseText The text to look for, already in lower case.
+     * @return true if any field contains it.
+     */
+    public boolean matches(String lowerCaseText) {
+        return contains(message, lowerCaseText) || contains(jobId, lowerCaseText) || contains(source, lowerCaseText);
+    }
+
+    private static boolean contains(String field, String lowerCaseText) {
+        return field != null && field.toLowerCase(Locale.ROOT).contains(lowerCaseText);
+    }
+}
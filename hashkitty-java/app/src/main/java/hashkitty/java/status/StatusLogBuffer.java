@@ -0,0 +1,84 @@
+package hashkitty.java.status;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Collects status entries from any thread until the UI picks them up in one batch.
+ * <p>
+ * Reporting a status must never cost the reporter a UI round trip: Hashcat's output reader and the relay
+ * clients can produce thousands of messages per second. Entries are therefore only queued here, and the
+ * {@link StatusLogView} drains the queue at most once per rendered frame. The queue holds at most
+ * {@code capacity} entries; if the UI falls behind by more than that (the window is minimized, or the FX thread
+ * is busy), the oldest waiting entries are discarded, since the log would drop them anyway.
+ * </p>
+ */
+public class StatusLogBuffer {
+
+    private final int capacity;
+
+    /** Entries waiting for the UI, oldest first. Guarded by {@code this}. */
+    private ArrayDeque<StatusEntry> pending = new ArrayDeque<>();
+
+    /** Entries discarded because the UI fell behind. Guarded by {@code this}. */
+    private long dropped;
+
+    /**
+     * Constructs a buffer.
+     *
+     * @param capacity The most entries kept waiting; also the size of the log itself.
+     */
+    public StatusLogBuffer(int capacity) {
+        this.capacity = capacity;
+    }
+
+    /**
+     * Queues an entry. Safe to call from any thread; never blocks on the UI.
+     *
+     * @param entry The entry.
+     */
+    public synchronized void append(StatusEntry entry) {
+        if (pending.size() >= capacity) {
+            pending.pollFirst();
+            dropped++;
+        }
+        pending.addLast(entry);
+    }
+
+    /**
+     * Takes every waiting entry.
+     *
+     * @return The entries, oldest first; empty if nothing was queued.
+     */
+    public List<StatusEntry> drain() {
+        ArrayDeque<StatusEntry> batch;
+        synchronized (this) {
+            if (pending.isEmpty()) {
+                return List.of();
+            }
+            // Swap rather than copy under the lock, so reporters are held up for as little as possible.
+            batch = pending;
+            pending = new ArrayDeque<>();
+        }
+        return new ArrayList<>(batch);
+    }
+
+    /**
+     * Returns how many entries were discarded before the UI could show them.
+     *
+     * @return The number of dropped entries.
+     */
+    public synchronized long getDroppedCount() {
+        return dropped;
+    }
+
+    /**
+     * Returns the most entries kept.
+     *
+     * @return The capacity.
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+}
@@ -0,0 +1,194 @@
+package hashkitty.java.status;
+
+import javafx.animation.AnimationTimer;
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+import javafx.collections.transformation.FilteredList;
+import javafx.geometry.Pos;
+import javafx.scene.control.CheckBox;
+import javafx.scene.control.ChoiceBox;
+import javafx.scene.control.Label;
+import javafx.scene.control.ListCell;
+import javafx.scene.control.ListView;
+import javafx.scene.control.TextField;
+import javafx.scene.layout.HBox;
+import javafx.scene.layout.Priority;
+import javafx.scene.layout.VBox;
+import javafx.util.StringConverter;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * The status log panel: a virtualized list of the most recent status entries, with severity and text filters.
+ * <p>
+ * Entries arrive through a {@link StatusLogBuffer} from any thread. An {@link AnimationTimer} drains the buffer
+ * once per frame and applies the whole batch to the list in one change, so the FX thread does a bounded amount
+ * of work per frame however fast messages arrive, instead of one {@code Platform.runLater} per message. The list
+ * keeps at most the buffer's capacity; older entries are removed in the same change. Because {@link ListView}
+ * only creates cells for the visible rows, rendering cost does not grow with the log.
+ * </p>
+ * <p>
+ * The text filter matches the message, the source ("hashcat", "relay", "upload", "app") and the Hashcat job ID,
+ * so typing a job ID shows just that job's lines. The view must be created and used on the FX thread.
+ * </p>
+ */
+public class StatusLogView {
+
+    private static final DateTimeFormatter TIME = DateTimeFormatter.ofPattern("HH:mm:ss").withZone(ZoneId.systemDefault());
+
+    private final StatusLogBuffer buffer;
+    private final ObservableList<StatusEntry> entries = FXCollections.observableArrayList();
+    private final FilteredList<StatusEntry> visibleEntries = new FilteredList<>(entries);
+    private final ListView<StatusEntry> listView = new ListView<>(visibleEntries);
+    private final ChoiceBox<StatusEntry.Severity> minimumSeverity = new ChoiceBox<>();
+    private final TextField filterField = new TextField();
+    private final CheckBox followCheckBox = new CheckBox("Follow");
+    private final Label droppedLabel = new Label();
+    private final VBox node;
+
+    private final AnimationTimer drainTimer = new AnimationTimer() {
+        @Override
+        public void handle(long now) {
+            applyBatch(buffer.drain());
+        }
+    };
+
+    /**
+     * Builds the panel. Call {@link #start()} to begin showing entries.
+     *
+     * @param buffer The buffer status reporters append to.
+     */
+    public StatusLogView(StatusLogBuffer buffer) {
+        this.buffer = buffer;
+
+        listView.setCellFactory(list -> new StatusCell());
+        listView.setPrefHeight(150);
+        listView.getStylesheets().add(getClass().getResource("/styles/status-log.css").toExternalForm());
+        listView.getStyleClass().add("status-log");
+
+        minimumSeverity.getItems().addAll(StatusEntry.Severity.INFO, StatusEntry.Severity.WARNING, StatusEntry.Severity.ERROR);
+        minimumSeverity.setValue(StatusEntry.Severity.INFO);
+        minimumSeverity.setConverter(new StringConverter<>() {
+            @Override
+            public String toString(StatusEntry.Severity severity) {
+                if (severity == null) return "";
+                switch (severity) {
+                    case WARNING: return "Warnings and errors";
+                    case ERROR: return "Errors only";
+                    default: return "All messages";
+                }
+            }
+
+            @Override
+            public StatusEntry.Severity fromString(String string) {
+                return null;
+            }
+        });
+        minimumSeverity.valueProperty().addListener((obs, oldValue, newValue) -> updateFilter());
+
+        filterField.setPromptText("Filter by job ID, source or text");
+        filterField.textProperty().addListener((obs, oldValue, newValue) -> updateFilter());
+        HBox.setHgrow(filterField, Priority.ALWAYS);
+
+        followCheckBox.setSelected(true);
+
+        HBox controls = new HBox(10, minimumSeverity, filterField, followCheckBox, droppedLabel);
+        controls.setAlignment(Pos.CENTER_LEFT);
+        node = new VBox(5, controls, listView);
+        VBox.setVgrow(listView, Priority.ALWAYS);
+    }
+
+    /**
+     * Returns the panel to place in the scene.
+     *
+     * @return The root node.
+     */
+    public VBox getNode() {
+        return node;
+    }
+
+    /**
+     * Starts draining the buffer once per frame.
+     */
+    public void start() {
+        drainTimer.start();
+    }
+
+    /**
+     * Stops draining the buffer.
+     */
+    public void stop() {
+        drainTimer.stop();
+    }
+
+    /**
+     * Adds a batch of entries in one list change and trims the oldest beyond the capacity.
+     */
+    private void applyBatch(List<StatusEntry> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        int capacity = buffer.getCapacity();
+        if (batch.size() >= capacity) {
+            // The batch alone fills the log: replace everything with its newest entries.
+            entries.setAll(batch.subList(batch.size() - capacity, batch.size()));
+        } else {
+            int overflow = entries.size() + batch.size() - capacity;
+            if (overflow > 0) {
+                entries.remove(0, overflow);
+            }
+            entries.addAll(batch);
+        }
+        long dropped = buffer.getDroppedCount();
+        if (dropped > 0) {
+            droppedLabel.setText(dropped + " skipped");
+        }
+        if (followCheckBox.isSelected() && !visibleEntries.isEmpty()) {
+            listView.scrollTo(visibleEntries.size() - 1);
+        }
+    }
+
+    /**
+     * Re-applies the severity and text filters.
+     */
+    private void updateFilter() {
+        StatusEntry.Severity minimum = minimumSeverity.getValue() != null ? minimumSeverity.getValue() : StatusEntry.Severity.INFO;
+        String text = filterField.getText() == null ? "" : filterField.getText().trim().toLowerCase(Locale.ROOT);
+        boolean allSeverities = minimum == StatusEntry.Severity.INFO;
+        if (allSeverities && text.isEmpty()) {
+            visibleEntries.setPredicate(null);
+            return;
+        }
+        visibleEntries.setPredicate(entry ->
+                (allSeverities || entry.getSeverity().compareTo(minimum) >= 0)
+                        && (text.isEmpty() || entry.matches(text)));
+    }
+
+    /**
+     * Renders one entry as "time [job] message", coloured by severity.
+     */
+    private static class StatusCell extends ListCell<StatusEntry> {
+
+        private static final String[] SEVERITY_CLASSES = {"status-info", "status-success", "status-warning", "status-error"};
+
+        @Override
+        protected void updateItem(StatusEntry entry, boolean empty) {
+            super.updateItem(entry, empty);
+            getStyleClass().removeAll(SEVERITY_CLASSES);
+            if (empty || entry == null) {
+                setText(null);
+                return;
+            }
+            StringBuilder text = new StringBuilder(TIME.format(Instant.ofEpochMilli(entry.getTime()))).append("  ");
+            if (entry.getJobId() != null) {
+                text.append('[').append(entry.getJobId()).append("] ");
+            }
+            setText(text.append(entry.getMessage()).toString());
+            getStyleClass().add(SEVERITY_CLASSES[entry.getSeverity().ordinal()]);
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package hashkitty.java.transfer;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+
+/**
+ * Encodes and decodes the binary WebSocket frames that carry upload data.
+ * <p>
+ * Layout (big-endian):
+ * <pre>
+ *   magic "HKUP" (4) | version (1) | id length (1) | upload id (ASCII) | offset (8) | data length (4) | CRC-32 (4) | data
+ * </pre>
+ * Decoding does not copy the data: {@link #getData()} is a slice of the received frame, so it can be
+ * written straight to a {@link java.nio.channels.FileChannel}.
+ * </p>
+ */
+public final class ChunkFrame {
+
+    /** "HKUP" in ASCII; lets receivers ignore unrelated binary frames. */
+    static final int MAGIC = 0x484B5550;
+    /** Current frame format version. */
+    static final byte VERSION = 1;
+    /** Longest allowed upload ID. */
+    static final int MAX_ID_LENGTH = 64;
+    /** Header size excluding the upload ID. */
+    private static final int FIXED_HEADER = 4 + 1 + 1 + 8 + 4 + 4;
+
+    private final String uploadId;
+    private final long offset;
+    private final long crc;
+    private final ByteBuffer data;
+
+    private ChunkFrame(String uploadId, long offset, long crc, ByteBuffer data) {
+        this.uploadId = uploadId;
+        this.offset = offset;
+        this.crc = crc;
+        this.data = data;
+    }
+
+    /**
+     * Returns the buffer size needed to encode a chunk of the given size.
+     *
+     * @param uploadId  The upload ID.
+     * @param chunkSize The maximum data size.
+     * @return The frame buffer capacity.
+     */
+    public static int frameCapacity(String uploadId, int chunkSize) {
+        return FIXED_HEADER + uploadId.length() + chunkSize;
+    }
+
+    /**
+     * Writes a frame into {@code frame} (cleared first) from the remaining bytes of {@code data}.
+     * The frame buffer is flipped and ready to send on return.
+     *
+     * @param frame    The destination buffer, at least {@link #frameCapacity} bytes.
+     * @param uploadId The upload ID (ASCII, at most {@link #MAX_ID_LENGTH} characters).
+     * @param offset   The file offset of the first data byte.
+     * @param data     The chunk data (position to limit); consumed by this call.
+     */
+    public static void encode(ByteBuffer frame, String uploadId, long offset, ByteBuffer data) {
+        byte[] id = uploadId.getBytes(StandardCharsets.US_ASCII);
+        CRC32 crc = new CRC32();
+        crc.update(data.duplicate());
+
+        frame.clear();
+        frame.putInt(MAGIC);
+        frame.put(VERSION);
+        frame.put((byte) id.length);
+        frame.put(id);
+        frame.putLong(offset);
+        frame.putInt(data.remaining());
+        frame.putInt((int) crc.getValue());
+        frame.put(data);
+        frame.flip();
+    }
+
+    /**
+     * Parses a received frame.
+     *
+     * @param frame The received binary message.
+     * @return The decoded chunk, or null if the frame is not an upload chunk.
+     * @throws IllegalArgumentException If the frame claims to be a chunk but is malformed.
+     */
+    public static ChunkFrame decode(ByteBuffer frame) {
+        ByteBuffer in = frame.duplicate();
+        if (in.remaining() < FIXED_HEADER || in.getInt() != MAGIC) {
+            return null;
+        }
+        if (in.get() != VERSION) {
+            throw new IllegalArgumentException("Unsupported chunk frame version");
+        }
+        int idLength = in.get() & 0xff;
+        if (idLength == 0 || idLength > MAX_ID_LENGTH || in.remaining() < idLength + 16) {
+            throw new IllegalArgumentException("Malformed chunk frame header");
+        }
+        byte[] id = new byte[idLength];
+        in.get(id);
+        long offset = in.getLong();
+        int length = in.getInt();
+        long crc = in.getInt() & 0xffffffffL;
+        if (offset < 0 || length < 0 || length != in.remaining()) {
+            throw new IllegalArgumentException("Chunk frame length mismatch");
+        }
+        return new ChunkFrame(new String(id, StandardCharsets.US_ASCII), offset, crc, in.slice());
+    }
+
+    /**
+     * Checks the data against the CRC-32 carried in the header.
+     *
+     * @return true if the data is intact.
+     */
+    public boolean isIntact() {
+        CRC32 actual = new CRC32();
+        actual.update(data.duplicate());
+        return actual.getValue() == crc;
+    }
+
+    /** @return The upload ID. */
+    public String getUploadId() { return uploadId; }
+
+    /** @return The file offset of the first data byte. */
+    public long getOffset() { return offset; }
+
+    /** @return A read-only view of the chunk data. */
+    public ByteBuffer getData() { return data.asReadOnlyBuffer(); }
+}
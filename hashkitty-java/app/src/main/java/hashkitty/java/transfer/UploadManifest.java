@@ -0,0 +1,31 @@
+package hashkitty.java.transfer;
+
+import com.google.gson.annotations.SerializedName;
+
+/**
+ * Describes a file being streamed through the relay (the payload of an "upload_begin" message).
+ * <p>
+ * The sender announces the total size and the SHA-256 of the whole file up front, so the receiver can
+ * check free disk space before accepting any data, and verify the assembled file once the last chunk lands.
+ * </p>
+ */
+public class UploadManifest {
+
+    /** Unique ID of the upload, chosen by the sender. Also used to resume an interrupted upload. */
+    @SerializedName("upload_id")
+    public String uploadId;
+
+    /** Original file name (informational; the receiver sanitizes it before using it on disk). */
+    @SerializedName("file_name")
+    public String fileName;
+
+    /** Total size of the file in bytes. */
+    public long size;
+
+    /** Size of each chunk in bytes (the last chunk may be shorter). */
+    @SerializedName("chunk_size")
+    public int chunkSize;
+
+    /** Lowercase hex SHA-256 of the complete file. */
+    public String sha256;
+}
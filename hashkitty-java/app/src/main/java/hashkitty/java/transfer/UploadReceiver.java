@@ -0,0 +1,478 @@
+package hashkitty.java.transfer;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonSyntaxException;
+import hashkitty.java.relay.RelayClient;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+
+/**
+ * Receives files streamed through the relay by an {@link UploadSender} and writes them straight to disk.
+ * <p>
+ * <b>Protocol:</b>
+ * <ol>
+ *     <li>The sender announces an upload with an "upload_begin" message carrying an {@link UploadManifest}.</li>
+ *     <li>The receiver answers with an "upload_status" ({@link UploadStatus}) telling the sender the offset to
+ *     start from: 0 for a new upload, or the number of bytes already on disk when resuming.</li>
+ *     <li>The sender streams binary {@link ChunkFrame}s. Every chunk that is in order and passes its CRC-32
+ *     check is written at its offset and acknowledged; a corrupt or out-of-order chunk makes the receiver ask
+ *     the sender to rewind to the last good offset.</li>
+ *     <li>After the last byte, the SHA-256 of the file is compared with the manifest and the upload is reported
+ *     complete (with its path) or failed.</li>
+ * </ol>
+ * </p>
+ * <p>
+ * Only one chunk is held in memory at a time, so a multi-gigabyte capture never has to fit in the heap.
+ * Partial uploads are kept as {@code <uploadId>.part} next to their manifest, so an upload interrupted by a
+ * network drop (or by restarting the application) resumes where it stopped. The digest is updated as chunks are
+ * written, so finishing a large upload does not require reading the file again.
+ * </p>
+ */
+public class UploadReceiver implements AutoCloseable {
+
+    /** Uploads travel in a companion room so that members of the main room (e.g. the phone) never receive chunks. */
+    public static final String ROOM_SUFFIX = ":files";
+
+    /** Largest chunk size a sender may announce. */
+    static final int MAX_CHUNK_SIZE = 16 * 1024 * 1024;
+
+    /** Allowed upload IDs. No underscore, which separates the ID from the file name on disk. */
+    private static final Pattern UPLOAD_ID = Pattern.compile("[A-Za-z0-9-]{1," + ChunkFrame.MAX_ID_LENGTH + "}");
+
+    /** Lowercase hex SHA-256. */
+    private static final Pattern SHA256 = Pattern.compile("[0-9a-f]{64}");
+
+    /** The directory uploads are written to. */
+    private final Path directory;
+
+    /** Sends control messages ("upload_status") back to the room. */
+    private final Consumer<RelayClient.Message> sendControl;
+
+    /** Callback for logging status messages. */
+    private final Consumer<String> onStatusUpdate;
+
+    /** Gson instance for the control payloads. */
+    private final Gson gson = new Gson();
+
+    /** Uploads in progress. Key: upload ID. */
+    private final Map<String, Transfer> transfers = new ConcurrentHashMap<>();
+
+    /**
+     * Constructs a new receiver.
+     *
+     * @param directory      The directory to store uploads in (created if missing).
+     * @param sendControl    Sends a control message to the sender (typically {@code relayClient::sendMessage}).
+     * @param onStatusUpdate Callback for logging status messages.
+     */
+    public UploadReceiver(Path directory, Consumer<RelayClient.Message> sendControl, Consumer<String> onStatusUpdate) {
+        this.directory = directory;
+        this.sendControl = sendControl;
+        this.onStatusUpdate = onStatusUpdate;
+    }
+
+    /**
+     * Returns the default upload directory ({@code ~/.hashkitty/uploads}).
+     *
+     * @return The directory path.
+     */
+    public static Path defaultDirectory() {
+        return Paths.get(System.getProperty("user.home"), ".hashkitty", "uploads");
+    }
+
+    /**
+     * Handles a text message from the files room. Messages other than "upload_begin" are ignored.
+     *
+     * @param message The parsed relay message.
+     */
+    public void handleMessage(RelayClient.Message message) {
+        if (!"upload_begin".equalsIgnoreCase(message.getType())) {
+            return;
+        }
+        try {
+            UploadManifest manifest = gson.fromJson(message.getPayload(), UploadManifest.class);
+            if (manifest != null) {
+                handleBegin(manifest);
+            }
+        } catch (JsonSyntaxException e) {
+            onStatusUpdate.accept("Error: Received a malformed upload request: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Starts or resumes an upload and tells the sender where to continue.
+     * A repeated "upload_begin" for a known upload (the sender reconnected) just re-reports the offset.
+     *
+     * @param manifest The announced upload.
+     */
+    public void handleBegin(UploadManifest manifest) {
+        String error = validate(manifest);
+        if (error != null) {
+            sendStatus(manifest.uploadId, UploadStatus.FAILED, 0, false, null, error);
+            return;
+        }
+        Path finished = getCompletedFile(manifest.uploadId);
+        if (finished != null) {
+            // Already received in full (e.g. the completion status was lost): report it again.
+            sendStatus(manifest.uploadId, UploadStatus.COMPLETE, manifest.size, false, finished.toString(), null);
+            return;
+        }
+
+        Transfer transfer = transfers.get(manifest.uploadId);
+        if (transfer != null && transfer.matches(manifest)) {
+            synchronized (transfer) {
+                transfer.awaitingResend = true;
+                sendStatus(manifest.uploadId, UploadStatus.RECEIVING, transfer.nextOffset, true, null, null);
+            }
+            return;
+        }
+        if (transfer != null) {
+            // Same ID, different file: start over.
+            transfer.closeQuietly();
+            transfers.remove(manifest.uploadId, transfer);
+        }
+
+        try {
+            transfer = open(manifest);
+        } catch (IOException e) {
+            onStatusUpdate.accept("Error: Cannot accept upload " + manifest.fileName + ": " + e.getMessage());
+            sendStatus(manifest.uploadId, UploadStatus.FAILED, 0, false, null, e.getMessage());
+            return;
+        }
+        transfers.put(manifest.uploadId, transfer);
+        synchronized (transfer) {
+            if (transfer.nextOffset > 0) {
+                onStatusUpdate.accept(String.format("Resuming upload of %s at %d of %d bytes.",
+                        manifest.fileName, transfer.nextOffset, manifest.size));
+            } else {
+                onStatusUpdate.accept(String.format("Receiving upload of %s (%d bytes).", manifest.fileName, manifest.size));
+            }
+            transfer.awaitingResend = true;
+            sendStatus(manifest.uploadId, UploadStatus.RECEIVING, transfer.nextOffset, true, null, null);
+            if (transfer.nextOffset == manifest.size) {
+                // Empty file, or everything was already on disk before an interruption.
+                finish(transfer);
+            }
+        }
+    }
+
+    /**
+     * Handles a binary frame from the files room. Frames that are not upload chunks are ignored.
+     *
+     * @param frame The received frame.
+     */
+    public void handleChunk(ByteBuffer frame) {
+        ChunkFrame chunk;
+        try {
+            chunk = ChunkFrame.decode(frame);
+        } catch (IllegalArgumentException e) {
+            onStatusUpdate.accept("Error: Received a malformed upload chunk: " + e.getMessage());
+            return;
+        }
+        if (chunk == null) {
+            return;
+        }
+        Transfer transfer = transfers.get(chunk.getUploadId());
+        if (transfer == null) {
+            // Not announced to us (e.g. we joined mid-upload); the sender re-announces after its ack timeout.
+            return;
+        }
+
+        synchronized (transfer) {
+            if (transfer.channel == null) {
+                return;
+            }
+            if (chunk.getOffset() != transfer.nextOffset) {
+                // Duplicates (offset behind) are dropped silently; a gap means frames were lost, so ask for a
+                // rewind once and ignore the rest of the stale window until the rewind arrives.
+                if (chunk.getOffset() > transfer.nextOffset && !transfer.awaitingResend) {
+                    transfer.awaitingResend = true;
+                    sendStatus(transfer.manifest.uploadId, UploadStatus.RECEIVING, transfer.nextOffset, true, null, null);
+                }
+                return;
+            }
+            if (!chunk.isIntact()) {
+                onStatusUpdate.accept("Upload chunk at offset " + chunk.getOffset() + " failed its checksum; requesting resend.");
+                transfer.awaitingResend = true;
+                sendStatus(transfer.manifest.uploadId, UploadStatus.RECEIVING, transfer.nextOffset, true, null, null);
+                return;
+            }
+            ByteBuffer data = chunk.getData();
+            if (transfer.nextOffset + data.remaining() > transfer.manifest.size) {
+                fail(transfer, "Chunk extends past the announced file size");
+                return;
+            }
+            try {
+                long position = transfer.nextOffset;
+                transfer.digest.update(data.duplicate());
+                while (data.hasRemaining()) {
+                    position += transfer.channel.write(data, position);
+                }
+                transfer.nextOffset = position;
+            } catch (IOException e) {
+                fail(transfer, "Write failed: " + e.getMessage());
+                return;
+            }
+            transfer.awaitingResend = false;
+            sendStatus(transfer.manifest.uploadId, UploadStatus.RECEIVING, transfer.nextOffset, false, null, null);
+            if (transfer.nextOffset == transfer.manifest.size) {
+                finish(transfer);
+            }
+        }
+    }
+
+    /**
+     * Finds a completed upload on disk.
+     *
+     * @param uploadId The upload ID.
+     * @return The file, or null if no completed upload with that ID exists.
+     */
+    public Path getCompletedFile(String uploadId) {
+        if (uploadId == null || !UPLOAD_ID.matcher(uploadId).matches() || !Files.isDirectory(directory)) {
+            return null;
+        }
+        try (DirectoryStream<Path> matches = Files.newDirectoryStream(directory, uploadId + "_*")) {
+            for (Path match : matches) {
+                return match;
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return null;
+    }
+
+    /**
+     * Closes every open upload. Partial files are kept so the uploads can resume later.
+     */
+    @Override
+    public void close() {
+        for (Transfer transfer : transfers.values()) {
+            synchronized (transfer) {
+                transfer.closeQuietly();
+            }
+        }
+        transfers.clear();
+    }
+
+    /**
+     * Checks a manifest for values that would be unsafe or impossible to honour.
+     *
+     * @return An error message, or null if the manifest is acceptable.
+     */
+    private String validate(UploadManifest manifest) {
+        if (manifest.uploadId == null || !UPLOAD_ID.matcher(manifest.uploadId).matches()) {
+            return "Invalid upload ID";
+        }
+        if (manifest.size < 0 || manifest.chunkSize <= 0 || manifest.chunkSize > MAX_CHUNK_SIZE) {
+            return "Invalid size or chunk size";
+        }
+        if (manifest.sha256 == null || !SHA256.matcher(manifest.sha256).matches()) {
+            return "Invalid SHA-256";
+        }
+        return null;
+    }
+
+    /**
+     * Opens the partial file of an upload, resuming from a previous attempt when its manifest matches.
+     */
+    private Transfer open(UploadManifest manifest) throws IOException {
+        Files.createDirectories(directory);
+        Path partFile = directory.resolve(manifest.uploadId + ".part");
+        Path manifestFile = directory.resolve(manifest.uploadId + ".json");
+
+        long existing = 0;
+        if (Files.exists(partFile) && Files.exists(manifestFile)) {
+            try {
+                UploadManifest previous = gson.fromJson(Files.readString(manifestFile), UploadManifest.class);
+                if (previous != null && previous.size == manifest.size && manifest.sha256.equals(previous.sha256)) {
+                    existing = Math.min(Files.size(partFile), manifest.size);
+                }
+            } catch (JsonSyntaxException e) {
+                // A corrupt manifest just means we start over.
+            }
+        }
+        if (directory.toFile().getUsableSpace() < manifest.size - existing) {
+            throw new IOException("Not enough disk space for " + manifest.size + " bytes");
+        }
+        try (Writer writer = Files.newBufferedWriter(manifestFile, StandardCharsets.UTF_8)) {
+            gson.toJson(manifest, writer);
+        }
+
+        FileChannel channel = FileChannel.open(partFile,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            channel.truncate(existing);
+            Transfer transfer = new Transfer(manifest, partFile, manifestFile, channel);
+            // Bring the running digest up to date with the bytes kept from the previous attempt.
+            ByteBuffer buffer = ByteBuffer.allocate(1024 * 1024);
+            long position = 0;
+            while (position < existing) {
+                buffer.clear();
+                buffer.limit((int) Math.min(buffer.capacity(), existing - position));
+                int read = channel.read(buffer, position);
+                if (read < 0) {
+                    break;
+                }
+                buffer.flip();
+                transfer.digest.update(buffer);
+                position += read;
+            }
+            transfer.nextOffset = position;
+            return transfer;
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Verifies a fully received upload and moves it to its final name. Called with the transfer locked.
+     */
+    private void finish(Transfer transfer) {
+        UploadManifest manifest = transfer.manifest;
+        String actual = toHex(transfer.digest.digest());
+        if (!actual.equals(manifest.sha256)) {
+            fail(transfer, "SHA-256 mismatch (expected " + manifest.sha256 + ", got " + actual + ")");
+            return;
+        }
+        try {
+            transfer.channel.force(true);
+            transfer.closeQuietly();
+            Path target = directory.resolve(manifest.uploadId + "_" + sanitize(manifest.fileName));
+            try {
+                Files.move(transfer.partFile, target, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(transfer.partFile, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+            Files.deleteIfExists(transfer.manifestFile);
+            transfers.remove(manifest.uploadId, transfer);
+            onStatusUpdate.accept("Upload complete: " + target);
+            sendStatus(manifest.uploadId, UploadStatus.COMPLETE, manifest.size, false, target.toString(), null);
+        } catch (IOException e) {
+            fail(transfer, "Could not store the file: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Abandons an upload, deletes its partial data and reports the failure. Called with the transfer locked.
+     */
+    private void fail(Transfer transfer, String error) {
+        transfer.closeQuietly();
+        transfers.remove(transfer.manifest.uploadId, transfer);
+        try {
+            Files.deleteIfExists(transfer.partFile);
+            Files.deleteIfExists(transfer.manifestFile);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        onStatusUpdate.accept("Upload of " + transfer.manifest.fileName + " failed: " + error);
+        sendStatus(transfer.manifest.uploadId, UploadStatus.FAILED, 0, false, null, error);
+    }
+
+    /**
+     * Sends an "upload_status" control message.
+     */
+    private void sendStatus(String uploadId, String state, long offset, boolean resend, String path, String error) {
+        UploadStatus status = new UploadStatus();
+        status.uploadId = uploadId;
+        status.state = state;
+        status.offset = offset;
+        status.resend = resend;
+        status.path = path;
+        status.error = error;
+
+        RelayClient.Message message = new RelayClient.Message();
+        message.setType("upload_status");
+        message.setPayload(gson.toJson(status));
+        sendControl.accept(message);
+    }
+
+    /**
+     * Reduces a sender-supplied file name to a safe single path segment.
+     */
+    static String sanitize(String fileName) {
+        String name = fileName == null ? "" : fileName.replace('\\', '/');
+        // Keep only the last path segment, then replace anything unusual.
+        name = name.substring(name.lastIndexOf('/') + 1).replaceAll("[^A-Za-z0-9._-]", "_");
+        if (name.isEmpty() || name.startsWith(".")) {
+            name = "upload" + name;
+        }
+        return name.length() > 128 ? name.substring(name.length() - 128) : name;
+    }
+
+    /**
+     * Formats a digest as lowercase hex.
+     */
+    static String toHex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            sb.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Creates a SHA-256 digest.
+     */
+    static MessageDigest newSha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // SHA-256 is mandatory on every Java platform, so this is highly unlikely.
+            throw new RuntimeException("SHA-256 algorithm not found", e);
+        }
+    }
+
+    /**
+     * State of one upload in progress. Guarded by its own monitor.
+     */
+    private static class Transfer {
+        final UploadManifest manifest;
+        final Path partFile;
+        final Path manifestFile;
+        final MessageDigest digest = newSha256();
+        FileChannel channel;
+        /** Number of contiguous bytes written. */
+        long nextOffset;
+        /** Set after asking for a rewind, so a stale window does not trigger one request per frame. */
+        boolean awaitingResend;
+
+        Transfer(UploadManifest manifest, Path partFile, Path manifestFile, FileChannel channel) {
+            this.manifest = manifest;
+            this.partFile = partFile;
+            this.manifestFile = manifestFile;
+            this.channel = channel;
+        }
+
+        boolean matches(UploadManifest other) {
+            return manifest.size == other.size && manifest.sha256.equals(other.sha256);
+        }
+
+        void closeQuietly() {
+            if (channel != null) {
+                try {
+                    channel.close();
+                } catch (IOException e) {
+                    // Ignored: nothing useful to do with a failed close.
+                }
+                channel = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,296 @@
+package hashkitty.java.transfer;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonSyntaxException;
+import hashkitty.java.relay.RelayClient;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+/**
+ * Streams a local file through the relay to an {@link UploadReceiver}, in CRC-checked chunks.
+ * <p>
+ * The sender keeps at most {@code windowChunks} unacknowledged chunks in flight, so memory use and the relay's
+ * send queues stay bounded no matter how large the file is. It reacts to the receiver's "upload_status" messages:
+ * acknowledgements slide the window forward, and rewind requests (after a corrupt or lost chunk) make it resend
+ * from the last good offset. If the relay connection drops, the {@link RelayClient} reconnects on its own and the
+ * sender re-announces the upload, which resumes at whatever the receiver already has on disk.
+ * </p>
+ * <p>
+ * The relay client given to the sender must be joined to the files room ({@code roomId + }{@link
+ * UploadReceiver#ROOM_SUFFIX}) and must pass every message it receives to {@link #handleMessage}.
+ * </p>
+ */
+public class UploadSender {
+
+    /** Default chunk size: large enough to amortize framing, small enough to resend cheaply. */
+    public static final int DEFAULT_CHUNK_SIZE = 512 * 1024;
+
+    /** Default number of unacknowledged chunks in flight. */
+    public static final int DEFAULT_WINDOW_CHUNKS = 8;
+
+    /** With no acknowledgement for this long, the window is resent from the last acknowledged offset. */
+    static final long ACK_TIMEOUT_MS = 30_000;
+
+    /** Consecutive acknowledgement timeouts after which the upload is abandoned. */
+    static final int MAX_TIMEOUTS = 5;
+
+    /** The client joined to the files room. */
+    private final RelayClient client;
+
+    /** Size of each chunk in bytes. */
+    private final int chunkSize;
+
+    /** Maximum number of unacknowledged chunks. */
+    private final int windowChunks;
+
+    /** Callback for progress and status messages. */
+    private final Consumer<String> onStatusUpdate;
+
+    /** Gson instance for the control payloads. */
+    private final Gson gson = new Gson();
+
+    /** Guards the upload state below; status updates notify the sending thread through it. */
+    private final Object lock = new Object();
+
+    /** The upload currently being sent, or null. */
+    private String activeUploadId;
+
+    /** Whether the receiver answered the current announcement. */
+    private boolean announced;
+
+    /** Highest offset acknowledged by the receiver. */
+    private long ackedOffset;
+
+    /** Offset the receiver asked us to rewind to, or -1. */
+    private long rewindTo = -1;
+
+    /** Time of the last status from the receiver. */
+    private long lastStatusAt;
+
+    /** The final status (complete or failed), or null while the upload is running. */
+    private UploadStatus finalStatus;
+
+    /**
+     * Constructs a sender with the default chunk size and window.
+     *
+     * @param client         A relay client joined to the files room.
+     * @param onStatusUpdate Callback for progress and status messages.
+     */
+    public UploadSender(RelayClient client, Consumer<String> onStatusUpdate) {
+        this(client, DEFAULT_CHUNK_SIZE, DEFAULT_WINDOW_CHUNKS, onStatusUpdate);
+    }
+
+    /**
+     * Constructs a sender with a custom chunk size and window.
+     *
+     * @param client         A relay client joined to the files room.
+     * @param chunkSize      Size of each chunk in bytes.
+     * @param windowChunks   Maximum number of unacknowledged chunks in flight.
+     * @param onStatusUpdate Callback for progress and status messages.
+     */
+    public UploadSender(RelayClient client, int chunkSize, int windowChunks, Consumer<String> onStatusUpdate) {
+        if (chunkSize <= 0 || chunkSize > UploadReceiver.MAX_CHUNK_SIZE || windowChunks <= 0) {
+            throw new IllegalArgumentException("Invalid chunk size or window");
+        }
+        this.client = client;
+        this.chunkSize = chunkSize;
+        this.windowChunks = windowChunks;
+        this.onStatusUpdate = onStatusUpdate;
+    }
+
+    /**
+     * Generates a new upload ID.
+     *
+     * @return A random ID accepted by {@link UploadReceiver}.
+     */
+    public static String newUploadId() {
+        return UUID.randomUUID().toString();
+    }
+
+    /**
+     * Handles a text message from the files room. Only "upload_status" messages for the active upload are used.
+     *
+     * @param message The parsed relay message.
+     */
+    public void handleMessage(RelayClient.Message message) {
+        if (!"upload_status".equalsIgnoreCase(message.getType())) {
+            return;
+        }
+        UploadStatus status;
+        try {
+            status = gson.fromJson(message.getPayload(), UploadStatus.class);
+        } catch (JsonSyntaxException e) {
+            onStatusUpdate.accept("Error: Received a malformed upload status: " + e.getMessage());
+            return;
+        }
+        synchronized (lock) {
+            if (status == null || activeUploadId == null || !activeUploadId.equals(status.uploadId)) {
+                return;
+            }
+            lastStatusAt = System.currentTimeMillis();
+            if (UploadStatus.COMPLETE.equals(status.state) || UploadStatus.FAILED.equals(status.state)) {
+                finalStatus = status;
+            } else if (status.resend) {
+                announced = true;
+                ackedOffset = status.offset;
+                rewindTo = status.offset;
+            } else {
+                ackedOffset = Math.max(ackedOffset, status.offset);
+            }
+            lock.notifyAll();
+        }
+    }
+
+    /**
+     * Uploads a file, blocking until the receiver confirms it or the upload fails.
+     * Only one upload runs at a time per sender.
+     *
+     * @param file     The file to send.
+     * @param uploadId The upload ID; reuse the ID of an interrupted upload to resume it.
+     * @return The path of the stored file on the receiver.
+     * @throws IOException          If the file cannot be read, the receiver rejects it, or it stops answering.
+     * @throws InterruptedException If the calling thread is interrupted.
+     */
+    public synchronized String upload(Path file, String uploadId) throws IOException, InterruptedException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            UploadManifest manifest = new UploadManifest();
+            manifest.uploadId = uploadId;
+            manifest.fileName = file.getFileName().toString();
+            manifest.size = channel.size();
+            manifest.chunkSize = chunkSize;
+            onStatusUpdate.accept("Computing SHA-256 of " + manifest.fileName + "...");
+            manifest.sha256 = sha256(channel);
+
+            synchronized (lock) {
+                activeUploadId = uploadId;
+                announced = false;
+                ackedOffset = 0;
+                rewindTo = -1;
+                finalStatus = null;
+            }
+            try {
+                sendChunks(channel, manifest);
+            } finally {
+                synchronized (lock) {
+                    activeUploadId = null;
+                }
+            }
+
+            synchronized (lock) {
+                if (UploadStatus.FAILED.equals(finalStatus.state)) {
+                    throw new IOException("Receiver rejected the upload: " + finalStatus.error);
+                }
+                onStatusUpdate.accept("Upload complete: " + finalStatus.path);
+                return finalStatus.path;
+            }
+        }
+    }
+
+    /**
+     * The send loop: (re-)announces the upload on every (re)connection, then streams chunks within the window
+     * until the receiver reports a final status.
+     */
+    private void sendChunks(FileChannel channel, UploadManifest manifest) throws IOException, InterruptedException {
+        String beginJson = gson.toJson(manifest);
+        ByteBuffer frame = ByteBuffer.allocate(ChunkFrame.frameCapacity(manifest.uploadId, chunkSize));
+        ByteBuffer data = ByteBuffer.allocate(chunkSize);
+        long windowBytes = (long) windowChunks * chunkSize;
+        long nextOffset = 0;
+        long connectionsSeen = -1;
+        int timeouts = 0;
+        int lastReportedPercent = -1;
+
+        while (true) {
+            synchronized (lock) {
+                if (finalStatus != null) {
+                    return;
+                }
+                long now = System.currentTimeMillis();
+                if (client.isOpen() && client.getTotalConnections() != connectionsSeen) {
+                    // New connection: the receiver may have lost chunks in flight, so ask it where to resume.
+                    connectionsSeen = client.getTotalConnections();
+                    announced = false;
+                    lastStatusAt = now;
+                    sendBegin(beginJson);
+                }
+                if (rewindTo >= 0) {
+                    nextOffset = rewindTo;
+                    rewindTo = -1;
+                }
+                boolean windowFull = nextOffset - ackedOffset >= windowBytes;
+                if (!client.isOpen() || !announced || nextOffset >= manifest.size || windowFull) {
+                    lock.wait(500);
+                    if (client.isOpen() && System.currentTimeMillis() - lastStatusAt > ACK_TIMEOUT_MS) {
+                        if (++timeouts > MAX_TIMEOUTS) {
+                            throw new IOException("Receiver stopped answering");
+                        }
+                        onStatusUpdate.accept("No answer from receiver; re-announcing upload...");
+                        lastStatusAt = System.currentTimeMillis();
+                        announced = false;
+                        sendBegin(beginJson);
+                    }
+                    continue;
+                }
+                timeouts = 0;
+                int percent = manifest.size == 0 ? 100 : (int) (ackedOffset * 100 / manifest.size);
+                if (percent / 5 != lastReportedPercent / 5) {
+                    lastReportedPercent = percent;
+                    onStatusUpdate.accept(String.format("Uploading %s: %d%%", manifest.fileName, percent));
+                }
+            }
+
+            // Read and send one chunk outside the lock, so status updates are never blocked on disk I/O.
+            data.clear();
+            data.limit((int) Math.min(chunkSize, manifest.size - nextOffset));
+            long position = nextOffset;
+            while (data.hasRemaining()) {
+                int read = channel.read(data, position);
+                if (read < 0) {
+                    throw new IOException("File shrank while uploading");
+                }
+                position += read;
+            }
+            data.flip();
+            int length = data.remaining();
+            ChunkFrame.encode(frame, manifest.uploadId, nextOffset, data);
+            // The WebSocket client copies the frame into its own buffers during send, so the buffer can be reused.
+            if (client.sendBinary(frame)) {
+                nextOffset += length;
+            }
+        }
+    }
+
+    /**
+     * Sends the "upload_begin" announcement.
+     */
+    private void sendBegin(String manifestJson) {
+        RelayClient.Message message = new RelayClient.Message();
+        message.setType("upload_begin");
+        message.setPayload(manifestJson);
+        client.sendMessage(message);
+    }
+
+    /**
+     * Computes the SHA-256 of a whole file, streaming it through a small buffer.
+     */
+    private static String sha256(FileChannel channel) throws IOException {
+        MessageDigest digest = UploadReceiver.newSha256();
+        ByteBuffer buffer = ByteBuffer.allocate(1024 * 1024);
+        long position = 0;
+        int read;
+        while ((read = channel.read(buffer, position)) > 0) {
+            position += read;
+            buffer.flip();
+            digest.update(buffer);
+            buffer.clear();
+        }
+        return UploadReceiver.toHex(digest.digest());
+    }
+}
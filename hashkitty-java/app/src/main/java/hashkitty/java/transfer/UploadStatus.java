@@ -0,0 +1,37 @@
+package hashkitty.java.transfer;
+
+/**
+ * Progress report sent by the receiver of an upload (the payload of an "upload_status" message).
+ * <p>
+ * {@code offset} is always the number of contiguous bytes safely written, i.e. where the sender must
+ * continue. When {@code resend} is true the sender has to rewind to {@code offset} (a chunk failed its
+ * CRC check or arrived out of order); otherwise it may keep sending ahead within its window.
+ * </p>
+ */
+public class UploadStatus {
+
+    /** The receiver is accepting chunks. */
+    public static final String RECEIVING = "receiving";
+    /** All bytes were received and the SHA-256 matched; {@code path} is set. */
+    public static final String COMPLETE = "complete";
+    /** The upload was rejected or the final checksum did not match; {@code error} is set. */
+    public static final String FAILED = "failed";
+
+    /** The upload this status refers to. */
+    public String uploadId;
+
+    /** One of {@link #RECEIVING}, {@link #COMPLETE} or {@link #FAILED}. */
+    public String state;
+
+    /** Number of contiguous bytes written so far. */
+    public long offset;
+
+    /** Whether the sender must rewind to {@link #offset}. */
+    public boolean resend;
+
+    /** Location of the finished file on the receiver (when complete). */
+    public String path;
+
+    /** Reason for a failure (when failed). */
+    public String error;
+}
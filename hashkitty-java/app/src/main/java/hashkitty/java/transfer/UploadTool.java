@@ -0,0 +1,125 @@
+package hashkitty.java.transfer;
+
+import com.google.gson.Gson;
+import hashkitty.java.attack.AttackParams;
+import hashkitty.java.relay.RelayClient;
+
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * Command-line entry point that uploads a hash file to a remote HashKitty worker through the relay, and
+ * optionally starts an attack on it.
+ * <p>
+ * <b>Usage:</b> {@code upload <relay-url> <room-id> <file> [--upload-id ID] [--mode N --wordlist PATH
+ * [--attack-mode 0|3] [--rules PATH]]}
+ * <br>
+ * The file is streamed in the worker's files room ({@code <room-id>:files}). Re-running the command with the
+ * {@code --upload-id} printed by an interrupted run resumes the upload instead of starting over. When
+ * {@code --mode} is given, an "attack" command referencing the upload is sent to the main room once the file
+ * has been verified.
+ * </p>
+ */
+public class UploadTool {
+
+    /** How long to wait for the control connection before giving up on sending the attack command. */
+    private static final long CONNECT_TIMEOUT_MS = 10_000;
+
+    /**
+     * The main method.
+     *
+     * @param args Command-line arguments (see class documentation).
+     * @throws Exception If the upload fails.
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length < 3) {
+            System.err.println("Usage: upload <relay-url> <room-id> <file> [--upload-id ID]"
+                    + " [--mode N --wordlist PATH [--attack-mode 0|3] [--rules PATH]]");
+            System.exit(1);
+        }
+        URI relayUri = new URI(args[0]);
+        String roomId = args[1];
+        Path file = Paths.get(args[2]);
+        if (!Files.isRegularFile(file)) {
+            System.err.println("File not found: " + file);
+            System.exit(1);
+        }
+
+        String uploadId = UploadSender.newUploadId();
+        AttackParams attack = new AttackParams();
+        for (int i = 3; i < args.length - 1; i++) {
+            switch (args[i]) {
+                case "--upload-id": uploadId = args[++i]; break;
+                case "--mode": attack.mode = args[++i]; break;
+                case "--attack-mode": attack.attackMode = args[++i]; break;
+                case "--wordlist": attack.wordlist = args[++i]; break;
+                case "--rules": attack.rules = args[++i]; break;
+                default: System.err.println("Ignoring unknown argument: " + args[i]);
+            }
+        }
+        System.out.println("Upload ID: " + uploadId + " (pass --upload-id to resume)");
+
+        // Per-message logging from the relay client would print a line for every acknowledged chunk.
+        Consumer<String> log = status -> {
+            if (!status.startsWith("Relay Client Received:")) {
+                System.out.println(status);
+            }
+        };
+
+        AtomicReference<UploadSender> sender = new AtomicReference<>();
+        RelayClient filesClient = new RelayClient(relayUri, roomId + UploadReceiver.ROOM_SUFFIX, RelayClient.ROLE_FILES, message -> {
+            UploadSender s = sender.get();
+            if (s != null) s.handleMessage(message);
+        }, log);
+        sender.set(new UploadSender(filesClient, log));
+        filesClient.connect();
+
+        String remotePath;
+        try {
+            remotePath = sender.get().upload(file, uploadId);
+        } finally {
+            filesClient.shutdown();
+        }
+
+        if (attack.mode != null && attack.wordlist != null) {
+            sendAttack(relayUri, roomId, uploadId, attack, log);
+        } else {
+            System.out.println("Stored on the worker as: " + remotePath);
+        }
+    }
+
+    /**
+     * Sends an "attack" command referencing the uploaded file to the main room.
+     */
+    private static void sendAttack(URI relayUri, String roomId, String uploadId, AttackParams attack,
+                                   Consumer<String> log) throws InterruptedException {
+        attack.uploadId = uploadId;
+        attack.jobId = uploadId;
+        if (attack.attackMode == null) {
+            attack.attackMode = "0";
+        }
+        RelayClient control = new RelayClient(relayUri, roomId, message -> {}, log);
+        control.connect();
+        long deadline = System.currentTimeMillis() + CONNECT_TIMEOUT_MS;
+        while (!control.isOpen() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(100);
+        }
+        if (!control.isOpen()) {
+            System.err.println("Could not connect to the relay to start the attack.");
+            control.shutdown();
+            return;
+        }
+        RelayClient.Message message = new RelayClient.Message();
+        message.setType("attack");
+        message.setRoomId(roomId);
+        message.setPayload(new Gson().toJson(attack));
+        control.sendMessage(message);
+        System.out.println("Attack command sent for upload " + uploadId + ".");
+        // Closing flushes the queued frames before the close frame.
+        control.shutdown();
+    }
+}
@@ -1,5 +1,7 @@
 package hashkitty.java.util;
 
+import hashkitty.java.journal.EventJournal;
+import hashkitty.java.journal.EventType;
 import javafx.application.Platform;
 import javafx.scene.control.Alert;
 import javafx.scene.control.Alert.AlertType;
@@ -9,7 +11,8 @@ import javafx.scene.control.Alert.AlertType;
  * <p>
  * This class handles the thread safety requirement of JavaFX, ensuring that
  * UI dialogs are always created and shown on the JavaFX Application Thread,
- * regardless of which thread calls the method.
+ * regardless of which thread calls the method. Every error shown is also recorded in the
+ * {@link EventJournal}.
  * </p>
  */
 public class ErrorUtil {
@@ -22,6 +25,8 @@ public class ErrorUtil {
      * @param message The main body text explaining the error.
      */
     public static void showError(String title, String message) {
+        // Dialogs vanish once dismissed; keep the error for later review.
+        EventJournal.getDefault().record(EventType.ERROR, "app", null, title + ": " + message);
         // Check if we are currently running on the JavaFX Application Thread.
         if (Platform.isFxApplicationThread()) {
             // Safe to interact with UI directly.
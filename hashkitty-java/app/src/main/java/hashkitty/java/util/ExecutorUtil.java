@@ -0,0 +1,89 @@
+package hashkitty.java.util;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A utility class providing the executor that runs blocking work handed off from WebSocket threads.
+ * <p>
+ * On Java 21+ this is a virtual-thread-per-task executor, so thousands of connections can each have
+ * work in flight without a platform thread apiece. The application targets Java 17, so the virtual-thread
+ * factory is looked up reflectively; on older runtimes a pool of daemon threads is used instead, capped at
+ * {@link #MAX_FALLBACK_THREADS} so a flood of work queues up rather than starting a thread per task. Its threads
+ * are only held while there is work and exit after a minute of idleness.
+ * </p>
+ */
+public class ExecutorUtil {
+
+    /** How long an idle fallback pool thread is kept before it exits. */
+    private static final long IDLE_THREAD_KEEP_ALIVE_SECONDS = 60;
+
+    /** Most platform threads the fallback pool starts; further tasks wait in its queue. */
+    static final int MAX_FALLBACK_THREADS = Math.max(64, Runtime.getRuntime().availableProcessors() * 16);
+
+    /** The process-wide task executor, created on first use. */
+    private static volatile ExecutorService shared;
+
+    /**
+     * Returns the process-wide executor for blocking tasks. It is never shut down; its threads are daemons.
+     *
+     * @return The shared executor.
+     */
+    public static ExecutorService sharedTaskExecutor() {
+        ExecutorService executor = shared;
+        if (executor == null) {
+            synchronized (ExecutorUtil.class) {
+                executor = shared;
+                if (executor == null) {
+                    executor = newTaskExecutor("hashkitty-task");
+                    shared = executor;
+                }
+            }
+        }
+        return executor;
+    }
+
+    /**
+     * Creates a new executor that starts one (virtual, if available) thread per task.
+     *
+     * @param namePrefix Thread name prefix used by the platform-thread fallback.
+     * @return A new executor; the caller is responsible for shutting it down.
+     */
+    public static ExecutorService newTaskExecutor(String namePrefix) {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            // Running on a Java release without virtual threads; fall back to platform threads.
+        }
+        AtomicInteger counter = new AtomicInteger();
+        // Core size equals the cap so the pool grows to it before queueing; idle core threads still time out.
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(MAX_FALLBACK_THREADS, MAX_FALLBACK_THREADS,
+                IDLE_THREAD_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> {
+            Thread t = new Thread(r, namePrefix + "-" + counter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+
+    /**
+     * Returns whether the runtime supports virtual threads (and therefore {@link #newTaskExecutor} uses them).
+     *
+     * @return true on Java 21+.
+     */
+    public static boolean supportsVirtualThreads() {
+        try {
+            Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return true;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+}
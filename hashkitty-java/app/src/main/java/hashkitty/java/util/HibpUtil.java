@@ -1,6 +1,7 @@
 package hashkitty.java.util;
 
 import java.io.BufferedReader;
+import java.io.IOException;
 import java.io.InputStreamReader;
 import java.net.HttpURLConnection;
 import java.net.URL;
@@ -54,30 +55,40 @@ public class HibpUtil {
                 throw new RuntimeException("HIBP API request failed with response code: " + responseCode);
             }
 
-            // 4. Parse the response.
-            // The response contains lines in the format: SUFFIX:COUNT
+            // 4. Parse the response and look for our suffix.
             try (BufferedReader in = new BufferedReader(new InputStreamReader(conn.getInputStream()))) {
-                String line;
-                while ((line = in.readLine()) != null) {
-                    // Split line into [suffix, count].
-                    String[] parts = line.split(":");
-                    // Check if the suffix matches our password's suffix.
-                    if (parts.length == 2 && parts[0].equalsIgnoreCase(suffix)) {
-                        // Match found! Return the breach count.
-                        return Integer.parseInt(parts[1]);
-                    }
-                }
+                return findBreachCount(in, suffix);
             }
-
-            // If we finish the loop without returning, the suffix was not in the list.
-            return 0;
-
         } catch (NoSuchAlgorithmException e) {
             // SHA-1 is standard in Java, so this is highly unlikely.
             throw new RuntimeException("SHA-1 algorithm not found", e);
         }
     }
 
+    /**
+     * Scans a range response for a hash suffix.
+     * The response contains lines in the format: SUFFIX:COUNT
+     *
+     * @param response The response body.
+     * @param suffix   The uppercase SHA-1 suffix (the 35 characters after the prefix).
+     * @return The breach count, or 0 if the suffix is not listed.
+     * @throws IOException If reading the response fails.
+     */
+    static int findBreachCount(BufferedReader response, String suffix) throws IOException {
+        String line;
+        while ((line = response.readLine()) != null) {
+            // Split line into [suffix, count].
+            String[] parts = line.split(":");
+            // Check if the suffix matches our password's suffix.
+            if (parts.length == 2 && parts[0].equalsIgnoreCase(suffix)) {
+                // Match found! Return the breach count.
+                return Integer.parseInt(parts[1]);
+            }
+        }
+        // If we finish the loop without returning, the suffix was not in the list.
+        return 0;
+    }
+
     /**
      * Helper method to convert a byte array to a hexadecimal string.
      *
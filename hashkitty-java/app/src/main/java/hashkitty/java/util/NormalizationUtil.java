@@ -1,5 +1,9 @@
 package hashkitty.java.util;
 
+import hashkitty.java.metrics.Counter;
+import hashkitty.java.metrics.Histogram;
+import hashkitty.java.metrics.MetricsRegistry;
+
 import java.io.*;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -18,6 +22,13 @@ import java.util.Set;
  */
 public class NormalizationUtil {
 
+    private static final Counter LINES_READ = MetricsRegistry.getDefault().counter(
+            "hashkitty_normalization_lines_total", "Input lines read while normalizing hash files.");
+    private static final Counter HASHES_WRITTEN = MetricsRegistry.getDefault().counter(
+            "hashkitty_normalization_hashes_total", "Unique hashes written by normalization.");
+    private static final Histogram DURATION = MetricsRegistry.getDefault().timer(
+            "hashkitty_normalization_duration_seconds", "Time to normalize one hash file.");
+
     /**
      * Reads an input file, attempts to extract valid hashes, removes duplicates, and writes
      * the result to a secure temporary file.
@@ -27,6 +38,8 @@ public class NormalizationUtil {
      * @throws IOException If file reading/writing fails or if no valid hashes are found.
      */
     public static File normalizeHashFile(File inputFile) throws IOException {
+        long start = System.nanoTime();
+        long lines = 0;
         // Use a Set to automatically handle deduplication of hashes.
         Set<String> hashes = new HashSet<>();
 
@@ -34,6 +47,7 @@ public class NormalizationUtil {
         try (BufferedReader reader = new BufferedReader(new FileReader(inputFile))) {
             String line;
             while ((line = reader.readLine()) != null) {
+                lines++;
                 String trimmedLine = line.trim();
                 // Skip empty lines.
                 if (trimmedLine.isEmpty()) continue;
@@ -66,6 +80,9 @@ public class NormalizationUtil {
             }
         }
 
+        // Counted in one step, so the per-line loop stays free of shared-counter traffic.
+        LINES_READ.add(lines);
+
         // Ensure we actually found something.
         if (hashes.isEmpty()) {
             throw new IOException("No valid hashes could be extracted from the input file.");
@@ -99,6 +116,8 @@ public class NormalizationUtil {
                 writer.newLine();
             }
         }
+        HASHES_WRITTEN.add(hashes.size());
+        DURATION.recordSince(start);
 
         return tempFile;
     }
@@ -0,0 +1,139 @@
+package hashkitty.java.util;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A "mailbox" that runs its tasks one at a time, in submission order, on a shared backing executor.
+ * <p>
+ * One mailbox is kept per connection: messages from the same client are processed in the order they
+ * arrived, while different clients are processed in parallel. A mailbox with nothing queued holds no
+ * thread at all, so idle connections cost only this object.
+ * </p>
+ * <p>
+ * A task that throws does not stop the mailbox; the exception is printed and the next task runs.
+ * </p>
+ * <p>
+ * A mailbox can be given a capacity. {@link #tryExecute(Runnable)} refuses work beyond it, so a client that sends
+ * faster than its messages are processed can be disconnected instead of growing the heap; {@link #execute(Runnable)}
+ * always queues, for the bookkeeping tasks that must not be lost.
+ * </p>
+ */
+public class SerialExecutor implements Executor {
+
+    /** Runs the drain loop. */
+    private final Executor backing;
+
+    /** Tasks waiting to run, oldest first. */
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+
+    /** Number of tasks in {@link #tasks}; the queue's own size() walks the whole queue. */
+    private final AtomicInteger pending = new AtomicInteger();
+
+    /** Most tasks {@link #tryExecute(Runnable)} lets wait. */
+    private final int capacity;
+
+    /** Whether a drain loop is scheduled or running. */
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+
+    /**
+     * Constructs an unbounded mailbox on the given executor.
+     *
+     * @param backing The executor running the mailbox (e.g., {@link ExecutorUtil#sharedTaskExecutor()}).
+     */
+    public SerialExecutor(Executor backing) {
+        this(backing, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Constructs a mailbox on the given executor that holds at most {@code capacity} tasks offered through
+     * {@link #tryExecute(Runnable)}.
+     *
+     * @param backing  The executor running the mailbox (e.g., {@link ExecutorUtil#sharedTaskExecutor()}).
+     * @param capacity The most tasks allowed to wait.
+     */
+    public SerialExecutor(Executor backing, int capacity) {
+        this.backing = backing;
+        this.capacity = capacity;
+    }
+
+    /**
+     * Queues a task behind every task submitted before it.
+     *
+     * @param task The task to run.
+     * @throws RejectedExecutionException If the backing executor has been shut down.
+     */
+    @Override
+    public void execute(Runnable task) {
+        pending.incrementAndGet();
+        tasks.add(task);
+        schedule();
+    }
+
+    /**
+     * Queues a task unless the mailbox is at capacity.
+     *
+     * @param task The task to run.
+     * @return true if the task was queued, false if the mailbox is full.
+     * @throws RejectedExecutionException If the backing executor has been shut down.
+     */
+    public boolean tryExecute(Runnable task) {
+        if (pending.incrementAndGet() > capacity) {
+            pending.decrementAndGet();
+            return false;
+        }
+        tasks.add(task);
+        schedule();
+        return true;
+    }
+
+    /**
+     * Returns the number of tasks waiting to run.
+     *
+     * @return The queue length.
+     */
+    public int getPendingCount() {
+        return pending.get();
+    }
+
+    /**
+     * Starts a drain loop unless one is already scheduled.
+     */
+    private void schedule() {
+        if (scheduled.compareAndSet(false, true)) {
+            try {
+                backing.execute(this::drain);
+            } catch (RejectedExecutionException e) {
+                scheduled.set(false);
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Runs queued tasks until the queue is empty.
+     */
+    private void drain() {
+        try {
+            Runnable task;
+            while ((task = tasks.poll()) != null) {
+                pending.decrementAndGet();
+                try {
+                    task.run();
+                } catch (RuntimeException e) {
+                    e.printStackTrace();
+                }
+            }
+        } finally {
+            scheduled.set(false);
+            // A task may have been queued after the last poll but before the flag was cleared.
+            if (!tasks.isEmpty()) {
+                schedule();
+            }
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package hashkitty.java.util;
+
+import org.java_websocket.drafts.Draft;
+import org.java_websocket.drafts.Draft_6455;
+import org.java_websocket.extensions.permessage_deflate.PerMessageDeflateExtension;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A utility class for configuring the WebSocket protocol drafts used by the servers and clients.
+ * <p>
+ * Both sides offer the "permessage-deflate" extension (RFC 7692). Peers that do not support it
+ * (older Android builds, browsers with it disabled) still connect, because the draft falls back to the
+ * uncompressed default extension during the handshake. Frames smaller than {@link #COMPRESSION_THRESHOLD}
+ * bytes are sent uncompressed, since deflating tiny status messages costs more than it saves.
+ * </p>
+ */
+public class WebSocketUtil {
+
+    /** Payloads below this size (in bytes) are not compressed. */
+    public static final int COMPRESSION_THRESHOLD = 256;
+
+    /**
+     * Creates a new RFC 6455 draft offering per-message deflate compression.
+     * A new instance is needed per client, since drafts keep per-connection state.
+     *
+     * @return The draft to pass to a WebSocket client or server.
+     */
+    public static Draft_6455 deflateDraft() {
+        PerMessageDeflateExtension deflate = new PerMessageDeflateExtension();
+        deflate.setThreshold(COMPRESSION_THRESHOLD);
+        return new Draft_6455(deflate);
+    }
+
+    /**
+     * Returns the list of drafts accepted by the WebSocket servers.
+     *
+     * @return A single-element list containing a deflate-enabled draft.
+     */
+    public static List<Draft> serverDrafts() {
+        return Collections.singletonList(deflateDraft());
+    }
+}
@@ -0,0 +1,184 @@
+package hashkitty.java.capture;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Builds synthetic 802.11 frames and pcap/pcapng captures for the capture and sniffer tests.
+ */
+public final class CaptureFixtures {
+
+    public static final long AP = 0x001122334455L;
+    public static final long STA = 0x66778899aabbL;
+
+    private CaptureFixtures() {
+    }
+
+    /**
+     * A beacon from {@code bssid} naming {@code essid}.
+     */
+    public static byte[] beacon(long bssid, String essid) {
+        ByteBuffer frame = ByteBuffer.allocate(24 + 12 + 2 + 32 + 3).order(ByteOrder.LITTLE_ENDIAN);
+        frame.putShort((short) 0x0080); // management, beacon
+        frame.putShort((short) 0);
+        putMac(frame, 0xffffffffffffL);
+        putMac(frame, bssid);
+        putMac(frame, bssid);
+        frame.putShort((short) 0);
+        frame.put(new byte[12]);
+        byte[] name = essid.getBytes(StandardCharsets.UTF_8);
+        frame.put((byte) 0).put((byte) name.length).put(name);
+        frame.put((byte) 1).put((byte) 1).put((byte) 0x82); // supported rates
+        return slice(frame);
+    }
+
+    /**
+     * An EAPOL-Key data frame of the four-way handshake.
+     *
+     * @param message The message number, 1 to 4; decides the direction and key information bits.
+     * @param replay  The replay counter.
+     * @param nonce   The 32-byte nonce (zeroes for a typical message 4).
+     * @param mic     The 16-byte MIC (ignored for message 1).
+     * @param keyData The key data, e.g. a PMKID element.
+     */
+    public static byte[] eapol(long ap, long sta, int message, long replay, byte[] nonce, byte[] mic, byte[] keyData) {
+        byte[] eapol = eapolFrame(message, replay, nonce, mic, keyData);
+        boolean fromAp = message == 1 || message == 3;
+        ByteBuffer frame = ByteBuffer.allocate(24 + 8 + eapol.length).order(ByteOrder.LITTLE_ENDIAN);
+        frame.put((byte) 0x08).put((byte) (fromAp ? 0x02 : 0x01)); // data; FromDS or ToDS
+        frame.putShort((short) 0);
+        putMac(frame, fromAp ? sta : ap);
+        putMac(frame, fromAp ? ap : sta);
+        putMac(frame, ap);
+        frame.putShort((short) 0);
+        frame.put(new byte[] {(byte) 0xaa, (byte) 0xaa, 3, 0, 0, 0, (byte) 0x88, (byte) 0x8e});
+        frame.put(eapol);
+        return slice(frame);
+    }
+
+    /**
+     * Just the EAPOL frame (version, type, length and key descriptor).
+     */
+    public static byte[] eapolFrame(int message, long replay, byte[] nonce, byte[] mic, byte[] keyData) {
+        int keyInfo = 0x000a; // pairwise, HMAC-SHA1/AES
+        switch (message) {
+            case 1: keyInfo |= 0x0080; break;
+            case 2: keyInfo |= 0x0100; break;
+            case 3: keyInfo |= 0x0080 | 0x0100 | 0x0040 | 0x0200; break;
+            default: keyInfo |= 0x0100 | 0x0200; break;
+        }
+        ByteBuffer eapol = ByteBuffer.allocate(99 + keyData.length); // big-endian, as on the wire
+        eapol.put((byte) 2).put((byte) 3).putShort((short) (95 + keyData.length));
+        eapol.put((byte) 2).putShort((short) keyInfo).putShort((short) 16).putLong(replay);
+        eapol.put(nonce);
+        eapol.put(new byte[16 + 8 + 8]); // IV, RSC, reserved
+        eapol.put(message == 1 ? new byte[16] : mic);
+        eapol.putShort((short) keyData.length).put(keyData);
+        return eapol.array();
+    }
+
+    /**
+     * A PMKID key data element.
+     */
+    public static byte[] pmkidElement(byte[] pmkid) {
+        byte[] element = new byte[22];
+        element[0] = (byte) 0xdd;
+        element[1] = 20;
+        element[2] = 0x00;
+        element[3] = 0x0f;
+        element[4] = (byte) 0xac;
+        element[5] = 4;
+        System.arraycopy(pmkid, 0, element, 6, 16);
+        return element;
+    }
+
+    /**
+     * Prepends a radiotap header with TSFT and flags fields; {@code fcs} appends four junk FCS bytes.
+     */
+    public static byte[] radiotap(byte[] frame, boolean fcs) {
+        ByteBuffer packet = ByteBuffer.allocate(24 + frame.length + (fcs ? 4 : 0)).order(ByteOrder.LITTLE_ENDIAN);
+        packet.put((byte) 0).put((byte) 0).putShort((short) 24).putInt(0x00000003);
+        packet.putLong(123456789L);          // TSFT (already 8-aligned at offset 8)
+        packet.put((byte) (fcs ? 0x10 : 0)); // flags
+        packet.put(new byte[7]);              // padding to the declared length
+        packet.put(frame);
+        if (fcs) {
+            packet.putInt(0xdeadbeef);
+        }
+        return packet.array();
+    }
+
+    public static byte[] filled(int length, int value) {
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = (byte) (value + i);
+        }
+        return bytes;
+    }
+
+    /**
+     * A classic pcap capture.
+     */
+    public static byte[] pcap(ByteOrder order, boolean nanos, int linkType, List<byte[]> packets) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ByteBuffer header = ByteBuffer.allocate(24).order(order);
+        header.putInt(nanos ? 0xa1b23c4d : 0xa1b2c3d4).putShort((short) 2).putShort((short) 4)
+                .putInt(0).putInt(0).putInt(65535).putInt(linkType);
+        out.writeBytes(header.array());
+        int second = 1_700_000_000;
+        for (byte[] packet : packets) {
+            ByteBuffer record = ByteBuffer.allocate(16).order(order);
+            record.putInt(second++).putInt(nanos ? 500_000_000 : 500_000).putInt(packet.length).putInt(packet.length);
+            out.writeBytes(record.array());
+            out.writeBytes(packet);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * A pcapng capture with one section and one interface, using enhanced packet blocks.
+     */
+    public static byte[] pcapng(ByteOrder order, int linkType, List<byte[]> packets) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ByteBuffer shb = ByteBuffer.allocate(28).order(order);
+        shb.putInt(0x0a0d0d0a).putInt(28).putInt(0x1a2b3c4d).putShort((short) 1).putShort((short) 0)
+                .putLong(-1).putInt(28);
+        out.writeBytes(shb.array());
+        // Interface with if_tsresol = 9 (nanoseconds) and an unrelated comment option before it.
+        ByteBuffer idb = ByteBuffer.allocate(40).order(order);
+        idb.putInt(1).putInt(40).putShort((short) linkType).putShort((short) 0).putInt(0);
+        idb.putShort((short) 1).putShort((short) 3).put(new byte[] {'a', 'b', 'c', 0});
+        idb.putShort((short) 9).putShort((short) 1).put(new byte[] {9, 0, 0, 0});
+        idb.putShort((short) 0).putShort((short) 0);
+        idb.putInt(40);
+        out.writeBytes(idb.array());
+        long nanos = 1_700_000_000_000_000_000L;
+        for (byte[] packet : packets) {
+            int padded = (packet.length + 3) & ~3;
+            int length = 32 + padded;
+            ByteBuffer epb = ByteBuffer.allocate(length).order(order);
+            epb.putInt(6).putInt(length).putInt(0).putInt((int) (nanos >>> 32)).putInt((int) nanos)
+                    .putInt(packet.length).putInt(packet.length).put(packet);
+            epb.position(length - 4);
+            epb.putInt(length);
+            out.writeBytes(epb.array());
+            nanos += 1_000_000_000L;
+        }
+        return out.toByteArray();
+    }
+
+    private static void putMac(ByteBuffer buffer, long mac) {
+        for (int shift = 40; shift >= 0; shift -= 8) {
+            buffer.put((byte) (mac >> shift));
+        }
+    }
+
+    private static byte[] slice(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.position()];
+        System.arraycopy(buffer.array(), 0, bytes, 0, bytes.length);
+        return bytes;
+    }
+}
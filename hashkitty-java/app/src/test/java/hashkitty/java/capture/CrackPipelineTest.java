@@ -0,0 +1,153 @@
+package hashkitty.java.capture;
+
+import hashkitty.java.events.JobEvent;
+import hashkitty.java.events.JobEventBus;
+import hashkitty.java.pmk.PmkCache;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CrackPipelineTest {
+
+    private static final String AP = "001122334455";
+    private static final String OTHER_AP = "0011223344ff";
+    private static final String STA = "66778899aabb";
+    private static final String ESSID = "486f6d654e6574";
+
+    @TempDir
+    Path dir;
+
+    private final LinkedBlockingQueue<List<String>> jobs = new LinkedBlockingQueue<>();
+
+    @Test
+    void offer_BatchesLinesAndQueuesNewOnesAfterTheRunningJob() throws Exception {
+        CrackPipeline pipeline = pipeline();
+        pipeline.start(null);
+        try {
+            assertTrue(pipeline.offer(pmkidLine("aa", AP)));
+            assertTrue(pipeline.offer(eapolLine("bb", AP)));
+            assertFalse(pipeline.offer(eapolLine("bb", AP)), "the same hash is queued once");
+
+            List<String> first = jobs.poll(5, TimeUnit.SECONDS);
+            assertEquals(List.of(pmkidLine("aa", AP), eapolLine("bb", AP)), first);
+
+            // While the job runs, new lines wait for the next one.
+            assertTrue(pipeline.offer(pmkidLine("cc", OTHER_AP)));
+            assertNull(jobs.poll(300, TimeUnit.MILLISECONDS));
+            assertTrue(pipeline.isJobRunning());
+
+            pipeline.jobFinished();
+            assertEquals(List.of(pmkidLine("cc", OTHER_AP)), jobs.poll(5, TimeUnit.SECONDS));
+            assertEquals(2, pipeline.getBatches());
+            assertEquals(3, pipeline.getQueued());
+            assertEquals(1, pipeline.getSkipped());
+        } finally {
+            pipeline.stop();
+        }
+    }
+
+    @Test
+    void offer_SkipsNetworksInThePotfileOrCrackedSince() throws Exception {
+        Path potfile = dir.resolve("hashcat.potfile");
+        Files.write(potfile, List.of(
+                "5f4dcc3b5aa765d61d8327deb882cf99:password",
+                "d".repeat(32) + ":" + AP + ":" + STA + ":HomeNet:hunter22"), StandardCharsets.UTF_8);
+        CrackPipeline pipeline = pipeline();
+        pipeline.start(potfile);
+        try {
+            assertFalse(pipeline.offer(eapolLine("ee", AP)), "the access point is cracked");
+
+            // A crack reported by any mode 22000 job counts too.
+            JobEventBus.getDefault().publish(JobEvent.cracked("job", 0, 22000,
+                    "f".repeat(32) + ":" + OTHER_AP + ":" + STA + ":Other", "letmein1"));
+            assertFalse(pipeline.offer(pmkidLine("aa", OTHER_AP)));
+            assertEquals(0, pipeline.getQueued());
+            assertNull(jobs.poll(300, TimeUnit.MILLISECONDS));
+        } finally {
+            pipeline.stop();
+        }
+    }
+
+    @Test
+    void start_RemembersWhatWasQueuedBefore() throws Exception {
+        CrackPipeline first = pipeline();
+        first.start(null);
+        first.offer(pmkidLine("aa", AP));
+        first.stop();
+
+        CrackPipeline second = pipeline();
+        second.start(null);
+        try {
+            assertFalse(second.offer(pmkidLine("aa", AP)));
+            assertTrue(second.offer(pmkidLine("ab", AP)));
+        } finally {
+            second.stop();
+        }
+    }
+
+    @Test
+    void runBatches_CracksFromThePmkCacheBeforeHashcat() throws Exception {
+        // "HomeNet" / "correct horse": a PMKID for AP, so the cache cracks it; OTHER_AP's line goes to Hashcat.
+        String cached = "WPA*01*1a26c0a8225d54b43b4b6b03d22052ae*" + AP + "*" + STA + "*" + ESSID + "***01";
+        Path wordlist = dir.resolve("words.txt");
+        Files.write(wordlist, List.of("password1", "correct horse"), StandardCharsets.UTF_8);
+        PmkCache cache = new PmkCache(dir.resolve("pmk"));
+        cache.precompute("HomeNet".getBytes(StandardCharsets.US_ASCII), wordlist, 2, null).close();
+
+        LinkedBlockingQueue<JobEvent> cracks = new LinkedBlockingQueue<>();
+        Consumer<JobEvent> listener = event -> {
+            if (event.getKind() == JobEvent.Kind.CRACKED) {
+                cracks.add(event);
+            }
+        };
+        JobEventBus.getDefault().subscribe(listener);
+        CrackPipeline pipeline = pipeline();
+        pipeline.setPmkCache(cache);
+        pipeline.start(null);
+        try {
+            pipeline.offer(cached);
+            pipeline.offer(pmkidLine("cc", OTHER_AP));
+            assertEquals(List.of(pmkidLine("cc", OTHER_AP)), jobs.poll(5, TimeUnit.SECONDS));
+            JobEvent crack = cracks.poll(1, TimeUnit.SECONDS);
+            assertNotNull(crack);
+            assertEquals("correct horse", crack.getPlain());
+            // Recorded under the same key Hashcat would print for this network.
+            assertEquals("1a26c0a8225d54b43b4b6b03d22052ae:" + AP + ":" + STA + ":HomeNet", crack.getHash());
+            // The cracked network is now known, so more of its hashes are dropped.
+            assertFalse(pipeline.offer(eapolLine("ee", AP)));
+        } finally {
+            pipeline.stop();
+            JobEventBus.getDefault().unsubscribe(listener);
+        }
+    }
+
+    @Test
+    void crackedHash_PrintsTheEssidLikeHashcat() {
+        assertEquals("aa".repeat(16) + ":" + AP + ":" + STA + ":HomeNet", CrackPipeline.crackedHash(pmkidLine("aa", AP)));
+        String colon = "WPA*01*" + "aa".repeat(16) + "*" + AP + "*" + STA + "*" + "613A62" + "***01";
+        assertEquals("aa".repeat(16) + ":" + AP + ":" + STA + ":$HEX[613a62]", CrackPipeline.crackedHash(colon));
+    }
+
+    private CrackPipeline pipeline() {
+        return new CrackPipeline(dir.resolve("queue"), status -> { },
+                hashFile -> jobs.add(Files.readAllLines(hashFile, StandardCharsets.US_ASCII)), 50);
+    }
+
+    private static String pmkidLine(String hash, String ap) {
+        return "WPA*01*" + hash.repeat(16) + "*" + ap + "*" + STA + "*" + ESSID + "***01";
+    }
+
+    private static String eapolLine(String mic, String ap) {
+        return "WPA*02*" + mic.repeat(16) + "*" + ap + "*" + STA + "*" + ESSID + "*" + "11".repeat(32) + "*"
+                + "22".repeat(99) + "*00";
+    }
+}
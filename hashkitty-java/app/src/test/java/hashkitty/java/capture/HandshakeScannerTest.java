@@ -0,0 +1,145 @@
+package hashkitty.java.capture;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static hashkitty.java.capture.CaptureFixtures.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+class HandshakeScannerTest {
+
+    @TempDir
+    Path dir;
+
+    private static List<byte[]> handshake(boolean radiotap) {
+        List<byte[]> frames = List.of(
+                beacon(AP, "HomeNet"),
+                eapol(AP, STA, 1, 1, filled(32, 0x10), null, pmkidElement(filled(16, 0x40))),
+                eapol(AP, STA, 2, 1, filled(32, 0x20), filled(16, 0x30), new byte[22]),
+                eapol(AP, STA, 4, 2, new byte[32], filled(16, 0x50), new byte[0]));
+        List<byte[]> packets = new ArrayList<>();
+        for (byte[] frame : frames) {
+            packets.add(radiotap ? radiotap(frame, true) : frame);
+        }
+        return packets;
+    }
+
+    @Test
+    void scan_FindsHandshakeInPcapOfEitherByteOrder() throws Exception {
+        for (ByteOrder order : new ByteOrder[] {ByteOrder.LITTLE_ENDIAN, ByteOrder.BIG_ENDIAN}) {
+            Path file = dir.resolve("capture-" + order + ".pcap");
+            Files.write(file, pcap(order, false, WifiDecoder.LINKTYPE_RADIOTAP, handshake(true)));
+
+            List<HandshakeCandidate> crackable = new ArrayList<>();
+            HandshakeScanner scanner = new HandshakeScanner(crackable::add);
+            assertEquals(4, scanner.scan(file));
+
+            assertEquals(1, crackable.size());
+            HandshakeCandidate candidate = crackable.get(0);
+            assertEquals(AP, candidate.getAp());
+            assertEquals(STA, candidate.getSta());
+            assertEquals("HomeNet", candidate.getEssid());
+            assertTrue(candidate.hasMessage(1) && candidate.hasMessage(2) && candidate.hasMessage(4));
+            assertFalse(candidate.hasMessage(3));
+            assertTrue(candidate.hasPmkid());
+            assertEquals(1_700_000_001_500_000L, candidate.getFirstSeenMicros());
+            assertEquals("00:11:22:33:44:55", WifiDecoder.formatMac(candidate.getAp()));
+        }
+    }
+
+    @Test
+    void scan_ReadsPcapngWithNanosecondResolution() throws Exception {
+        Path file = dir.resolve("capture.pcapng");
+        Files.write(file, pcapng(ByteOrder.BIG_ENDIAN, WifiDecoder.LINKTYPE_IEEE802_11, handshake(false)));
+
+        List<EapolKey> seen = new ArrayList<>();
+        long[] times = new long[4];
+        byte[] nonce = new byte[32];
+        WifiDecoder decoder = new WifiDecoder(new WifiDecoder.Listener() {
+            @Override
+            public void onNetwork(long bssid, java.nio.ByteBuffer data, int offset, int length, long time) {
+            }
+
+            @Override
+            public void onEapolKey(EapolKey key) {
+                times[seen.size()] = key.getTimestampMicros();
+                if (key.getMessage() == 2) {
+                    key.copyNonce(nonce, 0);
+                    assertEquals(1, key.getReplayCounter());
+                    assertEquals(2, key.getKeyVersion());
+                }
+                seen.add(key);
+            }
+        });
+        assertEquals(4, PcapReader.read(file, decoder));
+
+        assertEquals(3, decoder.getEapolFrames());
+        // The decoder reuses one view for every frame.
+        assertSame(seen.get(0), seen.get(2));
+        assertArrayEquals(filled(32, 0x20), nonce);
+        assertEquals(1_700_000_001_000_000L, times[0]);
+    }
+
+    @Test
+    void scan_StreamStopsQuietlyAtTruncatedPacket() throws Exception {
+        byte[] capture = pcap(ByteOrder.LITTLE_ENDIAN, true, WifiDecoder.LINKTYPE_RADIOTAP, handshake(true));
+        byte[] truncated = Arrays.copyOf(capture, capture.length - 10);
+
+        HandshakeScanner scanner = new HandshakeScanner(null);
+        assertEquals(3, scanner.scan(new ByteArrayInputStream(truncated)));
+        List<HandshakeCandidate> candidates = scanner.getCandidates();
+        assertEquals(1, candidates.size());
+        assertTrue(candidates.get(0).isCrackable());
+        assertFalse(candidates.get(0).hasMessage(4));
+    }
+
+    @Test
+    void scan_RejectsFilesThatAreNotCaptures() throws Exception {
+        Path file = dir.resolve("notes.txt");
+        Files.writeString(file, "not a capture at all");
+        assertThrows(java.io.IOException.class, () -> new HandshakeScanner(null).scan(file));
+    }
+
+    @Test
+    void newDecoder_SharedIndexReportsEachHandshakeOnceAcrossCaptures() throws Exception {
+        java.util.concurrent.atomic.AtomicInteger reported = new java.util.concurrent.atomic.AtomicInteger();
+        HandshakeScanner scanner = new HandshakeScanner(candidate -> reported.incrementAndGet());
+        // Two sensors hear the same handshake; a third hears only message 1 and the other only message 2.
+        byte[] both = pcap(ByteOrder.LITTLE_ENDIAN, false, WifiDecoder.LINKTYPE_RADIOTAP, handshake(true));
+        long otherSta = 0x0000000000aaL;
+        byte[] firstHalf = pcap(ByteOrder.LITTLE_ENDIAN, false, WifiDecoder.LINKTYPE_IEEE802_11,
+                List.of(eapol(AP, otherSta, 1, 1, filled(32, 1), null, new byte[0])));
+        byte[] secondHalf = pcap(ByteOrder.LITTLE_ENDIAN, false, WifiDecoder.LINKTYPE_IEEE802_11,
+                List.of(eapol(AP, otherSta, 2, 1, filled(32, 2), filled(16, 3), new byte[0])));
+
+        List<Thread> sensors = new ArrayList<>();
+        for (byte[] capture : List.of(both, both, firstHalf, secondHalf)) {
+            WifiDecoder decoder = scanner.newDecoder();
+            Thread sensor = new Thread(() -> {
+                for (int i = 0; i < 200; i++) {
+                    try {
+                        PcapReader.read(new ByteArrayInputStream(capture), decoder);
+                    } catch (java.io.IOException e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+            });
+            sensors.add(sensor);
+            sensor.start();
+        }
+        for (Thread sensor : sensors) {
+            sensor.join();
+        }
+
+        assertEquals(2, reported.get());
+        assertEquals(2, scanner.getCandidates().size());
+    }
+}
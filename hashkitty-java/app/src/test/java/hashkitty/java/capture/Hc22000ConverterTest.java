@@ -0,0 +1,87 @@
+package hashkitty.java.capture;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+
+import static hashkitty.java.capture.CaptureFixtures.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+class Hc22000ConverterTest {
+
+    @TempDir
+    Path dir;
+
+    private static final byte[] ANONCE = filled(32, 0x10);
+    private static final byte[] ANONCE3 = filled(32, 0x60);
+    private static final byte[] SNONCE = filled(32, 0x20);
+    private static final byte[] MIC = filled(16, 0x30);
+    private static final byte[] PMKID = filled(16, 0x40);
+    private static final byte[] RSN = new byte[22];
+
+    @Test
+    void convert_WritesPmkidAndBothMessagePairsOnce() throws Exception {
+        List<byte[]> packets = new ArrayList<>();
+        // Two reconnects of the same station: the second must not add lines.
+        for (int round = 0; round < 2; round++) {
+            packets.add(eapol(AP, STA, 1, 1, ANONCE, null, pmkidElement(PMKID)));
+            packets.add(eapol(AP, STA, 2, 1, SNONCE, MIC, RSN));
+            packets.add(eapol(AP, STA, 3, 2, ANONCE3, filled(16, 0x70), new byte[0]));
+            packets.add(eapol(AP, STA, 4, 2, new byte[32], filled(16, 0x50), new byte[0]));
+        }
+        // The beacon comes last, so every line waits for the ESSID.
+        packets.add(beacon(AP, "HomeNet"));
+        Path capture = dir.resolve("capture.pcap");
+        Files.write(capture, pcap(ByteOrder.LITTLE_ENDIAN, false, WifiDecoder.LINKTYPE_RADIOTAP, radiotapAll(packets)));
+
+        Path output = dir.resolve("capture.hc22000");
+        Hc22000Converter converter = Hc22000Converter.convert(capture, output);
+        List<String> lines = Files.readAllLines(output);
+
+        HexFormat hex = HexFormat.of();
+        String macs = "*001122334455*66778899aabb*" + hex.formatHex("HomeNet".getBytes());
+        byte[] eapol2 = eapolFrame(2, 1, SNONCE, new byte[16], RSN);
+        assertEquals(List.of(
+                "WPA*01*" + hex.formatHex(PMKID) + macs + "***01",
+                "WPA*02*" + hex.formatHex(MIC) + macs + "*" + hex.formatHex(ANONCE) + "*" + hex.formatHex(eapol2) + "*00",
+                "WPA*02*" + hex.formatHex(MIC) + macs + "*" + hex.formatHex(ANONCE3) + "*" + hex.formatHex(eapol2) + "*02"
+        ), lines);
+        assertEquals(1, converter.getPmkidLines());
+        assertEquals(2, converter.getEapolLines());
+        assertEquals(0, converter.getUnnamed());
+    }
+
+    @Test
+    void convert_DoesNotPairMismatchedOrStaleMessages() throws Exception {
+        List<String> lines = new ArrayList<>();
+        Hc22000Converter converter = new Hc22000Converter(lines::add);
+        List<byte[]> packets = new ArrayList<>();
+        packets.add(beacon(AP, "HomeNet"));
+        packets.add(eapol(AP, STA, 1, 7, ANONCE, null, new byte[0]));
+        packets.add(eapol(AP, STA, 2, 8, SNONCE, MIC, RSN)); // wrong replay counter for M1, no M3
+        // A second station without an ESSID-bearing beacon for its access point.
+        long otherAp = 0x0a0b0c0d0e0fL;
+        packets.add(eapol(otherAp, STA, 1, 1, ANONCE, null, pmkidElement(PMKID)));
+        Path capture = dir.resolve("mismatch.pcapng");
+        Files.write(capture, pcapng(ByteOrder.LITTLE_ENDIAN, WifiDecoder.LINKTYPE_IEEE802_11, packets));
+
+        converter.process(capture);
+
+        assertTrue(lines.isEmpty());
+        assertEquals(1, converter.getUnnamed());
+    }
+
+    private static List<byte[]> radiotapAll(List<byte[]> frames) {
+        List<byte[]> packets = new ArrayList<>();
+        for (byte[] frame : frames) {
+            packets.add(radiotap(frame, false));
+        }
+        return packets;
+    }
+}
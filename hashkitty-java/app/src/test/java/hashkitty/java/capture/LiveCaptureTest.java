@@ -0,0 +1,91 @@
+package hashkitty.java.capture;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.nio.ByteOrder;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static hashkitty.java.capture.CaptureFixtures.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+class LiveCaptureTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void run_ReportsHandshakeBeforeStreamEnds() throws Exception {
+        List<byte[]> packets = List.of(
+                radiotap(beacon(AP, "HomeNet"), false),
+                radiotap(eapol(AP, STA, 1, 1, filled(32, 1), null, new byte[0]), false),
+                radiotap(eapol(AP, STA, 2, 1, filled(32, 2), filled(16, 3), new byte[22]), false));
+        byte[] capture = pcap(ByteOrder.LITTLE_ENDIAN, false, WifiDecoder.LINKTYPE_RADIOTAP, packets);
+
+        PipedInputStream in = new PipedInputStream(64 * 1024);
+        PipedOutputStream out = new PipedOutputStream(in);
+        CountDownLatch found = new CountDownLatch(1);
+        HandshakeScanner scanner = new HandshakeScanner(candidate -> found.countDown());
+        Thread reader;
+        try (RotatingPcapWriter writer = new RotatingPcapWriter(dir, "sensor", 1 << 20, 5)) {
+            LiveCapture live = new LiveCapture(writer, scanner.getDecoder());
+            reader = new Thread(() -> {
+                try {
+                    live.run(in);
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
+            });
+            reader.start();
+
+            // Dribble the bytes in odd-sized pieces, as an SSH channel would, and keep the stream open.
+            for (int i = 0; i < capture.length; i += 7) {
+                out.write(capture, i, Math.min(7, capture.length - i));
+                out.flush();
+            }
+            assertTrue(found.await(5, TimeUnit.SECONDS), "handshake reported while the stream is still open");
+            out.close();
+            reader.join(5_000);
+            assertEquals(3, live.getPackets());
+        }
+
+        // What was saved is a readable capture with the same packets.
+        AtomicLong saved = new AtomicLong();
+        for (Path file : new RotatingPcapWriter(dir, "sensor", 1 << 20, 5).listFiles()) {
+            saved.addAndGet(PcapReader.read(file, (data, offset, length, linkType, time) -> {
+                assertEquals(WifiDecoder.LINKTYPE_RADIOTAP, linkType);
+            }));
+        }
+        assertEquals(3, saved.get());
+    }
+
+    @Test
+    void writer_RotatesAndKeepsNewestFiles() throws Exception {
+        byte[] frame = radiotap(beacon(AP, "HomeNet"), false);
+        java.nio.ByteBuffer data = java.nio.ByteBuffer.wrap(frame);
+        RotatingPcapWriter writer = new RotatingPcapWriter(dir, "rot", 4 * (16 + frame.length), 3);
+        for (int i = 0; i < 40; i++) {
+            writer.onPacket(data, 0, frame.length, WifiDecoder.LINKTYPE_RADIOTAP, 1_000_000L * i + 5);
+        }
+        writer.close();
+
+        List<Path> files = writer.listFiles();
+        assertEquals(3, files.size());
+        List<Long> times = new ArrayList<>();
+        for (Path file : files) {
+            PcapReader.read(file, (buffer, offset, length, linkType, time) -> times.add(time));
+        }
+        // The newest packets survive, in order, with their timestamps.
+        assertEquals(39_000_005L, times.get(times.size() - 1).longValue());
+        for (int i = 1; i < times.size(); i++) {
+            assertEquals(1_000_000L, times.get(i) - times.get(i - 1));
+        }
+    }
+}
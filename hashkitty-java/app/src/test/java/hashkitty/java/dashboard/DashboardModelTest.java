@@ -0,0 +1,87 @@
+package hashkitty.java.dashboard;
+
+import hashkitty.java.events.JobEvent;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DashboardModelTest {
+
+    private static final long T0 = 1_800_000_000_000L;
+
+    private final DashboardModel model = new DashboardModel();
+
+    @Test
+    void progress_EstimatesTimeLeftFromKeyspaceRate() {
+        model.accept(JobEvent.of(JobEvent.Kind.STARTED, "job1", T0));
+        model.accept(JobEvent.count(JobEvent.Kind.PROGRESS, "job1", T0 + 10_000, 1_000, 10_000));
+        model.accept(JobEvent.count(JobEvent.Kind.PROGRESS, "job1", T0 + 20_000, 2_000, 10_000));
+
+        DashboardModel.JobStats job = model.getJob("job1");
+        assertEquals(0.2, job.getProgress(), 1e-9);
+        // 1,000 candidates per 10 seconds with 8,000 left: 80 seconds.
+        assertEquals(80_000, job.getEtaMillis());
+
+        model.accept(JobEvent.of(JobEvent.Kind.FINISHED, "job1", T0 + 30_000));
+        assertFalse(job.isRunning());
+        assertEquals(-1, job.getEtaMillis());
+    }
+
+    @Test
+    void cracks_CountsOnlyTheLastMinute() {
+        model.accept(JobEvent.of(JobEvent.Kind.STARTED, "job1", T0));
+        model.accept(JobEvent.of(JobEvent.Kind.CRACKED, "job1", T0 + 1_000));
+        model.accept(JobEvent.of(JobEvent.Kind.CRACKED, "job1", T0 + 61_000));
+        model.accept(JobEvent.of(JobEvent.Kind.CRACKED, "job1", T0 + 90_000));
+        model.accept(JobEvent.count(JobEvent.Kind.RECOVERED, "job1", T0 + 90_000, 3, 10));
+
+        DashboardModel.JobStats job = model.getJob("job1");
+        assertEquals(2, job.getCracksPerMinute(T0 + 100_000));
+        assertEquals(3, job.getCracked());
+        assertEquals(3, job.getRecovered());
+        assertEquals(10, job.getRecoveredTotal());
+    }
+
+    @Test
+    void devices_FlagThrottledAndStalledDevices() {
+        model.accept(JobEvent.of(JobEvent.Kind.STARTED, "job1", T0));
+        model.accept(JobEvent.speed("job1", T0 + 5_000, "1", 1_000_000));
+        model.accept(JobEvent.speed("job1", T0 + 5_000, "2", 1_000_000));
+        model.accept(JobEvent.speed("job1", T0 + 10_000, "1", 700_000));
+        model.accept(JobEvent.speed("job1", T0 + 10_000, "2", 950_000));
+
+        DashboardModel.JobStats job = model.getJob("job1");
+        DashboardModel.DeviceStats first = job.getDevices().get(0);
+        DashboardModel.DeviceStats second = job.getDevices().get(1);
+        assertTrue(first.isThrottled());
+        assertFalse(second.isThrottled());
+        assertFalse(second.isStalled(T0 + 15_000));
+        assertTrue(second.isStalled(T0 + 10_000 + DashboardModel.STALL_AFTER_MILLIS + 1));
+    }
+
+    @Test
+    void jobs_LatestJobIsTheMostRecentlyStarted() {
+        model.accept(JobEvent.of(JobEvent.Kind.STARTED, "job1", T0));
+        model.accept(JobEvent.of(JobEvent.Kind.STARTED, "job2", T0 + 1_000));
+        model.accept(JobEvent.speed("job1", T0 + 2_000, JobEvent.ALL_DEVICES, 5));
+
+        assertEquals("job2", model.getLatestJob().getJobId());
+        assertEquals(2, model.getJobIds().size());
+    }
+
+    @Test
+    void series_StaysBoundedOverALongRun() {
+        DownsampledSeries series = new DownsampledSeries(8, 1_000);
+        // Twelve hours of samples every five seconds.
+        for (long t = 0; t < 12 * 3_600_000L; t += 5_000) {
+            series.add(T0 + t, 100);
+        }
+
+        DownsampledSeries.Snapshot snapshot = series.snapshot();
+        assertTrue(series.size() <= 8);
+        assertEquals(T0, snapshot.times[0]);
+        for (double value : snapshot.values) {
+            assertEquals(100, value, 1e-9);
+        }
+    }
+}
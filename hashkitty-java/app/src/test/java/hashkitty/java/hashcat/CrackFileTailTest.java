@@ -0,0 +1,42 @@
+package hashkitty.java.hashcat;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CrackFileTailTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void poll_DeliversOnlyCompleteNewLines() throws Exception {
+        Path file = directory.resolve("cracks.out");
+        List<String> lines = new ArrayList<>();
+        CrackFileTail tail = new CrackFileTail(file, lines::add);
+
+        tail.poll();
+        assertTrue(lines.isEmpty(), "a missing file has no lines");
+
+        append(file, "aaa:61\nbbb:6");
+        tail.poll();
+        assertEquals(List.of("aaa:61"), lines);
+
+        append(file, "2\nccc:63\n");
+        tail.poll();
+        tail.poll();
+        assertEquals(List.of("aaa:61", "bbb:62", "ccc:63"), lines);
+    }
+
+    private static void append(Path file, String text) throws Exception {
+        Files.writeString(file, text, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+}
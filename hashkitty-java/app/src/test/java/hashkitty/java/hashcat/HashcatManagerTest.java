@@ -52,4 +52,18 @@ class HashcatManagerTest {
         assertTrue(rIndex > 0);
         assertEquals("rules.txt", cmd.get(rIndex + 1));
     }
+
+    @Test
+    void buildChunkCommand_AddsSkipLimitAndOutfile() {
+        HashcatManager manager = new HashcatManager((s) -> {}, (s) -> {}, () -> {});
+        List<String> cmd = manager.buildChunkCommand(List.of("--hash-type=0", "hashes.txt", "-a", "0", "words.txt"),
+                1000, 500, "chunk.out");
+
+        assertEquals(List.of("hashcat", "--hash-type=0", "hashes.txt", "-a", "0", "words.txt"), cmd.subList(0, 6));
+        assertTrue(cmd.contains("--skip=1000"));
+        assertTrue(cmd.contains("--limit=500"));
+        assertTrue(cmd.contains("--outfile=chunk.out"));
+        assertTrue(cmd.contains("--outfile-format=1,3,4"));
+        assertTrue(cmd.contains("--potfile-disable"));
+    }
 }
@@ -0,0 +1,159 @@
+package hashkitty.java.hashcat;
+
+import hashkitty.java.events.JobEvent;
+import hashkitty.java.events.JobEventBus;
+import hashkitty.java.metrics.MetricsRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HashcatOutputParserTest {
+
+    private final List<String> cracked = new ArrayList<>();
+    private final List<String> status = new ArrayList<>();
+    private final HashcatOutputParser parser = new HashcatOutputParser(cracked::add, status::add);
+
+    @Test
+    void parseLine_ProgressLine_ReportsPercentage() {
+        parser.parseLine("Progress.........: 1024/2048 (50.00%)");
+
+        assertEquals(List.of("Progress: 50.00%"), status);
+    }
+
+    @Test
+    void parseLine_OtherOutput_IsNeverReportedAsACrack() {
+        parser.parseLine("* Device #1: NVIDIA GeForce RTX 3080, 9792/10010 MB, 68MCU");
+        parser.parseLine("Hashes: 1 digests; 1 unique digests, 1 unique salts");
+        parser.parseLine("Started: Mon Oct 19 10:00:00 2026");
+        parser.parseLine("5f4dcc3b5aa765d61d8327deb882cf99:password");
+
+        assertTrue(cracked.isEmpty(), cracked.toString());
+    }
+
+    @Test
+    void parseOutfileLine_DecodesHexPlainsContainingColons() {
+        parser.parseOutfileLine("5f4dcc3b5aa765d61d8327deb882cf99:70613a73733a");
+        parser.parseOutfileLine("5f4dcc3b5aa765d61d8327deb882cf99:");
+        parser.parseOutfileLine("5f4dcc3b5aa765d61d8327deb882cf99:not hex");
+
+        assertEquals(List.of("pa:ss:", ""), cracked);
+    }
+
+    @Test
+    void parseLine_SpeedLine_SetsHashRateWithoutReportingPassword() {
+        parser.parseLine("Speed.#1.........:  1500.5 kH/s (5.24ms) @ Accel:64 Loops:512 Thr:1 Vec:8");
+
+        assertTrue(cracked.isEmpty());
+        assertEquals(1_500_500, MetricsRegistry.getDefault().gauge("hashkitty_hashcat_hash_rate", "", "device", "1").get(), 0.001);
+
+        parser.reset();
+        assertEquals(0, MetricsRegistry.getDefault().gauge("hashkitty_hashcat_hash_rate", "", "device", "1").get(), 0.001);
+    }
+
+    @Test
+    void parseLine_StatusCounts_PublishEventsWithoutReportingPasswords() {
+        List<JobEvent> events = new ArrayList<>();
+        Consumer<JobEvent> subscriber = events::add;
+        JobEventBus.getDefault().subscribe(subscriber);
+        try {
+            parser.setJobId("job1");
+            parser.parseLine("Progress.........: 1024/2048 (50.00%)");
+            parser.parseLine("Recovered........: 3/10 (30.00%) Digests");
+        } finally {
+            JobEventBus.getDefault().unsubscribe(subscriber);
+        }
+
+        assertTrue(cracked.isEmpty());
+        assertEquals(2, events.size());
+        assertEquals(JobEvent.Kind.PROGRESS, events.get(0).getKind());
+        assertEquals(1024, events.get(0).getDone());
+        assertEquals(JobEvent.Kind.RECOVERED, events.get(1).getKind());
+        assertEquals(3, events.get(1).getDone());
+        assertEquals(10, events.get(1).getTotal());
+        assertEquals("job1", events.get(1).getJobId());
+    }
+
+    @Test
+    void parseLine_FullStatusBlock_ReportsNoCracks() {
+        List<JobEvent> events = new ArrayList<>();
+        Consumer<JobEvent> subscriber = events::add;
+        JobEventBus.getDefault().subscribe(subscriber);
+        try {
+            // A status block as printed by hashcat 6.2.6 with --status.
+            for (String line : List.of(
+                    "Session..........: hashcat",
+                    "Status...........: Running",
+                    "Hash.Mode........: 0 (MD5)",
+                    "Hash.Target......: 5f4dcc3b5aa765d61d8327deb882cf99",
+                    "Time.Started.....: Mon Oct 19 10:00:00 2026 (5 secs)",
+                    "Time.Estimated...: Mon Oct 19 10:00:10 2026 (5 secs)",
+                    "Kernel.Feature...: Pure Kernel",
+                    "Guess.Base.......: File (C:\\wordlists\\rockyou.txt)",
+                    "Guess.Queue......: 1/1 (100.00%)",
+                    "Speed.#1.........:  1500.5 kH/s (5.24ms) @ Accel:64 Loops:512 Thr:1 Vec:8",
+                    "Recovered........: 0/1 (0.00%) Digests",
+                    "Progress.........: 1024/2048 (50.00%)",
+                    "Rejected.........: 0/1024 (0.00%)",
+                    "Restore.Point....: 1024/2048 (50.00%)",
+                    "Restore.Sub.#1...: Salt:0 Amplifier:0-1 Iteration:0-1",
+                    "Candidate.Engine.: Device Generator",
+                    "Candidates.#1....: 123456 -> princess:1",
+                    "Hardware.Mon.#1..: Temp: 54c Util: 98% Core:1800MHz Mem:7000MHz Bus:16",
+                    "",
+                    "[s]tatus [p]ause [b]ypass [c]heckpoint [f]inish [q]uit =>")) {
+                parser.parseLine(line);
+            }
+        } finally {
+            JobEventBus.getDefault().unsubscribe(subscriber);
+        }
+
+        assertTrue(cracked.isEmpty(), cracked.toString());
+        assertTrue(events.stream().noneMatch(event -> event.getKind() == JobEvent.Kind.CRACKED), events.toString());
+        assertEquals(List.of("Progress: 50.00%"), status);
+    }
+
+    @Test
+    void parseOutfileLine_PublishesHashPasswordAndMode() {
+        List<JobEvent> events = new ArrayList<>();
+        Consumer<JobEvent> subscriber = events::add;
+        JobEventBus.getDefault().subscribe(subscriber);
+        try {
+            parser.setJobId("job1");
+            parser.setHashMode("1000");
+            parser.parseOutfileLine("user:1001:aad3b435b51404ee:736563726574");
+        } finally {
+            JobEventBus.getDefault().unsubscribe(subscriber);
+        }
+
+        assertEquals(1, events.size());
+        assertEquals(JobEvent.Kind.CRACKED, events.get(0).getKind());
+        assertEquals("user:1001:aad3b435b51404ee", events.get(0).getHash());
+        assertEquals("secret", events.get(0).getPlain());
+        assertEquals(1000, events.get(0).getMode());
+    }
+
+    @Test
+    void parseChunkOutfileLine_PublishesTheCrackWithoutItsPosition() {
+        List<JobEvent> events = new ArrayList<>();
+        Consumer<JobEvent> subscriber = events::add;
+        JobEventBus.getDefault().subscribe(subscriber);
+        try {
+            parser.setJobId("chunk1");
+            parser.setHashMode("0");
+            parser.parseChunkOutfileLine("5f4dcc3b5aa765d61d8327deb882cf99:70613a7373:1024");
+        } finally {
+            JobEventBus.getDefault().unsubscribe(subscriber);
+        }
+
+        assertEquals(List.of("pa:ss"), cracked);
+        assertEquals(1, events.size());
+        assertEquals(JobEvent.Kind.CRACKED, events.get(0).getKind());
+        assertEquals("chunk1", events.get(0).getJobId());
+        assertEquals("5f4dcc3b5aa765d61d8327deb882cf99", events.get(0).getHash());
+        assertEquals("pa:ss", events.get(0).getPlain());
+    }
+}
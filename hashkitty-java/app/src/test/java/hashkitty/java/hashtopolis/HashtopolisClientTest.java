@@ -0,0 +1,210 @@
+package hashkitty.java.hashtopolis;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import hashkitty.java.model.HashtopolisTask;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HashtopolisClientTest {
+
+    private static final String KEY = "s3cret";
+    private static final int TASKS = 2500;
+
+    private HttpServer server;
+    private String baseUrl;
+    private final List<String> requests = new ArrayList<>();
+    private final AtomicInteger fullResponses = new AtomicInteger();
+    private volatile int version = 1;
+    private volatile CountDownLatch gate;
+
+    @BeforeEach
+    void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/api/tasks", this::tasks);
+        server.createContext("/api/hashlists", exchange -> respond(exchange, 200, null,
+                "[{\"hashlistId\":3,\"name\":\"wpa\",\"hashtypeId\":22000,\"hashCount\":12}]"));
+        server.createContext("/api/agents", exchange -> respond(exchange, 200, null,
+                "{\"data\":[{\"agentId\":7,\"name\":\"rig\",\"devices\":[\"RTX 4090\"]}],\"links\":{\"next\":null}}"));
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.start();
+        baseUrl = "http://127.0.0.1:" + server.getAddress().getPort() + "/api";
+    }
+
+    @AfterEach
+    void stopServer() {
+        server.stop(0);
+    }
+
+    @Test
+    void getTasksAsync_FollowsPagesAndSendsTheKeyAsAHeader() throws Exception {
+        HashtopolisClient client = client(Duration.ofMinutes(1));
+        List<HashtopolisTask> tasks = client.getTasksAsync().get(10, TimeUnit.SECONDS);
+
+        assertEquals(TASKS, tasks.size());
+        for (int i = 0; i < TASKS; i++) {
+            assertEquals(i + 1, tasks.get(i).getTaskId());
+        }
+        assertEquals("task 2500 v1", tasks.get(TASKS - 1).getTaskName());
+        assertEquals(3, client.getRequests());
+        for (String request : requests) {
+            assertFalse(request.contains(KEY), request);
+        }
+    }
+
+    @Test
+    void getTasksAsync_ServesFromMemoryWithinTheTtlAndSharesADownloadInFlight() throws Exception {
+        HashtopolisClient client = client(Duration.ofMinutes(1));
+        gate = new CountDownLatch(1);
+        CompletableFuture<List<HashtopolisTask>> first = client.getTasksAsync();
+        CompletableFuture<List<HashtopolisTask>> second = client.getTasksAsync();
+        gate.countDown();
+        assertSame(first.get(10, TimeUnit.SECONDS), second.get(10, TimeUnit.SECONDS));
+        assertEquals(3, client.getRequests());
+
+        assertSame(first.get(), client.getTasksAsync().get(10, TimeUnit.SECONDS));
+        assertEquals(3, client.getRequests());
+
+        client.invalidate();
+        assertEquals(TASKS, client.getTasksAsync().get(10, TimeUnit.SECONDS).size());
+        assertEquals(6, client.getRequests());
+    }
+
+    @Test
+    void getTasksAsync_RevalidatesPagesWithETags() throws Exception {
+        HashtopolisClient client = client(Duration.ZERO);
+        List<HashtopolisTask> first = client.getTasksAsync().get(10, TimeUnit.SECONDS);
+        assertEquals(3, fullResponses.get());
+
+        List<HashtopolisTask> second = client.getTasksAsync().get(10, TimeUnit.SECONDS);
+        assertEquals(3, client.getNotModified());
+        assertEquals(3, fullResponses.get(), "unchanged pages are not sent again");
+        assertSame(first.get(1234), second.get(1234));
+
+        version = 2;
+        List<HashtopolisTask> third = client.getTasksAsync().get(10, TimeUnit.SECONDS);
+        assertEquals(6, fullResponses.get());
+        assertEquals("task 1 v2", third.get(0).getTaskName());
+    }
+
+    @Test
+    void refreshAll_FetchesEveryListTogether() throws Exception {
+        HashtopolisClient client = client(Duration.ofMinutes(1));
+        HashtopolisClient.Snapshot snapshot = client.refreshAll().get(10, TimeUnit.SECONDS);
+
+        assertEquals(TASKS, snapshot.getTasks().size());
+        assertEquals(1, snapshot.getHashlists().size());
+        assertEquals(22000, snapshot.getHashlists().get(0).getHashtypeId());
+        assertEquals(12, snapshot.getHashlists().get(0).getHashCount());
+        assertEquals(1, snapshot.getAgents().size());
+        assertEquals(List.of("RTX 4090"), snapshot.getAgents().get(0).getDevices());
+
+        // Fresh lists come from memory; a refresh revalidates them.
+        client.getAllAsync().get(10, TimeUnit.SECONDS);
+        assertEquals(5, client.getRequests());
+        client.refreshAll().get(10, TimeUnit.SECONDS);
+        assertEquals(10, client.getRequests());
+        assertEquals(3, client.getNotModified());
+    }
+
+    @Test
+    void errors_FailTheFutureButTheBlockingCallReturnsEmpty() {
+        HashtopolisClient client = client(Duration.ofMinutes(1));
+        server.removeContext("/api/tasks");
+        server.createContext("/api/tasks", exchange -> respond(exchange, 500, null, "oops"));
+
+        CompletionException error = assertThrows(CompletionException.class, () -> client.getTasksAsync().join());
+        assertTrue(error.getCause() instanceof IOException, String.valueOf(error.getCause()));
+        assertTrue(error.getCause().getMessage().contains("500"), error.getCause().getMessage());
+        assertTrue(client.getTasks().isEmpty());
+    }
+
+    private HashtopolisClient client(Duration ttl) {
+        return new HashtopolisClient(baseUrl, KEY, HashtopolisClient.sharedHttpClient(), ttl, 1000);
+    }
+
+    /**
+     * Serves {@link #TASKS} tasks a page at a time, with an ETag per page and version.
+     */
+    private void tasks(HttpExchange exchange) throws IOException {
+        CountDownLatch latch = gate;
+        if (latch != null) {
+            try {
+                latch.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (!("Bearer " + KEY).equals(exchange.getRequestHeaders().getFirst("Authorization"))) {
+            respond(exchange, 401, null, "");
+            return;
+        }
+        Map<String, String> query = new HashMap<>();
+        for (String pair : exchange.getRequestURI().getRawQuery().split("&")) {
+            String[] parts = pair.split("=", 2);
+            query.put(URLDecoder.decode(parts[0], StandardCharsets.UTF_8), parts[1]);
+        }
+        int size = Integer.parseInt(query.get("page[size]"));
+        int after = Integer.parseInt(query.getOrDefault("page[after]", "0"));
+        String etag = "\"v" + version + "-" + after + "\"";
+        if (etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+            respond(exchange, 304, etag, null);
+            return;
+        }
+        StringBuilder json = new StringBuilder("{\"_self\":\"tasks\",\"values\":[");
+        int last = Math.min(TASKS, after + size);
+        for (int id = after + 1; id <= last; id++) {
+            json.append(id > after + 1 ? "," : "")
+                    .append("{\"taskId\":").append(id)
+                    .append(",\"taskName\":\"task ").append(id).append(" v").append(version)
+                    .append("\",\"hashlistAlias\":\"wpa\",\"priority\":").append(id % 5).append('}');
+        }
+        json.append("],\"_next\":");
+        json.append(last < TASKS ? "\"tasks?page%5Bsize%5D=" + size + "&page%5Bafter%5D=" + last + "\"" : "null");
+        fullResponses.incrementAndGet();
+        respond(exchange, 200, etag, json.append('}').toString());
+    }
+
+    private void respond(HttpExchange exchange, int status, String etag, String body) throws IOException {
+        synchronized (requests) {
+            requests.add(exchange.getRequestURI().toString());
+        }
+        if (etag != null) {
+            exchange.getResponseHeaders().set("ETag", etag);
+        }
+        if (body == null) {
+            exchange.sendResponseHeaders(status, -1);
+            exchange.close();
+            return;
+        }
+        boolean gzip = String.valueOf(exchange.getRequestHeaders().getFirst("Accept-Encoding")).contains("gzip");
+        if (gzip) {
+            exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+        }
+        exchange.sendResponseHeaders(status, 0);
+        try (OutputStream out = gzip ? new GZIPOutputStream(exchange.getResponseBody()) : exchange.getResponseBody()) {
+            out.write(body.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+}
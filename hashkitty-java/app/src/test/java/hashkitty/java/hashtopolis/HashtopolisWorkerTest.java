@@ -0,0 +1,322 @@
+package hashkitty.java.hashtopolis;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import hashkitty.java.events.JobEvent;
+import hashkitty.java.events.JobEventBus;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HashtopolisWorkerTest {
+
+    private static final int CRACKS = 2500;
+
+    @TempDir
+    Path dir;
+
+    private HttpServer server;
+    private String url;
+    private final List<JsonObject> requests = new CopyOnWriteArrayList<>();
+    private final List<String> chunkReplies = new ArrayList<>(List.of("keyspace_required", "benchmark", "OK", "fully_dispatched"));
+    private boolean taskGiven;
+
+    @BeforeEach
+    void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/api/server.php", this::api);
+        server.createContext("/getHashlist.php", exchange -> respond(exchange, "0123456789abcdef0123456789abcdef\n"));
+        server.createContext("/getFile.php", exchange -> respond(exchange, "password\nletmein\n"));
+        server.start();
+        url = "http://127.0.0.1:" + server.getAddress().getPort() + "/api/server.php";
+    }
+
+    @AfterEach
+    void stopServer() {
+        server.stop(0);
+    }
+
+    @Test
+    void worker_RegistersAndCracksAChunkWithBatchedCracks() throws Exception {
+        FakeCracker cracker = new FakeCracker();
+        List<String> status = new CopyOnWriteArrayList<>();
+        HashtopolisWorker worker = new HashtopolisWorker(url, "voucher-1", "desk", dir, status::add, cracker,
+                HashtopolisClient.sharedHttpClient(), 50);
+        worker.start();
+        waitFor(() -> worker.getChunksCompleted() == 1 && count("getTask") >= 2);
+        worker.stop();
+        waitFor(() -> !worker.isRunning());
+
+        assertEquals(List.of("register", "updateInformation", "login", "getTask", "getHashlist", "getFile",
+                "getChunk", "sendKeyspace", "getChunk", "sendBenchmark", "getChunk"), actions().subList(0, 11));
+        assertEquals("voucher-1", find("register").get("voucher").getAsString());
+        assertEquals("Fake GPU", find("updateInformation").getAsJsonArray("devices").get(0).getAsString());
+        assertEquals("tok", find("getTask").get("token").getAsString());
+        assertEquals(123456, find("sendKeyspace").get("keyspace").getAsLong());
+        assertEquals("1000:12.5", find("sendBenchmark").get("result").getAsString());
+        assertEquals("speed", find("sendBenchmark").get("type").getAsString());
+
+        // The keyspace is measured without the hashlist; the chunk runs on the downloaded files.
+        assertEquals(List.of("-a", "0", dir.resolve("files/words.txt").toAbsolutePath().toString(), "--hash-type=0"),
+                cracker.keyspaceAttack);
+        assertEquals(dir.resolve("hashlists/9.txt").toAbsolutePath().toString(), cracker.chunkAttack.get(0));
+        assertEquals("0", cracker.mode);
+        assertEquals(1000, cracker.skip);
+        assertEquals(500, cracker.limit);
+
+        // Progress while running, then the cracks in batches, then the chunk closed.
+        List<JsonObject> progress = all("sendProgress");
+        int cracks = 0;
+        boolean sawRunning = false;
+        for (JsonObject report : progress) {
+            assertEquals(77, report.get("chunkId").getAsInt());
+            int batch = report.getAsJsonArray("cracks").size();
+            assertTrue(batch <= HashtopolisWorker.CRACK_BATCH, "batch of " + batch);
+            cracks += batch;
+            if (report.get("relativeProgress").getAsLong() == 5000) {
+                assertEquals(HashtopolisWorker.STATE_RUNNING, report.get("state").getAsInt());
+                assertEquals(1250, report.get("keyspaceProgress").getAsLong());
+                assertEquals(3000, report.get("speed").getAsLong());
+                sawRunning = true;
+            }
+        }
+        assertTrue(sawRunning, progress.toString());
+        assertEquals(CRACKS, cracks);
+        assertEquals(CRACKS, worker.getCracksSent());
+        JsonObject last = progress.get(progress.size() - 1);
+        assertEquals(HashtopolisWorker.STATE_EXHAUSTED, last.get("state").getAsInt());
+        assertEquals(10_000, last.get("relativeProgress").getAsLong());
+        assertEquals(1500, last.get("keyspaceProgress").getAsLong());
+
+        JsonArray crack = null;
+        for (JsonObject report : progress) {
+            for (JsonElement element : report.getAsJsonArray("cracks")) {
+                if (element.getAsJsonArray().get(0).getAsString().equals("hash:salt7")) {
+                    crack = element.getAsJsonArray();
+                }
+            }
+        }
+        assertNotNull(crack);
+        assertEquals("pass:word7", crack.get(1).getAsString());
+        assertEquals("7", crack.get(3).getAsString());
+        assertFalse(Files.exists(dir.resolve("chunk-77.out")));
+
+        // The token is kept, so the next start logs straight in.
+        requests.clear();
+        HashtopolisWorker again = new HashtopolisWorker(url, null, "desk", dir, status::add, cracker,
+                HashtopolisClient.sharedHttpClient(), 50);
+        again.start();
+        waitFor(() -> count("getTask") >= 1);
+        again.stop();
+        assertEquals(List.of("login", "getTask"), actions().subList(0, 2));
+    }
+
+    @Test
+    void attackArguments_ReplacesTheHashlistAndFileNames() {
+        Path words = dir.resolve("files/rockyou.txt");
+        List<String> arguments = HashtopolisWorker.attackArguments("#HL# -a 0 -r 'best 64.rule' rockyou.txt  -m 1000",
+                HashtopolisWorker.DEFAULT_HASHLIST_ALIAS, dir.resolve("hl.txt"), Map.of("rockyou.txt", words));
+        assertEquals(List.of(dir.resolve("hl.txt").toAbsolutePath().toString(), "-a", "0", "-r", "best 64.rule",
+                words.toAbsolutePath().toString(), "-m", "1000"), arguments);
+        assertEquals("1000", HashtopolisWorker.hashMode(arguments));
+        assertEquals("22000", HashtopolisWorker.hashMode(List.of("-m22000")));
+        assertEquals("", HashtopolisWorker.hashMode(List.of("-a", "3")));
+    }
+
+    @Test
+    void attackArguments_ReplacesOnlyTheAliasTheTaskNames() {
+        List<String> arguments = HashtopolisWorker.attackArguments("@HASHLIST@ -a 3 #HL#?d",
+                "@HASHLIST@", dir.resolve("hl.txt"), Map.of());
+        assertEquals(List.of(dir.resolve("hl.txt").toAbsolutePath().toString(), "-a", "3", "#HL#?d"), arguments);
+    }
+
+    /**
+     * Answers the agent API for one task whose chunk loop is {@link #chunkReplies}.
+     */
+    private void api(HttpExchange exchange) throws IOException {
+        JsonObject request = JsonParser.parseString(new String(exchange.getRequestBody().readAllBytes(),
+                StandardCharsets.UTF_8)).getAsJsonObject();
+        requests.add(request);
+        String action = request.get("action").getAsString();
+        JsonObject reply = new JsonObject();
+        reply.addProperty("action", action);
+        reply.addProperty("response", "SUCCESS");
+        switch (action) {
+            case "register":
+                reply.addProperty("token", "tok");
+                break;
+            case "getTask":
+                synchronized (this) {
+                    if (!taskGiven) {
+                        taskGiven = true;
+                        reply.addProperty("taskId", 5);
+                        reply.addProperty("hashlistId", 9);
+                        reply.addProperty("attackcmd", "@HASHLIST@ -a 0 words.txt");
+                        reply.addProperty("hashlistAlias", "@HASHLIST@");
+                        reply.addProperty("cmdpars", "--hash-type=0");
+                        reply.addProperty("bench", 10);
+                        reply.addProperty("benchType", "speed");
+                        reply.addProperty("statustimer", 1);
+                        JsonArray files = new JsonArray();
+                        files.add("words.txt");
+                        reply.add("files", files);
+                    } else {
+                        reply.add("taskId", null);
+                    }
+                }
+                break;
+            case "getHashlist":
+                reply.addProperty("url", "getHashlist.php?hashlists=9&token=tok");
+                break;
+            case "getFile":
+                reply.addProperty("url", "getFile.php?file=words.txt&token=tok");
+                break;
+            case "getChunk":
+                String status;
+                synchronized (this) {
+                    status = chunkReplies.isEmpty() ? "fully_dispatched" : chunkReplies.remove(0);
+                }
+                reply.addProperty("status", status);
+                if (status.equals("OK")) {
+                    reply.addProperty("chunkId", 77);
+                    reply.addProperty("skip", 1000);
+                    reply.addProperty("length", 500);
+                }
+                break;
+            default:
+                break;
+        }
+        respond(exchange, reply.toString());
+    }
+
+    private static void respond(HttpExchange exchange, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(200, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private List<String> actions() {
+        List<String> actions = new ArrayList<>();
+        for (JsonObject request : requests) {
+            actions.add(request.get("action").getAsString());
+        }
+        return actions;
+    }
+
+    private long count(String action) {
+        return actions().stream().filter(action::equals).count();
+    }
+
+    private JsonObject find(String action) {
+        return all(action).get(0);
+    }
+
+    private List<JsonObject> all(String action) {
+        List<JsonObject> found = new ArrayList<>();
+        for (JsonObject request : requests) {
+            if (request.get("action").getAsString().equals(action)) {
+                found.add(request);
+            }
+        }
+        return found;
+    }
+
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < deadline, "timed out");
+            Thread.sleep(20);
+        }
+    }
+
+    /**
+     * Plays a chunk: half the keyspace and a first crack after a moment, the rest of the cracks a status interval
+     * later, then the end.
+     */
+    private static final class FakeCracker implements HashtopolisWorker.Cracker {
+        volatile List<String> keyspaceAttack;
+        volatile List<String> chunkAttack;
+        volatile String mode;
+        volatile long skip;
+        volatile long limit;
+
+        @Override
+        public List<String> devices() {
+            return List.of("Fake GPU");
+        }
+
+        @Override
+        public long keyspace(List<String> attack) {
+            keyspaceAttack = attack;
+            return 123456;
+        }
+
+        @Override
+        public String benchmark(List<String> attack, String type, int seconds) {
+            return "1000:12.5";
+        }
+
+        @Override
+        public String startChunk(List<String> attack, String mode, long skip, long limit, Path outfile,
+                                 Runnable onFinished) {
+            this.chunkAttack = attack;
+            this.mode = mode;
+            this.skip = skip;
+            this.limit = limit;
+            new Thread(() -> {
+                try {
+                    Thread.sleep(200);
+                    JobEventBus.getDefault().publish(JobEvent.count(JobEvent.Kind.PROGRESS, "fake-job", 0, 250, 500));
+                    JobEventBus.getDefault().publish(JobEvent.speed("fake-job", 0, "1", 1000));
+                    JobEventBus.getDefault().publish(JobEvent.speed("fake-job", 0, "2", 2000));
+                    // Another job's progress is not this chunk's.
+                    JobEventBus.getDefault().publish(JobEvent.count(JobEvent.Kind.PROGRESS, "other", 0, 1, 500));
+                    // Half a line: read only once it is complete.
+                    Files.writeString(outfile, crackLine(0) + "hash:sal", StandardOpenOption.CREATE);
+                    Thread.sleep(1500);
+                    StringBuilder rest = new StringBuilder(crackLine(1).substring("hash:sal".length()));
+                    for (int i = 2; i < CRACKS; i++) {
+                        rest.append(crackLine(i));
+                    }
+                    Files.writeString(outfile, rest, StandardOpenOption.APPEND);
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
+                onFinished.run();
+            }).start();
+            return "fake-job";
+        }
+
+        @Override
+        public void stop() {
+        }
+
+        private static String crackLine(int i) {
+            String plain = "pass:word" + i;
+            return "hash:salt" + i + ":" + HexFormat.of().formatHex(plain.getBytes(StandardCharsets.UTF_8)) + ":" + i + "\n";
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package hashkitty.java.journal;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EventJournalTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void record_ThenClose_ReplaysEventsInOrderWithFilters() throws Exception {
+        EventJournal journal = new EventJournal(dir, 1 << 20, 5, 64);
+        journal.record(EventType.JOB_STARTED, "hashcat", "job1", "hashcat -m 0 -a 0 hashes.txt words.txt");
+        journal.record(EventType.CRACKED, "hashcat", "job1", "pa\"ss:\nword");
+        journal.record(EventType.RELAY_JOIN, "relay", "room1", "/10.0.0.5:40000");
+        journal.record(EventType.JOB_FINISHED, "hashcat", "job1", "exit code 0");
+        journal.close();
+
+        List<JournalEvent> all = JournalReader.read(dir, e -> true);
+        assertEquals(4, all.size());
+        assertEquals(EventType.JOB_STARTED, all.get(0).getType());
+        assertEquals("pa\"ss:\nword", all.get(1).getMessage());
+
+        List<JournalEvent> cracked = JournalReader.read(dir,
+                JournalReader.ofType(EnumSet.of(EventType.CRACKED)).and(JournalReader.aboutSubject("job1")));
+        assertEquals(1, cracked.size());
+        assertEquals(0, journal.getDroppedCount());
+    }
+
+    @Test
+    void record_ExceedingFileSize_RollsAndKeepsNewestFiles() throws Exception {
+        EventJournal journal = new EventJournal(dir, 200, 3, 64);
+        for (int i = 0; i < 50; i++) {
+            journal.record(EventType.STATUS, "app", null, "status line number " + i);
+        }
+        journal.close();
+
+        List<Path> files = EventJournal.listFiles(dir);
+        assertEquals(3, files.size());
+        List<JournalEvent> events = JournalReader.read(dir, e -> true);
+        // The newest events survive, still in order.
+        assertEquals("status line number 49", events.get(events.size() - 1).getMessage());
+        for (int i = 1; i < events.size(); i++) {
+            assertTrue(events.get(i - 1).getTimestamp() <= events.get(i).getTimestamp());
+        }
+    }
+
+    @Test
+    void record_FromManyThreads_LosesNothingWhenRingKeepsUp() throws Exception {
+        EventJournal journal = new EventJournal(dir, 1 << 20, 5, 1 << 16);
+        int threads = 4;
+        int perThread = 5000;
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> producers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            String subject = "t" + t;
+            Thread producer = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < perThread; i++) {
+                    journal.record(EventType.JOB_PROGRESS, "test", subject, Integer.toString(i));
+                }
+            });
+            producer.start();
+            producers.add(producer);
+        }
+        start.countDown();
+        for (Thread producer : producers) {
+            producer.join();
+        }
+        journal.close();
+
+        List<JournalEvent> events = JournalReader.read(dir, e -> true);
+        assertEquals(threads * perThread, events.size() + journal.getDroppedCount());
+        // Each producer's events keep their order.
+        List<JournalEvent> first = JournalReader.read(dir, JournalReader.aboutSubject("t0"));
+        for (int i = 1; i < first.size(); i++) {
+            assertTrue(Integer.parseInt(first.get(i - 1).getMessage()) < Integer.parseInt(first.get(i).getMessage()));
+        }
+    }
+
+    @Test
+    void parse_TruncatedLine_IsSkipped() throws Exception {
+        Files.writeString(dir.resolve("events-20261019-000000-000.jsonl"),
+                "{\"ts\":1,\"type\":\"ERROR\",\"source\":\"app\",\"message\":\"disk full\"}\n{\"ts\":2,\"type\":\"CRA");
+
+        List<JournalEvent> events = JournalReader.read(dir, e -> true);
+
+        assertEquals(1, events.size());
+        assertEquals("disk full", events.get(0).getMessage());
+    }
+}
@@ -0,0 +1,67 @@
+package hashkitty.java.metrics;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MetricsRegistryTest {
+
+    private final MetricsRegistry registry = new MetricsRegistry();
+
+    private String scrape() throws IOException {
+        StringBuilder out = new StringBuilder();
+        registry.writePrometheus(out);
+        return out.toString();
+    }
+
+    @Test
+    void writePrometheus_CountersAndGauges_UseTextFormat() throws IOException {
+        registry.counter("test_messages_total", "Messages.", "kind", "text").add(3);
+        registry.counter("test_messages_total", "Messages.", "kind", "binary").inc();
+        registry.gauge("test_rooms", "Rooms.", () -> 7);
+
+        String text = scrape();
+
+        assertTrue(text.contains("# HELP test_messages_total Messages.\n# TYPE test_messages_total counter\n"));
+        assertTrue(text.contains("test_messages_total{kind=\"text\"} 3\n"));
+        assertTrue(text.contains("test_messages_total{kind=\"binary\"} 1\n"));
+        assertTrue(text.contains("# TYPE test_rooms gauge\ntest_rooms 7\n"));
+    }
+
+    @Test
+    void counter_SameNameAndLabels_ReturnsSameInstance() {
+        assertSame(registry.counter("test_total", "Test.", "a", "1"), registry.counter("test_total", "Test.", "a", "1"));
+        assertThrows(IllegalArgumentException.class, () -> registry.gauge("test_total", "Test."));
+    }
+
+    @Test
+    void writePrometheus_Histogram_ExportsCumulativeBuckets() throws IOException {
+        Histogram histogram = registry.histogram("test_size_bytes", "Sizes.", 1, 2, 4);
+        histogram.record(1);
+        histogram.record(3);
+        histogram.record(9);
+        histogram.record(100);
+
+        String text = scrape();
+
+        assertTrue(text.contains("test_size_bytes_bucket{le=\"4\"} 2\n"));
+        assertTrue(text.contains("test_size_bytes_bucket{le=\"8\"} 2\n"));
+        assertTrue(text.contains("test_size_bytes_bucket{le=\"16\"} 3\n"));
+        assertTrue(text.contains("test_size_bytes_bucket{le=\"+Inf\"} 4\n"));
+        assertTrue(text.contains("test_size_bytes_sum 113\n"));
+        assertTrue(text.contains("test_size_bytes_count 4\n"));
+    }
+
+    @Test
+    void getQuantile_RecordedValues_StaysWithinBucketPrecision() {
+        Histogram histogram = new Histogram(1, 0, 20);
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i);
+        }
+
+        assertEquals(500, histogram.getQuantile(0.5), 500 * 0.125);
+        assertEquals(990, histogram.getQuantile(0.99), 990 * 0.125);
+    }
+}
@@ -0,0 +1,142 @@
+package hashkitty.java.pmk;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PmkCacheTest {
+
+    private static final HexFormat HEX = HexFormat.of();
+    private static final byte[] HOME_NET = "HomeNet".getBytes(StandardCharsets.US_ASCII);
+
+    /** A PMKID and message pairs of key versions 1, 2 and 3 for "HomeNet", passphrase "correct horse". */
+    private static final String EAPOL_HEAD = "*001122334455*66778899aabb*486f6d654e6574*"
+            + "0102030405060708090a0b0c0d0e0f101112131415161718191a1b1c1d1e1f20*0103006d0201";
+    private static final String EAPOL_TAIL = "001000000000000000016465666768696a6b6c6d6e6f707172737475767778797a7b7c7d"
+            + "7e7f808182830000000000000000000000000000000000000000000000000000000000000000000000000000000000160000"
+            + "0000000000000000000000000000000000000000*00";
+    private static final String PMKID = "WPA*01*1a26c0a8225d54b43b4b6b03d22052ae*001122334455*66778899aabb*486f6d654e6574***01";
+    private static final String KEYVER_1 = "WPA*02*5a8e275929780eb856a04047ffe8e3a7" + EAPOL_HEAD + "09" + EAPOL_TAIL;
+    private static final String KEYVER_2 = "WPA*02*fb6fbdc1f39b9b986ae72fb3a7e3ccb4" + EAPOL_HEAD + "0a" + EAPOL_TAIL;
+    private static final String KEYVER_3 = "WPA*02*74fdbbdc87251938368b718468f13fe5" + EAPOL_HEAD + "0b" + EAPOL_TAIL;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void pbkdf2_MatchesIeeeVectorAndJce() throws Exception {
+        byte[] pmk = new byte[32];
+        byte[] password = "password".getBytes(StandardCharsets.US_ASCII);
+        new Pbkdf2Sha1().derive(password, 0, password.length, "IEEE".getBytes(StandardCharsets.US_ASCII), pmk, 0);
+        assertEquals("f42c6fc52df0ebef9ebb4b90b38a5f902e83fe1b135a70e23aed762e9710a12e", HEX.formatHex(pmk));
+
+        SecretKeyFactory jce = SecretKeyFactory.getInstance("PBKDF2WithHmacSHA1");
+        byte[] essid = "ThirtyTwoCharacterNetworkName!!!".getBytes(StandardCharsets.US_ASCII);
+        for (String passphrase : List.of("12345678", "a much longer passphrase of sixty-three characters, exactly..")) {
+            byte[] bytes = passphrase.getBytes(StandardCharsets.US_ASCII);
+            new Pbkdf2Sha1().derive(bytes, 0, bytes.length, essid, pmk, 0);
+            byte[] expected = jce.generateSecret(new PBEKeySpec(passphrase.toCharArray(), essid, 4096, 256)).getEncoded();
+            assertArrayEquals(expected, pmk, passphrase);
+        }
+    }
+
+    @Test
+    void aesCmac_MatchesRfc4493() throws Exception {
+        Cipher aes = Cipher.getInstance("AES/ECB/NoPadding");
+        byte[] key = HEX.parseHex("2b7e151628aed2a6abf7158809cf4f3c");
+        assertEquals("bb1d6929e95937287fa37d129b756746", HEX.formatHex(WpaHash.aesCmac(aes, key, new byte[0])));
+        assertEquals("070a16b46b4d4144f79bdd9dd04a287c",
+                HEX.formatHex(WpaHash.aesCmac(aes, key, HEX.parseHex("6bc1bee22e409f96e93d7e117393172a"))));
+        assertEquals("dfa66747de9ae63030ca32611497c827", HEX.formatHex(WpaHash.aesCmac(aes, key,
+                HEX.parseHex("6bc1bee22e409f96e93d7e117393172aae2d8a571e03ac9c9eb76fac45af8e5130c81c46a35ce411"))));
+    }
+
+    @Test
+    void verifier_ChecksPmkidAndEveryKeyVersion() {
+        byte[] pmk = pmk("correct horse", HOME_NET);
+        byte[] wrong = pmk("wrong horse", HOME_NET);
+        for (String line : List.of(PMKID, KEYVER_1, KEYVER_2, KEYVER_3)) {
+            WpaHash.Verifier verifier = WpaHash.parse(line).newVerifier();
+            assertTrue(verifier.matches(pmk, 0), line);
+            assertFalse(verifier.matches(wrong, 0), line);
+        }
+
+        // Hashcat's own PMKID example.
+        WpaHash example = WpaHash.parse(
+                "WPA*01*4d4fe7aac3a2cecab195321ceb99a7d0*fc690c158264*f4747f87f9f4*686173686361742d6573736964***");
+        assertTrue(example.newVerifier().matches(pmk("hashcat!", example.getEssid()), 0));
+    }
+
+    @Test
+    void precompute_ThenCrackFindsThePassphraseWithoutPbkdf2() throws Exception {
+        Path wordlist = dir.resolve("words.txt");
+        List<String> words = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            words.add("candidate" + i);
+        }
+        words.add(150, "short");
+        words.add(200, "correct horse\r");
+        Files.write(wordlist, words, StandardCharsets.UTF_8);
+
+        PmkCache cache = new PmkCache(dir.resolve("pmk"));
+        try (PmkTable table = cache.precompute(HOME_NET, wordlist, 4, null)) {
+            // "short" is not a WPA passphrase.
+            assertEquals(301, table.getCount());
+            assertTrue(table.isComplete());
+            byte[] cached = new byte[32];
+            table.get(199, cached, 1);
+            assertArrayEquals(pmk("correct horse", HOME_NET), cached);
+        }
+        assertEquals(1, cache.tablesFor(HOME_NET).size());
+        assertTrue(cache.tablesFor("Other".getBytes(StandardCharsets.US_ASCII)).isEmpty());
+
+        assertEquals("correct horse", cache.crack(WpaHash.parse(KEYVER_2), 3));
+        assertEquals("correct horse", cache.crack(WpaHash.parse(PMKID), 1));
+        // A different network name has no table.
+        assertNull(cache.crack(WpaHash.parse(PMKID.replace("486f6d654e6574", "4f74686572")), 2));
+    }
+
+    @Test
+    void precompute_ResumesAnInterruptedTable() throws Exception {
+        Path wordlist = dir.resolve("words.txt");
+        List<String> words = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            words.add("password" + i);
+        }
+        Files.write(wordlist, words, StandardCharsets.UTF_8);
+        PmkCache cache = new PmkCache(dir);
+        Path file;
+        try (PmkTable table = cache.precompute(HOME_NET, wordlist, 2, null)) {
+            file = table.getFile();
+            // Pretend the run stopped after 25 candidates, leaving garbage after them.
+            table.setComputed(25);
+            table.put(30, new byte[32], 1);
+        }
+        List<String> status = new ArrayList<>();
+        try (PmkTable table = cache.precompute(HOME_NET, wordlist, 2, status::add)) {
+            assertEquals(file, table.getFile());
+            assertTrue(status.get(0).contains("resuming at 25"), status.get(0));
+            byte[] cached = new byte[32];
+            table.get(30, cached, 1);
+            assertArrayEquals(pmk("password30", HOME_NET), cached);
+        }
+    }
+
+    private static byte[] pmk(String passphrase, byte[] essid) {
+        byte[] bytes = passphrase.getBytes(StandardCharsets.UTF_8);
+        byte[] pmk = new byte[32];
+        new Pbkdf2Sha1().derive(bytes, 0, bytes.length, essid, pmk, 0);
+        return pmk;
+    }
+}
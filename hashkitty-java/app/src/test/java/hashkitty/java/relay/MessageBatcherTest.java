@@ -0,0 +1,89 @@
+package hashkitty.java.relay;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MessageBatcherTest {
+
+    private final List<RelayClient.Message> sent = new CopyOnWriteArrayList<>();
+
+    @Test
+    void submit_FlushesWhenTheMessageCountIsReached() {
+        try (MessageBatcher batcher = new MessageBatcher("room-1", sent::add, 3, 1 << 20, 60_000)) {
+            batcher.submit(cracked("a"));
+            batcher.submit(cracked("b"));
+            assertTrue(sent.isEmpty());
+            batcher.submit(cracked("c"));
+
+            assertEquals(1, sent.size());
+            RelayClient.Message batch = sent.get(0);
+            assertEquals("batch", batch.getType());
+            assertEquals("room-1", batch.getRoomId());
+            assertEquals(List.of("a", "b", "c"), payloads(batch));
+        }
+    }
+
+    @Test
+    void submit_FlushesWhenThePayloadSizeIsReached() {
+        String big = "x".repeat(100);
+        try (MessageBatcher batcher = new MessageBatcher("room-1", sent::add, 1000, 200, 60_000)) {
+            batcher.submit(cracked(big));
+            assertTrue(sent.isEmpty());
+            batcher.submit(cracked(big));
+
+            assertEquals(1, sent.size());
+            assertEquals(2, sent.get(0).getMessages().size());
+        }
+    }
+
+    @Test
+    void submit_FlushesAfterTheDelay() throws Exception {
+        try (MessageBatcher batcher = new MessageBatcher("room-1", sent::add)) {
+            long start = System.currentTimeMillis();
+            batcher.submit(cracked("a"));
+            batcher.submit(cracked("b"));
+            Thread.sleep(MessageBatcher.DEFAULT_MAX_DELAY_MS / 2);
+            assertTrue(sent.isEmpty(), "flushed before the delay");
+
+            while (sent.isEmpty()) {
+                assertTrue(System.currentTimeMillis() - start < 5000, "never flushed");
+                Thread.sleep(5);
+            }
+            assertTrue(System.currentTimeMillis() - start >= MessageBatcher.DEFAULT_MAX_DELAY_MS - 10);
+            assertEquals(List.of("a", "b"), payloads(sent.get(0)));
+
+            // The timer restarts with the next batch.
+            batcher.submit(cracked("c"));
+            while (sent.size() < 2) {
+                assertTrue(System.currentTimeMillis() - start < 5000, "second batch never flushed");
+                Thread.sleep(5);
+            }
+        }
+        assertEquals(2, sent.size());
+    }
+
+    @Test
+    void loneMessage_IsSentUnwrappedAndCloseFlushes() {
+        RelayClient.Message only = cracked("a");
+        MessageBatcher batcher = new MessageBatcher("room-1", sent::add, 10, 1 << 20, 60_000);
+        batcher.submit(only);
+        batcher.close();
+
+        assertEquals(List.of(only), sent);
+    }
+
+    private static RelayClient.Message cracked(String payload) {
+        RelayClient.Message message = new RelayClient.Message();
+        message.setType("cracked");
+        message.setPayload(payload);
+        return message;
+    }
+
+    private static List<String> payloads(RelayClient.Message batch) {
+        return batch.getMessages().stream().map(RelayClient.Message::getPayload).toList();
+    }
+}
@@ -0,0 +1,210 @@
+package hashkitty.java.relay;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import hashkitty.java.metrics.MetricsRegistry;
+import org.java_websocket.handshake.ServerHandshake;
+import org.junit.jupiter.api.Test;
+
+import java.net.URI;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RelayClientTest {
+
+    @Test
+    void resume_StartsFromTheJoinedSeqEvenWithoutRoomTraffic() throws Exception {
+        ScriptedClient client = new ScriptedClient();
+        client.onOpen(null);
+        assertFalse(client.lastSent().has("resumeFrom"), "a first join asks for no replay");
+        client.onMessage("{\"type\":\"joined\",\"roomId\":\"room-1\",\"epoch\":\"e1\",\"seq\":500}");
+
+        // Dropped before any room message arrived: the resume point is the ack's seq, not 0.
+        client.onClose(1006, "gone", true);
+        client.onOpen(null);
+        JsonObject join = client.lastSent();
+        assertEquals(500, join.get("resumeFrom").getAsLong());
+        assertEquals("e1", join.get("epoch").getAsString());
+        client.shutdown();
+    }
+
+    @Test
+    void messages_AreDedupedBySeqAndResumedFromTheLastOne() throws Exception {
+        ScriptedClient client = new ScriptedClient();
+        client.onOpen(null);
+        client.onMessage("{\"type\":\"joined\",\"epoch\":\"e1\",\"seq\":10}");
+        client.onMessage("{\"type\":\"status\",\"payload\":\"a\",\"seq\":11}");
+        client.onMessage("{\"type\":\"status\",\"payload\":\"b\",\"seq\":12}");
+
+        client.onClose(1006, "gone", true);
+        client.onOpen(null);
+        assertEquals(12, client.lastSent().get("resumeFrom").getAsLong());
+        client.onMessage("{\"type\":\"joined\",\"epoch\":\"e1\",\"seq\":13}");
+        // The replay overlaps with what was already delivered.
+        client.onMessage("{\"type\":\"status\",\"payload\":\"b\",\"seq\":12}");
+        client.onMessage("{\"type\":\"status\",\"payload\":\"c\",\"seq\":13}");
+        await(() -> client.received.size() == 3);
+        Thread.sleep(50);
+        assertEquals(List.of("a", "b", "c"), client.received);
+
+        // A restarted relay starts a new epoch; its seqs restart from the ack.
+        client.onClose(1006, "gone", true);
+        client.onOpen(null);
+        client.onMessage("{\"type\":\"joined\",\"epoch\":\"e2\",\"seq\":3}");
+        client.onMessage("{\"type\":\"history_gap\",\"payload\":\"1-3\"}");
+        client.onMessage("{\"type\":\"status\",\"payload\":\"d\",\"seq\":4}");
+        await(() -> client.received.size() == 4);
+        client.onClose(1006, "gone", true);
+        client.onOpen(null);
+        assertEquals(4, client.lastSent().get("resumeFrom").getAsLong());
+        assertEquals("e2", client.lastSent().get("epoch").getAsString());
+        client.shutdown();
+    }
+
+    @Test
+    void offline_BacksOffBuffersAndFlushesAfterTheRejoin() throws Exception {
+        MetricsRegistry metrics = MetricsRegistry.getDefault();
+        long reconnectsBefore = metrics.counter("hashkitty_relay_client_reconnect_attempts_total", "").get();
+        long droppedBefore = metrics.counter("hashkitty_relay_client_dropped_messages_total", "").get();
+        ScriptedClient client = new ScriptedClient();
+        client.onOpen(null);
+        client.onMessage("{\"type\":\"joined\",\"epoch\":\"e1\",\"seq\":0}");
+        assertEquals(1.0, state(metrics, "connected"), 0);
+
+        long lostAt = System.currentTimeMillis();
+        client.onClose(1006, "gone", true);
+        assertEquals(RelayClient.ConnectionState.RECONNECTING, client.getConnectionState());
+        assertEquals(1.0, state(metrics, "reconnecting"), 0);
+        assertEquals(0.0, state(metrics, "connected"), 0);
+        await(() -> client.reconnects == 1);
+        long firstDelay = System.currentTimeMillis() - lostAt;
+        assertTrue(firstDelay >= RelayClient.BASE_RECONNECT_DELAY_MS / 2 - 50, "waited " + firstDelay + " ms");
+
+        // Results produced while offline are kept, oldest dropped first; other messages are not.
+        for (int i = 0; i < RelayClient.MAX_BUFFERED_MESSAGES + 2; i++) {
+            client.sendMessage(message("cracked", "pw" + i));
+        }
+        client.sendMessage(message("status", "not kept"));
+        assertEquals(RelayClient.MAX_BUFFERED_MESSAGES, client.getBufferedMessageCount());
+        assertEquals(RelayClient.MAX_BUFFERED_MESSAGES,
+                metrics.gauge("hashkitty_relay_client_buffered_messages", "", "role", RelayClient.ROLE_MAIN).get(), 0);
+        assertEquals(2, client.getDroppedMessageCount());
+        assertEquals(droppedBefore + 2, metrics.counter("hashkitty_relay_client_dropped_messages_total", "").get());
+
+        // The attempt fails: the next one waits longer.
+        client.onClose(-1, "refused", false);
+        assertEquals(2, client.getConsecutiveFailures());
+        await(() -> client.reconnects == 2);
+        assertEquals(reconnectsBefore + 2, metrics.counter("hashkitty_relay_client_reconnect_attempts_total", "").get());
+
+        int sentBefore = client.sent.size();
+        client.onOpen(null);
+        assertEquals(RelayClient.ConnectionState.CONNECTED, client.getConnectionState());
+        assertEquals(0, client.getConsecutiveFailures());
+        assertEquals(0, client.getBufferedMessageCount());
+        List<String> flushed = client.sent.subList(sentBefore, client.sent.size());
+        assertEquals(RelayClient.MAX_BUFFERED_MESSAGES + 1, flushed.size());
+        assertEquals("join", JsonParser.parseString(flushed.get(0)).getAsJsonObject().get("type").getAsString());
+        assertEquals("pw2", JsonParser.parseString(flushed.get(1)).getAsJsonObject().get("payload").getAsString());
+        assertEquals("pw" + (RelayClient.MAX_BUFFERED_MESSAGES + 1),
+                JsonParser.parseString(flushed.get(flushed.size() - 1)).getAsJsonObject().get("payload").getAsString());
+
+        client.shutdown();
+        assertEquals(1.0, state(metrics, "closed"), 0);
+    }
+
+    @Test
+    void uploadClient_IsReportedBesideTheMainOne() {
+        MetricsRegistry metrics = MetricsRegistry.getDefault();
+        ScriptedClient main = new ScriptedClient();
+        main.onOpen(null);
+        RelayClient files = new RelayClient(URI.create("ws://relay.invalid/ws"), "room-1-files", RelayClient.ROLE_FILES,
+                message -> { }, status -> { });
+
+        // Creating the second client must not take over the main client's series.
+        assertEquals(1.0, state(metrics, "connected"), 0);
+        assertEquals(1.0, metrics.gauge("hashkitty_relay_client_state", "", "role", RelayClient.ROLE_FILES,
+                "state", "connecting").get(), 0);
+        main.shutdown();
+        files.shutdown();
+    }
+
+    private static double state(MetricsRegistry metrics, String state) {
+        return metrics.gauge("hashkitty_relay_client_state", "", "role", RelayClient.ROLE_MAIN, "state", state).get();
+    }
+
+    private static RelayClient.Message message(String type, String payload) {
+        RelayClient.Message message = new RelayClient.Message();
+        message.setType(type);
+        message.setPayload(payload);
+        return message;
+    }
+
+    static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > deadline) {
+                fail("Condition not met in time");
+            }
+            Thread.sleep(10);
+        }
+    }
+
+    /**
+     * A client without a socket: the test drives the WebSocket callbacks and reads what would have been sent.
+     */
+    static class ScriptedClient extends RelayClient {
+        final List<String> sent = new CopyOnWriteArrayList<>();
+        final List<String> received;
+        volatile boolean open;
+        volatile int reconnects;
+
+        ScriptedClient() {
+            this(new CopyOnWriteArrayList<>());
+        }
+
+        private ScriptedClient(List<String> received) {
+            super(URI.create("ws://relay.invalid/ws"), "room-1", message -> received.add(message.getPayload()), status -> { });
+            this.received = received;
+        }
+
+        @Override
+        public void onOpen(ServerHandshake handshakedata) {
+            open = true;
+            super.onOpen(handshakedata);
+        }
+
+        @Override
+        public void onClose(int code, String reason, boolean remote) {
+            open = false;
+            super.onClose(code, reason, remote);
+        }
+
+        @Override
+        public boolean isOpen() {
+            return open;
+        }
+
+        @Override
+        public void send(String text) {
+            sent.add(text);
+        }
+
+        @Override
+        public void reconnect() {
+            reconnects++;
+        }
+
+        @Override
+        public void close() {
+            open = false;
+        }
+
+        JsonObject lastSent() {
+            return JsonParser.parseString(sent.get(sent.size() - 1)).getAsJsonObject();
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package hashkitty.java.results;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CrackExporterTest {
+
+    @TempDir
+    Path dir;
+
+    private CrackStore openStore() throws Exception {
+        return new CrackStore(dir.resolve("store"));
+    }
+
+    @Test
+    void exportCsv_QuotesFieldsThatNeedIt() throws Exception {
+        try (CrackStore store = openStore()) {
+            store.append(1, 0, "j", "5f4dcc3b5aa765d61d8327deb882cf99", "password");
+            store.append(2, -1, "j", "abc", "a,\"b\"");
+            Path out = dir.resolve("out.csv");
+
+            assertEquals(2, CrackExporter.exportCsv(store, out));
+
+            assertEquals(List.of("hash,plain,mode", "5f4dcc3b5aa765d61d8327deb882cf99,password,0", "abc,\"a,\"\"b\"\"\","),
+                    Files.readAllLines(out));
+        }
+    }
+
+    @Test
+    void exportPots_SkipDuplicatesAndTagJohnHashes() throws Exception {
+        try (CrackStore store = openStore()) {
+            store.append(1, 1000, "j", "8846f7eaee8fb117ad06bdd830b7586c", "password");
+            store.append(2, 1000, "k", "8846f7eaee8fb117ad06bdd830b7586c", "password");
+            store.append(3, 0, "k", "aa", "tab\there");
+            Path pot = dir.resolve("hashcat.potfile");
+            Path john = dir.resolve("john.pot");
+
+            assertEquals(2, CrackExporter.exportHashcatPot(store, pot));
+            CrackExporter.exportJohnPot(store, john);
+
+            assertEquals(List.of("8846f7eaee8fb117ad06bdd830b7586c:password", "aa:$HEX[7461620968657265]"), Files.readAllLines(pot));
+            assertEquals(List.of("$NT$8846f7eaee8fb117ad06bdd830b7586c:password", "$dynamic_0$aa:$HEX[7461620968657265]"),
+                    Files.readAllLines(john));
+        }
+    }
+
+    @Test
+    void exportPot_SkipsARepeatedPasswordThatIsNotAdjacent() throws Exception {
+        try (CrackStore store = openStore()) {
+            store.append(1, 0, "j", "aa", "x");
+            store.append(2, 0, "j", "aa", "y");
+            store.append(3, 0, "k", "aa", "x");
+            store.append(4, 0, "k", "bb", "x");
+            Path pot = dir.resolve("hashcat.potfile");
+
+            assertEquals(3, CrackExporter.exportHashcatPot(store, pot));
+
+            assertEquals(List.of("aa:x", "aa:y", "bb:x"), Files.readAllLines(pot));
+        }
+    }
+
+    @Test
+    void joinUsers_MatchesUserHashAndPwdumpLines() throws Exception {
+        try (CrackStore store = openStore()) {
+            store.append(1, 1000, "j", "8846f7eaee8fb117ad06bdd830b7586c", "password");
+            store.append(2, 0, "j", "5f4dcc3b5aa765d61d8327deb882cf99", "password");
+            ByteArrayOutputStream list = new ByteArrayOutputStream();
+            list.write("alice:5f4dcc3b5aa765d61d8327deb882cf99\r\n".getBytes(StandardCharsets.US_ASCII));
+            list.write("bob:0123\n".getBytes(StandardCharsets.US_ASCII));
+            // A Latin-1 username must come out byte for byte.
+            list.write(new byte[]{'j', (byte) 0xF6, 'r', 'g'});
+            list.write(":1001:AAD3B435B51404EEAAD3B435B51404EE:8846F7EAEE8FB117AD06BDD830B7586C:::".getBytes(StandardCharsets.US_ASCII));
+            Path input = dir.resolve("users.txt");
+            Files.write(input, list.toByteArray());
+            Path out = dir.resolve("joined.txt");
+
+            assertEquals(2, CrackExporter.joinUsers(store, input, out, -1));
+
+            byte[] joined = Files.readAllBytes(out);
+            ByteArrayOutputStream expected = new ByteArrayOutputStream();
+            expected.write("alice:5f4dcc3b5aa765d61d8327deb882cf99:password\n".getBytes(StandardCharsets.US_ASCII));
+            expected.write(new byte[]{'j', (byte) 0xF6, 'r', 'g'});
+            expected.write(":8846F7EAEE8FB117AD06BDD830B7586C:password\n".getBytes(StandardCharsets.US_ASCII));
+            assertArrayEquals(expected.toByteArray(), joined);
+        }
+    }
+
+    @Test
+    void joinUsers_StreamsListsLargerThanItsBuffer() throws Exception {
+        try (CrackStore store = openStore()) {
+            for (int i = 0; i < 1000; i++) {
+                store.append(i, 0, "j", String.format("%032x", i * 7), "p" + i);
+            }
+            StringBuilder list = new StringBuilder();
+            for (int i = 0; i < 20_000; i++) {
+                list.append("user").append(i).append(':').append(String.format("%032x", i)).append('\n');
+            }
+            Path input = dir.resolve("users.txt");
+            Files.writeString(input, list);
+            Path out = dir.resolve("joined.txt");
+
+            // Multiples of 7 below 7000 are cracked.
+            assertEquals(1000, CrackExporter.joinUsers(store, input, out, 1));
+            List<String> lines = Files.readAllLines(out);
+            assertEquals("user7:" + String.format("%032x", 7) + ":p1", lines.get(1));
+        }
+    }
+}
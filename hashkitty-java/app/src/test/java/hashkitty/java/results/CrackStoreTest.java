@@ -0,0 +1,94 @@
+package hashkitty.java.results;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CrackStoreTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void append_RowsSurviveReopenAndCrossSegments() throws Exception {
+        // Tiny segments, so the columns and the string heap span several mappings.
+        try (CrackStore store = new CrackStore(dir, 64, 64)) {
+            for (int i = 0; i < 50; i++) {
+                store.append(1_000 + i, i % 3, i < 25 ? "job1" : "job2", "hash-" + i + "-" + "x".repeat(i), "pass" + i);
+            }
+            store.append(2_000, -1, null, "h", "p\u00e4ss");
+        }
+
+        try (CrackStore store = new CrackStore(dir, 64, 64)) {
+            assertEquals(51, store.size());
+            CrackRecord record = store.get(49);
+            assertEquals(1_049, record.getTime());
+            assertEquals(1, record.getMode());
+            assertEquals("job2", record.getJobId());
+            assertEquals("hash-49-" + "x".repeat(49), record.getHash());
+            assertEquals("pass49", record.getPlain());
+            assertNull(store.getJobId(50));
+            assertEquals("p\u00e4ss", store.getPlain(50));
+            assertThrows(IndexOutOfBoundsException.class, () -> store.get(51));
+        }
+    }
+
+    @Test
+    void sortIndex_UpdatesIncrementallyAndFindsPrefixes() throws Exception {
+        try (CrackStore store = new CrackStore(dir)) {
+            store.append(1, 0, "j", "h1", "delta");
+            store.append(2, 0, "j", "h2", "alpha");
+            store.append(3, 0, "j", "h3", "charlie");
+
+            SortIndex index = SortIndex.open(store, CrackStore.Column.PLAIN).update();
+            assertEquals(3, index.size());
+            assertEquals("alpha", store.getPlain(index.rowAt(0)));
+
+            store.append(4, 0, "j", "h4", "bravo");
+            store.append(5, 0, "j", "h5", "alpine");
+            SortIndex updated = index.update();
+            index.discard();
+
+            assertEquals(5, updated.size());
+            String[] expected = {"alpha", "alpine", "bravo", "charlie", "delta"};
+            for (int i = 0; i < expected.length; i++) {
+                assertEquals(expected[i], store.getPlain(updated.rowAt(i)));
+            }
+            assertArrayEquals(new long[]{0, 2}, updated.prefixRange("alp"));
+            assertArrayEquals(new long[]{4, 4}, updated.prefixRange("cz"));
+
+            // The newest index is found again after a restart.
+            assertEquals(5, SortIndex.open(store, CrackStore.Column.PLAIN).size());
+        }
+    }
+
+    @Test
+    void resultWindow_PagesRowsInTheChosenOrder() throws Exception {
+        try (CrackStore store = new CrackStore(dir)) {
+            for (int i = 0; i < 300; i++) {
+                store.append(i, i % 7, null, "hash" + i, String.format("p%03d", 299 - i));
+            }
+            ResultWindow window = new ResultWindow(store);
+            assertEquals(300, window.size());
+            assertEquals("hash299", window.get(0).getHash());
+            assertEquals("hash0", window.get(299).getHash());
+
+            store.append(300, 0, null, "hash300", "q-new");
+            assertEquals(300, window.size());
+            assertEquals(1, window.refresh());
+            assertEquals("hash300", window.get(0).getHash());
+
+            SortIndex byPlain = SortIndex.open(store, CrackStore.Column.PLAIN).update();
+            window.showPrefix(byPlain, "p29");
+            assertEquals(10, window.size());
+            assertEquals("p290", window.get(0).getPlain());
+            assertEquals("hash9", window.get(0).getHash());
+
+            window.showSorted(byPlain, true);
+            assertEquals("q-new", window.get(0).getPlain());
+        }
+    }
+}
@@ -0,0 +1,258 @@
+package hashkitty.java.server;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import hashkitty.java.server.cluster.ClusterBus;
+import hashkitty.java.server.cluster.InProcessClusterBus;
+import hashkitty.java.util.ExecutorUtil;
+import hashkitty.java.util.SerialExecutor;
+import org.junit.jupiter.api.Test;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RelayCoreTest {
+
+    @Test
+    void twoNodes_ForwardRoomMessagesToEachOther() throws Exception {
+        InProcessClusterBus.Network network = new InProcessClusterBus.Network();
+        RelayCore a = node(new InProcessClusterBus(network, "a", "ws://a/ws"));
+        RelayCore b = node(new InProcessClusterBus(network, "b", "ws://b/ws"));
+        FakeConnection alice = new FakeConnection(1);
+        FakeConnection bob = new FakeConnection(2);
+
+        join(a, alice, "room-1");
+        join(b, bob, "room-1");
+        a.onMessage(alice, "{\"type\":\"status\",\"payload\":\"hello\"}");
+        await(() -> bob.received("status").size() == 1);
+        assertEquals("hello", bob.received("status").get(0).get("payload").getAsString());
+        assertEquals(1, bob.received("status").get(0).get("seq").getAsLong());
+
+        b.onMessage(bob, "{\"type\":\"cracked\",\"payload\":\"pw\"}");
+        await(() -> alice.received("cracked").size() == 1);
+        assertTrue(alice.received("status").isEmpty(), "the sender gets no echo");
+        a.stop();
+        b.stop();
+    }
+
+    @Test
+    void peerDeath_DropsItsMembershipsAndRoomsStayLocal() throws Exception {
+        InProcessClusterBus.Network network = new InProcessClusterBus.Network();
+        InProcessClusterBus busB = new InProcessClusterBus(network, "b", "ws://b/ws");
+        RelayCore a = node(new InProcessClusterBus(network, "a", "ws://a/ws"));
+        RelayCore b = node(busB);
+        FakeConnection alice = new FakeConnection(1);
+        FakeConnection carol = new FakeConnection(3);
+        FakeConnection bob = new FakeConnection(2);
+        join(a, alice, "room-1");
+        join(a, carol, "room-1");
+        join(b, bob, "room-1");
+
+        // Node B dies: A must stop routing to it and take over as home of every room.
+        busB.close();
+        for (int i = 0; i < 100; i++) {
+            assertEquals("a", a.getHomeNode("room-" + i));
+        }
+        a.onMessage(alice, "{\"type\":\"status\",\"payload\":\"after\"}");
+        await(() -> carol.received("status").size() == 1);
+        Thread.sleep(100);
+        assertTrue(bob.received("status").isEmpty());
+
+        // A node that comes back receives the room again.
+        RelayCore c = node(new InProcessClusterBus(network, "c", "ws://c/ws"));
+        FakeConnection dave = new FakeConnection(4);
+        join(c, dave, "room-1");
+        a.onMessage(alice, "{\"type\":\"status\",\"payload\":\"again\"}");
+        await(() -> dave.received("status").size() == 1);
+        a.stop();
+        b.stop();
+        c.stop();
+    }
+
+    @Test
+    void slowAnnouncement_DoesNotHoldUpOtherJoins() throws Exception {
+        InProcessClusterBus.Network network = new InProcessClusterBus.Network();
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch announcing = new CountDownLatch(1);
+        ClusterBus slow = new InProcessClusterBus(network, "a", null) {
+            @Override
+            public void announceJoin(String roomId) {
+                announcing.countDown();
+                try {
+                    release.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                super.announceJoin(roomId);
+            }
+        };
+        RelayCore a = node(slow);
+        FakeConnection first = new FakeConnection(1);
+        FakeConnection second = new FakeConnection(2);
+
+        a.onMessage(first, "{\"type\":\"join\",\"roomId\":\"room-1\"}");
+        assertTrue(announcing.await(10, TimeUnit.SECONDS));
+        // The first join is stuck on the peer link; the room itself must stay usable.
+        join(a, second, "room-1");
+        a.onMessage(second, "{\"type\":\"status\",\"payload\":\"meanwhile\"}");
+        await(() -> first.received("status").size() == 1);
+        release.countDown();
+        await(() -> first.received("joined").size() == 1);
+        a.stop();
+    }
+
+    @Test
+    void join_AcknowledgesTheCurrentSeqAndResumeReplaysOnlyMissedMessages() throws Exception {
+        RelayCore relay = new RelayCore(s -> { }, s -> { }, null);
+        FakeConnection sender = new FakeConnection(1);
+        join(relay, sender, "room-1");
+        for (int i = 1; i <= 5; i++) {
+            relay.onMessage(sender, "{\"type\":\"status\",\"payload\":\"m" + i + "\"}");
+        }
+        drain(sender);
+
+        FakeConnection worker = new FakeConnection(2);
+        join(relay, worker, "room-1");
+        JsonObject joined = worker.received("joined").get(0);
+        assertEquals(5, joined.get("seq").getAsLong());
+        String epoch = joined.get("epoch").getAsString();
+        Thread.sleep(50);
+        assertTrue(worker.received("status").isEmpty(), "a fresh join replays nothing");
+
+        relay.onMessage(sender, "{\"type\":\"status\",\"payload\":\"m6\"}");
+        relay.onMessage(sender, "{\"type\":\"status\",\"payload\":\"m7\"}");
+        drain(sender);
+        FakeConnection back = new FakeConnection(3);
+        relay.onMessage(back, "{\"type\":\"join\",\"roomId\":\"room-1\",\"resumeFrom\":5,\"epoch\":\"" + epoch + "\"}");
+        await(() -> back.received("status").size() == 2);
+        assertEquals("m6", back.received("status").get(0).get("payload").getAsString());
+        assertEquals(7, back.received("status").get(1).get("seq").getAsLong());
+    }
+
+    @Test
+    void resumeFromAnotherEpoch_ReportsAGapInsteadOfReplayingCommands() throws Exception {
+        RelayCore relay = new RelayCore(s -> { }, s -> { }, null);
+        FakeConnection phone = new FakeConnection(1);
+        join(relay, phone, "room-1");
+        relay.onMessage(phone, "{\"type\":\"attack\",\"hash\":\"abc\",\"mode\":\"0\"}");
+        relay.onMessage(phone, "{\"type\":\"status\",\"payload\":\"m2\"}");
+        drain(phone);
+
+        FakeConnection worker = new FakeConnection(2);
+        relay.onMessage(worker, "{\"type\":\"join\",\"roomId\":\"room-1\",\"resumeFrom\":0,\"epoch\":\"stale\"}");
+        await(() -> worker.received("history_gap").size() == 1);
+        assertEquals("1-2", worker.received("history_gap").get(0).get("payload").getAsString());
+        assertEquals(2, worker.received("joined").get(0).get("seq").getAsLong());
+        Thread.sleep(50);
+        assertTrue(worker.received("attack").isEmpty());
+        assertTrue(worker.received("status").isEmpty());
+    }
+
+    @Test
+    void floodingClient_IsDisconnectedWhenItsMailboxIsFull() throws Exception {
+        RelayCore relay = new RelayCore(s -> { }, s -> { }, null);
+        List<Runnable> stalled = new ArrayList<>();
+        FakeConnection flooder = new FakeConnection(1, new SerialExecutor(stalled::add, 3));
+
+        for (int i = 0; i < 3; i++) {
+            relay.onMessage(flooder, "{\"type\":\"status\"}");
+        }
+        assertTrue(flooder.isOpen());
+        relay.onMessage(flooder, "{\"type\":\"status\"}");
+        assertFalse(flooder.isOpen());
+        assertEquals(3, flooder.getMailbox().getPendingCount());
+    }
+
+    private static RelayCore node(ClusterBus bus) {
+        RelayCore core = new RelayCore(s -> { }, s -> { }, bus);
+        core.start();
+        return core;
+    }
+
+    private static void join(RelayCore core, FakeConnection conn, String roomId) throws InterruptedException {
+        core.onMessage(conn, "{\"type\":\"join\",\"roomId\":\"" + roomId + "\"}");
+        await(() -> conn.received("joined").size() == 1);
+    }
+
+    /** Waits until everything queued on a connection's mailbox so far has been handled. */
+    private static void drain(FakeConnection conn) throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(1);
+        conn.getMailbox().execute(done::countDown);
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+    }
+
+    static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > deadline) {
+                fail("Condition not met in time");
+            }
+            Thread.sleep(10);
+        }
+    }
+
+    /**
+     * A connection that records the JSON messages sent to it.
+     */
+    static class FakeConnection implements RelayConnection {
+        private final InetSocketAddress address;
+        private final SerialExecutor mailbox;
+        final List<String> sent = new CopyOnWriteArrayList<>();
+        volatile boolean open = true;
+
+        FakeConnection(int id) {
+            this(id, new SerialExecutor(ExecutorUtil.sharedTaskExecutor(), RelayCore.MAILBOX_CAPACITY));
+        }
+
+        FakeConnection(int id, SerialExecutor mailbox) {
+            this.address = InetSocketAddress.createUnresolved("client-" + id, 1000 + id);
+            this.mailbox = mailbox;
+        }
+
+        /** Returns the messages of one type received so far. */
+        List<JsonObject> received(String type) {
+            List<JsonObject> messages = new ArrayList<>();
+            for (String text : sent) {
+                JsonObject json = JsonParser.parseString(text).getAsJsonObject();
+                if (json.has("type") && type.equals(json.get("type").getAsString())) {
+                    messages.add(json);
+                }
+            }
+            return messages;
+        }
+
+        @Override
+        public void send(OutboundMessage message) {
+            if (message.isText()) {
+                sent.add(message.getText());
+            }
+        }
+
+        @Override
+        public boolean isOpen() {
+            return open;
+        }
+
+        @Override
+        public InetSocketAddress getRemoteSocketAddress() {
+            return address;
+        }
+
+        @Override
+        public void close() {
+            open = false;
+        }
+
+        @Override
+        public SerialExecutor getMailbox() {
+            return mailbox;
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package hashkitty.java.server;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RoomHistoryTest {
+
+    @Test
+    void since_ReturnsExactlyMissedMessages() {
+        RoomHistory history = new RoomHistory(8);
+        for (int i = 0; i < 5; i++) {
+            history.append(seq -> "m" + seq);
+        }
+
+        assertEquals(List.of("m4", "m5"), history.since(3));
+        assertTrue(history.since(5).isEmpty());
+        assertEquals(5, history.since(0).size());
+    }
+
+    @Test
+    void since_AfterWrapAround_ReturnsOnlyRetainedMessages() {
+        RoomHistory history = new RoomHistory(4);
+        for (int i = 0; i < 10; i++) {
+            history.append(seq -> "m" + seq);
+        }
+
+        assertEquals(10, history.getLastSeq());
+        assertEquals(7, history.getOldestSeq());
+        // The client missed 3..10 but only 7..10 are still buffered.
+        assertEquals(List.of("m7", "m8", "m9", "m10"), history.since(2));
+    }
+}
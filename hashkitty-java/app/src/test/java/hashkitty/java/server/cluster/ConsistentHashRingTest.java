@@ -0,0 +1,55 @@
+package hashkitty.java.server.cluster;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConsistentHashRingTest {
+
+    @Test
+    void nodeFor_EmptyRing_ReturnsNull() {
+        assertNull(new ConsistentHashRing().nodeFor("room-1"));
+    }
+
+    @Test
+    void nodeFor_SpreadsRoomsAcrossNodes() {
+        ConsistentHashRing ring = new ConsistentHashRing();
+        ring.setNodes(List.of("a", "b", "c"));
+
+        Map<String, Integer> counts = new HashMap<>();
+        for (int i = 0; i < 3000; i++) {
+            counts.merge(ring.nodeFor("room-" + i), 1, Integer::sum);
+        }
+
+        // Every node should own a reasonable share (perfect would be 1000 each).
+        assertEquals(3, counts.size());
+        for (int count : counts.values()) {
+            assertTrue(count > 600, "Unbalanced ring: " + counts);
+        }
+    }
+
+    @Test
+    void removeNode_OnlyMovesRoomsOfRemovedNode() {
+        ConsistentHashRing ring = new ConsistentHashRing();
+        ring.setNodes(List.of("a", "b", "c"));
+
+        Map<String, String> before = new HashMap<>();
+        for (int i = 0; i < 1000; i++) {
+            before.put("room-" + i, ring.nodeFor("room-" + i));
+        }
+
+        ring.removeNode("b");
+
+        for (Map.Entry<String, String> entry : before.entrySet()) {
+            String after = ring.nodeFor(entry.getKey());
+            assertNotEquals("b", after);
+            if (!"b".equals(entry.getValue())) {
+                assertEquals(entry.getValue(), after, "Room " + entry.getKey() + " moved needlessly");
+            }
+        }
+    }
+}
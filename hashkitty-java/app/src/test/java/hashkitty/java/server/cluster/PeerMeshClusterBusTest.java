@@ -0,0 +1,149 @@
+package hashkitty.java.server.cluster;
+
+import org.junit.jupiter.api.Test;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PeerMeshClusterBusTest {
+
+    private static final String SECRET = "cluster-secret";
+
+    /** Records every event delivered by a bus. */
+    private static class RecordingListener implements ClusterBus.Listener {
+        final Set<String> up = ConcurrentHashMap.newKeySet();
+        final Set<String> down = ConcurrentHashMap.newKeySet();
+        final Set<String> joins = ConcurrentHashMap.newKeySet();
+        final List<String> frames = new CopyOnWriteArrayList<>();
+
+        @Override public void onNodeUp(String nodeId) { up.add(nodeId); down.remove(nodeId); }
+        // Like the relay, forget every room of a node that went down.
+        @Override public void onNodeDown(String nodeId) { down.add(nodeId); up.remove(nodeId); joins.removeIf(join -> join.startsWith(nodeId + "/")); }
+        @Override public void onRemoteJoin(String nodeId, String roomId) { joins.add(nodeId + "/" + roomId); }
+        @Override public void onRemoteLeave(String nodeId, String roomId) { joins.remove(nodeId + "/" + roomId); }
+        @Override public void onFrame(String nodeId, String roomId, String message) { frames.add(nodeId + "/" + roomId + "/" + message); }
+        @Override public void onBinaryFrame(String nodeId, String roomId, byte[] data) { frames.add(nodeId + "/" + roomId + "/" + data.length + " bytes"); }
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > deadline) {
+                fail("Condition not met in time");
+            }
+            Thread.sleep(20);
+        }
+    }
+
+    @Test
+    void twoNodes_ExchangeMembershipAndFrames() throws Exception {
+        RecordingListener listenerA = new RecordingListener();
+        RecordingListener listenerB = new RecordingListener();
+
+        PeerMeshClusterBus a = new PeerMeshClusterBus("a", "ws://a/ws", null, 0, List.of(), SECRET, s -> {});
+        a.start(listenerA);
+        // Node A hosts a room before B exists; B must receive it as part of the link snapshot.
+        a.announceJoin("room-1");
+
+        PeerMeshClusterBus b = new PeerMeshClusterBus("b", null, null, 0,
+                List.of(new InetSocketAddress("127.0.0.1", a.getBoundPort())), SECRET, s -> {});
+        try {
+            b.start(listenerB);
+
+            await(() -> listenerA.up.contains("b") && listenerB.up.contains("a"));
+            await(() -> listenerB.joins.contains("a/room-1"));
+            assertEquals("ws://a/ws", b.getAdvertisedUrl("a"));
+
+            b.announceJoin("room-1");
+            await(() -> listenerA.joins.contains("b/room-1"));
+
+            a.forward("b", "room-1", "{\"type\":\"cracked\"}");
+            await(() -> listenerB.frames.contains("a/room-1/{\"type\":\"cracked\"}"));
+            a.forwardBinary("b", "room-1", new byte[1024]);
+            await(() -> listenerB.frames.contains("a/room-1/1024 bytes"));
+
+            // Killing A must be reported to B as a node failure.
+            a.close();
+            await(() -> listenerB.down.contains("a"));
+            assertTrue(b.getLiveNodes().isEmpty());
+        } finally {
+            a.close();
+            b.close();
+        }
+    }
+
+    @Test
+    void restartedPeer_DropsTheRoomsOfItsEarlierRun() throws Exception {
+        RecordingListener listenerB = new RecordingListener();
+
+        PeerMeshClusterBus first = new PeerMeshClusterBus("a", null, null, 0, List.of(), SECRET, s -> {});
+        first.start(new RecordingListener());
+        first.announceJoin("room-1");
+        PeerMeshClusterBus b = new PeerMeshClusterBus("b", null, null, 0,
+                List.of(new InetSocketAddress("127.0.0.1", first.getBoundPort())), SECRET, s -> {});
+        PeerMeshClusterBus second = null;
+        try {
+            b.start(listenerB);
+            await(() -> listenerB.joins.contains("a/room-1"));
+
+            // "a" comes back under the same ID before its old link is noticed as dead.
+            second = new PeerMeshClusterBus("a", null, null, 0,
+                    List.of(new InetSocketAddress("127.0.0.1", b.getBoundPort())), SECRET, s -> {});
+            second.start(new RecordingListener());
+            await(() -> !listenerB.joins.contains("a/room-1"));
+            assertTrue(listenerB.up.contains("a"));
+
+            second.announceJoin("room-2");
+            await(() -> listenerB.joins.contains("a/room-2"));
+            assertFalse(listenerB.joins.contains("a/room-1"));
+        } finally {
+            first.close();
+            if (second != null) {
+                second.close();
+            }
+            b.close();
+        }
+    }
+
+    @Test
+    void peerWithTheWrongSecret_IsRejected() throws Exception {
+        RecordingListener listenerA = new RecordingListener();
+        RecordingListener listenerB = new RecordingListener();
+        List<String> statusA = new CopyOnWriteArrayList<>();
+
+        PeerMeshClusterBus a = new PeerMeshClusterBus("a", null, InetAddress.getLoopbackAddress(), 0, List.of(),
+                SECRET, statusA::add);
+        a.start(listenerA);
+        a.announceJoin("room-1");
+        PeerMeshClusterBus intruder = new PeerMeshClusterBus("b", null, null, 0,
+                List.of(new InetSocketAddress("127.0.0.1", a.getBoundPort())), "guessed", s -> {});
+        try {
+            intruder.start(listenerB);
+            intruder.announceJoin("room-1");
+
+            await(() -> statusA.stream().anyMatch(status -> status.contains("wrong cluster secret")));
+            Thread.sleep(200);
+            assertTrue(listenerA.up.isEmpty());
+            assertTrue(listenerA.joins.isEmpty());
+            assertTrue(listenerB.up.isEmpty());
+            assertTrue(listenerB.joins.isEmpty());
+            assertTrue(a.getLiveNodes().isEmpty());
+        } finally {
+            a.close();
+            intruder.close();
+        }
+    }
+
+    @Test
+    void constructor_RequiresASecret() {
+        assertThrows(IllegalArgumentException.class,
+                () -> new PeerMeshClusterBus("a", null, null, 0, List.of(), "", s -> {}));
+    }
+}
@@ -0,0 +1,230 @@
+package hashkitty.java.server.nio;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import hashkitty.java.metrics.MetricsRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class NioRelayServerTest {
+
+    private NioRelayServer server;
+
+    @BeforeEach
+    void startServer() throws IOException {
+        server = new NioRelayServer(0, s -> { }, s -> { });
+        server.start();
+    }
+
+    @AfterEach
+    void stopServer() {
+        server.stop();
+    }
+
+    @Test
+    void handshake_JoinAndBroadcastBetweenTwoClients() throws Exception {
+        try (RawClient alice = connect(); RawClient bob = connect()) {
+            alice.join("room-1");
+            bob.join("room-1");
+
+            alice.sendText("{\"type\":\"status\",\"payload\":\"hello\"}");
+            JsonObject status = bob.readJson();
+            assertEquals("status", status.get("type").getAsString());
+            assertEquals("hello", status.get("payload").getAsString());
+
+            bob.send(WebSocketCodec.OP_BINARY, new byte[1000], true);
+            WebSocketCodec.Frame binary = alice.readFrame();
+            assertEquals(WebSocketCodec.OP_BINARY, binary.opcode);
+            assertFalse(binary.masked, "server frames are never masked");
+            assertEquals(1000, binary.payload.length);
+        }
+    }
+
+    @Test
+    void unmaskedClientFrame_ClosesTheConnection() throws Exception {
+        try (RawClient client = connect()) {
+            client.send(WebSocketCodec.OP_TEXT, "{\"type\":\"join\",\"roomId\":\"room-1\"}".getBytes(StandardCharsets.UTF_8), false);
+            client.awaitEof();
+        }
+    }
+
+    @Test
+    void otherProtocolVersion_IsRefusedWithUpgradeRequired() throws Exception {
+        try (RawClient client = open(0)) {
+            String request = WebSocketCodec.clientHandshake("127.0.0.1", "/ws", WebSocketCodec.newClientKey())
+                    .replace("Sec-WebSocket-Version: 13", "Sec-WebSocket-Version: 8");
+            WebSocketCodec.HttpHead response = client.handshake(request);
+
+            assertTrue(response.startLine.contains(" 426 "), response.startLine);
+            assertEquals("13", response.header("Sec-WebSocket-Version"));
+            client.awaitEof();
+        }
+    }
+
+    @Test
+    void refusedHandshake_IsNeverCountedAsAConnection() throws Exception {
+        double before = MetricsRegistry.getDefault().gauge("hashkitty_relay_connections", "").get();
+        try (RawClient client = open(0)) {
+            String request = WebSocketCodec.clientHandshake("127.0.0.1", "/ws", WebSocketCodec.newClientKey())
+                    .replace("Sec-WebSocket-Version: 13", "Sec-WebSocket-Version: 12");
+            assertTrue(client.handshake(request).startLine.contains(" 426 "));
+            client.awaitEof();
+        }
+        Thread.sleep(100);
+        assertEquals(before, MetricsRegistry.getDefault().gauge("hashkitty_relay_connections", "").get(), 0);
+    }
+
+    @Test
+    void clientThatStopsReading_IsDroppedAndItsQueueReleased() throws Exception {
+        MetricsRegistry metrics = MetricsRegistry.getDefault();
+        long droppedBefore = metrics.counter("hashkitty_relay_slow_clients_dropped_total", "").get();
+        double queuedBefore = metrics.gauge("hashkitty_relay_outbound_queued_bytes", "").get();
+        try (RawClient sender = connect(); RawClient slow = connect(4096)) {
+            sender.join("room-1");
+            slow.join("room-1");
+
+            // Push well past the per-connection limit while the slow client reads nothing.
+            byte[] chunk = new byte[1024 * 1024];
+            long limit = NioConnection.MAX_QUEUED_BYTES / chunk.length;
+            for (int i = 0; i < limit + 32 && metrics.counter("hashkitty_relay_slow_clients_dropped_total", "").get() == droppedBefore; i++) {
+                sender.send(WebSocketCodec.OP_BINARY, chunk, true);
+            }
+
+            await(() -> metrics.counter("hashkitty_relay_slow_clients_dropped_total", "").get() == droppedBefore + 1);
+            slow.awaitEof();
+            await(() -> metrics.gauge("hashkitty_relay_outbound_queued_bytes", "").get() == queuedBefore);
+
+            // The sender is unaffected.
+            sender.sendText("{\"type\":\"status\",\"payload\":\"still here\"}");
+            try (RawClient late = connect()) {
+                late.join("room-1");
+                sender.sendText("{\"type\":\"status\",\"payload\":\"hello again\"}");
+                assertEquals("hello again", late.readJson().get("payload").getAsString());
+            }
+        }
+    }
+
+    private RawClient connect() throws IOException {
+        return connect(0);
+    }
+
+    private RawClient connect(int receiveBuffer) throws IOException {
+        RawClient client = open(receiveBuffer);
+        String key = WebSocketCodec.newClientKey();
+        WebSocketCodec.HttpHead response = client.handshake(WebSocketCodec.clientHandshake("127.0.0.1", "/ws", key));
+        assertTrue(response.startLine.contains(" 101 "), response.startLine);
+        assertEquals(WebSocketCodec.acceptKey(key), response.header("Sec-WebSocket-Accept"));
+        return client;
+    }
+
+    private RawClient open(int receiveBuffer) throws IOException {
+        Socket socket = new Socket();
+        if (receiveBuffer > 0) {
+            socket.setReceiveBufferSize(receiveBuffer);
+        }
+        socket.connect(new InetSocketAddress("127.0.0.1", server.getPort()));
+        socket.setSoTimeout(10_000);
+        return new RawClient(socket);
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > deadline) {
+                fail("Condition not met in time");
+            }
+            Thread.sleep(10);
+        }
+    }
+
+    /**
+     * A blocking WebSocket client built on the codec, so the test controls masking, versions and reading.
+     */
+    private static class RawClient implements AutoCloseable {
+        private final Socket socket;
+        private final ByteBuffer received = ByteBuffer.allocate(4 * 1024 * 1024);
+
+        RawClient(Socket socket) {
+            this.socket = socket;
+            received.flip();
+        }
+
+        WebSocketCodec.HttpHead handshake(String request) throws IOException {
+            socket.getOutputStream().write(request.getBytes(StandardCharsets.ISO_8859_1));
+            WebSocketCodec.HttpHead response;
+            while ((response = WebSocketCodec.parseHead(received, 4096)) == null) {
+                fill();
+            }
+            return response;
+        }
+
+        void join(String roomId) throws IOException {
+            sendText("{\"type\":\"join\",\"roomId\":\"" + roomId + "\"}");
+            assertEquals("joined", readJson().get("type").getAsString());
+        }
+
+        void sendText(String text) throws IOException {
+            send(WebSocketCodec.OP_TEXT, text.getBytes(StandardCharsets.UTF_8), true);
+        }
+
+        void send(int opcode, byte[] payload, boolean masked) throws IOException {
+            ByteBuffer frame = ByteBuffer.allocate(WebSocketCodec.frameLength(payload.length, masked));
+            WebSocketCodec.encodeFrame(frame, opcode, ByteBuffer.wrap(payload), masked);
+            socket.getOutputStream().write(frame.array());
+        }
+
+        WebSocketCodec.Frame readFrame() throws IOException {
+            WebSocketCodec.Frame frame;
+            while ((frame = WebSocketCodec.decodeFrame(received, received.capacity())) == null) {
+                fill();
+            }
+            return frame;
+        }
+
+        JsonObject readJson() throws IOException {
+            WebSocketCodec.Frame frame;
+            do {
+                frame = readFrame();
+            } while (frame.opcode != WebSocketCodec.OP_TEXT);
+            return JsonParser.parseString(new String(frame.payload, StandardCharsets.UTF_8)).getAsJsonObject();
+        }
+
+        /** Reads and discards until the server closes the socket; times out if it never does. */
+        void awaitEof() throws IOException {
+            byte[] sink = new byte[64 * 1024];
+            try {
+                while (socket.getInputStream().read(sink) >= 0) {
+                    // Drain what the kernel had buffered before the close.
+                }
+            } catch (SocketException e) {
+                // A reset also means the server hung up.
+            }
+        }
+
+        private void fill() throws IOException {
+            received.compact();
+            int n = socket.getInputStream().read(received.array(), received.position(), received.remaining());
+            if (n < 0) {
+                throw new IOException("Connection closed by the server");
+            }
+            received.position(received.position() + n);
+            received.flip();
+        }
+
+        @Override
+        public void close() throws IOException {
+            socket.close();
+        }
+    }
+}
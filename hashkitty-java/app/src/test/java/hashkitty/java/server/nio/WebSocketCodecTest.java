@@ -0,0 +1,68 @@
+package hashkitty.java.server.nio;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WebSocketCodecTest {
+
+    @Test
+    void acceptKey_MatchesRfcExample() {
+        // The sample handshake from RFC 6455, section 1.3.
+        assertEquals("s3pPLMBiTxaQ9kYGzzhZRbK+xOo=", WebSocketCodec.acceptKey("dGhlIHNhbXBsZSBub25jZQ=="));
+    }
+
+    @Test
+    void maskedFrame_RoundTripsAcrossPartialReads() throws IOException {
+        byte[] payload = new byte[300];
+        for (int i = 0; i < payload.length; i++) {
+            payload[i] = (byte) i;
+        }
+        ByteBuffer encoded = ByteBuffer.allocate(WebSocketCodec.frameLength(payload.length, true));
+        WebSocketCodec.encodeFrame(encoded, WebSocketCodec.OP_BINARY, ByteBuffer.wrap(payload), true);
+        assertFalse(encoded.hasRemaining());
+        encoded.flip();
+
+        // A truncated frame must not be consumed.
+        ByteBuffer partial = encoded.duplicate();
+        partial.limit(encoded.limit() - 1);
+        assertNull(WebSocketCodec.decodeFrame(partial, 1024));
+        assertEquals(0, partial.position());
+
+        WebSocketCodec.Frame frame = WebSocketCodec.decodeFrame(encoded, 1024);
+        assertNotNull(frame);
+        assertTrue(frame.fin);
+        assertTrue(frame.masked);
+        assertEquals(WebSocketCodec.OP_BINARY, frame.opcode);
+        assertArrayEquals(payload, frame.payload);
+        assertFalse(encoded.hasRemaining());
+    }
+
+    @Test
+    void decodeFrame_OverLimit_Throws() {
+        ByteBuffer encoded = ByteBuffer.allocate(WebSocketCodec.frameLength(200, false));
+        WebSocketCodec.encodeFrame(encoded, WebSocketCodec.OP_TEXT, ByteBuffer.allocate(200), false);
+        encoded.flip();
+        assertThrows(IOException.class, () -> WebSocketCodec.decodeFrame(encoded, 100));
+    }
+
+    @Test
+    void parseHead_WaitsForBlankLineThenReadsHeaders() throws IOException {
+        String request = WebSocketCodec.clientHandshake("relay.example:5001", "/", "dGhlIHNhbXBsZSBub25jZQ==");
+        byte[] bytes = request.getBytes(StandardCharsets.ISO_8859_1);
+
+        assertNull(WebSocketCodec.parseHead(ByteBuffer.wrap(bytes, 0, bytes.length - 2), 8192));
+
+        ByteBuffer complete = ByteBuffer.wrap(bytes);
+        WebSocketCodec.HttpHead head = WebSocketCodec.parseHead(complete, 8192);
+        assertNotNull(head);
+        assertEquals("GET / HTTP/1.1", head.startLine);
+        assertEquals("dGhlIHNhbXBsZSBub25jZQ==", head.header("sec-websocket-key"));
+        assertEquals("websocket", head.header("Upgrade"));
+        assertFalse(complete.hasRemaining());
+    }
+}
@@ -0,0 +1,81 @@
+package hashkitty.java.sniffer;
+
+import hashkitty.java.capture.Hc22000Converter;
+import hashkitty.java.capture.PcapReader;
+import hashkitty.java.capture.WifiDecoder;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static hashkitty.java.capture.CaptureFixtures.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+class CaptureCompactorTest {
+
+    private static final long OTHER_AP = 0x0011223344ffL;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void compact_KeepsHandshakeFramesAndOneBeaconPerNetwork() throws Exception {
+        byte[] m1 = radiotap(eapol(AP, STA, 1, 1, filled(32, 1), null, new byte[0]), false);
+        List<byte[]> packets = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            packets.add(radiotap(beacon(AP, "HomeNet"), false));
+            // A network without a handshake is dropped entirely.
+            packets.add(radiotap(beacon(OTHER_AP, "Neighbour"), false));
+        }
+        packets.add(m1);
+        packets.add(m1);
+        packets.add(radiotap(eapol(AP, STA, 2, 1, filled(32, 2), filled(16, 3), new byte[22]), false));
+        packets.add(radiotap(beacon(AP, "HomeNet"), false));
+        Path capture = dir.resolve("long.pcapng");
+        Files.write(capture, pcapng(ByteOrder.LITTLE_ENDIAN, WifiDecoder.LINKTYPE_RADIOTAP, packets));
+
+        Path output = CaptureCompactor.defaultOutput(capture);
+        assertEquals(dir.resolve("long-compact.pcap"), output);
+        CaptureCompactor.Result result = CaptureCompactor.compact(capture, output);
+
+        assertEquals(404, result.getPacketsIn());
+        assertEquals(3, result.getPacketsOut());
+        assertEquals(1, result.getNetworks());
+        assertEquals(2, result.getEapolFrames());
+        assertEquals(1, result.getDuplicates());
+        assertEquals(Files.size(output), result.getBytesOut());
+        assertTrue(result.getRatio() > 50, result.toString());
+
+        // The beacon comes first and the compact capture converts exactly like the original.
+        List<Integer> lengths = new ArrayList<>();
+        PcapReader.read(output, (data, offset, length, linkType, time) -> lengths.add(length));
+        assertEquals(packets.get(0).length, lengths.get(0).intValue());
+        assertEquals(lines(capture), lines(output));
+        assertEquals(1, lines(output).size());
+    }
+
+    @Test
+    void compact_NamesANetworkWhoseBeaconComesAfterTheHandshake() throws Exception {
+        List<byte[]> packets = List.of(
+                radiotap(eapol(AP, STA, 1, 1, filled(32, 1), null, new byte[0]), false),
+                radiotap(eapol(AP, STA, 2, 1, filled(32, 2), filled(16, 3), new byte[22]), false),
+                radiotap(beacon(AP, "HomeNet"), false),
+                radiotap(beacon(AP, "HomeNet"), false));
+        Path capture = dir.resolve("late.pcap");
+        Files.write(capture, pcap(ByteOrder.BIG_ENDIAN, false, WifiDecoder.LINKTYPE_RADIOTAP, packets));
+
+        CaptureCompactor.Result result = CaptureCompactor.compact(capture, dir.resolve("out.pcap"));
+        assertEquals(3, result.getPacketsOut());
+        assertEquals(lines(capture), lines(dir.resolve("out.pcap")));
+    }
+
+    private static List<String> lines(Path capture) throws Exception {
+        List<String> lines = new ArrayList<>();
+        new Hc22000Converter(lines::add).process(capture);
+        return lines;
+    }
+}
@@ -0,0 +1,154 @@
+package hashkitty.java.sniffer;
+
+import com.jcraft.jsch.UserInfo;
+import hashkitty.java.capture.CrackPipeline;
+import hashkitty.java.capture.HandshakeCandidate;
+import hashkitty.java.capture.WifiDecoder;
+import hashkitty.java.metrics.MetricsRegistry;
+import hashkitty.java.model.RemoteConnection;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.InputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.nio.ByteOrder;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+
+import static hashkitty.java.capture.CaptureFixtures.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+class SensorPoolTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void twoSensors_ShareTheIndexAndAPipelineSetWhileRunning() throws Exception {
+        List<byte[]> handshake = List.of(
+                radiotap(beacon(AP, "HomeNet"), false),
+                radiotap(eapol(AP, STA, 1, 1, filled(32, 1), null, new byte[0]), false),
+                radiotap(eapol(AP, STA, 2, 1, filled(32, 2), filled(16, 3), new byte[22]), false));
+        List<byte[]> busier = new ArrayList<>(handshake);
+        busier.add(radiotap(beacon(0x0a0b0c0d0e0fL, "Neighbour"), false));
+        busier.add(radiotap(beacon(0x0a0b0c0d0e0fL, "Neighbour"), false));
+
+        PipedOutputStream first = new PipedOutputStream();
+        PipedOutputStream second = new PipedOutputStream();
+        ConcurrentLinkedQueue<InputStream> streams = new ConcurrentLinkedQueue<>(List.of(
+                new PipedInputStream(first, 64 * 1024), new PipedInputStream(second, 64 * 1024)));
+        List<HandshakeCandidate> handshakes = new CopyOnWriteArrayList<>();
+        SensorPool pool = new SensorPool(s -> { }, dir, handshakes::add,
+                onOutput -> new StreamSniffManager(onOutput, streams.poll()));
+        CrackPipeline pipeline = new CrackPipeline(dir, "words.txt", s -> { }, s -> { });
+        try {
+            pool.start(List.of(new RemoteConnection("pi-1", "pi@10.0.0.1"), new RemoteConnection("pi-2", "pi@10.0.0.2")),
+                    "secret", null);
+            await(() -> pool.getStats().stream().allMatch(SensorPool.SensorStats::isConnected));
+
+            // The pipeline arrives after the sensors are already capturing; they must still feed it.
+            pool.setCrackPipeline(pipeline);
+            first.write(pcap(ByteOrder.LITTLE_ENDIAN, false, WifiDecoder.LINKTYPE_RADIOTAP, busier));
+            first.flush();
+            second.write(pcap(ByteOrder.LITTLE_ENDIAN, false, WifiDecoder.LINKTYPE_RADIOTAP, handshake));
+            second.flush();
+
+            await(() -> pool.getStats().get(0).getPackets() == 5 && pool.getStats().get(1).getPackets() == 3);
+            await(() -> pipeline.getQueued() == 1);
+            Thread.sleep(100);
+            assertEquals(1, handshakes.size(), "both sensors heard the handshake; it is reported once");
+            assertEquals(1, pipeline.getQueued());
+
+            pool.sampleRates();
+            List<SensorPool.SensorStats> stats = pool.getStats();
+            assertEquals("pi-1", stats.get(0).getName());
+            assertEquals(5, stats.get(0).getPackets());
+            assertEquals(3, stats.get(1).getPackets());
+            assertTrue(stats.get(0).getPacketsPerSecond() > 0);
+            assertTrue(stats.get(1).getPacketsPerSecond() > 0);
+        } finally {
+            first.close();
+            second.close();
+            pool.stop();
+        }
+    }
+
+    @Test
+    void linesConvertedWithoutAPipeline_GoToTheNextOne() throws Exception {
+        PipedOutputStream out = new PipedOutputStream();
+        InputStream in = new PipedInputStream(out, 64 * 1024);
+        SensorPool pool = new SensorPool(s -> { }, dir, null, onOutput -> new StreamSniffManager(onOutput, in));
+        try {
+            pool.start(List.of(new RemoteConnection("pi-1", "pi@10.0.0.1")), "secret", null);
+            out.write(pcap(ByteOrder.LITTLE_ENDIAN, false, WifiDecoder.LINKTYPE_RADIOTAP, List.of(
+                    radiotap(beacon(AP, "HomeNet"), false),
+                    radiotap(eapol(AP, STA, 1, 1, filled(32, 1), null, new byte[0]), false),
+                    radiotap(eapol(AP, STA, 2, 1, filled(32, 2), filled(16, 3), new byte[22]), false))));
+            out.flush();
+            // A packet is counted once every handler, the converter included, has seen it.
+            await(() -> pool.getStats().get(0).getPackets() == 3);
+            assertTrue(pool.getScanner().getCandidates().stream().anyMatch(HandshakeCandidate::isCrackable));
+
+            CrackPipeline pipeline = new CrackPipeline(dir, "words.txt", s -> { }, s -> { });
+            pool.setCrackPipeline(pipeline);
+            assertEquals(1, pipeline.getQueued());
+        } finally {
+            out.close();
+            pool.stop();
+        }
+    }
+
+    @Test
+    void heldBackLines_AreCappedOldestFirst() {
+        MetricsRegistry metrics = MetricsRegistry.getDefault();
+        long droppedBefore = metrics.counter("hashkitty_sensor_held_back_dropped_total", "").get();
+        SensorPool pool = new SensorPool(s -> { }, dir, null);
+        for (int i = 0; i < SensorPool.MAX_HELD_BACK_LINES + 2; i++) {
+            pool.offerLine(line(i));
+        }
+        assertEquals(droppedBefore + 2, metrics.counter("hashkitty_sensor_held_back_dropped_total", "").get());
+
+        CrackPipeline pipeline = new CrackPipeline(dir, "words.txt", s -> { }, s -> { });
+        pool.setCrackPipeline(pipeline);
+        assertEquals(SensorPool.MAX_HELD_BACK_LINES, pipeline.getQueued());
+        assertTrue(pipeline.offer(line(0)), "the oldest line was dropped");
+        assertFalse(pipeline.offer(line(2)), "newer lines were kept");
+    }
+
+    private static String line(int i) {
+        return "WPA*02*" + String.format("%032x", i) + "*0a0b0c0d0e0f*112233445566*";
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > deadline) {
+                fail("Condition not met in time");
+            }
+            Thread.sleep(10);
+        }
+    }
+
+    /**
+     * A sensor whose "remote" capture is a local stream.
+     */
+    private static class StreamSniffManager extends SniffManager {
+        private final InputStream in;
+
+        StreamSniffManager(Consumer<String> onOutput, InputStream in) {
+            super(onOutput);
+            this.in = in;
+        }
+
+        @Override
+        InputStream openCaptureStream(RemoteConnection connection, String password, UserInfo userInfo) {
+            return in;
+        }
+    }
+}
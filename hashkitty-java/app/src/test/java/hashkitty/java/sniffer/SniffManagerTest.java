@@ -0,0 +1,64 @@
+package hashkitty.java.sniffer;
+
+import com.jcraft.jsch.UserInfo;
+import hashkitty.java.capture.HandshakeScanner;
+import hashkitty.java.model.RemoteConnection;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SniffManagerTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void stopWhileConnecting_NeverStartsTheCapture() throws Exception {
+        CountDownLatch connecting = new CountDownLatch(1);
+        CountDownLatch connected = new CountDownLatch(1);
+        List<String> output = new CopyOnWriteArrayList<>();
+        SniffManager manager = new SniffManager(output::add) {
+            @Override
+            InputStream openCaptureStream(RemoteConnection connection, String password, UserInfo userInfo) {
+                connecting.countDown();
+                try {
+                    connected.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return new ByteArrayInputStream(new byte[0]);
+            }
+        };
+
+        manager.startCapture(new RemoteConnection("pi-1", "pi@10.0.0.1"), "secret", null, dir,
+                new HandshakeScanner(candidate -> { }), null);
+        assertTrue(connecting.await(10, TimeUnit.SECONDS));
+        // No channel exists yet, so there is nothing to close; the stop must still hold once it opens.
+        manager.stopSniffing();
+        connected.countDown();
+
+        await(() -> !manager.isActive());
+        assertNull(manager.getLiveCapture());
+        assertTrue(output.contains("Capture stopped before it started."), output.toString());
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > deadline) {
+                fail("Condition not met in time");
+            }
+            Thread.sleep(10);
+        }
+    }
+}
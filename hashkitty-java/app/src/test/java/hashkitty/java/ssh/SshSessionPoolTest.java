@@ -0,0 +1,185 @@
+package hashkitty.java.ssh;
+
+import com.jcraft.jsch.ChannelExec;
+import com.jcraft.jsch.JSchException;
+import com.jcraft.jsch.Session;
+import hashkitty.java.model.RemoteConnection;
+import org.apache.sshd.common.session.SessionListener;
+import org.apache.sshd.server.Environment;
+import org.apache.sshd.server.ExitCallback;
+import org.apache.sshd.server.SshServer;
+import org.apache.sshd.server.channel.ChannelSession;
+import org.apache.sshd.server.command.Command;
+import org.apache.sshd.server.keyprovider.SimpleGeneratorHostKeyProvider;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SshSessionPoolTest {
+
+    private SshServer server;
+    private SshSessionPool pool;
+    private RemoteConnection connection;
+    private final AtomicInteger sessionsCreated = new AtomicInteger();
+
+    @BeforeEach
+    void startServer() throws Exception {
+        server = SshServer.setUpDefaultServer();
+        server.setHost("127.0.0.1");
+        server.setPort(0);
+        server.setKeyPairProvider(new SimpleGeneratorHostKeyProvider());
+        server.setPasswordAuthenticator((user, password, session) -> "secret".equals(password));
+        server.setCommandFactory((channel, command) -> new ScriptedCommand(command));
+        server.addSessionListener(new SessionListener() {
+            @Override
+            public void sessionCreated(org.apache.sshd.common.session.Session session) {
+                sessionsCreated.incrementAndGet();
+            }
+        });
+        server.start();
+
+        pool = new SshSessionPool(60_000);
+        pool.setSessionConfig("StrictHostKeyChecking", "no");
+        connection = new RemoteConnection("test", "pi@127.0.0.1:" + server.getPort());
+    }
+
+    @AfterEach
+    void stopServer() throws Exception {
+        pool.closeAll();
+        server.stop(true);
+    }
+
+    @Test
+    void exec_ReusesOneSessionForManyCommands() throws Exception {
+        for (int i = 0; i < 5; i++) {
+            SshSessionPool.ExecResult result = pool.exec(connection, "secret", null, "echo hello " + i);
+            assertEquals("hello " + i + "\n", result.getStdout());
+            assertEquals(0, result.getExitStatus());
+        }
+        SshSessionPool.ExecResult failed = pool.exec(connection, "secret", null, "fail");
+        assertEquals(3, failed.getExitStatus());
+        assertEquals("bad\n", failed.getStderr());
+
+        assertEquals(1, sessionsCreated.get());
+        Session first = pool.acquire(connection, "secret", null);
+        assertSame(first, pool.acquire(connection, "secret", null));
+    }
+
+    @Test
+    void openExec_RunsChannelsSideBySide() throws Exception {
+        // A long-running command (like a capture) holds one channel...
+        ChannelExec longRunning = pool.openExec(connection, "secret", null, "block", null);
+        try {
+            // ...while other commands run on the same session.
+            assertEquals("ok\n", pool.exec(connection, "secret", null, "echo ok").getStdout());
+            assertTrue(longRunning.isConnected());
+            assertEquals(1, sessionsCreated.get());
+        } finally {
+            longRunning.disconnect();
+        }
+    }
+
+    @Test
+    void checkHealth_EvictsDeadSessionsSoTheNextCallReconnects() throws Exception {
+        pool.exec(connection, "secret", null, "echo one");
+        server.getActiveSessions().forEach(session -> session.close(true));
+
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (pool.isConnected(connection) && System.currentTimeMillis() < deadline) {
+            pool.checkHealth();
+            Thread.sleep(20);
+        }
+        assertFalse(pool.isConnected(connection));
+
+        assertEquals("two\n", pool.exec(connection, "secret", null, "echo two").getStdout());
+        assertEquals(2, sessionsCreated.get());
+    }
+
+    @Test
+    void acquire_BacksOffAfterAFailedConnect() throws Exception {
+        int closedPort;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            closedPort = socket.getLocalPort();
+        }
+        RemoteConnection down = new RemoteConnection("down", "pi@127.0.0.1:" + closedPort);
+
+        assertThrows(JSchException.class, () -> pool.acquire(down, "secret", null));
+        JSchException fast = assertThrows(JSchException.class, () -> pool.acquire(down, "secret", null));
+        assertTrue(fast.getMessage().startsWith("Not retrying"), fast.getMessage());
+
+        // A wrong password is a failed connect too.
+        assertThrows(JSchException.class, () -> pool.acquire(connection, "wrong", null));
+        pool.evict(connection);
+        assertNotNull(pool.acquire(connection, "secret", null));
+    }
+
+    /**
+     * Understands "echo TEXT", "fail" and "block" (which runs until its channel closes).
+     */
+    private static class ScriptedCommand implements Command {
+        private final String command;
+        private OutputStream out;
+        private OutputStream err;
+        private ExitCallback exit;
+        private final CountDownLatch destroyed = new CountDownLatch(1);
+
+        ScriptedCommand(String command) {
+            this.command = command;
+        }
+
+        @Override
+        public void setInputStream(InputStream in) {
+        }
+
+        @Override
+        public void setOutputStream(OutputStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public void setErrorStream(OutputStream err) {
+            this.err = err;
+        }
+
+        @Override
+        public void setExitCallback(ExitCallback callback) {
+            this.exit = callback;
+        }
+
+        @Override
+        public void start(ChannelSession channel, Environment env) {
+            new Thread(() -> {
+                try {
+                    if (command.startsWith("echo ")) {
+                        out.write((command.substring(5) + "\n").getBytes(StandardCharsets.UTF_8));
+                        out.flush();
+                        exit.onExit(0);
+                    } else if (command.equals("block")) {
+                        destroyed.await(30, TimeUnit.SECONDS);
+                    } else {
+                        err.write("bad\n".getBytes(StandardCharsets.UTF_8));
+                        err.flush();
+                        exit.onExit(3);
+                    }
+                } catch (Exception e) {
+                    exit.onExit(1);
+                }
+            }).start();
+        }
+
+        @Override
+        public void destroy(ChannelSession channel) {
+            destroyed.countDown();
+        }
+    }
+}
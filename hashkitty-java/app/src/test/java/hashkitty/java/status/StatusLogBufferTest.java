@@ -0,0 +1,51 @@
+package hashkitty.java.status;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StatusLogBufferTest {
+
+    private static StatusEntry entry(String message) {
+        return new StatusEntry(0, StatusEntry.Severity.classify(message), "app", null, message);
+    }
+
+    @Test
+    void drain_ReturnsQueuedEntriesInOrderOnce() {
+        StatusLogBuffer buffer = new StatusLogBuffer(10);
+        buffer.append(entry("one"));
+        buffer.append(entry("two"));
+
+        List<StatusEntry> batch = buffer.drain();
+
+        assertEquals(2, batch.size());
+        assertEquals("one", batch.get(0).getMessage());
+        assertEquals("two", batch.get(1).getMessage());
+        assertTrue(buffer.drain().isEmpty());
+    }
+
+    @Test
+    void append_BeyondCapacity_DropsOldestWaitingEntries() {
+        StatusLogBuffer buffer = new StatusLogBuffer(3);
+        for (int i = 0; i < 5; i++) {
+            buffer.append(entry("line " + i));
+        }
+
+        List<StatusEntry> batch = buffer.drain();
+
+        assertEquals(3, batch.size());
+        assertEquals("line 2", batch.get(0).getMessage());
+        assertEquals(2, buffer.getDroppedCount());
+    }
+
+    @Test
+    void classify_CommonPrefixes_InfersSeverity() {
+        assertEquals(StatusEntry.Severity.ERROR, StatusEntry.Severity.classify("Error starting hashcat: not found"));
+        assertEquals(StatusEntry.Severity.ERROR, StatusEntry.Severity.classify("Server Error: connection reset"));
+        assertEquals(StatusEntry.Severity.WARNING, StatusEntry.Severity.classify("Warning: Client tried to send message without joining a room."));
+        assertEquals(StatusEntry.Severity.SUCCESS, StatusEntry.Severity.classify("SUCCESS: Password found! -> hunter2"));
+        assertEquals(StatusEntry.Severity.INFO, StatusEntry.Severity.classify("Progress: 50.00%"));
+    }
+}
@@ -0,0 +1,109 @@
+package hashkitty.java.transfer;
+
+import com.google.gson.Gson;
+import hashkitty.java.relay.RelayClient;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UploadReceiverTest {
+
+    private static final int CHUNK = 1000;
+    private final Gson gson = new Gson();
+    private final List<UploadStatus> statuses = new ArrayList<>();
+
+    @TempDir
+    Path tempDir;
+
+    private UploadReceiver newReceiver() {
+        return new UploadReceiver(tempDir, message -> statuses.add(gson.fromJson(message.getPayload(), UploadStatus.class)), s -> {});
+    }
+
+    private static UploadManifest manifest(byte[] content) {
+        UploadManifest manifest = new UploadManifest();
+        manifest.uploadId = "test-upload";
+        manifest.fileName = "../hashes.txt";
+        manifest.size = content.length;
+        manifest.chunkSize = CHUNK;
+        manifest.sha256 = UploadReceiver.toHex(UploadReceiver.newSha256().digest(content));
+        return manifest;
+    }
+
+    private static ByteBuffer chunk(byte[] content, int offset) {
+        ByteBuffer frame = ByteBuffer.allocate(ChunkFrame.frameCapacity("test-upload", CHUNK));
+        ChunkFrame.encode(frame, "test-upload", offset, ByteBuffer.wrap(content, offset, Math.min(CHUNK, content.length - offset)));
+        return frame;
+    }
+
+    private UploadStatus last() {
+        return statuses.get(statuses.size() - 1);
+    }
+
+    @Test
+    void upload_WithCorruptChunk_RequestsResendAndCompletes() throws Exception {
+        byte[] content = new byte[3500];
+        new Random(42).nextBytes(content);
+        UploadReceiver receiver = newReceiver();
+
+        RelayClient.Message begin = new RelayClient.Message();
+        begin.setType("upload_begin");
+        begin.setPayload(gson.toJson(manifest(content)));
+        receiver.handleMessage(begin);
+        assertEquals(0, last().offset);
+        assertTrue(last().resend);
+
+        receiver.handleChunk(chunk(content, 0));
+        assertEquals(1000, last().offset);
+
+        // Flip a data byte: the CRC check must fail and the receiver must ask to rewind to 1000.
+        ByteBuffer corrupt = chunk(content, 1000);
+        corrupt.put(corrupt.limit() - 1, (byte) (corrupt.get(corrupt.limit() - 1) ^ 1));
+        receiver.handleChunk(corrupt);
+        assertEquals(1000, last().offset);
+        assertTrue(last().resend);
+
+        // The rest of the stale window is ignored until the rewind arrives.
+        int before = statuses.size();
+        receiver.handleChunk(chunk(content, 2000));
+        assertEquals(before, statuses.size());
+
+        for (int offset = 1000; offset < content.length; offset += CHUNK) {
+            receiver.handleChunk(chunk(content, offset));
+        }
+        assertEquals(UploadStatus.COMPLETE, last().state);
+        Path stored = receiver.getCompletedFile("test-upload");
+        assertNotNull(stored);
+        assertEquals(tempDir, stored.getParent());
+        assertArrayEquals(content, Files.readAllBytes(stored));
+    }
+
+    @Test
+    void upload_AfterReceiverRestart_ResumesFromDisk() throws Exception {
+        byte[] content = new byte[2500];
+        new Random(7).nextBytes(content);
+        UploadManifest manifest = manifest(content);
+
+        UploadReceiver first = newReceiver();
+        first.handleBegin(manifest);
+        first.handleChunk(chunk(content, 0));
+        first.close();
+
+        UploadReceiver second = newReceiver();
+        second.handleBegin(manifest);
+        assertEquals(1000, last().offset);
+        assertTrue(last().resend);
+
+        second.handleChunk(chunk(content, 1000));
+        second.handleChunk(chunk(content, 2000));
+        assertEquals(UploadStatus.COMPLETE, last().state);
+        assertArrayEquals(content, Files.readAllBytes(second.getCompletedFile("test-upload")));
+    }
+}
@@ -0,0 +1,78 @@
+package hashkitty.java.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SerialExecutorTest {
+
+    @Test
+    void execute_RunsTasksInOrderAndNeverConcurrently() throws Exception {
+        ExecutorService backing = ExecutorUtil.newTaskExecutor("serial-test");
+        try {
+            SerialExecutor mailbox = new SerialExecutor(backing);
+            List<Integer> order = new ArrayList<>();
+            AtomicInteger running = new AtomicInteger();
+            AtomicInteger maxRunning = new AtomicInteger();
+            CountDownLatch done = new CountDownLatch(1000);
+
+            for (int i = 0; i < 1000; i++) {
+                int n = i;
+                mailbox.execute(() -> {
+                    maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                    // Plain list on purpose: the mailbox must provide the happens-before between tasks.
+                    order.add(n);
+                    running.decrementAndGet();
+                    done.countDown();
+                });
+            }
+
+            assertTrue(done.await(10, TimeUnit.SECONDS));
+            assertEquals(1, maxRunning.get());
+            for (int i = 0; i < 1000; i++) {
+                assertEquals(i, order.get(i).intValue());
+            }
+        } finally {
+            backing.shutdownNow();
+        }
+    }
+
+    @Test
+    void execute_AfterFailingTask_KeepsRunning() throws Exception {
+        SerialExecutor mailbox = new SerialExecutor(ExecutorUtil.sharedTaskExecutor());
+        CountDownLatch done = new CountDownLatch(1);
+
+        mailbox.execute(() -> { throw new IllegalStateException("expected by test"); });
+        mailbox.execute(done::countDown);
+
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void tryExecute_RefusesTasksBeyondTheCapacity() {
+        List<Runnable> drains = new ArrayList<>();
+        SerialExecutor mailbox = new SerialExecutor(drains::add, 3);
+        AtomicInteger ran = new AtomicInteger();
+
+        for (int i = 0; i < 3; i++) {
+            assertTrue(mailbox.tryExecute(ran::incrementAndGet));
+        }
+        assertFalse(mailbox.tryExecute(ran::incrementAndGet));
+        assertEquals(3, mailbox.getPendingCount());
+        // Bookkeeping tasks are never refused.
+        mailbox.execute(ran::incrementAndGet);
+        assertEquals(4, mailbox.getPendingCount());
+
+        drains.remove(0).run();
+        assertEquals(4, ran.get());
+        assertEquals(0, mailbox.getPendingCount());
+        assertTrue(mailbox.tryExecute(ran::incrementAndGet));
+    }
+}
@@ -0,0 +1,44 @@
+package hashkitty.java.util;
+
+import org.java_websocket.drafts.Draft_6455;
+import org.java_websocket.enums.HandshakeState;
+import org.java_websocket.extensions.DefaultExtension;
+import org.java_websocket.extensions.permessage_deflate.PerMessageDeflateExtension;
+import org.java_websocket.handshake.HandshakeImpl1Client;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WebSocketUtilTest {
+
+    @Test
+    void deflateDraft_NegotiatesPerMessageDeflateWhenOffered() throws Exception {
+        Draft_6455 draft = WebSocketUtil.deflateDraft();
+
+        assertEquals(HandshakeState.MATCHED,
+                draft.acceptHandshakeAsServer(handshake("permessage-deflate")));
+        assertTrue(draft.getExtension() instanceof PerMessageDeflateExtension, String.valueOf(draft.getExtension()));
+    }
+
+    @Test
+    void deflateDraft_FallsBackToUncompressedFramesForOtherClients() throws Exception {
+        Draft_6455 draft = WebSocketUtil.deflateDraft();
+
+        assertEquals(HandshakeState.MATCHED, draft.acceptHandshakeAsServer(handshake(null)));
+        assertTrue(draft.getExtension() instanceof DefaultExtension, String.valueOf(draft.getExtension()));
+    }
+
+    private static HandshakeImpl1Client handshake(String extensions) {
+        HandshakeImpl1Client handshake = new HandshakeImpl1Client();
+        handshake.setResourceDescriptor("/ws");
+        handshake.put("Host", "localhost");
+        handshake.put("Upgrade", "websocket");
+        handshake.put("Connection", "Upgrade");
+        handshake.put("Sec-WebSocket-Key", "dGhlIHNhbXBsZSBub25jZQ==");
+        handshake.put("Sec-WebSocket-Version", "13");
+        if (extensions != null) {
+            handshake.put("Sec-WebSocket-Extensions", extensions);
+        }
+        return handshake;
+    }
+}
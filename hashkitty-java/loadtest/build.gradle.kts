@@ -0,0 +1,21 @@
+plugins {
+    application
+}
+
+dependencies {
+    // The relay transports under test, and the WebSocket codec used by the simulated clients.
+    implementation(project(":app"))
+    implementation(libs.gson)
+    implementation(libs.java.websocket)
+}
+
+java {
+    toolchain {
+        languageVersion.set(JavaLanguageVersion.of(17))
+    }
+}
+
+application {
+    mainClass.set("hashkitty.loadtest.LoadTest")
+    applicationDefaultJvmArgs = listOf("-Xms512m", "-Xmx2g")
+}
@@ -0,0 +1,299 @@
+package hashkitty.loadtest;
+
+import hashkitty.java.server.nio.WebSocketCodec;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * A selector loop driving many simulated WebSocket clients from one thread.
+ * <p>
+ * Real phones and desktops each hold one socket; simulating thousands of them with a thread each would
+ * measure the load generator rather than the relay, so clients are multiplexed here instead and speak the
+ * protocol through {@link WebSocketCodec}.
+ * </p>
+ */
+class ClientLoop implements Runnable {
+
+    /**
+     * Receives events for the clients of a loop. Called on the loop thread.
+     */
+    interface Handler {
+        /** Called once the handshake has completed. */
+        void onOpen(Client client);
+
+        /** Called for every text message received. */
+        void onText(Client client, String text);
+
+        /** Called when the connection is closed or fails. */
+        void onClose(Client client);
+    }
+
+    /**
+     * One simulated client.
+     */
+    final class Client {
+        /** Caller-assigned index, for bookkeeping. */
+        final int index;
+        /** Caller-assigned room. */
+        final String roomId;
+
+        private final SocketChannel channel;
+        private final String hostHeader;
+        private final String path;
+        private SelectionKey key;
+        private ByteBuffer in = ByteBuffer.allocate(16 * 1024);
+        private final ArrayDeque<ByteBuffer> out = new ArrayDeque<>();
+        private boolean open;
+        private boolean closed;
+
+        private Client(int index, String roomId, SocketChannel channel, String hostHeader, String path) {
+            this.index = index;
+            this.roomId = roomId;
+            this.channel = channel;
+            this.hostHeader = hostHeader;
+            this.path = path;
+        }
+
+        /**
+         * Sends a text message. Safe to call from any thread.
+         *
+         * @param text The message.
+         */
+        void send(String text) {
+            byte[] payload = text.getBytes(StandardCharsets.UTF_8);
+            execute(() -> sendFrame(this, WebSocketCodec.OP_TEXT, payload));
+        }
+
+        /**
+         * Closes the connection. Safe to call from any thread.
+         */
+        void close() {
+            execute(() -> closeClient(this));
+        }
+
+        /** @return Whether the handshake completed and the connection is still open. */
+        boolean isOpen() {
+            return open && !closed;
+        }
+    }
+
+    private final Selector selector;
+    private final Handler handler;
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    private final ByteBuffer readBuffer = ByteBuffer.allocateDirect(64 * 1024);
+    private volatile boolean running = true;
+
+    /**
+     * Creates a loop. Run it on a dedicated thread.
+     *
+     * @param handler Receives client events.
+     * @throws IOException If the selector cannot be opened.
+     */
+    ClientLoop(Handler handler) throws IOException {
+        this.selector = Selector.open();
+        this.handler = handler;
+    }
+
+    /**
+     * Starts connecting a new client.
+     *
+     * @param index   A caller-assigned index.
+     * @param roomId  A caller-assigned room.
+     * @param address The relay address.
+     * @param path    The request path.
+     * @return The client; {@link Handler#onOpen} fires once it is usable.
+     * @throws IOException If the socket cannot be created.
+     */
+    Client connect(int index, String roomId, InetSocketAddress address, String path) throws IOException {
+        SocketChannel channel = SocketChannel.open();
+        channel.configureBlocking(false);
+        channel.socket().setTcpNoDelay(true);
+        Client client = new Client(index, roomId, channel, address.getHostString() + ":" + address.getPort(), path);
+        execute(() -> {
+            try {
+                client.key = channel.register(selector, SelectionKey.OP_CONNECT, client);
+                if (channel.connect(address)) {
+                    onConnected(client);
+                }
+            } catch (IOException e) {
+                closeClient(client);
+            }
+        });
+        return client;
+    }
+
+    /**
+     * Stops the loop and closes all its clients.
+     */
+    void shutdown() {
+        running = false;
+        selector.wakeup();
+    }
+
+    private void execute(Runnable task) {
+        tasks.add(task);
+        selector.wakeup();
+    }
+
+    @Override
+    public void run() {
+        while (running) {
+            try {
+                selector.select(1000);
+            } catch (IOException e) {
+                e.printStackTrace();
+                break;
+            }
+            Runnable task;
+            while ((task = tasks.poll()) != null) {
+                task.run();
+            }
+            Iterator<SelectionKey> selected = selector.selectedKeys().iterator();
+            while (selected.hasNext()) {
+                SelectionKey key = selected.next();
+                selected.remove();
+                Client client = (Client) key.attachment();
+                if (!key.isValid()) {
+                    continue;
+                }
+                if (key.isConnectable()) {
+                    try {
+                        if (client.channel.finishConnect()) {
+                            onConnected(client);
+                        }
+                    } catch (IOException e) {
+                        closeClient(client);
+                        continue;
+                    }
+                }
+                if (key.isValid() && key.isReadable()) {
+                    read(client);
+                }
+                if (key.isValid() && key.isWritable()) {
+                    write(client);
+                }
+            }
+        }
+        for (SelectionKey key : selector.keys()) {
+            closeClient((Client) key.attachment());
+        }
+        try {
+            selector.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void onConnected(Client client) {
+        client.key.interestOps(SelectionKey.OP_READ);
+        String request = WebSocketCodec.clientHandshake(client.hostHeader, client.path, WebSocketCodec.newClientKey());
+        client.out.add(ByteBuffer.wrap(request.getBytes(StandardCharsets.ISO_8859_1)));
+        write(client);
+    }
+
+    private void sendFrame(Client client, int opcode, byte[] payload) {
+        if (client.closed) {
+            return;
+        }
+        ByteBuffer frame = ByteBuffer.allocate(WebSocketCodec.frameLength(payload.length, true));
+        WebSocketCodec.encodeFrame(frame, opcode, ByteBuffer.wrap(payload), true);
+        frame.flip();
+        client.out.add(frame);
+        write(client);
+    }
+
+    private void write(Client client) {
+        try {
+            while (!client.out.isEmpty()) {
+                ByteBuffer head = client.out.peek();
+                client.channel.write(head);
+                if (head.hasRemaining()) {
+                    client.key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                    return;
+                }
+                client.out.poll();
+            }
+            client.key.interestOps(SelectionKey.OP_READ);
+        } catch (IOException e) {
+            closeClient(client);
+        }
+    }
+
+    private void read(Client client) {
+        readBuffer.clear();
+        int read;
+        try {
+            read = client.channel.read(readBuffer);
+        } catch (IOException e) {
+            closeClient(client);
+            return;
+        }
+        if (read < 0) {
+            closeClient(client);
+            return;
+        }
+        readBuffer.flip();
+        if (client.in.remaining() < readBuffer.remaining()) {
+            ByteBuffer grown = ByteBuffer.allocate(Math.max(client.in.capacity() * 2, client.in.position() + readBuffer.remaining()));
+            client.in.flip();
+            grown.put(client.in);
+            client.in = grown;
+        }
+        client.in.put(readBuffer);
+        client.in.flip();
+        try {
+            if (!client.open) {
+                WebSocketCodec.HttpHead response = WebSocketCodec.parseHead(client.in, 8 * 1024);
+                if (response != null) {
+                    if (!response.startLine.contains(" 101 ")) {
+                        throw new IOException("Handshake rejected: " + response.startLine);
+                    }
+                    client.open = true;
+                    handler.onOpen(client);
+                }
+            }
+            WebSocketCodec.Frame frame;
+            while (client.open && !client.closed
+                    && (frame = WebSocketCodec.decodeFrame(client.in, Integer.MAX_VALUE)) != null) {
+                if (frame.opcode == WebSocketCodec.OP_TEXT) {
+                    handler.onText(client, new String(frame.payload, StandardCharsets.UTF_8));
+                } else if (frame.opcode == WebSocketCodec.OP_PING) {
+                    sendFrame(client, WebSocketCodec.OP_PONG, frame.payload);
+                } else if (frame.opcode == WebSocketCodec.OP_CLOSE) {
+                    closeClient(client);
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Client " + client.index + ": " + e.getMessage());
+            closeClient(client);
+            return;
+        }
+        client.in.compact();
+    }
+
+    private void closeClient(Client client) {
+        if (client.closed) {
+            return;
+        }
+        client.closed = true;
+        if (client.key != null) {
+            client.key.cancel();
+        }
+        try {
+            client.channel.close();
+        } catch (IOException e) {
+            // Closing anyway.
+        }
+        handler.onClose(client);
+    }
+}
@@ -0,0 +1,57 @@
+package hashkitty.loadtest;
+
+import java.util.Arrays;
+
+/**
+ * Collects latency samples (in nanoseconds) from many threads and reports percentiles.
+ * <p>
+ * Samples are kept raw rather than bucketed, which is exact and cheap enough for a run of a few million
+ * deliveries.
+ * </p>
+ */
+class LatencyRecorder {
+
+    private long[] samples = new long[1 << 16];
+    private int count;
+
+    /**
+     * Records one sample.
+     *
+     * @param nanos The latency in nanoseconds.
+     */
+    synchronized void record(long nanos) {
+        if (count == samples.length) {
+            samples = Arrays.copyOf(samples, samples.length * 2);
+        }
+        samples[count++] = nanos;
+    }
+
+    /**
+     * Returns the number of samples recorded.
+     *
+     * @return The sample count.
+     */
+    synchronized int count() {
+        return count;
+    }
+
+    /**
+     * Returns the given percentiles, in milliseconds.
+     *
+     * @param percentiles Percentiles between 0 and 100.
+     * @return One value per requested percentile; zeros if nothing was recorded.
+     */
+    synchronized double[] percentilesMillis(double... percentiles) {
+        double[] result = new double[percentiles.length];
+        if (count == 0) {
+            return result;
+        }
+        long[] sorted = Arrays.copyOf(samples, count);
+        Arrays.sort(sorted);
+        for (int i = 0; i < percentiles.length; i++) {
+            int index = (int) Math.min(count - 1, Math.ceil(percentiles[i] / 100.0 * count) - 1);
+            result[i] = sorted[Math.max(0, index)] / 1_000_000.0;
+        }
+        return result;
+    }
+}
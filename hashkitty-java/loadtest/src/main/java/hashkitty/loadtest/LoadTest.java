@@ -0,0 +1,449 @@
+package hashkitty.loadtest;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Load generator for the relay server, used for VPS sizing before a relay release and to compare the
+ * Java-WebSocket and NIO transports.
+ * <p>
+ * Simulated clients are spread over a number of rooms. Once everyone has joined, the generator performs actions
+ * at a fixed rate, picked from a {@link MessageMix}: status ticks, attack commands, bursts of cracked results,
+ * and join churn (a client drops and rejoins with {@code resumeFrom}, as the reconnecting phone does). Every
+ * message carries its send time, so each recipient records the fan-out latency; rejoins record the time to the
+ * "joined" acknowledgement. Replayed messages are counted but kept out of the latency figures.
+ * </p>
+ * <p>
+ * Unless {@code --target} is given, the relay runs in a child JVM ({@link RelayHost}) so that its heap can be
+ * reported on its own: the peak during the run, and what is retained after a full GC with every client still
+ * connected.
+ * </p>
+ * <p>
+ * <b>Usage:</b> {@code loadtest [--transport websocket|nio|both] [--target ws://host:port/] [--clients N]
+ * [--rooms N] [--rate ACTIONS_PER_SEC] [--duration SECONDS] [--mix status=80,attack=2,cracked=8,churn=10]
+ * [--burst N] [--relay-heap 1g] [--loops N]}
+ * </p>
+ */
+public class LoadTest {
+
+    /** Load settings, filled from the command line. */
+    static class Settings {
+        String transport = "both";
+        URI target;
+        int clients = 2000;
+        int rooms = 200;
+        int rate = 2000;
+        int durationSeconds = 30;
+        MessageMix mix = new MessageMix(MessageMix.DEFAULT);
+        int burst = 20;
+        String relayHeap = "1g";
+        int loops = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+    }
+
+    /** How long to wait for every client to connect and join. */
+    private static final long CONNECT_TIMEOUT_SECONDS = 60;
+
+    /** Pause after the joins so the relay has processed them before measuring. */
+    private static final long SETTLE_MS = 500;
+
+    /** How long to wait for in-flight messages after the last action. */
+    private static final long DRAIN_MS = 3_000;
+
+    /** A sample hash used by the attack commands. */
+    private static final String SAMPLE_HASH = "5f4dcc3b5aa765d61d8327deb882cf99";
+
+    /**
+     * The main method.
+     *
+     * @param args Command-line arguments (see class documentation).
+     * @throws Exception If a run fails to start.
+     */
+    public static void main(String[] args) throws Exception {
+        Settings settings = parse(args);
+        if (settings.target != null) {
+            run("remote " + settings.target, settings.target, settings, null);
+            return;
+        }
+        if (!"nio".equalsIgnoreCase(settings.transport)) {
+            runLocal("websocket", settings);
+        }
+        if (!"websocket".equalsIgnoreCase(settings.transport)) {
+            runLocal("nio", settings);
+        }
+    }
+
+    private static Settings parse(String[] args) {
+        Settings settings = new Settings();
+        for (int i = 0; i < args.length - 1; i++) {
+            try {
+                switch (args[i]) {
+                    case "--transport": settings.transport = args[++i]; break;
+                    case "--target": settings.target = URI.create(args[++i]); break;
+                    case "--clients": settings.clients = Integer.parseInt(args[++i]); break;
+                    case "--rooms": settings.rooms = Integer.parseInt(args[++i]); break;
+                    case "--rate": settings.rate = Integer.parseInt(args[++i]); break;
+                    case "--duration": settings.durationSeconds = Integer.parseInt(args[++i]); break;
+                    case "--mix": settings.mix = new MessageMix(args[++i]); break;
+                    case "--burst": settings.burst = Integer.parseInt(args[++i]); break;
+                    case "--relay-heap": settings.relayHeap = args[++i]; break;
+                    case "--loops": settings.loops = Integer.parseInt(args[++i]); break;
+                    default: System.err.println("Ignoring unknown argument: " + args[i]);
+                }
+            } catch (IllegalArgumentException e) {
+                System.err.println("Invalid value for " + args[i - 1] + " (" + e.getMessage() + "). Using the default.");
+            }
+        }
+        settings.rooms = Math.max(1, Math.min(settings.rooms, settings.clients / 2));
+        return settings;
+    }
+
+    /**
+     * Starts a relay in a child JVM, runs the load against it and stops it.
+     */
+    private static void runLocal(String transport, Settings settings) throws Exception {
+        int port = freePort();
+        try (RelayProcess relay = RelayProcess.start(transport, port, settings.relayHeap)) {
+            run(transport + " (child JVM, -Xmx" + settings.relayHeap + ")", URI.create("ws://127.0.0.1:" + port + "/"), settings, relay);
+        }
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    /**
+     * Connects the clients, drives the load and prints a report.
+     *
+     * @param relay The local relay process, or null for a remote target (heap is then not reported).
+     */
+    private static void run(String label, URI uri, Settings settings, RelayProcess relay) throws Exception {
+        System.out.println();
+        System.out.println("=== " + label + ": " + settings.clients + " clients, " + settings.rooms + " rooms, "
+                + settings.rate + " actions/s (" + settings.mix + ") for " + settings.durationSeconds + " s ===");
+
+        int n = settings.clients;
+        LatencyRecorder fanout = new LatencyRecorder();
+        LatencyRecorder rejoin = new LatencyRecorder();
+        Map<MessageMix.Action, AtomicLong> sent = counters();
+        Map<MessageMix.Action, AtomicLong> delivered = counters();
+        AtomicLong replayed = new AtomicLong();
+        AtomicLong closed = new AtomicLong();
+        CountDownLatch joined = new CountDownLatch(n);
+
+        // Per-client-slot state, kept by index so that a rejoining replacement resumes where its predecessor was.
+        AtomicLongArray connectStart = new AtomicLongArray(n);
+        AtomicLongArray ackSeq = new AtomicLongArray(n);
+        AtomicLongArray lastSeq = new AtomicLongArray(n);
+        AtomicReferenceArray<String> epochs = new AtomicReferenceArray<>(n);
+
+        ClientLoop.Handler handler = new ClientLoop.Handler() {
+            @Override
+            public void onOpen(ClientLoop.Client client) {
+                JsonObject join = new JsonObject();
+                join.addProperty("type", "join");
+                join.addProperty("roomId", client.roomId);
+                if (epochs.get(client.index) != null) {
+                    join.addProperty("resumeFrom", lastSeq.get(client.index));
+                    join.addProperty("epoch", epochs.get(client.index));
+                }
+                client.send(join.toString());
+            }
+
+            @Override
+            public void onText(ClientLoop.Client client, String text) {
+                long now = System.nanoTime();
+                JsonObject message = JsonParser.parseString(text).getAsJsonObject();
+                String type = message.has("type") ? message.get("type").getAsString() : "";
+                long seq = message.has("seq") ? message.get("seq").getAsLong() : 0;
+                if ("joined".equals(type)) {
+                    ackSeq.set(client.index, seq);
+                    // Resume from the ack's seq even if no room message arrives before the next churn.
+                    lastSeq.accumulateAndGet(client.index, seq, Math::max);
+                    if (message.has("epoch")) {
+                        epochs.set(client.index, message.get("epoch").getAsString());
+                    }
+                    if (joined.getCount() == 0) {
+                        rejoin.record(now - connectStart.get(client.index));
+                    }
+                    joined.countDown();
+                    return;
+                }
+                if (seq > 0) {
+                    lastSeq.accumulateAndGet(client.index, seq, Math::max);
+                }
+                if (!message.has("sentAt")) {
+                    return;
+                }
+                if (seq > 0 && seq <= ackSeq.get(client.index)) {
+                    replayed.incrementAndGet();
+                    return;
+                }
+                fanout.record(now - message.get("sentAt").getAsLong());
+                MessageMix.Action action = actionOf(type);
+                if (action != null) {
+                    delivered.get(action).incrementAndGet();
+                }
+            }
+
+            @Override
+            public void onClose(ClientLoop.Client client) {
+                closed.incrementAndGet();
+            }
+        };
+
+        List<ClientLoop> loops = new ArrayList<>();
+        for (int i = 0; i < settings.loops; i++) {
+            ClientLoop loop = new ClientLoop(handler);
+            Thread thread = new Thread(loop, "loadtest-client-" + i);
+            thread.setDaemon(true);
+            thread.start();
+            loops.add(loop);
+        }
+
+        InetSocketAddress address = new InetSocketAddress(uri.getHost(), uri.getPort());
+        String path = uri.getRawPath() == null || uri.getRawPath().isEmpty() ? "/" : uri.getRawPath();
+        List<ClientLoop.Client> clients = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            connectStart.set(i, System.nanoTime());
+            clients.add(loops.get(i % loops.size()).connect(i, "load-" + (i % settings.rooms), address, path));
+        }
+        if (!joined.await(CONNECT_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+            System.out.println("Only " + (n - joined.getCount()) + " clients joined; measuring those.");
+            // Release the latch so that later joins count as rejoins.
+            while (joined.getCount() > 0) joined.countDown();
+        }
+        Thread.sleep(SETTLE_MS);
+        long closedBeforeRun = closed.get();
+
+        // Paced driver: every 10 ms, perform this tick's share of the target rate.
+        long start = System.nanoTime();
+        long end = start + TimeUnit.SECONDS.toNanos(settings.durationSeconds);
+        long tickNanos = TimeUnit.MILLISECONDS.toNanos(10);
+        double perTick = settings.rate / 100.0;
+        double owed = 0;
+        for (long next = start; next < end; next += tickNanos) {
+            long wait = next - System.nanoTime();
+            if (wait > 0) {
+                TimeUnit.NANOSECONDS.sleep(wait);
+            }
+            owed += perTick;
+            while (owed >= 1) {
+                owed--;
+                int index = ThreadLocalRandom.current().nextInt(n);
+                ClientLoop.Client client = clients.get(index);
+                MessageMix.Action action = settings.mix.next();
+                if (action == MessageMix.Action.CHURN) {
+                    client.close();
+                    connectStart.set(index, System.nanoTime());
+                    clients.set(index, loops.get(index % loops.size()).connect(index, client.roomId, address, path));
+                    sent.get(action).incrementAndGet();
+                } else if (client.isOpen()) {
+                    int count = action == MessageMix.Action.CRACKED ? settings.burst : 1;
+                    for (int i = 0; i < count; i++) {
+                        client.send(message(action, i));
+                    }
+                    sent.get(action).addAndGet(count);
+                }
+            }
+        }
+        long driveNanos = System.nanoTime() - start;
+        Thread.sleep(DRAIN_MS);
+
+        // Measure what the relay retains while every client is still connected: the sizing figure.
+        long retained = relay != null ? relay.retainedHeap() : -1;
+        long closedDuringRun = Math.max(0, closed.get() - closedBeforeRun - sent.get(MessageMix.Action.CHURN).get());
+
+        for (ClientLoop.Client client : clients) {
+            client.close();
+        }
+        Thread.sleep(200);
+        for (ClientLoop loop : loops) {
+            loop.shutdown();
+        }
+
+        report(settings, driveNanos / 1e9, sent, delivered, replayed.get(), fanout, rejoin, relay, retained);
+        if (closedDuringRun > 0) {
+            System.out.println(closedDuringRun + " client connection(s) were closed by the relay during the run.");
+        }
+    }
+
+    /**
+     * Builds the JSON for one generated message. Every message carries {@code sentAt} for latency measurement.
+     */
+    private static String message(MessageMix.Action action, int burstIndex) {
+        JsonObject json = new JsonObject();
+        switch (action) {
+            case ATTACK:
+                json.addProperty("type", "attack");
+                json.addProperty("hash", SAMPLE_HASH);
+                json.addProperty("mode", "0");
+                json.addProperty("payload", "{\"job_id\":\"load\",\"mode\":\"0\",\"attack_mode\":\"0\",\"wordlist\":\"rockyou.txt\"}");
+                break;
+            case CRACKED:
+                json.addProperty("type", "cracked");
+                json.addProperty("payload", SAMPLE_HASH + ":password" + burstIndex);
+                break;
+            default:
+                json.addProperty("type", "status");
+                json.addProperty("payload", "Progress: " + ThreadLocalRandom.current().nextInt(100) + "%");
+                break;
+        }
+        json.addProperty("sentAt", System.nanoTime());
+        return json.toString();
+    }
+
+    private static MessageMix.Action actionOf(String type) {
+        switch (type) {
+            case "status": return MessageMix.Action.STATUS;
+            case "attack": return MessageMix.Action.ATTACK;
+            case "cracked": return MessageMix.Action.CRACKED;
+            default: return null;
+        }
+    }
+
+    private static Map<MessageMix.Action, AtomicLong> counters() {
+        Map<MessageMix.Action, AtomicLong> counters = new EnumMap<>(MessageMix.Action.class);
+        for (MessageMix.Action action : MessageMix.Action.values()) {
+            counters.put(action, new AtomicLong());
+        }
+        return counters;
+    }
+
+    private static void report(Settings settings, double seconds, Map<MessageMix.Action, AtomicLong> sent,
+                               Map<MessageMix.Action, AtomicLong> delivered, long replayed, LatencyRecorder fanout,
+                               LatencyRecorder rejoin, RelayProcess relay, long retained) {
+        long totalDelivered = 0;
+        for (AtomicLong count : delivered.values()) {
+            totalDelivered += count.get();
+        }
+        System.out.println(String.format(Locale.ROOT, "sent: status %d, attack %d, cracked %d (bursts of %d), rejoins %d",
+                sent.get(MessageMix.Action.STATUS).get(), sent.get(MessageMix.Action.ATTACK).get(),
+                sent.get(MessageMix.Action.CRACKED).get(), settings.burst, sent.get(MessageMix.Action.CHURN).get()));
+        System.out.println(String.format(Locale.ROOT, "delivered: %d (%.0f/s): status %d, attack %d, cracked %d; replayed on rejoin %d",
+                totalDelivered, totalDelivered / seconds, delivered.get(MessageMix.Action.STATUS).get(),
+                delivered.get(MessageMix.Action.ATTACK).get(), delivered.get(MessageMix.Action.CRACKED).get(), replayed));
+        double[] p = fanout.percentilesMillis(50, 99, 99.9, 100);
+        System.out.println(String.format(Locale.ROOT, "fan-out latency ms: p50 %.2f, p99 %.2f, p999 %.2f, max %.2f",
+                p[0], p[1], p[2], p[3]));
+        if (rejoin.count() > 0) {
+            double[] r = rejoin.percentilesMillis(50, 99, 99.9);
+            System.out.println(String.format(Locale.ROOT, "rejoin latency ms (connect to joined): p50 %.2f, p99 %.2f, p999 %.2f",
+                    r[0], r[1], r[2]));
+        }
+        if (relay != null) {
+            System.out.println(String.format(Locale.ROOT, "relay heap: peak used %.1f MB, retained after GC %.1f MB with %d clients connected",
+                    relay.peakHeapUsed() / 1048576.0, retained / 1048576.0, settings.clients));
+            System.out.println("relay log: " + relay.log);
+        } else {
+            System.out.println("relay heap: not available for a remote target");
+        }
+    }
+
+    /**
+     * A relay running in a child JVM through {@link RelayHost}.
+     */
+    static class RelayProcess implements AutoCloseable {
+        private final Process process;
+        private final File log;
+        private final CountDownLatch ready = new CountDownLatch(1);
+        private final AtomicLong peakUsed = new AtomicLong();
+        private volatile CountDownLatch retainedLatch = new CountDownLatch(1);
+        private volatile long retained = -1;
+
+        private RelayProcess(Process process, File log) {
+            this.process = process;
+            this.log = log;
+        }
+
+        /**
+         * Starts a relay and waits until it is listening.
+         */
+        static RelayProcess start(String transport, int port, String heap) throws IOException, InterruptedException {
+            String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+            File log = new File(System.getProperty("java.io.tmpdir"), "hashkitty-relay-" + transport + ".log");
+            ProcessBuilder builder = new ProcessBuilder(java, "-Xmx" + heap, "-cp", System.getProperty("java.class.path"),
+                    RelayHost.class.getName(), transport, String.valueOf(port));
+            // Errors (e.g. the relay failing to find hashcat for attack commands) go to a log, not the report.
+            builder.redirectError(ProcessBuilder.Redirect.to(log));
+            RelayProcess relay = new RelayProcess(builder.start(), log);
+            Thread reader = new Thread(relay::readOutput, "relay-host-output");
+            reader.setDaemon(true);
+            reader.start();
+            if (!relay.ready.await(30, TimeUnit.SECONDS)) {
+                relay.close();
+                throw new IOException("The " + transport + " relay did not start; see " + log);
+            }
+            return relay;
+        }
+
+        private void readOutput() {
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (line.startsWith("HEAP ")) {
+                        long used = Long.parseLong(line.split(" ")[1]);
+                        peakUsed.accumulateAndGet(used, Math::max);
+                    } else if (line.startsWith("RETAINED ")) {
+                        retained = Long.parseLong(line.substring("RETAINED ".length()));
+                        retainedLatch.countDown();
+                    } else if ("READY".equals(line)) {
+                        ready.countDown();
+                    }
+                    // Other lines are the relay's own per-connection logging.
+                }
+            } catch (IOException e) {
+                // The process exited.
+            }
+        }
+
+        /** @return The highest heap usage reported so far, in bytes. */
+        long peakHeapUsed() {
+            return peakUsed.get();
+        }
+
+        /**
+         * Forces a GC in the relay and returns the heap still in use.
+         *
+         * @return The retained heap in bytes, or -1 if the relay did not answer.
+         */
+        long retainedHeap() throws IOException, InterruptedException {
+            retainedLatch = new CountDownLatch(1);
+            OutputStream commands = process.getOutputStream();
+            commands.write("gc\n".getBytes(StandardCharsets.UTF_8));
+            commands.flush();
+            return retainedLatch.await(30, TimeUnit.SECONDS) ? retained : -1;
+        }
+
+        @Override
+        public void close() throws IOException, InterruptedException {
+            // Closing stdin asks the host to stop the relay and exit.
+            process.getOutputStream().close();
+            if (!process.waitFor(10, TimeUnit.SECONDS)) {
+                process.destroyForcibly();
+            }
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package hashkitty.loadtest;
+
+import java.util.Locale;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * The weighted mix of actions the load generator performs at each step.
+ * <p>
+ * The mix is given as {@code status=80,attack=2,cracked=8,churn=10}: weights are relative, and actions left out
+ * have weight zero. The default mirrors a busy relay: mostly progress ticks from workers, occasional attacks
+ * started from the phone, bursts of results, and phones dropping off and reconnecting.
+ * </p>
+ */
+class MessageMix {
+
+    /** One action of the mix. */
+    enum Action {
+        /** A status/progress tick from a worker. */
+        STATUS,
+        /** An attack command sent from a phone. */
+        ATTACK,
+        /** A burst of cracked results, as sent by a worker finishing a batch. */
+        CRACKED,
+        /** A client disconnecting and rejoining with {@code resumeFrom}. */
+        CHURN
+    }
+
+    /** The mix used when none is given. */
+    static final String DEFAULT = "status=80,attack=2,cracked=8,churn=10";
+
+    private final int[] weights = new int[Action.values().length];
+    private final int total;
+
+    /**
+     * Parses a mix specification.
+     *
+     * @param spec The specification, e.g. {@code status=90,churn=10}.
+     * @throws IllegalArgumentException If an entry is malformed, names an unknown action, or all weights are zero.
+     */
+    MessageMix(String spec) {
+        for (String entry : spec.split(",")) {
+            String[] parts = entry.trim().split("=");
+            if (parts.length != 2) {
+                throw new IllegalArgumentException("Malformed mix entry: " + entry);
+            }
+            Action action = Action.valueOf(parts[0].trim().toUpperCase(Locale.ROOT));
+            weights[action.ordinal()] = Math.max(0, Integer.parseInt(parts[1].trim()));
+        }
+        int sum = 0;
+        for (int weight : weights) {
+            sum += weight;
+        }
+        if (sum == 0) {
+            throw new IllegalArgumentException("The mix must contain at least one action with a positive weight");
+        }
+        this.total = sum;
+    }
+
+    /**
+     * Picks the next action at random, according to the weights.
+     *
+     * @return The action.
+     */
+    Action next() {
+        int pick = ThreadLocalRandom.current().nextInt(total);
+        for (Action action : Action.values()) {
+            pick -= weights[action.ordinal()];
+            if (pick < 0) {
+                return action;
+            }
+        }
+        return Action.STATUS;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (Action action : Action.values()) {
+            if (weights[action.ordinal()] > 0) {
+                if (sb.length() > 0) sb.append(',');
+                sb.append(action.name().toLowerCase(Locale.ROOT)).append('=').append(weights[action.ordinal()]);
+            }
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,92 @@
+package hashkitty.loadtest;
+
+import hashkitty.java.server.RelayServer;
+import hashkitty.java.server.nio.NioRelayServer;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Runs a relay in its own JVM for {@link LoadTest}, so that its heap (and its CPU and GC) are measured apart from
+ * the simulated clients.
+ * <p>
+ * <b>Usage:</b> {@code RelayHost <websocket|nio> <port>}
+ * <br>
+ * The host prints {@code READY} once listening and then {@code HEAP <used> <committed>} every half second.
+ * Writing {@code gc} to its standard input forces a collection and prints {@code RETAINED <used>}, the heap the
+ * relay really needs for the current clients. Closing standard input stops the relay.
+ * </p>
+ */
+public class RelayHost {
+
+    /** How often heap usage is reported. */
+    private static final long HEAP_REPORT_INTERVAL_MS = 500;
+
+    /**
+     * The main method.
+     *
+     * @param args The transport and the port.
+     * @throws Exception If the relay fails to start.
+     */
+    public static void main(String[] args) throws Exception {
+        String transport = args[0];
+        int port = Integer.parseInt(args[1]);
+        Consumer<String> quiet = status -> {};
+        Runnable stopAction;
+        if ("nio".equalsIgnoreCase(transport)) {
+            NioRelayServer server = new NioRelayServer(port, quiet, quiet);
+            server.start();
+            stopAction = server::stop;
+        } else {
+            CountDownLatch started = new CountDownLatch(1);
+            RelayServer server = new RelayServer(port, status -> {
+                if (status.startsWith("Relay server started")) started.countDown();
+            }, quiet);
+            server.setReuseAddr(true);
+            server.start();
+            if (!started.await(10, TimeUnit.SECONDS)) {
+                throw new IllegalStateException("Relay did not start on port " + port);
+            }
+            stopAction = () -> {
+                try {
+                    server.stop(1000);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            };
+        }
+
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        Thread reporter = new Thread(() -> {
+            while (!Thread.currentThread().isInterrupted()) {
+                System.out.println("HEAP " + memory.getHeapMemoryUsage().getUsed() + " " + memory.getHeapMemoryUsage().getCommitted());
+                try {
+                    Thread.sleep(HEAP_REPORT_INTERVAL_MS);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }, "relay-host-heap");
+        reporter.setDaemon(true);
+        reporter.start();
+        System.out.println("READY");
+
+        try (BufferedReader commands = new BufferedReader(new InputStreamReader(System.in))) {
+            String line;
+            while ((line = commands.readLine()) != null) {
+                if ("gc".equals(line.trim())) {
+                    System.gc();
+                    System.out.println("RETAINED " + memory.getHeapMemoryUsage().getUsed());
+                }
+            }
+        }
+        reporter.interrupt();
+        stopAction.run();
+        System.exit(0);
+    }
+}